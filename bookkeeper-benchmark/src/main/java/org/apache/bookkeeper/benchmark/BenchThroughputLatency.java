@@ -255,6 +255,11 @@ public class BenchThroughputLatency implements AddCallback, Runnable {
         options.addOption("skipwarmup", false, "Skip warm up, default false");
         options.addOption("sendlimit", true, "Max number of entries to send. Default 20000000");
         options.addOption("latencyFile", true, "File to dump latencies. Default is latencyDump.dat");
+        options.addOption("transport", true, "Client transport profile: default, busywait (Epoll busy-wait loop"
+                + " with the IO threads pinned to cores), busypoll (busywait and SO_BUSY_POLL) or iouring (io_uring"
+                + " event loop, Linux 5.9+). Default is default");
+        options.addOption("busypollmicros", true, "SO_BUSY_POLL time of the busypoll profile (microseconds)."
+                + " Default 50");
         options.addOption("help", false, "This message");
 
         CommandLineParser parser = new PosixParser();
@@ -319,6 +324,22 @@ public class BenchThroughputLatency implements AddCallback, Runnable {
         ClientConfiguration conf = new ClientConfiguration();
         conf.setThrottleValue(throttle).setReadTimeout(sockTimeout).setZkServers(servers);
 
+        String transport = cmd.getOptionValue("transport", "default");
+        if ("busywait".equals(transport) || "busypoll".equals(transport)) {
+            conf.setBusyWaitEnabled(true);
+            if ("busypoll".equals(transport)) {
+                conf.setBusyPollMicros(Integer.parseInt(cmd.getOptionValue("busypollmicros", "50")));
+            }
+        } else if ("iouring".equals(transport)) {
+            conf.setIoUringEnabled(true);
+        } else if (!"default".equals(transport)) {
+            System.err.println("Unknown transport profile: " + transport);
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp("BenchThroughputLatency <options>", options);
+            System.exit(-1);
+        }
+        LOG.info("Using the {} transport profile", transport);
+
         if (!cmd.hasOption("skipwarmup")) {
             long throughput;
             LOG.info("Starting warmup");
@@ -63,6 +63,8 @@ public abstract class AbstractLogCompactor {
     public static class Throttler {
         private final RateLimiter rateLimiter;
         private final boolean isThrottleByBytes;
+        // when set, replaces the configured compaction rate
+        private volatile CompactionBandwidthController bandwidthController;
 
         Throttler(ServerConfiguration conf) {
             this.isThrottleByBytes  = conf.getIsThrottleByBytes();
@@ -70,9 +72,18 @@ public abstract class AbstractLogCompactor {
                 ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries());
         }
 
+        void setBandwidthController(CompactionBandwidthController bandwidthController) {
+            this.bandwidthController = bandwidthController;
+        }
+
         // acquire. if bybytes: bytes of this entry; if byentries: 1.
-        void acquire(int permits) {
-            rateLimiter.acquire(this.isThrottleByBytes ? permits : 1);
+        public void acquire(int permits) {
+            CompactionBandwidthController controller = bandwidthController;
+            if (controller != null) {
+                controller.acquire(permits);
+            } else {
+                rateLimiter.acquire(this.isThrottleByBytes ? permits : 1);
+            }
         }
     }
 
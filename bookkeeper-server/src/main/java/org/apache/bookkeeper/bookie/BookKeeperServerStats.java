@@ -38,6 +38,9 @@ public interface BookKeeperServerStats {
 
     // Stats
     String CHANNEL_WRITE = "CHANNEL_WRITE";
+    String RESPONSE_MEMORY_USAGE = "RESPONSE_MEMORY_USAGE";
+    String RESPONSE_MEMORY_PAUSED_CHANNELS = "RESPONSE_MEMORY_PAUSED_CHANNELS";
+    String RESPONSE_MEMORY_CHANNEL_PAUSES = "RESPONSE_MEMORY_CHANNEL_PAUSES";
 
     //
     // Server Operations
@@ -53,6 +56,13 @@ public interface BookKeeperServerStats {
     String READ_ENTRY = "READ_ENTRY";
     String READ_ENTRY_REJECTED = "READ_ENTRY_REJECTED";
     String READ_ENTRY_SCHEDULING_DELAY = "READ_ENTRY_SCHEDULING_DELAY";
+    String CLIENT_LABEL = "client";
+    String CLIENT_READ_QUEUE_WAIT = "CLIENT_READ_QUEUE_WAIT";
+    String CLIENT_READ_REJECTED = "CLIENT_READ_REJECTED";
+    String CLIENT_READ_THROTTLED = "CLIENT_READ_THROTTLED";
+    String CLIENT_READ_BYTES = "CLIENT_READ_BYTES";
+    String BATCH_READ_ENTRY_REQUEST = "BATCH_READ_ENTRY_REQUEST";
+    String BATCH_READ_ENTRY = "BATCH_READ_ENTRY";
     String READ_ENTRY_FENCE_REQUEST = "READ_ENTRY_FENCE_REQUEST";
     String READ_ENTRY_FENCE_WAIT = "READ_ENTRY_FENCE_WAIT";
     String READ_ENTRY_FENCE_READ = "READ_ENTRY_FENCE_READ";
@@ -120,6 +130,7 @@ public interface BookKeeperServerStats {
     String JOURNAL_CREATION_LATENCY = "JOURNAL_CREATION_LATENCY";
     String JOURNAL_MEMORY_MAX = "JOURNAL_MEMORY_MAX";
     String JOURNAL_MEMORY_USED = "JOURNAL_MEMORY_USED";
+    String JOURNAL_COMPRESSION_LATENCY = "JOURNAL_COMPRESSION_LATENCY";
 
     // Ledger Storage Stats
     String STORAGE_GET_OFFSET = "STORAGE_GET_OFFSET";
@@ -138,6 +149,8 @@ public interface BookKeeperServerStats {
 
     // Counters
     String JOURNAL_WRITE_BYTES = "JOURNAL_WRITE_BYTES";
+    String JOURNAL_COMPRESSION_IN_BYTES = "JOURNAL_COMPRESSION_IN_BYTES";
+    String JOURNAL_COMPRESSION_OUT_BYTES = "JOURNAL_COMPRESSION_OUT_BYTES";
     String JOURNAL_QUEUE_SIZE = "JOURNAL_QUEUE_SIZE";
     String READ_BYTES = "READ_BYTES";
     String WRITE_BYTES = "WRITE_BYTES";
@@ -153,6 +166,7 @@ public interface BookKeeperServerStats {
     String RECLAIMED_DELETION_SPACE_BYTES = "RECLAIMED_DELETION_SPACE_BYTES";
     String THREAD_RUNTIME = "THREAD_RUNTIME";
     String MAJOR_COMPACTION_COUNT = "MAJOR_COMPACTION_COUNT";
+    String INCREMENTAL_COMPACTION_COUNT = "INCREMENTAL_COMPACTION_COUNT";
     String MINOR_COMPACTION_COUNT = "MINOR_COMPACTION_COUNT";
     String ACTIVE_LEDGER_COUNT = "ACTIVE_LEDGER_COUNT";
     String DELETED_LEDGER_COUNT = "DELETED_LEDGER_COUNT";
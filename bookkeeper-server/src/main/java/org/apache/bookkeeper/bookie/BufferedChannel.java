@@ -145,6 +145,44 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
         }
     }
 
+    /**
+     * Write all the data in src to the {@link FileChannel} without copying it to the write buffer.
+     *
+     * <p>The data in the write buffer and src are written with a single gathering write, so that a
+     * large buffer is handed to the file system directly instead of being copied first. The data is
+     * written when this method returns, the caller may release src afterwards.
+     *
+     * @param src The source ByteBuf which contains the data to be written.
+     * @throws IOException if a write operation fails.
+     */
+    public void writeWithoutCopy(ByteBuf src) throws IOException {
+        boolean shouldForceWrite = false;
+        synchronized (this) {
+            int len = src.readableBytes();
+            ByteBuffer[] srcBuffers = src.nioBuffers();
+            ByteBuffer[] toWrite = new ByteBuffer[srcBuffers.length + 1];
+            toWrite[0] = writeBuffer.internalNioBuffer(0, writeBuffer.writerIndex());
+            System.arraycopy(srcBuffers, 0, toWrite, 1, srcBuffers.length);
+            ByteBuffer last = toWrite[toWrite.length - 1];
+            do {
+                fileChannel.write(toWrite);
+            } while (last.hasRemaining());
+            writeBuffer.clear();
+            writeBufferStartPosition.set(fileChannel.position());
+
+            position += len;
+            if (doRegularFlushes) {
+                unpersistedBytes.addAndGet(len);
+                if (unpersistedBytes.get() >= unpersistedBytesBound) {
+                    shouldForceWrite = true;
+                }
+            }
+        }
+        if (shouldForceWrite) {
+            forceWrite(false);
+        }
+    }
+
     /**
      * Get the position where the next write operation will begin writing from.
      * @return
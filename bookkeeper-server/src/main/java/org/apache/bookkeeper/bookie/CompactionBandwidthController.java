@@ -0,0 +1,124 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Disk bandwidth budget shared by the incremental compactions of a bookie.
+ *
+ * <p>The compaction rate never exceeds the configured maximum. It is additively increased
+ * while the latency of the foreground read requests stays below the target, and halved,
+ * down to a minimum share of the maximum, when the foreground latency goes above it.
+ */
+public class CompactionBandwidthController {
+    private static final Logger LOG = LoggerFactory.getLogger(CompactionBandwidthController.class);
+
+    private static final long ADJUST_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // The rate is never throttled below this fraction of the max rate, so that compaction always progresses
+    private static final double MIN_RATE_RATIO = 0.1;
+    private static final double INCREASE_RATE_RATIO = 0.1;
+
+    private final double maxRate;
+    private final double minRate;
+    private final long targetLatencyNanos;
+    private final RateLimiter rateLimiter;
+
+    private final LongAdder latencySumNanos = new LongAdder();
+    private final LongAdder latencyCount = new LongAdder();
+    private volatile long lastAdjustNanos = MathUtils.nowInNano();
+
+    public CompactionBandwidthController(ServerConfiguration conf) {
+        this(conf.getIncrementalCompactionMaxBytesPerSecond(),
+                conf.getIncrementalCompactionTargetReadLatencyMillis());
+    }
+
+    CompactionBandwidthController(long maxBytesPerSecond, long targetLatencyMillis) {
+        this.maxRate = maxBytesPerSecond;
+        this.minRate = Math.max(1, maxBytesPerSecond * MIN_RATE_RATIO);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.rateLimiter = RateLimiter.create(maxRate);
+    }
+
+    /**
+     * Record the latency of a foreground request.
+     */
+    public void recordForegroundLatency(long latencyNanos) {
+        if (targetLatencyNanos > 0) {
+            latencySumNanos.add(latencyNanos);
+            latencyCount.increment();
+        }
+    }
+
+    /**
+     * Block until the compaction is allowed to read or write the given number of bytes.
+     */
+    public void acquire(int bytes) {
+        maybeAdjustRate(MathUtils.nowInNano());
+        rateLimiter.acquire(Math.max(1, bytes));
+    }
+
+    public double getRate() {
+        return rateLimiter.getRate();
+    }
+
+    @VisibleForTesting
+    void maybeAdjustRate(long now) {
+        if (targetLatencyNanos <= 0 || now - lastAdjustNanos < ADJUST_INTERVAL_NANOS) {
+            return;
+        }
+
+        synchronized (this) {
+            if (now - lastAdjustNanos < ADJUST_INTERVAL_NANOS) {
+                return;
+            }
+            lastAdjustNanos = now;
+
+            long count = latencyCount.sumThenReset();
+            long sum = latencySumNanos.sumThenReset();
+            double rate = rateLimiter.getRate();
+            double newRate;
+            if (count > 0 && sum / count > targetLatencyNanos) {
+                newRate = Math.max(minRate, rate / 2);
+            } else {
+                newRate = Math.min(maxRate, rate + maxRate * INCREASE_RATE_RATIO);
+            }
+
+            if (newRate != rate) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Compaction rate changed from {} to {} bytes/s, foreground latency: {} us",
+                            rate, newRate, count > 0 ? sum / count / 1000 : 0);
+                }
+                rateLimiter.setRate(newRate);
+            }
+        }
+    }
+}
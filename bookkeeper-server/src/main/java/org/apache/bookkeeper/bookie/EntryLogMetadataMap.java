@@ -58,6 +58,16 @@ public interface EntryLogMetadataMap extends Closeable {
      */
     void forEach(BiConsumer<Long, EntryLogMetadata> action) throws EntryLogMetadataMapException;
 
+    /**
+     * Performs the given action on the record with entryLogId, if it exists into the map.
+     *
+     * @param entryLogId
+     * @param action
+     * @return true if the record exists
+     * @throws EntryLogMetadataMapException
+     */
+    boolean forKey(long entryLogId, BiConsumer<Long, EntryLogMetadata> action) throws EntryLogMetadataMapException;
+
     /**
      * Removes entryLogMetadata record from the map.
      *
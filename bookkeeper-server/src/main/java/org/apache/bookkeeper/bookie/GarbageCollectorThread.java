@@ -28,6 +28,9 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -84,6 +87,14 @@ public class GarbageCollectorThread extends SafeRunnable {
     long majorCompactionMaxTimeMillis;
     long lastMajorCompactionTime;
 
+    final boolean enableIncrementalCompaction;
+    final double incrementalCompactionThreshold;
+    final long incrementalCompactionSliceMillis;
+    Future<?> incrementalCompactionFuture = null;
+    // Entry logs to compact incrementally, only accessed by the gc executor thread
+    private final PriorityQueue<CompactionCandidate> compactionQueue = new PriorityQueue<>();
+    private volatile CompactionBandwidthController compactionBandwidthController;
+
     @Getter
     final boolean isForceGCAllowWhenNoSpace;
 
@@ -124,6 +135,31 @@ public class GarbageCollectorThread extends SafeRunnable {
 
     private static final AtomicLong threadNum = new AtomicLong(0);
     final AbstractLogCompactor.Throttler throttler;
+
+    /**
+     * An entry log to compact incrementally.
+     *
+     * <p>Compacting an entry log reads and rewrites its remaining entries, so the entry
+     * logs which reclaim the most space for each byte compacted are picked first.
+     */
+    static class CompactionCandidate implements Comparable<CompactionCandidate> {
+        // Fixed cost of compacting an entry log, in bytes, so that the almost empty logs don't all look the same
+        private static final long FIXED_COST_BYTES = 1024 * 1024;
+
+        final long entryLogId;
+        final double priority;
+
+        CompactionCandidate(long entryLogId, long totalSize, long remainingSize) {
+            this.entryLogId = entryLogId;
+            this.priority = (double) (totalSize - remainingSize) / (2 * remainingSize + FIXED_COST_BYTES);
+        }
+
+        @Override
+        public int compareTo(CompactionCandidate other) {
+            return Double.compare(other.priority, priority);
+        }
+    }
+
     /**
      * Create a garbage collector thread.
      *
@@ -194,6 +230,9 @@ public class GarbageCollectorThread extends SafeRunnable {
         isForceGCAllowWhenNoSpace = conf.getIsForceGCAllowWhenNoSpace();
         majorCompactionMaxTimeMillis = conf.getMajorCompactionMaxTimeMillis();
         minorCompactionMaxTimeMillis = conf.getMinorCompactionMaxTimeMillis();
+        enableIncrementalCompaction = conf.isIncrementalCompactionEnabled();
+        incrementalCompactionThreshold = conf.getIncrementalCompactionThreshold();
+        incrementalCompactionSliceMillis = conf.getIncrementalCompactionSliceMillis();
 
         boolean isForceAllowCompaction = conf.isForceAllowCompaction();
 
@@ -260,6 +299,21 @@ public class GarbageCollectorThread extends SafeRunnable {
             }
         }
 
+        if (enableIncrementalCompaction) {
+            if (incrementalCompactionThreshold <= 0 || incrementalCompactionThreshold > 1.0f) {
+                throw new IOException("Invalid incremental compaction threshold "
+                                    + incrementalCompactionThreshold);
+            }
+            if (incrementalCompactionSliceMillis <= 0) {
+                throw new IOException("Invalid incremental compaction slice : "
+                                    + incrementalCompactionSliceMillis);
+            }
+            setCompactionBandwidthController(new CompactionBandwidthController(conf));
+            LOG.info("Incremental Compaction : threshold=" + incrementalCompactionThreshold
+                   + ", slice=" + incrementalCompactionSliceMillis
+                   + ", maxBytesPerSecond=" + conf.getIncrementalCompactionMaxBytesPerSecond());
+        }
+
         LOG.info("Minor Compaction : enabled=" + enableMinorCompaction + ", threshold="
                + minorCompactionThreshold + ", interval=" + minorCompactionInterval);
         LOG.info("Major Compaction : enabled=" + enableMajorCompaction + ", threshold="
@@ -356,12 +410,33 @@ public class GarbageCollectorThread extends SafeRunnable {
         }
     }
 
+    /**
+     * Share the disk bandwidth budget of the incremental compaction with other garbage collector threads.
+     */
+    public void setCompactionBandwidthController(CompactionBandwidthController compactionBandwidthController) {
+        this.compactionBandwidthController = compactionBandwidthController;
+        this.throttler.setBandwidthController(compactionBandwidthController);
+        this.compactor.throttler.setBandwidthController(compactionBandwidthController);
+    }
+
+    public CompactionBandwidthController getCompactionBandwidthController() {
+        return compactionBandwidthController;
+    }
+
     public void start() {
         if (scheduledFuture != null) {
             scheduledFuture.cancel(false);
         }
+        if (incrementalCompactionFuture != null) {
+            incrementalCompactionFuture.cancel(false);
+        }
         long initialDelay = getModInitialDelay();
         scheduledFuture = gcExecutor.scheduleAtFixedRate(this, initialDelay, gcWaitTime, TimeUnit.MILLISECONDS);
+        if (enableIncrementalCompaction) {
+            incrementalCompactionFuture = gcExecutor.scheduleWithFixedDelay(
+                    SafeRunnable.safeRun(this::doIncrementalCompaction), initialDelay,
+                    incrementalCompactionSliceMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
@@ -420,6 +495,12 @@ public class GarbageCollectorThread extends SafeRunnable {
             }
 
             long curTime = System.currentTimeMillis();
+            if (enableIncrementalCompaction && !force) {
+                // The entry logs are compacted in the incremental compaction slices
+                gcStats.getGcThreadRuntime().registerSuccessfulEvent(
+                        MathUtils.nowInNano() - threadStart, TimeUnit.NANOSECONDS);
+                return;
+            }
             if (((isForceMajorCompactionAllow && force) || (enableMajorCompaction
                     && (force || curTime - lastMajorCompactionTime > majorCompactionInterval)))
                     && (!suspendMajor)) {
@@ -478,6 +559,7 @@ public class GarbageCollectorThread extends SafeRunnable {
     private void doGcEntryLogs() throws EntryLogMetadataMapException {
         // Get a cumulative count, don't update until complete
         AtomicLong totalEntryLogSizeAcc = new AtomicLong(0L);
+        List<CompactionCandidate> compactionCandidates = enableIncrementalCompaction ? new ArrayList<>() : null;
 
         // Loop through all of the entry logs and remove the non-active ledgers.
         entryLogMetaMap.forEach((entryLogId, meta) -> {
@@ -490,9 +572,15 @@ public class GarbageCollectorThread extends SafeRunnable {
                     LOG.info("Deleting entryLogId {} as it has no active ledgers!", entryLogId);
                     removeEntryLog(entryLogId);
                     gcStats.getReclaimedSpaceViaDeletes().add(meta.getTotalSize());
-                } else if (modified) {
-                    // update entryLogMetaMap only when the meta modified.
-                    entryLogMetaMap.put(meta.getEntryLogId(), meta);
+                } else {
+                    if (modified) {
+                        // update entryLogMetaMap only when the meta modified.
+                        entryLogMetaMap.put(meta.getEntryLogId(), meta);
+                    }
+                    if (compactionCandidates != null && meta.getUsage() < incrementalCompactionThreshold) {
+                        compactionCandidates.add(new CompactionCandidate(entryLogId, meta.getTotalSize(),
+                                meta.getRemainingSize()));
+                    }
                 }
             } catch (EntryLogMetadataMapException e) {
                 // Ignore and continue because ledger will not be cleaned up
@@ -505,6 +593,11 @@ public class GarbageCollectorThread extends SafeRunnable {
 
         this.totalEntryLogSize = totalEntryLogSizeAcc.get();
         this.numActiveEntryLogs = entryLogMetaMap.size();
+
+        if (compactionCandidates != null) {
+            compactionQueue.clear();
+            compactionQueue.addAll(compactionCandidates);
+        }
     }
 
     private boolean removeIfLedgerNotExists(EntryLogMetadata meta) throws EntryLogMetadataMapException {
@@ -584,6 +677,47 @@ public class GarbageCollectorThread extends SafeRunnable {
                 entryLogUsageBuckets, compactedBuckets);
     }
 
+    /**
+     * Run a time slice of the incremental compaction.
+     *
+     * <p>The entry logs are picked from the compaction queue, which is refreshed at every
+     * garbage collection, until the slice is over. An entry log is always compacted as a
+     * whole, at the rate allowed by the compaction bandwidth budget.
+     */
+    @VisibleForTesting
+    void doIncrementalCompaction() {
+        boolean suspendMajor = suspendMajorCompaction.get();
+        if (suspendMinorCompaction.get() || majorCompacting.get() || minorCompacting.get()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        while (running && !compactionQueue.isEmpty()
+                && System.currentTimeMillis() - start < incrementalCompactionSliceMillis) {
+            CompactionCandidate candidate = compactionQueue.poll();
+            try {
+                entryLogMetaMap.forKey(candidate.entryLogId, (entryLogId, meta) -> {
+                    // When the disk is almost full, only compact the entry logs which reclaim a lot of space
+                    double threshold = suspendMajor ? minorCompactionThreshold : incrementalCompactionThreshold;
+                    if (meta.isEmpty() || meta.getUsage() >= threshold) {
+                        return;
+                    }
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Incrementally compacting entry log {} with usage {}",
+                                meta.getEntryLogId(), meta.getUsage());
+                    }
+
+                    long priorRemainingSize = meta.getRemainingSize();
+                    compactEntryLog(meta);
+                    gcStats.getReclaimedSpaceViaCompaction().add(meta.getTotalSize() - priorRemainingSize);
+                    gcStats.getIncrementalCompactionCounter().inc();
+                });
+            } catch (EntryLogMetadataMapException e) {
+                LOG.warn("Failed to read entry-log metadata {}", candidate.entryLogId, e);
+            }
+        }
+    }
+
     /**
      * Calculate the index for the batch based on the usage between 0 and 1.
      *
@@ -662,6 +662,11 @@ public class InterleavedLedgerStorage implements CompactableLedgerStorage, Entry
         return Collections.singletonList(gcThread.getGarbageCollectionStatus());
     }
 
+    @Override
+    public CompactionBandwidthController getCompactionBandwidthController() {
+        return gcThread.getCompactionBandwidthController();
+    }
+
     @Override
     public OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException {
         return ledgerCache.getEntriesIterator(ledgerId);
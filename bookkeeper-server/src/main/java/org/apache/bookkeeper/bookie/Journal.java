@@ -21,9 +21,12 @@
 
 package org.apache.bookkeeper.bookie;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.scurrilous.circe.checksum.Crc32cIntChecksum;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
@@ -63,6 +66,8 @@ import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
 import org.apache.bookkeeper.util.IOUtils;
 import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.compression.CompressionCodec;
+import org.apache.bookkeeper.util.compression.CompressionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -604,28 +609,82 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
     static void writePaddingBytes(JournalChannel jc, ByteBuf paddingBuffer, int journalAlignSize)
             throws IOException {
-        int bytesToAlign = (int) (jc.bc.position() % journalAlignSize);
-        if (0 != bytesToAlign) {
-            int paddingBytes = journalAlignSize - bytesToAlign;
-            if (paddingBytes < 8) {
-                paddingBytes = journalAlignSize - (8 - paddingBytes);
-            } else {
-                paddingBytes -= 8;
-            }
-            paddingBuffer.clear();
-            // padding mask
-            paddingBuffer.writeInt(PADDING_MASK);
-            // padding len
-            paddingBuffer.writeInt(paddingBytes);
-            // padding bytes
-            paddingBuffer.writerIndex(paddingBuffer.writerIndex() + paddingBytes);
-
+        if (fillPaddingBytes(jc.bc.position(), paddingBuffer, journalAlignSize)) {
             jc.preAllocIfNeeded(paddingBuffer.readableBytes());
             // write padding bytes
             jc.bc.write(paddingBuffer);
         }
     }
 
+    /**
+     * Write the padding record needed to align the given journal position into dst.
+     *
+     * @return the journal position after the padding
+     */
+    static long writePaddingBytes(JournalChannel jc, long position, ByteBuf paddingBuffer, ByteBuf dst,
+                                  int journalAlignSize) throws IOException {
+        if (fillPaddingBytes(position, paddingBuffer, journalAlignSize)) {
+            int paddingSize = paddingBuffer.readableBytes();
+            jc.preAllocIfNeeded(position, paddingSize);
+            dst.writeBytes(paddingBuffer, paddingBuffer.readerIndex(), paddingSize);
+            position += paddingSize;
+        }
+        return position;
+    }
+
+    static final int COMPRESSED_BLOCK_MASK = -0x200;
+    // mask, block length, checksum, codec, uncompressed length
+    static final int COMPRESSED_BLOCK_HEADER_SIZE = 4 + 4 + 4 + 1 + 4;
+    // Upper bound of the compression ratio of the supported codecs
+    private static final int MAX_COMPRESSION_RATIO = 1100;
+
+    /**
+     * Compress journal records into a single compressed block record.
+     *
+     * <p>The block starts with {@link #COMPRESSED_BLOCK_MASK} and the length of the rest of
+     * the block, followed by the CRC32C checksum of the rest of the block, the code of the
+     * codec, the length of the uncompressed records and the compressed records. The checksum
+     * detects a block only partially written before a crash, which the codec can't always tell
+     * from valid data.
+     *
+     * @return the block record, or null if compressing does not make the records smaller
+     */
+    static ByteBuf compressBlock(CompressionCodec codec, ByteBuf records) {
+        int uncompressedLen = records.readableBytes();
+        ByteBuf block = codec.compress(records, COMPRESSED_BLOCK_HEADER_SIZE);
+        if (block.readableBytes() >= uncompressedLen) {
+            block.release();
+            return null;
+        }
+        block.setInt(0, COMPRESSED_BLOCK_MASK);
+        block.setInt(4, block.readableBytes() - 8);
+        block.setByte(12, codec.type().code());
+        block.setInt(13, uncompressedLen);
+        block.setInt(8, Crc32cIntChecksum.computeChecksum(block.slice(12, block.readableBytes() - 12)));
+        return block;
+    }
+
+    private static boolean fillPaddingBytes(long position, ByteBuf paddingBuffer, int journalAlignSize) {
+        int bytesToAlign = (int) (position % journalAlignSize);
+        if (0 == bytesToAlign) {
+            return false;
+        }
+        int paddingBytes = journalAlignSize - bytesToAlign;
+        if (paddingBytes < 8) {
+            paddingBytes = journalAlignSize - (8 - paddingBytes);
+        } else {
+            paddingBytes -= 8;
+        }
+        paddingBuffer.clear();
+        // padding mask
+        paddingBuffer.writeInt(PADDING_MASK);
+        // padding len
+        paddingBuffer.writeInt(paddingBytes);
+        // padding bytes
+        paddingBuffer.writerIndex(paddingBuffer.writerIndex() + paddingBytes);
+        return true;
+    }
+
     static final long MB = 1024 * 1024L;
     static final int KB = 1024;
     // max journal file size
@@ -659,6 +718,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
     // Should data be fsynced on disk before triggering the callback
     private final boolean syncData;
+    // Max number of write groups in flight, 0 if the pipelined writes are disabled
+    private final int writePipelineDepth;
+    // Codec used to pack the entries of each group into a compressed block, null if disabled
+    private final CompressionCodec compressionCodec;
+    // Min size of the entries written from their own buffer instead of being copied, 0 if disabled
+    private final int zeroCopyEntrySizeThreshold;
 
     private final LastLogMark lastLogMark = new LastLogMark(0, 0);
 
@@ -719,6 +784,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         this.journalPreAllocSize = conf.getJournalPreAllocSizeMB() * MB;
         this.journalWriteBufferSize = conf.getJournalWriteBufferSizeKB() * KB;
         this.syncData = conf.getJournalSyncData();
+        this.writePipelineDepth = conf.getJournalWritePipelineDepth();
+        checkArgument(writePipelineDepth == 0 || writePipelineDepth >= 2,
+                "Journal write pipeline depth should be 0 or 2 or more : %s", writePipelineDepth);
         this.maxBackupJournals = conf.getMaxBackupJournals();
         this.forceWriteThread = new ForceWriteThread(this, conf.getJournalAdaptiveGroupWrites(),
                 journalStatsLogger);
@@ -726,6 +794,15 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         this.bufferedWritesThreshold = conf.getJournalBufferedWritesThreshold();
         this.bufferedEntriesThreshold = conf.getJournalBufferedEntriesThreshold();
         this.journalFormatVersionToWrite = conf.getJournalFormatVersionToWrite();
+        CompressionCodec codec = CompressionUtils.getCompressionCodec(
+                CompressionUtils.stringToType(conf.getJournalCompressionCodec()));
+        if (codec != null && journalFormatVersionToWrite < JournalChannel.V7) {
+            LOG.warn("Journal compression requires journalFormatVersionToWrite >= {}, journal will not be compressed",
+                    JournalChannel.V7);
+            codec = null;
+        }
+        this.compressionCodec = codec;
+        this.zeroCopyEntrySizeThreshold = conf.getZeroCopyEntrySizeThreshold();
         this.journalAlignmentSize = conf.getJournalAlignmentSize();
         this.journalPageCacheFlushIntervalMSec = conf.getJournalPageCacheFlushIntervalMSec();
         if (conf.getNumJournalCallbackThreads() > 0) {
@@ -872,8 +949,19 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     break;
                 }
                 boolean isPaddingRecord = false;
+                boolean isCompressedBlock = false;
                 if (len < 0) {
-                    if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
+                    if (len == COMPRESSED_BLOCK_MASK && journalVersion >= JournalChannel.V7) {
+                        // read the block length
+                        lenBuff.clear();
+                        fullRead(recLog, lenBuff);
+                        if (lenBuff.remaining() != 0) {
+                            break;
+                        }
+                        lenBuff.flip();
+                        len = lenBuff.getInt();
+                        isCompressedBlock = true;
+                    } else if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
                         // skip padding bytes
                         lenBuff.clear();
                         fullRead(recLog, lenBuff);
@@ -902,7 +990,15 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     break;
                 }
                 recBuff.flip();
-                if (!isPaddingRecord) {
+                if (isCompressedBlock) {
+                    ByteBuf records = decompressBlock(offset, recBuff);
+                    if (records == null) {
+                        // A block only partially written to the preallocated file, this is
+                        // where we left off writing
+                        break;
+                    }
+                    scanBlockRecords(journalVersion, offset, records, scanner);
+                } else if (!isPaddingRecord) {
                     scanner.process(journalVersion, offset, recBuff);
                 }
             }
@@ -912,6 +1008,50 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         }
     }
 
+    /**
+     * @return the records of a compressed block, or null if the block data is incomplete
+     */
+    private static ByteBuf decompressBlock(long offset, ByteBuffer block) throws IOException {
+        int checksum = block.getInt();
+        if (checksum != Crc32cIntChecksum.computeChecksum(Unpooled.wrappedBuffer(block.slice()))) {
+            LOG.warn("Checksum mismatch in journal block at {}", offset);
+            return null;
+        }
+        int codecCode = block.get();
+        CompressionCodec codec = CompressionUtils.getCompressionCodec(CompressionCodec.Type.of(codecCode));
+        if (codec == null) {
+            throw new IOException("Unknown compression codec " + codecCode + " in journal block at " + offset);
+        }
+        int uncompressedLen = block.getInt();
+        if (uncompressedLen < 0 || uncompressedLen > (long) block.remaining() * MAX_COMPRESSION_RATIO) {
+            LOG.warn("Invalid uncompressed length {} of journal block at {}", uncompressedLen, offset);
+            return null;
+        }
+        try {
+            return codec.decompress(Unpooled.wrappedBuffer(block), uncompressedLen);
+        } catch (IOException e) {
+            LOG.warn("Failed to decompress journal block at {}: {}", offset, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void scanBlockRecords(int journalVersion, long offset, ByteBuf records,
+                                         JournalScanner scanner) throws IOException {
+        try {
+            // the block holds regular journal records, all of them are reported at the block offset
+            while (records.isReadable()) {
+                int len = records.readableBytes() >= 4 ? records.readInt() : -1;
+                if (len < 0 || len > records.readableBytes()) {
+                    throw new IOException("Invalid record found in journal block at " + offset);
+                }
+                scanner.process(journalVersion, offset, records.nioBuffer(records.readerIndex(), len));
+                records.skipBytes(len);
+            }
+        } finally {
+            records.release();
+        }
+    }
+
     public void logAddEntry(ByteBuffer entry, boolean ackBeforeSync, WriteCallback cb, Object ctx)
             throws InterruptedException {
         logAddEntry(Unpooled.wrappedBuffer(entry), ackBeforeSync, cb, ctx);
@@ -967,6 +1107,57 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         return queue.size();
     }
 
+    /**
+     * Write the journal records staged in records to the journal file, packed into a
+     * compressed block when that makes them smaller.
+     */
+    private void writeCompressedRecords(JournalChannel jc, ByteBuf records) throws IOException {
+        ByteBuf toWrite = compressRecords(records);
+        try {
+            jc.preAllocIfNeeded(toWrite.readableBytes());
+            jc.bc.write(toWrite);
+        } finally {
+            if (toWrite != records) {
+                toWrite.release();
+            }
+            records.clear();
+        }
+    }
+
+    /**
+     * Write the journal records staged in records into dst, packed into a compressed block
+     * when that makes them smaller.
+     *
+     * @return the journal position after the records
+     */
+    private long writeCompressedRecords(JournalChannel jc, long position, ByteBuf records, ByteBuf dst)
+            throws IOException {
+        ByteBuf toWrite = compressRecords(records);
+        try {
+            int size = toWrite.readableBytes();
+            jc.preAllocIfNeeded(position, size);
+            dst.writeBytes(toWrite, toWrite.readerIndex(), size);
+            return position + size;
+        } finally {
+            if (toWrite != records) {
+                toWrite.release();
+            }
+            records.clear();
+        }
+    }
+
+    private ByteBuf compressRecords(ByteBuf records) {
+        long startTime = MathUtils.nowInNano();
+        ByteBuf block = compressBlock(compressionCodec, records);
+        journalStats.getJournalCompressionStats()
+            .registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+
+        ByteBuf toWrite = block != null ? block : records;
+        journalStats.getJournalCompressionInBytes().add(records.readableBytes());
+        journalStats.getJournalCompressionOutBytes().add(toWrite.readableBytes());
+        return toWrite;
+    }
+
     /**
      * A thread used for persisting journal entries to journal files.
      *
@@ -1003,7 +1194,23 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         BufferedChannel bc = null;
         JournalChannel logFile = null;
-        forceWriteThread.start();
+
+        // With pipelined writes, the entries of the current group are staged in a buffer and the
+        // pipeline takes care of both writing and force writing the groups
+        JournalWritePipeline pipeline = null;
+        ByteBuf groupBuffer = null;
+        long groupStartPosition = 0;
+        long writePosition = 0;
+        // With compression, the entries of the current group are staged uncompressed and
+        // written as a single block when the group is flushed
+        ByteBuf recordsBuffer = compressionCodec != null ? allocator.heapBuffer(journalWriteBufferSize) : null;
+        if (writePipelineDepth > 0) {
+            pipeline = new JournalWritePipeline(writePipelineDepth, journalWriteBufferSize, allocator, syncData,
+                    cbThreadPool, lastLogMark, journalStats, memoryLimitController, this);
+            LOG.info("Using pipelined journal writes with {} groups in flight", writePipelineDepth);
+        } else {
+            forceWriteThread.start();
+        }
         Stopwatch journalCreationWatcher = Stopwatch.createUnstarted();
         Stopwatch journalFlushWatcher = Stopwatch.createUnstarted();
         long batchSize = 0;
@@ -1039,6 +1246,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     bc = logFile.getBufferedChannel();
 
                     lastFlushPosition = bc.position();
+                    groupStartPosition = lastFlushPosition;
+                    writePosition = lastFlushPosition;
                 }
 
                 if (qe == null) {
@@ -1090,7 +1299,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             journalStats.getFlushMaxWaitCounter().inc();
                         } else if (qe != null
                                 && ((bufferedEntriesThreshold > 0 && toFlush.size() > bufferedEntriesThreshold)
-                                || (bc.position() > lastFlushPosition + bufferedWritesThreshold))) {
+                                || ((pipeline != null ? writePosition : bc.position())
+                                    + (recordsBuffer != null ? recordsBuffer.readableBytes() : 0)
+                                    > lastFlushPosition + bufferedWritesThreshold))) {
                             // 2. If we have buffered more than the buffWriteThreshold or bufferedEntriesThreshold
                             groupWhenTimeout = false;
                             shouldFlush = true;
@@ -1106,7 +1317,52 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         }
 
                         // toFlush is non null and not empty so should be safe to access getFirst
-                        if (shouldFlush) {
+                        if (shouldFlush && pipeline != null) {
+                            if (groupBuffer == null) {
+                                groupBuffer = pipeline.takeBuffer();
+                            }
+                            if (recordsBuffer != null && recordsBuffer.isReadable()) {
+                                writePosition = writeCompressedRecords(logFile, writePosition, recordsBuffer,
+                                        groupBuffer);
+                            }
+                            if (journalFormatVersionToWrite >= JournalChannel.V5) {
+                                writePosition = writePaddingBytes(logFile, writePosition, paddingBuff, groupBuffer,
+                                        journalAlignmentSize);
+                            }
+                            lastFlushPosition = writePosition;
+
+                            journalStats.getForceWriteBatchEntriesStats()
+                                .registerSuccessfulValue(numEntriesToFlush);
+                            journalStats.getForceWriteBatchBytesStats()
+                                .registerSuccessfulValue(batchSize);
+
+                            boolean shouldRolloverJournal = (lastFlushPosition > maxJournalSize);
+                            // Same sync conditions as for the force write thread below
+                            boolean shouldForceWrite = syncData
+                                    || shouldRolloverJournal
+                                    || (System.currentTimeMillis() - lastFlushTimeMs
+                                    >= journalPageCacheFlushIntervalMSec);
+                            if (shouldForceWrite) {
+                                lastFlushTimeMs = System.currentTimeMillis();
+                            }
+                            pipeline.submit(logFile, logId, groupBuffer, groupStartPosition, toFlush,
+                                    shouldForceWrite, shouldRolloverJournal);
+                            groupBuffer = null;
+                            groupStartPosition = writePosition;
+
+                            toFlush = entryListRecycler.newInstance();
+                            numEntriesToFlush = 0;
+
+                            batchSize = 0L;
+                            if (shouldRolloverJournal) {
+                                // the pipeline closes the journal file once its last group is durable
+                                logFile = null;
+                                continue;
+                            }
+                        } else if (shouldFlush) {
+                            if (recordsBuffer != null && recordsBuffer.isReadable()) {
+                                writeCompressedRecords(logFile, recordsBuffer);
+                            }
                             if (journalFormatVersionToWrite >= JournalChannel.V5) {
                                 writePaddingBytes(logFile, paddingBuff, journalAlignmentSize);
                             }
@@ -1202,13 +1458,42 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     lenBuff.clear();
                     lenBuff.writeInt(entrySize);
 
-                    // preAlloc based on size
-                    logFile.preAllocIfNeeded(4 + entrySize);
-
-                    bc.write(lenBuff);
-                    bc.write(qe.entry);
-                    memoryLimitController.releaseMemory(qe.entry.readableBytes());
-                    qe.entry.release();
+                    // Large entries received in direct buffers are written from the buffer itself,
+                    // unless they are compressed
+                    boolean referenceEntry = recordsBuffer == null && zeroCopyEntrySizeThreshold > 0
+                            && entrySize >= zeroCopyEntrySizeThreshold && qe.entry.isDirect();
+                    if (recordsBuffer != null) {
+                        recordsBuffer.writeInt(entrySize);
+                        recordsBuffer.writeBytes(qe.entry, qe.entry.readerIndex(), entrySize);
+                    } else if (pipeline != null) {
+                        if (groupBuffer == null) {
+                            groupBuffer = pipeline.takeBuffer();
+                        }
+                        logFile.preAllocIfNeeded(writePosition, 4 + entrySize);
+
+                        groupBuffer.writeInt(entrySize);
+                        if (referenceEntry) {
+                            // the pipeline releases the entry once its group is written
+                            pipeline.addReferencedEntry(groupBuffer, qe.entry);
+                        } else {
+                            groupBuffer.writeBytes(qe.entry, qe.entry.readerIndex(), entrySize);
+                        }
+                        writePosition += 4 + entrySize;
+                    } else {
+                        // preAlloc based on size
+                        logFile.preAllocIfNeeded(4 + entrySize);
+
+                        bc.write(lenBuff);
+                        if (referenceEntry) {
+                            bc.writeWithoutCopy(qe.entry);
+                        } else {
+                            bc.write(qe.entry);
+                        }
+                    }
+                    if (!referenceEntry || pipeline == null) {
+                        memoryLimitController.releaseMemory(qe.entry.readableBytes());
+                        qe.entry.release();
+                    }
                 }
 
                 toFlush.add(qe);
@@ -1226,6 +1511,19 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             // the bookie. If we execute this as a part of graceful shutdown,
             // close will flush the file system cache making any previous
             // cached writes durable so this is fine as well.
+            if (pipeline != null) {
+                try {
+                    pipeline.shutdown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (groupBuffer != null) {
+                    groupBuffer.release();
+                }
+            }
+            if (recordsBuffer != null) {
+                recordsBuffer.release();
+            }
             IOUtils.close(LOG, bc);
         }
         LOG.info("Journal exited loop!");
@@ -70,11 +70,13 @@ class JournalChannel implements Closeable {
     static final int V5 = 5;
     // Adding explicit lac entry
     public static final int V6 = 6;
+    // Adding compressed blocks of entries
+    public static final int V7 = 7;
 
     static final int HEADER_SIZE = SECTOR_SIZE; // align header to sector size
     static final int VERSION_HEADER_SIZE = 8; // 4byte magic word, 4 byte version
     static final int MIN_COMPAT_JOURNAL_FORMAT_VERSION = V1;
-    static final int CURRENT_JOURNAL_FORMAT_VERSION = V6;
+    static final int CURRENT_JOURNAL_FORMAT_VERSION = V7;
 
     private final long preAllocSize;
     private final int journalAlignSize;
@@ -260,7 +262,15 @@ class JournalChannel implements Closeable {
     }
 
     void preAllocIfNeeded(long size) throws IOException {
-        if (bc.position() + size > nextPrealloc) {
+        preAllocIfNeeded(bc.position(), size);
+    }
+
+    /**
+     * Pre-allocate the file when writing size bytes at the given position, for writers
+     * that don't go through the buffered channel.
+     */
+    void preAllocIfNeeded(long position, long size) throws IOException {
+        if (position + size > nextPrealloc) {
             nextPrealloc += preAllocSize;
             zeros.clear();
             fc.write(zeros, nextPrealloc - journalAlignSize);
@@ -284,6 +294,21 @@ class JournalChannel implements Closeable {
             LOG.debug("Journal ForceWrite");
         }
         long newForceWritePosition = bc.forceWrite(forceMetadata);
+        removeFromPageCacheIfNeeded(newForceWritePosition);
+    }
+
+    /**
+     * Force write the data written directly to the file channel, up to the given position.
+     */
+    void forceWrite(boolean forceMetadata, long writtenPosition) throws IOException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Journal ForceWrite up to {}", writtenPosition);
+        }
+        fc.force(forceMetadata);
+        removeFromPageCacheIfNeeded(writtenPosition);
+    }
+
+    private synchronized void removeFromPageCacheIfNeeded(long newForceWritePosition) {
         //
         // For POSIX_FADV_DONTNEED, we want to drop from the beginning
         // of the file to a position prior to the current position.
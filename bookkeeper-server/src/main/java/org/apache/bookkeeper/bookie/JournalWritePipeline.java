@@ -0,0 +1,432 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.bookie.Journal.LastLogMark;
+import org.apache.bookkeeper.bookie.Journal.QueueEntry;
+import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.apache.bookkeeper.common.collections.RecyclableArrayList;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pipelined writer for the {@link Journal}.
+ *
+ * <p>The journal thread serializes the entries of a group into a staging buffer and
+ * submits it along with the offset of the group in the journal file. Each group is
+ * then written with a positional write and, if required, force written by one of the
+ * writer threads, so that up to {@code depth} groups are in flight at the same time:
+ * the journal thread keeps filling the next buffer while the previous groups are being
+ * written and synced.
+ *
+ * <p>Groups complete in any order, but are released in submission order: the callbacks
+ * of a group, the update of the last log mark and the close of a rolled journal file
+ * only happen once all the previous groups have been released. A force write only
+ * starts once all the previous groups are written, so that it covers them as well, and
+ * is skipped when a force write on the same file already started after the group was
+ * written.
+ *
+ * <p>Large entries can be referenced instead of being copied into the staging buffer: the
+ * group is then written as the staging buffer interleaved with the referenced entries,
+ * which are released, along with their journal memory, once the group is written.
+ */
+class JournalWritePipeline {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalWritePipeline.class);
+
+    // Buffers that grew larger than this factor of the initial size are not reused
+    private static final int MAX_RETAINED_BUFFER_FACTOR = 4;
+
+    /**
+     * A journal file written by the pipeline.
+     */
+    private static class JournalFile {
+        final JournalChannel channel;
+        // all the groups of this file up to this sequence are durable
+        long forcedSeq = -1;
+
+        JournalFile(JournalChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * An entry written from its own buffer, at a position of the staging buffer of its group.
+     */
+    private static class ReferencedEntry {
+        final int stagingIndex;
+        final ByteBuf entry;
+
+        ReferencedEntry(int stagingIndex, ByteBuf entry) {
+            this.stagingIndex = stagingIndex;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * A group of journal entries, written with a single write.
+     */
+    private static class WriteGroup {
+        long seq;
+        JournalFile file;
+        long logId;
+        long offset;
+        long endPosition;
+        ByteBuf data;
+        List<ReferencedEntry> referencedEntries;
+        RecyclableArrayList<QueueEntry> waiters;
+        boolean forceWrite;
+        boolean closeFile;
+        boolean written;
+        boolean durable;
+    }
+
+    private final int depth;
+    private final int bufferSize;
+    private final ByteBufAllocator allocator;
+    private final boolean syncData;
+    private final ExecutorService cbThreadPool;
+    private final LastLogMark lastLogMark;
+    private final JournalStats journalStats;
+    private final MemoryLimitController memoryLimitController;
+    private final Thread journalThread;
+
+    private final ExecutorService writers;
+    private final BlockingQueue<ByteBuf> freeBuffers;
+
+    // in flight groups, indexed by sequence modulo depth
+    private final WriteGroup[] groups;
+    // only accessed by the journal thread
+    private long nextSeq = 0;
+    private JournalFile currentFile;
+    private List<ReferencedEntry> pendingEntries = new ArrayList<>();
+    private long pendingEntriesBytes = 0;
+
+    // highest sequence such that all the groups up to it are written
+    private long writtenSeq = -1;
+    // highest sequence such that all the groups up to it are released
+    private long releasedSeq = -1;
+    private volatile boolean failed = false;
+
+    JournalWritePipeline(int depth, int bufferSize, ByteBufAllocator allocator, boolean syncData,
+                         ExecutorService cbThreadPool, LastLogMark lastLogMark, JournalStats journalStats,
+                         MemoryLimitController memoryLimitController, Thread journalThread) {
+        checkArgument(depth >= 2, "Journal write pipeline depth should be 2 or more : %s", depth);
+        this.depth = depth;
+        this.bufferSize = bufferSize;
+        this.allocator = allocator;
+        this.syncData = syncData;
+        this.cbThreadPool = cbThreadPool;
+        this.lastLogMark = lastLogMark;
+        this.journalStats = journalStats;
+        this.memoryLimitController = memoryLimitController;
+        this.journalThread = journalThread;
+
+        this.groups = new WriteGroup[depth];
+        this.freeBuffers = new ArrayBlockingQueue<>(depth);
+        for (int i = 0; i < depth; i++) {
+            freeBuffers.add(allocator.directBuffer(bufferSize));
+        }
+        this.writers = Executors.newFixedThreadPool(depth, new DefaultThreadFactory("bookie-journal-writer"));
+    }
+
+    /**
+     * Get a buffer to stage the entries of the next group.
+     *
+     * <p>Blocks while there are already {@code depth} groups in flight.
+     */
+    ByteBuf takeBuffer() throws InterruptedException {
+        return freeBuffers.take();
+    }
+
+    /**
+     * Add an entry to the next group without copying it, at the current end of its staging buffer.
+     *
+     * <p>The pipeline takes ownership of the entry and releases it, along with its journal memory,
+     * once the group is written. The position of the next group must account for the entry.
+     *
+     * @param data the buffer staging the next group
+     * @param entry the entry to write after the bytes currently staged
+     */
+    void addReferencedEntry(ByteBuf data, ByteBuf entry) {
+        pendingEntries.add(new ReferencedEntry(data.writerIndex(), entry));
+        pendingEntriesBytes += entry.readableBytes();
+    }
+
+    /**
+     * Submit a group of entries staged in a buffer obtained from {@link #takeBuffer()}.
+     *
+     * @param logFile the journal file to write to
+     * @param logId the id of the journal file
+     * @param data the serialized entries, the pipeline takes ownership of it
+     * @param offset the position of the group in the journal file
+     * @param waiters the entries to acknowledge once the group is written, or durable
+     * @param forceWrite whether the group must be force written
+     * @param closeFile whether the journal file must be closed after this group
+     */
+    void submit(JournalChannel logFile, long logId, ByteBuf data, long offset,
+                RecyclableArrayList<QueueEntry> waiters, boolean forceWrite, boolean closeFile) throws IOException {
+        if (failed) {
+            throw new IOException("Journal write pipeline failed");
+        }
+        if (currentFile == null || currentFile.channel != logFile) {
+            currentFile = new JournalFile(logFile);
+        }
+
+        WriteGroup group = new WriteGroup();
+        group.seq = nextSeq++;
+        group.file = currentFile;
+        group.logId = logId;
+        group.offset = offset;
+        group.endPosition = offset + data.readableBytes() + pendingEntriesBytes;
+        group.data = data;
+        if (!pendingEntries.isEmpty()) {
+            group.referencedEntries = pendingEntries;
+            pendingEntries = new ArrayList<>();
+            pendingEntriesBytes = 0;
+        }
+        group.waiters = waiters;
+        group.forceWrite = forceWrite;
+        group.closeFile = closeFile;
+
+        synchronized (this) {
+            groups[slot(group.seq)] = group;
+        }
+        writers.execute(() -> process(group));
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % depth);
+    }
+
+    private void process(WriteGroup group) {
+        try {
+            write(group);
+            if (group.forceWrite) {
+                forceWrite(group);
+            }
+            onDurable(group);
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        }
+    }
+
+    private void write(WriteGroup group) throws IOException {
+        long startTime = MathUtils.nowInNano();
+        if (group.referencedEntries == null) {
+            writeFully(group.file, group.data.nioBuffer(), group.offset);
+        } else {
+            long position = group.offset;
+            int stagingIndex = group.data.readerIndex();
+            for (ReferencedEntry referenced : group.referencedEntries) {
+                position = writeFully(group.file,
+                        group.data.nioBuffer(stagingIndex, referenced.stagingIndex - stagingIndex), position);
+                stagingIndex = referenced.stagingIndex;
+                for (ByteBuffer toWrite : referenced.entry.nioBuffers()) {
+                    position = writeFully(group.file, toWrite, position);
+                }
+            }
+            writeFully(group.file, group.data.nioBuffer(stagingIndex, group.data.writerIndex() - stagingIndex),
+                    position);
+            releaseReferencedEntries(group);
+        }
+        journalStats.getJournalFlushStats()
+            .registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+
+        synchronized (this) {
+            group.written = true;
+            WriteGroup next;
+            while ((next = groups[slot(writtenSeq + 1)]) != null && next.seq == writtenSeq + 1 && next.written) {
+                // The data is in the file, acknowledge the entries which don't need to wait for the sync
+                RecyclableArrayList<QueueEntry> waiters = next.waiters;
+                for (int i = 0; i < waiters.size(); i++) {
+                    QueueEntry qe = waiters.get(i);
+                    if (qe != null && (!syncData || qe.ackBeforeSync)) {
+                        waiters.set(i, null);
+                        cbThreadPool.execute(qe);
+                    }
+                }
+                writtenSeq++;
+            }
+            notifyAll();
+        }
+    }
+
+    private static long writeFully(JournalFile file, ByteBuffer toWrite, long position) throws IOException {
+        while (toWrite.hasRemaining()) {
+            position += file.channel.fc.write(toWrite, position);
+        }
+        return position;
+    }
+
+    private void releaseReferencedEntries(WriteGroup group) {
+        List<ReferencedEntry> referencedEntries;
+        synchronized (this) {
+            referencedEntries = group.referencedEntries;
+            group.referencedEntries = null;
+        }
+        if (referencedEntries != null) {
+            releaseReferencedEntries(referencedEntries);
+        }
+    }
+
+    private void releaseReferencedEntries(List<ReferencedEntry> referencedEntries) {
+        for (ReferencedEntry referenced : referencedEntries) {
+            memoryLimitController.releaseMemory(referenced.entry.readableBytes());
+            referenced.entry.release();
+        }
+    }
+
+    private void forceWrite(WriteGroup group) throws IOException, InterruptedException {
+        long forcedSeq;
+        synchronized (this) {
+            while (writtenSeq < group.seq && !failed) {
+                wait();
+            }
+            if (failed) {
+                throw new IOException("Journal write pipeline failed");
+            }
+            if (group.file.forcedSeq >= group.seq) {
+                // Already covered by a force write which started after this group was written
+                return;
+            }
+            forcedSeq = writtenSeq;
+        }
+
+        long startTime = MathUtils.nowInNano();
+        try {
+            group.file.channel.forceWrite(false, group.endPosition);
+            journalStats.getJournalSyncStats()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            journalStats.getJournalSyncStats()
+                .registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            throw e;
+        }
+
+        synchronized (this) {
+            group.file.forcedSeq = Math.max(group.file.forcedSeq, forcedSeq);
+        }
+    }
+
+    private synchronized void onDurable(WriteGroup group) {
+        group.durable = true;
+
+        WriteGroup next;
+        while ((next = groups[slot(releasedSeq + 1)]) != null && next.seq == releasedSeq + 1 && next.durable) {
+            RecyclableArrayList<QueueEntry> waiters = next.waiters;
+            for (int i = 0; i < waiters.size(); i++) {
+                QueueEntry qe = waiters.get(i);
+                if (qe != null) {
+                    cbThreadPool.execute(qe);
+                }
+            }
+            waiters.recycle();
+
+            if (next.forceWrite) {
+                lastLogMark.setCurLogMark(next.logId, next.endPosition);
+            }
+            if (next.closeFile) {
+                try {
+                    next.file.channel.close();
+                } catch (IOException ioe) {
+                    LOG.error("I/O exception while closing file", ioe);
+                }
+            }
+
+            groups[slot(next.seq)] = null;
+            releasedSeq++;
+            recycleBuffer(next.data);
+        }
+    }
+
+    private void recycleBuffer(ByteBuf buffer) {
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_FACTOR * bufferSize) {
+            buffer.release();
+            buffer = allocator.directBuffer(bufferSize);
+        } else {
+            buffer.clear();
+        }
+        freeBuffers.add(buffer);
+    }
+
+    private void fail(Exception e) {
+        LOG.error("I/O exception in journal writer thread", e);
+        synchronized (this) {
+            failed = true;
+            notifyAll();
+        }
+        // The journal thread must exit, as some of the entries will never be acknowledged
+        journalThread.interrupt();
+    }
+
+    /**
+     * Wait for the in flight groups to be written and stop the writer threads.
+     */
+    void shutdown() throws InterruptedException {
+        writers.shutdown();
+        if (!writers.awaitTermination(5, TimeUnit.SECONDS)) {
+            LOG.warn("Journal writer threads did not terminate in time");
+            writers.shutdownNow();
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < depth; i++) {
+                if (groups[i] != null) {
+                    groups[i].data.release();
+                    if (groups[i].referencedEntries != null) {
+                        releaseReferencedEntries(groups[i].referencedEntries);
+                        groups[i].referencedEntries = null;
+                    }
+                    groups[i] = null;
+                }
+            }
+        }
+        releaseReferencedEntries(pendingEntries);
+        pendingEntries.clear();
+        pendingEntriesBytes = 0;
+        ByteBuf buffer;
+        while ((buffer = freeBuffers.poll()) != null) {
+            buffer.release();
+        }
+    }
+}
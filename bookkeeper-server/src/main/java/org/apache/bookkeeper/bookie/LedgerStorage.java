@@ -296,6 +296,16 @@ public interface LedgerStorage {
         return Collections.emptyList();
     }
 
+    /**
+     * Get the disk bandwidth budget of the incremental compaction, which is adjusted based
+     * on the latency of the foreground requests.
+     *
+     * @return the compaction bandwidth controller, or null if incremental compaction is disabled
+     */
+    default CompactionBandwidthController getCompactionBandwidthController() {
+        return null;
+    }
+
     /**
      * Returns the primitive long iterator for entries of the ledger, stored in
      * this LedgerStorage. The returned iterator provide weakly consistent state
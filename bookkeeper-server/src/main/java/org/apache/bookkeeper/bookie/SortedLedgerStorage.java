@@ -389,6 +389,11 @@ public class SortedLedgerStorage
         return interleavedLedgerStorage.getGarbageCollectionStatus();
     }
 
+    @Override
+    public CompactionBandwidthController getCompactionBandwidthController() {
+        return interleavedLedgerStorage.getCompactionBandwidthController();
+    }
+
     @Override
     public PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException {
         PrimitiveIterator.OfLong entriesInMemtableItr = memTable.getListOfEntriesOfLedger(ledgerId);
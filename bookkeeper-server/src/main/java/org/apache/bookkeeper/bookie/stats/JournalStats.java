@@ -24,6 +24,9 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CB_QUEUE_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COMPRESSION_IN_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COMPRESSION_LATENCY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COMPRESSION_OUT_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CREATION_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FLUSH_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_LEDGER;
@@ -173,6 +176,21 @@ public class JournalStats {
         help = "The number of bytes appended to the journal"
     )
     private final Counter journalWriteBytes;
+    @StatsDoc(
+        name = JOURNAL_COMPRESSION_LATENCY,
+        help = "operation stats of compressing the entries of a journal group commit into a block"
+    )
+    private final OpStatsLogger journalCompressionStats;
+    @StatsDoc(
+        name = JOURNAL_COMPRESSION_IN_BYTES,
+        help = "The number of bytes of journal records passed to the journal compression codec"
+    )
+    private final Counter journalCompressionInBytes;
+    @StatsDoc(
+        name = JOURNAL_COMPRESSION_OUT_BYTES,
+        help = "The number of bytes written to the journal for the records passed to the compression codec"
+    )
+    private final Counter journalCompressionOutBytes;
     @StatsDoc(
             name = JOURNAL_MEMORY_MAX,
             help = "The max amount of memory in bytes that can be used by the bookie journal"
@@ -208,6 +226,9 @@ public class JournalStats {
                 statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_OUTSTANDING_BYTES);
         flushEmptyQueueCounter = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE);
         journalWriteBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_WRITE_BYTES);
+        journalCompressionStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_COMPRESSION_LATENCY);
+        journalCompressionInBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_COMPRESSION_IN_BYTES);
+        journalCompressionOutBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_COMPRESSION_OUT_BYTES);
 
         journalMemoryMaxStats = new Gauge<Long>() {
             @Override
@@ -114,6 +114,13 @@ class Buffer {
         byteBuffer.putInt(value);
     }
 
+    /**
+     * Write a long to buffer. Progresses the position of the buffer by 8 bytes.
+     */
+    void writeLong(long value) throws IOException {
+        byteBuffer.putLong(value);
+    }
+
     /**
      * Write a btebuf to this buffer. Progresses the position of the buffer by the
      * number of readable bytes of the bytebuf. Progresses the readerIndex of the passed
@@ -0,0 +1,166 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.bookie.storage.EntryLogger.LOG_FILE_SUFFIX;
+
+import com.google.common.base.MoreObjects;
+import io.netty.buffer.ByteBuf;
+import java.io.File;
+import java.io.IOException;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.util.HardLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compaction entry log for the {@link DirectEntryLogger}.
+ *
+ * <p>Compacted entries are written to {@code <dst>.log.compacting}. Once flushed, the log
+ * is hard linked to {@code <dst>.log.<src>.compacted}, which survives a bookie restart, and
+ * then to {@code <dst>.log} to make it available for reads.
+ */
+class DirectCompactionEntryLog implements CompactionEntryLog {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectCompactionEntryLog.class);
+
+    private final DirectEntryLogger entryLogger;
+    private final long srcLogId;
+    private final long dstLogId;
+    private final File compactingFile;
+    private final File compactedFile;
+    private final File finalFile;
+    private DirectWriter writer;
+
+    static DirectCompactionEntryLog newLog(DirectEntryLogger entryLogger, long srcLogId, long dstLogId)
+            throws IOException {
+        DirectCompactionEntryLog log = new DirectCompactionEntryLog(entryLogger, srcLogId, dstLogId);
+        log.writer = entryLogger.newWriter(dstLogId, DirectEntryLogger.COMPACTING_SUFFIX);
+        return log;
+    }
+
+    static DirectCompactionEntryLog recoverLog(DirectEntryLogger entryLogger, long srcLogId, long dstLogId) {
+        return new DirectCompactionEntryLog(entryLogger, srcLogId, dstLogId);
+    }
+
+    private DirectCompactionEntryLog(DirectEntryLogger entryLogger, long srcLogId, long dstLogId) {
+        this.entryLogger = entryLogger;
+        this.srcLogId = srcLogId;
+        this.dstLogId = dstLogId;
+        this.compactingFile = entryLogger.logFile(dstLogId, DirectEntryLogger.COMPACTING_SUFFIX);
+        this.compactedFile = entryLogger.compactedLogFile(dstLogId, srcLogId);
+        this.finalFile = entryLogger.logFile(dstLogId, LOG_FILE_SUFFIX);
+    }
+
+    @Override
+    public long addEntry(long ledgerId, ByteBuf entry) throws IOException {
+        if (writer == null) {
+            throw new IOException("Compaction log " + this + " is not writable");
+        }
+        return (dstLogId << 32L) | writer.writeDelimited(ledgerId, entry);
+    }
+
+    @Override
+    public void scan(EntryLogScanner scanner) throws IOException {
+        File file = compactedFile.exists() ? compactedFile : compactingFile;
+        entryLogger.scanFile(file, dstLogId, scanner);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (writer != null) {
+            DirectWriter w = writer;
+            writer = null;
+            try {
+                w.finalizeAndClose();
+            } finally {
+                entryLogger.writerFinalized(dstLogId);
+            }
+        }
+    }
+
+    @Override
+    public void abort() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close compaction log {}", this, e);
+            }
+            writer = null;
+            entryLogger.writerFinalized(dstLogId);
+        }
+        deleteIfExists(compactingFile);
+        deleteIfExists(compactedFile);
+    }
+
+    @Override
+    public void markCompacted() throws IOException {
+        if (compactingFile.exists()) {
+            if (!compactedFile.exists()) {
+                HardLink.createHardLink(compactingFile, compactedFile);
+            }
+        } else {
+            throw new IOException("Compaction log doesn't exist any more after flush: " + compactingFile);
+        }
+        deleteIfExists(compactingFile);
+    }
+
+    @Override
+    public void makeAvailable() throws IOException {
+        if (!finalFile.exists()) {
+            HardLink.createHardLink(compactedFile, finalFile);
+        }
+    }
+
+    @Override
+    public void finalizeAndCleanup() {
+        deleteIfExists(compactedFile);
+        deleteIfExists(compactingFile);
+    }
+
+    @Override
+    public long getDstLogId() {
+        return dstLogId;
+    }
+
+    @Override
+    public long getSrcLogId() {
+        return srcLogId;
+    }
+
+    private static void deleteIfExists(File file) {
+        if (file.exists() && !file.delete()) {
+            LOG.warn("Could not delete file: {}", file);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("logId", dstLogId)
+            .add("compactedLogId", srcLogId)
+            .add("compactingLogFile", compactingFile)
+            .add("compactedLogFile", compactedFile)
+            .add("finalLogFile", finalFile)
+            .toString();
+    }
+}
@@ -0,0 +1,665 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.AbstractLogCompactor;
+import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.ShortReadException;
+import org.apache.bookkeeper.bookie.TransactionalEntryLogCompactor;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link EntryLogger} which writes and reads entry logs using direct IO, bypassing
+ * the OS page cache.
+ *
+ * <p>Entries are written in aligned batches through a pool of native buffers, and the log
+ * files are preallocated to their maximum size. When a log reaches its maximum size, a new
+ * log is started and the previous one is finalized (ledgers map index and header written)
+ * in the background; {@link #flush()} waits for these finalizations.
+ *
+ * <p>Each reading thread keeps a small cache of open readers, each of which buffers the
+ * last aligned block read from its log.
+ *
+ * <p>The on-disk format is the same as the one of the default entry logger, except that the
+ * header takes a full alignment block and that blocks of entries may be followed by padding,
+ * which is skipped when scanning. Logs written by the default entry logger can be read.
+ */
+public class DirectEntryLogger implements EntryLogger {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectEntryLogger.class);
+
+    static final String LAST_LOG_ID_FILE = "lastId";
+    static final String COMPACTING_SUFFIX = TransactionalEntryLogCompactor.COMPACTING_SUFFIX;
+    static final String COMPACTED_SUFFIX = TransactionalEntryLogCompactor.COMPACTED_SUFFIX;
+
+    // a writer holds one buffer, and up to 3 writers can be open at the same time
+    // (current log, log being finalized and compaction log)
+    static final int MIN_WRITE_BUFFERS = 4;
+    private static final int MAX_CACHED_READERS_PER_THREAD = 16;
+
+    private final File ledgerDir;
+    private final ByteBufAllocator allocator;
+    private final NativeIO nativeIO;
+    private final long maxFileSize;
+    private final int readBufferSize;
+    private final int maxSaneEntrySize;
+    private final BufferPool writeBuffers;
+    private final ExecutorService writeExecutor;
+    private final ExecutorService finalizeExecutor;
+    private final DirectEntryLoggerStats stats;
+
+    // guarded by this
+    private long lastLogId;
+    private DirectWriter curWriter;
+
+    // logs which have been written to, but not yet completely flushed
+    private final Set<Long> unflushedLogs = ConcurrentHashMap.newKeySet();
+    // rolled logs being finalized in background
+    private final Map<Long, Future<?>> pendingFinalizations = new ConcurrentHashMap<>();
+
+    // readers cached by the reading threads, the readers of a removed log are closed on removal
+    // and dropped from the caches the next time the thread reads the log
+    private final Set<DirectReader> openReaders = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<ReaderCache> readers = ThreadLocal.withInitial(ReaderCache::new);
+
+    private volatile boolean closed = false;
+
+    /**
+     * Create a direct IO entry logger.
+     *
+     * @param ledgerDir the directory where the entry log files are stored
+     * @param nativeIO the native IO implementation
+     * @param allocator the allocator for the entries read
+     * @param maxFileSize the max size of an entry log file
+     * @param totalWriteBufferSize the total size of the native buffers used for writing
+     * @param readBufferSize the size of the native buffer of each reader
+     * @param maxSaneEntrySize the max size of an entry
+     * @param statsLogger the stats logger
+     */
+    public DirectEntryLogger(File ledgerDir,
+                             NativeIO nativeIO,
+                             ByteBufAllocator allocator,
+                             long maxFileSize,
+                             long totalWriteBufferSize,
+                             int readBufferSize,
+                             int maxSaneEntrySize,
+                             StatsLogger statsLogger) throws IOException {
+        int writeBufferSize = alignDown(totalWriteBufferSize / MIN_WRITE_BUFFERS);
+        checkArgument(writeBufferSize >= maxSaneEntrySize + Integer.BYTES,
+                      "Write buffers (%s bytes each) must be larger than the max entry size (%s bytes)",
+                      writeBufferSize, maxSaneEntrySize);
+        checkArgument(Buffer.isAligned(readBufferSize) && readBufferSize > 0,
+                      "Read buffer size (%s) must be a multiple of %s", readBufferSize, Buffer.ALIGNMENT);
+        checkArgument(maxFileSize <= Integer.MAX_VALUE,
+                      "Max entry log size (%s) must fit in the entry location", maxFileSize);
+
+        this.ledgerDir = ledgerDir;
+        this.nativeIO = nativeIO;
+        this.allocator = allocator;
+        this.maxFileSize = maxFileSize;
+        this.readBufferSize = readBufferSize;
+        this.maxSaneEntrySize = maxSaneEntrySize;
+        this.stats = new DirectEntryLoggerStats(statsLogger);
+        this.writeBuffers = new BufferPool(nativeIO, writeBufferSize, MIN_WRITE_BUFFERS);
+        this.writeExecutor = Executors.newSingleThreadExecutor(
+                new DefaultThreadFactory("DirectEntryLogger-write"));
+        this.finalizeExecutor = Executors.newSingleThreadExecutor(
+                new DefaultThreadFactory("DirectEntryLogger-finalize"));
+
+        this.lastLogId = findLastLogId();
+        LOG.info("Created direct IO entry logger on {}, last log id: {}, write buffers: {} x {} bytes,"
+                 + " read buffer: {} bytes", ledgerDir, lastLogId, MIN_WRITE_BUFFERS, writeBufferSize,
+                 readBufferSize);
+    }
+
+    @Override
+    public long addEntry(long ledgerId, ByteBuf buf) throws IOException {
+        long startNanos = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            long location;
+            synchronized (this) {
+                checkOpen();
+                int entrySize = buf.readableBytes() + Integer.BYTES;
+                if (curWriter == null) {
+                    curWriter = newWriter(allocateLogId(), LOG_FILE_SUFFIX);
+                } else if (curWriter.shouldRoll(entrySize)) {
+                    rollWriter();
+                }
+                location = (curWriter.logId() << 32L) | curWriter.writeDelimited(ledgerId, buf);
+            }
+            success = true;
+            return location;
+        } finally {
+            recordEvent(stats.getAddEntryStats(), startNanos, success);
+        }
+    }
+
+    @Override
+    public ByteBuf readEntry(long entryLocation) throws IOException, NoEntryException {
+        return internalReadEntry(-1L, -1L, entryLocation, false);
+    }
+
+    @Override
+    public ByteBuf readEntry(long ledgerId, long entryId, long entryLocation)
+            throws IOException, NoEntryException {
+        return internalReadEntry(ledgerId, entryId, entryLocation, true);
+    }
+
+    private ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validate)
+            throws IOException, NoEntryException {
+        long logId = location >> 32L;
+        long pos = location & 0xffffffffL;
+        long startNanos = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            ByteBuf entry;
+            try {
+                entry = getReader(logId).readEntryAt(pos);
+            } catch (ShortReadException sre) {
+                throw new NoEntryException("Short read from entrylog " + logId + "@" + pos
+                                           + ": " + sre.getMessage(), ledgerId, entryId);
+            }
+            if (validate) {
+                long thisLedgerId = entry.getLong(0);
+                long thisEntryId = entry.getLong(Long.BYTES);
+                if (thisLedgerId != ledgerId || thisEntryId != entryId) {
+                    entry.release();
+                    throw new IOException(exMsg("Bad location").kv("location", location)
+                                          .kv("expectedLedger", ledgerId).kv("expectedEntry", entryId)
+                                          .kv("foundLedger", thisLedgerId).kv("foundEntry", thisEntryId)
+                                          .toString());
+                }
+            }
+            success = true;
+            return entry;
+        } finally {
+            recordEvent(stats.getReadEntryStats(), startNanos, success);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        long startNanos = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            synchronized (this) {
+                if (curWriter != null) {
+                    curWriter.flush();
+                }
+            }
+            waitForFinalizations();
+            success = true;
+        } finally {
+            recordEvent(stats.getFlushStats(), startNanos, success);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            synchronized (this) {
+                if (curWriter != null) {
+                    DirectWriter writer = curWriter;
+                    curWriter = null;
+                    writer.finalizeAndClose();
+                    unflushedLogs.remove(writer.logId());
+                }
+            }
+            waitForFinalizations();
+        } finally {
+            writeExecutor.shutdown();
+            finalizeExecutor.shutdown();
+            for (DirectReader reader : openReaders) {
+                closeQuietly(reader);
+            }
+            openReaders.clear();
+            writeBuffers.close();
+        }
+    }
+
+    @Override
+    public CompactionEntryLog newCompactionLog(long logToCompact) throws IOException {
+        long dstLogId;
+        synchronized (this) {
+            checkOpen();
+            dstLogId = allocateLogId();
+        }
+        return DirectCompactionEntryLog.newLog(this, logToCompact, dstLogId);
+    }
+
+    @Override
+    public Collection<CompactionEntryLog> incompleteCompactionLogs() {
+        List<CompactionEntryLog> compactionLogs = new ArrayList<>();
+
+        File[] compactingFiles = ledgerDir.listFiles(f -> f.getName().endsWith(COMPACTING_SUFFIX));
+        if (compactingFiles != null) {
+            for (File file : compactingFiles) {
+                if (file.delete()) {
+                    LOG.info("Deleted failed compaction file {}", file);
+                }
+            }
+        }
+
+        File[] compactedFiles = ledgerDir.listFiles(f -> f.getName().endsWith(COMPACTED_SUFFIX));
+        if (compactedFiles != null) {
+            for (File compactedFile : compactedFiles) {
+                // <dstLogId>.log.<srcLogId>.compacted
+                String[] parts = compactedFile.getName().split("\\.");
+                long dstLogId = parts.length == 4 ? parseLogId(parts[0]) : -1L;
+                long srcLogId = parts.length == 4 ? parseLogId(parts[2]) : -1L;
+                if (dstLogId < 0 || srcLogId < 0) {
+                    LOG.info("Invalid compacted file found ({}), deleting", compactedFile);
+                    if (!compactedFile.delete()) {
+                        LOG.warn("Couldn't delete invalid compacted file ({})", compactedFile);
+                    }
+                    continue;
+                }
+                LOG.info("Found compacted log file {} has partially flushed index, recovering index.",
+                         compactedFile);
+                compactionLogs.add(DirectCompactionEntryLog.recoverLog(this, srcLogId, dstLogId));
+            }
+        }
+        return compactionLogs;
+    }
+
+    @Override
+    public Collection<Long> getFlushedLogIds() {
+        Set<Long> logIds = new HashSet<>();
+        File[] logFiles = ledgerDir.listFiles(f -> f.getName().endsWith(LOG_FILE_SUFFIX));
+        if (logFiles != null) {
+            for (File f : logFiles) {
+                long logId = parseLogId(f.getName().substring(0, f.getName().length() - LOG_FILE_SUFFIX.length()));
+                if (logId >= 0 && !unflushedLogs.contains(logId)) {
+                    logIds.add(logId);
+                }
+            }
+        }
+        return logIds;
+    }
+
+    @Override
+    public void scanEntryLog(long entryLogId, EntryLogScanner scanner) throws IOException {
+        scanFile(logFile(entryLogId, LOG_FILE_SUFFIX), entryLogId, scanner);
+    }
+
+    @Override
+    public EntryLogMetadata getEntryLogMetadata(long entryLogId, AbstractLogCompactor.Throttler throttler)
+            throws IOException {
+        // First try to extract the EntryLogMetadata from the index, if there's no index then fallback to scanning the
+        // entry log
+        try {
+            return readEntryLogMetadataFromIndex(entryLogId);
+        } catch (IOException e) {
+            LOG.info("Failed to get ledgers map index from: {}.log : {}", entryLogId, e.getMessage());
+        }
+
+        final EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        scanEntryLog(entryLogId, new EntryLogScanner() {
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                if (throttler != null) {
+                    throttler.acquire(entry.readableBytes());
+                }
+                meta.addLedgerSize(ledgerId, entry.readableBytes() + Integer.BYTES);
+            }
+
+            @Override
+            public boolean accept(long ledgerId) {
+                return ledgerId >= 0;
+            }
+        });
+        return meta;
+    }
+
+    @Override
+    public boolean logExists(long logId) {
+        return logFile(logId, LOG_FILE_SUFFIX).exists();
+    }
+
+    @Override
+    public boolean removeEntryLog(long entryLogId) {
+        File file = logFile(entryLogId, LOG_FILE_SUFFIX);
+        if (!file.exists()) {
+            LOG.error("Trying to delete an entryLog file that could not be found: {}", file);
+            return false;
+        }
+        if (!file.delete()) {
+            LOG.warn("Could not delete entry log file {}", file);
+        }
+        // close the readers of the log, so that the deleted file doesn't stay open until
+        // the threads caching them read again
+        for (DirectReader reader : openReaders) {
+            if (reader.logId() == entryLogId) {
+                openReaders.remove(reader);
+                closeQuietly(reader);
+            }
+        }
+        return true;
+    }
+
+    DirectWriter newWriter(long logId, String suffix) throws IOException {
+        File file = logFile(logId, suffix);
+        unflushedLogs.add(logId);
+        try {
+            // compaction logs are usually much smaller than the max log size, don't reserve the space
+            boolean preallocate = !COMPACTING_SUFFIX.equals(suffix);
+            DirectWriter writer = new DirectWriter(logId, file.toString(), maxFileSize, preallocate,
+                                                   writeExecutor, writeBuffers, nativeIO, stats);
+            LOG.info("Created new entry log file {} for logId {}.", file, logId);
+            return writer;
+        } catch (IOException | RuntimeException e) {
+            unflushedLogs.remove(logId);
+            throw e;
+        }
+    }
+
+    void writerFinalized(long logId) {
+        unflushedLogs.remove(logId);
+    }
+
+    File logFile(long logId, String suffix) {
+        return new File(ledgerDir, Long.toHexString(logId) + suffix);
+    }
+
+    File compactedLogFile(long dstLogId, long srcLogId) {
+        return new File(ledgerDir, Long.toHexString(dstLogId) + LOG_FILE_SUFFIX
+                        + "." + Long.toHexString(srcLogId) + COMPACTED_SUFFIX);
+    }
+
+    void scanFile(File file, long logId, EntryLogScanner scanner) throws IOException {
+        try (DirectReader reader = newReader(file, logId)) {
+            Header header = Header.readHeader(reader);
+            long offset = header.headerSize();
+            long end = reader.maxOffset();
+            while (offset + Integer.BYTES <= end) {
+                int entrySize = reader.readIntAt(offset);
+                if (entrySize == 0) {
+                    // end of the written data, the rest of the file was preallocated
+                    break;
+                } else if (entrySize < 0) {
+                    long next = nextAlignment(offset);
+                    if (next == offset) {
+                        LOG.warn("Invalid entry size {} in entry log {} at {}", entrySize, logId, offset);
+                        break;
+                    }
+                    offset = next;
+                    continue;
+                } else if (offset + Integer.BYTES + entrySize > end) {
+                    LOG.warn("Short read for entry of size {} in entry log {} at {}", entrySize, logId, offset);
+                    break;
+                }
+
+                long ledgerId = reader.readLongAt(offset + Integer.BYTES);
+                if (ledgerId != Header.INVALID_LID && scanner.accept(ledgerId)) {
+                    ByteBuf entry = reader.readBufferAt(offset + Integer.BYTES, entrySize);
+                    try {
+                        scanner.process(ledgerId, offset, entry);
+                    } finally {
+                        entry.release();
+                    }
+                }
+                offset += Integer.BYTES + entrySize;
+            }
+        }
+    }
+
+    private EntryLogMetadata readEntryLogMetadataFromIndex(long logId) throws IOException {
+        try (DirectReader reader = newReader(logFile(logId, LOG_FILE_SUFFIX), logId)) {
+            Header header = Header.readHeader(reader);
+            if (header.version < Header.HEADER_V1) {
+                throw new IOException("Old log file header without ledgers map on entryLogId " + logId);
+            }
+            if (header.ledgersMapOffset == 0L) {
+                // The index was not stored in the log file (possibly because the bookie crashed before flushing it)
+                throw new IOException("No ledgers map index found on entryLogId " + logId);
+            }
+
+            EntryLogMetadata meta = new EntryLogMetadata(logId);
+            long offset = header.ledgersMapOffset;
+            long end = reader.maxOffset();
+            while (offset + Integer.BYTES <= end) {
+                int mapSize = reader.readIntAt(offset);
+                if (mapSize == 0) {
+                    break;
+                } else if (mapSize < 0) {
+                    long next = nextAlignment(offset);
+                    if (next == offset) {
+                        break;
+                    }
+                    offset = next;
+                    continue;
+                }
+                long pos = offset + Integer.BYTES;
+                if (reader.readLongAt(pos) != Header.INVALID_LID
+                        || reader.readLongAt(pos + Long.BYTES) != Header.LEDGERS_MAP_ENTRY_ID) {
+                    throw new IOException("Cannot deserialize ledgers map on entryLogId " + logId);
+                }
+                int ledgersCount = reader.readIntAt(pos + 2 * Long.BYTES);
+                if (Header.LEDGERS_MAP_HEADER_SIZE + ledgersCount * Header.LEDGERS_MAP_ENTRY_SIZE != mapSize) {
+                    throw new IOException("Invalid entry size when reading ledgers map on entryLogId " + logId);
+                }
+                pos += Header.LEDGERS_MAP_HEADER_SIZE;
+                for (int i = 0; i < ledgersCount; i++, pos += Header.LEDGERS_MAP_ENTRY_SIZE) {
+                    meta.addLedgerSize(reader.readLongAt(pos), reader.readLongAt(pos + Long.BYTES));
+                }
+                offset += Integer.BYTES + mapSize;
+            }
+
+            if (meta.getLedgersMap().size() != header.ledgersCount) {
+                throw new IOException("Not all ledgers were found in ledgers map index. expected: "
+                        + header.ledgersCount + " -- found: " + meta.getLedgersMap().size()
+                        + " -- entryLogId: " + logId);
+            }
+            return meta;
+        }
+    }
+
+    private DirectReader getReader(long logId) throws IOException {
+        ReaderCache cache = readers.get();
+        DirectReader reader = cache.get(logId);
+        if (reader != null && reader.isClosed()) {
+            cache.remove(logId);
+            reader = null;
+        }
+        if (reader == null) {
+            reader = newReader(logFile(logId, LOG_FILE_SUFFIX), logId);
+            openReaders.add(reader);
+            cache.put(logId, reader);
+        }
+        return reader;
+    }
+
+    private DirectReader newReader(File file, long logId) throws IOException {
+        checkOpen();
+        if (!file.exists()) {
+            throw new FileNotFoundException("No file for log " + Long.toHexString(logId) + ": " + file);
+        }
+        return new DirectReader(logId, file.toString(), allocator, nativeIO,
+                                readBufferSize, maxSaneEntrySize, stats);
+    }
+
+    // must be called with the lock held
+    private void rollWriter() throws IOException {
+        final DirectWriter writer = curWriter;
+        curWriter = newWriter(allocateLogId(), LOG_FILE_SUFFIX);
+        pendingFinalizations.put(writer.logId(), finalizeExecutor.submit(() -> {
+            writer.finalizeAndClose();
+            writerFinalized(writer.logId());
+            return null;
+        }));
+    }
+
+    private void waitForFinalizations() throws IOException {
+        Iterator<Map.Entry<Long, Future<?>>> iter = pendingFinalizations.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Long, Future<?>> e = iter.next();
+            try {
+                e.getValue().get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ie);
+            } catch (ExecutionException ee) {
+                throw new IOException(exMsg("Failed to finalize entry log").kv("logId", e.getKey()).toString(),
+                                      ee.getCause());
+            } finally {
+                iter.remove();
+            }
+        }
+    }
+
+    // must be called with the lock held
+    private long allocateLogId() {
+        do {
+            lastLogId = lastLogId >= Integer.MAX_VALUE ? 0 : lastLogId + 1;
+        } while (logFile(lastLogId, LOG_FILE_SUFFIX).exists() || logFile(lastLogId, COMPACTING_SUFFIX).exists());
+
+        // keep the id file up to date, so that switching back to the default entry logger doesn't reuse ids
+        try {
+            Files.write(new File(ledgerDir, LAST_LOG_ID_FILE).toPath(),
+                        (Long.toHexString(lastLogId) + "\n").getBytes(UTF_8));
+        } catch (IOException e) {
+            LOG.warn("Failed to write {} file in {}", LAST_LOG_ID_FILE, ledgerDir, e);
+        }
+        return lastLogId;
+    }
+
+    private long findLastLogId() {
+        long maxLogId = -1L;
+        try {
+            List<String> lines = Files.readAllLines(new File(ledgerDir, LAST_LOG_ID_FILE).toPath(), UTF_8);
+            if (!lines.isEmpty()) {
+                maxLogId = parseLogId(lines.get(0).trim());
+            }
+        } catch (IOException e) {
+            // fall back to scanning the directory
+        }
+
+        String[] files = ledgerDir.list();
+        if (files != null) {
+            for (String name : files) {
+                int idx = name.indexOf(LOG_FILE_SUFFIX);
+                if (idx > 0) {
+                    maxLogId = Math.max(maxLogId, parseLogId(name.substring(0, idx)));
+                }
+            }
+        }
+        return maxLogId;
+    }
+
+    private static long parseLogId(String hex) {
+        try {
+            return Long.parseLong(hex, 16);
+        } catch (NumberFormatException nfe) {
+            return -1L;
+        }
+    }
+
+    private static long nextAlignment(long offset) {
+        return (offset + Buffer.ALIGNMENT - 1) & ~((long) Buffer.ALIGNMENT - 1);
+    }
+
+    private static int alignDown(long size) {
+        return (int) (Math.min(size, Integer.MAX_VALUE) & ~((long) Buffer.ALIGNMENT - 1));
+    }
+
+    private static void recordEvent(OpStatsLogger logger, long startNanos, boolean success) {
+        if (success) {
+            logger.registerSuccessfulEvent(MathUtils.elapsedNanos(startNanos), TimeUnit.NANOSECONDS);
+        } else {
+            logger.registerFailedEvent(MathUtils.elapsedNanos(startNanos), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException(exMsg("Entry logger is closed").kv("ledgerDir", ledgerDir).toString());
+        }
+    }
+
+    private void closeQuietly(DirectReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close reader {}", reader, e);
+        }
+    }
+
+    /**
+     * Per thread LRU cache of open readers.
+     */
+    private class ReaderCache extends LinkedHashMap<Long, DirectReader> {
+        private static final long serialVersionUID = 1L;
+
+        ReaderCache() {
+            super(MAX_CACHED_READERS_PER_THREAD, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, DirectReader> eldest) {
+            if (size() > MAX_CACHED_READERS_PER_THREAD) {
+                openReaders.remove(eldest.getValue());
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * A umbrella class for direct entry logger stats with one instance per
+ * ledger directory.
+ */
+@StatsDoc(
+    name = BOOKIE_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Direct IO entry logger related stats"
+)
+@Getter
+class DirectEntryLoggerStats {
+    private static final String ADD_ENTRY = "entrylog-add-entry";
+    private static final String READ_ENTRY = "entrylog-read-entry";
+    private static final String FLUSH = "entrylog-flush";
+    private static final String WRITE_BLOCK = "entrylog-write-block";
+    private static final String READ_BLOCK = "entrylog-read-block";
+    private static final String WRITTEN_BYTES = "entrylog-written-bytes";
+    private static final String READ_BYTES = "entrylog-read-bytes";
+
+    @StatsDoc(
+        name = ADD_ENTRY,
+        help = "operation stats of adding entries to the entry log buffers"
+    )
+    private final OpStatsLogger addEntryStats;
+    @StatsDoc(
+        name = READ_ENTRY,
+        help = "operation stats of reading entries from the entry log files"
+    )
+    private final OpStatsLogger readEntryStats;
+    @StatsDoc(
+        name = FLUSH,
+        help = "operation stats of flushing the entry log buffers to disk"
+    )
+    private final OpStatsLogger flushStats;
+    @StatsDoc(
+        name = WRITE_BLOCK,
+        help = "operation stats of the aligned block writes to the entry log files"
+    )
+    private final OpStatsLogger writeBlockStats;
+    @StatsDoc(
+        name = READ_BLOCK,
+        help = "operation stats of the aligned block reads from the entry log files"
+    )
+    private final OpStatsLogger readBlockStats;
+    @StatsDoc(
+        name = WRITTEN_BYTES,
+        help = "number of bytes written to the entry log files, including padding"
+    )
+    private final Counter writtenBytes;
+    @StatsDoc(
+        name = READ_BYTES,
+        help = "number of bytes read from the entry log files"
+    )
+    private final Counter readBytes;
+
+    DirectEntryLoggerStats(StatsLogger stats) {
+        addEntryStats = stats.getOpStatsLogger(ADD_ENTRY);
+        readEntryStats = stats.getOpStatsLogger(READ_ENTRY);
+        flushStats = stats.getOpStatsLogger(FLUSH);
+        writeBlockStats = stats.getOpStatsLogger(WRITE_BLOCK);
+        readBlockStats = stats.getOpStatsLogger(READ_BLOCK);
+        writtenBytes = stats.getCounter(WRITTEN_BYTES);
+        readBytes = stats.getCounter(READ_BYTES);
+    }
+
+    void registerWrite(long bytes, long elapsedNanos) {
+        writeBlockStats.registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        writtenBytes.add(bytes);
+    }
+
+    void registerRead(long bytes, long elapsedNanos) {
+        readBlockStats.registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        readBytes.add(bytes);
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import org.apache.bookkeeper.bookie.ShortReadException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+
+/**
+ * Reads a single entry log file using direct IO, bypassing the page cache.
+ *
+ * <p>Reads are served from an aligned native buffer, which holds the last block read
+ * from the file. Reads which are not covered by the buffer load the aligned block
+ * containing the requested offset, so sequential reads only hit the disk once per
+ * buffer size.
+ *
+ * <p>A reader is not thread safe, it must be used by a single thread. It may however be closed
+ * from another thread while an entry is being read, when its log is removed.
+ */
+class DirectReader implements AutoCloseable {
+    private final long logId;
+    private final String filename;
+    private final NativeIO nativeIO;
+    private final ByteBufAllocator allocator;
+    private final int maxSaneEntrySize;
+    private final DirectEntryLoggerStats stats;
+    private final int fd;
+    private Buffer nativeBuffer;
+
+    // file range currently held in the buffer
+    private long currentBlock = -1;
+    private long currentBlockEnd = -1;
+
+    DirectReader(long logId,
+                 String filename,
+                 ByteBufAllocator allocator,
+                 NativeIO nativeIO,
+                 int bufferSize,
+                 int maxSaneEntrySize,
+                 DirectEntryLoggerStats stats) throws IOException {
+        this.logId = logId;
+        this.filename = filename;
+        this.allocator = allocator;
+        this.nativeIO = nativeIO;
+        this.maxSaneEntrySize = maxSaneEntrySize;
+        this.stats = stats;
+
+        fd = nativeIO.open(filename, NativeIO.O_RDONLY | NativeIO.O_DIRECT, 00644);
+        try {
+            nativeBuffer = new Buffer(nativeIO, bufferSize);
+        } catch (IOException | RuntimeException e) {
+            nativeIO.close(fd);
+            throw e;
+        }
+    }
+
+    long logId() {
+        return logId;
+    }
+
+    /**
+     * @return the current size of the file.
+     */
+    long maxOffset() throws IOException {
+        return nativeIO.lseek(fd, 0, NativeIO.SEEK_END);
+    }
+
+    int readIntAt(long offset) throws IOException {
+        ensureBuffered(offset, Integer.BYTES);
+        return nativeBuffer.readInt((int) (offset - currentBlock));
+    }
+
+    long readLongAt(long offset) throws IOException {
+        ensureBuffered(offset, Long.BYTES);
+        return nativeBuffer.readLong((int) (offset - currentBlock));
+    }
+
+    /**
+     * Read size bytes at offset into a new buffer. The caller owns the returned buffer.
+     */
+    ByteBuf readBufferAt(long offset, int size) throws IOException {
+        ByteBuf buf = allocator.buffer(size, size);
+        try {
+            long pos = offset;
+            int remaining = size;
+            while (remaining > 0) {
+                if (pos < currentBlock || pos >= currentBlockEnd) {
+                    fillBuffer(pos);
+                    if (pos >= currentBlockEnd) {
+                        throw new ShortReadException(exMsg("Short read")
+                                                     .kv("filename", filename).kv("offset", offset)
+                                                     .kv("size", size).kv("read", size - remaining).toString());
+                    }
+                }
+                int bytesToRead = (int) Math.min(remaining, currentBlockEnd - pos);
+                nativeBuffer.readByteBuf(buf, (int) (pos - currentBlock), bytesToRead);
+                pos += bytesToRead;
+                remaining -= bytesToRead;
+            }
+            return buf;
+        } catch (IOException | RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the entry stored at offset. The offset points after the size prefix of the entry.
+     */
+    synchronized ByteBuf readEntryAt(long offset) throws IOException {
+        long sizeOffset = offset - Integer.BYTES;
+        int size = readIntAt(sizeOffset);
+        if (size <= 0) {
+            // the block may have been buffered before the entry was written out,
+            // if the log is still being written to
+            invalidate();
+            size = readIntAt(sizeOffset);
+        }
+        if (size <= 0 || size > maxSaneEntrySize) {
+            throw new IOException(exMsg("Invalid entry size")
+                                  .kv("filename", filename).kv("offset", offset)
+                                  .kv("size", size).toString());
+        }
+        return readBufferAt(offset, size);
+    }
+
+    /**
+     * Drop the buffered data, so that the next read goes to the file.
+     */
+    void invalidate() {
+        currentBlock = -1;
+        currentBlockEnd = -1;
+    }
+
+    synchronized boolean isClosed() {
+        return nativeBuffer == null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (nativeBuffer != null) {
+            nativeBuffer.free();
+            nativeBuffer = null;
+            nativeIO.close(fd);
+        }
+    }
+
+    private void ensureBuffered(long offset, int size) throws IOException {
+        if (offset >= currentBlock && offset + size <= currentBlockEnd) {
+            return;
+        }
+        fillBuffer(offset);
+        if (offset + size > currentBlockEnd) {
+            throw new ShortReadException(exMsg("Short read")
+                                         .kv("filename", filename).kv("offset", offset)
+                                         .kv("size", size).kv("available", currentBlockEnd - offset).toString());
+        }
+    }
+
+    private void fillBuffer(long offset) throws IOException {
+        if (nativeBuffer == null) {
+            throw new IOException(exMsg("Reader is closed").kv("filename", filename).toString());
+        }
+        long blockStart = offset & ~((long) Buffer.ALIGNMENT - 1);
+        long startNanos = System.nanoTime();
+        long bytesRead = nativeIO.pread(fd, nativeBuffer.pointer(), nativeBuffer.size(), blockStart);
+        stats.registerRead(bytesRead, System.nanoTime() - startNanos);
+        currentBlock = blockStart;
+        currentBlockEnd = blockStart + bytesRead;
+    }
+
+    @Override
+    public String toString() {
+        return "DirectReader(logId=" + logId + ", filename=" + filename + ")";
+    }
+}
@@ -0,0 +1,356 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a single entry log file using direct IO.
+ *
+ * <p>Entries are appended to an aligned native buffer. When the buffer is full, it is
+ * padded to the alignment and handed to the write executor, and writing continues in
+ * a new buffer from the pool, so that the caller only blocks when all the buffers of the
+ * pool are in flight. An entry never spans two buffers.
+ *
+ * <p>The file may be preallocated to the maximum log size when the filesystem supports it,
+ * so that appending doesn't need to update the file size metadata on every write. The
+ * preallocated space past the written data is given back when the log is finalized.
+ */
+class DirectWriter implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectWriter.class);
+
+    // fallocate(2) is not supported by all the filesystems, only warn once
+    private static volatile boolean useFallocate = true;
+
+    private final long logId;
+    private final String filename;
+    private final long maxFileSize;
+    private final boolean preallocate;
+    private final NativeIO nativeIO;
+    private final int fd;
+    private final BufferPool bufferPool;
+    private final ExecutorService writeExecutor;
+    private final DirectEntryLoggerStats stats;
+    private final ConcurrentLongLongHashMap ledgersMap;
+
+    private final Object bufferLock = new Object();
+    private final List<Future<?>> outstandingWrites = new ArrayList<>();
+    private Buffer nativeBuffer;
+    // file offset at which the current buffer will be written
+    private long offset;
+    private boolean closed = false;
+
+    DirectWriter(long logId,
+                 String filename,
+                 long maxFileSize,
+                 boolean preallocate,
+                 ExecutorService writeExecutor,
+                 BufferPool bufferPool,
+                 NativeIO nativeIO,
+                 DirectEntryLoggerStats stats) throws IOException {
+        checkArgument(maxFileSize > 0 && maxFileSize <= Integer.MAX_VALUE,
+                      "Invalid max file size %s", maxFileSize);
+        this.logId = logId;
+        this.filename = filename;
+        this.maxFileSize = maxFileSize;
+        this.preallocate = preallocate && useFallocate;
+        this.writeExecutor = writeExecutor;
+        this.bufferPool = bufferPool;
+        this.nativeIO = nativeIO;
+        this.stats = stats;
+        this.ledgersMap = ConcurrentLongLongHashMap.newBuilder()
+                .expectedItems(256)
+                .concurrencyLevel(1)
+                .build();
+
+        fd = nativeIO.open(filename,
+                           NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_DIRECT,
+                           00644);
+        if (this.preallocate) {
+            try {
+                nativeIO.fallocate(fd, 0, 0, maxFileSize);
+            } catch (NativeIOException ex) {
+                LOG.warn("Unable to preallocate entry log file {}, preallocation disabled: {}",
+                         filename, ex.getMessage());
+                useFallocate = false;
+            }
+        }
+
+        nativeBuffer = bufferPool.acquire();
+        offset = 0;
+        Header.writeHeader(nativeBuffer, 0L, 0);
+    }
+
+    long logId() {
+        return logId;
+    }
+
+    String filename() {
+        return filename;
+    }
+
+    /**
+     * @return the file offset at which the next write will be placed.
+     */
+    long position() {
+        synchronized (bufferLock) {
+            return offset + nativeBuffer.position();
+        }
+    }
+
+    /**
+     * @return whether writing size more bytes would make the log exceed the max file size.
+     */
+    boolean shouldRoll(int size) {
+        // keep room for the padding of the last buffer
+        return position() + size + Buffer.ALIGNMENT > maxFileSize;
+    }
+
+    /**
+     * Write an entry prefixed by its size.
+     * The readerIndex of the passed buffer is not modified.
+     *
+     * @return the file offset of the entry, not including the size prefix.
+     */
+    long writeDelimited(long ledgerId, ByteBuf buf) throws IOException {
+        int size = buf.readableBytes();
+        long entryOffset;
+        synchronized (bufferLock) {
+            checkOpen();
+            if (!nativeBuffer.hasSpace(size + Integer.BYTES)) {
+                flushBuffer();
+            }
+            nativeBuffer.writeInt(size);
+            entryOffset = offset + nativeBuffer.position();
+            nativeBuffer.writeByteBuf(buf.duplicate());
+        }
+        if (ledgerId >= 0) {
+            ledgersMap.addAndGet(ledgerId, size + Integer.BYTES);
+        }
+        return entryOffset;
+    }
+
+    /**
+     * Write out all the buffered data and wait for it to be persisted.
+     */
+    void flush() throws IOException {
+        List<Future<?>> toWait;
+        synchronized (bufferLock) {
+            checkOpen();
+            flushBuffer();
+            toWait = new ArrayList<>(outstandingWrites);
+            outstandingWrites.clear();
+        }
+        waitForWrites(toWait);
+        nativeIO.fsync(fd);
+    }
+
+    /**
+     * Write the ledgers map index and the final header, then close the file and
+     * truncate it to the written data.
+     */
+    void finalizeAndClose() throws IOException {
+        long fileSize;
+        try {
+            int ledgersCount = (int) ledgersMap.size();
+            long ledgersMapOffset = writeLedgersMap();
+            flush();
+            fileSize = position();
+
+            Buffer headerBuffer = new Buffer(nativeIO, Header.LOGFILE_DIRECT_HEADER_SIZE);
+            try {
+                Header.writeHeader(headerBuffer, ledgersMapOffset, ledgersCount);
+                int ret = nativeIO.pwrite(fd, headerBuffer.pointer(), Header.LOGFILE_DIRECT_HEADER_SIZE, 0);
+                if (ret != Header.LOGFILE_DIRECT_HEADER_SIZE) {
+                    throw new IOException(exMsg("Short write of entry log header")
+                                          .kv("filename", filename).kv("written", ret).toString());
+                }
+            } finally {
+                headerBuffer.free();
+            }
+            nativeIO.fsync(fd);
+        } finally {
+            close();
+        }
+        if (preallocate) {
+            // the log is never appended to again, release the preallocated space
+            try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+                file.setLength(fileSize);
+                file.getFD().sync();
+            }
+        }
+    }
+
+    /**
+     * @return the size of the data written for each ledger in this log.
+     */
+    ConcurrentLongLongHashMap ledgersMap() {
+        return ledgersMap;
+    }
+
+    @Override
+    public void close() throws IOException {
+        List<Future<?>> toWait;
+        synchronized (bufferLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toWait = new ArrayList<>(outstandingWrites);
+            outstandingWrites.clear();
+        }
+        try {
+            waitForWrites(toWait);
+        } finally {
+            bufferPool.release(nativeBuffer);
+            nativeIO.close(fd);
+        }
+    }
+
+    /**
+     * @return the offset of the first ledgers map entry, including its size prefix.
+     */
+    private long writeLedgersMap() throws IOException {
+        long ledgersMapOffset = -1L;
+        int maxBatchSize = Math.min(Header.LEDGERS_MAP_MAX_BATCH_SIZE,
+                (bufferSize() - Integer.BYTES - Header.LEDGERS_MAP_HEADER_SIZE) / Header.LEDGERS_MAP_ENTRY_SIZE);
+        int numberOfLedgers = (int) ledgersMap.size();
+        ByteBuf serializedMap = Unpooled.buffer(Header.LEDGERS_MAP_HEADER_SIZE
+                + Header.LEDGERS_MAP_ENTRY_SIZE * Math.min(numberOfLedgers, maxBatchSize));
+        try {
+            List<long[]> ledgers = new ArrayList<>(numberOfLedgers);
+            ledgersMap.forEach((ledgerId, size) -> ledgers.add(new long[] { ledgerId, size }));
+            int remaining = ledgers.size();
+            int idx = 0;
+            do {
+                int batchSize = Math.min(remaining, maxBatchSize);
+                serializedMap.clear();
+                serializedMap.writeLong(Header.INVALID_LID);
+                serializedMap.writeLong(Header.LEDGERS_MAP_ENTRY_ID);
+                serializedMap.writeInt(batchSize);
+                for (int i = 0; i < batchSize; i++, idx++) {
+                    serializedMap.writeLong(ledgers.get(idx)[0]);
+                    serializedMap.writeLong(ledgers.get(idx)[1]);
+                }
+                long entryOffset = writeDelimited(Header.INVALID_LID, serializedMap);
+                if (ledgersMapOffset < 0) {
+                    ledgersMapOffset = entryOffset - Integer.BYTES;
+                }
+                remaining -= batchSize;
+            } while (remaining > 0);
+        } finally {
+            serializedMap.release();
+        }
+        return ledgersMapOffset;
+    }
+
+    private int bufferSize() {
+        synchronized (bufferLock) {
+            return nativeBuffer.size();
+        }
+    }
+
+    // must be called with bufferLock held
+    private void flushBuffer() throws IOException {
+        if (nativeBuffer.position() == 0) {
+            return;
+        }
+        final int bytesToWrite = nativeBuffer.padToAlignment();
+        final Buffer bufferToWrite = nativeBuffer;
+        final long writeOffset = offset;
+        offset += bytesToWrite;
+
+        outstandingWrites.add(writeExecutor.submit(() -> {
+            try {
+                long startNanos = System.nanoTime();
+                int ret = nativeIO.pwrite(fd, bufferToWrite.pointer(), bytesToWrite, writeOffset);
+                if (ret != bytesToWrite) {
+                    throw new IOException(exMsg("Short write to entry log")
+                                          .kv("filename", filename)
+                                          .kv("offset", writeOffset)
+                                          .kv("expected", bytesToWrite)
+                                          .kv("written", ret).toString());
+                }
+                stats.registerWrite(bytesToWrite, System.nanoTime() - startNanos);
+            } finally {
+                bufferPool.release(bufferToWrite);
+            }
+            return null;
+        }));
+
+        // drop the references of the writes already completed, propagating their errors
+        outstandingWrites.removeIf(f -> f.isDone() && !isFailed(f));
+        nativeBuffer = bufferPool.acquire();
+    }
+
+    private static boolean isFailed(Future<?> f) {
+        try {
+            f.get();
+            return false;
+        } catch (InterruptedException | ExecutionException e) {
+            return true;
+        }
+    }
+
+    private void waitForWrites(List<Future<?>> writes) throws IOException {
+        for (Future<?> f : writes) {
+            try {
+                f.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ie);
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof IOException) {
+                    throw (IOException) ee.getCause();
+                }
+                throw new IOException(exMsg("Error writing entry log").kv("filename", filename).toString(),
+                                      ee.getCause());
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException(exMsg("Entry log writer is closed").kv("filename", filename).toString());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DirectWriter(logId=" + logId + ", filename=" + filename + ")";
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import java.io.IOException;
+
+/**
+ * The header block at the start of an entry log file.
+ *
+ * <pre>
+ * Header is composed of:
+ * Fingerprint: 4 bytes "BKLO"
+ * Log file HeaderVersion enum: 4 bytes
+ * Ledger map offset: 8 bytes
+ * Ledgers Count: 4 bytes
+ * </pre>
+ *
+ * <p>Logs written by the direct entry logger use a header padded to a full
+ * alignment block, so that entries start on an aligned offset. Logs written by
+ * the default entry logger use a 1K header, and can still be read.
+ */
+class Header {
+    static final int LOGFILE_LEGACY_HEADER_SIZE = 1024;
+    static final int LOGFILE_DIRECT_HEADER_SIZE = Buffer.ALIGNMENT;
+
+    static final int HEADER_V0 = 0; // Old log file format (no ledgers map index)
+    static final int HEADER_V1 = 1; // Introduced ledger map index
+    static final int HEADER_V2 = 2; // Aligned header, with padding between blocks of entries
+    static final int HEADER_CURRENT_VERSION = HEADER_V2;
+
+    static final int FINGERPRINT = ('B' << 24) | ('K' << 16) | ('L' << 8) | 'O';
+    static final int HEADER_VERSION_OFFSET = 4;
+    static final int LEDGERS_MAP_OFFSET = HEADER_VERSION_OFFSET + Integer.BYTES;
+    static final int LEDGERS_COUNT_OFFSET = LEDGERS_MAP_OFFSET + Long.BYTES;
+
+    /**
+     * Ledgers map entries use an invalid ledger id, so that they are skipped when scanning.
+     */
+    static final long INVALID_LID = -1L;
+    static final long LEDGERS_MAP_ENTRY_ID = -2L;
+
+    /**
+     * Ledgers map entry, after the size prefix:
+     * ledger id (-1): 8 bytes, entry id (-2): 8 bytes, num ledgers: 4 bytes,
+     * followed by the (ledger id, size) pairs.
+     */
+    static final int LEDGERS_MAP_HEADER_SIZE = Long.BYTES + Long.BYTES + Integer.BYTES;
+    static final int LEDGERS_MAP_ENTRY_SIZE = Long.BYTES + Long.BYTES;
+    static final int LEDGERS_MAP_MAX_BATCH_SIZE = 10000;
+
+    final int version;
+    final long ledgersMapOffset;
+    final int ledgersCount;
+
+    Header(int version, long ledgersMapOffset, int ledgersCount) {
+        this.version = version;
+        this.ledgersMapOffset = ledgersMapOffset;
+        this.ledgersCount = ledgersCount;
+    }
+
+    /**
+     * @return the offset of the first entry in a log with this header.
+     */
+    int headerSize() {
+        return version >= HEADER_V2 ? LOGFILE_DIRECT_HEADER_SIZE : LOGFILE_LEGACY_HEADER_SIZE;
+    }
+
+    /**
+     * Write a header to the start of the buffer, padded to the alignment.
+     */
+    static void writeHeader(Buffer buffer, long ledgersMapOffset, int ledgersCount) throws IOException {
+        buffer.writeInt(FINGERPRINT);
+        buffer.writeInt(HEADER_CURRENT_VERSION);
+        buffer.writeLong(ledgersMapOffset);
+        buffer.writeInt(ledgersCount);
+        buffer.padToAlignment();
+    }
+
+    static Header readHeader(DirectReader reader) throws IOException {
+        int fingerprint = reader.readIntAt(0);
+        if (fingerprint != FINGERPRINT) {
+            throw new IOException(exMsg("Invalid entry log fingerprint")
+                                  .kv("logId", reader.logId())
+                                  .kv("fingerprint", Integer.toHexString(fingerprint)).toString());
+        }
+        int version = reader.readIntAt(HEADER_VERSION_OFFSET);
+        if (version < HEADER_V0 || version > HEADER_CURRENT_VERSION) {
+            throw new IOException(exMsg("Unknown entry log header version")
+                                  .kv("logId", reader.logId())
+                                  .kv("version", version).toString());
+        }
+        if (version == HEADER_V0) {
+            return new Header(version, 0L, 0);
+        }
+        return new Header(version,
+                          reader.readLongAt(LEDGERS_MAP_OFFSET),
+                          reader.readIntAt(LEDGERS_COUNT_OFFSET));
+    }
+}
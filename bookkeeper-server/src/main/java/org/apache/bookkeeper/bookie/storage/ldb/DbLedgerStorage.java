@@ -35,10 +35,13 @@ import io.netty.util.internal.PlatformDependent;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -49,16 +52,21 @@ import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.CompactionBandwidthController;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
 import org.apache.bookkeeper.bookie.LedgerCache;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.LedgerStorage;
 import org.apache.bookkeeper.bookie.StateManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.DirectEntryLogger;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.bookie.storage.ldb.SingleDirectoryDbLedgerStorage.LedgerLoggerProcessor;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.stats.Gauge;
@@ -81,6 +89,12 @@ public class DbLedgerStorage implements LedgerStorage {
 
     static final String MAX_THROTTLE_TIME_MILLIS = "dbStorage_maxThrottleTimeMs";
 
+    static final String FLUSH_INDEX_BATCHES = "dbStorage_flushIndexBatches";
+    private static final int DEFAULT_FLUSH_INDEX_BATCHES = 4;
+
+    static final String ENTRY_LOCATION_CACHE_MAX_SIZE_MB = "dbStorage_entryLocationCacheMaxSizeMb";
+    private static final long DEFAULT_ENTRY_LOCATION_CACHE_MAX_SIZE_MB = 0;
+
     private static final int MB = 1024 * 1024;
 
     private static final long DEFAULT_WRITE_CACHE_MAX_SIZE_MB = (long) (0.25 * PlatformDependent.maxDirectMemory())
@@ -91,6 +105,15 @@ public class DbLedgerStorage implements LedgerStorage {
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
 
+    public static final String DIRECT_IO_ENTRYLOGGER = "dbStorage_directIOEntryLogger";
+    public static final String DIRECT_IO_ENTRYLOGGER_TOTAL_WRITEBUFFER_SIZE_MB =
+            "dbStorage_directIOEntryLoggerTotalWriteBufferSizeMb";
+    public static final String DIRECT_IO_ENTRYLOGGER_READBUFFER_SIZE_KB =
+            "dbStorage_directIOEntryLoggerReadBufferSizeKb";
+    private static final long DEFAULT_DIRECT_IO_TOTAL_WRITEBUFFER_SIZE_MB = 128;
+    private static final int DEFAULT_DIRECT_IO_READBUFFER_SIZE_KB = 256;
+    private static final int KB = 1024;
+
     // use the storage assigned to ledger 0 for flags.
     // if the storage configuration changes, the flags may be lost
     // but in that case data integrity should kick off anyhow.
@@ -101,6 +124,13 @@ public class DbLedgerStorage implements LedgerStorage {
     // Keep 1 single Bookie GC thread so the the compactions from multiple individual directories are serialized
     private ScheduledExecutorService gcExecutor;
 
+    // Single bounded pool shared by all the directories, to flush the directories in parallel and to build
+    // and commit their index batches
+    private ExecutorService flushExecutor;
+
+    // Disk bandwidth budget shared by the incremental compaction of all the directories
+    private CompactionBandwidthController compactionBandwidthController;
+
     protected ByteBufAllocator allocator;
 
     // parent DbLedgerStorage stats (not per directory)
@@ -127,23 +157,43 @@ public class DbLedgerStorage implements LedgerStorage {
                 DEFAULT_WRITE_CACHE_MAX_SIZE_MB) * MB;
         long readCacheMaxSize = getLongVariableOrDefault(conf, READ_AHEAD_CACHE_MAX_SIZE_MB,
                 DEFAULT_READ_CACHE_MAX_SIZE_MB) * MB;
+        long entryLocationCacheMaxSize = getLongVariableOrDefault(conf, ENTRY_LOCATION_CACHE_MAX_SIZE_MB,
+                DEFAULT_ENTRY_LOCATION_CACHE_MAX_SIZE_MB) * MB;
 
         this.allocator = allocator;
         this.numberOfDirs = ledgerDirsManager.getAllLedgerDirs().size();
+        // The directories flushed in the background block on their index batches, so there is always a thread
+        // left for each batch: one directory is flushed by the calling thread, and the flushes are serialized
+        flushExecutor = Executors.newFixedThreadPool(numberOfDirs - 1 + getFlushIndexBatches(conf),
+                new DefaultThreadFactory("db-storage-flush"));
 
         log.info("Started Db Ledger Storage");
         log.info(" - Number of directories: {}", numberOfDirs);
         log.info(" - Write cache size: {} MB", writeCacheMaxSize / MB);
         log.info(" - Read Cache: {} MB", readCacheMaxSize / MB);
+        log.info(" - Entry location cache: {} MB", entryLocationCacheMaxSize / MB);
 
-        if (readCacheMaxSize + writeCacheMaxSize > PlatformDependent.maxDirectMemory()) {
-            throw new IOException("Read and write cache sizes exceed the configured max direct memory size");
+        if (readCacheMaxSize + writeCacheMaxSize + entryLocationCacheMaxSize > PlatformDependent.maxDirectMemory()) {
+            throw new IOException("Read, write and entry location cache sizes exceed the configured max direct"
+                    + " memory size");
         }
 
         long perDirectoryWriteCacheSize = writeCacheMaxSize / numberOfDirs;
         long perDirectoryReadCacheSize = readCacheMaxSize / numberOfDirs;
+        long perDirectoryEntryLocationCacheSize = entryLocationCacheMaxSize / numberOfDirs;
         int readAheadCacheBatchSize = conf.getInt(READ_AHEAD_CACHE_BATCH_SIZE, DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE);
 
+        boolean directIOEntryLogger = conf.getBoolean(DIRECT_IO_ENTRYLOGGER, false);
+        long perDirectoryDirectIOWriteBufferSize = getLongVariableOrDefault(conf,
+                DIRECT_IO_ENTRYLOGGER_TOTAL_WRITEBUFFER_SIZE_MB, DEFAULT_DIRECT_IO_TOTAL_WRITEBUFFER_SIZE_MB) * MB
+                / numberOfDirs;
+        int directIOReadBufferSize = conf.getInt(DIRECT_IO_ENTRYLOGGER_READBUFFER_SIZE_KB,
+                DEFAULT_DIRECT_IO_READBUFFER_SIZE_KB) * KB;
+        if (directIOEntryLogger) {
+            log.info(" - Direct IO entry logger: write buffers {} MB, read buffer {} KB",
+                    perDirectoryDirectIOWriteBufferSize / MB, directIOReadBufferSize / KB);
+        }
+
         gcExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("GarbageCollector"));
 
         ledgerStorageList = Lists.newArrayList();
@@ -153,12 +203,27 @@ public class DbLedgerStorage implements LedgerStorage {
             // Remove the `/current` suffix which will be appended again by LedgersDirManager
             dirs[0] = ledgerDir.getParentFile();
             LedgerDirsManager ldm = new LedgerDirsManager(conf, dirs, ledgerDirsManager.getDiskChecker(), statsLogger);
+
+            EntryLogger entryLogger;
+            if (directIOEntryLogger) {
+                entryLogger = new DirectEntryLogger(ledgerDir, new NativeIOImpl(), allocator,
+                        conf.getEntryLogSizeLimit(), perDirectoryDirectIOWriteBufferSize, directIOReadBufferSize,
+                        conf.getNettyMaxFrameSizeBytes(),
+                        statsLogger.scopeLabel("ledgerDir", ledgerDir.getPath()));
+            } else {
+                entryLogger = new DefaultEntryLogger(conf, ldm, null, statsLogger, allocator);
+            }
             ledgerStorageList.add(newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ldm, indexDirsManager,
-                    statsLogger, gcExecutor, perDirectoryWriteCacheSize,
-                    perDirectoryReadCacheSize, readAheadCacheBatchSize));
+                    entryLogger, statsLogger, gcExecutor, perDirectoryWriteCacheSize,
+                    perDirectoryReadCacheSize, readAheadCacheBatchSize, perDirectoryEntryLocationCacheSize));
             ldm.getListeners().forEach(ledgerDirsManager::addLedgerDirsListener);
         }
 
+        if (conf.isIncrementalCompactionEnabled()) {
+            compactionBandwidthController = new CompactionBandwidthController(conf);
+            ledgerStorageList.forEach(ls -> ls.setCompactionBandwidthController(compactionBandwidthController));
+        }
+
         // parent DbLedgerStorage stats (not per directory)
         readaheadBatchSizeGauge = new Gauge<Integer>() {
             @Override
@@ -190,12 +255,13 @@ public class DbLedgerStorage implements LedgerStorage {
     @VisibleForTesting
     protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
             LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
-            StatsLogger statsLogger, ScheduledExecutorService gcExecutor, long writeCacheSize, long readCacheSize,
-            int readAheadCacheBatchSize)
+            EntryLogger entryLogger, StatsLogger statsLogger, ScheduledExecutorService gcExecutor,
+            long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize, long entryLocationCacheSize)
             throws IOException {
         return new SingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager,
-                                                  statsLogger, allocator, gcExecutor, writeCacheSize, readCacheSize,
-                                                  readAheadCacheBatchSize);
+                                                  entryLogger, statsLogger, allocator, gcExecutor, flushExecutor,
+                                                  writeCacheSize, readCacheSize, readAheadCacheBatchSize,
+                                                  entryLocationCacheSize);
     }
 
     @Override
@@ -221,6 +287,7 @@ public class DbLedgerStorage implements LedgerStorage {
         for (LedgerStorage ls : ledgerStorageList) {
             ls.shutdown();
         }
+        flushExecutor.shutdown();
     }
 
     @Override
@@ -284,16 +351,54 @@ public class DbLedgerStorage implements LedgerStorage {
 
     @Override
     public void flush() throws IOException {
-        for (LedgerStorage ls : ledgerStorageList) {
-            ls.flush();
-        }
+        forEachLedgerStorageInParallel(LedgerStorage::flush);
     }
 
     @Override
     public void checkpoint(Checkpoint checkpoint) throws IOException {
-        for (LedgerStorage ls : ledgerStorageList) {
-            ls.checkpoint(checkpoint);
+        forEachLedgerStorageInParallel(ls -> ls.checkpoint(checkpoint));
+    }
+
+    private interface LedgerStorageOperation {
+        void apply(LedgerStorage ledgerStorage) throws IOException;
+    }
+
+    private synchronized void forEachLedgerStorageInParallel(LedgerStorageOperation operation)
+            throws IOException {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(ledgerStorageList.size() - 1);
+        for (LedgerStorage ls : ledgerStorageList.subList(1, ledgerStorageList.size())) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    operation.apply(ls);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, flushExecutor));
+        }
+
+        // Wait for all the directories, even if one of them failed
+        IOException exception = null;
+        try {
+            operation.apply(ledgerStorageList.get(0));
+        } catch (IOException e) {
+            exception = e;
+        }
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                ParallelLocationBatch.waitFor(future);
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                }
+            }
         }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    static int getFlushIndexBatches(ServerConfiguration conf) {
+        return Math.max(1, conf.getInt(FLUSH_INDEX_BATCHES, DEFAULT_FLUSH_INDEX_BATCHES));
     }
 
     @Override
@@ -419,6 +524,11 @@ public class DbLedgerStorage implements LedgerStorage {
             .map(single -> single.getGarbageCollectionStatus().get(0)).collect(Collectors.toList());
     }
 
+    @Override
+    public CompactionBandwidthController getCompactionBandwidthController() {
+        return compactionBandwidthController;
+    }
+
     static long getLongVariableOrDefault(ServerConfiguration conf, String keyName, long defaultValue) {
         Object obj = conf.getProperty(keyName);
         if (obj instanceof Number) {
@@ -23,6 +23,9 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_ADD_ENTR
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 import lombok.Getter;
 import org.apache.bookkeeper.stats.Counter;
@@ -55,6 +58,8 @@ class DbLedgerStorageStats {
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
     private static final String FLUSH = "flush";
+    private static final String FLUSH_SORT = "flush-sort";
+    private static final String FLUSH_WRITE = "flush-write";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
     private static final String FLUSH_LEDGER_INDEX = "flush-ledger-index";
@@ -69,6 +74,10 @@ class DbLedgerStorageStats {
     private static final String WRITE_CACHE_COUNT = "write-cache-count";
     private static final String READ_CACHE_SIZE = "read-cache-size";
     private static final String READ_CACHE_COUNT = "read-cache-count";
+    private static final String READ_CACHE_HIT_RATE = "read-cache-hit-rate";
+    private static final String READ_CACHE_EVICTIONS = "read-cache-evictions";
+    private static final String READ_CACHE_PINNED_SKIPS = "read-cache-pinned-skips";
+    private static final String READ_CACHE_SEGMENT_SIZE = "read-cache-segment-size";
 
     @StatsDoc(
         name = ADD_ENTRY,
@@ -138,6 +147,16 @@ class DbLedgerStorageStats {
         help = "operation stats of flushing write cache to entry log files"
     )
     private final OpStatsLogger flushStats;
+    @StatsDoc(
+            name = FLUSH_SORT,
+            help = "operation stats of ordering the write cache entries by ledger during a flush"
+    )
+    private final OpStatsLogger flushSortStats;
+    @StatsDoc(
+            name = FLUSH_WRITE,
+            help = "operation stats of writing the write cache entries to the entry logger during a flush"
+    )
+    private final OpStatsLogger flushWriteStats;
     @StatsDoc(
             name = FLUSH_ENTRYLOG,
             help = "operation stats of flushing to the current entry log file"
@@ -194,12 +213,38 @@ class DbLedgerStorageStats {
         help = "Current number of entries in read cache"
     )
     private final Gauge<Long> readCacheCountGauge;
+    @StatsDoc(
+        name = READ_CACHE_HIT_RATE,
+        help = "Ratio of read cache lookups that found the entry in the read cache"
+    )
+    private final Gauge<Double> readCacheHitRateGauge;
+    @StatsDoc(
+        name = READ_CACHE_EVICTIONS,
+        help = "Number of entries evicted from the read cache when rotating segments"
+    )
+    private final Gauge<Long> readCacheEvictionsGauge;
+    @StatsDoc(
+        name = READ_CACHE_PINNED_SKIPS,
+        help = "Number of entries not added to the read cache because the evicted entries of the segment"
+            + " to write were still being read"
+    )
+    private final Gauge<Long> readCachePinnedSkipsGauge;
+    @StatsDoc(
+        name = READ_CACHE_SEGMENT_SIZE,
+        help = "Current number of bytes in each segment of the read cache"
+    )
+    private final List<Gauge<Long>> readCacheSegmentSizeGauges;
 
     DbLedgerStorageStats(StatsLogger stats,
                          Supplier<Long> writeCacheSizeSupplier,
                          Supplier<Long> writeCacheCountSupplier,
                          Supplier<Long> readCacheSizeSupplier,
-                         Supplier<Long> readCacheCountSupplier) {
+                         Supplier<Long> readCacheCountSupplier,
+                         Supplier<Double> readCacheHitRateSupplier,
+                         Supplier<Long> readCacheEvictionsSupplier,
+                         Supplier<Long> readCachePinnedSkipsSupplier,
+                         int readCacheSegmentsCount,
+                         IntFunction<Long> readCacheSegmentSizeSupplier) {
         addEntryStats = stats.getThreadScopedOpStatsLogger(ADD_ENTRY);
         readEntryStats = stats.getThreadScopedOpStatsLogger(READ_ENTRY);
         readFromLocationIndexTime = stats.getThreadScopedCounter(READ_ENTRY_LOCATIONS_INDEX_TIME);
@@ -212,6 +257,8 @@ class DbLedgerStorageStats {
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
         flushStats = stats.getOpStatsLogger(FLUSH);
+        flushSortStats = stats.getOpStatsLogger(FLUSH_SORT);
+        flushWriteStats = stats.getOpStatsLogger(FLUSH_WRITE);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
         flushLedgerIndexStats = stats.getOpStatsLogger(FLUSH_LEDGER_INDEX);
@@ -270,6 +317,60 @@ class DbLedgerStorageStats {
             }
         };
         stats.registerGauge(READ_CACHE_COUNT, readCacheCountGauge);
+        readCacheHitRateGauge = new Gauge<Double>() {
+            @Override
+            public Double getDefaultValue() {
+                return 0.0;
+            }
+
+            @Override
+            public Double getSample() {
+                return readCacheHitRateSupplier.get();
+            }
+        };
+        stats.registerGauge(READ_CACHE_HIT_RATE, readCacheHitRateGauge);
+        readCacheEvictionsGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return readCacheEvictionsSupplier.get();
+            }
+        };
+        stats.registerGauge(READ_CACHE_EVICTIONS, readCacheEvictionsGauge);
+        readCachePinnedSkipsGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return readCachePinnedSkipsSupplier.get();
+            }
+        };
+        stats.registerGauge(READ_CACHE_PINNED_SKIPS, readCachePinnedSkipsGauge);
+        readCacheSegmentSizeGauges = new ArrayList<>(readCacheSegmentsCount);
+        for (int i = 0; i < readCacheSegmentsCount; i++) {
+            final int segmentIdx = i;
+            Gauge<Long> segmentSizeGauge = new Gauge<Long>() {
+                @Override
+                public Long getDefaultValue() {
+                    return 0L;
+                }
+
+                @Override
+                public Long getSample() {
+                    return readCacheSegmentSizeSupplier.apply(segmentIdx);
+                }
+            };
+            stats.scopeLabel("segment", String.valueOf(segmentIdx))
+                .registerGauge(READ_CACHE_SEGMENT_SIZE, segmentSizeGauge);
+            readCacheSegmentSizeGauges.add(segmentSizeGauge);
+        }
     }
 
 }
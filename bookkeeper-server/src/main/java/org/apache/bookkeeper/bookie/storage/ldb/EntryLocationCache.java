@@ -0,0 +1,293 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * In-memory tier of the {@link EntryLocationIndex}.
+ *
+ * <p>Keeps the entry locations of the most recently written ledgers in direct memory,
+ * as a dense array of locations per ledger indexed by entry id, so that the location of
+ * a recently written entry can be found without accessing the KV storage. When the
+ * memory limit is reached, ledgers that were not accessed recently are evicted, with the
+ * CLOCK second-chance policy: the cost of an eviction only depends on the ledgers it visits,
+ * and an access only sets a flag on the ledger.
+ *
+ * <p>The cache is only populated when locations are written to the index. A lookup that
+ * misses the cache falls back to the KV storage without populating it, so that a location
+ * read from the storage can never overwrite a newer one, e.g. set by the compaction.
+ */
+class EntryLocationCache implements Closeable {
+
+    private static final int LOCATION_SIZE = Long.BYTES;
+    private static final int INITIAL_ENTRIES_PER_LEDGER = 1024;
+    static final int MAX_ENTRIES_PER_LEDGER = 64 * 1024;
+
+    // When evicting, free memory until this fraction of the max size is used
+    private static final double EVICTION_TARGET_RATIO = 0.9;
+
+    private final ByteBufAllocator allocator;
+    private final long maxSize;
+
+    private final ConcurrentLongHashMap<LedgerLocations> ledgers;
+    // Ledgers in the order the eviction visits them, the clock hand being the head of the queue
+    private final Queue<LedgerLocations> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicLong size = new AtomicLong(0);
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+    /**
+     * Window of locations of a single ledger, starting at {@code firstEntryId}.
+     */
+    private static class LedgerLocations {
+        final long ledgerId;
+        long firstEntryId = -1;
+        // Number of entries from the first one up to the highest cached entry
+        int count = 0;
+        ByteBuf locations;
+        boolean released = false;
+
+        // Reference bit of the clock, cleared when the eviction skips the ledger
+        volatile boolean accessed = true;
+
+        LedgerLocations(long ledgerId) {
+            this.ledgerId = ledgerId;
+        }
+    }
+
+    EntryLocationCache(ByteBufAllocator allocator, long maxSize) {
+        this.allocator = allocator;
+        this.maxSize = maxSize;
+        this.ledgers = ConcurrentLongHashMap.<LedgerLocations>newBuilder()
+                .expectedItems(1024)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
+                .build();
+    }
+
+    /**
+     * @return the location of the entry, or 0 if it is not in the cache
+     */
+    long getLocation(long ledgerId, long entryId) {
+        LedgerLocations ledger = ledgers.get(ledgerId);
+        if (ledger == null) {
+            return 0L;
+        }
+
+        synchronized (ledger) {
+            if (ledger.released || entryId < ledger.firstEntryId || entryId - ledger.firstEntryId >= ledger.count) {
+                return 0L;
+            }
+            markAccessed(ledger);
+            return ledger.locations.getLong((int) (entryId - ledger.firstEntryId) * LOCATION_SIZE);
+        }
+    }
+
+    /**
+     * Cache the location of an entry that is being written to the index.
+     */
+    void putLocation(long ledgerId, long entryId, long location) {
+        if (entryId < 0) {
+            return;
+        }
+
+        LedgerLocations ledger = ledgers.computeIfAbsent(ledgerId, this::newLedger);
+        synchronized (ledger) {
+            if (ledger.released) {
+                // Evicted in the meantime, the location is only in the storage
+                return;
+            }
+            if (ledger.firstEntryId < 0) {
+                ledger.firstEntryId = entryId;
+            } else if (entryId < ledger.firstEntryId) {
+                // Older than the cached window, lookups will go to the storage
+                return;
+            }
+
+            long idx = entryId - ledger.firstEntryId;
+            if (idx >= MAX_ENTRIES_PER_LEDGER) {
+                // Slide the window, keeping the most recent half of the entries
+                slide(ledger, entryId - MAX_ENTRIES_PER_LEDGER / 2);
+                idx = entryId - ledger.firstEntryId;
+            }
+            if (ledger.locations == null || idx >= ledger.locations.capacity() / LOCATION_SIZE) {
+                grow(ledger, (int) idx + 1);
+            }
+
+            ledger.locations.setLong((int) idx * LOCATION_SIZE, location);
+            ledger.count = Math.max(ledger.count, (int) idx + 1);
+            markAccessed(ledger);
+        }
+
+        if (size.get() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Update the location of an entry, only if its ledger is already cached.
+     */
+    void updateLocation(long ledgerId, long entryId, long location) {
+        LedgerLocations ledger = ledgers.get(ledgerId);
+        if (ledger == null) {
+            return;
+        }
+
+        synchronized (ledger) {
+            if (!ledger.released && entryId >= ledger.firstEntryId && entryId - ledger.firstEntryId < ledger.count) {
+                ledger.locations.setLong((int) (entryId - ledger.firstEntryId) * LOCATION_SIZE, location);
+            }
+        }
+    }
+
+    void removeLedger(long ledgerId) {
+        LedgerLocations ledger = ledgers.remove(ledgerId);
+        if (ledger != null) {
+            clock.remove(ledger);
+            release(ledger);
+        }
+    }
+
+    /**
+     * @return the memory used by the cached locations, in bytes
+     */
+    long size() {
+        return size.get();
+    }
+
+    /**
+     * @return the number of cached ledgers
+     */
+    long count() {
+        return ledgers.size();
+    }
+
+    private LedgerLocations newLedger(long ledgerId) {
+        LedgerLocations ledger = new LedgerLocations(ledgerId);
+        clock.add(ledger);
+        return ledger;
+    }
+
+    private static void markAccessed(LedgerLocations ledger) {
+        // Avoid writing to the shared field when it's already set
+        if (!ledger.accessed) {
+            ledger.accessed = true;
+        }
+    }
+
+    private void grow(LedgerLocations ledger, int minEntries) {
+        int oldCapacity = ledger.locations == null ? 0 : ledger.locations.capacity() / LOCATION_SIZE;
+        int newCapacity = Math.max(INITIAL_ENTRIES_PER_LEDGER, oldCapacity);
+        while (newCapacity < minEntries) {
+            newCapacity *= 2;
+        }
+        newCapacity = Math.min(newCapacity, MAX_ENTRIES_PER_LEDGER);
+
+        ByteBuf newLocations = allocator.directBuffer(newCapacity * LOCATION_SIZE, newCapacity * LOCATION_SIZE);
+        // Unknown locations are 0, as in the index
+        newLocations.setZero(0, newLocations.capacity());
+        if (ledger.locations != null) {
+            newLocations.setBytes(0, ledger.locations, 0, ledger.count * LOCATION_SIZE);
+            ledger.locations.release();
+        }
+        ledger.locations = newLocations;
+        size.addAndGet((long) (newCapacity - oldCapacity) * LOCATION_SIZE);
+    }
+
+    private void slide(LedgerLocations ledger, long newFirstEntryId) {
+        int shift = (int) Math.min(newFirstEntryId - ledger.firstEntryId, ledger.count);
+        int remaining = ledger.count - shift;
+
+        ByteBuf newLocations = allocator.directBuffer(ledger.locations.capacity(), ledger.locations.capacity());
+        newLocations.setZero(0, newLocations.capacity());
+        newLocations.setBytes(0, ledger.locations, shift * LOCATION_SIZE, remaining * LOCATION_SIZE);
+        ledger.locations.release();
+
+        ledger.locations = newLocations;
+        ledger.firstEntryId = newFirstEntryId;
+        ledger.count = remaining;
+    }
+
+    private void release(LedgerLocations ledger) {
+        synchronized (ledger) {
+            if (ledger.released) {
+                return;
+            }
+            ledger.released = true;
+            if (ledger.locations != null) {
+                size.addAndGet(-ledger.locations.capacity());
+                ledger.locations.release();
+                ledger.locations = null;
+            }
+        }
+    }
+
+    /**
+     * Evict the ledgers that were not accessed since the last time the clock hand passed them,
+     * until the memory used is below the target.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            // Some other thread is already evicting
+            return;
+        }
+
+        try {
+            long target = (long) (maxSize * EVICTION_TARGET_RATIO);
+            // Each ledger is skipped at most once, unless it's accessed again in the meantime
+            long maxSteps = 2 * (long) clock.size();
+            for (long step = 0; step < maxSteps && size.get() > target; step++) {
+                LedgerLocations ledger = clock.poll();
+                if (ledger == null) {
+                    break;
+                }
+                if (ledger.released) {
+                    continue;
+                }
+                if (ledger.accessed) {
+                    // Second chance
+                    ledger.accessed = false;
+                    clock.add(ledger);
+                } else {
+                    ledgers.remove(ledger.ledgerId, ledger);
+                    release(ledger);
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        ledgers.forEach((ledgerId, ledger) -> release(ledger));
+        ledgers.clear();
+        clock.clear();
+    }
+}
@@ -43,17 +43,28 @@ import org.slf4j.LoggerFactory;
  *
  * <p>For each ledger multiple entries are stored in the same "record", represented
  * by the {@link LedgerIndexPage} class.
+ *
+ * <p>An optional {@link EntryLocationCache} keeps the locations of the recently written
+ * ledgers in memory, in front of the KV storage.
  */
 public class EntryLocationIndex implements Closeable {
 
     private final KeyValueStorage locationsDb;
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
 
+    private final EntryLocationCache locationCache;
+
     private final EntryLocationIndexStats stats;
 
     public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
             StatsLogger stats) throws IOException {
+        this(conf, storageFactory, basePath, stats, null);
+    }
+
+    EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
+            StatsLogger stats, EntryLocationCache locationCache) throws IOException {
         locationsDb = storageFactory.newKeyValueStorage(basePath, "locations", DbConfigType.EntryLocation, conf);
+        this.locationCache = locationCache;
 
         this.stats = new EntryLocationIndexStats(
             stats,
@@ -63,15 +74,29 @@ public class EntryLocationIndex implements Closeable {
                 } catch (IOException e) {
                     return -1L;
                 }
-            });
+            },
+            () -> locationCache != null ? locationCache.size() : 0L,
+            () -> locationCache != null ? locationCache.count() : 0L);
     }
 
     @Override
     public void close() throws IOException {
         locationsDb.close();
+        if (locationCache != null) {
+            locationCache.close();
+        }
     }
 
     public long getLocation(long ledgerId, long entryId) throws IOException {
+        if (locationCache != null) {
+            long location = locationCache.getLocation(ledgerId, entryId);
+            if (location != 0) {
+                stats.getLocationCacheHitCounter().inc();
+                return location;
+            }
+            stats.getLocationCacheMissCounter().inc();
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get();
 
@@ -142,6 +167,14 @@ public class EntryLocationIndex implements Closeable {
     }
 
     public void addLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
+        addLocationToBatch(batch, ledgerId, entryId, location);
+
+        if (locationCache != null && !deletedLedgers.contains(ledgerId)) {
+            locationCache.putLocation(ledgerId, entryId, location);
+        }
+    }
+
+    private void addLocationToBatch(Batch batch, long ledgerId, long entryId, long location) throws IOException {
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get(location);
 
@@ -169,7 +202,11 @@ public class EntryLocationIndex implements Closeable {
                 log.debug("Update location - ledger: {} -- entry: {}", e.ledger, e.entry);
             }
 
-            addLocation(batch, e.ledger, e.entry, e.location);
+            addLocationToBatch(batch, e.ledger, e.entry, e.location);
+            if (locationCache != null) {
+                // Only refresh the ledgers that are already cached, compacted ledgers are usually cold
+                locationCache.updateLocation(e.ledger, e.entry, e.location);
+            }
         }
 
         batch.flush();
@@ -180,6 +217,9 @@ public class EntryLocationIndex implements Closeable {
         // We need to find all the LedgerIndexPage records belonging to one specific
         // ledgers
         deletedLedgers.add(ledgerId);
+        if (locationCache != null) {
+            locationCache.removeLedger(ledgerId);
+        }
     }
 
     private static final int DELETE_ENTRIES_BATCH_SIZE = 100000;
@@ -208,6 +248,11 @@ public class EntryLocationIndex implements Closeable {
                     log.debug("Deleting indexes from ledger {}", ledgerId);
                 }
 
+                if (locationCache != null) {
+                    // Locations of entries that were flushed after the ledger was deleted
+                    locationCache.removeLedger(ledgerId);
+                }
+
                 firstKeyWrapper.set(ledgerId, 0);
                 lastKeyWrapper.set(ledgerId, Long.MAX_VALUE);
 
@@ -24,6 +24,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 
 import java.util.function.Supplier;
 import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
@@ -40,15 +41,41 @@ import org.apache.bookkeeper.stats.annotations.StatsDoc;
 class EntryLocationIndexStats {
 
     private static final String ENTRIES_COUNT = "entries-count";
+    private static final String LOCATION_CACHE_HITS = "location-cache-hits";
+    private static final String LOCATION_CACHE_MISSES = "location-cache-misses";
+    private static final String LOCATION_CACHE_SIZE = "location-cache-size";
+    private static final String LOCATION_CACHE_LEDGERS = "location-cache-ledgers";
 
     @StatsDoc(
         name = ENTRIES_COUNT,
         help = "Current number of entries"
     )
     private final Gauge<Long> entriesCountGauge;
+    @StatsDoc(
+        name = LOCATION_CACHE_HITS,
+        help = "number of entry locations found in the in-memory location cache"
+    )
+    private final Counter locationCacheHitCounter;
+    @StatsDoc(
+        name = LOCATION_CACHE_MISSES,
+        help = "number of entry locations not found in the in-memory location cache"
+    )
+    private final Counter locationCacheMissCounter;
+    @StatsDoc(
+        name = LOCATION_CACHE_SIZE,
+        help = "memory used by the in-memory location cache, in bytes"
+    )
+    private final Gauge<Long> locationCacheSizeGauge;
+    @StatsDoc(
+        name = LOCATION_CACHE_LEDGERS,
+        help = "number of ledgers in the in-memory location cache"
+    )
+    private final Gauge<Long> locationCacheLedgersGauge;
 
     EntryLocationIndexStats(StatsLogger statsLogger,
-                            Supplier<Long> entriesCountSupplier) {
+                            Supplier<Long> entriesCountSupplier,
+                            Supplier<Long> locationCacheSizeSupplier,
+                            Supplier<Long> locationCacheLedgersSupplier) {
         entriesCountGauge = new Gauge<Long>() {
             @Override
             public Long getDefaultValue() {
@@ -61,6 +88,33 @@ class EntryLocationIndexStats {
             }
         };
         statsLogger.registerGauge(ENTRIES_COUNT, entriesCountGauge);
+
+        locationCacheHitCounter = statsLogger.getCounter(LOCATION_CACHE_HITS);
+        locationCacheMissCounter = statsLogger.getCounter(LOCATION_CACHE_MISSES);
+        locationCacheSizeGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return locationCacheSizeSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(LOCATION_CACHE_SIZE, locationCacheSizeGauge);
+        locationCacheLedgersGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return locationCacheLedgersSupplier.get();
+            }
+        };
+        statsLogger.registerGauge(LOCATION_CACHE_LEDGERS, locationCacheLedgersGauge);
     }
 
 }
@@ -0,0 +1,159 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+
+/**
+ * Location index updates of a write cache flush, split into several RocksDB batches.
+ *
+ * <p>Locations are added by the flushing thread in chunks, and the chunks are handed
+ * round-robin to the batches. Each batch is built on the flush executor while the
+ * flushing thread keeps appending entries to the entry log, and the batches are then
+ * committed in parallel. Every batch is only accessed by one task at a time.
+ *
+ * <p>Unlike a single batch, the flush is not atomic: if it fails or the bookie crashes, some of the
+ * batches may be committed and others not. This is safe because the batches are only committed once
+ * the entries are persisted in the entry log, so every committed location points to a valid entry,
+ * and the checkpoint is not completed, so the journal replays the entries whose locations are missing.
+ */
+class ParallelLocationBatch implements Closeable {
+    // Number of entries in each chunk of locations
+    private static final int CHUNK_SIZE = 4096;
+
+    private final EntryLocationIndex entryLocationIndex;
+    private final ExecutorService executor;
+
+    private final Batch[] batches;
+    // Last task that was submitted on each batch
+    private final CompletableFuture<?>[] pendingTasks;
+
+    private final Queue<long[]> freeChunks = new ConcurrentLinkedQueue<>();
+    private long[] currentChunk;
+    private int currentChunkSize = 0;
+    private int nextBatch = 0;
+
+    ParallelLocationBatch(EntryLocationIndex entryLocationIndex, int batchesCount, ExecutorService executor) {
+        this.entryLocationIndex = entryLocationIndex;
+        this.executor = executor;
+        this.batches = new Batch[batchesCount];
+        this.pendingTasks = new CompletableFuture[batchesCount];
+        for (int i = 0; i < batchesCount; i++) {
+            batches[i] = entryLocationIndex.newBatch();
+            pendingTasks[i] = CompletableFuture.completedFuture(null);
+        }
+        this.currentChunk = new long[CHUNK_SIZE * 3];
+    }
+
+    /**
+     * Add the location of an entry. Must be called from a single thread.
+     */
+    void addLocation(long ledgerId, long entryId, long location) {
+        int idx = currentChunkSize * 3;
+        currentChunk[idx] = ledgerId;
+        currentChunk[idx + 1] = entryId;
+        currentChunk[idx + 2] = location;
+        if (++currentChunkSize == CHUNK_SIZE) {
+            submitCurrentChunk();
+        }
+    }
+
+    private void submitCurrentChunk() {
+        final long[] chunk = currentChunk;
+        final int size = currentChunkSize;
+        final Batch batch = batches[nextBatch];
+        pendingTasks[nextBatch] = pendingTasks[nextBatch].thenRunAsync(() -> {
+            try {
+                for (int i = 0; i < size * 3; i += 3) {
+                    entryLocationIndex.addLocation(batch, chunk[i], chunk[i + 1], chunk[i + 2]);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                freeChunks.add(chunk);
+            }
+        }, executor);
+        nextBatch = (nextBatch + 1) % batches.length;
+
+        long[] chunkToReuse = freeChunks.poll();
+        currentChunk = chunkToReuse != null ? chunkToReuse : new long[CHUNK_SIZE * 3];
+        currentChunkSize = 0;
+    }
+
+    /**
+     * Commit all the batches in parallel, once they are fully built.
+     */
+    void flush() throws IOException {
+        if (currentChunkSize > 0) {
+            submitCurrentChunk();
+        }
+
+        for (int i = 0; i < batches.length; i++) {
+            final Batch batch = batches[i];
+            pendingTasks[i] = pendingTasks[i].thenRunAsync(() -> {
+                try {
+                    batch.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        }
+        waitFor(CompletableFuture.allOf(pendingTasks));
+    }
+
+    @Override
+    public void close() throws IOException {
+        // A batch cannot be released while it's still being built
+        for (CompletableFuture<?> task : pendingTasks) {
+            task.handle((result, throwable) -> null).join();
+        }
+        for (Batch batch : batches) {
+            batch.close();
+        }
+    }
+
+    /**
+     * Wait for a flush task, unwrapping the I/O errors.
+     */
+    static void waitFor(CompletableFuture<?> future) throws IOException {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+}
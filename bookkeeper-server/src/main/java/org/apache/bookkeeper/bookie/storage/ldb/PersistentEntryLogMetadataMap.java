@@ -171,6 +171,35 @@ public class PersistentEntryLogMetadataMap implements EntryLogMetadataMap {
         }
     }
 
+    /**
+     * {@link EntryLogMetadata} life-cycle in supplied action will be transient
+     * and it will be recycled as soon as supplied action is completed.
+     */
+    @Override
+    public boolean forKey(long entryLogId, BiConsumer<Long, EntryLogMetadata> action)
+            throws EntryLogMetadataMapException {
+        throwIfClosed();
+        LongWrapper key = LongWrapper.get(entryLogId);
+        try {
+            byte[] value = metadataMapDB.get(key.array);
+            if (value == null) {
+                return false;
+            }
+            EntryLogMetadataRecyclable metadata = EntryLogMetadata.deserialize(
+                    new DataInputStream(new ByteArrayInputStream(value)));
+            try {
+                action.accept(entryLogId, metadata);
+            } finally {
+                metadata.recycle();
+            }
+            return true;
+        } catch (IOException e) {
+            throw new EntryLogMetadataMapException(e);
+        } finally {
+            key.recycle();
+        }
+    }
+
     @Override
     public void remove(long entryLogId) throws EntryLogMetadataMapException {
         throwIfClosed();
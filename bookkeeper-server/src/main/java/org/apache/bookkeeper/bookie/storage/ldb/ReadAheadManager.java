@@ -0,0 +1,327 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sequential read-ahead for {@link SingleDirectoryDbLedgerStorage}.
+ *
+ * <p>Reads that miss the write cache are tracked per ledger. Once a ledger has been
+ * read sequentially for a few entries, the following entries are loaded into the
+ * {@link ReadCache} in the background, keeping a window of entries ahead of the reader.
+ * The window grows while the prefetched entries are consumed from the read cache and
+ * shrinks when they are not, e.g. when the reader stops or they get evicted before
+ * being read. Ledgers which are not read sequentially do not get any read-ahead.
+ *
+ * <p>A ledger has at most one read-ahead in progress, and the read-aheads of different
+ * ledgers run on a small pool of threads, so that a slow read doesn't hold back the
+ * read-ahead of the other ledgers.
+ */
+class ReadAheadManager implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ReadAheadManager.class);
+
+    // Number of consecutive entries to read before a ledger is considered sequential
+    private static final int SEQUENTIAL_READS_THRESHOLD = 2;
+    private static final int MIN_WINDOW_SIZE = 8;
+    private static final int READ_AHEAD_THREADS = 4;
+
+    private static final double GROW_HIT_RATIO = 0.75;
+    private static final double SHRINK_HIT_RATIO = 0.25;
+
+    private static final long STALE_STATE_MILLIS =
+            TimeUnit.MINUTES.toMillis(TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES);
+
+    private final EntryLogger entryLogger;
+    private final EntryLocationIndex entryLocationIndex;
+    private final ReadCache readCache;
+    private final DbLedgerStorageStats dbLedgerStorageStats;
+
+    private final int minWindowSize;
+    private final int maxWindowSize;
+    private final long maxReadAheadBytesSize;
+
+    private final ConcurrentLongHashMap<LedgerReadState> ledgerStates;
+
+    private final ExecutorService executor;
+
+    /**
+     * Access pattern of a single ledger.
+     */
+    private static class LedgerReadState {
+        long lastEntryId = -1;
+        int sequentialReads = 0;
+        int windowSize;
+
+        // Last entry loaded into the read cache by read-ahead
+        long prefetchedUpTo = -1;
+        int lastPrefetchCount = 0;
+        int prefetchHits = 0;
+        boolean prefetchInProgress = false;
+
+        // Incremented every time the sequential run is broken
+        long epoch = 0;
+
+        volatile long lastAccessed = System.currentTimeMillis();
+
+        LedgerReadState(int windowSize) {
+            this.windowSize = windowSize;
+        }
+    }
+
+    ReadAheadManager(EntryLogger entryLogger, EntryLocationIndex entryLocationIndex, ReadCache readCache,
+                     DbLedgerStorageStats dbLedgerStorageStats, int maxWindowSize, long maxReadAheadBytesSize) {
+        this(entryLogger, entryLocationIndex, readCache, dbLedgerStorageStats, maxWindowSize, maxReadAheadBytesSize,
+             newReadAheadExecutor());
+    }
+
+    @VisibleForTesting
+    ReadAheadManager(EntryLogger entryLogger, EntryLocationIndex entryLocationIndex, ReadCache readCache,
+                     DbLedgerStorageStats dbLedgerStorageStats, int maxWindowSize, long maxReadAheadBytesSize,
+                     ExecutorService executor) {
+        this.entryLogger = entryLogger;
+        this.entryLocationIndex = entryLocationIndex;
+        this.readCache = readCache;
+        this.dbLedgerStorageStats = dbLedgerStorageStats;
+        this.maxWindowSize = maxWindowSize;
+        this.minWindowSize = Math.min(MIN_WINDOW_SIZE, maxWindowSize);
+        this.maxReadAheadBytesSize = maxReadAheadBytesSize;
+        this.executor = executor;
+        this.ledgerStates = ConcurrentLongHashMap.<LedgerReadState>newBuilder()
+                .expectedItems(16 * 1024)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
+                .build();
+    }
+
+    private static ExecutorService newReadAheadExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(READ_AHEAD_THREADS, READ_AHEAD_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new DefaultThreadFactory("db-storage-read-ahead"));
+        // Don't keep the threads of an idle ledger directory around
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Record a read that was served by the read cache.
+     */
+    void onReadCacheHit(long ledgerId, long entryId) {
+        onRead(ledgerId, entryId, true, 0L);
+    }
+
+    /**
+     * Record a read that had to go to the entry logs.
+     *
+     * @param nextEntryLocation the location right after the entry that was read, which
+     *                          is where the next entry of the ledger most likely is
+     */
+    void onReadCacheMiss(long ledgerId, long entryId, long nextEntryLocation) {
+        onRead(ledgerId, entryId, false, nextEntryLocation);
+    }
+
+    private void onRead(long ledgerId, long entryId, boolean cacheHit, long nextEntryLocation) {
+        if (maxWindowSize <= 0) {
+            return;
+        }
+
+        LedgerReadState state = ledgerStates.computeIfAbsent(ledgerId, id -> new LedgerReadState(minWindowSize));
+        state.lastAccessed = System.currentTimeMillis();
+
+        final long firstEntryId;
+        final int count;
+        final long epoch;
+        synchronized (state) {
+            if (entryId == state.lastEntryId + 1) {
+                state.sequentialReads++;
+            } else if (entryId != state.lastEntryId) {
+                resetSequentialRun(state);
+            }
+            state.lastEntryId = entryId;
+
+            if (cacheHit && entryId <= state.prefetchedUpTo) {
+                state.prefetchHits++;
+            }
+
+            if (state.sequentialReads < SEQUENTIAL_READS_THRESHOLD
+                    || state.prefetchInProgress
+                    || state.prefetchedUpTo - entryId > state.windowSize / 2) {
+                // Either a random reader, or there are still enough entries ahead of the reader
+                return;
+            }
+
+            adaptWindowSize(state);
+            firstEntryId = Math.max(entryId, state.prefetchedUpTo) + 1;
+            count = state.windowSize;
+            epoch = state.epoch;
+            state.prefetchInProgress = true;
+        }
+
+        long locationHint = firstEntryId == entryId + 1 ? nextEntryLocation : 0L;
+        try {
+            executor.execute(() -> readAhead(ledgerId, state, epoch, firstEntryId, count, locationHint));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            synchronized (state) {
+                state.prefetchInProgress = false;
+            }
+        }
+    }
+
+    private void resetSequentialRun(LedgerReadState state) {
+        if (state.prefetchedUpTo > state.lastEntryId) {
+            // The entries prefetched ahead of the reader were wasted
+            state.windowSize = Math.max(minWindowSize, state.windowSize / 2);
+        }
+        state.sequentialReads = 0;
+        state.prefetchedUpTo = -1;
+        state.lastPrefetchCount = 0;
+        state.prefetchHits = 0;
+        state.epoch++;
+    }
+
+    private void adaptWindowSize(LedgerReadState state) {
+        if (state.lastPrefetchCount > 0) {
+            double hitRatio = (double) state.prefetchHits / state.lastPrefetchCount;
+            if (hitRatio >= GROW_HIT_RATIO) {
+                state.windowSize = Math.min(maxWindowSize, state.windowSize * 2);
+            } else if (hitRatio < SHRINK_HIT_RATIO) {
+                state.windowSize = Math.max(minWindowSize, state.windowSize / 2);
+            }
+        }
+        state.prefetchHits = 0;
+    }
+
+    private void readAhead(long ledgerId, LedgerReadState state, long epoch, long firstEntryId, int maxCount,
+                           long locationHint) {
+        long readAheadStartNano = MathUtils.nowInNano();
+        int count = 0;
+        long size = 0;
+        long entryId = firstEntryId;
+
+        try {
+            boolean locationFromIndex = locationHint == 0L;
+            long location = locationFromIndex ? entryLocationIndex.getLocation(ledgerId, entryId) : locationHint;
+
+            while (count < maxCount && size < maxReadAheadBytesSize && location != 0L) {
+                ByteBuf entry = readEntry(location);
+                if (entry == null || entry.getLong(0) != ledgerId || entry.getLong(8) != entryId) {
+                    if (entry != null) {
+                        entry.release();
+                    }
+                    if (locationFromIndex) {
+                        break;
+                    }
+
+                    // The next entry of the ledger is not adjacent in the entry log
+                    location = entryLocationIndex.getLocation(ledgerId, entryId);
+                    locationFromIndex = true;
+                    continue;
+                }
+
+                try {
+                    // Insert entry in read cache
+                    readCache.put(ledgerId, entryId, entry);
+
+                    count++;
+                    entryId++;
+                    size += entry.readableBytes();
+
+                    location += 4 + entry.readableBytes();
+                    locationFromIndex = false;
+                } finally {
+                    entry.release();
+                }
+            }
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Exception during read ahead for ledger: {}", ledgerId, e);
+            }
+        } finally {
+            synchronized (state) {
+                state.prefetchInProgress = false;
+                if (state.epoch == epoch) {
+                    state.lastPrefetchCount = count;
+                    if (count > 0) {
+                        state.prefetchedUpTo = Math.max(state.prefetchedUpTo, entryId - 1);
+                    }
+                }
+            }
+
+            dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
+            dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
+            dbLedgerStorageStats.getReadAheadTime().add(MathUtils.elapsedNanos(readAheadStartNano));
+        }
+    }
+
+    private ByteBuf readEntry(long location) {
+        try {
+            return entryLogger.readEntry(location);
+        } catch (IOException e) {
+            // The location might be past the end of the entry log
+            return null;
+        }
+    }
+
+    @VisibleForTesting
+    int windowSize(long ledgerId) {
+        LedgerReadState state = ledgerStates.get(ledgerId);
+        if (state == null) {
+            return 0;
+        }
+        synchronized (state) {
+            return state.windowSize;
+        }
+    }
+
+    void ledgerDeleted(long ledgerId) {
+        ledgerStates.remove(ledgerId);
+    }
+
+    /**
+     * Forget the access pattern of ledgers that were not read recently.
+     */
+    void cleanupStaleStates() {
+        long staleThreshold = System.currentTimeMillis() - STALE_STATE_MILLIS;
+        ledgerStates.removeIf((ledgerId, state) -> state.lastAccessed < staleThreshold);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        // Do not interrupt an ongoing read, that would close the entry log channels
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+}
@@ -24,13 +24,11 @@ import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.align64;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
-import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
 
 import java.io.Closeable;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
@@ -46,186 +44,305 @@ import org.slf4j.LoggerFactory;
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>Each time a segment is rotated it gets a new generation, and a single
+ * index maps every cached entry to the generation, offset and length it was
+ * written at. Neither reads nor writes take a lock: a lookup pins the segment
+ * memory by retaining its buffer and then checks that the segment is still at
+ * the expected generation. Entries are returned as read-only slices of the
+ * segment, which keep the segment memory alive until they are released.
+ *
+ * <p>The cache never allocates more than its max size. A segment whose evicted
+ * entries are still referenced by readers when it gets rotated is pinned: new
+ * entries are not cached until the last slice of the evicted entries is released.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
 
     private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
-    private final List<ByteBuf> cacheSegments;
-    private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
+    private final Segment[] segments;
+
+    // Maps (ledgerId, entryId) -> (segment generation, offset << 32 | length)
+    private final ConcurrentLongLongPairHashMap index;
 
-    private int currentSegmentIdx;
-    private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+    // Generation of the current segment in the 32 high bits, write offset in the low bits
+    private final AtomicLong currentPosition = new AtomicLong(0);
 
     private final int segmentSize;
 
-    private ByteBufAllocator allocator;
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder pinnedSkips = new LongAdder();
+
+    private static class Segment {
+        private final ByteBuf buffer;
+        private volatile long generation = -1;
+        // bytes used, once the segment is no longer the one being written
+        private volatile int size = 0;
+        // whether readers may still hold slices of the entries evicted by the last rotation
+        private volatile boolean pinned = false;
+
+        Segment(ByteBuf buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return whether the segment can be written to
+         */
+        boolean unpin() {
+            if (pinned) {
+                // Once the cache holds the only reference, a reader retaining the buffer
+                // can only find entries of the current generation
+                if (buffer.refCnt() > 1) {
+                    return false;
+                }
+                pinned = false;
+            }
+            return true;
+        }
+    }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
-        this.allocator = allocator;
         int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
         segmentSize = (int) (maxCacheSize / segmentsCount);
 
-        cacheSegments = new ArrayList<>();
-        cacheIndexes = new ArrayList<>();
-
+        segments = new Segment[segmentsCount];
         for (int i = 0; i < segmentsCount; i++) {
-            cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
-            ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
-                    .expectedItems(4096)
-                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
-                    .build();
-            cacheIndexes.add(concurrentLongLongPairHashMap);
+            segments[i] = new Segment(allocator.directBuffer(segmentSize, segmentSize));
         }
+        segments[0].generation = 0;
+
+        index = ConcurrentLongLongPairHashMap.newBuilder()
+                .expectedItems(4096 * segmentsCount)
+                .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                .build();
     }
 
     @Override
     public void close() {
-        cacheSegments.forEach(ByteBuf::release);
+        for (Segment segment : segments) {
+            segment.buffer.release();
+        }
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
         int entrySize = entry.readableBytes();
         int alignedSize = align64(entrySize);
 
-        lock.readLock().lock();
+        if (entrySize > segmentSize) {
+            log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
+            return;
+        }
+
+        while (true) {
+            long position = currentPosition.get();
+            long generation = position >>> 32;
+            int offset = (int) position;
 
-        try {
-            if (entrySize > segmentSize) {
-                log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
-                return;
-            }
-            int offset = currentSegmentOffset.getAndAdd(alignedSize);
             if (offset + entrySize > segmentSize) {
-                // Roll-over the segment (outside the read-lock)
-            } else {
-                // Copy entry into read cache segment
-                cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
-                        entry.readableBytes());
-                cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+                // Roll-over to next segment and retry
+                long evictedGeneration = rollOver(generation, offset);
+                if (evictedGeneration >= 0) {
+                    purge(evictedGeneration);
+                }
+                continue;
+            }
+
+            Segment segment = segmentFor(generation);
+            if (!segment.unpin()) {
+                // The evicted entries are still being read, the segment memory can't be reused yet
+                pinnedSkips.increment();
                 return;
             }
-        } finally {
-            lock.readLock().unlock();
-        }
 
-        // We could not insert in segment, we to get the write lock and roll-over to
-        // next segment
-        lock.writeLock().lock();
+            if (currentPosition.compareAndSet(position, position + alignedSize)) {
+                ByteBuf buffer = acquire(segment, generation);
+                if (buffer == null) {
+                    // The segment was already recycled, the entry is simply not cached
+                    return;
+                }
 
-        try {
-            int offset = currentSegmentOffset.getAndAdd(entrySize);
-            if (offset + entrySize > segmentSize) {
-                // Rollover to next segment
-                currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
-                currentSegmentOffset.set(alignedSize);
-                cacheIndexes.get(currentSegmentIdx).clear();
-                offset = 0;
+                try {
+                    // Copy entry into read cache segment
+                    buffer.setBytes(offset, entry, entry.readerIndex(), entrySize);
+                    index.put(ledgerId, entryId, generation, ((long) offset << 32) | entrySize);
+                } finally {
+                    buffer.release();
+                }
+                return;
             }
-
-            // Copy entry into read cache segment
-            cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
-            cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-        } finally {
-            lock.writeLock().unlock();
         }
     }
 
+    /**
+     * Get an entry from the read cache.
+     *
+     * <p>The returned buffer is a read-only view on the cache memory, and must be
+     * released by the caller.
+     *
+     * @return the entry or null if it's not in the cache
+     */
     public ByteBuf get(long ledgerId, long entryId) {
-        lock.readLock().lock();
-
-        try {
-            // We need to check all the segments, starting from the current one and looking
-            // backward to minimize the
-            // checks for recently inserted entries
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
-
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    int entryOffset = (int) res.first;
-                    int entryLen = (int) res.second;
-
-                    ByteBuf entry = allocator.buffer(entryLen, entryLen);
-                    entry.writeBytes(cacheSegments.get(segmentIdx), entryOffset, entryLen);
-                    return entry;
-                }
+        LongPair res = index.get(ledgerId, entryId);
+        if (res != null) {
+            long generation = res.first;
+            ByteBuf buffer = acquire(segmentFor(generation), generation);
+            if (buffer != null) {
+                hits.increment();
+                int entryOffset = (int) (res.second >>> 32);
+                int entryLen = (int) res.second;
+                // The slice shares the reference count with the segment, it takes over the
+                // reference acquired above
+                return buffer.slice(entryOffset, entryLen).asReadOnly();
             }
-        } finally {
-            lock.readLock().unlock();
+
+            // Leftover of a segment that was rotated while the entry was being inserted
+            index.remove(ledgerId, entryId, res.first, res.second);
         }
 
         // Entry not found in any segment
+        misses.increment();
         return null;
     }
 
     public boolean hasEntry(long ledgerId, long entryId) {
-        lock.readLock().lock();
-
-        try {
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+        LongPair res = index.get(ledgerId, entryId);
+        return res != null && segmentFor(res.first).generation == res.first;
+    }
 
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    return true;
-                }
+    /**
+     * @return the total size of cached entries
+     */
+    public long size() {
+        long position = currentPosition.get();
+        Segment current = segmentFor(position >>> 32);
+
+        long size = 0;
+        for (Segment segment : segments) {
+            if (segment == current) {
+                size += Math.min((int) position, segmentSize);
+            } else if (segment.generation >= 0) {
+                size += segment.size;
+            } else {
+                // the segment was never used
             }
-        } finally {
-            lock.readLock().unlock();
         }
 
-        // Entry not found in any segment
-        return false;
+        return size;
     }
 
     /**
-     * @return the total size of cached entries
+     * @return the total number of cached entries
      */
-    public long size() {
-        lock.readLock().lock();
+    public long count() {
+        return index.size();
+    }
 
-        try {
-            long size = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                if (i == currentSegmentIdx) {
-                    size += currentSegmentOffset.get();
-                } else if (!cacheIndexes.get(i).isEmpty()) {
-                    size += segmentSize;
-                } else {
-                    // the segment is empty
-                }
-            }
+    /**
+     * @return the number of segments the cache memory is split into
+     */
+    public int segmentsCount() {
+        return segments.length;
+    }
 
-            return size;
-        } finally {
-            lock.readLock().unlock();
+    /**
+     * @return the number of bytes of cached entries in the given segment
+     */
+    public long segmentSize(int segmentIdx) {
+        long position = currentPosition.get();
+        Segment segment = segments[segmentIdx];
+        if (segment == segmentFor(position >>> 32)) {
+            return Math.min((int) position, segmentSize);
+        } else {
+            return segment.generation >= 0 ? segment.size : 0;
         }
     }
 
     /**
-     * @return the total number of cached entries
+     * @return the ratio of lookups that found the entry in the cache
      */
-    public long count() {
-        lock.readLock().lock();
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
 
+    /**
+     * @return the number of entries evicted from the cache when rotating segments
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of entries not cached because the segment to write was pinned by readers
+     */
+    public long pinnedSkips() {
+        return pinnedSkips.sum();
+    }
+
+    private Segment segmentFor(long generation) {
+        return segments[(int) (generation % segments.length)];
+    }
+
+    /**
+     * Retain the memory of the segment, if the segment is still holding the given generation.
+     */
+    private static ByteBuf acquire(Segment segment, long generation) {
+        ByteBuf buffer = segment.buffer;
         try {
-            long count = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                count += cacheIndexes.get(i).size();
-            }
+            buffer.retain();
+        } catch (IllegalReferenceCountException e) {
+            // The cache was closed
+            return null;
+        }
 
-            return count;
-        } finally {
-            lock.readLock().unlock();
+        if (segment.generation != generation) {
+            buffer.release();
+            return null;
         }
+        return buffer;
+    }
+
+    /**
+     * Rotate the oldest segment to be the one being written.
+     *
+     * @return the generation of the evicted entries, or -1 if there are none to purge from the index
+     */
+    private synchronized long rollOver(long generation, int offset) {
+        if ((currentPosition.get() >>> 32) != generation) {
+            // Some other thread has already rolled over
+            return -1;
+        }
+
+        segmentFor(generation).size = Math.min(offset, segmentSize);
+
+        long nextGeneration = generation + 1;
+        Segment next = segmentFor(nextGeneration);
+        long evictedGeneration = next.generation;
+
+        // Updating the generation first makes every new lookup on the evicted entries fail,
+        // so that only the readers which already retained the buffer can still access it
+        next.generation = nextGeneration;
+        next.pinned = next.buffer.refCnt() > 1;
+        next.size = 0;
+
+        currentPosition.set(nextGeneration << 32);
+        return evictedGeneration;
+    }
+
+    /**
+     * Drop the entries of an evicted generation from the index. This runs once the new
+     * generation is published, so that the scan doesn't block the concurrent puts.
+     */
+    private void purge(long evictedGeneration) {
+        evictions.add(index.removeIf((ledgerId, entryId, entryGeneration, location) ->
+                entryGeneration == evictedGeneration));
     }
 }
@@ -58,7 +58,7 @@ import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
 import org.apache.bookkeeper.bookie.CompactableLedgerStorage;
-import org.apache.bookkeeper.bookie.DefaultEntryLogger;
+import org.apache.bookkeeper.bookie.CompactionBandwidthController;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.GarbageCollectorThread;
@@ -110,6 +110,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     // Cache where we insert entries for speculative reading
     private final ReadCache readCache;
 
+    private final ReadAheadManager readAheadManager;
+
     private final StampedLock writeCacheRotationLock = new StampedLock();
 
     protected final ReentrantLock flushMutex = new ReentrantLock();
@@ -121,6 +123,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final ExecutorService executor = Executors.newSingleThreadExecutor(
             new DefaultThreadFactory(dbStoragerExecutorName));
 
+    // Executor used to build and commit the index updates during a flush, shared by all the directories
+    private final ExecutorService flushExecutor;
+    // Number of location index batches committed in parallel during a flush
+    private final int flushIndexBatches;
+
     // Executor used to for db index cleanup
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
@@ -133,7 +140,6 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private final long writeCacheMaxSize;
     private final long readCacheMaxSize;
-    private final int readAheadCacheBatchSize;
 
     private final long maxThrottleTimeNanos;
 
@@ -141,14 +147,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
-    private final long maxReadAheadBytesSize;
+    private static final int DEFAULT_WRITE_CACHE_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
     private final Counter flushExecutorTime;
 
     public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
-            LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager, StatsLogger statsLogger,
-            ByteBufAllocator allocator, ScheduledExecutorService gcExecutor, long writeCacheSize, long readCacheSize,
-            int readAheadCacheBatchSize) throws IOException {
+            LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager, EntryLogger entryLogger,
+            StatsLogger statsLogger, ByteBufAllocator allocator, ScheduledExecutorService gcExecutor,
+            ExecutorService flushExecutor, long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize,
+            long entryLocationCacheSize)
+            throws IOException {
         checkArgument(ledgerDirsManager.getAllLedgerDirs().size() == 1,
                 "Db implementation only allows for one storage dir");
 
@@ -159,24 +167,27 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 ledgerDirsManager.getAllLedgerDirs().get(0).getPath());
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2, DEFAULT_WRITE_CACHE_SEGMENT_SIZE,
+                conf.getZeroCopyEntrySizeThreshold());
+        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2,
+                DEFAULT_WRITE_CACHE_SEGMENT_SIZE, conf.getZeroCopyEntrySizeThreshold());
 
         readCacheMaxSize = readCacheSize;
-        this.readAheadCacheBatchSize = readAheadCacheBatchSize;
-
-        // Do not attempt to perform read-ahead more than half the total size of the cache
-        maxReadAheadBytesSize = readCacheMaxSize / 2;
 
         long maxThrottleTimeMillis = conf.getLong(DbLedgerStorage.MAX_THROTTLE_TIME_MILLIS,
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
+        flushIndexBatches = DbLedgerStorage.getFlushIndexBatches(conf);
+        this.flushExecutor = flushExecutor;
+
         readCache = new ReadCache(allocator, readCacheMaxSize);
 
         ledgerIndex = new LedgerMetadataIndex(conf, KeyValueStorageRocksDB.factory, baseDir, ledgerDirStatsLogger);
+        EntryLocationCache entryLocationCache = entryLocationCacheSize > 0
+                ? new EntryLocationCache(allocator, entryLocationCacheSize) : null;
         entryLocationIndex = new EntryLocationIndex(conf,
-                KeyValueStorageRocksDB.factory, baseDir, ledgerDirStatsLogger);
+                KeyValueStorageRocksDB.factory, baseDir, ledgerDirStatsLogger, entryLocationCache);
 
         transientLedgerInfoCache = ConcurrentLongHashMap.<TransientLedgerInfo>newBuilder()
                 .expectedItems(16 * 1024)
@@ -186,7 +197,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES,
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
 
-        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager, null, statsLogger, allocator);
+        this.entryLogger = entryLogger;
         gcThread = new GarbageCollectorThread(conf, ledgerManager, ledgerDirsManager, this, entryLogger, statsLogger);
 
         dbLedgerStorageStats = new DbLedgerStorageStats(
@@ -194,9 +205,22 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             () -> writeCache.size() + writeCacheBeingFlushed.size(),
             () -> writeCache.count() + writeCacheBeingFlushed.count(),
             () -> readCache.size(),
-            () -> readCache.count()
+            () -> readCache.count(),
+            () -> readCache.hitRate(),
+            () -> readCache.evictions(),
+            () -> readCache.pinnedSkips(),
+            readCache.segmentsCount(),
+            segmentIdx -> readCache.segmentSize(segmentIdx)
         );
 
+        // Do not attempt to perform read-ahead more than half the total size of the cache
+        long maxReadAheadBytesSize = readCacheMaxSize / 2;
+        readAheadManager = new ReadAheadManager(entryLogger, entryLocationIndex, readCache, dbLedgerStorageStats,
+                readAheadCacheBatchSize, maxReadAheadBytesSize);
+        cleanupExecutor.scheduleAtFixedRate(readAheadManager::cleanupStaleStates,
+                TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES,
+                TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
+
         flushExecutorTime = ledgerDirStatsLogger.getThreadScopedCounter("db-storage-thread-time");
 
         executor.submit(() -> {
@@ -265,6 +289,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         try {
             flush();
 
+            readAheadManager.close();
             gcThread.shutdown();
             entryLogger.close();
 
@@ -541,6 +566,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         entry = readCache.get(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getReadCacheHitCounter().inc();
+            readAheadManager.onReadCacheHit(ledgerId, entryId);
             return entry;
         }
 
@@ -570,62 +596,13 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         readCache.put(ledgerId, entryId, entry);
 
-        // Try to read more entries
+        // Let the read-ahead load the next entries, if the ledger is being read sequentially
         long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        readAheadManager.onReadCacheMiss(ledgerId, entryId, nextEntryLocation);
 
         return entry;
     }
 
-    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
-        long readAheadStartNano = MathUtils.nowInNano();
-        int count = 0;
-        long size = 0;
-
-        try {
-            long firstEntryLogId = (firstEntryLocation >> 32);
-            long currentEntryLogId = firstEntryLogId;
-            long currentEntryLocation = firstEntryLocation;
-
-            while (count < readAheadCacheBatchSize
-                    && size < maxReadAheadBytesSize
-                    && currentEntryLogId == firstEntryLogId) {
-                ByteBuf entry = entryLogger.readEntry(orginalLedgerId,
-                        firstEntryId, currentEntryLocation);
-
-                try {
-                    long currentEntryLedgerId = entry.getLong(0);
-                    long currentEntryId = entry.getLong(8);
-
-                    if (currentEntryLedgerId != orginalLedgerId) {
-                        // Found an entry belonging to a different ledger, stopping read-ahead
-                        break;
-                    }
-
-                    // Insert entry in read cache
-                    readCache.put(orginalLedgerId, currentEntryId, entry);
-
-                    count++;
-                    firstEntryId++;
-                    size += entry.readableBytes();
-
-                    currentEntryLocation += 4 + entry.readableBytes();
-                    currentEntryLogId = currentEntryLocation >> 32;
-                } finally {
-                    entry.release();
-                }
-            }
-        } catch (Exception e) {
-            if (log.isDebugEnabled()) {
-                log.debug("Exception during read ahead for ledger: {}: e", orginalLedgerId, e);
-            }
-        } finally {
-            dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
-            dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
-            dbLedgerStorageStats.getReadAheadTime().add(MathUtils.elapsedNanos(readAheadStartNano));
-        }
-    }
-
     public ByteBuf getLastEntry(long ledgerId) throws IOException, BookieException {
         throwIfLimbo(ledgerId);
 
@@ -717,30 +694,35 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                         sizeToFlush / 1024.0 / 1024);
             }
 
-            // Write all the pending entries into the entry logger and collect the offset
-            // position for each entry
-
-            Batch batch = entryLocationIndex.newBatch();
-            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                try {
-                    long location = entryLogger.addEntry(ledgerId, entry);
-                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+            try (ParallelLocationBatch batch = new ParallelLocationBatch(entryLocationIndex, flushIndexBatches,
+                    flushExecutor)) {
+                // Write all the pending entries into the entry logger and collect the offset
+                // position for each entry. The index batches are built in the background.
+                long writeStartTime = MathUtils.nowInNano();
+                long sortTime = writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
+                    try {
+                        long location = entryLogger.addEntry(ledgerId, entry);
+                        batch.addLocation(ledgerId, entryId, location);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                dbLedgerStorageStats.getFlushSortStats().registerSuccessfulEvent(sortTime, TimeUnit.NANOSECONDS);
+                dbLedgerStorageStats.getFlushWriteStats().registerSuccessfulEvent(
+                        MathUtils.elapsedNanos(writeStartTime) - sortTime, TimeUnit.NANOSECONDS);
+
+                long entryLoggerStart = MathUtils.nowInNano();
+                entryLogger.flush();
+                recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+
+                // The locations can only be committed once the entries are persisted
+                long batchFlushStartTime = MathUtils.nowInNano();
+                batch.flush();
+                recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+                if (log.isDebugEnabled()) {
+                    log.debug("DB batch flushed time : {} s",
+                            MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
                 }
-            });
-
-            long entryLoggerStart = MathUtils.nowInNano();
-            entryLogger.flush();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
-
-            long batchFlushStartTime = MathUtils.nowInNano();
-            batch.flush();
-            batch.close();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
-            if (log.isDebugEnabled()) {
-                log.debug("DB batch flushed time : {} s",
-                        MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
             }
 
             long ledgerIndexStartTime = MathUtils.nowInNano();
@@ -849,6 +831,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         if (tli != null) {
             tli.close();
         }
+
+        readAheadManager.ledgerDeleted(ledgerId);
     }
 
     @Override
@@ -1016,6 +1000,15 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return Collections.singletonList(gcThread.getGarbageCollectionStatus());
     }
 
+    @Override
+    public CompactionBandwidthController getCompactionBandwidthController() {
+        return gcThread.getCompactionBandwidthController();
+    }
+
+    void setCompactionBandwidthController(CompactionBandwidthController compactionBandwidthController) {
+        gcThread.setCompactionBandwidthController(compactionBandwidthController);
+    }
+
     /**
      * Interface which process ledger logger.
      */
@@ -25,15 +25,16 @@ import static com.google.common.base.Preconditions.checkArgument;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
 
 import java.io.Closeable;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
-import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
 import org.slf4j.Logger;
@@ -48,8 +49,17 @@ import org.slf4j.LoggerFactory;
  * <p>The entries are appended in a common buffer and indexed though a hashmap,
  * until the cache is cleared.
  *
- * <p>There is the possibility to iterate through the stored entries in an ordered
- * way, by (ledgerId, entry).
+ * <p>The locations of the entries of each ledger are also kept in a per-ledger run,
+ * allocated on the heap and ordered by entryId as the entries are added. Since
+ * entries of a ledger mostly come in order, keeping a run ordered is usually just an
+ * append. This allows to iterate through the stored entries in an ordered way, by
+ * (ledgerId, entry), by only sorting the ledger ids.
+ *
+ * <p>Entries larger than the zero copy threshold, received in direct buffers, are not
+ * copied into the segments: the cache keeps a reference to their buffer until it is
+ * cleared. A referenced entry keeps alive the whole buffer it is a slice of, e.g. the
+ * buffer it was received in, so its capacity is what counts against the max size of the
+ * cache, and entries that are a small part of their buffer are copied anyway.
  */
 public class WriteCache implements Closeable {
 
@@ -65,7 +75,7 @@ public class WriteCache implements Closeable {
             .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
             .build();
 
-    private final ConcurrentLongLongHashMap lastEntryMap = ConcurrentLongLongHashMap.newBuilder()
+    private final ConcurrentLongHashMap<LedgerRun> ledgerRuns = ConcurrentLongHashMap.<LedgerRun>newBuilder()
             .expectedItems(4096)
             .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
             .build();
@@ -82,22 +92,118 @@ public class WriteCache implements Closeable {
     private final AtomicLong cacheOffset = new AtomicLong(0);
     private final LongAdder cacheCount = new LongAdder();
 
+    // The offset of a referenced entry is the index of its buffer, flagged with this bit
+    private static final long REFERENCED_ENTRY_FLAG = 1L << 62;
+    // Entries are copied if the buffer they would keep alive is more than this many times larger
+    private static final int MAX_REFERENCED_BUFFER_RATIO = 2;
+
+    private final int zeroCopyThreshold;
+    private final ConcurrentLongHashMap<ByteBuf> referencedEntries = ConcurrentLongHashMap.<ByteBuf>newBuilder()
+            .expectedItems(256)
+            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+            .build();
+    private final AtomicLong referencedEntriesIdx = new AtomicLong(0);
+    private final AtomicLong referencedEntriesSize = new AtomicLong(0);
+
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
 
     private final ByteBufAllocator allocator;
 
+    /**
+     * Locations of the entries of a ledger, as (entryId, offset, size) tuples ordered by entryId.
+     *
+     * <p>The runs are kept on the heap: the direct memory of the cache is bounded by its max size,
+     * which doesn't account for the number of ledgers.
+     */
+    private static class LedgerRun {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] entryIds = new long[INITIAL_CAPACITY];
+        private long[] offsets = new long[INITIAL_CAPACITY];
+        private int[] sizes = new int[INITIAL_CAPACITY];
+        private int count = 0;
+        private boolean released = false;
+
+        long entryId(int idx) {
+            return entryIds[idx];
+        }
+
+        long offset(int idx) {
+            return offsets[idx];
+        }
+
+        int size(int idx) {
+            return sizes[idx];
+        }
+
+        boolean isReleased() {
+            return released;
+        }
+
+        /**
+         * Add the location of an entry, keeping the run ordered by entryId.
+         */
+        void add(long entryId, long offset, int size) {
+            // Look for the insertion point from the tail, since entries mostly come in order
+            int idx = count;
+            while (idx > 0 && entryIds[idx - 1] >= entryId) {
+                idx--;
+            }
+
+            if (idx < count && entryIds[idx] == entryId) {
+                // The entry was added again, replace its location
+                offsets[idx] = offset;
+                sizes[idx] = size;
+                return;
+            }
+
+            if (count == entryIds.length) {
+                entryIds = Arrays.copyOf(entryIds, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+                sizes = Arrays.copyOf(sizes, count * 2);
+            }
+            // Out of order entry, shift the following tuples
+            System.arraycopy(entryIds, idx, entryIds, idx + 1, count - idx);
+            System.arraycopy(offsets, idx, offsets, idx + 1, count - idx);
+            System.arraycopy(sizes, idx, sizes, idx + 1, count - idx);
+            entryIds[idx] = entryId;
+            offsets[idx] = offset;
+            sizes[idx] = size;
+            count++;
+        }
+
+        void release() {
+            entryIds = null;
+            offsets = null;
+            sizes = null;
+            count = 0;
+            released = true;
+        }
+    }
+
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize) {
         // Default maxSegmentSize set to 1Gb
         this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024);
     }
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, 0);
+    }
+
+    /**
+     * Create a write cache which references the entries larger than a threshold instead of copying them.
+     *
+     * @param zeroCopyThreshold min size of the entries which are referenced, 0 to always copy the entries
+     */
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, int zeroCopyThreshold) {
         checkArgument(maxSegmentSize > 0);
+        checkArgument(zeroCopyThreshold >= 0);
 
         long alignedMaxSegmentSize = alignToPowerOfTwo(maxSegmentSize);
         checkArgument(maxSegmentSize == alignedMaxSegmentSize, "Max segment size needs to be in form of 2^n");
 
         this.allocator = allocator;
+        this.zeroCopyThreshold = zeroCopyThreshold;
         this.maxCacheSize = maxCacheSize;
         this.maxSegmentSize = (int) maxSegmentSize;
         this.segmentOffsetMask = maxSegmentSize - 1;
@@ -121,7 +227,8 @@ public class WriteCache implements Closeable {
         cacheOffset.set(0L);
         cacheCount.reset();
         index.clear();
-        lastEntryMap.clear();
+        releaseLedgerRuns();
+        releaseReferencedEntries();
         deletedLedgers.clear();
     }
 
@@ -130,11 +237,76 @@ public class WriteCache implements Closeable {
         for (ByteBuf buf : cacheSegments) {
             buf.release();
         }
+        releaseLedgerRuns();
+        releaseReferencedEntries();
+    }
+
+    private void releaseReferencedEntries() {
+        referencedEntries.forEach((idx, entry) -> entry.release());
+        referencedEntries.clear();
+        referencedEntriesSize.set(0L);
+    }
+
+    private void releaseLedgerRuns() {
+        ledgerRuns.forEach((ledgerId, run) -> {
+            synchronized (run) {
+                run.release();
+            }
+        });
+        ledgerRuns.clear();
     }
 
     public boolean put(long ledgerId, long entryId, ByteBuf entry) {
         int size = entry.readableBytes();
 
+        long offset;
+        if (zeroCopyThreshold > 0 && size >= zeroCopyThreshold && entry.isDirect()
+                && bufferCapacity(entry) <= (long) size * MAX_REFERENCED_BUFFER_RATIO) {
+            offset = putReferenced(entry, bufferCapacity(entry));
+        } else {
+            offset = putCopy(entry, size);
+        }
+        if (offset < 0) {
+            // Cache is full
+            return false;
+        }
+
+        // Writes for the same ledger are usually coming from a single thread, so the lock
+        // on the ledger run should be always uncontended. Updating the index while holding
+        // it makes sure both agree on the location of an entry that is added twice.
+        LedgerRun run = ledgerRuns.computeIfAbsent(ledgerId, id -> new LedgerRun());
+        synchronized (run) {
+            run.add(entryId, offset, size);
+            index.put(ledgerId, entryId, offset, size);
+        }
+        cacheCount.increment();
+        cacheSize.addAndGet(size);
+        return true;
+    }
+
+    /**
+     * @return the capacity of the buffer that a reference to the entry keeps alive
+     */
+    private static int bufferCapacity(ByteBuf entry) {
+        ByteBuf buffer = entry;
+        while (buffer.unwrap() != null) {
+            buffer = buffer.unwrap();
+        }
+        return buffer.capacity();
+    }
+
+    private long putReferenced(ByteBuf entry, int bufferCapacity) {
+        if (referencedEntriesSize.addAndGet(bufferCapacity) + cacheOffset.get() > maxCacheSize) {
+            referencedEntriesSize.addAndGet(-bufferCapacity);
+            return -1;
+        }
+
+        long idx = referencedEntriesIdx.getAndIncrement();
+        referencedEntries.put(idx, entry.retainedSlice());
+        return REFERENCED_ENTRY_FLAG | idx;
+    }
+
+    private long putCopy(ByteBuf entry, int size) {
         // Align to 64 bytes so that different threads will not contend the same L1
         // cache line
         int alignedSize = align64(size);
@@ -148,9 +320,9 @@ public class WriteCache implements Closeable {
             localOffset = (int) (offset & segmentOffsetMask);
             segmentIdx = (int) (offset >>> segmentOffsetBits);
 
-            if ((offset + size) > maxCacheSize) {
+            if ((offset + size) + referencedEntriesSize.get() > maxCacheSize) {
                 // Cache is full
-                return false;
+                return -1;
             } else if (maxSegmentSize - localOffset < size) {
                 // If an entry is at the end of a segment, we need to get a new offset and try
                 // again in next segment
@@ -162,26 +334,7 @@ public class WriteCache implements Closeable {
         }
 
         cacheSegments[segmentIdx].setBytes(localOffset, entry, entry.readerIndex(), entry.readableBytes());
-
-        // Update last entryId for ledger. This logic is to handle writes for the same
-        // ledger coming out of order and from different thread, though in practice it
-        // should not happen and the compareAndSet should be always uncontended.
-        while (true) {
-            long currentLastEntryId = lastEntryMap.get(ledgerId);
-            if (currentLastEntryId > entryId) {
-                // A newer entry is already there
-                break;
-            }
-
-            if (lastEntryMap.compareAndSet(ledgerId, currentLastEntryId, entryId)) {
-                break;
-            }
-        }
-
-        index.put(ledgerId, entryId, offset, size);
-        cacheCount.increment();
-        cacheSize.addAndGet(size);
-        return true;
+        return offset;
     }
 
     public ByteBuf get(long ledgerId, long entryId) {
@@ -192,6 +345,18 @@ public class WriteCache implements Closeable {
 
         long offset = result.first;
         int size = (int) result.second;
+        if ((offset & REFERENCED_ENTRY_FLAG) != 0) {
+            ByteBuf referenced = referencedEntries.get(offset & ~REFERENCED_ENTRY_FLAG);
+            if (referenced == null) {
+                return null;
+            }
+            try {
+                return referenced.retainedDuplicate();
+            } catch (IllegalReferenceCountException e) {
+                // The cache was cleared in the meantime
+                return null;
+            }
+        }
         ByteBuf entry = allocator.buffer(size, size);
 
         int localOffset = (int) (offset & segmentOffsetMask);
@@ -205,83 +370,95 @@ public class WriteCache implements Closeable {
     }
 
     public ByteBuf getLastEntry(long ledgerId) {
-        long lastEntryId = lastEntryMap.get(ledgerId);
-        if (lastEntryId == -1) {
+        LedgerRun run = ledgerRuns.get(ledgerId);
+        if (run == null) {
             // Ledger not found in write cache
             return null;
-        } else {
-            return get(ledgerId, lastEntryId);
         }
+
+        long lastEntryId;
+        synchronized (run) {
+            if (run.isReleased() || run.count == 0) {
+                return null;
+            }
+            lastEntryId = run.entryId(run.count - 1);
+        }
+        return get(ledgerId, lastEntryId);
     }
 
     public void deleteLedger(long ledgerId) {
         deletedLedgers.add(ledgerId);
     }
 
-    private static final ArrayGroupSort groupSorter = new ArrayGroupSort(2, 4);
-
-    public void forEach(EntryConsumer consumer) {
-        sortedEntriesLock.lock();
-
-        try {
-            int entriesToSort = (int) index.size();
-            int arrayLen = entriesToSort * 4;
-            if (sortedEntries == null || sortedEntries.length < arrayLen) {
-                sortedEntries = new long[(int) (arrayLen * 2)];
+    /**
+     * Iterate through the stored entries, ordered by (ledgerId, entryId).
+     *
+     * <p>Entries must not be added while iterating.
+     *
+     * @return the time in nanoseconds spent ordering the entries, excluding the time
+     *         spent in the consumer
+     */
+    public long forEach(EntryConsumer consumer) {
+        long startTime = MathUtils.nowInNano();
+
+        // Only the ledgers need to be sorted, the entries of each ledger are already ordered
+        long[] ledgerIds = new long[(int) ledgerRuns.size()];
+        int[] ledgersCount = new int[1];
+        ledgerRuns.forEach((ledgerId, run) -> {
+            if (ledgersCount[0] < ledgerIds.length) {
+                ledgerIds[ledgersCount[0]++] = ledgerId;
             }
+        });
+        Arrays.sort(ledgerIds, 0, ledgersCount[0]);
 
-            long startTime = MathUtils.nowInNano();
-
-            sortedEntriesIdx = 0;
-            index.forEach((ledgerId, entryId, offset, length) -> {
-                if (deletedLedgers.contains(ledgerId)) {
-                    // Ignore deleted ledgers
-                    return;
-                }
-
-                sortedEntries[sortedEntriesIdx] = ledgerId;
-                sortedEntries[sortedEntriesIdx + 1] = entryId;
-                sortedEntries[sortedEntriesIdx + 2] = offset;
-                sortedEntries[sortedEntriesIdx + 3] = length;
-                sortedEntriesIdx += 4;
-            });
+        long sortTime = MathUtils.elapsedNanos(startTime);
+        if (log.isDebugEnabled()) {
+            log.debug("sorting {} ledgers took {} ms", ledgersCount[0], sortTime / 1e6);
+        }
 
-            if (log.isDebugEnabled()) {
-                log.debug("iteration took {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
-            }
-            startTime = MathUtils.nowInNano();
+        ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+        }
 
-            // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
-            groupSorter.sort(sortedEntries, 0, sortedEntriesIdx);
-            if (log.isDebugEnabled()) {
-                log.debug("sorting {} ms", (MathUtils.elapsedNanos(startTime) / 1e6));
+        startTime = MathUtils.nowInNano();
+        for (int i = 0; i < ledgersCount[0]; i++) {
+            long ledgerId = ledgerIds[i];
+            if (deletedLedgers.contains(ledgerId)) {
+                // Ignore deleted ledgers
+                continue;
             }
-            startTime = MathUtils.nowInNano();
 
-            ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
-            for (int i = 0; i < segmentsCount; i++) {
-                entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+            LedgerRun run = ledgerRuns.get(ledgerId);
+            if (run == null) {
+                continue;
             }
 
-            for (int i = 0; i < sortedEntriesIdx; i += 4) {
-                long ledgerId = sortedEntries[i];
-                long entryId = sortedEntries[i + 1];
-                long offset = sortedEntries[i + 2];
-                long length = sortedEntries[i + 3];
+            for (int j = 0; j < run.count; j++) {
+                long entryId = run.entryId(j);
+                long offset = run.offset(j);
+                int length = run.size(j);
+
+                if ((offset & REFERENCED_ENTRY_FLAG) != 0) {
+                    ByteBuf referenced = referencedEntries.get(offset & ~REFERENCED_ENTRY_FLAG);
+                    if (referenced != null) {
+                        consumer.accept(ledgerId, entryId, referenced.duplicate());
+                    }
+                    continue;
+                }
 
                 int localOffset = (int) (offset & segmentOffsetMask);
                 int segmentIdx = (int) (offset >>> segmentOffsetBits);
                 ByteBuf entry = entrySegments[segmentIdx];
-                entry.setIndex(localOffset, localOffset + (int) length);
+                entry.setIndex(localOffset, localOffset + length);
                 consumer.accept(ledgerId, entryId, entry);
             }
+        }
 
-            if (log.isDebugEnabled()) {
-                log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
-            }
-        } finally {
-            sortedEntriesLock.unlock();
+        if (log.isDebugEnabled()) {
+            log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
         }
+        return sortTime;
     }
 
     public long size() {
@@ -306,9 +483,5 @@ public class WriteCache implements Closeable {
         return (long) Math.pow(2, 64 - Long.numberOfLeadingZeros(n - 1));
     }
 
-    private final ReentrantLock sortedEntriesLock = new ReentrantLock();
-    private long[] sortedEntries;
-    private int sortedEntriesIdx;
-
     private static final Logger log = LoggerFactory.getLogger(WriteCache.class);
 }
@@ -0,0 +1,232 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException.BKDigestMatchException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.common.util.SafeRunnable;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read a range of entries using batch read requests, so that a sequential reader
+ * fetches many entries from one bookie per round trip instead of one.
+ *
+ * <p>This is only valid when every bookie of the ensemble stores every entry of
+ * the range, i.e. when the ensemble size equals the write quorum size and the range
+ * does not span an ensemble change. Each request asks for all the entries still
+ * missing; the bookie may return fewer (bounded by the response size), in which
+ * case a new request is issued for the remaining ones. On errors, the next replica
+ * in the write set is tried, starting from the first entry not yet received.
+ */
+class BatchedReadOp implements BatchedReadEntryCallback, SafeRunnable {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedReadOp.class);
+
+    private final LedgerHandle lh;
+    private final ClientContext clientCtx;
+    private final CompletableFuture<LedgerEntries> future;
+    private final List<LedgerEntry> entries;
+    private final long startEntryId;
+    private final long endEntryId;
+    private final long maxSize;
+
+    private List<BookieId> ensemble;
+    private DistributionSchedule.WriteSet writeSet;
+    private int nextReplicaIndex = 0;
+    private int firstError = BKException.Code.OK;
+    private long nextEntryId;
+    private long requestTimeNanos;
+
+    BatchedReadOp(LedgerHandle lh,
+                  ClientContext clientCtx,
+                  long startEntryId,
+                  long endEntryId,
+                  long maxSize) {
+        this.lh = lh;
+        this.clientCtx = clientCtx;
+        this.startEntryId = startEntryId;
+        this.endEntryId = endEntryId;
+        this.nextEntryId = startEntryId;
+        this.maxSize = maxSize;
+        this.entries = new ArrayList<>((int) (endEntryId - startEntryId + 1));
+        this.future = new CompletableFuture<>();
+    }
+
+    CompletableFuture<LedgerEntries> future() {
+        return future;
+    }
+
+    void initiate() {
+        this.requestTimeNanos = MathUtils.nowInNano();
+        this.ensemble = lh.getLedgerMetadata().getEnsembleAt(startEntryId);
+        if (clientCtx.getConf().enableReorderReadSequence) {
+            writeSet = clientCtx.getPlacementPolicy()
+                .reorderReadSequence(
+                        ensemble,
+                        lh.getBookiesHealthInfo(),
+                        lh.getWriteSetForReadOperation(startEntryId));
+        } else {
+            writeSet = lh.getWriteSetForReadOperation(startEntryId);
+        }
+        sendNextRead();
+    }
+
+    @Override
+    public void safeRun() {
+        initiate();
+    }
+
+    private static class ReadContext implements ReadEntryCallbackCtx {
+        final int bookieIndex;
+        final BookieId to;
+        long lac = LedgerHandle.INVALID_ENTRY_ID;
+
+        ReadContext(int bookieIndex, BookieId to) {
+            this.bookieIndex = bookieIndex;
+            this.to = to;
+        }
+
+        @Override
+        public void setLastAddConfirmed(long lac) {
+            this.lac = lac;
+        }
+
+        @Override
+        public long getLastAddConfirmed() {
+            return lac;
+        }
+    }
+
+    private void sendNextRead() {
+        if (nextReplicaIndex >= writeSet.size()) {
+            // the read failed from all the replicas
+            complete(firstError);
+            return;
+        }
+
+        int bookieIndex = writeSet.get(nextReplicaIndex);
+        BookieId to = ensemble.get(bookieIndex);
+        int maxCount = (int) Math.min(endEntryId - nextEntryId + 1, Integer.MAX_VALUE);
+        if (lh.throttler != null) {
+            lh.throttler.acquire();
+        }
+        clientCtx.getBookieClient().batchReadEntries(to, lh.getId(), nextEntryId, maxCount, maxSize,
+                this, new ReadContext(bookieIndex, to), BookieProtocol.FLAG_NONE);
+    }
+
+    @Override
+    public void readEntriesComplete(int rc, long ledgerId, long startEntryId, ByteBufList bufList, Object ctx) {
+        final ReadContext rctx = (ReadContext) ctx;
+        if (future.isDone()) {
+            return;
+        }
+
+        if (rc != BKException.Code.OK) {
+            logErrorAndReattemptRead(rctx, "Error: " + BKException.getMessage(rc), rc);
+            return;
+        }
+
+        for (int i = 0; i < bufList.size() && nextEntryId <= endEntryId; i++) {
+            long entryId = startEntryId + i;
+            ByteBuf buffer = bufList.getBuffer(i).retainedSlice();
+            ByteBuf content;
+            try {
+                content = lh.macManager.verifyDigestAndReturnData(entryId, buffer);
+            } catch (BKDigestMatchException e) {
+                buffer.release();
+                clientCtx.getClientStats().getReadOpDmCounter().inc();
+                logErrorAndReattemptRead(rctx, "Mac mismatch", BKException.Code.DigestMatchException);
+                return;
+            }
+            LedgerEntryImpl entry = LedgerEntryImpl.create(lh.getId(), entryId);
+            /*
+             * The length is a long and it is the last field of the metadata of an entry.
+             * Consequently, we have to subtract 8 from METADATA_LENGTH to get the length.
+             */
+            entry.setLength(buffer.getLong(DigestManager.METADATA_LENGTH - 8));
+            entry.setEntryBuf(content);
+            entries.add(entry);
+            nextEntryId++;
+        }
+
+        lh.updateLastConfirmed(rctx.getLastAddConfirmed(), 0L);
+
+        if (nextEntryId > endEntryId) {
+            complete(BKException.Code.OK);
+        } else {
+            // the bookie returned a partial batch, ask the same bookie for the rest
+            sendNextRead();
+        }
+    }
+
+    private void logErrorAndReattemptRead(ReadContext rctx, String errMsg, int rc) {
+        if (BKException.Code.OK == firstError
+            || BKException.Code.NoSuchEntryException == firstError
+            || BKException.Code.NoSuchLedgerExistsException == firstError) {
+            firstError = rc;
+        }
+        if (BKException.Code.NoSuchEntryException == rc
+            || BKException.Code.NoSuchLedgerExistsException == rc) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No such entry found on bookie.  L{} E{} bookie: {}",
+                        lh.getId(), nextEntryId, rctx.to);
+            }
+        } else {
+            LOG.info("{} while batch reading L{} E{} from bookie: {}",
+                    errMsg, lh.getId(), nextEntryId, rctx.to);
+        }
+        lh.recordReadErrorOnBookie(rctx.bookieIndex);
+
+        nextReplicaIndex++;
+        sendNextRead();
+    }
+
+    private void complete(int rc) {
+        writeSet.recycle();
+        long latencyNanos = MathUtils.elapsedNanos(requestTimeNanos);
+        if (rc != BKException.Code.OK) {
+            LOG.error("Batch read of ledger entries failed: L{} E{}-E{}, First unread entry is E{}, Error = '{}'",
+                    lh.getId(), startEntryId, endEntryId, nextEntryId, BKException.getMessage(rc));
+            clientCtx.getClientStats().getReadOpLogger().registerFailedEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            entries.forEach(LedgerEntry::close);
+            entries.clear();
+            future.completeExceptionally(BKException.create(rc));
+        } else {
+            clientCtx.getClientStats().getReadOpLogger().registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            future.complete(LedgerEntriesImpl.create(entries));
+        }
+    }
+}
@@ -209,6 +209,7 @@ public class BookKeeperAdmin implements AutoCloseable {
      */
     @Override
     public void close() throws InterruptedException, BKException {
+        lfr.shutdown();
         if (ownsBK) {
             bkc.close();
         }
@@ -44,4 +44,15 @@ public interface BookiesHealthInfo {
      */
     long getBookiePendingRequests(BookieId bookieSocketAddress);
 
+    /**
+     * Returns the recent read latency of a bookie at the given quantile.
+     *
+     * @param bookieSocketAddress
+     * @param quantile the quantile, between 0 and 1
+     * @return read latency in nanoseconds, -1 if there were not enough recent reads to the bookie
+     */
+    default long getBookieReadLatency(BookieId bookieSocketAddress, double quantile) {
+        return -1L;
+    }
+
 }
@@ -41,6 +41,8 @@ class ClientInternalConf {
     final boolean enableParallelRecoveryRead;
     final boolean enableReorderReadSequence;
     final boolean enableStickyReads;
+    final boolean enableBatchReads;
+    final long maxBatchReadSize;
     final int recoveryReadBatchSize;
     final int throttleValue;
     final int bookieFailureHistoryExpirationMSec;
@@ -82,6 +84,8 @@ class ClientInternalConf {
         this.enableBookieFailureTracking = conf.getEnableBookieFailureTracking();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
         this.enableStickyReads = conf.isStickyReadsEnabled();
+        this.enableBatchReads = conf.isBatchReadEnabled();
+        this.maxBatchReadSize = conf.getNettyMaxFrameSizeBytes();
         this.enforceMinNumFaultDomainsForWrite = conf.getEnforceMinNumFaultDomainsForWrite();
 
         if (conf.getFirstSpeculativeReadTimeout() > 0) {
@@ -89,7 +93,8 @@ class ClientInternalConf {
                     Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
                                         conf.getFirstSpeculativeReadTimeout(),
                                         conf.getMaxSpeculativeReadTimeout(),
-                                        conf.getSpeculativeReadTimeoutBackoffMultiplier()));
+                                        conf.getSpeculativeReadTimeoutBackoffMultiplier(),
+                                        conf.isAdaptiveSpeculativeReadTimeoutEnabled()));
         } else {
             this.readSpeculativeRequestPolicy = Optional.<SpeculativeRequestExecutionPolicy>empty();
         }
@@ -38,18 +38,29 @@ import org.slf4j.LoggerFactory;
  *
  * <p>The policy issues speculative requests in a backoff way. The time between two speculative requests
  * are between {@code firstSpeculativeRequestTimeout} and {@code maxSpeculativeRequestTimeout}.
+ *
+ * <p>If the policy is adaptive, the first speculative request is issued once the request took longer
+ * than {@link SpeculativeRequestExecutor#getExpectedLatency()}, if known and lower than
+ * {@code firstSpeculativeRequestTimeout}.
  */
 public class DefaultSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultSpeculativeRequestExecutionPolicy.class);
     final int firstSpeculativeRequestTimeout;
     final int maxSpeculativeRequestTimeout;
     final float backoffMultiplier;
+    final boolean adaptive;
 
     public DefaultSpeculativeRequestExecutionPolicy(int firstSpeculativeRequestTimeout,
             int maxSpeculativeRequestTimeout, float backoffMultiplier) {
+        this(firstSpeculativeRequestTimeout, maxSpeculativeRequestTimeout, backoffMultiplier, false);
+    }
+
+    public DefaultSpeculativeRequestExecutionPolicy(int firstSpeculativeRequestTimeout,
+            int maxSpeculativeRequestTimeout, float backoffMultiplier, boolean adaptive) {
         this.firstSpeculativeRequestTimeout = firstSpeculativeRequestTimeout;
         this.maxSpeculativeRequestTimeout = maxSpeculativeRequestTimeout;
         this.backoffMultiplier = backoffMultiplier;
+        this.adaptive = adaptive;
 
         if (backoffMultiplier <= 0) {
             throw new IllegalArgumentException("Invalid value provided for backoffMultiplier");
@@ -71,7 +82,20 @@ public class DefaultSpeculativeRequestExecutionPolicy implements SpeculativeRequ
     @Override
     public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
             final SpeculativeRequestExecutor requestExecutor) {
-        return scheduleSpeculativeRead(scheduler, requestExecutor, firstSpeculativeRequestTimeout);
+        return scheduleSpeculativeRead(scheduler, requestExecutor, getFirstSpeculativeRequestTimeout(requestExecutor));
+    }
+
+    private int getFirstSpeculativeRequestTimeout(SpeculativeRequestExecutor requestExecutor) {
+        if (!adaptive) {
+            return firstSpeculativeRequestTimeout;
+        }
+        long expectedLatency = requestExecutor.getExpectedLatency();
+        if (expectedLatency < 0) {
+            return firstSpeculativeRequestTimeout;
+        }
+        // The scheduler has a millisecond resolution, round up
+        long expectedLatencyMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(expectedLatency + 999_999));
+        return (int) Math.min(firstSpeculativeRequestTimeout, expectedLatencyMillis);
     }
 
     private ScheduledFuture<?> scheduleSpeculativeRead(final ScheduledExecutorService scheduler,
@@ -26,11 +26,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.bookkeeper.client.BKException.Code;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieClient;
@@ -53,6 +55,9 @@ public class LedgerChecker {
     public final BookieWatcher bookieWatcher;
 
     final Semaphore semaphore;
+    final int inFlightReadEntryNumPerBookie;
+    private final ConcurrentHashMap<BookieId, Semaphore> bookieSemaphores = new ConcurrentHashMap<>();
+    private final LongAdder numEntriesRead = new LongAdder();
 
     static class InvalidFragmentException extends Exception {
         private static final long serialVersionUID = 1467201276417062353L;
@@ -67,19 +72,21 @@ public class LedgerChecker {
         AtomicBoolean completed = new AtomicBoolean(false);
         final AtomicLong numEntries;
         final LedgerFragment fragment;
+        final BookieId bookie;
         final GenericCallback<LedgerFragment> cb;
 
-        ReadManyEntriesCallback(long numEntries, LedgerFragment fragment,
+        ReadManyEntriesCallback(long numEntries, LedgerFragment fragment, BookieId bookie,
                 GenericCallback<LedgerFragment> cb) {
             this.numEntries = new AtomicLong(numEntries);
             this.fragment = fragment;
+            this.bookie = bookie;
             this.cb = cb;
         }
 
         @Override
         public void readEntryComplete(int rc, long ledgerId, long entryId,
                 ByteBuf buffer, Object ctx) {
-            releasePermit();
+            releasePermit(bookie);
             if (rc == BKException.Code.OK) {
                 if (numEntries.decrementAndGet() == 0
                         && !completed.getAndSet(true)) {
@@ -152,7 +159,16 @@ public class LedgerChecker {
         this(bkc.getBookieClient(), bkc.getBookieWatcher(), inFlightReadEntryNum);
     }
 
+    public LedgerChecker(BookKeeper bkc, int inFlightReadEntryNum, int inFlightReadEntryNumPerBookie) {
+        this(bkc.getBookieClient(), bkc.getBookieWatcher(), inFlightReadEntryNum, inFlightReadEntryNumPerBookie);
+    }
+
     public LedgerChecker(BookieClient client, BookieWatcher watcher, int inFlightReadEntryNum) {
+        this(client, watcher, inFlightReadEntryNum, -1);
+    }
+
+    public LedgerChecker(BookieClient client, BookieWatcher watcher, int inFlightReadEntryNum,
+                         int inFlightReadEntryNumPerBookie) {
         bookieClient = client;
         bookieWatcher = watcher;
         if (inFlightReadEntryNum > 0) {
@@ -160,6 +176,16 @@ public class LedgerChecker {
         } else {
             semaphore = null;
         }
+        this.inFlightReadEntryNumPerBookie = inFlightReadEntryNumPerBookie;
+    }
+
+    /**
+     * Get the number of entries read from the bookies to check the ledgers.
+     *
+     * @return the number of entries read
+     */
+    public long getNumEntriesRead() {
+        return numEntriesRead.sum();
     }
 
     /**
@@ -181,6 +207,35 @@ public class LedgerChecker {
         }
     }
 
+    /**
+     * Acquires a permit to read an entry from a bookie, blocking until the
+     * bookie has less than the max number of reads in flight.
+     */
+    public void acquirePermit(BookieId bookie) throws InterruptedException {
+        if (inFlightReadEntryNumPerBookie > 0) {
+            bookieSemaphores.computeIfAbsent(bookie, b -> new Semaphore(inFlightReadEntryNumPerBookie)).acquire();
+        }
+        try {
+            acquirePermit();
+        } catch (InterruptedException ie) {
+            if (inFlightReadEntryNumPerBookie > 0) {
+                bookieSemaphores.get(bookie).release();
+            }
+            throw ie;
+        }
+        numEntriesRead.increment();
+    }
+
+    /**
+     * Release a permit to read an entry from a bookie.
+     */
+    public void releasePermit(BookieId bookie) {
+        releasePermit();
+        if (inFlightReadEntryNumPerBookie > 0) {
+            bookieSemaphores.get(bookie).release();
+        }
+    }
+
     /**
      * Verify a ledger fragment to collect bad bookies.
      *
@@ -243,9 +298,9 @@ public class LedgerChecker {
             // fragment is on this bookie, but already know it's unavailable, so skip the call
             cb.operationComplete(BKException.Code.BookieHandleNotAvailableException, fragment);
         } else if (firstStored == lastStored) {
-            acquirePermit();
+            acquirePermit(bookie);
             ReadManyEntriesCallback manycb = new ReadManyEntriesCallback(1,
-                    fragment, cb);
+                    fragment, bookie, cb);
             bookieClient.readEntry(bookie, fragment.getLedgerId(), firstStored,
                                    manycb, null, BookieProtocol.FLAG_NONE);
         } else {
@@ -256,22 +311,24 @@ public class LedgerChecker {
 
             long lengthOfLedgerFragment = lastStored - firstStored + 1;
 
-            int numberOfEntriesToBeVerified =
-                (int) (lengthOfLedgerFragment * (percentageOfLedgerFragmentToBeVerified / 100.0));
+            long numberOfEntriesToBeVerified =
+                (long) (lengthOfLedgerFragment * (percentageOfLedgerFragmentToBeVerified / 100.0));
 
             TreeSet<Long> entriesToBeVerified = new TreeSet<Long>();
 
             if (numberOfEntriesToBeVerified < lengthOfLedgerFragment) {
-                // Evenly pick random entries over the length of the fragment
-                if (numberOfEntriesToBeVerified > 0) {
-                    int lengthOfBucket = (int) (lengthOfLedgerFragment / numberOfEntriesToBeVerified);
-                    for (long index = firstStored;
-                         index < (lastStored - lengthOfBucket - 1);
-                         index += lengthOfBucket) {
-                        long potentialEntryId = ThreadLocalRandom.current().nextInt((lengthOfBucket)) + index;
-                        if (fragment.isStoredEntryId(potentialEntryId, bookieIndex)) {
-                            entriesToBeVerified.add(potentialEntryId);
-                        }
+                // Pick a random entry in each of numberOfEntriesToBeVerified buckets of the same length,
+                // so that the sample is spread over the whole fragment
+                double lengthOfBucket = (double) lengthOfLedgerFragment / numberOfEntriesToBeVerified;
+                for (long bucket = 0; bucket < numberOfEntriesToBeVerified; bucket++) {
+                    long startOfBucket = firstStored + (long) (bucket * lengthOfBucket);
+                    long endOfBucket = Math.min(lastStored + 1, firstStored + (long) ((bucket + 1) * lengthOfBucket));
+                    if (startOfBucket >= endOfBucket) {
+                        continue;
+                    }
+                    long potentialEntryId = ThreadLocalRandom.current().nextLong(startOfBucket, endOfBucket);
+                    if (fragment.isStoredEntryId(potentialEntryId, bookieIndex)) {
+                        entriesToBeVerified.add(potentialEntryId);
                     }
                 }
                 entriesToBeVerified.add(firstStored);
@@ -286,9 +343,9 @@ public class LedgerChecker {
                 }
             }
             ReadManyEntriesCallback manycb = new ReadManyEntriesCallback(entriesToBeVerified.size(),
-                    fragment, cb);
+                    fragment, bookie, cb);
             for (Long entryID: entriesToBeVerified) {
-                acquirePermit();
+                acquirePermit(bookie);
                 bookieClient.readEntry(bookie, fragment.getLedgerId(), entryID, manycb, null, BookieProtocol.FLAG_NONE);
             }
         }
@@ -313,7 +370,7 @@ public class LedgerChecker {
         @Override
         public void readEntryComplete(int rc, long ledgerId, long entryId,
                                       ByteBuf buffer, Object ctx) {
-            releasePermit();
+            releasePermit((BookieId) ctx);
             if (BKException.Code.NoSuchEntryException != rc && BKException.Code.NoSuchLedgerExistsException != rc
                     && BKException.Code.NoSuchLedgerExistsOnMetadataServerException != rc) {
                 entryMayExist.set(true);
@@ -435,10 +492,10 @@ public class LedgerChecker {
                 DistributionSchedule.WriteSet writeSet = lh.getDistributionSchedule().getWriteSet(entryToRead);
                 for (int i = 0; i < writeSet.size(); i++) {
                     try {
-                        acquirePermit();
                         BookieId addr = curEnsemble.get(writeSet.get(i));
+                        acquirePermit(addr);
                         bookieClient.readEntry(addr, lh.getId(), entryToRead,
-                                eecb, null, BookieProtocol.FLAG_NONE);
+                                eecb, addr, BookieProtocol.FLAG_NONE);
                     } catch (InterruptedException e) {
                         LOG.error("InterruptedException when checking entry : {}", entryToRead, e);
                     }
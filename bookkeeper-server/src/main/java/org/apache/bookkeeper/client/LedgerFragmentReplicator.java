@@ -21,14 +21,20 @@ package org.apache.bookkeeper.client;
 
 import static org.apache.bookkeeper.client.LedgerHandle.INVALID_ENTRY_ID;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_BYTES_READ;
+import static org.apache.bookkeeper.replication.ReplicationStats.NUM_BYTES_READ_FROM_BOOKIE;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_BYTES_WRITTEN;
+import static org.apache.bookkeeper.replication.ReplicationStats.NUM_BYTES_WRITTEN_TO_BOOKIE;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_ENTRIES_READ;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_ENTRIES_WRITTEN;
 import static org.apache.bookkeeper.replication.ReplicationStats.READ_DATA_LATENCY;
+import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_IN_FLIGHT_BYTES;
 import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_WORKER_SCOPE;
 import static org.apache.bookkeeper.replication.ReplicationStats.WRITE_DATA_LATENCY;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.RateLimiter;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -36,12 +42,18 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import org.apache.bookkeeper.client.AsyncCallback.ReadCallback;
+import org.apache.bookkeeper.client.api.LedgerEntries;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -50,6 +62,7 @@ import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.MultiCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -63,6 +76,12 @@ import org.slf4j.LoggerFactory;
 /**
  * This is the helper class for replicating the fragments from one bookie to
  * another.
+ *
+ * <p>When {@link ClientConfiguration#getRereplicationMaxInFlightBytes()} is set, each batch of
+ * entries is read with a single read and written to the new bookies as soon as it is read. The
+ * batches of all the fragments being replicated are dispatched by a single thread, which bounds
+ * the bytes in flight and, if configured, the replication rate, so that many ledgers can be
+ * replicated concurrently within a global budget.
  */
 @StatsDoc(
     name = REPLICATION_WORKER_SCOPE,
@@ -103,9 +122,23 @@ public class LedgerFragmentReplicator {
             help = "The distribution of latency of write entries by the replicator"
     )
     private final OpStatsLogger writeDataLatency;
+    @StatsDoc(
+            name = NUM_BYTES_READ_FROM_BOOKIE,
+            help = "Number of bytes read by the replicator from each bookie, labeled by bookie"
+    )
+    private final Map<BookieId, Counter> bytesReadFromBookie = new ConcurrentHashMap<>();
+    @StatsDoc(
+            name = NUM_BYTES_WRITTEN_TO_BOOKIE,
+            help = "Number of bytes written by the replicator to each bookie, labeled by bookie"
+    )
+    private final Map<BookieId, Counter> bytesWrittenToBookie = new ConcurrentHashMap<>();
 
     protected Throttler replicationThrottle = null;
 
+    // Bound the batches in flight, and dispatch them, when the batches are pipelined
+    private InFlightBudget inFlightBudget = null;
+    private ExecutorService batchDispatcher = null;
+
     private AtomicInteger averageEntrySize;
 
     private static final int INITIAL_AVERAGE_ENTRY_SIZE = 1024;
@@ -124,6 +157,34 @@ public class LedgerFragmentReplicator {
             this.replicationThrottle = new Throttler(conf.getReplicationRateByBytes());
         }
         averageEntrySize = new AtomicInteger(INITIAL_AVERAGE_ENTRY_SIZE);
+        if (conf.getRereplicationMaxInFlightBytes() > 0) {
+            this.inFlightBudget = new InFlightBudget(conf.getRereplicationMaxInFlightBytes());
+            this.batchDispatcher = Executors.newSingleThreadExecutor(
+                    new DefaultThreadFactory("ReplicationBatchDispatcher", true));
+            this.statsLogger.registerGauge(REPLICATION_IN_FLIGHT_BYTES, new Gauge<Long>() {
+                @Override
+                public Long getDefaultValue() {
+                    return 0L;
+                }
+
+                @Override
+                public Long getSample() {
+                    return inFlightBudget.getInFlightBytes();
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop dispatching the batches of entries to replicate. The batches not dispatched yet are failed,
+     * they hold no part of the budget of bytes in flight.
+     */
+    public void shutdown() {
+        if (batchDispatcher != null) {
+            for (Runnable task : batchDispatcher.shutdownNow()) {
+                ((BatchTask) task).fail(BKException.Code.InterruptedException);
+            }
+        }
     }
 
     public LedgerFragmentReplicator(BookKeeper bkc, ClientConfiguration conf) {
@@ -213,12 +274,210 @@ public class LedgerFragmentReplicator {
             final Set<BookieId> targetBookieAddresses,
             final BiConsumer<Long, Long> onReadEntryFailureCallback)
             throws InterruptedException {
+        if (targetBookieAddresses.isEmpty()) {
+            LOG.error("No bookie to replicate fragment {} to", lf);
+            ledgerFragmentMcb.processResult(BKException.Code.IncorrectParameterException, null, null);
+            return;
+        }
         Set<LedgerFragment> partionedFragments = splitIntoSubFragments(lh, lf,
                 bkc.getConf().getRereplicationEntryBatchSize());
         LOG.info("Replicating fragment {} in {} sub fragments.",
                 lf, partionedFragments.size());
-        replicateNextBatch(lh, partionedFragments.iterator(),
-                ledgerFragmentMcb, targetBookieAddresses, onReadEntryFailureCallback);
+        if (inFlightBudget != null) {
+            MultiCallback batchesMcb = new MultiCallback(partionedFragments.size(), ledgerFragmentMcb, null,
+                    BKException.Code.OK, BKException.Code.LedgerRecoveryException);
+            for (LedgerFragment batch : partionedFragments) {
+                dispatch(() -> dispatchBatch(lh, batch, batchesMcb, targetBookieAddresses, onReadEntryFailureCallback),
+                        batchesMcb);
+            }
+        } else {
+            replicateNextBatch(lh, partionedFragments.iterator(),
+                    ledgerFragmentMcb, targetBookieAddresses, onReadEntryFailureCallback);
+        }
+    }
+
+    /**
+     * Queue a task on the dispatcher, or fail the callback of its batch if the dispatcher is shut down.
+     */
+    private void dispatch(Runnable task, AsyncCallback.VoidCallback batchCb) {
+        try {
+            batchDispatcher.execute(new BatchTask(task, batchCb));
+        } catch (RejectedExecutionException ree) {
+            batchCb.processResult(BKException.Code.InterruptedException, null, null);
+        }
+    }
+
+    /**
+     * Task of a batch queued on the dispatcher, so that the batch can be failed if it is never run.
+     */
+    private static class BatchTask implements Runnable {
+        private final Runnable task;
+        private final AsyncCallback.VoidCallback batchCb;
+
+        BatchTask(Runnable task, AsyncCallback.VoidCallback batchCb) {
+            this.task = task;
+            this.batchCb = batchCb;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        void fail(int rc) {
+            batchCb.processResult(rc, null, null);
+        }
+    }
+
+    /**
+     * Read a batch of entries with a single read and write them to the new bookies, once the
+     * batch fits in the budget of bytes in flight. Runs on the dispatcher thread.
+     */
+    private void dispatchBatch(final LedgerHandle lh,
+            final LedgerFragment batch,
+            final AsyncCallback.VoidCallback batchCb,
+            final Set<BookieId> newBookies,
+            final BiConsumer<Long, Long> onReadEntryFailureCallback) {
+        long firstEntryId = batch.getFirstStoredEntryId();
+        long lastEntryId = batch.getLastStoredEntryId();
+        try {
+            if (!batch.isClosed() || firstEntryId > lastEntryId || lastEntryId <= INVALID_ENTRY_ID) {
+                // nothing to pipeline, let the entry by entry path handle it
+                replicateFragmentInternal(lh, batch, batchCb, newBookies, onReadEntryFailureCallback);
+                return;
+            }
+
+            long estimatedBytes = (lastEntryId - firstEntryId + 1) * averageEntrySize.get();
+            inFlightBudget.acquire(estimatedBytes);
+            if (replicationThrottle != null) {
+                replicationThrottle.acquire((int) Math.min(Integer.MAX_VALUE, estimatedBytes));
+            }
+
+            long startReadEntryTime = MathUtils.nowInNano();
+            readBatch(lh, firstEntryId, lastEntryId).whenComplete((entries, cause) -> {
+                if (cause != null) {
+                    inFlightBudget.release(estimatedBytes);
+                    LOG.warn("Error reading entries {}-{} of ledger {} for replication, replicating them one by one",
+                            firstEntryId, lastEntryId, lh.getId(), cause);
+                    // the entry by entry path reports the entries which can not be read
+                    dispatch(() -> replicateBatchEntryByEntry(lh, batch, batchCb, newBookies,
+                            onReadEntryFailureCallback), batchCb);
+                    return;
+                }
+                readDataLatency.registerSuccessfulEvent(MathUtils.elapsedNanos(startReadEntryTime),
+                        TimeUnit.NANOSECONDS);
+                writeBatch(lh, entries, (int) (lastEntryId - firstEntryId + 1), estimatedBytes, batchCb, newBookies);
+            });
+        } catch (InterruptedException e) {
+            batchCb.processResult(BKException.Code.InterruptedException, null, null);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void replicateBatchEntryByEntry(final LedgerHandle lh,
+            final LedgerFragment batch,
+            final AsyncCallback.VoidCallback batchCb,
+            final Set<BookieId> newBookies,
+            final BiConsumer<Long, Long> onReadEntryFailureCallback) {
+        try {
+            replicateFragmentInternal(lh, batch, batchCb, newBookies, onReadEntryFailureCallback);
+        } catch (InterruptedException e) {
+            batchCb.processResult(BKException.Code.InterruptedException, null, null);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write a batch of entries to the new bookies, all the writes being in flight at the same time.
+     */
+    private void writeBatch(final LedgerHandle lh,
+            final LedgerEntries entries,
+            final int numEntries,
+            final long estimatedBytes,
+            final AsyncCallback.VoidCallback batchCb,
+            final Set<BookieId> newBookies) {
+        long batchBytes = 0;
+        for (org.apache.bookkeeper.client.api.LedgerEntry entry : entries) {
+            batchBytes += entry.getLength();
+        }
+        // account the actual size of the batch, now that it is known
+        inFlightBudget.add(batchBytes - estimatedBytes);
+        final long inFlightBytes = batchBytes;
+
+        final AtomicInteger numPendingWrites = new AtomicInteger(numEntries * newBookies.size());
+        final AtomicInteger firstError = new AtomicInteger(BKException.Code.OK);
+        final WriteCallback batchWriteCallback = (rc, ledgerId, entryId, addr, ctx) -> {
+            if (rc != BKException.Code.OK) {
+                LOG.error("BK error writing entry for ledgerId: {}, entryId: {}, bookie: {}",
+                        ledgerId, entryId, addr, BKException.create(rc));
+                firstError.compareAndSet(BKException.Code.OK, rc);
+            } else {
+                numEntriesWritten.inc();
+                numBytesWritten.registerSuccessfulValue((Long) ctx);
+                getBookieCounter(bytesWrittenToBookie, NUM_BYTES_WRITTEN_TO_BOOKIE, addr).add((Long) ctx);
+            }
+            if (numPendingWrites.decrementAndGet() == 0) {
+                inFlightBudget.release(inFlightBytes);
+                batchCb.processResult(firstError.get(), null, null);
+            }
+        };
+
+        try {
+            for (org.apache.bookkeeper.client.api.LedgerEntry entry : entries) {
+                long entryId = entry.getEntryId();
+                long dataLength = entry.getLength();
+                numEntriesRead.inc();
+                numBytesRead.registerSuccessfulValue(dataLength);
+
+                ByteBufList toSend = lh.getDigestManager()
+                        .computeDigestAndPackageForSending(entryId,
+                                lh.getLastAddConfirmed(), dataLength,
+                                entry.getEntryBuffer().retain());
+                updateAverageEntrySize(toSend.readableBytes());
+                for (BookieId newBookie : newBookies) {
+                    long startWriteEntryTime = MathUtils.nowInNano();
+                    bkc.getBookieClient().addEntry(newBookie, lh.getId(),
+                            lh.getLedgerKey(), entryId, ByteBufList.clone(toSend),
+                            batchWriteCallback, dataLength, BookieProtocol.FLAG_RECOVERY_ADD,
+                            false, WriteFlag.NONE);
+                    writeDataLatency.registerSuccessfulEvent(
+                            MathUtils.elapsedNanos(startWriteEntryTime), TimeUnit.NANOSECONDS);
+                }
+                toSend.release();
+            }
+        } finally {
+            entries.close();
+        }
+    }
+
+    /**
+     * Read a batch of entries, from the bookies which answer first.
+     */
+    @VisibleForTesting
+    CompletableFuture<LedgerEntries> readBatch(LedgerHandle lh, long firstEntryId, long lastEntryId) {
+        BatchReadOp op = new BatchReadOp(lh, firstEntryId, lastEntryId);
+        op.submit();
+        return op.future();
+    }
+
+    private Counter getBookieCounter(Map<BookieId, Counter> counters, String name, BookieId bookie) {
+        return counters.computeIfAbsent(bookie,
+                b -> statsLogger.scopeLabel("bookie", b.toString()).getCounter(name));
+    }
+
+    /**
+     * Read of a batch of entries for replication, which accounts the bytes read from each bookie.
+     */
+    private class BatchReadOp extends PendingReadOp {
+
+        BatchReadOp(LedgerHandle lh, long startEntryId, long endEntryId) {
+            super(lh, lh.clientCtx, startEntryId, endEntryId, false);
+        }
+
+        @Override
+        protected void onEntryReceived(BookieId from, long entryId, ByteBuf buffer) {
+            getBookieCounter(bytesReadFromBookie, NUM_BYTES_READ_FROM_BOOKIE, from).add(buffer.readableBytes());
+        }
     }
 
     /**
@@ -354,6 +613,8 @@ public class LedgerFragmentReplicator {
                     numEntriesWritten.inc();
                     if (ctx instanceof Long) {
                         numBytesWritten.registerSuccessfulValue((Long) ctx);
+                        getBookieCounter(bytesWrittenToBookie, NUM_BYTES_WRITTEN_TO_BOOKIE, addr)
+                                .add((Long) ctx);
                     }
                     if (LOG.isDebugEnabled()) {
                         LOG.debug("Success writing ledger id {}, entry id {} to a new bookie {}!",
@@ -500,6 +761,43 @@ public class LedgerFragmentReplicator {
             });
     }
 
+    /**
+     * Budget of bytes being replicated. A batch larger than the budget is let through when
+     * nothing else is in flight, so that it can not block the replication forever.
+     */
+    static class InFlightBudget {
+        private final long maxInFlightBytes;
+        private long inFlightBytes = 0;
+
+        InFlightBudget(long maxInFlightBytes) {
+            this.maxInFlightBytes = maxInFlightBytes;
+        }
+
+        synchronized void acquire(long bytes) throws InterruptedException {
+            while (inFlightBytes > 0 && inFlightBytes + bytes > maxInFlightBytes) {
+                wait();
+            }
+            inFlightBytes += bytes;
+        }
+
+        // add bytes without waiting, or remove them if negative
+        synchronized void add(long bytes) {
+            inFlightBytes += bytes;
+            if (bytes < 0) {
+                notifyAll();
+            }
+        }
+
+        synchronized void release(long bytes) {
+            inFlightBytes -= bytes;
+            notifyAll();
+        }
+
+        synchronized long getInFlightBytes() {
+            return inFlightBytes;
+        }
+    }
+
     static class Throttler {
         private final RateLimiter rateLimiter;
 
@@ -34,6 +34,7 @@ import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -46,12 +47,15 @@ import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
 import org.apache.bookkeeper.client.AsyncCallback.CloseCallback;
@@ -70,9 +74,13 @@ import org.apache.bookkeeper.client.api.BKException.Code;
 import org.apache.bookkeeper.client.api.LastConfirmedAndEntry;
 import org.apache.bookkeeper.client.api.LedgerEntries;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.RecordBatchWriter;
+import org.apache.bookkeeper.client.api.SequentialReader;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.client.api.WriteHandle;
 import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.client.impl.RecordBatchWriterImpl;
+import org.apache.bookkeeper.client.impl.SequentialReaderImpl;
 import org.apache.bookkeeper.common.concurrent.FutureEventListener;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.common.util.MathUtils;
@@ -97,19 +105,28 @@ public class LedgerHandle implements WriteHandle {
 
     private static final int STICKY_READ_BOOKIE_INDEX_UNSET = -1;
 
+    private static final int PENDING_ADD_RING_INITIAL_CAPACITY = 1024;
+
+    private static final AtomicLongFieldUpdater<LedgerHandle> LAST_ADD_PUSHED_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(LedgerHandle.class, "lastAddPushed");
+    private static final AtomicLongFieldUpdater<LedgerHandle> LENGTH_UPDATER =
+        AtomicLongFieldUpdater.newUpdater(LedgerHandle.class, "length");
+    private static final AtomicIntegerFieldUpdater<LedgerHandle> SUBMIT_SCHEDULED_UPDATER =
+        AtomicIntegerFieldUpdater.newUpdater(LedgerHandle.class, "submitScheduled");
+
     final ClientContext clientCtx;
 
     final byte[] ledgerKey;
-    private Versioned<LedgerMetadata> versionedMetadata;
+    private volatile Versioned<LedgerMetadata> versionedMetadata;
     final long ledgerId;
-    long lastAddPushed;
+    volatile long lastAddPushed;
 
     private enum HandleState {
         OPEN,
         CLOSED
     }
 
-    private HandleState handleState = HandleState.OPEN;
+    private volatile HandleState handleState = HandleState.OPEN;
     private final CompletableFuture<Void> closePromise = new CompletableFuture<>();
 
     /**
@@ -136,7 +153,7 @@ public class LedgerHandle implements WriteHandle {
      */
     private int stickyBookieIndex;
 
-    long length;
+    volatile long length;
     final DigestManager macManager;
     final DistributionSchedule distributionSchedule;
     final RateLimiter throttler;
@@ -165,7 +182,23 @@ public class LedgerHandle implements WriteHandle {
     final Object metadataLock = new Object();
     boolean changingEnsemble = false;
     final AtomicInteger numEnsembleChanges = new AtomicInteger(0);
-    Queue<PendingAddOp> pendingAddOps;
+    PendingAddOps pendingAddOps;
+    final PendingAddOpRing addOpRing;
+    // Add ops with an entry id, not yet handed to the ring by the ordered thread
+    private final Queue<PendingAddOp> submittedAddOps = new ConcurrentLinkedQueue<>();
+    // 1 if submitAddOpsTask is scheduled and will see the ops submitted until then
+    private volatile int submitScheduled = 0;
+    private final SafeRunnable submitAddOpsTask = new SafeRunnable() {
+        @Override
+        public void safeRun() {
+            submitAddOps();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("SubmitAddOps(lid=%d)", ledgerId);
+        }
+    };
     ExplicitLacFlushPolicy explicitLacFlushPolicy;
 
     final Counter ensembleChangeCounter;
@@ -181,7 +214,6 @@ public class LedgerHandle implements WriteHandle {
         this.clientCtx = clientCtx;
 
         this.versionedMetadata = versionedMetadata;
-        this.pendingAddOps = new ConcurrentLinkedQueue<PendingAddOp>();
         this.writeFlags = writeFlags;
 
         LedgerMetadata metadata = versionedMetadata.getValue();
@@ -194,6 +226,8 @@ public class LedgerHandle implements WriteHandle {
         }
 
         this.pendingAddsSequenceHead = lastAddConfirmed;
+        this.addOpRing = new PendingAddOpRing(PENDING_ADD_RING_INITIAL_CAPACITY, lastAddPushed + 1);
+        this.pendingAddOps = addOpRing;
 
         this.ledgerId = ledgerId;
 
@@ -239,6 +273,11 @@ public class LedgerHandle implements WriteHandle {
             public long getBookiePendingRequests(BookieId bookieSocketAddress) {
                 return clientCtx.getBookieClient().getNumPendingRequests(bookieSocketAddress, ledgerId);
             }
+
+            @Override
+            public long getBookieReadLatency(BookieId bookieSocketAddress, double quantile) {
+                return clientCtx.getBookieClient().getReadLatency(bookieSocketAddress, quantile);
+            }
         };
 
         ensembleChangeCounter = clientCtx.getClientStats().getEnsembleChangeCounter();
@@ -253,7 +292,7 @@ public class LedgerHandle implements WriteHandle {
                 }
                 @Override
                 public Integer getSample() {
-                    return pendingAddOps.size();
+                    return pendingAddOps.size() + addOpRing.numWaiting() + submittedAddOps.size();
                 }
             });
 
@@ -336,7 +375,7 @@ public class LedgerHandle implements WriteHandle {
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getLastAddPushed() {
+    public long getLastAddPushed() {
         return lastAddPushed;
     }
 
@@ -426,9 +465,12 @@ public class LedgerHandle implements WriteHandle {
      * @param delta
      * @return the length of the ledger after the addition
      */
-    synchronized long addToLength(long delta) {
-        this.length += delta;
-        return this.length;
+    long addToLength(long delta) {
+        return LENGTH_UPDATER.addAndGet(this, delta);
+    }
+
+    void setLength(long length) {
+        this.length = length;
     }
 
     /**
@@ -437,7 +479,7 @@ public class LedgerHandle implements WriteHandle {
      * @return the length of the ledger in bytes
      */
     @Override
-    public synchronized long getLength() {
+    public long getLength() {
         return this.length;
     }
 
@@ -523,7 +565,17 @@ public class LedgerHandle implements WriteHandle {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Failed to close ledger {} : ", ledgerId, re);
             }
-            errorOutPendingAdds(BookKeeper.getReturnRc(clientCtx.getBookieClient(), rc));
+            int returnRc = BookKeeper.getReturnRc(clientCtx.getBookieClient(), rc);
+            // The tasks queued before the rejection may still run on the ordered thread,
+            // the pending add ring is synchronized for that, see PendingAddOpRing
+            errorOutPendingAdds(returnRc);
+            List<PendingAddOp> waitingAdds;
+            synchronized (this) {
+                waitingAdds = addOpRing.drainWaiting();
+            }
+            for (PendingAddOp op : waitingAdds) {
+                op.failBeforeSending(returnRc);
+            }
             cb.closeComplete(BookKeeper.getReturnRc(clientCtx.getBookieClient(), BKException.Code.InterruptedException),
                              this, ctx);
         }
@@ -544,6 +596,7 @@ public class LedgerHandle implements WriteHandle {
             public void safeRun() {
                 final HandleState prevHandleState;
                 final List<PendingAddOp> pendingAdds;
+                final List<PendingAddOp> waitingAdds;
                 final long lastEntry;
                 final long finalLength;
 
@@ -562,16 +615,21 @@ public class LedgerHandle implements WriteHandle {
 
                     // drain pending adds first
                     pendingAdds = drainPendingAddsAndAdjustLength();
+                    waitingAdds = addOpRing.drainWaiting();
 
+                    // the handle is marked as closed before resetting lastAddPushed, see #assignEntryId
+                    handleState = HandleState.CLOSED;
                     // taking the length must occur after draining, as draining changes the length
                     lastEntry = lastAddPushed = LedgerHandle.this.lastAddConfirmed;
                     finalLength = LedgerHandle.this.length;
-                    handleState = HandleState.CLOSED;
                 }
 
                 // error out all pending adds during closing, the callbacks shouldn't be
                 // running under any bk locks.
                 errorOutPendingAdds(rc, pendingAdds);
+                for (PendingAddOp op : waitingAdds) {
+                    op.failBeforeSending(rc);
+                }
 
                 if (prevHandleState != HandleState.CLOSED) {
                     if (LOG.isDebugEnabled()) {
@@ -794,6 +852,35 @@ public class LedgerHandle implements WriteHandle {
         return readEntriesInternalAsync(firstEntry, lastEntry, false);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The range is read in stripes covering all the bookies of the ensemble, and the responses of
+     * the stripes in flight are verified in parallel on the worker pool.
+     */
+    @Override
+    public SequentialReader newSequentialReader(long firstEntry, long lastEntry, long maxBytesInFlight) {
+        int entriesPerStripe = getLedgerMetadata().getEnsembleSize() * StripedReadOp.ENTRIES_PER_BOOKIE;
+        return new SequentialReaderImpl(this, firstEntry, lastEntry, maxBytesInFlight, entriesPerStripe,
+                this::readStripeAsync);
+    }
+
+    private CompletableFuture<LedgerEntries> readStripeAsync(long firstEntry, long lastEntry, long stripe) {
+        if (lastEntry > lastAddConfirmed) {
+            LOG.error("ReadAsync exception on ledgerId:{} firstEntry:{} lastEntry:{} lastAddConfirmed:{}",
+                    ledgerId, firstEntry, lastEntry, lastAddConfirmed);
+            return FutureUtils.exception(new BKReadException());
+        }
+
+        StripedReadOp op = new StripedReadOp(this, clientCtx, firstEntry, lastEntry, stripe);
+        if (!clientCtx.isClientClosed()) {
+            op.submit();
+        } else {
+            op.future().completeExceptionally(BKException.create(ClientClosedException));
+        }
+        return op.future();
+    }
+
     void asyncReadEntriesInternal(long firstEntry, long lastEntry, ReadCallback cb,
                                   Object ctx, boolean isRecoveryRead) {
         if (!clientCtx.isClientClosed()) {
@@ -863,6 +950,9 @@ public class LedgerHandle implements WriteHandle {
     CompletableFuture<LedgerEntries> readEntriesInternalAsync(long firstEntry,
                                                               long lastEntry,
                                                               boolean isRecoveryRead) {
+        if (!isRecoveryRead && canUseBatchRead(firstEntry, lastEntry)) {
+            return batchReadEntriesInternalAsync(firstEntry, lastEntry);
+        }
         PendingReadOp op = new PendingReadOp(this, clientCtx,
                                              firstEntry, lastEntry, isRecoveryRead);
         if (!clientCtx.isClientClosed()) {
@@ -901,6 +991,37 @@ public class LedgerHandle implements WriteHandle {
         return op.future();
     }
 
+    /**
+     * A range can be read with batch read requests only if any single bookie of the
+     * ensemble stores all the entries of the range.
+     */
+    private boolean canUseBatchRead(long firstEntry, long lastEntry) {
+        if (!clientCtx.getConf().enableBatchReads || firstEntry >= lastEntry) {
+            return false;
+        }
+        LedgerMetadata metadata = getLedgerMetadata();
+        if (metadata.getEnsembleSize() != metadata.getWriteQuorumSize()) {
+            return false;
+        }
+        long nextEnsembleChange = LedgerMetadataUtils.getNextEnsembleChange(metadata, firstEntry);
+        return nextEnsembleChange == -1 || nextEnsembleChange > lastEntry;
+    }
+
+    private CompletableFuture<LedgerEntries> batchReadEntriesInternalAsync(long firstEntry, long lastEntry) {
+        BatchedReadOp op = new BatchedReadOp(this, clientCtx, firstEntry, lastEntry,
+                clientCtx.getConf().maxBatchReadSize);
+        if (!clientCtx.isClientClosed()) {
+            if (isHandleWritable()) {
+                clientCtx.getMainWorkerPool().executeOrdered(ledgerId, op);
+            } else {
+                op.run();
+            }
+        } else {
+            op.future().completeExceptionally(BKException.create(ClientClosedException));
+        }
+        return op.future();
+    }
+
     /**
      * Add entry synchronously to an open ledger.
      *
@@ -923,6 +1044,47 @@ public class LedgerHandle implements WriteHandle {
         return callback;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RecordBatchWriter newRecordBatchWriter(int maxRecordsPerBatch, int maxBatchSizeBytes,
+                                                  long maxDelay, TimeUnit unit) {
+        return new RecordBatchWriterImpl(this, clientCtx.getScheduler().chooseThread(ledgerId),
+                clientCtx.getByteBufAllocator(), markBatchedLedger(), maxRecordsPerBatch, maxBatchSizeBytes,
+                maxDelay, unit);
+    }
+
+    /**
+     * Add the {@link RecordBatchWriter#BATCHED_LEDGER_METADATA_KEY} key to the custom metadata of the ledger,
+     * so that readers unpack its entries.
+     */
+    private CompletableFuture<Void> markBatchedLedger() {
+        if (getLedgerMetadata().getCustomMetadata().containsKey(RecordBatchWriter.BATCHED_LEDGER_METADATA_KEY)) {
+            return FutureUtils.Void();
+        }
+        return new MetadataUpdateLoop(
+                clientCtx.getLedgerManager(), getId(),
+                this::getVersionedLedgerMetadata,
+                (metadata) -> metadata.getState() == LedgerMetadata.State.OPEN
+                        && !metadata.getCustomMetadata().containsKey(RecordBatchWriter.BATCHED_LEDGER_METADATA_KEY),
+                (metadata) -> {
+                    Map<String, byte[]> customMetadata = new HashMap<>(metadata.getCustomMetadata());
+                    customMetadata.put(RecordBatchWriter.BATCHED_LEDGER_METADATA_KEY,
+                            "true".getBytes(StandardCharsets.UTF_8));
+                    return LedgerMetadataBuilder.from(metadata).withCustomMetadata(customMetadata).build();
+                },
+                this::setLedgerMetadata)
+            .run().thenApply(metadata -> {
+                if (!metadata.getValue().getCustomMetadata()
+                        .containsKey(RecordBatchWriter.BATCHED_LEDGER_METADATA_KEY)) {
+                    // the ledger was closed or is being recovered
+                    throw new CompletionException(BKException.create(BKException.Code.LedgerClosedException));
+                }
+                return null;
+            });
+    }
+
     /**
      * Add entry synchronously to an open ledger. This can be used only with
      * {@link LedgerHandleAdv} returned through ledgers created with {@link
@@ -1139,17 +1301,7 @@ public class LedgerHandle implements WriteHandle {
     public CompletableFuture<Void> force() {
         CompletableFuture<Void> result = new CompletableFuture<>();
         ForceLedgerOp op = new ForceLedgerOp(this, clientCtx.getBookieClient(), getCurrentEnsemble(), result);
-        boolean wasClosed = false;
-        synchronized (this) {
-            // synchronized on this to ensure that
-            // the ledger isn't closed between checking and
-            // updating lastAddPushed
-            if (!isHandleWritable()) {
-                wasClosed = true;
-            }
-        }
-
-        if (wasClosed) {
+        if (!isHandleWritable()) {
             // make sure the callback is triggered in main worker pool
             try {
                 clientCtx.getMainWorkerPool().executeOrdered(ledgerId, new SafeRunnable() {
@@ -1202,13 +1354,16 @@ public class LedgerHandle implements WriteHandle {
      * entries to a quorum of bookies to ensure data safety.
      *
      * <p>Normal client should never call this method.
+     *
+     * @param ledgerLength the length of the ledger up to this entry, as read from the entry
      */
-    void asyncRecoveryAddEntry(final byte[] data, final int offset, final int length,
+    void asyncRecoveryAddEntry(final byte[] data, final int offset, final int length, final long ledgerLength,
                                final AddCallback cb, final Object ctx) {
         PendingAddOp op = PendingAddOp.create(this, clientCtx, getCurrentEnsemble(),
                                               Unpooled.wrappedBuffer(data, offset, length),
                                               writeFlags, cb, ctx)
                 .enableRecoveryAdd();
+        op.setLedgerLength(ledgerLength);
         doAsyncAddEntry(op);
     }
 
@@ -1301,23 +1456,8 @@ public class LedgerHandle implements WriteHandle {
             throttler.acquire();
         }
 
-        boolean wasClosed = false;
-        synchronized (this) {
-            // synchronized on this to ensure that
-            // the ledger isn't closed between checking and
-            // updating lastAddPushed
-            if (isHandleWritable()) {
-                long entryId = ++lastAddPushed;
-                long currentLedgerLength = addToLength(op.payload.readableBytes());
-                op.setEntryId(entryId);
-                op.setLedgerLength(currentLedgerLength);
-                pendingAddOps.add(op);
-            } else {
-                wasClosed = true;
-            }
-        }
-
-        if (wasClosed) {
+        long entryId = assignEntryId();
+        if (entryId == INVALID_ENTRY_ID) {
             // make sure the callback is triggered in main worker pool
             try {
                 clientCtx.getMainWorkerPool().executeOrdered(ledgerId, new SafeRunnable() {
@@ -1341,6 +1481,9 @@ public class LedgerHandle implements WriteHandle {
             return;
         }
 
+        // The ledger length is assigned once the op reaches the ordered thread, see #submitAddOp
+        op.setEntryId(entryId);
+
         DistributionSchedule.WriteSet ws = distributionSchedule.getWriteSet(op.getEntryId());
         try {
             if (!waitForWritable(ws, 0, clientCtx.getConf().waitForWriteSetMs)) {
@@ -1350,12 +1493,87 @@ public class LedgerHandle implements WriteHandle {
             ws.recycle();
         }
 
-        try {
-            clientCtx.getMainWorkerPool().executeOrdered(ledgerId, op);
-        } catch (RejectedExecutionException e) {
-            op.cb.addCompleteWithLatency(
-                    BookKeeper.getReturnRc(clientCtx.getBookieClient(), BKException.Code.InterruptedException),
-                    LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
+        // Only hop to the ordered thread if it's not already going to pick up the op
+        submittedAddOps.add(op);
+        if (SUBMIT_SCHEDULED_UPDATER.compareAndSet(this, 0, 1)) {
+            try {
+                clientCtx.getMainWorkerPool().executeOrdered(ledgerId, submitAddOpsTask);
+            } catch (RejectedExecutionException e) {
+                submitScheduled = 0;
+                int rc = BookKeeper.getReturnRc(clientCtx.getBookieClient(), BKException.Code.InterruptedException);
+                PendingAddOp rejected;
+                while ((rejected = submittedAddOps.poll()) != null) {
+                    rejected.failBeforeSending(rc);
+                }
+                // The entry ids of the rejected ops will never be written, so the following
+                // adds would wait for them in the ring forever
+                handleUnrecoverableErrorDuringAdd(rc);
+            }
+        }
+    }
+
+    /**
+     * Assign the next entry id to an add op.
+     *
+     * <p>The entry id is assigned without locking the handle. A close marks the handle as not
+     * writable before resetting lastAddPushed, so an id assigned while the handle is still
+     * writable after the increment is overwritten by the close. If the handle was closed in
+     * the meantime, the increment may have happened after the reset, so lastAddPushed is reset
+     * again once the close released the handle lock.
+     *
+     * @return the entry id, or {@link #INVALID_ENTRY_ID} if the handle is not writable
+     */
+    private long assignEntryId() {
+        if (!isHandleWritable()) {
+            return INVALID_ENTRY_ID;
+        }
+        long entryId = LAST_ADD_PUSHED_UPDATER.incrementAndGet(this);
+        if (isHandleWritable()) {
+            return entryId;
+        }
+        synchronized (this) {
+            lastAddPushed = lastAddConfirmed;
+        }
+        return INVALID_ENTRY_ID;
+    }
+
+    /**
+     * Hand the submitted add ops to the pending add ring, on the ordered thread of the ledger.
+     */
+    private void submitAddOps() {
+        // Reset before polling, so that an op submitted after the last poll schedules a new run
+        submitScheduled = 0;
+        PendingAddOp op;
+        while ((op = submittedAddOps.poll()) != null) {
+            submitAddOp(op);
+        }
+    }
+
+    /**
+     * Submit an add op to the pending add ring, and start the add ops which are ready.
+     *
+     * <p>Runs on the ordered thread of the ledger. The add ops can be submitted out of
+     * order, as the producers race after getting their entry ids, but they are started
+     * in entry id order so that the ledger length of each entry includes all the
+     * previous ones.
+     */
+    private void submitAddOp(PendingAddOp op) {
+        if (handleState == HandleState.CLOSED || !addOpRing.submit(op, pendingAddsSequenceHead + 1)) {
+            // The handle was closed after the entry id was assigned
+            LOG.warn("Attempt to add to closed ledger: {}", ledgerId);
+            op.failBeforeSending(BKException.Code.LedgerClosedException);
+            return;
+        }
+
+        PendingAddOp ready;
+        while ((ready = addOpRing.pollReady()) != null) {
+            if (ready.isRecoveryAdd) {
+                // The entry already carries the length it was written with
+                setLength(ready.currentLedgerLength);
+            } else {
+                ready.setLedgerLength(addToLength(ready.entryLength));
+            }
+            ready.run();
         }
     }
 
@@ -1366,8 +1584,8 @@ public class LedgerHandle implements WriteHandle {
         } else {
             lacUpdateMissesCounter.inc();
         }
-        lastAddPushed = Math.max(lastAddPushed, lac);
-        length = Math.max(length, len);
+        LAST_ADD_PUSHED_UPDATER.accumulateAndGet(this, lac, Math::max);
+        LENGTH_UPDATER.accumulateAndGet(this, len, Math::max);
     }
 
     /**
@@ -1825,7 +2043,10 @@ public class LedgerHandle implements WriteHandle {
                 return;
             }
 
-            pendingAddOps.remove();
+            if (!pendingAddOps.removeOldest(pendingAddOp)) {
+                // Drained by a failure path, which triggers its callback
+                return;
+            }
             explicitLacFlushPolicy.updatePiggyBackedLac(lastAddConfirmed);
             pendingAddsSequenceHead = pendingAddOp.entryId;
             if (!writeFlags.contains(WriteFlag.DEFERRED_SYNC)) {
@@ -27,6 +27,7 @@ import java.io.Serializable;
 import java.security.GeneralSecurityException;
 import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.PriorityBlockingQueue;
@@ -58,12 +59,56 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         }
     }
 
+    /**
+     * Pending add operations of an advanced handle, ordered by entry id. The operations
+     * are added by the callers of the handle, in any order.
+     */
+    static class PendingAddOpQueue implements PendingAddOps {
+        private final PriorityBlockingQueue<PendingAddOp> queue =
+                new PriorityBlockingQueue<>(10, new PendingOpsComparator());
+
+        void add(PendingAddOp op) {
+            queue.add(op);
+        }
+
+        boolean contains(PendingAddOp op) {
+            return queue.contains(op);
+        }
+
+        @Override
+        public PendingAddOp peek() {
+            return queue.peek();
+        }
+
+        @Override
+        public PendingAddOp poll() {
+            return queue.poll();
+        }
+
+        @Override
+        public boolean removeOldest(PendingAddOp op) {
+            return queue.remove(op);
+        }
+
+        @Override
+        public int size() {
+            return queue.size();
+        }
+
+        @Override
+        public Iterator<PendingAddOp> iterator() {
+            return queue.iterator();
+        }
+    }
+
+    private final PendingAddOpQueue pendingAddOpQueue = new PendingAddOpQueue();
+
     LedgerHandleAdv(ClientContext clientCtx,
                     long ledgerId, Versioned<LedgerMetadata> metadata,
                     BookKeeper.DigestType digestType, byte[] password, EnumSet<WriteFlag> writeFlags)
             throws GeneralSecurityException, NumberFormatException {
         super(clientCtx, ledgerId, metadata, digestType, password, writeFlags);
-        pendingAddOps = new PriorityBlockingQueue<PendingAddOp>(10, new PendingOpsComparator());
+        pendingAddOps = pendingAddOpQueue;
     }
 
 
@@ -207,7 +252,7 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         PendingAddOp op = PendingAddOp.create(this, clientCtx, getCurrentEnsemble(), data, writeFlags, cb, ctx);
         op.setEntryId(entryId);
 
-        if ((entryId <= this.lastAddConfirmed) || pendingAddOps.contains(op)) {
+        if ((entryId <= this.lastAddConfirmed) || pendingAddOpQueue.contains(op)) {
             LOG.error("Trying to re-add duplicate entryid:{}", entryId);
             op.submitCallback(BKException.Code.DuplicateEntryIdException);
             return;
@@ -234,7 +279,7 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
             if (isHandleWritable()) {
                 long currentLength = addToLength(op.payload.readableBytes());
                 op.setLedgerLength(currentLength);
-                pendingAddOps.add(op);
+                pendingAddOpQueue.add(op);
             } else {
                 wasClosed = true;
             }
@@ -35,6 +35,7 @@ import lombok.EqualsAndHashCode;
 import org.apache.bookkeeper.client.api.DigestType;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.client.api.LedgerMetadata.State;
+import org.apache.bookkeeper.meta.CompactEnsemble;
 import org.apache.bookkeeper.net.BookieId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,8 +65,8 @@ class LedgerMetadataImpl implements LedgerMetadata {
     private final long ctime;
     final boolean storeCtime; // non-private so builder can access for copy
 
-    private final NavigableMap<Long, ImmutableList<BookieId>> ensembles;
-    private final ImmutableList<BookieId> currentEnsemble;
+    private final NavigableMap<Long, List<BookieId>> ensembles;
+    private final List<BookieId> currentEnsemble;
 
     private final boolean hasPassword;
     private final DigestType digestType;
@@ -114,8 +115,7 @@ class LedgerMetadataImpl implements LedgerMetadata {
 
         this.ensembles = Collections.unmodifiableNavigableMap(
                 ensembles.entrySet().stream().collect(TreeMap::new,
-                                                      (m, e) -> m.put(e.getKey(),
-                                                                      ImmutableList.copyOf(e.getValue())),
+                                                      (m, e) -> m.put(e.getKey(), immutableEnsemble(e.getValue())),
                                                       TreeMap::putAll));
 
         if (state != State.CLOSED) {
@@ -141,6 +141,14 @@ class LedgerMetadataImpl implements LedgerMetadata {
         this.customMetadata = ImmutableMap.copyOf(customMetadata);
     }
 
+    private static List<BookieId> immutableEnsemble(List<BookieId> ensemble) {
+        // ensembles decoded from the compact format are immutable, and copying them would decode them
+        if (ensemble instanceof CompactEnsemble) {
+            return ensemble;
+        }
+        return ImmutableList.copyOf(ensemble);
+    }
+
     @Override
     public long getLedgerId() {
         return ledgerId;
@@ -187,11 +187,9 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
 
             /*
              * We will add this entry again to make sure it is written to enough
-             * replicas. We subtract the length of the data itself, since it will
-             * be added again when processing the call to add it.
+             * replicas, with the same ledger length it was written with.
              */
             synchronized (lh) {
-                lh.length = entry.getLength() - (long) data.length;
                 // check whether entry id is expected, so we won't overwritten any entries by mistake
                 if (entry.getEntryId() != lh.lastAddPushed + 1) {
                     LOG.error("Unexpected to recovery add entry {} as entry {} for ledger {}.",
@@ -200,7 +198,7 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
                 }
             }
             if (BKException.Code.OK == rc) {
-                lh.asyncRecoveryAddEntry(data, 0, data.length, this, null);
+                lh.asyncRecoveryAddEntry(data, 0, data.length, entry.getLength(), this, null);
                 if (entry.getEntryId() == endEntryToRead) {
                     // trigger next batch read
                     doRecoveryRead();
@@ -434,6 +434,16 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         maybeRecycle();
     }
 
+    /**
+     * Fail an add operation which was never sent to the bookies.
+     */
+    void failBeforeSending(int rc) {
+        cb.addCompleteWithLatency(rc, lh, LedgerHandle.INVALID_ENTRY_ID, 0, ctx);
+        callbackTriggered = true;
+        hasRun = true;
+        maybeRecycle();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
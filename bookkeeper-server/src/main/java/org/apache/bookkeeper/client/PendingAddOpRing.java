@@ -0,0 +1,224 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pending add operations of a {@link LedgerHandle}, indexed by entry id.
+ *
+ * <p>Entry ids are assigned to the add operations without holding any lock, so the
+ * operations can be submitted to the ordered thread of the ledger in a different order
+ * than their entry ids. The ring keeps the submitted operations which are waiting for a
+ * previous entry, and makes them ready in entry id order, see {@link #pollReady()}.
+ *
+ * <p>The {@link PendingAddOps} view only contains the operations which were made ready,
+ * i.e. the ones in flight, from the oldest one.
+ *
+ * <p>The ring is modified by the ordered thread of the ledger, and by the thread failing
+ * the pending adds when the ordered executor rejected a task, while the tasks queued
+ * before may still run. The modifications are synchronized on the ring, the lock is
+ * uncontended otherwise. Iterating does not lock, and may return a stale view.
+ */
+class PendingAddOpRing implements PendingAddOps {
+
+    private volatile AtomicReferenceArray<PendingAddOp> slots;
+
+    // Operations in [head, next) are in flight, the ones in [next, tail) are waiting
+    private volatile long head;
+    private volatile long next;
+    private long tail;
+    // Number of waiting operations, read by other threads
+    private final AtomicInteger numWaiting = new AtomicInteger();
+
+    PendingAddOpRing(int initialCapacity, long firstEntryId) {
+        this.slots = new AtomicReferenceArray<>(capacityFor(initialCapacity));
+        this.head = firstEntryId;
+        this.next = firstEntryId;
+        this.tail = firstEntryId;
+    }
+
+    private static int capacityFor(long size) {
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private int slot(long entryId) {
+        return (int) (entryId & (slots.length() - 1));
+    }
+
+    /**
+     * Add a submitted operation to the ring.
+     *
+     * @param expectedEntryId the entry id expected to be submitted next, if the ring is
+     *                        empty and it is ahead of the ring, e.g. after a recovery
+     * @return false if the entry id of the operation was already submitted
+     */
+    synchronized boolean submit(PendingAddOp op, long expectedEntryId) {
+        long entryId = op.getEntryId();
+        if (head == tail && expectedEntryId > next) {
+            head = next = tail = expectedEntryId;
+        }
+        if (entryId < next) {
+            return false;
+        }
+
+        ensureCapacity(Math.max(tail, entryId + 1) - head);
+        int slot = slot(entryId);
+        if (slots.get(slot) != null) {
+            return false;
+        }
+        slots.set(slot, op);
+        tail = Math.max(tail, entryId + 1);
+        numWaiting.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return the next waiting operation, if all the previous ones were made ready,
+     *         otherwise null. The returned operation is then in flight.
+     */
+    synchronized PendingAddOp pollReady() {
+        if (next == tail) {
+            return null;
+        }
+        PendingAddOp op = slots.get(slot(next));
+        if (op != null) {
+            next++;
+            numWaiting.decrementAndGet();
+        }
+        return op;
+    }
+
+    /**
+     * Remove all the waiting operations.
+     */
+    synchronized List<PendingAddOp> drainWaiting() {
+        List<PendingAddOp> ops = new ArrayList<>();
+        for (long entryId = next; entryId < tail; entryId++) {
+            int slot = slot(entryId);
+            PendingAddOp op = slots.get(slot);
+            if (op != null) {
+                ops.add(op);
+                slots.set(slot, null);
+            }
+        }
+        tail = next;
+        numWaiting.set(0);
+        return ops;
+    }
+
+    private void ensureCapacity(long size) {
+        AtomicReferenceArray<PendingAddOp> current = slots;
+        if (size <= current.length()) {
+            return;
+        }
+        AtomicReferenceArray<PendingAddOp> grown = new AtomicReferenceArray<>(capacityFor(size));
+        int mask = grown.length() - 1;
+        for (long entryId = head; entryId < tail; entryId++) {
+            grown.set((int) (entryId & mask), current.get((int) (entryId & (current.length() - 1))));
+        }
+        slots = grown;
+    }
+
+    @Override
+    public synchronized PendingAddOp poll() {
+        if (head == next) {
+            return null;
+        }
+        int slot = slot(head);
+        PendingAddOp op = slots.get(slot);
+        slots.set(slot, null);
+        head++;
+        return op;
+    }
+
+    @Override
+    public synchronized boolean removeOldest(PendingAddOp op) {
+        if (head == next || slots.get(slot(head)) != op) {
+            return false;
+        }
+        slots.set(slot(head), null);
+        head++;
+        return true;
+    }
+
+    @Override
+    public synchronized PendingAddOp peek() {
+        return head == next ? null : slots.get(slot(head));
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, next - head);
+    }
+
+    boolean isEmpty() {
+        return head == next;
+    }
+
+    /**
+     * @return the number of submitted operations which are waiting for a previous entry
+     */
+    int numWaiting() {
+        return numWaiting.get();
+    }
+
+    @Override
+    public Iterator<PendingAddOp> iterator() {
+        return new Iterator<PendingAddOp>() {
+            final AtomicReferenceArray<PendingAddOp> snapshot = slots;
+            final long end = next;
+            long entryId = head;
+            PendingAddOp nextOp = advance();
+
+            private PendingAddOp advance() {
+                while (entryId < end) {
+                    PendingAddOp op = snapshot.get((int) (entryId++ & (snapshot.length() - 1)));
+                    if (op != null) {
+                        return op;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nextOp != null;
+            }
+
+            @Override
+            public PendingAddOp next() {
+                if (nextOp == null) {
+                    throw new NoSuchElementException();
+                }
+                PendingAddOp op = nextOp;
+                nextOp = advance();
+                return op;
+            }
+        };
+    }
+}
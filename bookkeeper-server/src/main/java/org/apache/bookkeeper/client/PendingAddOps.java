@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+/**
+ * The add operations in flight on a {@link LedgerHandle}, from the oldest one.
+ *
+ * <p>Iterating over the operations may return a stale view, e.g. to check their timeouts
+ * or to resend them to a new ensemble.
+ */
+interface PendingAddOps extends Iterable<PendingAddOp> {
+
+    /**
+     * @return the oldest operation, or null if there is none
+     */
+    PendingAddOp peek();
+
+    /**
+     * Remove the oldest operation.
+     *
+     * @return the removed operation, or null if there is none
+     */
+    PendingAddOp poll();
+
+    /**
+     * Remove the given operation if it is still the oldest one.
+     *
+     * @return false if the operation was removed in the meantime, e.g. to fail it
+     */
+    boolean removeOldest(PendingAddOp op);
+
+    /**
+     * @return the number of operations in flight
+     */
+    int size();
+}
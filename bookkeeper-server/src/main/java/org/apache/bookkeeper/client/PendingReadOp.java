@@ -58,6 +58,9 @@ import org.slf4j.LoggerFactory;
 class PendingReadOp implements ReadEntryCallback, SafeRunnable {
     private static final Logger LOG = LoggerFactory.getLogger(PendingReadOp.class);
 
+    // A read is speculatively sent to another replica once slower than this quantile of its bookie latency
+    private static final double SPECULATIVE_READ_LATENCY_QUANTILE = 0.95;
+
     private ScheduledFuture<?> speculativeTask = null;
     protected final List<LedgerEntryRequest> seq;
     private final CompletableFuture<LedgerEntries> future;
@@ -102,9 +105,9 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
                     .reorderReadSequence(
                             ensemble,
                             lh.getBookiesHealthInfo(),
-                            lh.getWriteSetForReadOperation(eId));
+                            getWriteSetForReadOperation(eId));
             } else {
-                writeSet = lh.getWriteSetForReadOperation(eId);
+                writeSet = getWriteSetForReadOperation(eId);
             }
         }
 
@@ -263,7 +266,7 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
          */
         @Override
         public ListenableFuture<Boolean> issueSpeculativeRequest() {
-            return clientCtx.getMainWorkerPool().submitOrdered(lh.getId(), new Callable<Boolean>() {
+            return clientCtx.getMainWorkerPool().submitOrdered(getOrderingKey(), new Callable<Boolean>() {
                 @Override
                 public Boolean call() throws Exception {
                     if (!isComplete() && null != maybeSendSpeculativeRead(heardFromHostsBitSet)) {
@@ -333,6 +336,7 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
 
         final BitSet sentReplicas;
         final BitSet erroredReplicas;
+        BookieId firstReadTo = null;
 
         SequenceReadRequest(List<BookieId> ensemble, long lId, long eId) {
             super(ensemble, lId, eId);
@@ -390,6 +394,14 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             sendNextRead();
         }
 
+        @Override
+        public synchronized long getExpectedLatency() {
+            if (firstReadTo == null) {
+                return -1L;
+            }
+            return lh.getBookiesHealthInfo().getBookieReadLatency(firstReadTo, SPECULATIVE_READ_LATENCY_QUANTILE);
+        }
+
         synchronized BookieId sendNextRead() {
             if (nextReplicaIndexToReadFrom >= getLedgerMetadata().getWriteQuorumSize()) {
                 // we are done, the read has failed from all replicas, just fail the
@@ -409,6 +421,9 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
                 sendReadTo(bookieIndex, to, this);
                 sentToHosts.add(to);
                 sentReplicas.set(replica);
+                if (firstReadTo == null) {
+                    firstReadTo = to;
+                }
                 return to;
             } catch (InterruptedException ie) {
                 LOG.error("Interrupted reading entry " + this, ie);
@@ -487,6 +502,26 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         return lh.getLedgerMetadata();
     }
 
+    /**
+     * Get the key ordering the execution of the operation and of the handling of its responses.
+     */
+    protected long getOrderingKey() {
+        return lh.ledgerId;
+    }
+
+    /**
+     * Notified of each entry received from a bookie, before its digest is verified.
+     */
+    protected void onEntryReceived(BookieId from, long entryId, ByteBuf buffer) {
+    }
+
+    /**
+     * Get the bookies to read an entry from, in order of preference.
+     */
+    protected DistributionSchedule.WriteSet getWriteSetForReadOperation(long entryId) {
+        return lh.getWriteSetForReadOperation(entryId);
+    }
+
     protected void cancelSpeculativeTask(boolean mayInterruptIfRunning) {
         if (speculativeTask != null) {
             speculativeTask.cancel(mayInterruptIfRunning);
@@ -508,7 +543,7 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
     }
 
     public void submit() {
-        clientCtx.getMainWorkerPool().executeOrdered(lh.ledgerId, this);
+        clientCtx.getMainWorkerPool().executeOrdered(getOrderingKey(), this);
     }
 
     void initiate() {
@@ -598,6 +633,7 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
 
         heardFromHosts.add(rctx.to);
         heardFromHostsBitSet.set(rctx.bookieIndex, true);
+        onEntryReceived(rctx.to, entryId, buffer);
 
         buffer.retain();
         // if entry has completed don't handle twice
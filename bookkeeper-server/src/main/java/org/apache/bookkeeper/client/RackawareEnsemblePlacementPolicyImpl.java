@@ -26,6 +26,7 @@ import static org.apache.bookkeeper.client.BookKeeperClientStats.NUM_WRITABLE_BO
 import static org.apache.bookkeeper.client.BookKeeperClientStats.READ_REQUESTS_REORDERED;
 import static org.apache.bookkeeper.client.RegionAwareEnsemblePlacementPolicy.UNKNOWN_REGION;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -104,6 +105,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     static final int UNAVAIL_MASK     = 0x40 << 24;
     static final int MASK_BITS        = 0xFFF << 20;
 
+    // The reads are reordered on the tail latency of the bookies, which is what slows down the reader
+    static final double READ_REORDER_LATENCY_QUANTILE = 0.95;
+
     protected HashedWheelTimer timer;
     // Use a loading cache so slow bookies are expired. Use entryId as values.
     protected Cache<BookieId, Long> slowBookies;
@@ -112,6 +116,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     protected boolean enforceDurability = false;
     protected int stabilizePeriodSeconds = 0;
     protected int reorderThresholdPendingRequests = 0;
+    protected double reorderThresholdLatencyRatio = 0;
     // looks like these only assigned in the same thread as constructor, immediately after constructor;
     // no need to make volatile
     protected StatsLogger statsLogger = null;
@@ -291,6 +296,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                     return -1L;
                 }
             });
+        this.reorderThresholdLatencyRatio = conf.getReorderThresholdLatencyRatio();
         return initialize(
                 dnsResolver,
                 timer,
@@ -802,6 +808,50 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             ensemble, writeSet, writeSetWithRegion, bookiesHealthInfo, false, "", writeSet.size());
     }
 
+    /**
+     * Order the write set by the recent read latency of the bookies, so that reads go to the
+     * fastest replicas first. A bookie is only moved ahead of another one if the read latency
+     * of the other one is higher by at least {@code thresholdRatio}, and the sort is stable,
+     * so that bookies with similar latencies keep the original order.
+     *
+     * <p>Bookies whose latency is unknown, since there were no recent reads to them, are tried
+     * first so that their latency gets known again, e.g. once a slow bookie recovered.
+     *
+     * @return whether the write set was reordered
+     */
+    @VisibleForTesting
+    static boolean reorderByReadLatency(List<BookieId> ensemble,
+                                        DistributionSchedule.WriteSet writeSet,
+                                        BookiesHealthInfo bookiesHealthInfo,
+                                        double thresholdRatio) {
+        double ratio = Math.max(1.0, thresholdRatio);
+        long[] latencies = new long[writeSet.size()];
+        for (int i = 0; i < writeSet.size(); i++) {
+            latencies[i] = Math.max(0L, bookiesHealthInfo.getBookieReadLatency(
+                    ensemble.get(writeSet.get(i)), READ_REORDER_LATENCY_QUANTILE));
+        }
+
+        boolean reordered = false;
+        for (int i = 1; i < writeSet.size(); i++) {
+            long latency = latencies[i];
+            int j = i;
+            while (j > 0 && latencies[j - 1] > latency * ratio) {
+                latencies[j] = latencies[j - 1];
+                j--;
+            }
+            if (j < i) {
+                latencies[j] = latency;
+                writeSet.moveAndShift(i, j);
+                reordered = true;
+            }
+        }
+
+        if (reordered && LOG.isDebugEnabled()) {
+            LOG.debug("read set reordered by latency to {} ({} ns)", ensemble.get(writeSet.get(0)), latencies[0]);
+        }
+        return reordered;
+    }
+
     /**
      * This function orders the read sequence with a given region. For region-unaware policies (e.g.
      * RackAware), we pass in false for regionAware and an empty myRegion. When this happens, any
@@ -861,6 +911,10 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         }
 
         boolean reordered = false;
+        if (reorderThresholdLatencyRatio > 0) {
+            reordered = reorderByReadLatency(ensemble, writeSet, bookiesHealthInfo, reorderThresholdLatencyRatio);
+        }
+
         if (reorderThresholdPendingRequests > 0) {
             // if there are no slow or unavailable bookies, capture each bookie's number of
             // pending request to reorder requests based on a threshold of pending requests
@@ -39,4 +39,15 @@ public interface SpeculativeRequestExecutor {
      * @return whether more speculative requests should be issued
      */
     ListenableFuture<Boolean> issueSpeculativeRequest();
+
+    /**
+     * Returns the latency the request is expected to complete within, e.g. the recent tail
+     * latency of the bookie it was first sent to.
+     *
+     * @return the expected latency in nanoseconds, or -1 if it is unknown
+     * @since 4.16
+     */
+    default long getExpectedLatency() {
+        return -1L;
+    }
 }
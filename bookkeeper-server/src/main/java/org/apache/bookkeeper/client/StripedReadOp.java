@@ -0,0 +1,73 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Read of a stripe of consecutive entries of a ledger, one of several in flight for a sequential reader.
+ *
+ * <p>The responses of the bookies for a ledger are all delivered on the thread of the ledger, where
+ * verifying their digest limits the throughput of a single reader. The responses of a stripe are
+ * handled on the thread of the stripe instead, so that the stripes in flight are verified in parallel
+ * on the worker pool, while the state of each stripe is still accessed by a single thread.
+ *
+ * <p>The entries are read from the bookies in the order of the distribution schedule of the ledger,
+ * even when sticky reads are enabled, so that the reads of a stripe are spread across the ensemble.
+ */
+class StripedReadOp extends PendingReadOp {
+
+    // Number of entries of a stripe for each bookie of the ensemble
+    static final int ENTRIES_PER_BOOKIE = 8;
+
+    private final long orderingKey;
+
+    StripedReadOp(LedgerHandle lh, ClientContext clientCtx, long startEntryId, long endEntryId, long stripe) {
+        super(lh, clientCtx, startEntryId, endEntryId, false);
+        this.orderingKey = lh.getId() + stripe;
+    }
+
+    @Override
+    protected long getOrderingKey() {
+        return orderingKey;
+    }
+
+    @Override
+    protected DistributionSchedule.WriteSet getWriteSetForReadOperation(long entryId) {
+        return lh.getDistributionSchedule().getWriteSet(entryId);
+    }
+
+    @Override
+    public void readEntryComplete(int rc, long ledgerId, long entryId, ByteBuf buffer, Object ctx) {
+        if (buffer != null) {
+            buffer.retain();
+        }
+        clientCtx.getMainWorkerPool().executeOrdered(orderingKey, () -> {
+            try {
+                super.readEntryComplete(rc, ledgerId, entryId, buffer, ctx);
+            } finally {
+                if (buffer != null) {
+                    buffer.release();
+                }
+            }
+        });
+    }
+}
@@ -21,9 +21,11 @@ package org.apache.bookkeeper.client;
 import com.google.common.util.concurrent.RateLimiter;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,6 +39,7 @@ import java.util.stream.Collectors;
 
 import org.apache.bookkeeper.bookie.BookieShell.UpdateLedgerNotifier;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.versioning.Versioned;
@@ -49,6 +52,10 @@ import org.slf4j.LoggerFactory;
 public class UpdateLedgerOp {
 
     private static final Logger LOG = LoggerFactory.getLogger(UpdateLedgerOp.class);
+
+    // Max number of ledgers whose metadata is read and written together
+    static final int MAX_LEDGERS_PER_BATCH = 128;
+
     private final LedgerManager lm;
     private final BookKeeperAdmin admin;
 
@@ -95,28 +102,24 @@ public class UpdateLedgerOp {
             // semaphore to control reads according to update throttling
             outstandingReads.acquire();
 
-            final long ledgerId = ledgerItr.next();
+            final List<Long> batch = new ArrayList<>();
+            batch.add(ledgerItr.next());
             issuedLedgerCnt.incrementAndGet();
+            // batch the ledgers which can be read right away, to read and write their metadata together
+            while (batch.size() < MAX_LEDGERS_PER_BATCH && ledgerItr.hasNext()
+                   && (limit == Integer.MIN_VALUE || issuedLedgerCnt.get() < limit)
+                   && outstandingReads.tryAcquire()) {
+                batch.add(ledgerItr.next());
+                issuedLedgerCnt.incrementAndGet();
+            }
 
-            CompletableFuture<Versioned<LedgerMetadata>> writePromise = lm.readLedgerMetadata(ledgerId)
-                .thenCompose((readMetadata) -> {
-                    AtomicReference<Versioned<LedgerMetadata>> ref = new AtomicReference<>(readMetadata);
-                    return new MetadataUpdateLoop(
-                            lm, ledgerId,
-                            ref::get,
-                            (metadata) -> {
-                                return metadata.getAllEnsembles().values().stream()
-                                    .flatMap(Collection::stream)
-                                    .anyMatch(b -> b.equals(oldBookieId));
-                            },
-                            (metadata) -> {
-                                return replaceBookieInEnsembles(metadata, oldBookieId, newBookieId);
-                            },
-                            ref::compareAndSet, throttler).run();
-                });
-
-            outstanding.add(writePromise);
-            writePromise.whenComplete((metadata, ex) -> {
+            Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> writePromises =
+                updateBookieIdInLedgers(batch, oldBookieId, newBookieId, throttler);
+            for (Map.Entry<Long, CompletableFuture<Versioned<LedgerMetadata>>> e : writePromises.entrySet()) {
+                final long ledgerId = e.getKey();
+                final CompletableFuture<Versioned<LedgerMetadata>> writePromise = e.getValue();
+                outstanding.add(writePromise);
+                writePromise.whenComplete((metadata, ex) -> {
                         if (ex != null
                             && !(ex instanceof BKException.BKNoSuchLedgerExistsOnMetadataServerException)) {
                             String error = String.format("Failed to update ledger metadata %s, replacing %s with %s",
@@ -133,6 +136,7 @@ public class UpdateLedgerOp {
                         outstandingReads.release();
                         outstanding.remove(writePromise);
                     });
+            }
         }
 
         CompletableFuture.allOf(outstanding.stream().toArray(CompletableFuture[]::new))
@@ -160,6 +164,86 @@ public class UpdateLedgerOp {
         }
     }
 
+    /**
+     * Replace the bookie in the metadata of a batch of ledgers, reading and writing the metadata of
+     * the ledgers together. A ledger whose metadata changed since it was read is updated on its own.
+     */
+    private Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> updateBookieIdInLedgers(
+            List<Long> ledgerIds, BookieId oldBookieId, BookieId newBookieId, RateLimiter throttler) {
+        final Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results = new LinkedHashMap<>();
+        ledgerIds.forEach(ledgerId -> results.put(ledgerId, new CompletableFuture<>()));
+
+        final Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> reads = lm.readLedgerMetadataBatch(ledgerIds);
+        CompletableFuture.allOf(reads.values().stream()
+                                .map(read -> read.handle((metadata, ex) -> null))
+                                .toArray(CompletableFuture[]::new))
+            .thenRun(() -> {
+                    Map<Long, Versioned<LedgerMetadata>> updates = new LinkedHashMap<>();
+                    for (Map.Entry<Long, CompletableFuture<Versioned<LedgerMetadata>>> read : reads.entrySet()) {
+                        CompletableFuture<Versioned<LedgerMetadata>> result = results.get(read.getKey());
+                        if (read.getValue().isCompletedExceptionally()) {
+                            FutureUtils.proxyTo(read.getValue(), result);
+                            continue;
+                        }
+                        Versioned<LedgerMetadata> readMetadata = read.getValue().join();
+                        if (!containsBookie(readMetadata.getValue(), oldBookieId)) {
+                            result.complete(readMetadata);
+                            continue;
+                        }
+                        updates.put(read.getKey(), new Versioned<>(
+                                replaceBookieInEnsembles(readMetadata.getValue(), oldBookieId, newBookieId),
+                                readMetadata.getVersion()));
+                    }
+                    if (updates.isEmpty()) {
+                        return;
+                    }
+
+                    // throttler to control updates per second
+                    throttler.acquire(updates.size());
+                    lm.writeLedgerMetadataBatch(updates).forEach((ledgerId, write) -> {
+                        CompletableFuture<Versioned<LedgerMetadata>> result = results.get(ledgerId);
+                        write.whenComplete((writtenMetadata, ex) -> {
+                                if (ex instanceof BKException.BKMetadataVersionException) {
+                                    FutureUtils.proxyTo(
+                                        updateBookieIdInLedger(ledgerId, oldBookieId, newBookieId, throttler),
+                                        result);
+                                } else if (ex != null) {
+                                    result.completeExceptionally(ex);
+                                } else {
+                                    result.complete(writtenMetadata);
+                                }
+                            });
+                    });
+                })
+            .exceptionally(ex -> {
+                    results.values().forEach(result -> result.completeExceptionally(ex));
+                    return null;
+                });
+        return results;
+    }
+
+    private CompletableFuture<Versioned<LedgerMetadata>> updateBookieIdInLedger(
+            long ledgerId, BookieId oldBookieId, BookieId newBookieId, RateLimiter throttler) {
+        return lm.readLedgerMetadata(ledgerId)
+            .thenCompose((readMetadata) -> {
+                AtomicReference<Versioned<LedgerMetadata>> ref = new AtomicReference<>(readMetadata);
+                return new MetadataUpdateLoop(
+                        lm, ledgerId,
+                        ref::get,
+                        (metadata) -> containsBookie(metadata, oldBookieId),
+                        (metadata) -> {
+                            return replaceBookieInEnsembles(metadata, oldBookieId, newBookieId);
+                        },
+                        ref::compareAndSet, throttler).run();
+            });
+    }
+
+    private static boolean containsBookie(LedgerMetadata metadata, BookieId bookieId) {
+        return metadata.getAllEnsembles().values().stream()
+            .flatMap(Collection::stream)
+            .anyMatch(b -> b.equals(bookieId));
+    }
+
     private static LedgerMetadata replaceBookieInEnsembles(LedgerMetadata metadata,
                                                            BookieId oldBookieId,
                                                            BookieId newBookieId) {
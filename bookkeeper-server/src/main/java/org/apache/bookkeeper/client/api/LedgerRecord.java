@@ -0,0 +1,68 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * A logical record read from a ledger written with a {@link RecordBatchWriter}.
+ *
+ * <p>The id, the length and the content are the ones of the record, while the entry id
+ * is the one of the entry which contains the record. An entry which was not written as
+ * a batch is returned as a record of its own.
+ *
+ * @see ReadHandle#readRecordsAsync(long, long)
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface LedgerRecord extends LedgerEntry {
+
+    /**
+     * The index of the record within its entry.
+     *
+     * @return the index of the record, starting from 0
+     */
+    int getRecordIndex();
+
+    /**
+     * The number of records in the entry which contains this record.
+     *
+     * @return the number of records of the entry
+     */
+    int getRecordCount();
+
+    /**
+     * The position of the record in the ledger.
+     *
+     * @return the position of the record
+     */
+    default RecordPosition getPosition() {
+        return new RecordPosition(getEntryId(), getRecordIndex());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    LedgerRecord duplicate();
+}
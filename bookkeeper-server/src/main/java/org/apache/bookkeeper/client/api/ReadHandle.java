@@ -21,6 +21,8 @@
 package org.apache.bookkeeper.client.api;
 
 import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.impl.LedgerRecordsImpl;
+import org.apache.bookkeeper.client.impl.SequentialReaderImpl;
 import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
 import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
@@ -101,6 +103,65 @@ public interface ReadHandle extends Handle {
                                                               BKException.HANDLER);
     }
 
+    /**
+     * Read a sequence of entries asynchronously, unpacking the batches written with a {@link RecordBatchWriter}.
+     *
+     * <p>The returned entries are {@link LedgerRecord} instances, one for each record of the entries.
+     * Entries are only unpacked if the ledger is marked with {@link RecordBatchWriter#BATCHED_LEDGER_METADATA_KEY}
+     * in the metadata known by this handle, an entry which was not written as a batch is returned as a
+     * single record. {@link LedgerEntries#getEntry(long)} returns the first record of the given entry.
+     *
+     * @param firstEntry
+     *          id of first entry of sequence
+     * @param lastEntry
+     *          id of last entry of sequence, inclusive
+     * @return an handle to the result of the operation
+     * @since 4.16
+     */
+    default CompletableFuture<LedgerEntries> readRecordsAsync(long firstEntry, long lastEntry) {
+        return readAsync(firstEntry, lastEntry).thenApply(entries -> LedgerRecordsImpl.create(entries,
+                getLedgerMetadata().getCustomMetadata().containsKey(RecordBatchWriter.BATCHED_LEDGER_METADATA_KEY)));
+    }
+
+    /**
+     * Read a sequence of entries synchronously, unpacking the batches written with a {@link RecordBatchWriter}.
+     *
+     * @param firstEntry
+     *          id of first entry of sequence
+     * @param lastEntry
+     *          id of last entry of sequence, inclusive
+     * @return the records of the entries
+     *
+     * @see #readRecordsAsync(long, long)
+     * @since 4.16
+     */
+    default LedgerEntries readRecords(long firstEntry, long lastEntry) throws BKException, InterruptedException {
+        return FutureUtils.<LedgerEntries, BKException>result(readRecordsAsync(firstEntry, lastEntry),
+                                                              BKException.HANDLER);
+    }
+
+    /**
+     * Create a reader returning a range of entries in order, reading ahead of the application.
+     *
+     * <p>The reader keeps reads in flight for the entries following the last entry returned, as
+     * long as the entries read ahead don't exceed <i>maxBytesInFlight</i>, estimated from the size
+     * of the entries already read. At least one read is always in flight.
+     *
+     * @param firstEntry
+     *          id of first entry of sequence
+     * @param lastEntry
+     *          id of last entry of sequence, inclusive, or firstEntry - 1 for an empty range
+     * @param maxBytesInFlight
+     *          max number of bytes of the entries read ahead
+     * @return the reader of the range
+     * @see #readAsync(long, long)
+     * @since 4.16
+     */
+    default SequentialReader newSequentialReader(long firstEntry, long lastEntry, long maxBytesInFlight) {
+        return new SequentialReaderImpl(this, firstEntry, lastEntry, maxBytesInFlight,
+                SequentialReaderImpl.DEFAULT_ENTRIES_PER_READ, (first, last, index) -> readAsync(first, last));
+    }
+
     /**
      * Obtains asynchronously the last confirmed write from a quorum of bookies. This
      * call obtains the the last add confirmed each bookie has received for this ledger
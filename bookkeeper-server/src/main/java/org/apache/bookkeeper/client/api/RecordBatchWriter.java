@@ -0,0 +1,90 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import io.netty.buffer.ByteBuf;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Append small records to a ledger, grouping them into batches.
+ *
+ * <p>The records are accumulated and written as a single entry once the batch reaches
+ * the configured number of records or size, or once the oldest record of the batch has
+ * waited for the configured delay. Records are written in the order they are appended.
+ * The batches are unpacked by {@link ReadHandle#readRecordsAsync(long, long)}.
+ *
+ * <p>Before writing its first batch, the writer marks the ledger as batched by adding the
+ * {@link #BATCHED_LEDGER_METADATA_KEY} key to its custom metadata. Only the entries of the
+ * ledgers with this key are unpacked when reading, the entries of the other ledgers are
+ * always returned as a single record.
+ *
+ * <p>Closing the writer flushes the pending records, but does not close the ledger.
+ *
+ * @see WriteHandle#newRecordBatchWriter(int, int, long, java.util.concurrent.TimeUnit)
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface RecordBatchWriter extends AutoCloseable {
+
+    /**
+     * Custom metadata key of the ledgers which contain record batches.
+     *
+     * <p>It is added by the first writer created on a ledger, it can also be set when the ledger is created.
+     */
+    String BATCHED_LEDGER_METADATA_KEY = "bookkeeper.record-batches";
+
+    /**
+     * Append a record asynchronously.
+     *
+     * @param record a bytebuf to be written. The bytebuf's reference count will be decremented by 1
+     *               once the record is added to a batch.
+     *               do not reuse the buffer, bk-client will release it appropriately.
+     * @return an handle to the result, in case of success it will return the position of the record
+     */
+    CompletableFuture<RecordPosition> appendAsync(ByteBuf record);
+
+    /**
+     * Write the pending records without waiting for the batch to be full.
+     *
+     * @return an handle to the result, completed once all the records appended so far are written
+     */
+    CompletableFuture<Void> flush();
+
+    /**
+     * Flush the pending records and reject the following appends.
+     *
+     * @return an handle to the result of the operation
+     */
+    CompletableFuture<Void> closeAsync();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    default void close() throws BKException, InterruptedException {
+        FutureUtils.<Void, BKException>result(closeAsync(), BKException.HANDLER);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Read a range of entries of a ledger in order, reading ahead of the application.
+ *
+ * <p>The reader keeps reads in flight for the entries following the last entry returned, up to
+ * the configured number of bytes, so that reading a large ledger from start to end is not limited
+ * by the latency of each read.
+ *
+ * <p>The entries are returned in order. The application owns the returned entries and is
+ * responsible for closing them. Closing the reader releases the entries read ahead.
+ *
+ * @see ReadHandle#newSequentialReader(long, long, long)
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface SequentialReader extends AutoCloseable {
+
+    /**
+     * Return true if there is at least one entry left to return in the range.
+     *
+     * @return true if there is at least one entry left to return in the range
+     */
+    boolean hasNext();
+
+    /**
+     * Read the next entry of the range asynchronously.
+     *
+     * <p>The entries are returned in the order of the calls, whether the previous entries were
+     * received or not.
+     *
+     * @return an handle to the result of the operation, failed with
+     *         {@link BKException.Code#NoSuchEntryException} if all the entries of the range were returned
+     */
+    CompletableFuture<LedgerEntry> nextAsync();
+
+    /**
+     * Read the next entry of the range synchronously.
+     *
+     * @return the next entry of the range
+     * @see #nextAsync()
+     */
+    default LedgerEntry next() throws BKException, InterruptedException {
+        return FutureUtils.<LedgerEntry, BKException>result(nextAsync(), BKException.HANDLER);
+    }
+
+    /**
+     * Stop reading ahead and release the entries which were read ahead but not returned yet.
+     */
+    @Override
+    void close();
+}
@@ -24,6 +24,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import java.nio.ByteBuffer;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
 import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
@@ -134,6 +135,25 @@ public interface WriteHandle extends ReadHandle, ForceableHandle {
         return append(Unpooled.wrappedBuffer(data, offset, length));
     }
 
+    /**
+     * Create a writer which groups small records into batches, each one written as a single entry.
+     *
+     * <p>A batch is written once it holds {@code maxRecordsPerBatch} records or {@code maxBatchSizeBytes}
+     * bytes, or once its first record has waited for {@code maxDelay}. The records can be read back
+     * with {@link #readRecordsAsync(long, long)}.
+     *
+     * @param maxRecordsPerBatch the maximum number of records of a batch
+     * @param maxBatchSizeBytes the maximum size of a batch, in bytes
+     * @param maxDelay the maximum time a record waits for its batch to be written
+     * @param unit the unit of {@code maxDelay}
+     * @return a new record batch writer on this ledger
+     * @since 4.16
+     */
+    default RecordBatchWriter newRecordBatchWriter(int maxRecordsPerBatch, int maxBatchSizeBytes,
+                                                   long maxDelay, TimeUnit unit) {
+        throw new UnsupportedOperationException("Record batching is not supported by this handle");
+    }
+
     /**
      * Get the entry id of the last entry that has been enqueued for addition (but
      * may not have possibly been persisted to the ledger).
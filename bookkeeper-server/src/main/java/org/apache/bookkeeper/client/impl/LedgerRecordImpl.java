@@ -0,0 +1,128 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.ByteBuffer;
+import org.apache.bookkeeper.client.api.LedgerRecord;
+
+/**
+ * A record of a ledger entry. It holds a slice of the entry content.
+ */
+public class LedgerRecordImpl implements LedgerRecord {
+
+    private final long ledgerId;
+    private final long entryId;
+    private final int recordIndex;
+    private final int recordCount;
+    private ByteBuf recordBuf;
+
+    LedgerRecordImpl(long ledgerId, long entryId, int recordIndex, int recordCount, ByteBuf recordBuf) {
+        this.ledgerId = ledgerId;
+        this.entryId = entryId;
+        this.recordIndex = recordIndex;
+        this.recordCount = recordCount;
+        this.recordBuf = recordBuf;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLedgerId() {
+        return ledgerId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEntryId() {
+        return entryId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRecordIndex() {
+        return recordIndex;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLength() {
+        return recordBuf.readableBytes();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] getEntryBytes() {
+        return ByteBufUtil.getBytes(recordBuf, recordBuf.readerIndex(), recordBuf.readableBytes(), false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuf getEntryBuffer() {
+        return recordBuf;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer getEntryNioBuffer() {
+        return recordBuf.nioBuffer();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LedgerRecordImpl duplicate() {
+        return new LedgerRecordImpl(ledgerId, entryId, recordIndex, recordCount, recordBuf.retainedSlice());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        ReferenceCountUtil.release(recordBuf);
+        recordBuf = null;
+    }
+}
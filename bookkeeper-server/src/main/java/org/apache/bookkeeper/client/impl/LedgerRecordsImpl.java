@@ -0,0 +1,122 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+
+/**
+ * View of ledger entries as the records written by a {@link RecordBatchWriterImpl}.
+ *
+ * <p>Each record holds a retained slice of its entry, so the records of the entries are
+ * not copied and the source entries can be released as soon as the view is created.
+ */
+public class LedgerRecordsImpl implements LedgerEntries {
+    private List<LedgerEntry> records;
+
+    private LedgerRecordsImpl(List<LedgerEntry> records) {
+        this.records = records;
+    }
+
+    /**
+     * Unpack the records of ledger entries. The entries are closed.
+     *
+     * @param entries the entries with ordering
+     * @param batched whether the ledger of the entries contains record batches
+     * @return the records of the entries
+     */
+    public static LedgerRecordsImpl create(LedgerEntries entries, boolean batched) {
+        try {
+            List<LedgerEntry> records = new ArrayList<>();
+            for (LedgerEntry entry : entries) {
+                ByteBuf buf = entry.getEntryBuffer();
+                int count = batched ? RecordBatchFormat.recordCount(buf) : -1;
+                if (count < 0) {
+                    records.add(new LedgerRecordImpl(entry.getLedgerId(), entry.getEntryId(), 0, 1,
+                            buf.retainedSlice()));
+                    continue;
+                }
+
+                int offset = buf.readerIndex() + RecordBatchFormat.HEADER_SIZE;
+                for (int i = 0; i < count; i++) {
+                    int length = buf.getInt(offset);
+                    offset += RecordBatchFormat.RECORD_HEADER_SIZE;
+                    records.add(new LedgerRecordImpl(entry.getLedgerId(), entry.getEntryId(), i, count,
+                            buf.retainedSlice(offset, length)));
+                    offset += length;
+                }
+            }
+            return new LedgerRecordsImpl(records);
+        } finally {
+            entries.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Returns the first record of the entry.
+     */
+    @Override
+    public LedgerEntry getEntry(long entryId) {
+        checkNotNull(records, "records have been released");
+        int low = 0;
+        int high = records.size() - 1;
+        // Find the first record of the entry
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (records.get(mid).getEntryId() < entryId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (records.isEmpty() || records.get(low).getEntryId() != entryId) {
+            return null;
+        }
+        return records.get(low);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<LedgerEntry> iterator() {
+        checkNotNull(records, "records have been released");
+        return records.iterator();
+    }
+
+    @Override
+    public void close() {
+        if (records != null) {
+            records.forEach(LedgerEntry::close);
+            records = null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.List;
+
+import org.apache.bookkeeper.client.api.RecordBatchWriter;
+
+/**
+ * Layout of the entries written by a {@link RecordBatchWriterImpl}.
+ *
+ * <pre>
+ * batch  := MAGIC (int) | VERSION (byte) | record count (int) | record*
+ * record := length (int) | data
+ * </pre>
+ *
+ * <p>The header is not enough to tell a batch from a plain entry, so only the entries of the
+ * ledgers marked with {@link RecordBatchWriter#BATCHED_LEDGER_METADATA_KEY} are decoded. In these
+ * ledgers, an entry is only considered a batch if the header matches and the record lengths
+ * add up to the size of the entry, anything else is handled as a plain entry.
+ */
+final class RecordBatchFormat {
+
+    static final int MAGIC = 0x42415443;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = Integer.BYTES + 1 + Integer.BYTES;
+    static final int RECORD_HEADER_SIZE = Integer.BYTES;
+
+    private RecordBatchFormat() {}
+
+    /**
+     * Serialize a batch of records. The records are released.
+     */
+    static ByteBuf encode(ByteBufAllocator allocator, List<ByteBuf> records, int batchSize) {
+        ByteBuf batch = allocator.buffer(batchSize, batchSize);
+        try {
+            batch.writeInt(MAGIC);
+            batch.writeByte(VERSION);
+            batch.writeInt(records.size());
+            for (ByteBuf record : records) {
+                batch.writeInt(record.readableBytes());
+                batch.writeBytes(record, record.readerIndex(), record.readableBytes());
+            }
+            return batch;
+        } catch (RuntimeException e) {
+            batch.release();
+            throw e;
+        } finally {
+            records.forEach(ByteBuf::release);
+        }
+    }
+
+    /**
+     * @return the number of records of the batch, or -1 if the entry is not a valid batch
+     */
+    static int recordCount(ByteBuf entry) {
+        int offset = entry.readerIndex();
+        int end = entry.writerIndex();
+        if (end - offset < HEADER_SIZE
+                || entry.getInt(offset) != MAGIC
+                || entry.getByte(offset + Integer.BYTES) != VERSION) {
+            return -1;
+        }
+
+        int count = entry.getInt(offset + Integer.BYTES + 1);
+        if (count <= 0) {
+            return -1;
+        }
+        offset += HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            if (end - offset < RECORD_HEADER_SIZE) {
+                return -1;
+            }
+            int length = entry.getInt(offset);
+            offset += RECORD_HEADER_SIZE;
+            if (length < 0 || end - offset < length) {
+                return -1;
+            }
+            offset += length;
+        }
+        return offset == end ? count : -1;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.RecordBatchWriter;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Record batch writer on top of a {@link WriteHandle}.
+ *
+ * <p>The batches are appended to the handle while holding the writer lock, so that they
+ * are added in the same order as the records. Until the ledger is marked as batched, the
+ * batches are queued and appended in order once the marking completes.
+ */
+public class RecordBatchWriterImpl implements RecordBatchWriter {
+
+    private final WriteHandle handle;
+    private final ScheduledExecutorService scheduler;
+    private final ByteBufAllocator allocator;
+    private final int maxRecordsPerBatch;
+    private final int maxBatchSizeBytes;
+    private final long maxDelayNanos;
+
+    // Records of the current batch, guarded by this
+    private List<ByteBuf> records = new ArrayList<>();
+    private List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+    private int batchSize = RecordBatchFormat.HEADER_SIZE;
+    // Incremented every time a batch is sent, so that a stale timer does not send the next batch
+    private long batchSeq = 0;
+    private ScheduledFuture<?> flushTimer;
+    private CompletableFuture<Long> lastAdd = CompletableFuture.completedFuture(-1L);
+    // Completed once the previous batch is appended to the handle
+    private CompletableFuture<Void> appended;
+    private boolean closed = false;
+
+    public RecordBatchWriterImpl(WriteHandle handle, ScheduledExecutorService scheduler, ByteBufAllocator allocator,
+                                 CompletableFuture<Void> batchedLedgerMarked, int maxRecordsPerBatch,
+                                 int maxBatchSizeBytes, long maxDelay, TimeUnit unit) {
+        checkArgument(maxRecordsPerBatch > 0, "maxRecordsPerBatch must be positive");
+        checkArgument(maxBatchSizeBytes > RecordBatchFormat.HEADER_SIZE, "maxBatchSizeBytes is too small");
+        checkArgument(maxDelay > 0, "maxDelay must be positive");
+        this.handle = handle;
+        this.scheduler = scheduler;
+        this.allocator = allocator;
+        this.maxRecordsPerBatch = maxRecordsPerBatch;
+        this.maxBatchSizeBytes = maxBatchSizeBytes;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.appended = batchedLedgerMarked;
+    }
+
+    @Override
+    public CompletableFuture<RecordPosition> appendAsync(ByteBuf record) {
+        CompletableFuture<RecordPosition> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                record.release();
+                future.completeExceptionally(BKException.create(BKException.Code.LedgerClosedException));
+                return future;
+            }
+
+            int recordSize = RecordBatchFormat.RECORD_HEADER_SIZE + record.readableBytes();
+            if (!records.isEmpty() && batchSize + recordSize > maxBatchSizeBytes) {
+                sendBatch();
+            }
+
+            records.add(record);
+            futures.add(future);
+            batchSize += recordSize;
+
+            if (records.size() >= maxRecordsPerBatch || batchSize >= maxBatchSizeBytes) {
+                sendBatch();
+            } else if (records.size() == 1) {
+                long seq = batchSeq;
+                flushTimer = scheduler.schedule(() -> onFlushTimer(seq), maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        return future;
+    }
+
+    private synchronized void onFlushTimer(long seq) {
+        if (seq == batchSeq) {
+            sendBatch();
+        }
+    }
+
+    private void sendBatch() {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (flushTimer != null) {
+            flushTimer.cancel(false);
+            flushTimer = null;
+        }
+        batchSeq++;
+
+        List<CompletableFuture<RecordPosition>> batchFutures = futures;
+        ByteBuf batch;
+        try {
+            batch = RecordBatchFormat.encode(allocator, records, batchSize);
+        } catch (RuntimeException e) {
+            batchFutures.forEach(f -> f.completeExceptionally(e));
+            return;
+        } finally {
+            records = new ArrayList<>();
+            futures = new ArrayList<>();
+            batchSize = RecordBatchFormat.HEADER_SIZE;
+        }
+
+        CompletableFuture<Long> add = new CompletableFuture<>();
+        appended = appended.whenComplete((ignored, cause) -> {
+            if (cause != null) {
+                batch.release();
+                add.completeExceptionally(cause instanceof CompletionException && cause.getCause() != null
+                        ? cause.getCause() : cause);
+            } else {
+                FutureUtils.proxyTo(handle.appendAsync(batch), add);
+            }
+        });
+        lastAdd = add;
+        add.whenComplete((entryId, cause) -> {
+            for (int i = 0; i < batchFutures.size(); i++) {
+                if (cause != null) {
+                    batchFutures.get(i).completeExceptionally(cause);
+                } else {
+                    batchFutures.get(i).complete(new RecordPosition(entryId, i));
+                }
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        CompletableFuture<Long> add;
+        synchronized (this) {
+            sendBatch();
+            add = lastAdd;
+        }
+        // Adds complete in order, so the last one covers all the previous batches
+        return add.thenApply(entryId -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        synchronized (this) {
+            closed = true;
+        }
+        return flush();
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.client.api.SequentialReader;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Reader of a range of entries, reading groups of consecutive entries ahead of the application.
+ *
+ * <p>The entries read ahead and not returned yet are bounded by an estimate of their size: the
+ * size of a group is estimated from the average size of the entries already read, or from the
+ * length of the ledger before any entry is read, and replaced by the actual size once it is read.
+ */
+public class SequentialReaderImpl implements SequentialReader {
+
+    public static final int DEFAULT_ENTRIES_PER_READ = 64;
+
+    // Size assumed for the entries of a ledger whose length is unknown, until some entries are read
+    private static final long DEFAULT_ENTRY_SIZE_ESTIMATE = 64 * 1024;
+
+    /**
+     * Read of a group of consecutive entries.
+     */
+    @FunctionalInterface
+    public interface RangeReader {
+
+        /**
+         * Read a group of consecutive entries.
+         *
+         * @param firstEntry id of the first entry of the group
+         * @param lastEntry id of the last entry of the group, inclusive
+         * @param index index of the group in the range, e.g. to spread the processing of the groups
+         * @return an handle to the result of the operation
+         */
+        CompletableFuture<LedgerEntries> read(long firstEntry, long lastEntry, long index);
+    }
+
+    private final RangeReader rangeReader;
+    private final long lastEntry;
+    private final long maxBytesInFlight;
+    private final int entriesPerRead;
+    private final long initialEntrySizeEstimate;
+
+    // Reads with entries not returned yet, in order
+    private final ArrayDeque<Read> reads = new ArrayDeque<>();
+    private long nextEntryToRead;
+    private long nextEntryToReturn;
+    private long numReads = 0;
+    // Estimated size of the entries read ahead, or being read ahead, and not returned yet
+    private long bytesAhead = 0;
+    private long bytesRead = 0;
+    private long entriesRead = 0;
+    private boolean closed = false;
+
+    /**
+     * Create a reader of a range of entries.
+     *
+     * @param handle the handle of the ledger
+     * @param firstEntry id of the first entry of the range
+     * @param lastEntry id of the last entry of the range, inclusive, or firstEntry - 1 for an empty range
+     * @param maxBytesInFlight max number of bytes of the entries read ahead
+     * @param entriesPerRead number of entries read by each read
+     * @param rangeReader reads the groups of entries
+     */
+    public SequentialReaderImpl(ReadHandle handle, long firstEntry, long lastEntry, long maxBytesInFlight,
+                                int entriesPerRead, RangeReader rangeReader) {
+        checkArgument(firstEntry >= 0 && lastEntry >= firstEntry - 1,
+                "Invalid range of entries [%s, %s]", firstEntry, lastEntry);
+        checkArgument(entriesPerRead > 0, "Invalid number of entries per read %s", entriesPerRead);
+        this.rangeReader = rangeReader;
+        this.lastEntry = lastEntry;
+        this.maxBytesInFlight = maxBytesInFlight;
+        this.entriesPerRead = entriesPerRead;
+        this.nextEntryToRead = firstEntry;
+        this.nextEntryToReturn = firstEntry;
+
+        long lastAddConfirmed = handle.getLastAddConfirmed();
+        long length = handle.getLength();
+        if (lastAddConfirmed >= 0 && length > 0) {
+            this.initialEntrySizeEstimate = Math.max(1L, length / (lastAddConfirmed + 1));
+        } else {
+            this.initialEntrySizeEstimate = DEFAULT_ENTRY_SIZE_ESTIMATE;
+        }
+
+        synchronized (this) {
+            readAhead(false);
+        }
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        return !closed && nextEntryToReturn <= lastEntry;
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntry> nextAsync() {
+        final Read read;
+        final long entryId;
+        synchronized (this) {
+            if (closed) {
+                return FutureUtils.exception(BKException.create(BKException.Code.UnexpectedConditionException));
+            }
+            if (nextEntryToReturn > lastEntry) {
+                return FutureUtils.exception(BKException.create(BKException.Code.NoSuchEntryException));
+            }
+            entryId = nextEntryToReturn++;
+            if (entryId >= nextEntryToRead) {
+                // The application is ahead of the read ahead
+                readAhead(true);
+            }
+            read = reads.peekFirst();
+            read.numReturned++;
+            if (entryId == read.lastEntry) {
+                reads.removeFirst();
+            }
+        }
+
+        CompletableFuture<LedgerEntry> result = new CompletableFuture<>();
+        read.future.whenComplete((entries, cause) -> {
+            if (cause != null) {
+                result.completeExceptionally(cause);
+            } else {
+                result.complete(read.take(entryId));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void close() {
+        ArrayDeque<Read> toRelease = new ArrayDeque<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Read read : reads) {
+                if (read.shouldRelease()) {
+                    toRelease.add(read);
+                }
+            }
+            reads.clear();
+        }
+        toRelease.forEach(read -> read.entries.close());
+    }
+
+    private long entrySizeEstimate() {
+        return entriesRead > 0 ? Math.max(1L, bytesRead / entriesRead) : initialEntrySizeEstimate;
+    }
+
+    private void readAhead(boolean force) {
+        while (!closed && nextEntryToRead <= lastEntry) {
+            long first = nextEntryToRead;
+            long last = Math.min(lastEntry, first + entriesPerRead - 1);
+            long estimate = (last - first + 1) * entrySizeEstimate();
+            // At least one read is in flight
+            if (!force && bytesAhead > 0 && bytesAhead + estimate > maxBytesInFlight) {
+                return;
+            }
+            force = false;
+
+            Read read = new Read(first, last, estimate);
+            reads.addLast(read);
+            bytesAhead += estimate;
+            nextEntryToRead = last + 1;
+            rangeReader.read(first, last, numReads++).whenComplete(read::onReadComplete);
+        }
+    }
+
+    private class Read {
+        final long firstEntry;
+        final long lastEntry;
+        final CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+
+        // Guarded by the reader
+        long bytesAhead;
+        LedgerEntries entries = null;
+        int numReturned = 0;
+        int numTaken = 0;
+        boolean released = false;
+
+        Read(long firstEntry, long lastEntry, long estimatedBytes) {
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+            this.bytesAhead = estimatedBytes;
+        }
+
+        void onReadComplete(LedgerEntries readEntries, Throwable cause) {
+            boolean release;
+            synchronized (SequentialReaderImpl.this) {
+                SequentialReaderImpl.this.bytesAhead -= bytesAhead;
+                bytesAhead = 0;
+                if (cause == null) {
+                    for (LedgerEntry entry : readEntries) {
+                        bytesAhead += entry.getLength();
+                    }
+                    SequentialReaderImpl.this.bytesAhead += bytesAhead;
+                    bytesRead += bytesAhead;
+                    entriesRead += lastEntry - firstEntry + 1;
+                    entries = readEntries;
+                }
+                release = shouldRelease();
+            }
+            if (release) {
+                readEntries.close();
+            }
+            if (cause != null) {
+                future.completeExceptionally(cause);
+            } else {
+                future.complete(readEntries);
+            }
+        }
+
+        LedgerEntry take(long entryId) {
+            LedgerEntry entry;
+            boolean release;
+            synchronized (SequentialReaderImpl.this) {
+                entry = entries.getEntry(entryId).duplicate();
+                numTaken++;
+                bytesAhead -= entry.getLength();
+                SequentialReaderImpl.this.bytesAhead -= entry.getLength();
+                release = shouldRelease();
+                readAhead(false);
+            }
+            if (release) {
+                entries.close();
+            }
+            return entry;
+        }
+
+        // Guarded by the reader
+        boolean shouldRelease() {
+            boolean allReturned = numReturned == lastEntry - firstEntry + 1;
+            if (released || entries == null || numTaken != numReturned || !(allReturned || closed)) {
+                return false;
+            }
+            released = true;
+            return true;
+        }
+    }
+}
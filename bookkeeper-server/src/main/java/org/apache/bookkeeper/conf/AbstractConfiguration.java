@@ -93,6 +93,8 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     protected static final String STORE_SYSTEMTIME_AS_LEDGER_CREATION_TIME = "storeSystemTimeAsLedgerCreationTime";
 
     protected static final String ENABLE_BUSY_WAIT = "enableBusyWait";
+    protected static final String BUSY_POLL_MICROS = "busyPollMicros";
+    protected static final String ENABLE_IO_URING = "enableIoUring";
     protected static final String ENABLE_HEALTH_CHECK = "enableHealthCheck";
 
     // Metastore settings, only being used when LEDGER_MANAGER_FACTORY_CLASS is MSLedgerManagerFactory
@@ -190,6 +192,7 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     public static final String LIMIT_STATS_LOGGING = "limitStatsLogging";
 
     protected static final String REPLICATION_RATE_BY_BYTES = "replicationRateByBytes";
+    protected static final String REREPLICATION_MAX_IN_FLIGHT_BYTES = "rereplicationMaxInFlightBytes";
 
     protected AbstractConfiguration() {
         super();
@@ -469,6 +472,9 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     /**
      * Set Ledger metadata format version.
      *
+     * <p>Version 4 stores the metadata of a ledger with a large number of ensemble changes in a
+     * fraction of the size of version 3, but it can only be read by clients from 4.16 onwards.
+     *
      * @param metadataFormatVersion
      *          Ledger metadata format version. pass -1 to use default version
      */
@@ -1185,6 +1191,71 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getThis();
     }
 
+    /**
+     * Get the time, in microseconds, spent busy polling the socket for new data before
+     * blocking, i.e. the {@code SO_BUSY_POLL} option of the Epoll sockets.
+     *
+     * <p>Default is 0, busy polling is disabled.
+     *
+     * @return the busy poll time, in microseconds
+     * @since 4.16
+     */
+    public int getBusyPollMicros() {
+        return getInt(BUSY_POLL_MICROS, 0);
+    }
+
+    /**
+     * Set the time, in microseconds, spent busy polling the socket for new data before
+     * blocking.
+     *
+     * <p>This option only applies to the Epoll transport, and requires the kernel to support
+     * {@code SO_BUSY_POLL} on the network device. Combined with {@link #setBusyWaitEnabled(boolean)},
+     * which pins the Netty IO threads to isolated cores, it trades CPU for a lower latency on the
+     * network path.
+     *
+     * @param busyPollMicros
+     *            the busy poll time, in microseconds, 0 to disable it
+     * @return configuration object.
+     * @since 4.16
+     */
+    public T setBusyPollMicros(int busyPollMicros) {
+        setProperty(BUSY_POLL_MICROS, busyPollMicros);
+        return getThis();
+    }
+
+    /**
+     * Return whether the Netty event loops use the io_uring transport.
+     *
+     * <p>Default is false.
+     *
+     * @return the value of the option
+     * @since 4.16
+     */
+    public boolean isIoUringEnabled() {
+        return getBoolean(ENABLE_IO_URING, false);
+    }
+
+    /**
+     * Option to run the Netty event loops on the io_uring transport instead of Epoll.
+     *
+     * <p>Default is false.
+     *
+     * <p>io_uring requires a Linux kernel 5.9 or newer. When it is not available, the
+     * Epoll (or NIO) transport is used instead. It takes precedence over
+     * {@link #setBusyWaitEnabled(boolean)} for the Netty IO threads, and
+     * {@link #setBusyPollMicros(int)} does not apply to it.
+     *
+     * @param ioUringEnabled
+     *            if enabled, use the io_uring transport when it is available
+     * @return configuration object.
+     * @since 4.16
+     * @see #isIoUringEnabled()
+     */
+    public T setIoUringEnabled(boolean ioUringEnabled) {
+        setProperty(ENABLE_IO_URING, ioUringEnabled);
+        return getThis();
+    }
+
     /**
      * Return the flag indicating whether to limit stats logging.
      *
@@ -1229,6 +1300,33 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getThis();
     }
 
+    /**
+     * Get the max number of bytes being re-replicated at the same time.
+     * Default value is 0 which it means the entries of each batch are read and written one by one,
+     * and the batches of a fragment are replicated one after the other.
+     *
+     * @return max number of bytes being re-replicated at the same time.
+     */
+    public long getRereplicationMaxInFlightBytes() {
+        return getLong(REREPLICATION_MAX_IN_FLIGHT_BYTES, 0L);
+    }
+
+    /**
+     * Set the max number of bytes being re-replicated at the same time.
+     *
+     * <p>When set, each batch of entries is read with a single read and the batches of all the
+     * fragments being replicated are pipelined, as long as the size of the batches in flight
+     * stays below this limit.
+     *
+     * @param maxInFlightBytes max number of bytes being re-replicated at the same time.
+     *
+     * @return ClientConfiguration
+     */
+    public T setRereplicationMaxInFlightBytes(long maxInFlightBytes) {
+        this.setProperty(REREPLICATION_MAX_IN_FLIGHT_BYTES, maxInFlightBytes);
+        return getThis();
+    }
+
     /**
      * Trickery to allow inheritance with fluent style.
      */
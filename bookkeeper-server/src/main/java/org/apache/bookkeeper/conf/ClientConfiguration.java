@@ -109,6 +109,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String MAX_SPECULATIVE_READ_TIMEOUT = "maxSpeculativeReadTimeout";
     protected static final String SPECULATIVE_READ_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadTimeoutBackoffMultiplier";
+    protected static final String ADAPTIVE_SPECULATIVE_READ_TIMEOUT_ENABLED =
+        "adaptiveSpeculativeReadTimeoutEnabled";
     protected static final String FIRST_SPECULATIVE_READ_LAC_TIMEOUT = "firstSpeculativeReadLACTimeout";
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
@@ -117,6 +119,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String RECOVERY_READ_BATCH_SIZE = "recoveryReadBatchSize";
     protected static final String REORDER_READ_SEQUENCE_ENABLED = "reorderReadSequenceEnabled";
     protected static final String STICKY_READS_ENABLED = "stickyReadSEnabled";
+    protected static final String BATCH_READ_ENABLED = "batchReadEnabled";
     // Add Parameters
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
     protected static final String DELAY_ENSEMBLE_CHANGE = "delayEnsembleChange";
@@ -160,6 +163,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     public static final String ENSEMBLE_PLACEMENT_POLICY = "ensemblePlacementPolicy";
     protected static final String NETWORK_TOPOLOGY_STABILIZE_PERIOD_SECONDS = "networkTopologyStabilizePeriodSeconds";
     protected static final String READ_REORDER_THRESHOLD_PENDING_REQUESTS = "readReorderThresholdPendingRequests";
+    protected static final String READ_REORDER_THRESHOLD_LATENCY_RATIO = "readReorderThresholdLatencyRatio";
     protected static final String ENSEMBLE_PLACEMENT_POLICY_ORDER_SLOW_BOOKIES =
         "ensemblePlacementPolicyOrderSlowBookies";
 
@@ -1038,6 +1042,33 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the first speculative read timeout adapts to the latency of the bookies.
+     *
+     * <p>If enabled, the first speculative read of an entry is sent once the read took longer than
+     * the recent 95th percentile of the read latency of the bookie it was sent to, bounded by
+     * {@link #getFirstSpeculativeReadTimeout()}. When the latency of the bookie is not known yet,
+     * {@link #getFirstSpeculativeReadTimeout()} is used.
+     *
+     * @return whether the first speculative read timeout is adaptive.
+     */
+    public boolean isAdaptiveSpeculativeReadTimeoutEnabled() {
+        return getBoolean(ADAPTIVE_SPECULATIVE_READ_TIMEOUT_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the adaptive first speculative read timeout.
+     *
+     * @param enabled
+     *          whether the first speculative read timeout is adaptive.
+     * @return client configuration.
+     * @see #isAdaptiveSpeculativeReadTimeoutEnabled()
+     */
+    public ClientConfiguration setAdaptiveSpeculativeReadTimeoutEnabled(boolean enabled) {
+        setProperty(ADAPTIVE_SPECULATIVE_READ_TIMEOUT_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get the period of time after which the first speculative read last add confirmed and entry
      * should be triggered.
@@ -1198,6 +1229,33 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * If sequential range reads should use batch read requests or not.
+     *
+     * @return true if batch reads are enabled, otherwise false.
+     */
+    public boolean isBatchReadEnabled() {
+        return getBoolean(BATCH_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable reading ranges of entries using batch read requests.
+     *
+     * <p>If this flag is enabled and every bookie of the ensemble stores all the
+     * entries of the requested range (ensemble size equal to write quorum size),
+     * the client fetches many entries from a single bookie with one request,
+     * instead of sending one request per entry.
+     *
+     * <p>All the bookies must support the batch read operation before enabling this flag.
+     *
+     * @param enabled the flag to enable/disable batch reads.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setBatchReadEnabled(boolean enabled) {
+        setProperty(BATCH_READ_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get Ensemble Placement Policy Class.
      *
@@ -1246,6 +1304,30 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the ratio between the read latencies of two bookies beyond which reads are reordered
+     * to go to the faster bookie first. The latency of a bookie is the recent 95th percentile of
+     * the latency of the reads sent to it. If &lt;= zero, this feature is turned off.
+     *
+     * @return the read latency ratio beyond which to reorder reads.
+     */
+    public double getReorderThresholdLatencyRatio() {
+        return getDouble(READ_REORDER_THRESHOLD_LATENCY_RATIO, 0.0);
+    }
+
+    /**
+     * Set the ratio between the read latencies of two bookies beyond which reads are reordered
+     * to go to the faster bookie first, e.g. 1.5 to prefer a bookie which is 50% faster. If zero,
+     * this feature is turned off.
+     *
+     * @param ratio
+     *            The read latency ratio beyond which to reorder reads.
+     */
+    public ClientConfiguration setReorderThresholdLatencyRatio(double ratio) {
+        setProperty(READ_REORDER_THRESHOLD_LATENCY_RATIO, ratio);
+        return this;
+    }
+
     /**
      * Get the network topology stabilize period in seconds. if it is zero, this feature is turned off.
      *
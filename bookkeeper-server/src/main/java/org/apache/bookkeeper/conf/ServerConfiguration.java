@@ -46,6 +46,8 @@ import org.apache.bookkeeper.discover.ZKRegistrationManager;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.stats.NullStatsProvider;
 import org.apache.bookkeeper.stats.StatsProvider;
+import org.apache.bookkeeper.util.compression.CompressionCodec;
+import org.apache.bookkeeper.util.compression.CompressionUtils;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.lang3.StringUtils;
 
@@ -107,6 +109,13 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String COMPACTION_RATE = "compactionRate";
     protected static final String COMPACTION_RATE_BY_ENTRIES = "compactionRateByEntries";
     protected static final String COMPACTION_RATE_BY_BYTES = "compactionRateByBytes";
+    protected static final String INCREMENTAL_COMPACTION_ENABLED = "incrementalCompactionEnabled";
+    protected static final String INCREMENTAL_COMPACTION_THRESHOLD = "incrementalCompactionThreshold";
+    protected static final String INCREMENTAL_COMPACTION_SLICE_MILLIS = "incrementalCompactionSliceMillis";
+    protected static final String INCREMENTAL_COMPACTION_MAX_BYTES_PER_SECOND =
+            "incrementalCompactionMaxBytesPerSecond";
+    protected static final String INCREMENTAL_COMPACTION_TARGET_READ_LATENCY_MILLIS =
+            "incrementalCompactionTargetReadLatencyMillis";
 
     // Gc Parameters
     protected static final String GC_WAIT_TIME = "gcWaitTime";
@@ -153,11 +162,21 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_MAX_MEMORY_SIZE_MB = "journalMaxMemorySizeMb";
     protected static final String JOURNAL_PAGECACHE_FLUSH_INTERVAL_MSEC = "journalPageCacheFlushIntervalMSec";
     protected static final String JOURNAL_CHANNEL_PROVIDER = "journalChannelProvider";
+    protected static final String JOURNAL_WRITE_PIPELINE_DEPTH = "journalWritePipelineDepth";
+    protected static final String JOURNAL_COMPRESSION_CODEC = "journalCompressionCodec";
+    protected static final String ZERO_COPY_ENTRY_SIZE_THRESHOLD = "zeroCopyEntrySizeThreshold";
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
     protected static final String CLOSE_CHANNEL_ON_RESPONSE_TIMEOUT = "closeChannelOnResponseTimeout";
     protected static final String WAIT_TIMEOUT_ON_RESPONSE_BACKPRESSURE = "waitTimeoutOnResponseBackpressureMs";
+    protected static final String FAIR_READ_SCHEDULING_ENABLED = "fairReadSchedulingEnabled";
+    protected static final String FAIR_READ_MAX_IN_FLIGHT_REQUESTS = "fairReadMaxInFlightRequests";
+    protected static final String FAIR_READ_MAX_QUEUED_REQUESTS_PER_CLIENT = "fairReadMaxQueuedRequestsPerClient";
+    protected static final String FAIR_READ_CLIENT_WEIGHTS = "fairReadClientWeights";
+    protected static final String CLIENT_READ_REQUEST_RATE_QUOTA = "clientReadRequestRateQuota";
+    protected static final String CLIENT_READ_BYTE_RATE_QUOTA = "clientReadByteRateQuota";
+    protected static final String MAX_RESPONSE_MEMORY_BYTES = "maxResponseMemoryBytes";
 
     // Bookie Parameters
     protected static final String BOOKIE_PORT = "bookiePort";
@@ -203,9 +222,15 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String AUDITOR_PERIODIC_PLACEMENT_POLICY_CHECK_INTERVAL =
                                                                 "auditorPeriodicPlacementPolicyCheckInterval";
     protected static final String AUDITOR_LEDGER_VERIFICATION_PERCENTAGE = "auditorLedgerVerificationPercentage";
+    protected static final String AUDITOR_INCREMENTAL_BOOKIE_LEDGER_INDEX_ENABLED =
+            "auditorIncrementalBookieLedgerIndexEnabled";
+    protected static final String AUDITOR_BOOKIE_LEDGER_INDEX_RECONCILE_INTERVAL =
+            "auditorBookieLedgerIndexReconcileInterval";
+    protected static final String AUDITOR_BOOKIE_LEDGER_INDEX_SNAPSHOT_PATH = "auditorBookieLedgerIndexSnapshotPath";
     protected static final String AUTO_RECOVERY_DAEMON_ENABLED = "autoRecoveryDaemonEnabled";
     protected static final String LOST_BOOKIE_RECOVERY_DELAY = "lostBookieRecoveryDelay";
     protected static final String RW_REREPLICATE_BACKOFF_MS = "rwRereplicateBackoffMs";
+    protected static final String REREPLICATION_CONCURRENT_LEDGERS = "rereplicationConcurrentLedgers";
     protected static final String UNDERREPLICATED_LEDGER_RECOVERY_GRACE_PERIOD =
             "underreplicatedLedgerRecoveryGracePeriod";
     protected static final String AUDITOR_REPLICAS_CHECK_INTERVAL = "auditorReplicasCheckInterval";
@@ -214,6 +239,10 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String AUDITOR_ACQUIRE_CONCURRENT_OPEN_LEDGER_OPERATIONS_TIMEOUT_MSEC =
         "auditorAcquireConcurrentOpenLedgerOperationsTimeOutMSec";
     protected static final String IN_FLIGHT_READ_ENTRY_NUM_IN_LEDGER_CHECKER = "inFlightReadEntryNumInLedgerChecker";
+    protected static final String IN_FLIGHT_READ_ENTRY_NUM_PER_BOOKIE_IN_LEDGER_CHECKER =
+            "inFlightReadEntryNumPerBookieInLedgerChecker";
+    protected static final String AUDITOR_LEDGER_CHECK_PARALLELISM = "auditorLedgerCheckParallelism";
+    protected static final String AUDITOR_LEDGER_CHECK_CHECKPOINT_ENABLED = "auditorLedgerCheckCheckpointEnabled";
 
 
     // Worker Thread parameters.
@@ -988,6 +1017,84 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this.getString(JOURNAL_CHANNEL_PROVIDER, "org.apache.bookkeeper.bookie.DefaultFileChannelProvider");
     }
 
+    /**
+     * Set the number of journal write groups that can be in flight at the same time.
+     *
+     * <p>When set to 2 or more, the journal thread stages the entries of the next group
+     * while the previous groups are written out and force written by a pool of writer
+     * threads, instead of writing to the file and handing it over to the single force
+     * write thread. 0 disables the pipelined journal.
+     *
+     * @param depth
+     *          number of in flight journal write groups
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalWritePipelineDepth(int depth) {
+        this.setProperty(JOURNAL_WRITE_PIPELINE_DEPTH, depth);
+        return this;
+    }
+
+    /**
+     * Get the number of journal write groups that can be in flight at the same time.
+     *
+     * @return number of in flight journal write groups, 0 if the pipelined journal is disabled
+     */
+    public int getJournalWritePipelineDepth() {
+        return this.getInt(JOURNAL_WRITE_PIPELINE_DEPTH, 0);
+    }
+
+    /**
+     * Set the codec used to compress the journal.
+     *
+     * <p>When set, the entries of each journal group commit are packed into a single
+     * compressed block record. Requires journalFormatVersionToWrite to be at least 7.
+     * The blocks are compressed on the journal thread, "lz4" is the recommended codec,
+     * "deflate" produces smaller blocks at a much higher CPU cost.
+     *
+     * @param codec
+     *          compression codec name, one of "none", "lz4" or "deflate"
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalCompressionCodec(String codec) {
+        this.setProperty(JOURNAL_COMPRESSION_CODEC, codec);
+        return this;
+    }
+
+    /**
+     * Get the codec used to compress the journal.
+     *
+     * @return compression codec name, "none" if the journal is not compressed
+     */
+    public String getJournalCompressionCodec() {
+        return this.getString(JOURNAL_COMPRESSION_CODEC, CompressionUtils.NONE);
+    }
+
+    /**
+     * Set the size from which the entries added to the bookie are referenced instead of copied.
+     *
+     * <p>The journal writes such an entry straight from the buffer it was received in, and the
+     * write cache of the DbLedgerStorage keeps a reference to that buffer until it is flushed,
+     * instead of copying the entry into its own buffers. Only entries received in direct
+     * buffers are referenced. 0 disables it.
+     *
+     * @param threshold
+     *          min size of the entries which are referenced instead of copied, in bytes
+     * @return server configuration
+     */
+    public ServerConfiguration setZeroCopyEntrySizeThreshold(int threshold) {
+        this.setProperty(ZERO_COPY_ENTRY_SIZE_THRESHOLD, threshold);
+        return this;
+    }
+
+    /**
+     * Get the size from which the entries added to the bookie are referenced instead of copied.
+     *
+     * @return min size of the entries which are referenced instead of copied, in bytes, 0 if disabled
+     */
+    public int getZeroCopyEntrySizeThreshold() {
+        return this.getInt(ZERO_COPY_ENTRY_SIZE_THRESHOLD, 0);
+    }
+
     /**
      * Get max number of adds in progress. 0 == unlimited.
      *
@@ -1030,6 +1137,172 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the read requests are scheduled fairly across the clients of the bookie.
+     *
+     * <p>When enabled, the regular read requests, i.e. not the high priority and long poll
+     * ones, are queued per client, identified by its authenticated principal or, if not
+     * authenticated, by its address. They are dispatched to the read thread pool with weighted
+     * fair queuing, so that a client sending a large backlog of reads doesn't delay the reads of
+     * the other clients.
+     *
+     * @return true if the read requests are scheduled fairly across the clients.
+     * @since 4.16
+     */
+    public boolean isFairReadSchedulingEnabled() {
+        return this.getBoolean(FAIR_READ_SCHEDULING_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the fair scheduling of the read requests across the clients.
+     *
+     * @param enabled
+     *          whether to schedule the read requests fairly across the clients.
+     * @return server configuration.
+     * @since 4.16
+     */
+    public ServerConfiguration setFairReadSchedulingEnabled(boolean enabled) {
+        this.setProperty(FAIR_READ_SCHEDULING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max number of read requests dispatched to the read thread pool by the fair
+     * scheduler and not completed yet. The other requests wait in the queues of their clients.
+     *
+     * <p>Default is 0, which means twice the number of read worker threads.
+     *
+     * @return the max number of in flight read requests.
+     * @since 4.16
+     */
+    public int getFairReadMaxInFlightRequests() {
+        return this.getInt(FAIR_READ_MAX_IN_FLIGHT_REQUESTS, 0);
+    }
+
+    /**
+     * Set the max number of read requests dispatched to the read thread pool by the fair
+     * scheduler and not completed yet.
+     *
+     * @param maxInFlightRequests
+     *          max number of in flight read requests, 0 for twice the number of read worker threads.
+     * @return server configuration.
+     * @since 4.16
+     */
+    public ServerConfiguration setFairReadMaxInFlightRequests(int maxInFlightRequests) {
+        this.setProperty(FAIR_READ_MAX_IN_FLIGHT_REQUESTS, maxInFlightRequests);
+        return this;
+    }
+
+    /**
+     * Get the max number of read requests of a single client waiting to be dispatched by the fair
+     * scheduler. The read requests received beyond this limit are rejected with a too many requests
+     * error, so that the client retries them on another bookie.
+     *
+     * <p>Default is 10000.
+     *
+     * @return the max number of queued read requests per client.
+     * @since 4.16
+     */
+    public int getFairReadMaxQueuedRequestsPerClient() {
+        return this.getInt(FAIR_READ_MAX_QUEUED_REQUESTS_PER_CLIENT, 10000);
+    }
+
+    /**
+     * Set the max number of read requests of a single client waiting to be dispatched by the fair
+     * scheduler.
+     *
+     * @param maxQueuedRequests
+     *          max number of queued read requests per client.
+     * @return server configuration.
+     * @since 4.16
+     */
+    public ServerConfiguration setFairReadMaxQueuedRequestsPerClient(int maxQueuedRequests) {
+        this.setProperty(FAIR_READ_MAX_QUEUED_REQUESTS_PER_CLIENT, maxQueuedRequests);
+        return this;
+    }
+
+    /**
+     * Get the weights of the clients in the fair scheduling of the read requests, as a list of
+     * {@code client:weight} pairs, where the client is a principal name or an address. While the
+     * read thread pool is saturated, the clients get a share of the dispatched read requests
+     * proportional to their weight.
+     *
+     * <p>The clients which are not listed have a weight of 1.
+     *
+     * @return the weights of the clients.
+     * @since 4.16
+     */
+    public String[] getFairReadClientWeights() {
+        return this.getStringArray(FAIR_READ_CLIENT_WEIGHTS);
+    }
+
+    /**
+     * Set the weights of the clients in the fair scheduling of the read requests.
+     *
+     * @param clientWeights
+     *          list of {@code client:weight} pairs.
+     * @return server configuration.
+     * @since 4.16
+     */
+    public ServerConfiguration setFairReadClientWeights(String... clientWeights) {
+        this.setProperty(FAIR_READ_CLIENT_WEIGHTS, clientWeights);
+        return this;
+    }
+
+    /**
+     * Get the max rate of read requests dispatched for each client by the fair scheduler, in
+     * requests per second. A client exceeding it keeps its read requests queued until its quota
+     * is refilled.
+     *
+     * <p>Default is 0, the request rate is not limited.
+     *
+     * @return the read request rate quota of each client.
+     * @since 4.16
+     */
+    public int getClientReadRequestRateQuota() {
+        return this.getInt(CLIENT_READ_REQUEST_RATE_QUOTA, 0);
+    }
+
+    /**
+     * Set the max rate of read requests dispatched for each client by the fair scheduler.
+     *
+     * @param requestsPerSecond
+     *          read request rate quota of each client, 0 for unlimited.
+     * @return server configuration.
+     * @since 4.16
+     */
+    public ServerConfiguration setClientReadRequestRateQuota(int requestsPerSecond) {
+        this.setProperty(CLIENT_READ_REQUEST_RATE_QUOTA, requestsPerSecond);
+        return this;
+    }
+
+    /**
+     * Get the max rate of bytes read for each client by the fair scheduler, in bytes per second.
+     * The size of a read is only known once it completed, so a client exceeding its quota keeps
+     * its next read requests queued until the excess is paid back.
+     *
+     * <p>Default is 0, the byte rate is not limited.
+     *
+     * @return the read byte rate quota of each client.
+     * @since 4.16
+     */
+    public long getClientReadByteRateQuota() {
+        return this.getLong(CLIENT_READ_BYTE_RATE_QUOTA, 0);
+    }
+
+    /**
+     * Set the max rate of bytes read for each client by the fair scheduler.
+     *
+     * @param bytesPerSecond
+     *          read byte rate quota of each client, 0 for unlimited.
+     * @return server configuration.
+     * @since 4.16
+     */
+    public ServerConfiguration setClientReadByteRateQuota(long bytesPerSecond) {
+        this.setProperty(CLIENT_READ_BYTE_RATE_QUOTA, bytesPerSecond);
+        return this;
+    }
+
     /**
      * Configures action in case if server timed out sending response to the client.
      * true == close the channel and drop response
@@ -1084,6 +1357,34 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the max number of bytes of the responses written by the bookie and not flushed to the
+     * clients yet, across all the connections.
+     *
+     * <p>Once the limit is exceeded, the bookie stops reading requests from the connections which
+     * write responses, until the memory used by the pending responses goes back below 3/4 of the
+     * limit.
+     *
+     * @return max memory of the pending responses, in bytes. Default is 0, unlimited.
+     * @since 4.16
+     */
+    public long getMaxResponseMemoryBytes() {
+        return getLong(MAX_RESPONSE_MEMORY_BYTES, 0L);
+    }
+
+    /**
+     * Set the max number of bytes of the responses written by the bookie and not flushed to the
+     * clients yet, across all the connections.
+     *
+     * @param maxResponseMemoryBytes max memory of the pending responses, in bytes, 0 for unlimited
+     * @return server configuration
+     * @since 4.16
+     */
+    public ServerConfiguration setMaxResponseMemoryBytes(long maxResponseMemoryBytes) {
+        setProperty(MAX_RESPONSE_MEMORY_BYTES, maxResponseMemoryBytes);
+        return this;
+    }
+
     /**
      * Get bookie port that bookie server listen on.
      *
@@ -2679,6 +2980,114 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getLong(AUDITOR_LEDGER_VERIFICATION_PERCENTAGE, 0);
     }
 
+    /**
+     * Set the number of ledgers checked in parallel by the checkAllLedgers and the replicas check
+     * of the auditor.
+     *
+     * @param parallelism the number of ledgers checked in parallel
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setAuditorLedgerCheckParallelism(int parallelism) {
+        setProperty(AUDITOR_LEDGER_CHECK_PARALLELISM, parallelism);
+        return this;
+    }
+
+    /**
+     * Get the number of ledgers checked in parallel by the checks of the auditor.
+     * @see #setAuditorLedgerCheckParallelism(int)
+     * @return the number of ledgers checked in parallel. Default is 100.
+     */
+    public int getAuditorLedgerCheckParallelism() {
+        return getInt(AUDITOR_LEDGER_CHECK_PARALLELISM, 100);
+    }
+
+    /**
+     * Set whether the checkAllLedgers and the replicas check of the auditor record their progress,
+     * so that an interrupted check resumes after the last ledger checked instead of starting over.
+     *
+     * @param enabled whether the checks record their progress
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setAuditorLedgerCheckCheckpointEnabled(boolean enabled) {
+        setProperty(AUDITOR_LEDGER_CHECK_CHECKPOINT_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get whether the checks of the auditor record their progress.
+     * @see #setAuditorLedgerCheckCheckpointEnabled(boolean)
+     * @return whether the checks record their progress. Default is true.
+     */
+    public boolean isAuditorLedgerCheckCheckpointEnabled() {
+        return getBoolean(AUDITOR_LEDGER_CHECK_CHECKPOINT_ENABLED, true);
+    }
+
+    /**
+     * Set whether the auditor keeps the index of the bookies and their ledgers up to date, by
+     * watching the metadata of the ledgers, instead of reading the metadata of all the ledgers for
+     * each audit.
+     *
+     * @param enabled whether the index is kept up to date
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setAuditorIncrementalBookieLedgerIndexEnabled(boolean enabled) {
+        setProperty(AUDITOR_INCREMENTAL_BOOKIE_LEDGER_INDEX_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get whether the auditor keeps the index of the bookies and their ledgers up to date.
+     * @see #setAuditorIncrementalBookieLedgerIndexEnabled(boolean)
+     * @return whether the index is kept up to date. Default is false.
+     */
+    public boolean isAuditorIncrementalBookieLedgerIndexEnabled() {
+        return getBoolean(AUDITOR_INCREMENTAL_BOOKIE_LEDGER_INDEX_ENABLED, false);
+    }
+
+    /**
+     * Set the interval, in seconds, at which the auditor reconciles its index of the bookies and their
+     * ledgers with the ledgers listed. The ledgers created since the last audit are indexed before
+     * each audit regardless.
+     *
+     * @param interval the interval in seconds
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setAuditorBookieLedgerIndexReconcileInterval(long interval) {
+        setProperty(AUDITOR_BOOKIE_LEDGER_INDEX_RECONCILE_INTERVAL, interval);
+        return this;
+    }
+
+    /**
+     * Get the interval, in seconds, at which the auditor reconciles its index of the bookies and
+     * their ledgers.
+     * @see #setAuditorBookieLedgerIndexReconcileInterval(long)
+     * @return the interval in seconds. Default is 3600.
+     */
+    public long getAuditorBookieLedgerIndexReconcileInterval() {
+        return getLong(AUDITOR_BOOKIE_LEDGER_INDEX_RECONCILE_INTERVAL, 3600);
+    }
+
+    /**
+     * Set the local file the auditor saves its index of the bookies and their ledgers to, so that
+     * the index is available as soon as the auditor restarts.
+     *
+     * @param path the path of the snapshot file, or empty to not save the index
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setAuditorBookieLedgerIndexSnapshotPath(String path) {
+        setProperty(AUDITOR_BOOKIE_LEDGER_INDEX_SNAPSHOT_PATH, path);
+        return this;
+    }
+
+    /**
+     * Get the local file the auditor saves its index of the bookies and their ledgers to.
+     * @see #setAuditorBookieLedgerIndexSnapshotPath(String)
+     * @return the path of the snapshot file. Default is empty, the index is not saved.
+     */
+    public String getAuditorBookieLedgerIndexSnapshotPath() {
+        return getString(AUDITOR_BOOKIE_LEDGER_INDEX_SNAPSHOT_PATH, "");
+    }
+
     /**
      * Sets that whether the auto-recovery service can start along with Bookie
      * server itself or not.
@@ -2737,6 +3146,30 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         setProperty(RW_REREPLICATE_BACKOFF_MS, backoffMs);
     }
 
+    /**
+     * Get the max number of ledgers that the replication worker replicates at the same time.
+     *
+     * @return max number of ledgers replicated concurrently
+     */
+    public int getRereplicationConcurrentLedgers() {
+        return getInt(REREPLICATION_CONCURRENT_LEDGERS, 1);
+    }
+
+    /**
+     * Set the max number of ledgers that the replication worker replicates at the same time.
+     *
+     * <p>With more than 1, the replication worker keeps acquiring under replicated ledgers and
+     * replicates each of them on its own thread. The data copied by all the ledgers is bounded
+     * by {@link #getRereplicationMaxInFlightBytes()} and {@link #getReplicationRateByBytes()}.
+     *
+     * @param concurrentLedgers max number of ledgers replicated concurrently
+     * @return server configuration
+     */
+    public ServerConfiguration setRereplicationConcurrentLedgers(int concurrentLedgers) {
+        setProperty(REREPLICATION_CONCURRENT_LEDGERS, concurrentLedgers);
+        return this;
+    }
+
     /**
      * Sets that whether force start a bookie in readonly mode.
      *
@@ -2878,6 +3311,117 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the entry logs are compacted continuously, in small time slices, instead of
+     * in periodic minor and major compactions.
+     *
+     * <p>The incremental compaction picks first the entry logs which reclaim the most space
+     * for the least disk I/O, and shares a disk bandwidth budget across all the ledger
+     * directories, which is reduced when the latency of the read requests increases.
+     *
+     * @return true if incremental compaction is enabled
+     */
+    public boolean isIncrementalCompactionEnabled() {
+        return getBoolean(INCREMENTAL_COMPACTION_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the incremental compaction.
+     *
+     * @param enabled whether to enable incremental compaction
+     * @return server configuration
+     */
+    public ServerConfiguration setIncrementalCompactionEnabled(boolean enabled) {
+        setProperty(INCREMENTAL_COMPACTION_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the threshold of the incremental compaction. Entry log files whose remaining
+     * size percentage is below this threshold are compacted. Default is 0.5.
+     *
+     * @return threshold of incremental compaction
+     */
+    public double getIncrementalCompactionThreshold() {
+        return getDouble(INCREMENTAL_COMPACTION_THRESHOLD, 0.5f);
+    }
+
+    /**
+     * Set the threshold of the incremental compaction.
+     *
+     * @param threshold threshold of incremental compaction
+     * @return server configuration
+     */
+    public ServerConfiguration setIncrementalCompactionThreshold(double threshold) {
+        setProperty(INCREMENTAL_COMPACTION_THRESHOLD, threshold);
+        return this;
+    }
+
+    /**
+     * Get the length of a time slice of the incremental compaction, in milliseconds.
+     * No new entry log is picked for compaction after the slice is over, and the next
+     * slice starts after the same amount of time. Default is 1000.
+     *
+     * @return the length of a compaction slice in milliseconds
+     */
+    public long getIncrementalCompactionSliceMillis() {
+        return getLong(INCREMENTAL_COMPACTION_SLICE_MILLIS, 1000);
+    }
+
+    /**
+     * Set the length of a time slice of the incremental compaction, in milliseconds.
+     *
+     * @param sliceMillis length of a compaction slice
+     * @return server configuration
+     */
+    public ServerConfiguration setIncrementalCompactionSliceMillis(long sliceMillis) {
+        setProperty(INCREMENTAL_COMPACTION_SLICE_MILLIS, sliceMillis);
+        return this;
+    }
+
+    /**
+     * Get the maximum disk bandwidth used by the incremental compaction, in bytes of entries
+     * compacted per second, across all the ledger directories. Default is 32 MB/s.
+     *
+     * @return the maximum compaction bandwidth in bytes per second
+     */
+    public long getIncrementalCompactionMaxBytesPerSecond() {
+        return getLong(INCREMENTAL_COMPACTION_MAX_BYTES_PER_SECOND, 32 * 1024 * 1024);
+    }
+
+    /**
+     * Set the maximum disk bandwidth used by the incremental compaction.
+     *
+     * @param bytesPerSecond the maximum compaction bandwidth in bytes per second
+     * @return server configuration
+     */
+    public ServerConfiguration setIncrementalCompactionMaxBytesPerSecond(long bytesPerSecond) {
+        setProperty(INCREMENTAL_COMPACTION_MAX_BYTES_PER_SECOND, bytesPerSecond);
+        return this;
+    }
+
+    /**
+     * Get the target average latency of the read requests while the incremental compaction
+     * runs, in milliseconds. The compaction bandwidth is reduced while the read latency is
+     * above the target. If it is set to 0, the bandwidth is not adjusted. Default is 10.
+     *
+     * @return the target read latency in milliseconds
+     */
+    public long getIncrementalCompactionTargetReadLatencyMillis() {
+        return getLong(INCREMENTAL_COMPACTION_TARGET_READ_LATENCY_MILLIS, 10);
+    }
+
+    /**
+     * Set the target average latency of the read requests while the incremental compaction runs.
+     *
+     * @param latencyMillis the target read latency in milliseconds
+     * @return server configuration
+     */
+    public ServerConfiguration setIncrementalCompactionTargetReadLatencyMillis(long latencyMillis) {
+        setProperty(INCREMENTAL_COMPACTION_TARGET_READ_LATENCY_MILLIS, latencyMillis);
+        return this;
+    }
+
     /**
      * Should we remove pages from page cache after force write.
      *
@@ -3090,6 +3634,17 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
             throw new ConfigurationException("For persisiting explicitLac, journalFormatVersionToWrite should be >= 6"
                     + "and FileInfoFormatVersionToWrite should be >= 1");
         }
+        CompressionCodec.Type journalCompressionType = CompressionUtils.stringToType(getJournalCompressionCodec());
+        if (journalCompressionType == CompressionCodec.Type.UNKNOWN) {
+            throw new ConfigurationException("Unknown journal compression codec : " + getJournalCompressionCodec());
+        }
+        if (journalCompressionType != CompressionCodec.Type.NONE && getJournalFormatVersionToWrite() < 7) {
+            throw new ConfigurationException("For compressing the journal, journalFormatVersionToWrite should be >= 7");
+        }
+        if (getJournalWritePipelineDepth() < 0 || getJournalWritePipelineDepth() == 1) {
+            throw new ConfigurationException("Invalid journal write pipeline depth : " + getJournalWritePipelineDepth()
+                    + ", it should be 0 to disable the pipelined journal or 2 or more");
+        }
     }
 
     /**
@@ -3846,6 +4401,27 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getInt(IN_FLIGHT_READ_ENTRY_NUM_IN_LEDGER_CHECKER, -1);
     }
 
+    /**
+     * Set the max number of entries read in flight from each bookie when ledger checker.
+     *
+     * @param inFlightReadEntryNumPerBookie read entry number of in flight per bookie, -1 for unlimited
+     * @return server configuration
+     */
+    public ServerConfiguration setInFlightReadEntryNumPerBookieInLedgerChecker(int inFlightReadEntryNumPerBookie) {
+        setProperty(IN_FLIGHT_READ_ENTRY_NUM_PER_BOOKIE_IN_LEDGER_CHECKER, inFlightReadEntryNumPerBookie);
+        return this;
+    }
+
+    /**
+     * Get the max number of entries read in flight from each bookie when ledger checker.
+     * Default value is -1 which it is unlimited when ledger checker.
+     *
+     * @return read entry number of in flight per bookie.
+     */
+    public int getInFlightReadEntryNumPerBookieInLedgerChecker() {
+        return getInt(IN_FLIGHT_READ_ENTRY_NUM_PER_BOOKIE_IN_LEDGER_CHECKER, -1);
+    }
+
     /**
      * Enabled data integrity checker.
      * The data integrity checker checks that the bookie has all the entries which
@@ -22,8 +22,11 @@ import com.google.common.annotations.VisibleForTesting;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Optional;
 import java.util.Set;
@@ -59,6 +62,8 @@ import org.apache.zookeeper.AsyncCallback.VoidCallback;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooKeeper;
@@ -74,6 +79,10 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractZkLedgerManager.class);
 
+    // Max number of ledgers, and size of their metadata, written by a single multi, well below jute.maxbuffer
+    private static final int MAX_LEDGERS_PER_MULTI = 128;
+    private static final int MAX_BYTES_PER_MULTI = 512 * 1024;
+
     @VisibleForTesting
     static final int ZK_CONNECT_BACKOFF_MS = 200;
 
@@ -490,27 +499,151 @@ public abstract class AbstractZkLedgerManager implements LedgerManager, Watcher
             promise.completeExceptionally(new BKException.BKMetadataSerializationException(ioe));
             return promise;
         }
+        setLedgerMetadata(ledgerId, metadata, data, zv, promise);
+        return promise;
+    }
+
+    private void setLedgerMetadata(long ledgerId, LedgerMetadata metadata, byte[] data, LongVersion currentVersion,
+                                   CompletableFuture<Versioned<LedgerMetadata>> promise) {
         zk.setData(getLedgerPath(ledgerId),
-                   data, (int) zv.getLongVersion(),
+                   data, (int) currentVersion.getLongVersion(),
                    new StatCallback() {
             @Override
             public void processResult(int rc, String path, Object ctx, Stat stat) {
-                if (KeeperException.Code.BADVERSION.intValue() == rc) {
-                    promise.completeExceptionally(new BKException.BKMetadataVersionException());
-                } else if (KeeperException.Code.OK.intValue() == rc) {
-                    // update metadata version
-                    promise.complete(new Versioned<>(metadata, new LongVersion(stat.getVersion())));
-                } else if (KeeperException.Code.NONODE.intValue() == rc) {
-                    LOG.warn("Ledger node does not exist in ZooKeeper: ledgerId={}", ledgerId);
-                    promise.completeExceptionally(new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
-                } else {
-                    LOG.warn("Conditional update ledger metadata failed: {}", KeeperException.Code.get(rc));
-                    promise.completeExceptionally(
-                            new BKException.ZKException(KeeperException.create(Code.get(rc), path)));
+                completeLedgerMetadataWrite(rc, path, stat, ledgerId, metadata, promise);
+            }
+        }, null);
+    }
+
+    private static void completeLedgerMetadataWrite(int rc, String path, Stat stat, long ledgerId,
+                                                    LedgerMetadata metadata,
+                                                    CompletableFuture<Versioned<LedgerMetadata>> promise) {
+        if (KeeperException.Code.BADVERSION.intValue() == rc) {
+            promise.completeExceptionally(new BKException.BKMetadataVersionException());
+        } else if (KeeperException.Code.OK.intValue() == rc) {
+            // update metadata version
+            promise.complete(new Versioned<>(metadata, new LongVersion(stat.getVersion())));
+        } else if (KeeperException.Code.NONODE.intValue() == rc) {
+            LOG.warn("Ledger node does not exist in ZooKeeper: ledgerId={}", ledgerId);
+            promise.completeExceptionally(new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
+        } else {
+            LOG.warn("Conditional update ledger metadata failed: {}", KeeperException.Code.get(rc));
+            promise.completeExceptionally(
+                    new BKException.ZKException(KeeperException.create(Code.get(rc), path)));
+        }
+    }
+
+    /**
+     * Write ledger metadata of several ledgers, grouping the conditional updates of the ledgers in
+     * ZooKeeper multi operations.
+     *
+     * <p>A multi is atomic, so if the version of a ledger of a group changed, none of the ledgers of
+     * the group is written: the ledgers which failed the multi are completed with their own error,
+     * and the others are written one by one.
+     */
+    @Override
+    public Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> writeLedgerMetadataBatch(
+            Map<Long, Versioned<LedgerMetadata>> updates) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results = new LinkedHashMap<>();
+        List<LedgerMetadataWrite> group = new ArrayList<>();
+        int groupBytes = 0;
+        for (Map.Entry<Long, Versioned<LedgerMetadata>> update : updates.entrySet()) {
+            long ledgerId = update.getKey();
+            LedgerMetadata metadata = update.getValue().getValue();
+            Version currentVersion = update.getValue().getVersion();
+            CompletableFuture<Versioned<LedgerMetadata>> promise = new CompletableFuture<>();
+            results.put(ledgerId, promise);
+            if (!(currentVersion instanceof LongVersion)) {
+                promise.completeExceptionally(new BKException.BKMetadataVersionException());
+                continue;
+            }
+            final byte[] data;
+            try {
+                data = serDe.serialize(metadata);
+            } catch (IOException ioe) {
+                promise.completeExceptionally(new BKException.BKMetadataSerializationException(ioe));
+                continue;
+            }
+            if (!group.isEmpty()
+                    && (group.size() >= MAX_LEDGERS_PER_MULTI || groupBytes + data.length > MAX_BYTES_PER_MULTI)) {
+                multiSetLedgerMetadata(group);
+                group = new ArrayList<>();
+                groupBytes = 0;
+            }
+            group.add(new LedgerMetadataWrite(ledgerId, metadata, data, (LongVersion) currentVersion, promise));
+            groupBytes += data.length;
+        }
+        if (!group.isEmpty()) {
+            multiSetLedgerMetadata(group);
+        }
+        return results;
+    }
+
+    private void multiSetLedgerMetadata(List<LedgerMetadataWrite> writes) {
+        if (writes.size() == 1) {
+            writes.get(0).setOneByOne();
+            return;
+        }
+        List<Op> ops = new ArrayList<>(writes.size());
+        for (LedgerMetadataWrite write : writes) {
+            ops.add(Op.setData(getLedgerPath(write.ledgerId), write.data,
+                    (int) write.currentVersion.getLongVersion()));
+        }
+        zk.multi(ops, (rc, path, ctx, opResults) -> {
+            if (KeeperException.Code.OK.intValue() == rc) {
+                for (int i = 0; i < writes.size(); i++) {
+                    LedgerMetadataWrite write = writes.get(i);
+                    Stat stat = ((OpResult.SetDataResult) opResults.get(i)).getStat();
+                    completeLedgerMetadataWrite(rc, write.path(), stat, write.ledgerId, write.metadata,
+                            write.promise);
+                }
+            } else if (opResults == null || opResults.size() != writes.size()) {
+                // the multi was not applied, e.g. on connection loss
+                for (LedgerMetadataWrite write : writes) {
+                    completeLedgerMetadataWrite(rc, write.path(), null, write.ledgerId, write.metadata,
+                            write.promise);
+                }
+            } else {
+                // none of the ledgers was written, fail the ones which failed the multi and retry the others
+                for (int i = 0; i < writes.size(); i++) {
+                    LedgerMetadataWrite write = writes.get(i);
+                    int opRc = opResults.get(i) instanceof OpResult.ErrorResult
+                            ? ((OpResult.ErrorResult) opResults.get(i)).getErr() : KeeperException.Code.OK.intValue();
+                    if (KeeperException.Code.OK.intValue() == opRc
+                            || KeeperException.Code.RUNTIMEINCONSISTENCY.intValue() == opRc) {
+                        write.setOneByOne();
+                    } else {
+                        completeLedgerMetadataWrite(opRc, write.path(), null, write.ledgerId, write.metadata,
+                                write.promise);
+                    }
                 }
             }
         }, null);
-        return promise;
+    }
+
+    private class LedgerMetadataWrite {
+        final long ledgerId;
+        final LedgerMetadata metadata;
+        final byte[] data;
+        final LongVersion currentVersion;
+        final CompletableFuture<Versioned<LedgerMetadata>> promise;
+
+        LedgerMetadataWrite(long ledgerId, LedgerMetadata metadata, byte[] data, LongVersion currentVersion,
+                            CompletableFuture<Versioned<LedgerMetadata>> promise) {
+            this.ledgerId = ledgerId;
+            this.metadata = metadata;
+            this.data = data;
+            this.currentVersion = currentVersion;
+            this.promise = promise;
+        }
+
+        String path() {
+            return getLedgerPath(ledgerId);
+        }
+
+        void setOneByOne() {
+            setLedgerMetadata(ledgerId, metadata, data, currentVersion, promise);
+        }
     }
 
     /**
@@ -20,7 +20,10 @@ package org.apache.bookkeeper.meta;
 import com.google.common.annotations.VisibleForTesting;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
@@ -179,6 +182,48 @@ public class CleanupLedgerManager implements LedgerManager {
         }
     }
 
+    @Override
+    public Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> readLedgerMetadataBatch(
+            Collection<Long> ledgerIds) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                return closedPromises(ledgerIds);
+            }
+            Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> promises =
+                underlying.readLedgerMetadataBatch(ledgerIds);
+            promises.values().forEach(this::recordPromise);
+            return promises;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> writeLedgerMetadataBatch(
+            Map<Long, Versioned<LedgerMetadata>> updates) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                return closedPromises(updates.keySet());
+            }
+            Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> promises =
+                underlying.writeLedgerMetadataBatch(updates);
+            promises.values().forEach(this::recordPromise);
+            return promises;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    private Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> closedPromises(Collection<Long> ledgerIds) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> promises = new LinkedHashMap<>();
+        for (long ledgerId : ledgerIds) {
+            promises.put(ledgerId, closedPromise());
+        }
+        return promises;
+    }
+
     @Override
     public void asyncProcessLedgers(Processor<Long> processor,
                                     final AsyncCallback.VoidCallback finalCb, final Object context,
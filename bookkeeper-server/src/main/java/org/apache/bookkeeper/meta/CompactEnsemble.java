@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.apache.bookkeeper.net.BookieId;
+
+/**
+ * Ensemble of a segment of a ledger decoded from the compact metadata format.
+ *
+ * <p>The ensemble holds the indexes of its bookies in the bookies of the ledger, which are shared by
+ * all the ensembles of the ledger. A bookie id is only parsed the first time an ensemble containing
+ * it is accessed, so that the segments a reader never looks at cost no more than their indexes.
+ *
+ * <p>The ensemble is immutable.
+ */
+public final class CompactEnsemble extends AbstractList<BookieId> implements RandomAccess {
+
+    /**
+     * Bookies of a ledger, parsed on first access.
+     */
+    static final class Dictionary {
+        private final List<String> bookies;
+        // A bookie id is immutable, so concurrent readers parsing the same bookie is harmless
+        private final BookieId[] parsed;
+
+        Dictionary(List<String> bookies) {
+            this.bookies = bookies;
+            this.parsed = new BookieId[bookies.size()];
+        }
+
+        int size() {
+            return parsed.length;
+        }
+
+        BookieId get(int index) {
+            BookieId bookie = parsed[index];
+            if (bookie == null) {
+                bookie = BookieId.parse(bookies.get(index));
+                parsed[index] = bookie;
+            }
+            return bookie;
+        }
+    }
+
+    private final Dictionary dictionary;
+    private final int[] bookieIndexes;
+
+    CompactEnsemble(Dictionary dictionary, int[] bookieIndexes) {
+        this.dictionary = dictionary;
+        this.bookieIndexes = bookieIndexes;
+    }
+
+    @Override
+    public BookieId get(int index) {
+        return dictionary.get(bookieIndexes[index]);
+    }
+
+    @Override
+    public int size() {
+        return bookieIndexes.length;
+    }
+}
@@ -19,6 +19,9 @@ package org.apache.bookkeeper.meta;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -102,6 +105,53 @@ public interface LedgerManager extends Closeable {
     CompletableFuture<Versioned<LedgerMetadata>> writeLedgerMetadata(long ledgerId, LedgerMetadata metadata,
                                                                      Version currentVersion);
 
+    /**
+     * Read ledger metadata of several ledgers.
+     *
+     * <p>The reads are pipelined to the metadata store instead of waiting for the metadata of a
+     * ledger before reading the next one. The number of reads in flight is bounded by the number
+     * of ledgers of the batch.
+     *
+     * @param ledgerIds
+     *          Ledger Ids
+     * @return Future of the versioned metadata of each ledger, in the order of the ledger ids,
+     *         completed as {@link #readLedgerMetadata(long)}.
+     * @since 4.16
+     */
+    default Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> readLedgerMetadataBatch(
+            Collection<Long> ledgerIds) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results = new LinkedHashMap<>();
+        for (long ledgerId : ledgerIds) {
+            results.put(ledgerId, readLedgerMetadata(ledgerId));
+        }
+        return results;
+    }
+
+    /**
+     * Write ledger metadata of several ledgers.
+     *
+     * <p>The metadata of each ledger is written only if its version is still the expected one, as
+     * by {@link #writeLedgerMetadata(long, LedgerMetadata, Version)}. Metadata stores supporting
+     * multi-key conditional updates group the writes, which does not change the outcome for
+     * each ledger: a ledger whose version changed does not prevent the others from being written.
+     *
+     * @param updates
+     *          Ledger Metadata to write for each ledger id, with the version of the metadata we
+     *          expect to be overwriting
+     * @return Future of the newly written metadata of each ledger, in the order of the updates,
+     *         completed as {@link #writeLedgerMetadata(long, LedgerMetadata, Version)}.
+     * @since 4.16
+     */
+    default Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> writeLedgerMetadataBatch(
+            Map<Long, Versioned<LedgerMetadata>> updates) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results = new LinkedHashMap<>();
+        for (Map.Entry<Long, Versioned<LedgerMetadata>> update : updates.entrySet()) {
+            results.put(update.getKey(), writeLedgerMetadata(update.getKey(), update.getValue().getValue(),
+                    update.getValue().getVersion()));
+        }
+        return results;
+    }
+
     /**
      * Register the ledger metadata <i>listener</i> on <i>ledgerId</i>.
      *
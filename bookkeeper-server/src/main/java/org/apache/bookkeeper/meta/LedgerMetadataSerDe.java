@@ -36,6 +36,7 @@ import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -77,7 +78,15 @@ public class LedgerMetadataSerDe {
      */
     public static final int METADATA_FORMAT_VERSION_3 = 3;
 
-    public static final int MAXIMUM_METADATA_FORMAT_VERSION = METADATA_FORMAT_VERSION_3;
+    /**
+     * Protobuf based, serialized in binary format, with the bookies stored once and the ensembles
+     * stored as the bookies replaced by each ensemble change.
+     * Available from v4.16.x onwards, it has to be enabled explicitly with the ledger metadata format
+     * version of the client, as older clients cannot read it.
+     */
+    public static final int METADATA_FORMAT_VERSION_4 = 4;
+
+    public static final int MAXIMUM_METADATA_FORMAT_VERSION = METADATA_FORMAT_VERSION_4;
     public static final int CURRENT_METADATA_FORMAT_VERSION = METADATA_FORMAT_VERSION_3;
     private static final int LOWEST_COMPAT_METADATA_FORMAT_VERSION = METADATA_FORMAT_VERSION_1;
 
@@ -131,8 +140,9 @@ public class LedgerMetadataSerDe {
         int formatVersion = metadata.getMetadataFormatVersion();
         final byte[] serialized;
         switch (formatVersion) {
+        case METADATA_FORMAT_VERSION_4:
         case METADATA_FORMAT_VERSION_3:
-            serialized = serializeVersion3(metadata);
+            serialized = serializeBinary(metadata, formatVersion);
             break;
         case METADATA_FORMAT_VERSION_2:
             serialized = serializeVersion2(metadata);
@@ -155,9 +165,9 @@ public class LedgerMetadataSerDe {
         return serialized;
     }
 
-    private static byte[] serializeVersion3(LedgerMetadata metadata) throws IOException {
+    private static byte[] serializeBinary(LedgerMetadata metadata, int formatVersion) throws IOException {
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-            writeHeader(os, METADATA_FORMAT_VERSION_3);
+            writeHeader(os, formatVersion);
             LedgerMetadataFormat.Builder builder = LedgerMetadataFormat.newBuilder();
             builder.setQuorumSize(metadata.getWriteQuorumSize())
                 .setAckQuorumSize(metadata.getAckQuorumSize())
@@ -201,13 +211,17 @@ public class LedgerMetadataSerDe {
                 }
             }
 
-            for (Map.Entry<Long, ? extends List<BookieId>> entry : metadata.getAllEnsembles().entrySet()) {
-                LedgerMetadataFormat.Segment.Builder segmentBuilder = LedgerMetadataFormat.Segment.newBuilder();
-                segmentBuilder.setFirstEntryId(entry.getKey());
-                for (BookieId addr : entry.getValue()) {
-                    segmentBuilder.addEnsembleMember(addr.toString());
+            if (formatVersion == METADATA_FORMAT_VERSION_4) {
+                encodeCompactSegments(metadata, builder);
+            } else {
+                for (Map.Entry<Long, ? extends List<BookieId>> entry : metadata.getAllEnsembles().entrySet()) {
+                    LedgerMetadataFormat.Segment.Builder segmentBuilder = LedgerMetadataFormat.Segment.newBuilder();
+                    segmentBuilder.setFirstEntryId(entry.getKey());
+                    for (BookieId addr : entry.getValue()) {
+                        segmentBuilder.addEnsembleMember(addr.toString());
+                    }
+                    builder.addSegment(segmentBuilder.build());
                 }
-                builder.addSegment(segmentBuilder.build());
             }
 
             builder.setCToken(metadata.getCToken());
@@ -217,6 +231,49 @@ public class LedgerMetadataSerDe {
         }
     }
 
+    private static void encodeCompactSegments(LedgerMetadata metadata, LedgerMetadataFormat.Builder builder) {
+        Map<BookieId, Integer> bookieIndexes = new HashMap<>();
+        List<BookieId> previousEnsemble = null;
+        long previousFirstEntryId = 0;
+        for (Map.Entry<Long, ? extends List<BookieId>> entry : metadata.getAllEnsembles().entrySet()) {
+            List<BookieId> ensemble = entry.getValue();
+            LedgerMetadataFormat.CompactSegment.Builder segmentBuilder =
+                LedgerMetadataFormat.CompactSegment.newBuilder();
+            segmentBuilder.setFirstEntryIdDelta(entry.getKey() - previousFirstEntryId);
+
+            int numReplaced = 0;
+            if (previousEnsemble != null) {
+                for (int i = 0; i < ensemble.size(); i++) {
+                    if (!ensemble.get(i).equals(previousEnsemble.get(i))) {
+                        numReplaced++;
+                    }
+                }
+            }
+            // an empty list of positions stands for the whole ensemble
+            boolean wholeEnsemble = numReplaced == 0 || numReplaced == ensemble.size();
+            for (int i = 0; i < ensemble.size(); i++) {
+                BookieId bookie = ensemble.get(i);
+                if (!wholeEnsemble && bookie.equals(previousEnsemble.get(i))) {
+                    continue;
+                }
+                Integer bookieIndex = bookieIndexes.get(bookie);
+                if (bookieIndex == null) {
+                    bookieIndex = bookieIndexes.size();
+                    bookieIndexes.put(bookie, bookieIndex);
+                    builder.addBookie(bookie.toString());
+                }
+                if (!wholeEnsemble) {
+                    segmentBuilder.addEnsembleIndex(i);
+                }
+                segmentBuilder.addBookieIndex(bookieIndex);
+            }
+            builder.addCompactSegment(segmentBuilder.build());
+
+            previousEnsemble = ensemble;
+            previousFirstEntryId = entry.getKey();
+        }
+    }
+
     private static byte[] serializeVersion2(LedgerMetadata metadata) throws IOException {
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
             writeHeader(os, METADATA_FORMAT_VERSION_2);
@@ -356,8 +413,9 @@ public class LedgerMetadataSerDe {
             }
 
             switch (metadataFormatVersion) {
+            case METADATA_FORMAT_VERSION_4:
             case METADATA_FORMAT_VERSION_3:
-                return parseVersion3Config(ledgerId, is, metadataStoreCtime);
+                return parseBinaryConfig(ledgerId, is, metadataStoreCtime, metadataFormatVersion);
             case METADATA_FORMAT_VERSION_2:
                 return parseVersion2Config(ledgerId, is, metadataStoreCtime);
             case METADATA_FORMAT_VERSION_1:
@@ -365,17 +423,17 @@ public class LedgerMetadataSerDe {
             default:
                 throw new IOException(
                         String.format("Metadata version not compatible. Expected between %d and %d, but got %d",
-                                      LOWEST_COMPAT_METADATA_FORMAT_VERSION, CURRENT_METADATA_FORMAT_VERSION,
+                                      LOWEST_COMPAT_METADATA_FORMAT_VERSION, MAXIMUM_METADATA_FORMAT_VERSION,
                                       metadataFormatVersion));
             }
         }
     }
 
-    private static LedgerMetadata parseVersion3Config(long ledgerId, InputStream is, Optional<Long> metadataStoreCtime)
-            throws IOException {
+    private static LedgerMetadata parseBinaryConfig(long ledgerId, InputStream is, Optional<Long> metadataStoreCtime,
+                                                    int formatVersion) throws IOException {
         LedgerMetadataBuilder builder = LedgerMetadataBuilder.create()
                 .withId(ledgerId)
-                .withMetadataFormatVersion(METADATA_FORMAT_VERSION_3);
+                .withMetadataFormatVersion(formatVersion);
         LedgerMetadataFormat.Builder formatBuilder = LedgerMetadataFormat.newBuilder();
         formatBuilder.mergeDelimitedFrom(is);
         LedgerMetadataFormat data = formatBuilder.build();
@@ -440,6 +498,9 @@ public class LedgerMetadataSerDe {
             }
             builder.newEnsembleEntry(s.getFirstEntryId(), addrs);
         }
+        if (data.getCompactSegmentCount() > 0) {
+            decodeCompactSegments(data, builder);
+        }
 
         if (data.getCustomMetadataCount() > 0) {
             builder.withCustomMetadata(data.getCustomMetadataList().stream().collect(
@@ -452,6 +513,52 @@ public class LedgerMetadataSerDe {
         }
     }
 
+    /**
+     * Decode the compact segments, resolving the bookies replaced by each segment into the bookie
+     * indexes of its ensemble. The bookie ids are only parsed when an ensemble is accessed.
+     */
+    private static void decodeCompactSegments(LedgerMetadataFormat data, LedgerMetadataBuilder builder)
+            throws IOException {
+        CompactEnsemble.Dictionary dictionary = new CompactEnsemble.Dictionary(data.getBookieList());
+        int ensembleSize = data.getEnsembleSize();
+        int[] previousIndexes = null;
+        long firstEntryId = 0;
+        for (LedgerMetadataFormat.CompactSegment s : data.getCompactSegmentList()) {
+            firstEntryId += s.getFirstEntryIdDelta();
+            int[] indexes;
+            if (s.getEnsembleIndexCount() == 0) {
+                if (s.getBookieIndexCount() != ensembleSize) {
+                    throw new IOException("Segment at entry " + firstEntryId + " has " + s.getBookieIndexCount()
+                                          + " bookies, expected " + ensembleSize);
+                }
+                indexes = new int[ensembleSize];
+                for (int i = 0; i < ensembleSize; i++) {
+                    indexes[i] = s.getBookieIndex(i);
+                }
+            } else {
+                if (previousIndexes == null || s.getEnsembleIndexCount() != s.getBookieIndexCount()) {
+                    throw new IOException("Segment at entry " + firstEntryId + " has invalid replaced bookies");
+                }
+                indexes = previousIndexes.clone();
+                for (int i = 0; i < s.getEnsembleIndexCount(); i++) {
+                    int position = s.getEnsembleIndex(i);
+                    if (position < 0 || position >= ensembleSize) {
+                        throw new IOException("Segment at entry " + firstEntryId + " replaces invalid position "
+                                              + position);
+                    }
+                    indexes[position] = s.getBookieIndex(i);
+                }
+            }
+            for (int index : indexes) {
+                if (index < 0 || index >= dictionary.size()) {
+                    throw new IOException("Segment at entry " + firstEntryId + " refers to unknown bookie " + index);
+                }
+            }
+            builder.newEnsembleEntry(firstEntryId, new CompactEnsemble(dictionary, indexes));
+            previousIndexes = indexes;
+        }
+    }
+
     private static LedgerMetadata parseVersion1Config(long ledgerId, InputStream is) throws IOException {
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, UTF_8.name()))) {
             LedgerMetadataBuilder builder = LedgerMetadataBuilder.create()
@@ -236,6 +236,40 @@ public interface LedgerUnderreplicationManager extends AutoCloseable {
      */
     long getReplicasCheckCTime() throws ReplicationException.UnavailableException;
 
+    /**
+     * Setter for the last ledger checked by an unfinished CheckAllLedgers, so that the next
+     * execution resumes after it.
+     *
+     * @param lastCheckedLedgerId the last ledger checked, or -1 once the check is complete
+     * @throws ReplicationException.UnavailableException
+     */
+    void setCheckAllLedgersCheckpoint(long lastCheckedLedgerId) throws ReplicationException.UnavailableException;
+
+    /**
+     * Getter for the last ledger checked by an unfinished CheckAllLedgers.
+     *
+     * @return the last ledger checked, or -1 if the last execution is complete
+     * @throws ReplicationException.UnavailableException
+     */
+    long getCheckAllLedgersCheckpoint() throws ReplicationException.UnavailableException;
+
+    /**
+     * Setter for the last ledger checked by an unfinished ReplicasCheck, so that the next
+     * execution resumes after it.
+     *
+     * @param lastCheckedLedgerId the last ledger checked, or -1 once the check is complete
+     * @throws ReplicationException.UnavailableException
+     */
+    void setReplicasCheckCheckpoint(long lastCheckedLedgerId) throws ReplicationException.UnavailableException;
+
+    /**
+     * Getter for the last ledger checked by an unfinished ReplicasCheck.
+     *
+     * @return the last ledger checked, or -1 if the last execution is complete
+     * @throws ReplicationException.UnavailableException
+     */
+    long getReplicasCheckCheckpoint() throws ReplicationException.UnavailableException;
+
     /**
      * Receive notification asynchronously when the num of under-replicated ledgers  Changed.
      *
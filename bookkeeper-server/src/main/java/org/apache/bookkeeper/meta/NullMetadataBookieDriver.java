@@ -388,6 +388,18 @@ public class NullMetadataBookieDriver implements MetadataBookieDriver {
             return Long.MAX_VALUE;
         }
         @Override
+        public void setCheckAllLedgersCheckpoint(long lastCheckedLedgerId) {}
+        @Override
+        public long getCheckAllLedgersCheckpoint() {
+            return -1;
+        }
+        @Override
+        public void setReplicasCheckCheckpoint(long lastCheckedLedgerId) {}
+        @Override
+        public long getReplicasCheckCheckpoint() {
+            return -1;
+        }
+        @Override
         public void notifyLostBookieRecoveryDelayChanged(GenericCallback<Void> cb) {}
         @Override
         public String getReplicationWorkerIdRereplicatingLedger(long ledgerId)
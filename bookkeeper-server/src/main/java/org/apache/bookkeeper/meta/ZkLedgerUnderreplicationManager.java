@@ -47,6 +47,7 @@ import org.apache.bookkeeper.conf.AbstractConfiguration;
 import org.apache.bookkeeper.meta.zk.ZKMetadataDriverBase;
 import org.apache.bookkeeper.net.DNS;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
+import org.apache.bookkeeper.proto.DataFormats.AuditorCheckCheckpointFormat;
 import org.apache.bookkeeper.proto.DataFormats.CheckAllLedgersFormat;
 import org.apache.bookkeeper.proto.DataFormats.LedgerRereplicationLayoutFormat;
 import org.apache.bookkeeper.proto.DataFormats.LockDataFormat;
@@ -124,6 +125,8 @@ public class ZkLedgerUnderreplicationManager implements LedgerUnderreplicationMa
     private final String checkAllLedgersCtimeZnode;
     private final String placementPolicyCheckCtimeZnode;
     private final String replicasCheckCtimeZnode;
+    private final String checkAllLedgersCheckpointZnode;
+    private final String replicasCheckCheckpointZnode;
     private final ZooKeeper zkc;
     private final SubTreeCache subTreeCache;
 
@@ -140,6 +143,8 @@ public class ZkLedgerUnderreplicationManager implements LedgerUnderreplicationMa
         checkAllLedgersCtimeZnode = basePath + '/' + BookKeeperConstants.CHECK_ALL_LEDGERS_CTIME;
         placementPolicyCheckCtimeZnode = basePath + '/' + BookKeeperConstants.PLACEMENT_POLICY_CHECK_CTIME;
         replicasCheckCtimeZnode = basePath + '/' + BookKeeperConstants.REPLICAS_CHECK_CTIME;
+        checkAllLedgersCheckpointZnode = basePath + '/' + BookKeeperConstants.CHECK_ALL_LEDGERS_CHECKPOINT;
+        replicasCheckCheckpointZnode = basePath + '/' + BookKeeperConstants.REPLICAS_CHECK_CHECKPOINT;
         idExtractionPattern = Pattern.compile("urL(\\d+)$");
         this.zkc = zkc;
         this.subTreeCache = new SubTreeCache(new SubTreeCache.TreeProvider() {
@@ -1078,4 +1083,64 @@ public class ZkLedgerUnderreplicationManager implements LedgerUnderreplicationMa
             throw new ReplicationException.UnavailableException("Error while parsing ZK protobuf binary data", ipbe);
         }
     }
+
+    @Override
+    public void setCheckAllLedgersCheckpoint(long lastCheckedLedgerId) throws UnavailableException {
+        setCheckpoint(checkAllLedgersCheckpointZnode, lastCheckedLedgerId);
+    }
+
+    @Override
+    public long getCheckAllLedgersCheckpoint() throws UnavailableException {
+        return getCheckpoint(checkAllLedgersCheckpointZnode);
+    }
+
+    @Override
+    public void setReplicasCheckCheckpoint(long lastCheckedLedgerId) throws UnavailableException {
+        setCheckpoint(replicasCheckCheckpointZnode, lastCheckedLedgerId);
+    }
+
+    @Override
+    public long getReplicasCheckCheckpoint() throws UnavailableException {
+        return getCheckpoint(replicasCheckCheckpointZnode);
+    }
+
+    private void setCheckpoint(String checkpointZnode, long lastCheckedLedgerId) throws UnavailableException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("setCheckpoint {} : {}", checkpointZnode, lastCheckedLedgerId);
+        }
+        try {
+            List<ACL> zkAcls = ZkUtils.getACLs(conf);
+            AuditorCheckCheckpointFormat.Builder builder = AuditorCheckCheckpointFormat.newBuilder();
+            builder.setLastCheckedLedgerId(lastCheckedLedgerId);
+            builder.setCheckpointCTime(System.currentTimeMillis());
+            byte[] checkpointFormatByteArray = builder.build().toByteArray();
+            if (zkc.exists(checkpointZnode, false) != null) {
+                zkc.setData(checkpointZnode, checkpointFormatByteArray, -1);
+            } else {
+                zkc.create(checkpointZnode, checkpointFormatByteArray, zkAcls, CreateMode.PERSISTENT);
+            }
+        } catch (KeeperException ke) {
+            throw new ReplicationException.UnavailableException("Error contacting zookeeper", ke);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ReplicationException.UnavailableException("Interrupted while contacting zookeeper", ie);
+        }
+    }
+
+    private long getCheckpoint(String checkpointZnode) throws UnavailableException {
+        try {
+            byte[] data = zkc.getData(checkpointZnode, false, null);
+            AuditorCheckCheckpointFormat checkpointFormat = AuditorCheckCheckpointFormat.parseFrom(data);
+            return checkpointFormat.hasLastCheckedLedgerId() ? checkpointFormat.getLastCheckedLedgerId() : -1;
+        } catch (KeeperException.NoNodeException ne) {
+            return -1;
+        } catch (KeeperException ke) {
+            throw new ReplicationException.UnavailableException("Error contacting zookeeper", ke);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ReplicationException.UnavailableException("Interrupted while contacting zookeeper", ie);
+        } catch (InvalidProtocolBufferException ipbe) {
+            throw new ReplicationException.UnavailableException("Error while parsing ZK protobuf binary data", ipbe);
+        }
+    }
 }
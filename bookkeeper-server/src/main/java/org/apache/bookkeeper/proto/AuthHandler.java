@@ -118,6 +118,11 @@ class AuthHandler {
                             new BookieProtocol.ReadResponse(
                                     req.getProtocolVersion(), BookieProtocol.EUA,
                                     req.getLedgerId(), req.getEntryId()));
+                } else if (req.getOpCode() == BookieProtocol.BATCH_READ_ENTRY) {
+                    ctx.channel().writeAndFlush(
+                            new BookieProtocol.BatchedReadResponse(
+                                    req.getProtocolVersion(), BookieProtocol.EUA,
+                                    req.getLedgerId(), req.getEntryId()));
                 } else {
                     ctx.channel().close();
                 }
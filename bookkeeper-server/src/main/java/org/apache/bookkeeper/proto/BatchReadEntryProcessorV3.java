@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.common.base.Stopwatch;
+import com.google.protobuf.UnsafeByteOperations;
+import io.netty.channel.Channel;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes a v3 batch read request, returning a range of consecutive entries in a single response.
+ */
+class BatchReadEntryProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchReadEntryProcessorV3.class);
+
+    // frame length, header, status and the fields of the batch read response, with their tags
+    static final int RESPONSE_HEADER_SIZE = 128;
+    // tag and length of each entry in the response
+    static final int ENTRY_OVERHEAD_SIZE = 1 + 5;
+
+    private final BatchReadRequest batchReadRequest;
+    private final long ledgerId;
+    private final long startEntryId;
+    private final long maxBatchReadSize;
+    // entries referred to by the response, released once it is written
+    private ByteBufList entries;
+
+    public BatchReadEntryProcessorV3(Request request,
+                                     Channel channel,
+                                     BookieRequestProcessor requestProcessor,
+                                     long maxBatchReadSize) {
+        super(request, channel, requestProcessor);
+        requestProcessor.onReadRequestStart(channel);
+
+        this.batchReadRequest = request.getBatchReadRequest();
+        this.ledgerId = batchReadRequest.getLedgerId();
+        this.startEntryId = batchReadRequest.getStartEntryId();
+        this.maxBatchReadSize = maxBatchReadSize;
+    }
+
+    private BatchReadResponse getBatchReadResponse() {
+        final Stopwatch startTimeSw = Stopwatch.createStarted();
+
+        final BatchReadResponse.Builder readResponse = BatchReadResponse.newBuilder()
+            .setLedgerId(ledgerId)
+            .setStartEntryId(startEntryId);
+        ByteBufList entries = null;
+        try {
+            long maxSize = Math.min(batchReadRequest.getMaxSize(), maxBatchReadSize - RESPONSE_HEADER_SIZE);
+            entries = BatchedReadEntryProcessor.readEntries(requestProcessor.getBookie(), ledgerId, startEntryId,
+                    batchReadRequest.getMaxCount(), maxSize, ENTRY_OVERHEAD_SIZE);
+            for (int i = 0; i < entries.size(); i++) {
+                // the response refers to the entries, which are released once it is written
+                readResponse.addBody(UnsafeByteOperations.unsafeWrap(entries.getBuffer(i).nioBuffer()));
+            }
+            readResponse.setMaxLAC(requestProcessor.getBookie().readLastAddConfirmed(ledgerId));
+            BatchReadResponse response = buildResponse(readResponse, StatusCode.EOK, startTimeSw);
+            this.entries = entries;
+            entries = null;
+            return response;
+        } catch (Bookie.NoLedgerException e) {
+            LOG.info("No ledger found while batch reading entry: {} from ledger: {}", startEntryId, ledgerId);
+            return buildResponse(readResponse, StatusCode.ENOLEDGER, startTimeSw);
+        } catch (Bookie.NoEntryException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No entry found while batch reading entry: {} from ledger: {}", startEntryId, ledgerId);
+            }
+            return buildResponse(readResponse, StatusCode.ENOENTRY, startTimeSw);
+        } catch (IOException e) {
+            LOG.error("IOException while batch reading entry: {} from ledger {} ", startEntryId, ledgerId, e);
+            return buildResponse(readResponse, StatusCode.EIO, startTimeSw);
+        } catch (BookieException.DataUnknownException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Ledger has unknown state for entry: {} from ledger {}", startEntryId, ledgerId);
+            }
+            return buildResponse(readResponse, StatusCode.EUNKNOWNLEDGERSTATE, startTimeSw);
+        } catch (BookieException e) {
+            LOG.error(
+                "Unauthorized access to ledger:{} while batch reading entry:{} in request from address: {}",
+                    ledgerId, startEntryId, channel.remoteAddress());
+            return buildResponse(readResponse, StatusCode.EUA, startTimeSw);
+        } finally {
+            if (null != entries) {
+                entries.release();
+            }
+        }
+    }
+
+    @Override
+    public void safeRun() {
+        requestProcessor.getRequestStats().getReadEntrySchedulingDelayStats().registerSuccessfulEvent(
+            MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+
+        if (!isVersionCompatible()) {
+            BatchReadResponse readResponse = BatchReadResponse.newBuilder()
+                .setLedgerId(ledgerId)
+                .setStartEntryId(startEntryId)
+                .setStatus(StatusCode.EBADVERSION)
+                .build();
+            sendResponse(readResponse);
+            return;
+        }
+
+        sendResponse(getBatchReadResponse());
+    }
+
+    private BatchReadResponse buildResponse(
+            BatchReadResponse.Builder readResponseBuilder,
+            StatusCode statusCode,
+            Stopwatch startTimeSw) {
+        long elapsedNanos = startTimeSw.elapsed(TimeUnit.NANOSECONDS);
+        if (StatusCode.EOK == statusCode) {
+            requestProcessor.getRequestStats().getBatchReadEntryStats()
+                    .registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        } else {
+            requestProcessor.getRequestStats().getBatchReadEntryStats()
+                    .registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+        readResponseBuilder.setStatus(statusCode);
+        return readResponseBuilder.build();
+    }
+
+    void sendResponse(BatchReadResponse readResponse) {
+        long bytes = 0;
+        for (int i = 0; i < readResponse.getBodyCount(); i++) {
+            bytes += readResponse.getBody(i).size();
+        }
+        requestProcessor.onReadBytes(channel, bytes);
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(readResponse.getStatus())
+                .setBatchReadResponse(readResponse);
+        ByteBufList toRelease = entries;
+        entries = null;
+        sendResponse(response.getStatus(),
+                     response.build(),
+                     requestProcessor.getRequestStats().getBatchReadRequestStats(),
+                     toRelease);
+        requestProcessor.onReadRequestFinish();
+    }
+
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
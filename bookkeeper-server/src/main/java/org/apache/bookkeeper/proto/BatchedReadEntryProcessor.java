@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.util.Recycler;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookieProtocol.BatchedReadRequest;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes a v2 batch read request, returning a range of consecutive entries in a single response.
+ */
+class BatchedReadEntryProcessor extends PacketProcessorBase<BatchedReadRequest> {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedReadEntryProcessor.class);
+
+    // frame length, packet header, error code, ledger id and start entry id
+    static final int RESPONSE_HEADER_SIZE = 4 + 4 + 4 + 8 + 8;
+    // length prefix of each entry in the response
+    static final int ENTRY_OVERHEAD_SIZE = 4;
+
+    private boolean throttleReadResponses;
+    private long maxBatchReadSize;
+
+    public static BatchedReadEntryProcessor create(BatchedReadRequest request,
+                                                   Channel channel,
+                                                   BookieRequestProcessor requestProcessor,
+                                                   boolean throttleReadResponses,
+                                                   long maxBatchReadSize) {
+        BatchedReadEntryProcessor rep = RECYCLER.get();
+        rep.init(request, channel, requestProcessor);
+        rep.throttleReadResponses = throttleReadResponses;
+        rep.maxBatchReadSize = maxBatchReadSize;
+        return rep;
+    }
+
+    /**
+     * Read up to {@code maxCount} consecutive entries starting at {@code startEntryId}.
+     *
+     * <p>The read stops at the first missing entry or when adding the next entry would make the
+     * total size exceed {@code maxSize}, each entry counting for its size plus {@code entryOverheadSize}
+     * bytes of framing. The first entry is always read, and any error reading it is propagated to the
+     * caller.
+     *
+     * @return the entries read, one buffer per entry.
+     */
+    static ByteBufList readEntries(Bookie bookie, long ledgerId, long startEntryId,
+                                   int maxCount, long maxSize, int entryOverheadSize)
+            throws IOException, BookieException {
+        ByteBufList entries = ByteBufList.get();
+        long totalSize = 0;
+        try {
+            for (long entryId = startEntryId; entries.size() < maxCount; entryId++) {
+                ByteBuf entry;
+                try {
+                    entry = bookie.readEntry(ledgerId, entryId);
+                } catch (Bookie.NoEntryException | Bookie.NoLedgerException e) {
+                    if (entries.size() == 0) {
+                        throw e;
+                    }
+                    break;
+                }
+                long entrySize = entry.readableBytes() + entryOverheadSize;
+                if (entries.size() > 0 && totalSize + entrySize > maxSize) {
+                    ReferenceCountUtil.release(entry);
+                    break;
+                }
+                entries.add(entry);
+                totalSize += entrySize;
+            }
+        } catch (IOException | BookieException | RuntimeException e) {
+            entries.release();
+            throw e;
+        }
+        return entries;
+    }
+
+    @Override
+    public void safeRun() {
+        if (!isVersionCompatible()) {
+            sendResponse(BookieProtocol.EBADVERSION,
+                         ResponseBuilder.buildErrorResponse(BookieProtocol.EBADVERSION, request),
+                         requestProcessor.getRequestStats().getBatchReadRequestStats());
+            recycle();
+            return;
+        }
+        processPacket();
+    }
+
+    @Override
+    protected void processPacket() {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received new batch read request: {}", request);
+        }
+        int errorCode = BookieProtocol.EOK;
+        long startTimeNanos = MathUtils.nowInNano();
+        ByteBufList data = null;
+        try {
+            long maxSize = Math.min(request.getMaxSize(), maxBatchReadSize - RESPONSE_HEADER_SIZE);
+            data = readEntries(requestProcessor.getBookie(), request.getLedgerId(), request.getEntryId(),
+                    request.getMaxCount(), maxSize, ENTRY_OVERHEAD_SIZE);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Batch read {} entries ({} bytes) for {}", data.size(), data.readableBytes(), request);
+            }
+        } catch (Bookie.NoLedgerException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.ENOLEDGER;
+        } catch (Bookie.NoEntryException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.ENOENTRY;
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.EIO;
+        } catch (BookieException.DataUnknownException e) {
+            LOG.error("Ledger {} is in an unknown state", request.getLedgerId(), e);
+            errorCode = BookieProtocol.EUNKNOWNLEDGERSTATE;
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger {}", request.getLedgerId(), e);
+            errorCode = BookieProtocol.EUA;
+        } catch (Throwable t) {
+            LOG.error("Unexpected exception batch reading at {}:{} : {}", request.getLedgerId(),
+                      request.getEntryId(), t.getMessage(), t);
+            errorCode = BookieProtocol.EBADREQ;
+        }
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Batch read entry rc = {} for {}", errorCode, request);
+        }
+        sendResponse(data, errorCode, startTimeNanos);
+    }
+
+    private void sendResponse(ByteBufList data, int errorCode, long startTimeNanos) {
+        final RequestStats stats = requestProcessor.getRequestStats();
+        final OpStatsLogger logger = stats.getBatchReadEntryStats();
+        BookieProtocol.Response response;
+        if (errorCode == BookieProtocol.EOK) {
+            logger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            requestProcessor.onReadBytes(channel, data.readableBytes());
+            response = ResponseBuilder.buildBatchedReadResponse(data, request);
+        } else {
+            if (data != null) {
+                ReferenceCountUtil.release(data);
+            }
+            logger.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            response = ResponseBuilder.buildErrorResponse(errorCode, request);
+        }
+
+        if (throttleReadResponses) {
+            sendResponseAndWait(errorCode, response, stats.getBatchReadRequestStats());
+        } else {
+            sendResponse(errorCode, response, stats.getBatchReadRequestStats());
+        }
+        recycle();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchedReadEntry(%d, %d, %d)", request.getLedgerId(), request.getEntryId(),
+                request.getMaxCount());
+    }
+
+    void recycle() {
+        super.reset();
+        this.recyclerHandle.recycle(this);
+    }
+
+    private final Recycler.Handle<BatchedReadEntryProcessor> recyclerHandle;
+
+    private BatchedReadEntryProcessor(Recycler.Handle<BatchedReadEntryProcessor> recyclerHandle) {
+        this.recyclerHandle = recyclerHandle;
+    }
+
+    private static final Recycler<BatchedReadEntryProcessor> RECYCLER = new Recycler<BatchedReadEntryProcessor>() {
+        @Override
+        protected BatchedReadEntryProcessor newObject(Recycler.Handle<BatchedReadEntryProcessor> handle) {
+            return new BatchedReadEntryProcessor(handle);
+        }
+    };
+}
@@ -26,6 +26,7 @@ import java.util.concurrent.CompletableFuture;
 
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
@@ -84,6 +85,21 @@ public interface BookieClient {
      */
     long getNumPendingRequests(BookieId address, long ledgerId);
 
+    /**
+     * Get the recent latency of the successful reads to a bookie, at the given quantile.
+     *
+     * <p>The latencies are tracked with a decaying histogram, so that the estimate follows
+     * the current load of the bookie.
+     *
+     * @param address the address of the bookie
+     * @param quantile the quantile, between 0 and 1
+     * @return the latency in nanoseconds, or -1 if there were not enough recent reads
+     *         to the bookie
+     */
+    default long getReadLatency(BookieId address, double quantile) {
+        return -1L;
+    }
+
     /**
      * Send a force request to the server. When complete all entries which have
      * been written for {@code ledgerId} to this bookie will be persisted on disk.
@@ -180,6 +196,26 @@ public interface BookieClient {
                    ReadEntryCallback cb, Object ctx, int flags, byte[] masterKey,
                    boolean allowFastFail);
 
+    /**
+     * Read a range of consecutive entries from bookie at address {@code address} in a single request.
+     *
+     * <p>The bookie returns at most {@code maxCount} entries starting at {@code startEntryId}, stopping
+     * earlier if the total response would exceed {@code maxSize} bytes or if an entry is missing. At least
+     * one entry is returned on success.
+     *
+     * @param address address of the bookie to read from
+     * @param ledgerId id of the ledger the entries belong to
+     * @param startEntryId id of the first entry to read
+     * @param maxCount maximum number of entries to read
+     * @param maxSize maximum total size, in bytes, of the entries returned
+     * @param cb the callback notified when the request completes
+     * @param ctx a context object passed to the callback on completion
+     * @param flags a bit mask of flags from BookieProtocol.FLAG_*
+     *              {@link org.apache.bookkeeper.proto.BookieProtocol}
+     */
+    void batchReadEntries(BookieId address, long ledgerId, long startEntryId, int maxCount, long maxSize,
+                          BatchedReadEntryCallback cb, Object ctx, int flags);
+
     /**
      * Send a long poll request to bookie, waiting for the last add confirmed
      * to be updated. The client can also request that the full entry is returned
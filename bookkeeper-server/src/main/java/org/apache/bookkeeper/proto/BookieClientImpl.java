@@ -57,6 +57,7 @@ import org.apache.bookkeeper.common.util.SafeRunnable;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.FutureGetListOfEntriesOfLedger;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
@@ -184,6 +185,13 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
     }
 
+    @Override
+    public long getReadLatency(BookieId address, double quantile) {
+        // Do not connect to the bookie just to learn that there is no latency to report
+        PerChannelBookieClientPool pcbcPool = channels.get(address);
+        return pcbcPool == null ? -1L : pcbcPool.getReadLatency(quantile);
+    }
+
     @Override
     public PerChannelBookieClient create(BookieId address, PerChannelBookieClientPool pcbcPool,
             SecurityHandlerFactory shFactory, boolean forceUseV3) throws SecurityException {
@@ -515,6 +523,44 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }, ledgerId);
     }
 
+    @Override
+    public void batchReadEntries(final BookieId addr, final long ledgerId, final long startEntryId,
+                                 final int maxCount, final long maxSize, final BatchedReadEntryCallback cb,
+                                 final Object ctx, final int flags) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            completeBatchRead(getRc(BKException.Code.BookieHandleNotAvailableException),
+                              ledgerId, startEntryId, null, cb, ctx);
+            return;
+        }
+
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                completeBatchRead(rc, ledgerId, startEntryId, null, cb, ctx);
+            } else {
+                pcbc.batchReadEntries(ledgerId, startEntryId, maxCount, maxSize, cb, ctx, flags);
+            }
+        }, ledgerId);
+    }
+
+    private void completeBatchRead(final int rc,
+                                   final long ledgerId,
+                                   final long startEntryId,
+                                   final ByteBufList entries,
+                                   final BatchedReadEntryCallback cb,
+                                   final Object ctx) {
+        try {
+            executor.executeOrdered(ledgerId, new SafeRunnable() {
+                @Override
+                public void safeRun() {
+                    cb.readEntriesComplete(rc, ledgerId, startEntryId, entries, ctx);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            cb.readEntriesComplete(getRc(BKException.Code.InterruptedException),
+                                   ledgerId, startEntryId, entries, ctx);
+        }
+    }
 
     @Override
     public void readEntryWaitForLACUpdate(final BookieId addr,
@@ -118,6 +118,21 @@ public class BookieProtoEncoding {
                 ar.recycle();
                 data.prepend(buf);
                 return data;
+            } else if (r instanceof BookieProtocol.BatchedReadRequest) {
+                BookieProtocol.BatchedReadRequest br = (BookieProtocol.BatchedReadRequest) r;
+                int totalHeaderSize = 4 // for request type
+                    + 8 // for ledgerId
+                    + 8 // for startEntryId
+                    + 4 // for maxCount
+                    + 8; // for maxSize
+
+                ByteBuf buf = allocator.buffer(totalHeaderSize);
+                buf.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), r.getFlags()));
+                buf.writeLong(br.getLedgerId());
+                buf.writeLong(br.getEntryId());
+                buf.writeInt(br.getMaxCount());
+                buf.writeLong(br.getMaxSize());
+                return buf;
             } else if (r instanceof BookieProtocol.ReadRequest) {
                 int totalHeaderSize = 4 // for request type
                     + 8 // for ledgerId
@@ -187,6 +202,13 @@ public class BookieProtoEncoding {
                 } else {
                     return new BookieProtocol.ReadRequest(version, ledgerId, entryId, flags, null);
                 }
+            case BookieProtocol.BATCH_READ_ENTRY: {
+                ledgerId = packet.readLong();
+                entryId = packet.readLong();
+                int maxCount = packet.readInt();
+                long maxSize = packet.readLong();
+                return new BookieProtocol.BatchedReadRequest(version, ledgerId, entryId, maxCount, maxSize, flags);
+            }
             case BookieProtocol.AUTH:
                 BookkeeperProtocol.AuthMessage.Builder builder = BookkeeperProtocol.AuthMessage.newBuilder();
                 builder.mergeFrom(new ByteBufInputStream(packet), extensionRegistry);
@@ -255,6 +277,26 @@ public class BookieProtoEncoding {
                     } else {
                         return buf;
                     }
+                } else if (msg instanceof BookieProtocol.BatchedReadResponse) {
+                    buf.writeInt(r.getErrorCode());
+                    buf.writeLong(r.getLedgerId());
+                    buf.writeLong(r.getEntryId());
+
+                    // Each entry is prefixed by its length, so that the receiver can split the frame
+                    ByteBufList data = ((BookieProtocol.BatchedReadResponse) r).getData();
+                    ByteBufList frame = ByteBufList.get(buf);
+                    try {
+                        for (int i = 0; i < data.size(); i++) {
+                            ByteBuf entry = data.getBuffer(i);
+                            ByteBuf lengthBuf = allocator.buffer(4);
+                            lengthBuf.writeInt(entry.readableBytes());
+                            frame.add(lengthBuf);
+                            frame.add(entry.retainedDuplicate());
+                        }
+                    } finally {
+                        data.release();
+                    }
+                    return frame;
                 } else if (msg instanceof BookieProtocol.AddResponse) {
                     buf.writeInt(r.getErrorCode());
                     buf.writeLong(r.getLedgerId());
@@ -295,6 +337,19 @@ public class BookieProtoEncoding {
 
                 return new BookieProtocol.ReadResponse(
                         version, rc, ledgerId, entryId, buffer.retainedSlice());
+            case BookieProtocol.BATCH_READ_ENTRY: {
+                rc = buffer.readInt();
+                ledgerId = buffer.readLong();
+                entryId = buffer.readLong();
+
+                ByteBufList entries = ByteBufList.get();
+                while (buffer.readableBytes() >= 4) {
+                    int entrySize = buffer.readInt();
+                    entries.add(buffer.retainedSlice(buffer.readerIndex(), entrySize));
+                    buffer.skipBytes(entrySize);
+                }
+                return new BookieProtocol.BatchedReadResponse(version, rc, ledgerId, entryId, entries);
+            }
             case BookieProtocol.AUTH:
                 ByteBufInputStream bufStream = new ByteBufInputStream(buffer);
                 BookkeeperProtocol.AuthMessage.Builder builder = BookkeeperProtocol.AuthMessage.newBuilder();
@@ -134,6 +134,15 @@ public interface BookieProtocol {
     byte WRITE_LAC = 5;
     byte GET_BOOKIE_INFO = 6;
 
+    /**
+     * The Batch read request payload will be the ledger number, the first entry
+     * number to read, the maximum number of entries (4-byte integer) and the
+     * maximum total size in bytes (8-byte integer). The response payload will be
+     * a 4-byte error code, the ledger number and the first entry number, followed,
+     * if the error code is EOK, by a sequence of 4-byte length prefixed entries.
+     */
+    byte BATCH_READ_ENTRY = 7;
+
     /**
      * The error code that indicates success.
      */
@@ -372,6 +381,36 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A Request that reads a range of consecutive entries in one round trip.
+     */
+    class BatchedReadRequest extends ReadRequest {
+        final int maxCount;
+        final long maxSize;
+
+        BatchedReadRequest(byte protocolVersion, long ledgerId, long startEntryId,
+                           int maxCount, long maxSize, short flags) {
+            super(protocolVersion, ledgerId, startEntryId, flags, null);
+            this.opCode = BATCH_READ_ENTRY;
+            this.maxCount = maxCount;
+            this.maxSize = maxSize;
+        }
+
+        int getMaxCount() {
+            return maxCount;
+        }
+
+        long getMaxSize() {
+            return maxSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Op(%d)[Ledger:%d,Entry:%d,MaxCount:%d,MaxSize:%d]",
+                                 opCode, ledgerId, entryId, maxCount, maxSize);
+        }
+    }
+
     /**
      * An authentication request.
      */
@@ -477,6 +516,37 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A response to a batch read, carrying consecutive entries starting at {@link #getEntryId()}.
+     */
+    class BatchedReadResponse extends Response {
+        final ByteBufList data;
+
+        BatchedReadResponse(byte protocolVersion, int errorCode, long ledgerId, long startEntryId) {
+            this(protocolVersion, errorCode, ledgerId, startEntryId, ByteBufList.get());
+        }
+
+        BatchedReadResponse(byte protocolVersion, int errorCode, long ledgerId, long startEntryId,
+                            ByteBufList data) {
+            init(protocolVersion, BATCH_READ_ENTRY, errorCode, ledgerId, startEntryId);
+            this.data = data;
+        }
+
+        ByteBufList getData() {
+            return data;
+        }
+
+        @Override
+        public void retain() {
+            data.retain();
+        }
+
+        @Override
+        public void release() {
+            data.release();
+        }
+    }
+
     /**
      * A response that adds data.
      */
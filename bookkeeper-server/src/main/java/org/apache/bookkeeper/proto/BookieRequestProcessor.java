@@ -49,6 +49,7 @@ import lombok.Getter;
 import org.apache.bookkeeper.auth.AuthProviderFactoryFactory;
 import org.apache.bookkeeper.auth.AuthToken;
 import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.LedgerStorage;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ServerConfiguration;
@@ -119,6 +120,16 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final RequestStats requestStats;
 
+    /**
+     * Fair scheduler of the regular read requests on the read thread pool, null if disabled.
+     */
+    private final FairReadScheduler fairReadScheduler;
+
+    /**
+     * Bound of the memory of the responses not flushed yet, null if unlimited.
+     */
+    private final ResponseMemoryController responseMemoryController;
+
     final Semaphore addsSemaphore;
     final Semaphore readsSemaphore;
 
@@ -130,6 +141,11 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final boolean throttleReadResponses;
 
+    /**
+     * Upper bound of the payload returned by a single batch read, so that responses always fit in a frame.
+     */
+    private final long maxBatchReadSize;
+
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
             SecurityHandlerFactory shFactory, ByteBufAllocator allocator) throws SecurityException {
         this.serverCfg = serverCfg;
@@ -138,6 +154,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
+        this.maxBatchReadSize = serverCfg.getNettyMaxFrameSizeBytes();
         this.readThreadPool = createExecutor(
                 this.serverCfg.getNumReadWorkerThreads(),
                 "BookieReadThreadPool",
@@ -195,7 +212,22 @@ public class BookieRequestProcessor implements RequestProcessor {
 
         // Expose Stats
         this.statsEnabled = serverCfg.isStatisticsEnabled();
-        this.requestStats = new RequestStats(statsLogger);
+        LedgerStorage ledgerStorage = bookie != null ? bookie.getLedgerStorage() : null;
+        this.requestStats = new RequestStats(statsLogger,
+                ledgerStorage != null ? ledgerStorage.getCompactionBandwidthController() : null);
+
+        if (serverCfg.isFairReadSchedulingEnabled() && readThreadPool != null) {
+            this.fairReadScheduler = new FairReadScheduler(serverCfg, readThreadPool, requestTimer, requestStats);
+        } else {
+            this.fairReadScheduler = null;
+        }
+
+        if (serverCfg.getMaxResponseMemoryBytes() > 0) {
+            this.responseMemoryController = new ResponseMemoryController(
+                    serverCfg.getMaxResponseMemoryBytes(), statsLogger);
+        } else {
+            this.responseMemoryController = null;
+        }
 
         int maxAdds = serverCfg.getMaxAddsInProgressLimit();
         addsSemaphore = maxAdds > 0 ? new Semaphore(maxAdds, true) : null;
@@ -252,6 +284,15 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    /**
+     * Account the bytes read for the client of a channel.
+     */
+    void onReadBytes(Channel channel, long bytes) {
+        if (fairReadScheduler != null) {
+            fairReadScheduler.recordReadBytes(channel, bytes);
+        }
+    }
+
     @VisibleForTesting
     int maxAddsInProgressCount() {
         return requestStats.maxAddsInProgressCount();
@@ -318,6 +359,9 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case READ_ENTRY:
                         processReadRequestV3(r, c);
                         break;
+                    case BATCH_READ_ENTRY:
+                        processBatchReadRequestV3(r, c);
+                        break;
                     case FORCE_LEDGER:
                         processForceLedgerRequestV3(r, c);
                         break;
@@ -375,6 +419,10 @@ public class BookieRequestProcessor implements RequestProcessor {
                     checkArgument(r instanceof BookieProtocol.ReadRequest);
                     processReadRequest((BookieProtocol.ReadRequest) r, c);
                     break;
+                case BookieProtocol.BATCH_READ_ENTRY:
+                    checkArgument(r instanceof BookieProtocol.BatchedReadRequest);
+                    processBatchReadRequest((BookieProtocol.BatchedReadRequest) r, c);
+                    break;
                 case BookieProtocol.AUTH:
                     LOG.info("Ignoring auth operation from client {}", c.remoteAddress());
                     BookkeeperProtocol.AuthMessage message = BookkeeperProtocol.AuthMessage
@@ -501,6 +549,7 @@ public class BookieRequestProcessor implements RequestProcessor {
 
         final ReadEntryProcessorV3 read;
         final OrderedExecutor threadPool;
+        boolean fairScheduled = false;
         if (RequestUtils.isLongPollReadRequest(r.getReadRequest())) {
             ExecutorService lpThread = longPollThreadPool.chooseThread(c);
 
@@ -519,34 +568,79 @@ public class BookieRequestProcessor implements RequestProcessor {
                 threadPool = highPriorityThreadPool;
             } else {
                 threadPool = readThreadPool;
+                fairScheduled = fairReadScheduler != null;
             }
         }
 
         if (null == threadPool) {
             read.run();
+        } else if (fairScheduled) {
+            fairReadScheduler.submit(c, r.getReadRequest().getLedgerId(), read, () -> rejectReadRequestV3(r, read));
         } else {
             try {
                 threadPool.executeOrdered(r.getReadRequest().getLedgerId(), read);
             } catch (RejectedExecutionException e) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests",
-                              r.getReadRequest().getLedgerId(), r.getReadRequest().getEntryId());
-                }
-                getRequestStats().getReadEntryRejectedCounter().inc();
-                BookkeeperProtocol.ReadResponse.Builder readResponse = BookkeeperProtocol.ReadResponse.newBuilder()
-                    .setLedgerId(r.getReadRequest().getLedgerId())
-                    .setEntryId(r.getReadRequest().getEntryId())
-                    .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
-                BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder()
-                    .setHeader(read.getHeader())
-                    .setStatus(readResponse.getStatus())
-                    .setReadResponse(readResponse);
-                BookkeeperProtocol.Response resp = response.build();
-                read.sendResponse(readResponse.getStatus(), resp, requestStats.getReadRequestStats());
+                rejectReadRequestV3(r, read);
+            }
+        }
+    }
+
+    private void rejectReadRequestV3(final BookkeeperProtocol.Request r, final ReadEntryProcessorV3 read) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests",
+                      r.getReadRequest().getLedgerId(), r.getReadRequest().getEntryId());
+        }
+        getRequestStats().getReadEntryRejectedCounter().inc();
+        BookkeeperProtocol.ReadResponse.Builder readResponse = BookkeeperProtocol.ReadResponse.newBuilder()
+            .setLedgerId(r.getReadRequest().getLedgerId())
+            .setEntryId(r.getReadRequest().getEntryId())
+            .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+        BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder()
+            .setHeader(read.getHeader())
+            .setStatus(readResponse.getStatus())
+            .setReadResponse(readResponse);
+        BookkeeperProtocol.Response resp = response.build();
+        read.sendResponse(readResponse.getStatus(), resp, requestStats.getReadRequestStats());
+    }
+
+    private void processBatchReadRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
+        BatchReadEntryProcessorV3 read = new BatchReadEntryProcessorV3(r, c, this, maxBatchReadSize);
+
+        final OrderedExecutor threadPool;
+        if (RequestUtils.isHighPriority(r)) {
+            threadPool = highPriorityThreadPool;
+        } else {
+            threadPool = readThreadPool;
+        }
+
+        if (null == threadPool) {
+            read.run();
+        } else if (threadPool == readThreadPool && fairReadScheduler != null) {
+            fairReadScheduler.submit(c, r.getBatchReadRequest().getLedgerId(), read,
+                    () -> rejectBatchReadRequestV3(r, read));
+        } else {
+            try {
+                threadPool.executeOrdered(r.getBatchReadRequest().getLedgerId(), read);
+            } catch (RejectedExecutionException e) {
+                rejectBatchReadRequestV3(r, read);
             }
         }
     }
 
+    private void rejectBatchReadRequestV3(final BookkeeperProtocol.Request r, final BatchReadEntryProcessorV3 read) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Failed to process request to batch read entry at {}:{}. Too many pending requests",
+                      r.getBatchReadRequest().getLedgerId(), r.getBatchReadRequest().getStartEntryId());
+        }
+        getRequestStats().getReadEntryRejectedCounter().inc();
+        BookkeeperProtocol.BatchReadResponse readResponse = BookkeeperProtocol.BatchReadResponse.newBuilder()
+            .setLedgerId(r.getBatchReadRequest().getLedgerId())
+            .setStartEntryId(r.getBatchReadRequest().getStartEntryId())
+            .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS)
+            .build();
+        read.sendResponse(readResponse);
+    }
+
     private void processStartTLSRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
         BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder();
         BookkeeperProtocol.BKPacketHeader.Builder header = BookkeeperProtocol.BKPacketHeader.newBuilder();
@@ -667,23 +761,67 @@ public class BookieRequestProcessor implements RequestProcessor {
 
         if (null == threadPool) {
             read.run();
+        } else if (threadPool == readThreadPool && fairReadScheduler != null) {
+            fairReadScheduler.submit(c, r.getLedgerId(), read, () -> rejectReadRequest(r, read));
         } else {
             try {
                 threadPool.executeOrdered(r.getLedgerId(), read);
             } catch (RejectedExecutionException e) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests", r.ledgerId,
-                            r.entryId);
-                }
-                getRequestStats().getReadEntryRejectedCounter().inc();
-                read.sendResponse(
-                    BookieProtocol.ETOOMANYREQUESTS,
-                    ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
-                    requestStats.getReadRequestStats());
+                rejectReadRequest(r, read);
             }
         }
     }
 
+    private void rejectReadRequest(final BookieProtocol.ReadRequest r, final ReadEntryProcessor read) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests", r.ledgerId,
+                    r.entryId);
+        }
+        getRequestStats().getReadEntryRejectedCounter().inc();
+        read.sendResponse(
+            BookieProtocol.ETOOMANYREQUESTS,
+            ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
+            requestStats.getReadRequestStats());
+    }
+
+    private void processBatchReadRequest(final BookieProtocol.BatchedReadRequest r, final Channel c) {
+        BatchedReadEntryProcessor read = BatchedReadEntryProcessor.create(r, c, this, throttleReadResponses,
+                maxBatchReadSize);
+
+        final OrderedExecutor threadPool;
+        if (r.isHighPriority()) {
+            threadPool = highPriorityThreadPool;
+        } else {
+            threadPool = readThreadPool;
+        }
+
+        if (null == threadPool) {
+            read.run();
+        } else if (threadPool == readThreadPool && fairReadScheduler != null) {
+            fairReadScheduler.submit(c, r.getLedgerId(), read, () -> rejectBatchReadRequest(r, read));
+        } else {
+            try {
+                threadPool.executeOrdered(r.getLedgerId(), read);
+            } catch (RejectedExecutionException e) {
+                rejectBatchReadRequest(r, read);
+            }
+        }
+    }
+
+    private void rejectBatchReadRequest(final BookieProtocol.BatchedReadRequest r,
+                                        final BatchedReadEntryProcessor read) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Failed to process request to batch read entry at {}:{}. Too many pending requests",
+                    r.ledgerId, r.entryId);
+        }
+        getRequestStats().getReadEntryRejectedCounter().inc();
+        read.sendResponse(
+            BookieProtocol.ETOOMANYREQUESTS,
+            ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
+            requestStats.getBatchReadRequestStats());
+        read.recycle();
+    }
+
     public long getWaitTimeoutOnBackpressureMillis() {
         return waitTimeoutOnBackpressureMillis;
     }
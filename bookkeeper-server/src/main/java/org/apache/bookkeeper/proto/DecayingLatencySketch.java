@@ -0,0 +1,126 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Latency histogram in which the weight of the samples decays exponentially with their age.
+ *
+ * <p>Latencies are recorded in log-linear buckets, 4 per power of two microseconds, so that
+ * quantiles are estimated within 25%. A sample recorded one half-life ago weighs half as much
+ * as a sample recorded now, so that the quantiles follow the recent latencies of a bookie, e.g.
+ * when it starts or stops compacting. Once the weight of the recorded samples decayed below a
+ * few samples, the latency is considered unknown again.
+ */
+class DecayingLatencySketch {
+
+    private static final long HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // Below this decayed number of samples, the quantiles are not meaningful
+    private static final double MIN_SAMPLES = 8;
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Latencies above 2^30 us, ~18 minutes, go to the last bucket
+    private static final int MAX_EXPONENT = 30;
+    private static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    // The weights are relative to the landmark, rescale them before they overflow
+    private static final double MAX_EXPONENT_SINCE_LANDMARK = 32;
+
+    private final double[] buckets = new double[NUM_BUCKETS];
+    private double total = 0;
+    private long landmarkNanos = MathUtils.nowInNano();
+
+    /**
+     * Record the latency of a successful request.
+     */
+    synchronized void record(long latencyNanos) {
+        double exponent = exponentSinceLandmark(MathUtils.nowInNano());
+        if (exponent > MAX_EXPONENT_SINCE_LANDMARK) {
+            rescale();
+            exponent = 0;
+        }
+        double weight = Math.pow(2, exponent);
+        buckets[bucketIndex(latencyNanos)] += weight;
+        total += weight;
+    }
+
+    /**
+     * @return the estimated latency at the given quantile, in nanoseconds, or -1 if there are not
+     *         enough recent samples
+     */
+    synchronized long quantile(double quantile) {
+        double decay = Math.pow(2, -exponentSinceLandmark(MathUtils.nowInNano()));
+        if (total * decay < MIN_SAMPLES) {
+            return -1L;
+        }
+
+        double threshold = total * quantile;
+        double sum = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            sum += buckets[i];
+            if (sum >= threshold) {
+                return bucketUpperBoundNanos(i);
+            }
+        }
+        return bucketUpperBoundNanos(NUM_BUCKETS - 1);
+    }
+
+    private double exponentSinceLandmark(long nowNanos) {
+        return (double) (nowNanos - landmarkNanos) / HALF_LIFE_NANOS;
+    }
+
+    private void rescale() {
+        long now = MathUtils.nowInNano();
+        double factor = Math.pow(2, -exponentSinceLandmark(now));
+        total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets[i] *= factor;
+            total += buckets[i];
+        }
+        landmarkNanos = now;
+    }
+
+    static int bucketIndex(long latencyNanos) {
+        long micros = Math.max(0, latencyNanos / 1000);
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return NUM_BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBoundNanos(int index) {
+        if (index < SUB_BUCKETS) {
+            return (index + 1) * 1000L;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) * 1000L;
+    }
+}
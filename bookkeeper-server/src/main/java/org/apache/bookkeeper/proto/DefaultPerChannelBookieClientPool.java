@@ -55,6 +55,7 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
 
     final AtomicInteger counter = new AtomicInteger(0);
     final AtomicLong errorCounter = new AtomicLong(0);
+    final DecayingLatencySketch readLatencySketch = new DecayingLatencySketch();
 
     DefaultPerChannelBookieClientPool(ClientConfiguration conf, PerChannelBookieClientFactory factory,
                                       BookieId address,
@@ -141,6 +142,16 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         errorCounter.incrementAndGet();
     }
 
+    @Override
+    public void recordReadLatency(long latencyNanos) {
+        readLatencySketch.record(latencyNanos);
+    }
+
+    @Override
+    public long getReadLatency(double quantile) {
+        return readLatencySketch.quantile(quantile);
+    }
+
     @Override
     public void disconnect(boolean wait) {
         for (int i = 0; i < clients.length; i++) {
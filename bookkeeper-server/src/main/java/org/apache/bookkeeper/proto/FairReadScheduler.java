@@ -0,0 +1,407 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.auth.BookKeeperPrincipal;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.SafeRunnable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the read requests of the clients of a bookie on the read thread pool.
+ *
+ * <p>Requests are queued per client, identified by its authenticated principal or, if not
+ * authenticated, by its address, and dispatched with start-time fair queuing: a request is
+ * tagged with a virtual start time, the max of the current virtual time and the finish time
+ * of the previous request of its client, and the request with the lowest start tag is
+ * dispatched first. The finish time of a request is its start time plus the inverse of the
+ * weight of its client, so that, while the read thread pool is saturated, the clients get a
+ * share of the dispatched requests proportional to their weight, whatever their backlog.
+ *
+ * <p>Only a bounded number of dispatched requests are in flight in the thread pool, so that
+ * the backlog of a client waits in its own queue instead of in front of the requests of the
+ * other clients. A client exceeding its request rate or byte rate quota is not dispatched
+ * until its quota is refilled. The size of a read is only known once it completed, so it is
+ * charged afterwards and the next reads of the client wait until the excess is paid back.
+ */
+class FairReadScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(FairReadScheduler.class);
+
+    private static final AttributeKey<Client> CLIENT = AttributeKey.valueOf("FairReadScheduler.client");
+
+    private final OrderedExecutor readThreadPool;
+    private final HashedWheelTimer timer;
+    private final RequestStats requestStats;
+    private final int maxInFlight;
+    private final int maxQueuedPerClient;
+    private final double requestRateQuota;
+    private final double byteRateQuota;
+    private final Map<String, Double> weights;
+
+    private final Map<String, Client> clients = new HashMap<>();
+    // Clients with queued requests and available quota, by start tag of their first request
+    private final PriorityQueue<Client> ready = new PriorityQueue<>(
+            Comparator.comparingDouble((Client client) -> client.head.startTag));
+    // Clients with queued requests which exceeded their quota
+    private final List<Client> throttled = new ArrayList<>();
+    private boolean throttledRetryScheduled = false;
+    private double virtualTime = 0;
+    private int inFlight = 0;
+
+    /**
+     * A read request waiting to be dispatched, then running in the read thread pool.
+     */
+    private class QueuedRead extends SafeRunnable {
+        final long ledgerId;
+        final Runnable read;
+        final Runnable onRejected;
+        final double startTag;
+        final long enqueueNanos = MathUtils.nowInNano();
+        QueuedRead next;
+
+        QueuedRead(long ledgerId, Runnable read, Runnable onRejected, double startTag) {
+            this.ledgerId = ledgerId;
+            this.read = read;
+            this.onRejected = onRejected;
+            this.startTag = startTag;
+        }
+
+        @Override
+        public void safeRun() {
+            try {
+                read.run();
+            } finally {
+                onReadDone();
+            }
+        }
+    }
+
+    private static class Client {
+        final String id;
+        final double weight;
+        final RequestStats.ClientReadStats stats;
+
+        QueuedRead head;
+        QueuedRead tail;
+        int queued = 0;
+        double lastFinishTag = 0;
+        int channels = 0;
+        boolean isReady = false;
+        boolean isThrottled = false;
+
+        double requestTokens;
+        double byteTokens;
+        long lastRefillNanos = MathUtils.nowInNano();
+
+        Client(String id, double weight, RequestStats.ClientReadStats stats, double requestBurst, double byteBurst) {
+            this.id = id;
+            this.weight = weight;
+            this.stats = stats;
+            this.requestTokens = requestBurst;
+            this.byteTokens = byteBurst;
+        }
+    }
+
+    FairReadScheduler(ServerConfiguration conf, OrderedExecutor readThreadPool, HashedWheelTimer timer,
+                      RequestStats requestStats) {
+        this.readThreadPool = readThreadPool;
+        this.timer = timer;
+        this.requestStats = requestStats;
+        this.maxInFlight = conf.getFairReadMaxInFlightRequests() > 0
+                ? conf.getFairReadMaxInFlightRequests()
+                : 2 * conf.getNumReadWorkerThreads();
+        this.maxQueuedPerClient = conf.getFairReadMaxQueuedRequestsPerClient();
+        this.requestRateQuota = conf.getClientReadRequestRateQuota();
+        this.byteRateQuota = conf.getClientReadByteRateQuota();
+        this.weights = parseWeights(conf.getFairReadClientWeights());
+    }
+
+    private static Map<String, Double> parseWeights(String[] clientWeights) {
+        Map<String, Double> weights = new HashMap<>();
+        if (clientWeights == null) {
+            return weights;
+        }
+        for (String clientWeight : clientWeights) {
+            int idx = clientWeight.lastIndexOf(':');
+            double weight = idx > 0 ? Double.parseDouble(clientWeight.substring(idx + 1).trim()) : 0;
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Invalid client weight: " + clientWeight);
+            }
+            weights.put(clientWeight.substring(0, idx).trim(), weight);
+        }
+        return weights;
+    }
+
+    /**
+     * Queue a read request of the client of a channel.
+     *
+     * @param channel the channel the request was received on
+     * @param ledgerId the ledger to read, to order the execution of the request
+     * @param read the request processor
+     * @param onRejected called instead of the processor if the request is rejected, without holding the lock of
+     *                   the scheduler
+     */
+    void submit(Channel channel, long ledgerId, Runnable read, Runnable onRejected) {
+        Client client = channel.attr(CLIENT).get();
+        if (client == null) {
+            client = registerChannel(channel);
+        }
+
+        List<QueuedRead> rejected = null;
+        boolean queued = false;
+        synchronized (this) {
+            if (client.queued < maxQueuedPerClient) {
+                double startTag = Math.max(virtualTime, client.lastFinishTag);
+                client.lastFinishTag = startTag + 1 / client.weight;
+                QueuedRead queuedRead = new QueuedRead(ledgerId, read, onRejected, startTag);
+                if (client.tail == null) {
+                    client.head = queuedRead;
+                } else {
+                    client.tail.next = queuedRead;
+                }
+                client.tail = queuedRead;
+                client.queued++;
+                if (!client.isReady && !client.isThrottled) {
+                    client.isReady = true;
+                    ready.add(client);
+                }
+                rejected = dispatch();
+                queued = true;
+            }
+        }
+        if (queued) {
+            runRejected(rejected);
+            return;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Too many queued read requests for client {}", client.id);
+        }
+        client.stats.getRejectedCounter().inc();
+        onRejected.run();
+    }
+
+    /**
+     * Charge the bytes of a completed read to the client of a channel.
+     */
+    void recordReadBytes(Channel channel, long bytes) {
+        Client client = channel.attr(CLIENT).get();
+        if (client == null) {
+            return;
+        }
+        client.stats.getBytesCounter().add(bytes);
+        if (byteRateQuota > 0) {
+            synchronized (this) {
+                client.byteTokens -= bytes;
+            }
+        }
+    }
+
+    private Client registerChannel(Channel channel) {
+        String clientId = getClientId(channel);
+        Client client;
+        synchronized (this) {
+            client = channel.attr(CLIENT).get();
+            if (client != null) {
+                return client;
+            }
+            client = clients.get(clientId);
+            if (client == null) {
+                client = new Client(clientId, weights.getOrDefault(clientId, 1.0),
+                        requestStats.getClientReadStats(clientId),
+                        Math.max(1, requestRateQuota), byteRateQuota);
+                clients.put(clientId, client);
+            }
+            client.channels++;
+            channel.attr(CLIENT).set(client);
+        }
+
+        final Client closedClient = client;
+        channel.closeFuture().addListener(future -> onChannelClosed(closedClient));
+        return client;
+    }
+
+    private synchronized void onChannelClosed(Client client) {
+        if (--client.channels == 0) {
+            // The queued requests, if any, are still dispatched
+            clients.remove(client.id, client);
+        }
+    }
+
+    private static String getClientId(Channel channel) {
+        BookieNettyServer.BookieSideConnectionPeerContextHandler context =
+                channel.pipeline().get(BookieNettyServer.BookieSideConnectionPeerContextHandler.class);
+        if (context != null) {
+            BookKeeperPrincipal principal = context.getConnectionPeer().getAuthorizedId();
+            if (principal != null && !BookKeeperPrincipal.ANONYMOUS.equals(principal)) {
+                return principal.getName();
+            }
+        }
+        // All the channels of a client process share the same host
+        SocketAddress address = channel.remoteAddress();
+        if (address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() != null) {
+            return ((InetSocketAddress) address).getAddress().getHostAddress();
+        }
+        return String.valueOf(address);
+    }
+
+    private void onReadDone() {
+        List<QueuedRead> rejected;
+        synchronized (this) {
+            inFlight--;
+            rejected = dispatch();
+        }
+        runRejected(rejected);
+    }
+
+    /**
+     * Dispatch the queued requests, while there is room in the read thread pool.
+     *
+     * @return the requests rejected by the read thread pool, if any, to notify once the lock is released
+     */
+    private List<QueuedRead> dispatch() {
+        long now = MathUtils.nowInNano();
+        List<QueuedRead> rejected = null;
+        while (inFlight < maxInFlight && !ready.isEmpty()) {
+            Client client = ready.poll();
+            if (!hasQuota(client, now)) {
+                client.isReady = false;
+                client.isThrottled = true;
+                throttled.add(client);
+                client.stats.getThrottledCounter().inc();
+                continue;
+            }
+
+            QueuedRead queuedRead = client.head;
+            client.head = queuedRead.next;
+            queuedRead.next = null;
+            if (client.head == null) {
+                client.tail = null;
+            }
+            client.queued--;
+            if (client.queued > 0) {
+                ready.add(client);
+            } else {
+                client.isReady = false;
+            }
+
+            virtualTime = Math.max(virtualTime, queuedRead.startTag);
+            if (requestRateQuota > 0) {
+                client.requestTokens -= 1;
+            }
+            client.stats.getQueueWaitStats()
+                    .registerSuccessfulEvent(now - queuedRead.enqueueNanos, TimeUnit.NANOSECONDS);
+
+            inFlight++;
+            try {
+                readThreadPool.executeOrdered(queuedRead.ledgerId, queuedRead);
+            } catch (RejectedExecutionException e) {
+                inFlight--;
+                if (rejected == null) {
+                    rejected = new ArrayList<>();
+                }
+                rejected.add(queuedRead);
+            }
+        }
+
+        if (!throttled.isEmpty() && !throttledRetryScheduled) {
+            throttledRetryScheduled = true;
+            timer.newTimeout(timeout -> retryThrottled(), quotaRefillDelayNanos(now), TimeUnit.NANOSECONDS);
+        }
+        return rejected;
+    }
+
+    private static void runRejected(List<QueuedRead> rejected) {
+        if (rejected != null) {
+            for (QueuedRead queuedRead : rejected) {
+                queuedRead.onRejected.run();
+            }
+        }
+    }
+
+    private boolean hasQuota(Client client, long now) {
+        double elapsedSeconds = (double) (now - client.lastRefillNanos) / TimeUnit.SECONDS.toNanos(1);
+        client.lastRefillNanos = now;
+        // Allow bursts of up to one second of quota
+        if (requestRateQuota > 0) {
+            client.requestTokens = Math.min(Math.max(1, requestRateQuota),
+                    client.requestTokens + elapsedSeconds * requestRateQuota);
+        }
+        if (byteRateQuota > 0) {
+            client.byteTokens = Math.min(byteRateQuota, client.byteTokens + elapsedSeconds * byteRateQuota);
+        }
+        return (requestRateQuota <= 0 || client.requestTokens >= 1)
+                && (byteRateQuota <= 0 || client.byteTokens >= 0);
+    }
+
+    /**
+     * @return the delay until the quota of the first throttled client is refilled
+     */
+    private long quotaRefillDelayNanos(long now) {
+        double delaySeconds = Double.MAX_VALUE;
+        for (Client client : throttled) {
+            double elapsedSeconds = (double) (now - client.lastRefillNanos) / TimeUnit.SECONDS.toNanos(1);
+            double clientDelaySeconds = 0;
+            if (requestRateQuota > 0) {
+                clientDelaySeconds = Math.max(clientDelaySeconds,
+                        (1 - client.requestTokens) / requestRateQuota - elapsedSeconds);
+            }
+            if (byteRateQuota > 0) {
+                clientDelaySeconds = Math.max(clientDelaySeconds, -client.byteTokens / byteRateQuota - elapsedSeconds);
+            }
+            delaySeconds = Math.min(delaySeconds, clientDelaySeconds);
+        }
+        return Math.max(1, (long) (delaySeconds * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    private void retryThrottled() {
+        List<QueuedRead> rejected;
+        synchronized (this) {
+            throttledRetryScheduled = false;
+            for (Client client : throttled) {
+                client.isThrottled = false;
+                client.isReady = true;
+                ready.add(client);
+            }
+            throttled.clear();
+            rejected = dispatch();
+        }
+        runRejected(rejected);
+    }
+}
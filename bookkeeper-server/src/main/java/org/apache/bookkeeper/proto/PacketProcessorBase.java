@@ -18,6 +18,7 @@
 package org.apache.bookkeeper.proto;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 
 import java.util.concurrent.TimeUnit;
 
@@ -67,7 +68,13 @@ abstract class PacketProcessorBase<T extends Request> extends SafeRunnable {
 
     protected void sendResponse(int rc, Object response, OpStatsLogger statsLogger) {
         if (channel.isActive()) {
-            channel.writeAndFlush(response, channel.voidPromise());
+            ResponseMemoryController responseMemoryController = requestProcessor.getResponseMemoryController();
+            if (responseMemoryController != null) {
+                long size = ResponseMemoryController.sizeOf(response);
+                responseMemoryController.track(channel, size, channel.writeAndFlush(response));
+            } else {
+                channel.writeAndFlush(response, channel.voidPromise());
+            }
         } else {
             LOGGER.debug("Netty channel {} is inactive, "
                     + "hence bypassing netty channel writeAndFlush during sendResponse", channel);
@@ -88,7 +95,13 @@ abstract class PacketProcessorBase<T extends Request> extends SafeRunnable {
      */
     protected void sendResponseAndWait(int rc, Object response, OpStatsLogger statsLogger) {
         try {
-            channel.writeAndFlush(response).await();
+            ResponseMemoryController responseMemoryController = requestProcessor.getResponseMemoryController();
+            long size = responseMemoryController != null ? ResponseMemoryController.sizeOf(response) : 0L;
+            ChannelFuture future = channel.writeAndFlush(response);
+            if (responseMemoryController != null) {
+                responseMemoryController.track(channel, size, future);
+            }
+            future.await();
         } catch (InterruptedException e) {
             return;
         }
@@ -23,6 +23,8 @@ package org.apache.bookkeeper.proto;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
@@ -53,6 +55,16 @@ public abstract class PacketProcessorBaseV3 extends SafeRunnable {
     }
 
     protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
+        sendResponse(code, response, statsLogger, null);
+    }
+
+    /**
+     * Send a response referring to buffers which must stay valid until the response is written.
+     *
+     * @param toRelease released once the response is written, or dropped, may be null
+     */
+    protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger,
+                                ReferenceCounted toRelease) {
         final long writeNanos = MathUtils.nowInNano();
 
         final long timeOut = requestProcessor.getWaitTimeoutOnBackpressureMillis();
@@ -82,15 +94,23 @@ public abstract class PacketProcessorBaseV3 extends SafeRunnable {
                 requestProcessor.getRequestStats().getChannelWriteStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(writeNanos), TimeUnit.NANOSECONDS);
                 statsLogger.registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+                ReferenceCountUtil.release(toRelease);
                 return;
             } else {
                 requestProcessor.invalidateBlacklist(channel);
             }
         }
         if (channel.isActive()) {
-            channel.writeAndFlush(response).addListener(new ChannelFutureListener() {
+            ResponseMemoryController responseMemoryController = requestProcessor.getResponseMemoryController();
+            long size = responseMemoryController != null ? ResponseMemoryController.sizeOf(response) : 0L;
+            ChannelFuture writeFuture = channel.writeAndFlush(response);
+            if (responseMemoryController != null) {
+                responseMemoryController.track(channel, size, writeFuture);
+            }
+            writeFuture.addListener(new ChannelFutureListener() {
                 @Override
                 public void operationComplete(ChannelFuture future) throws Exception {
+                    ReferenceCountUtil.release(toRelease);
                     long writeElapsedNanos = MathUtils.elapsedNanos(writeNanos);
                     if (!future.isSuccess()) {
                         requestProcessor.getRequestStats().getChannelWriteStats()
@@ -109,6 +129,7 @@ public abstract class PacketProcessorBaseV3 extends SafeRunnable {
         } else {
             LOGGER.debug("Netty channel {} is inactive, "
                     + "hence bypassing netty channel writeAndFlush during sendResponse", channel);
+            ReferenceCountUtil.release(toRelease);
         }
     }
 
@@ -55,6 +55,8 @@ import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.handler.codec.TooLongFrameException;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.concurrent.Future;
@@ -80,7 +82,6 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.function.BiPredicate;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import lombok.SneakyThrows;
@@ -95,6 +96,7 @@ import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
@@ -108,6 +110,8 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoRequest;
@@ -138,6 +142,7 @@ import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.SafeRunnable;
 import org.apache.bookkeeper.util.StringUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
 import org.apache.bookkeeper.util.collections.SynchronizedHashMultiMap;
 import org.slf4j.Logger;
@@ -180,6 +185,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     final long getBookieInfoTimeoutNanos;
     final int startTLSTimeout;
 
+    // V3 completions, keyed by the unique txnId of their request
+    private final ConcurrentLongHashMap<CompletionValue> completionObjectsV3 =
+            ConcurrentLongHashMap.<CompletionValue>newBuilder().build();
+
+    // V2 completions, keyed by ledgerId/entryId/operation with recycled keys
     private final ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects =
             ConcurrentOpenHashMap.<CompletionKey, CompletionValue>newBuilder().build();
 
@@ -188,6 +198,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private final SynchronizedHashMultiMap<CompletionKey, CompletionValue> completionObjectsV2Conflicts =
         new SynchronizedHashMultiMap<>();
 
+    // Deadlines of the pending completions, so that timeouts don't need to scan all of them
+    private final TimeoutWheel timeoutWheel = new TimeoutWheel();
+
     private final StatsLogger statsLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_READ_OP,
@@ -520,7 +533,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     protected long getNumPendingCompletionRequests() {
-        return completionObjects.size();
+        return completionObjects.size() + completionObjectsV3.size();
     }
 
     protected ChannelFuture connect() {
@@ -548,6 +561,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             } catch (NoSuchElementException e) {
                 // Property not set, so keeping default value.
             }
+            if (conf.getBusyPollMicros() > 0) {
+                bootstrap.option(EpollChannelOption.SO_BUSY_POLL, conf.getBusyPollMicros());
+            }
+        } else if (eventLoopGroup instanceof IOUringEventLoopGroup) {
+            bootstrap.channel(IOUringSocketChannel.class);
         } else if (eventLoopGroup instanceof DefaultEventLoopGroup) {
             bootstrap.channel(LocalChannel.class);
         } else {
@@ -678,7 +696,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final CompletionKey completionKey = new V3CompletionKey(txnId,
                                                                 OperationType.WRITE_LAC);
         // writeLac is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
+        putCompletionKeyValue(completionKey,
                               new WriteLacCompletion(completionKey, cb,
                                                      ctx, lac));
 
@@ -720,7 +738,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final CompletionKey completionKey = new V3CompletionKey(txnId,
                                                                 OperationType.FORCE_LEDGER);
         // force is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
+        putCompletionKeyValue(completionKey,
                               new ForceLedgerCompletion(completionKey, cb,
                                                      ctx, ledgerId));
 
@@ -868,7 +886,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     public void getListOfEntriesOfLedger(final long ledgerId, GetListOfEntriesOfLedgerCallback cb) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.GET_LIST_OF_ENTRIES_OF_LEDGER);
-        completionObjects.put(completionKey, new GetListOfEntriesOfLedgerCompletion(completionKey, cb, ledgerId));
+        putCompletionKeyValue(completionKey, new GetListOfEntriesOfLedgerCompletion(completionKey, cb, ledgerId));
 
         // Build the request.
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder().setVersion(ProtocolVersion.VERSION_THREE)
@@ -986,15 +1004,64 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId);
+        // Long poll reads wait for the LAC to change, their latency is not the one of the bookie
+        readCompletion.recordLatency = timeOutInMillis == null;
         putCompletionKeyValue(completionKey, readCompletion);
 
         writeAndFlush(channel, completionKey, request, allowFastFail);
     }
 
+    /**
+     * Batch Reads.
+     */
+    public void batchReadEntries(final long ledgerId,
+                                 final long startEntryId,
+                                 final int maxCount,
+                                 final long maxSize,
+                                 BatchedReadEntryCallback cb,
+                                 Object ctx,
+                                 int flags) {
+        Object request = null;
+        CompletionKey completionKey = null;
+        if (useV2WireProtocol) {
+            request = new BookieProtocol.BatchedReadRequest(BookieProtocol.CURRENT_PROTOCOL_VERSION,
+                    ledgerId, startEntryId, maxCount, maxSize, (short) flags);
+            completionKey = acquireV2Key(ledgerId, startEntryId, OperationType.BATCH_READ_ENTRY);
+        } else {
+            final long txnId = getTxnId();
+            completionKey = new V3CompletionKey(txnId, OperationType.BATCH_READ_ENTRY);
+
+            BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                    .setVersion(ProtocolVersion.VERSION_THREE)
+                    .setOperation(OperationType.BATCH_READ_ENTRY)
+                    .setTxnId(txnId);
+            if (((short) flags & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
+                headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
+            }
+
+            BatchReadRequest.Builder readBuilder = BatchReadRequest.newBuilder()
+                    .setLedgerId(ledgerId)
+                    .setStartEntryId(startEntryId)
+                    .setMaxCount(maxCount)
+                    .setMaxSize(maxSize);
+
+            request = withRequestContext(Request.newBuilder())
+                    .setHeader(headerBuilder)
+                    .setBatchReadRequest(readBuilder)
+                    .build();
+        }
+
+        BatchedReadCompletion readCompletion = new BatchedReadCompletion(completionKey, cb, ctx,
+                ledgerId, startEntryId);
+        putCompletionKeyValue(completionKey, readCompletion);
+
+        writeAndFlush(channel, completionKey, request, false);
+    }
+
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.GET_BOOKIE_INFO);
-        completionObjects.put(completionKey,
+        putCompletionKeyValue(completionKey,
                               new GetBookieInfoCompletion(
                                       completionKey, cb, ctx));
 
@@ -1015,14 +1082,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeAndFlush(channel, completionKey, getBookieInfoRequest);
     }
 
-    private static final BiPredicate<CompletionKey, CompletionValue> timeoutCheck = (key, value) -> {
-        return value.maybeTimeout();
-    };
-
     public void checkTimeoutOnPendingOperations() {
-        int timedOutOperations = completionObjects.removeIf(timeoutCheck);
-
-        timedOutOperations += completionObjectsV2Conflicts.removeIf(timeoutCheck);
+        int timedOutOperations = timeoutWheel.expire(MathUtils.nowInNano());
 
         if (timedOutOperations > 0) {
             LOG.info("Timed-out {} operations to channel {} for {}",
@@ -1143,7 +1204,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             ChannelPromise promise = channel.newPromise().addListener(future -> {
                 if (future.isSuccess()) {
                     nettyOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                    CompletionValue completion = completionObjects.get(key);
+                    CompletionValue completion = peekCompletionValue(key);
                     if (completion != null) {
                         completion.setOutstanding();
                     }
@@ -1163,12 +1224,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = getCompletionValue(key);
         if (completion != null) {
             completion.errorOut();
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut());
         }
     }
 
@@ -1176,12 +1234,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = getCompletionValue(key);
         if (completion != null) {
             completion.errorOut(rc);
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut(rc));
         }
     }
 
@@ -1218,6 +1273,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         for (CompletionKey key : completionObjects.keys()) {
             errorOut(key, rc);
         }
+        for (long txnId : completionObjectsV3.keys()) {
+            CompletionValue completion = removeCompletionValueV3(txnId);
+            if (completion != null) {
+                completion.errorOut(rc);
+            }
+        }
     }
 
     void recordError() {
@@ -1226,6 +1287,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    void recordReadLatency(long latencyNanos) {
+        if (pcbcPool != null) {
+            pcbcPool.recordReadLatency(latencyNanos);
+        }
+    }
+
     /**
      * If our channel has disconnected, we just error out the pending entries.
      */
@@ -1420,6 +1487,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 return OperationType.WRITE_LAC;
             case BookieProtocol.GET_BOOKIE_INFO:
                 return OperationType.GET_BOOKIE_INFO;
+            case BookieProtocol.BATCH_READ_ENTRY:
+                return OperationType.BATCH_READ_ENTRY;
             default:
                 throw new IllegalArgumentException("Invalid operation type " + opCode);
         }
@@ -1455,8 +1524,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private void readV3Response(final Response response) {
         final BKPacketHeader header = response.getHeader();
 
-        final CompletionKey key = newCompletionKey(header.getTxnId(), header.getOperation());
-        final CompletionValue completionValue = completionObjects.get(key);
+        final CompletionValue completionValue = removeCompletionValueV3(header.getTxnId());
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1481,8 +1549,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 }
             });
         }
-
-        completionObjects.remove(key);
     }
 
     void initTLSHandshake() {
@@ -1567,7 +1633,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
      */
 
     // visible for testing
-    abstract class CompletionValue {
+    abstract class CompletionValue extends TimeoutWheel.Entry {
         private final OpStatsLogger opLogger;
         private final OpStatsLogger timeoutOpLogger;
         private final String operationName;
@@ -1576,6 +1642,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         protected long ledgerId;
         protected long entryId;
         protected long startTime;
+        // Key the completion is registered with, to remove it once it timed out
+        CompletionKey completionKey;
 
         public CompletionValue(String operationName,
                                Object ctx,
@@ -1609,13 +1677,22 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         }
 
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= readEntryTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
+        long getTimeoutNanos() {
+            return readEntryTimeoutNanos;
+        }
+
+        @Override
+        boolean onTimeout(long generation) {
+            // Checked under the lock the completion is registered with, as it may have been recycled
+            // and registered again for another request since its deadline passed
+            synchronized (this) {
+                // The response may have been received in the meantime
+                if (generation != generation() || !removeCompletionKeyValue(completionKey, this)) {
+                    return false;
+                }
             }
+            timeout();
+            return true;
         }
 
         void timeout() {
@@ -1845,6 +1922,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     // visible for testing
     class ReadCompletion extends CompletionValue {
         final ReadEntryCallback cb;
+        boolean recordLatency = true;
 
         public ReadCompletion(final CompletionKey key,
                               final ReadEntryCallback originalCallback,
@@ -1859,6 +1937,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                                   long entryId, ByteBuf buffer,
                                                   Object ctx) {
                         logOpResult(rc);
+                        if (recordLatency && rc == BKException.Code.OK) {
+                            recordReadLatency(MathUtils.elapsedNanos(startTime));
+                        }
                         originalCallback.readEntryComplete(rc,
                                                            ledgerId, entryId,
                                                            buffer, originalCtx);
@@ -1944,6 +2025,104 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    // visible for testing
+    class BatchedReadCompletion extends CompletionValue {
+        final BatchedReadEntryCallback cb;
+
+        public BatchedReadCompletion(final CompletionKey key,
+                                     final BatchedReadEntryCallback originalCallback,
+                                     final Object originalCtx,
+                                     long ledgerId, final long startEntryId) {
+            super("BatchedRead", originalCtx, ledgerId, startEntryId,
+                  readEntryOpLogger, readTimeoutOpLogger);
+
+            this.cb = new BatchedReadEntryCallback() {
+                    @Override
+                    public void readEntriesComplete(int rc, long ledgerId,
+                                                    long startEntryId, ByteBufList bufList,
+                                                    Object ctx) {
+                        logOpResult(rc);
+                        originalCallback.readEntriesComplete(rc,
+                                                             ledgerId, startEntryId,
+                                                             bufList, originalCtx);
+                        key.release();
+                    }
+                };
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(
+                    () -> cb.readEntriesComplete(rc, ledgerId,
+                                                 entryId, null, ctx));
+        }
+
+        @Override
+        public void setOutstanding() {
+            readEntryOutstanding.inc();
+        }
+
+        @Override
+        public void handleV2Response(long ledgerId, long entryId,
+                                     StatusCode status,
+                                     BookieProtocol.Response response) {
+            readEntryOutstanding.dec();
+            if (!(response instanceof BookieProtocol.BatchedReadResponse)) {
+                return;
+            }
+            BookieProtocol.BatchedReadResponse readResponse = (BookieProtocol.BatchedReadResponse) response;
+            handleBatchedReadResponse(ledgerId, entryId, status, readResponse.getData(), INVALID_ENTRY_ID);
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            readEntryOutstanding.dec();
+            BatchReadResponse readResponse = response.getBatchReadResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? readResponse.getStatus() : response.getStatus();
+            ByteBufList entries = ByteBufList.get();
+            for (int i = 0; i < readResponse.getBodyCount(); i++) {
+                entries.add(Unpooled.wrappedBuffer(readResponse.getBody(i).asReadOnlyByteBuffer()));
+            }
+            long maxLAC = INVALID_ENTRY_ID;
+            if (readResponse.hasMaxLAC()) {
+                maxLAC = readResponse.getMaxLAC();
+            }
+            try {
+                handleBatchedReadResponse(readResponse.getLedgerId(), readResponse.getStartEntryId(),
+                        status, entries, maxLAC);
+            } finally {
+                entries.release();
+            }
+        }
+
+        private void handleBatchedReadResponse(long ledgerId,
+                                               long startEntryId,
+                                               StatusCode status,
+                                               ByteBufList entries,
+                                               long maxLAC) { // max known lac piggy-back from bookies
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "startEntry", startEntryId,
+                        "entries", entries.size(), "length", entries.readableBytes());
+            }
+
+            int rc = convertStatus(status, BKException.Code.ReadException);
+            if (rc == BKException.Code.OK && entries.size() == 0) {
+                rc = BKException.Code.NoSuchEntryException;
+            }
+
+            if (maxLAC > INVALID_ENTRY_ID && (ctx instanceof ReadEntryCallbackCtx)) {
+                ((ReadEntryCallbackCtx) ctx).setLastAddConfirmed(maxLAC);
+            }
+            cb.readEntriesComplete(rc, ledgerId, startEntryId, rc == BKException.Code.OK ? entries : null, ctx);
+        }
+    }
+
     class StartTLSCompletion extends CompletionValue {
         final StartTLSCallback cb;
 
@@ -2016,13 +2195,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= getBookieInfoTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long getTimeoutNanos() {
+            return getBookieInfoTimeoutNanos;
         }
 
         @Override
@@ -2162,13 +2336,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long getTimeoutNanos() {
+            return addEntryTimeoutNanos;
         }
 
         @Override
@@ -2295,23 +2464,67 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
-    private void putCompletionKeyValue(CompletionKey key, CompletionValue value) {
-        CompletionValue existingValue = completionObjects.putIfAbsent(key, value);
-        if (existingValue != null) { // will only happen for V2 keys, as V3 have unique txnid
-            // There's a pending read request on same ledger/entry. Use the multimap to track all of them
-            completionObjectsV2Conflicts.put(key, value);
+    // visible for testing
+    void putCompletionKeyValue(CompletionKey key, CompletionValue value) {
+        // A timeout of the previous use of a recycled completion checks its generation under this lock
+        synchronized (value) {
+            value.completionKey = key;
+            // Track the deadline first, so that the completion is tracked as soon as a response can complete it
+            long timeoutNanos = value.getTimeoutNanos();
+            if (timeoutNanos > 0) {
+                timeoutWheel.add(value, value.startTime + timeoutNanos, value.ledgerId);
+            }
+
+            if (key instanceof V3CompletionKey) {
+                completionObjectsV3.put(key.txnId, value);
+                return;
+            }
+            CompletionValue existingValue = completionObjects.putIfAbsent(key, value);
+            if (existingValue != null) { // will only happen for V2 keys, as V3 have unique txnid
+                // There's a pending read request on same ledger/entry. Use the multimap to track all of them
+                completionObjectsV2Conflicts.put(key, value);
+            }
         }
     }
 
-    private CompletionValue getCompletionValue(CompletionKey key) {
+    // visible for testing
+    CompletionValue getCompletionValue(CompletionKey key) {
+        if (key instanceof V3CompletionKey) {
+            return removeCompletionValueV3(key.txnId);
+        }
         CompletionValue completionValue = completionObjects.remove(key);
         if (completionValue == null) {
             // If there's no completion object here, try in the multimap
             completionValue = completionObjectsV2Conflicts.removeAny(key).orElse(null);
         }
+        if (completionValue != null) {
+            timeoutWheel.remove(completionValue);
+        }
         return completionValue;
     }
 
+    private CompletionValue removeCompletionValueV3(long txnId) {
+        CompletionValue completionValue = completionObjectsV3.remove(txnId);
+        if (completionValue != null) {
+            timeoutWheel.remove(completionValue);
+        }
+        return completionValue;
+    }
+
+    private CompletionValue peekCompletionValue(CompletionKey key) {
+        if (key instanceof V3CompletionKey) {
+            return completionObjectsV3.get(key.txnId);
+        }
+        return completionObjects.get(key);
+    }
+
+    private boolean removeCompletionKeyValue(CompletionKey key, CompletionValue value) {
+        if (key instanceof V3CompletionKey) {
+            return completionObjectsV3.remove(key.txnId, value);
+        }
+        return completionObjects.remove(key, value) || completionObjectsV2Conflicts.remove(key, value);
+    }
+
     private long getTxnId() {
         return txnIdGenerator.incrementAndGet();
     }
@@ -2545,7 +2758,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         assert state == ConnectionState.CONNECTING;
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.START_TLS);
-        completionObjects.put(completionKey,
+        putCompletionKeyValue(completionKey,
                               new StartTLSCompletion(completionKey));
         BookkeeperProtocol.Request.Builder h = withRequestContext(BookkeeperProtocol.Request.newBuilder());
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -66,6 +66,22 @@ public interface PerChannelBookieClientPool {
      */
     void recordError();
 
+    /**
+     * record the latency of a successful read on {@link PerChannelBookieClientPool}.
+     */
+    default void recordReadLatency(long latencyNanos) {
+    }
+
+    /**
+     * Get the recent read latency of the bookie at the given quantile.
+     *
+     * @param quantile the quantile, between 0 and 1
+     * @return the latency in nanoseconds, or -1 if it is unknown
+     */
+    default long getReadLatency(double quantile) {
+        return -1L;
+    }
+
     /**
      * Check if any ops on any channel needs to be timed out.
      * This is called on all channels, even if the channel is not yet connected.
@@ -123,6 +123,7 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
         BookieProtocol.Response response;
         if (errorCode == BookieProtocol.EOK) {
             logger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            requestProcessor.onReadBytes(channel, data.readableBytes());
             response = ResponseBuilder.buildReadResponse(data, request);
         } else {
             if (data != null) {
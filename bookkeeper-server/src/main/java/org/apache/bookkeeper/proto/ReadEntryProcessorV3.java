@@ -312,6 +312,9 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
     }
 
     protected void sendResponse(ReadResponse readResponse) {
+        if (readResponse.hasBody()) {
+            requestProcessor.onReadBytes(channel, readResponse.getBody().size());
+        }
         Response.Builder response = Response.newBuilder()
                 .setHeader(getHeader())
                 .setStatus(readResponse.getStatus())
@@ -25,8 +25,15 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BLOCK
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_IN_PROGRESS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REJECTED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BATCH_READ_ENTRY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BATCH_READ_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_WRITE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CLIENT_LABEL;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CLIENT_READ_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CLIENT_READ_QUEUE_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CLIENT_READ_REJECTED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CLIENT_READ_THROTTLED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_BOOKIE_INFO;
@@ -56,9 +63,12 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_LAC_REQUE
 
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import lombok.AccessLevel;
 import lombok.Getter;
+import org.apache.bookkeeper.bookie.CompactionBandwidthController;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.OpStatsData;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.annotations.StatsDoc;
@@ -74,6 +84,9 @@ import org.apache.bookkeeper.stats.annotations.StatsDoc;
 @Getter
 public class RequestStats {
 
+    @Getter(AccessLevel.NONE)
+    private final StatsLogger statsLogger;
+
     final AtomicInteger addsInProgress = new AtomicInteger(0);
     final AtomicInteger maxAddsInProgress = new AtomicInteger(0);
     final AtomicInteger addsBlocked = new AtomicInteger(0);
@@ -115,6 +128,17 @@ public class RequestStats {
             parent = READ_ENTRY_REQUEST
     )
     private final Counter readEntryRejectedCounter;
+    @StatsDoc(
+        name = BATCH_READ_ENTRY_REQUEST,
+        help = "request stats of BatchReadEntry on a bookie"
+    )
+    final OpStatsLogger batchReadRequestStats;
+    @StatsDoc(
+        name = BATCH_READ_ENTRY,
+        help = "operation stats of BatchReadEntry on a bookie",
+        parent = BATCH_READ_ENTRY_REQUEST
+    )
+    final OpStatsLogger batchReadEntryStats;
     @StatsDoc(
         name = FORCE_LEDGER,
         help = "operation stats of ForceLedger on a bookie",
@@ -239,14 +263,30 @@ public class RequestStats {
     final OpStatsLogger getListOfEntriesOfLedgerStats;
 
     public RequestStats(StatsLogger statsLogger) {
+        this(statsLogger, null);
+    }
+
+    /**
+     * Create the request stats.
+     *
+     * @param compactionBandwidthController if not null, it is notified of the latency of the
+     *                                      read requests, to slow down the compaction
+     */
+    public RequestStats(StatsLogger statsLogger, CompactionBandwidthController compactionBandwidthController) {
+        this.statsLogger = statsLogger;
         this.addEntryStats = statsLogger.getThreadScopedOpStatsLogger(ADD_ENTRY);
         this.addRequestStats = statsLogger.getOpStatsLogger(ADD_ENTRY_REQUEST);
         this.addEntryRejectedCounter = statsLogger.getCounter(ADD_ENTRY_REJECTED);
         this.readEntryStats = statsLogger.getThreadScopedOpStatsLogger(READ_ENTRY);
         this.readEntryRejectedCounter = statsLogger.getCounter(READ_ENTRY_REJECTED);
+        this.batchReadEntryStats = statsLogger.getThreadScopedOpStatsLogger(BATCH_READ_ENTRY);
+        this.batchReadRequestStats = statsLogger.getOpStatsLogger(BATCH_READ_ENTRY_REQUEST);
         this.forceLedgerStats = statsLogger.getOpStatsLogger(FORCE_LEDGER);
         this.forceLedgerRequestStats = statsLogger.getOpStatsLogger(FORCE_LEDGER_REQUEST);
-        this.readRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_REQUEST);
+        OpStatsLogger readRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_REQUEST);
+        this.readRequestStats = compactionBandwidthController != null
+                ? new ForegroundLatencyOpStatsLogger(readRequestStats, compactionBandwidthController)
+                : readRequestStats;
         this.fenceReadEntryStats = statsLogger.getOpStatsLogger(READ_ENTRY_FENCE_READ);
         this.fenceReadRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_FENCE_REQUEST);
         this.fenceReadWaitStats = statsLogger.getOpStatsLogger(READ_ENTRY_FENCE_WAIT);
@@ -320,6 +360,92 @@ public class RequestStats {
         });
     }
 
+    /**
+     * Read request stats of a single client, labeled with its id.
+     */
+    @Getter
+    public static class ClientReadStats {
+        @StatsDoc(
+            name = CLIENT_READ_QUEUE_WAIT,
+            help = "time spent by the read requests of a client in the fair scheduler queue"
+        )
+        private final OpStatsLogger queueWaitStats;
+        @StatsDoc(
+            name = CLIENT_READ_REJECTED,
+            help = "number of read requests of a client rejected because its queue is full"
+        )
+        private final Counter rejectedCounter;
+        @StatsDoc(
+            name = CLIENT_READ_THROTTLED,
+            help = "number of times the reads of a client were delayed by its request or byte rate quota"
+        )
+        private final Counter throttledCounter;
+        @StatsDoc(
+            name = CLIENT_READ_BYTES,
+            help = "number of bytes read by a client"
+        )
+        private final Counter bytesCounter;
+
+        ClientReadStats(StatsLogger statsLogger) {
+            this.queueWaitStats = statsLogger.getOpStatsLogger(CLIENT_READ_QUEUE_WAIT);
+            this.rejectedCounter = statsLogger.getCounter(CLIENT_READ_REJECTED);
+            this.throttledCounter = statsLogger.getCounter(CLIENT_READ_THROTTLED);
+            this.bytesCounter = statsLogger.getCounter(CLIENT_READ_BYTES);
+        }
+    }
+
+    /**
+     * Get the read request stats of a client.
+     */
+    ClientReadStats getClientReadStats(String clientId) {
+        return new ClientReadStats(statsLogger.scopeLabel(CLIENT_LABEL, clientId));
+    }
+
+    /**
+     * Report the latency of the foreground requests to the compaction bandwidth controller.
+     */
+    private static class ForegroundLatencyOpStatsLogger implements OpStatsLogger {
+        private final OpStatsLogger delegate;
+        private final CompactionBandwidthController compactionBandwidthController;
+
+        ForegroundLatencyOpStatsLogger(OpStatsLogger delegate,
+                                       CompactionBandwidthController compactionBandwidthController) {
+            this.delegate = delegate;
+            this.compactionBandwidthController = compactionBandwidthController;
+        }
+
+        @Override
+        public void registerFailedEvent(long eventLatency, TimeUnit unit) {
+            delegate.registerFailedEvent(eventLatency, unit);
+        }
+
+        @Override
+        public void registerSuccessfulEvent(long eventLatency, TimeUnit unit) {
+            delegate.registerSuccessfulEvent(eventLatency, unit);
+            compactionBandwidthController.recordForegroundLatency(unit.toNanos(eventLatency));
+        }
+
+        @Override
+        public void registerSuccessfulValue(long value) {
+            delegate.registerSuccessfulValue(value);
+        }
+
+        @Override
+        public void registerFailedValue(long value) {
+            delegate.registerFailedValue(value);
+        }
+
+        @Override
+        public OpStatsData toOpStatsData() {
+            return delegate.toOpStatsData();
+        }
+
+        @Override
+        public void clear() {
+            delegate.clear();
+        }
+    }
+
     //
     // Add requests
     //
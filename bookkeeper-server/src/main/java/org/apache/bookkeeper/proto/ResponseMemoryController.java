@@ -0,0 +1,237 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RESPONSE_MEMORY_CHANNEL_PAUSES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RESPONSE_MEMORY_PAUSED_CHANNELS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RESPONSE_MEMORY_USAGE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.util.AttributeKey;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounds the memory used by the responses written by a bookie and not flushed to the clients yet.
+ *
+ * <p>The size of a response is reserved when it is written to its channel and released once the
+ * write completed or failed. When a write takes the memory used over the limit, the bookie stops
+ * reading requests from its channel, instead of blocking the worker thread writing the response,
+ * so that the other requests queued on the same thread are not delayed. As in
+ * {@link org.apache.bookkeeper.common.util.MemoryLimitController}, the responses already being
+ * processed may take the memory used over the limit, they are never delayed nor dropped.
+ *
+ * <p>Once the memory used goes back below 3/4 of the limit, the paused channels are resumed, the
+ * channels with the fewest bytes of pending responses first, so that the requests of the clients
+ * which consume their responses are read before the requests of the clients which fell behind.
+ */
+@StatsDoc(
+    name = SERVER_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Bookie response memory stats"
+)
+class ResponseMemoryController {
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseMemoryController.class);
+
+    private static final AttributeKey<ChannelMemory> CHANNEL_MEMORY =
+            AttributeKey.valueOf("ResponseMemoryController.channelMemory");
+
+    // Estimated size of the responses which don't carry entries, and of the header of the others
+    private static final int RESPONSE_OVERHEAD_BYTES = 64;
+
+    private final long limitBytes;
+    private final long resumeThresholdBytes;
+    private final AtomicLong usage = new AtomicLong();
+
+    // Guarded by this
+    private final List<ChannelMemory> pausedChannels = new ArrayList<>();
+    private volatile int numPausedChannels = 0;
+
+    @StatsDoc(
+        name = RESPONSE_MEMORY_CHANNEL_PAUSES,
+        help = "number of times a channel stopped being read because of the response memory limit"
+    )
+    private final Counter channelPausesCounter;
+
+    /**
+     * Memory used by the pending responses of a channel.
+     */
+    private static class ChannelMemory {
+        final Channel channel;
+        final AtomicLong pendingBytes = new AtomicLong();
+        // Guarded by the controller
+        boolean paused = false;
+
+        ChannelMemory(Channel channel) {
+            this.channel = channel;
+        }
+    }
+
+    ResponseMemoryController(long limitBytes, StatsLogger statsLogger) {
+        this.limitBytes = limitBytes;
+        this.resumeThresholdBytes = limitBytes - limitBytes / 4;
+        this.channelPausesCounter = statsLogger.getCounter(RESPONSE_MEMORY_CHANNEL_PAUSES);
+        statsLogger.registerGauge(RESPONSE_MEMORY_USAGE, new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return usage.get();
+            }
+        });
+        statsLogger.registerGauge(RESPONSE_MEMORY_PAUSED_CHANNELS, new Gauge<Integer>() {
+            @Override
+            public Integer getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Integer getSample() {
+                return numPausedChannels;
+            }
+        });
+    }
+
+    /**
+     * Estimate the memory used by a response until it is flushed. It must be called before the
+     * response is written, since writing it releases its buffers.
+     */
+    static long sizeOf(Object response) {
+        if (response instanceof BookkeeperProtocol.Response) {
+            return ((BookkeeperProtocol.Response) response).getSerializedSize();
+        } else if (response instanceof BookieProtocol.ReadResponse) {
+            return RESPONSE_OVERHEAD_BYTES + ((BookieProtocol.ReadResponse) response).getData().readableBytes();
+        } else if (response instanceof BookieProtocol.BatchedReadResponse) {
+            return RESPONSE_OVERHEAD_BYTES
+                    + ((BookieProtocol.BatchedReadResponse) response).getData().readableBytes();
+        } else if (response instanceof ByteBuf) {
+            return ((ByteBuf) response).readableBytes();
+        } else if (response instanceof ByteBufList) {
+            return ((ByteBufList) response).readableBytes();
+        } else {
+            return RESPONSE_OVERHEAD_BYTES;
+        }
+    }
+
+    /**
+     * Account a response written to a channel until its write completes.
+     *
+     * @param channel the channel the response is written to
+     * @param size the size of the response, as given by {@link #sizeOf(Object)}
+     * @param writeFuture the future of the write of the response
+     */
+    void track(Channel channel, long size, ChannelFuture writeFuture) {
+        ChannelMemory channelMemory = getChannelMemory(channel);
+        channelMemory.pendingBytes.addAndGet(size);
+        if (usage.addAndGet(size) > limitBytes) {
+            pause(channelMemory);
+        }
+        writeFuture.addListener(future -> release(channelMemory, size));
+    }
+
+    long getUsage() {
+        return usage.get();
+    }
+
+    private void release(ChannelMemory channelMemory, long size) {
+        channelMemory.pendingBytes.addAndGet(-size);
+        if (usage.addAndGet(-size) <= resumeThresholdBytes && numPausedChannels > 0) {
+            resumePausedChannels();
+        }
+    }
+
+    private synchronized void pause(ChannelMemory channelMemory) {
+        // The memory may have been released since the limit was exceeded
+        if (channelMemory.paused || usage.get() <= resumeThresholdBytes || !channelMemory.channel.isActive()) {
+            return;
+        }
+        channelMemory.paused = true;
+        pausedChannels.add(channelMemory);
+        numPausedChannels = pausedChannels.size();
+        channelMemory.channel.config().setAutoRead(false);
+        channelPausesCounter.inc();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Response memory usage {} exceeded the limit {}, disabled autoread on channel {}",
+                    usage.get(), limitBytes, channelMemory.channel);
+        }
+        // A release may have taken the memory used below the threshold before the channel was counted
+        // as paused, in which case it did not resume the paused channels
+        if (usage.get() <= resumeThresholdBytes) {
+            resumePausedChannels();
+        }
+    }
+
+    private synchronized void resumePausedChannels() {
+        if (pausedChannels.isEmpty() || usage.get() > resumeThresholdBytes) {
+            return;
+        }
+        pausedChannels.sort(Comparator.comparingLong(channelMemory -> channelMemory.pendingBytes.get()));
+        for (ChannelMemory channelMemory : pausedChannels) {
+            channelMemory.paused = false;
+            channelMemory.channel.config().setAutoRead(true);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Response memory usage {} below {}, re-enabled autoread on {} channels",
+                    usage.get(), resumeThresholdBytes, pausedChannels.size());
+        }
+        pausedChannels.clear();
+        numPausedChannels = 0;
+    }
+
+    private synchronized void onChannelClosed(ChannelMemory channelMemory) {
+        if (channelMemory.paused) {
+            channelMemory.paused = false;
+            pausedChannels.remove(channelMemory);
+            numPausedChannels = pausedChannels.size();
+        }
+    }
+
+    private ChannelMemory getChannelMemory(Channel channel) {
+        ChannelMemory channelMemory = channel.attr(CHANNEL_MEMORY).get();
+        if (channelMemory == null) {
+            ChannelMemory newChannelMemory = new ChannelMemory(channel);
+            channelMemory = channel.attr(CHANNEL_MEMORY).setIfAbsent(newChannelMemory);
+            if (channelMemory == null) {
+                channelMemory = newChannelMemory;
+                channel.closeFuture().addListener(future -> onChannelClosed(newChannelMemory));
+            }
+        }
+        return channelMemory;
+    }
+}
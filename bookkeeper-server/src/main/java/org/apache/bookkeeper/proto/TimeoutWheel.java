@@ -0,0 +1,205 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Hashed timing wheel tracking the deadlines of the requests in flight on a channel.
+ *
+ * <p>Entries are linked in the slot of the tick of their deadline, so that tracking and
+ * untracking a request takes constant time and does not allocate, and a sweep only visits
+ * the slots of the ticks elapsed since the previous sweep, instead of all the requests in
+ * flight. The wheel is striped, so that the threads sending requests for different ledgers
+ * and the threads completing them mostly contend on different locks.
+ */
+class TimeoutWheel {
+
+    private static final int NUM_STRIPES = 8;
+    // Deadlines further than a full turn of the wheel are only checked once per turn
+    private static final int WHEEL_SIZE = 64;
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * A request tracked by the wheel.
+     */
+    abstract static class Entry {
+        private Entry prev;
+        private Entry next;
+        private long deadlineNanos;
+        private int slot;
+        // Incremented each time the entry is tracked, to tell a pooled entry from its previous uses
+        private long generation;
+        // Index of the stripe the entry is linked in, or -1 if it is not tracked
+        private volatile int stripe = -1;
+
+        /**
+         * @return the number of times the entry was tracked. The caller of {@link #add} owns the entry, and
+         *         synchronizes the reads with the reuse of the entry.
+         */
+        long generation() {
+            return generation;
+        }
+
+        /**
+         * Called, without holding any lock of the wheel, once the deadline of the entry passed.
+         *
+         * <p>A pooled entry may have been reused and tracked again in the meantime, in which case
+         * {@link #generation()} differs from the given generation, and the new request did not time out.
+         *
+         * @param generation the generation of the entry when its deadline passed
+         * @return true if the request actually timed out, false if it completed in the meantime
+         */
+        abstract boolean onTimeout(long generation);
+    }
+
+    private static class Stripe {
+        final Entry[] slots = new Entry[WHEEL_SIZE];
+        // All the slots up to this tick were swept
+        long sweptTick;
+
+        Stripe(long sweptTick) {
+            this.sweptTick = sweptTick;
+        }
+    }
+
+    private final Stripe[] stripes = new Stripe[NUM_STRIPES];
+
+    TimeoutWheel() {
+        long tick = tick(MathUtils.nowInNano());
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            stripes[i] = new Stripe(tick - 1);
+        }
+    }
+
+    /**
+     * Track an entry until it is removed or its deadline passes.
+     *
+     * @param entry an entry which is not tracked yet
+     * @param deadlineNanos the deadline, as given by {@link MathUtils#nowInNano()}
+     * @param stripeKey key used to pick the stripe, e.g. the ledger id
+     */
+    void add(Entry entry, long deadlineNanos, long stripeKey) {
+        int index = MathUtils.signSafeMod(stripeKey, NUM_STRIPES);
+        Stripe stripe = stripes[index];
+        synchronized (stripe) {
+            // A deadline in a tick which was already swept is checked at the next sweep
+            long tick = Math.max(tick(deadlineNanos), stripe.sweptTick + 1);
+            int slot = (int) (tick & (WHEEL_SIZE - 1));
+            Entry head = stripe.slots[slot];
+            entry.prev = null;
+            entry.next = head;
+            if (head != null) {
+                head.prev = entry;
+            }
+            stripe.slots[slot] = entry;
+            entry.slot = slot;
+            entry.deadlineNanos = deadlineNanos;
+            entry.generation++;
+            entry.stripe = index;
+        }
+    }
+
+    /**
+     * Stop tracking an entry, if it is still tracked.
+     */
+    void remove(Entry entry) {
+        int index = entry.stripe;
+        if (index < 0) {
+            return;
+        }
+        Stripe stripe = stripes[index];
+        synchronized (stripe) {
+            if (entry.stripe == index) {
+                unlink(stripe, entry);
+            }
+        }
+    }
+
+    /**
+     * Stop tracking the entries whose deadline passed and notify them.
+     *
+     * @return the number of entries which actually timed out
+     */
+    int expire(long nowNanos) {
+        long nowTick = tick(nowNanos);
+        List<Entry> expired = null;
+        List<Long> generations = null;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                // After a full turn, all the slots were visited
+                long fromTick = Math.max(stripe.sweptTick + 1, nowTick - WHEEL_SIZE + 1);
+                for (long tick = fromTick; tick <= nowTick; tick++) {
+                    Entry entry = stripe.slots[(int) (tick & (WHEEL_SIZE - 1))];
+                    while (entry != null) {
+                        Entry next = entry.next;
+                        // Entries of the later turns of the wheel stay in the slot
+                        if (entry.deadlineNanos - nowNanos <= 0) {
+                            unlink(stripe, entry);
+                            if (expired == null) {
+                                expired = new ArrayList<>();
+                                generations = new ArrayList<>();
+                            }
+                            expired.add(entry);
+                            generations.add(entry.generation);
+                        }
+                        entry = next;
+                    }
+                }
+                // The current tick is not over yet, its slot is swept again next time
+                stripe.sweptTick = nowTick - 1;
+            }
+        }
+
+        if (expired == null) {
+            return 0;
+        }
+        int timedOut = 0;
+        for (int i = 0; i < expired.size(); i++) {
+            if (expired.get(i).onTimeout(generations.get(i))) {
+                timedOut++;
+            }
+        }
+        return timedOut;
+    }
+
+    private static void unlink(Stripe stripe, Entry entry) {
+        if (entry.prev == null) {
+            stripe.slots[entry.slot] = entry.next;
+        } else {
+            entry.prev.next = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+        entry.stripe = -1;
+    }
+
+    private static long tick(long nanos) {
+        return Math.floorDiv(nanos, TICK_NANOS);
+    }
+}
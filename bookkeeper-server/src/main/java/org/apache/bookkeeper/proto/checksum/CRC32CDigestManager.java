@@ -18,7 +18,6 @@ package org.apache.bookkeeper.proto.checksum;
 * limitations under the License.
 */
 
-import com.scurrilous.circe.checksum.Crc32cIntChecksum;
 import com.scurrilous.circe.crc.Sse42Crc32C;
 
 import io.netty.buffer.ByteBuf;
@@ -27,24 +26,38 @@ import io.netty.util.concurrent.FastThreadLocal;
 
 import lombok.extern.slf4j.Slf4j;
 
-import org.apache.commons.lang3.mutable.MutableInt;
-
+/**
+ * Digest manager for CRC32C checksum.
+ */
 @Slf4j
 class CRC32CDigestManager extends DigestManager {
 
+    /**
+     * Interface that abstracts different implementations of the CRC32C digest.
+     */
+    interface CRC32CDigest {
+        int getValueAndReset();
+
+        void update(ByteBuf buf);
+    }
+
     private static boolean nonSupportedMessagePrinted = false;
 
-    private static final FastThreadLocal<MutableInt> currentCrc = new FastThreadLocal<MutableInt>() {
+    private static final FastThreadLocal<CRC32CDigest> crc = new FastThreadLocal<CRC32CDigest>() {
         @Override
-        protected MutableInt initialValue() throws Exception {
-            return new MutableInt(0);
+        protected CRC32CDigest initialValue() {
+            if (JdkCRC32CDigest.isSupported()) {
+                return new JdkCRC32CDigest();
+            } else {
+                return new CirceCRC32CDigest();
+            }
         }
     };
 
     public CRC32CDigestManager(long ledgerId, boolean useV2Protocol, ByteBufAllocator allocator) {
         super(ledgerId, useV2Protocol, allocator);
 
-        if (!Sse42Crc32C.isSupported() && !nonSupportedMessagePrinted) {
+        if (!JdkCRC32CDigest.isSupported() && !Sse42Crc32C.isSupported() && !nonSupportedMessagePrinted) {
             log.warn("Sse42Crc32C is not supported, will use a slower CRC32C implementation.");
             nonSupportedMessagePrinted = true;
         }
@@ -57,15 +70,11 @@ class CRC32CDigestManager extends DigestManager {
 
     @Override
     void populateValueAndReset(ByteBuf buf) {
-        MutableInt current = currentCrc.get();
-        buf.writeInt(current.intValue());
-        current.setValue(0);
+        buf.writeInt(crc.get().getValueAndReset());
     }
 
     @Override
     void update(ByteBuf data) {
-        MutableInt current = currentCrc.get();
-        final int lastCrc = current.intValue();
-        current.setValue(Crc32cIntChecksum.resumeChecksum(lastCrc, data));
+        crc.get().update(data);
     }
 }
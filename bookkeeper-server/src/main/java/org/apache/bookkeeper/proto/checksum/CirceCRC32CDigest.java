@@ -0,0 +1,55 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.bookkeeper.proto.checksum;
+
+import com.scurrilous.circe.checksum.Crc32cIntChecksum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+
+import org.apache.bookkeeper.proto.checksum.CRC32CDigestManager.CRC32CDigest;
+
+/**
+ * Implementation of CRC32C digest that uses the circe checksum, with the SSE4.2 JNI library if it can be
+ * loaded, or a pure Java implementation otherwise.
+ */
+class CirceCRC32CDigest implements CRC32CDigest {
+
+    private int crcValue;
+
+    @Override
+    public int getValueAndReset() {
+        int value = crcValue;
+        crcValue = 0;
+        return value;
+    }
+
+    @Override
+    public void update(ByteBuf buf) {
+        if (buf.nioBufferCount() > 1) {
+            // Checksum each component in place, rather than merging them into a single buffer
+            for (ByteBuffer buffer : buf.nioBuffers()) {
+                crcValue = Crc32cIntChecksum.resumeChecksum(crcValue, Unpooled.wrappedBuffer(buffer));
+            }
+        } else {
+            crcValue = Crc32cIntChecksum.resumeChecksum(crcValue, buf);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.bookkeeper.proto.checksum;
+
+import io.netty.buffer.ByteBuf;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.apache.bookkeeper.proto.checksum.CRC32CDigestManager.CRC32CDigest;
+
+/**
+ * Implementation of CRC32C digest that uses the {@code java.util.zip.CRC32C} class, when available (Java 9+).
+ *
+ * <p>The JIT compiles it to the CRC32C instructions of the CPU, both for heap and direct memory, without the
+ * overhead of a JNI call. The readable bytes of the buffers are passed as views, without copying them, and each
+ * component of a composite buffer is checksummed in place.
+ */
+@Slf4j
+class JdkCRC32CDigest implements CRC32CDigest {
+
+    public static boolean isSupported() {
+        return NEW_CRC32C != null;
+    }
+
+    private final Checksum crc;
+
+    JdkCRC32CDigest() {
+        try {
+            crc = (Checksum) NEW_CRC32C.invoke();
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to create CRC32C checksum", t);
+        }
+    }
+
+    @Override
+    public int getValueAndReset() {
+        int value = (int) crc.getValue();
+        crc.reset();
+        return value;
+    }
+
+    @Override
+    public void update(ByteBuf buf) {
+        if (buf.hasArray()) {
+            crc.update(buf.array(), buf.arrayOffset() + buf.readerIndex(), buf.readableBytes());
+        } else if (buf.nioBufferCount() == 1) {
+            update(buf.nioBuffer());
+        } else {
+            for (ByteBuffer buffer : buf.nioBuffers()) {
+                update(buffer);
+            }
+        }
+    }
+
+    private void update(ByteBuffer buffer) {
+        try {
+            UPDATE_BYTE_BUFFER.invokeExact(crc, buffer);
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private static final MethodHandle NEW_CRC32C;
+    private static final MethodHandle UPDATE_BYTE_BUFFER;
+
+    static {
+        MethodHandle newCrc32c = null;
+        MethodHandle updateByteBuffer = null;
+        try {
+            Class<?> crc32cClass = Class.forName("java.util.zip.CRC32C");
+            newCrc32c = MethodHandles.publicLookup().findConstructor(crc32cClass, MethodType.methodType(void.class));
+            updateByteBuffer = MethodHandles.publicLookup().findVirtual(Checksum.class, "update",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+        } catch (Throwable t) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to use 'java.util.zip.CRC32C' from JVM", t);
+            }
+            newCrc32c = null;
+            updateByteBuffer = null;
+        }
+
+        NEW_CRC32C = newCrc32c;
+        UPDATE_BYTE_BUFFER = updateByteBuffer;
+    }
+}
@@ -23,6 +23,9 @@ package org.apache.bookkeeper.replication;
 import static org.apache.bookkeeper.replication.ReplicationStats.AUDITOR_SCOPE;
 import static org.apache.bookkeeper.replication.ReplicationStats.AUDIT_BOOKIES_TIME;
 import static org.apache.bookkeeper.replication.ReplicationStats.BOOKIE_TO_LEDGERS_MAP_CREATION_TIME;
+import static org.apache.bookkeeper.replication.ReplicationStats.CHECK_ALL_LEDGERS_COVERAGE;
+import static org.apache.bookkeeper.replication.ReplicationStats.CHECK_ALL_LEDGERS_ENTRIES_VERIFIED;
+import static org.apache.bookkeeper.replication.ReplicationStats.CHECK_ALL_LEDGERS_THROUGHPUT;
 import static org.apache.bookkeeper.replication.ReplicationStats.CHECK_ALL_LEDGERS_TIME;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_BOOKIES_PER_LEDGER;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_BOOKIE_AUDITS_DELAYED;
@@ -33,12 +36,15 @@ import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_HAV
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_HAVING_LESS_THAN_WQ_REPLICAS_OF_AN_ENTRY;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_HAVING_NO_REPLICA_OF_AN_ENTRY;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_NOT_ADHERING_TO_PLACEMENT_POLICY;
+import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_SKIPPED_BY_CHECKPOINT;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_SOFTLY_ADHERING_TO_PLACEMENT_POLICY;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_REPLICATED_LEDGERS;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_UNDERREPLICATED_LEDGERS_ELAPSED_RECOVERY_GRACE_PERIOD;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_UNDER_REPLICATED_LEDGERS;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_UNDER_REPLICATED_LEDGERS_GUAGE;
 import static org.apache.bookkeeper.replication.ReplicationStats.PLACEMENT_POLICY_CHECK_TIME;
+import static org.apache.bookkeeper.replication.ReplicationStats.REPLICAS_CHECK_COVERAGE;
+import static org.apache.bookkeeper.replication.ReplicationStats.REPLICAS_CHECK_THROUGHPUT;
 import static org.apache.bookkeeper.replication.ReplicationStats.REPLICAS_CHECK_TIME;
 import static org.apache.bookkeeper.replication.ReplicationStats.UNDER_REPLICATED_LEDGERS_TOTAL_SIZE;
 import static org.apache.bookkeeper.replication.ReplicationStats.URL_PUBLISH_TIME_FOR_LOST_BOOKIE;
@@ -53,6 +59,7 @@ import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.SettableFuture;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.BitSet;
@@ -93,8 +100,6 @@ import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
-import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
-import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
 import org.apache.bookkeeper.meta.LedgerManagerFactory;
 import org.apache.bookkeeper.meta.LedgerUnderreplicationManager;
 import org.apache.bookkeeper.meta.UnderreplicatedLedger;
@@ -135,7 +140,6 @@ import org.slf4j.LoggerFactory;
 )
 public class Auditor implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(Auditor.class);
-    private static final int MAX_CONCURRENT_REPLICAS_CHECK_LEDGER_REQUESTS = 100;
     private static final int REPLICAS_CHECK_TIMEOUT_IN_SECS = 120;
     private static final BitSet EMPTY_BITSET = new BitSet();
     private final ServerConfiguration conf;
@@ -208,6 +212,37 @@ public class Auditor implements AutoCloseable {
             help = "the latency distribution of replicas check"
         )
     private final OpStatsLogger replicasCheckTime;
+    @StatsDoc(
+        name = CHECK_ALL_LEDGERS_THROUGHPUT,
+        help = "the distribution of the number of ledgers checked per second by each run of checking all ledgers"
+    )
+    private final OpStatsLogger checkAllLedgersThroughput;
+    @StatsDoc(
+        name = CHECK_ALL_LEDGERS_COVERAGE,
+        help = "the distribution of the percentage of the ledgers covered by each run of checking all ledgers,"
+            + " failed if the run was stopped before checking all the ledgers"
+    )
+    private final OpStatsLogger checkAllLedgersCoverage;
+    @StatsDoc(
+        name = CHECK_ALL_LEDGERS_ENTRIES_VERIFIED,
+        help = "the distribution of the number of entries read by each run of checking all ledgers"
+    )
+    private final OpStatsLogger checkAllLedgersEntriesVerified;
+    @StatsDoc(
+        name = REPLICAS_CHECK_THROUGHPUT,
+        help = "the distribution of the number of ledgers checked per second by each run of replicas check"
+    )
+    private final OpStatsLogger replicasCheckThroughput;
+    @StatsDoc(
+        name = REPLICAS_CHECK_COVERAGE,
+        help = "the distribution of the percentage of the ledgers covered by each run of replicas check"
+    )
+    private final OpStatsLogger replicasCheckCoverage;
+    @StatsDoc(
+        name = NUM_LEDGERS_SKIPPED_BY_CHECKPOINT,
+        help = "the number of ledgers not checked again, since checked by an interrupted run of the same check"
+    )
+    private final Counter numLedgersSkippedByCheckpoint;
     @StatsDoc(
         name = AUDIT_BOOKIES_TIME,
         help = "the latency distribution of auditing all the bookies"
@@ -377,6 +412,11 @@ public class Auditor implements AutoCloseable {
         this.openLedgerNoRecoverySemaphoreWaitTimeoutMSec =
             conf.getAuditorAcquireConcurrentOpenLedgerOperationsTimeoutMSec();
 
+        if (conf.getAuditorLedgerCheckParallelism() <= 0) {
+            LOG.error("auditorLedgerCheckParallelism should be greater than 0");
+            throw new UnavailableException("auditorLedgerCheckParallelism should be greater than 0");
+        }
+
         this.underReplicatedLedgersGuageValue = new AtomicInteger(0);
         numUnderReplicatedLedger = this.statsLogger.getOpStatsLogger(ReplicationStats.NUM_UNDER_REPLICATED_LEDGERS);
         underReplicatedLedgerTotalSize = this.statsLogger.getOpStatsLogger(UNDER_REPLICATED_LEDGERS_TOTAL_SIZE);
@@ -387,6 +427,12 @@ public class Auditor implements AutoCloseable {
         checkAllLedgersTime = this.statsLogger.getOpStatsLogger(ReplicationStats.CHECK_ALL_LEDGERS_TIME);
         placementPolicyCheckTime = this.statsLogger.getOpStatsLogger(ReplicationStats.PLACEMENT_POLICY_CHECK_TIME);
         replicasCheckTime = this.statsLogger.getOpStatsLogger(ReplicationStats.REPLICAS_CHECK_TIME);
+        checkAllLedgersThroughput = this.statsLogger.getOpStatsLogger(CHECK_ALL_LEDGERS_THROUGHPUT);
+        checkAllLedgersCoverage = this.statsLogger.getOpStatsLogger(CHECK_ALL_LEDGERS_COVERAGE);
+        checkAllLedgersEntriesVerified = this.statsLogger.getOpStatsLogger(CHECK_ALL_LEDGERS_ENTRIES_VERIFIED);
+        replicasCheckThroughput = this.statsLogger.getOpStatsLogger(REPLICAS_CHECK_THROUGHPUT);
+        replicasCheckCoverage = this.statsLogger.getOpStatsLogger(REPLICAS_CHECK_COVERAGE);
+        numLedgersSkippedByCheckpoint = this.statsLogger.getCounter(NUM_LEDGERS_SKIPPED_BY_CHECKPOINT);
         auditBookiesTime = this.statsLogger.getOpStatsLogger(ReplicationStats.AUDIT_BOOKIES_TIME);
         numLedgersChecked = this.statsLogger.getCounter(ReplicationStats.NUM_LEDGERS_CHECKED);
         numFragmentsPerLedger = statsLogger.getOpStatsLogger(ReplicationStats.NUM_FRAGMENTS_PER_LEDGER);
@@ -509,7 +555,14 @@ public class Auditor implements AutoCloseable {
         try {
             LedgerManagerFactory ledgerManagerFactory = bkc.getLedgerManagerFactory();
             ledgerManager = ledgerManagerFactory.newLedgerManager();
-            this.bookieLedgerIndexer = new BookieLedgerIndexer(ledgerManager);
+            if (conf.isAuditorIncrementalBookieLedgerIndexEnabled()) {
+                String snapshotPath = conf.getAuditorBookieLedgerIndexSnapshotPath();
+                this.bookieLedgerIndexer = new IncrementalBookieLedgerIndexer(ledgerManager,
+                        conf.getAuditorBookieLedgerIndexReconcileInterval(), conf.getZkTimeout() * 2,
+                        snapshotPath.isEmpty() ? null : new File(snapshotPath));
+            } else {
+                this.bookieLedgerIndexer = new BookieLedgerIndexer(ledgerManager);
+            }
 
             this.ledgerUnderreplicationManager = ledgerManagerFactory
                     .newLedgerUnderreplicationManager();
@@ -714,6 +767,10 @@ public class Auditor implements AutoCloseable {
                 return;
             }
 
+            if (bookieLedgerIndexer instanceof IncrementalBookieLedgerIndexer) {
+                ((IncrementalBookieLedgerIndexer) bookieLedgerIndexer).start();
+            }
+
             try {
                 watchBookieChanges();
                 knownBookies = getAvailableBookies();
@@ -1298,35 +1355,22 @@ public class Auditor implements AutoCloseable {
         final BookKeeper localClient = getBookKeeper(conf);
         final BookKeeperAdmin localAdmin = getBookKeeperAdmin(localClient);
         try {
-            final LedgerChecker checker = new LedgerChecker(localClient, conf.getInFlightReadEntryNumInLedgerChecker());
-
-            final CompletableFuture<Void> processFuture = new CompletableFuture<>();
-
-            Processor<Long> checkLedgersProcessor = (ledgerId, callback) -> {
-                try {
-                    if (!ledgerUnderreplicationManager.isLedgerReplicationEnabled()) {
-                        LOG.info("Ledger rereplication has been disabled, aborting periodic check");
-                        FutureUtils.complete(processFuture, null);
-                        return;
-                    }
-                } catch (UnavailableException ue) {
-                    LOG.error("Underreplication manager unavailable running periodic check", ue);
-                    FutureUtils.complete(processFuture, null);
-                    return;
-                }
+            final LedgerChecker checker = new LedgerChecker(localClient, conf.getInFlightReadEntryNumInLedgerChecker(),
+                    conf.getInFlightReadEntryNumPerBookieInLedgerChecker());
 
+            CheckpointedLedgerScan.LedgerCheck checkLedger = (ledgerId, callback) -> {
                 try {
                     if (!openLedgerNoRecoverySemaphore.tryAcquire(openLedgerNoRecoverySemaphoreWaitTimeoutMSec,
                         TimeUnit.MILLISECONDS)) {
                         LOG.warn("Failed to acquire semaphore for {} ms, ledgerId: {}",
                             openLedgerNoRecoverySemaphoreWaitTimeoutMSec, ledgerId);
-                        FutureUtils.complete(processFuture, null);
+                        callback.processResult(Code.ReplicationException, null, null);
                         return;
                     }
                 } catch (InterruptedException e) {
                     LOG.error("Unable to acquire open ledger operation semaphore ", e);
                     Thread.currentThread().interrupt();
-                    FutureUtils.complete(processFuture, null);
+                    callback.processResult(Code.InterruptedException, null, null);
                     return;
                 }
 
@@ -1355,15 +1399,43 @@ public class Auditor implements AutoCloseable {
                 }, null);
             };
 
-            ledgerManager.asyncProcessLedgers(checkLedgersProcessor,
-                (rc, path, ctx) -> {
-                    if (Code.OK == rc) {
-                        FutureUtils.complete(processFuture, null);
-                    } else {
-                        FutureUtils.completeExceptionally(processFuture, BKException.create(rc));
+            CheckpointedLedgerScan.Checkpoint checkpoint = null;
+            if (conf.isAuditorLedgerCheckCheckpointEnabled()) {
+                checkpoint = new CheckpointedLedgerScan.Checkpoint() {
+                    @Override
+                    public long get() throws UnavailableException {
+                        return ledgerUnderreplicationManager.getCheckAllLedgersCheckpoint();
+                    }
+
+                    @Override
+                    public void set(long lastCheckedLedgerId) throws UnavailableException {
+                        ledgerUnderreplicationManager.setCheckAllLedgersCheckpoint(lastCheckedLedgerId);
                     }
-                }, null, BKException.Code.OK, BKException.Code.ReadException);
-            FutureUtils.result(processFuture, BKException.HANDLER);
+                };
+            }
+            CheckpointedLedgerScan scan = new CheckpointedLedgerScan("checkAllLedgers", ledgerManager, zkOpTimeoutMs,
+                    conf.getAuditorLedgerCheckParallelism(), 0, checkpoint);
+            CheckpointedLedgerScan.Result result;
+            try {
+                result = scan.run(checkLedger, () -> {
+                    try {
+                        if (ledgerUnderreplicationManager.isLedgerReplicationEnabled()) {
+                            return true;
+                        }
+                        LOG.info("Ledger rereplication has been disabled, aborting periodic check");
+                    } catch (UnavailableException ue) {
+                        LOG.error("Underreplication manager unavailable running periodic check", ue);
+                    }
+                    return false;
+                });
+            } catch (BKAuditException bae) {
+                throw new IOException(bae);
+            }
+            reportLedgerScan("checkAllLedgers", result, checkAllLedgersThroughput, checkAllLedgersCoverage);
+            checkAllLedgersEntriesVerified.registerSuccessfulValue(checker.getNumEntriesRead());
+            if (result.rc != Code.OK) {
+                throw BKException.create(Code.ReadException);
+            }
             try {
                 ledgerUnderreplicationManager.setCheckAllLedgersCTime(System.currentTimeMillis());
             } catch (UnavailableException ue) {
@@ -1375,6 +1447,21 @@ public class Auditor implements AutoCloseable {
         }
     }
 
+    private void reportLedgerScan(String name, CheckpointedLedgerScan.Result result,
+                                  OpStatsLogger throughput, OpStatsLogger coverage) {
+        LOG.info("{} checked {} of {} ledgers in {} ms ({} ledgers/s), {} ledgers checked by the previous run",
+                name, result.numLedgersChecked, result.numLedgers,
+                TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos), (long) result.ledgersCheckedPerSecond(),
+                result.numLedgersSkipped);
+        numLedgersSkippedByCheckpoint.add(result.numLedgersSkipped);
+        throughput.registerSuccessfulValue((long) result.ledgersCheckedPerSecond());
+        if (result.completed) {
+            coverage.registerSuccessfulValue(result.coveragePercentage());
+        } else {
+            coverage.registerFailedValue(result.coveragePercentage());
+        }
+    }
+
     void placementPolicyCheck() throws BKAuditException {
         final CountDownLatch placementPolicyCheckLatch = new CountDownLatch(1);
         this.numOfLedgersFoundNotAdheringInPlacementPolicyCheck.set(0);
@@ -1574,11 +1661,11 @@ public class Auditor implements AutoCloseable {
     private class ReadLedgerMetadataCallbackForReplicasCheck
             implements BiConsumer<Versioned<LedgerMetadata>, Throwable> {
         private final long ledgerInRange;
-        private final MultiCallback mcbForThisLedgerRange;
+        private final VoidCallback mcbForThisLedgerRange;
         private final ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithMissingEntries;
         private final ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithUnavailableBookies;
 
-        ReadLedgerMetadataCallbackForReplicasCheck(long ledgerInRange, MultiCallback mcbForThisLedgerRange,
+        ReadLedgerMetadataCallbackForReplicasCheck(long ledgerInRange, VoidCallback mcbForThisLedgerRange,
                 ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithMissingEntries,
                 ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithUnavailableBookies) {
             this.ledgerInRange = ledgerInRange;
@@ -1839,116 +1926,57 @@ public class Auditor implements AutoCloseable {
         }
     }
 
-    private static class ReplicasCheckFinalCallback implements AsyncCallback.VoidCallback {
-        final AtomicInteger resultCode;
-        final CountDownLatch replicasCheckLatch;
-
-        private ReplicasCheckFinalCallback(AtomicInteger resultCode, CountDownLatch replicasCheckLatch) {
-            this.resultCode = resultCode;
-            this.replicasCheckLatch = replicasCheckLatch;
-        }
-
-        @Override
-        public void processResult(int rc, String s, Object obj) {
-            resultCode.set(rc);
-            replicasCheckLatch.countDown();
-        }
-    }
-
     void replicasCheck() throws BKAuditException {
         ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithMissingEntries =
                     new ConcurrentHashMap<Long, MissingEntriesInfoOfLedger>();
         ConcurrentHashMap<Long, MissingEntriesInfoOfLedger> ledgersWithUnavailableBookies =
                     new ConcurrentHashMap<Long, MissingEntriesInfoOfLedger>();
-        LedgerRangeIterator ledgerRangeIterator = ledgerManager.getLedgerRanges(zkOpTimeoutMs);
-        final Semaphore maxConcurrentSemaphore = new Semaphore(MAX_CONCURRENT_REPLICAS_CHECK_LEDGER_REQUESTS);
-        while (true) {
-            LedgerRange ledgerRange = null;
-            try {
-                if (ledgerRangeIterator.hasNext()) {
-                    ledgerRange = ledgerRangeIterator.next();
-                } else {
-                    break;
+        numLedgersFoundHavingNoReplicaOfAnEntry.set(0);
+        numLedgersFoundHavingLessThanAQReplicasOfAnEntry.set(0);
+        numLedgersFoundHavingLessThanWQReplicasOfAnEntry.set(0);
+
+        CheckpointedLedgerScan.Checkpoint checkpoint = null;
+        if (conf.isAuditorLedgerCheckCheckpointEnabled()) {
+            checkpoint = new CheckpointedLedgerScan.Checkpoint() {
+                @Override
+                public long get() throws UnavailableException {
+                    return ledgerUnderreplicationManager.getReplicasCheckCheckpoint();
                 }
-            } catch (IOException ioe) {
-                LOG.error("Got IOException while iterating LedgerRangeIterator", ioe);
-                throw new BKAuditException("Got IOException while iterating LedgerRangeIterator", ioe);
-            }
-            ledgersWithMissingEntries.clear();
-            ledgersWithUnavailableBookies.clear();
-            numLedgersFoundHavingNoReplicaOfAnEntry.set(0);
-            numLedgersFoundHavingLessThanAQReplicasOfAnEntry.set(0);
-            numLedgersFoundHavingLessThanWQReplicasOfAnEntry.set(0);
-            Set<Long> ledgersInRange = ledgerRange.getLedgers();
-            int numOfLedgersInRange = ledgersInRange.size();
-            // Final result after processing all the ledgers
-            final AtomicInteger resultCode = new AtomicInteger();
-            final CountDownLatch replicasCheckLatch = new CountDownLatch(1);
-
-            ReplicasCheckFinalCallback finalCB = new ReplicasCheckFinalCallback(resultCode, replicasCheckLatch);
-            MultiCallback mcbForThisLedgerRange = new MultiCallback(numOfLedgersInRange, finalCB, null,
-                    BKException.Code.OK, BKException.Code.ReadException) {
+
                 @Override
-                public void processResult(int rc, String path, Object ctx) {
-                    try {
-                        super.processResult(rc, path, ctx);
-                    } finally {
-                        maxConcurrentSemaphore.release();
-                    }
+                public void set(long lastCheckedLedgerId) throws UnavailableException {
+                    ledgerUnderreplicationManager.setReplicasCheckCheckpoint(lastCheckedLedgerId);
                 }
             };
-            LOG.debug("Number of ledgers in the current LedgerRange : {}", numOfLedgersInRange);
-            for (Long ledgerInRange : ledgersInRange) {
-                try {
-                    if (!maxConcurrentSemaphore.tryAcquire(REPLICAS_CHECK_TIMEOUT_IN_SECS, TimeUnit.SECONDS)) {
-                        LOG.error("Timedout ({} secs) while waiting for acquiring semaphore",
-                                REPLICAS_CHECK_TIMEOUT_IN_SECS);
-                        throw new BKAuditException("Timedout while waiting for acquiring semaphore");
-                    }
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    LOG.error("Got InterruptedException while acquiring semaphore for replicascheck", ie);
-                    throw new BKAuditException("Got InterruptedException while acquiring semaphore for replicascheck",
-                            ie);
-                }
-                if (checkUnderReplicationForReplicasCheck(ledgerInRange, mcbForThisLedgerRange)) {
+        }
+        CheckpointedLedgerScan scan = new CheckpointedLedgerScan("replicasCheck", ledgerManager, zkOpTimeoutMs,
+                conf.getAuditorLedgerCheckParallelism(), TimeUnit.SECONDS.toMillis(REPLICAS_CHECK_TIMEOUT_IN_SECS),
+                checkpoint);
+        CheckpointedLedgerScan.Result result;
+        try {
+            result = scan.run((ledgerId, callback) -> {
+                if (checkUnderReplicationForReplicasCheck(ledgerId, callback)) {
                     /*
                      * if ledger is marked underreplicated, then ignore this
                      * ledger for replicascheck.
                      */
-                    continue;
-                }
-                ledgerManager.readLedgerMetadata(ledgerInRange)
-                        .whenComplete(new ReadLedgerMetadataCallbackForReplicasCheck(ledgerInRange,
-                                mcbForThisLedgerRange, ledgersWithMissingEntries, ledgersWithUnavailableBookies));
-            }
-            try {
-                /*
-                 * if mcbForThisLedgerRange is not calledback within
-                 * REPLICAS_CHECK_TIMEOUT_IN_SECS secs then better give up
-                 * doing replicascheck, since there could be an issue and
-                 * blocking the single threaded auditor executor thread is not
-                 * expected.
-                 */
-                if (!replicasCheckLatch.await(REPLICAS_CHECK_TIMEOUT_IN_SECS, TimeUnit.SECONDS)) {
-                    LOG.error(
-                            "For LedgerRange with num of ledgers : {} it didn't complete replicascheck"
-                                    + " in {} secs, so giving up",
-                            numOfLedgersInRange, REPLICAS_CHECK_TIMEOUT_IN_SECS);
-                    throw new BKAuditException("Got InterruptedException while doing replicascheck");
+                    return;
                 }
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-                LOG.error("Got InterruptedException while doing replicascheck", ie);
-                throw new BKAuditException("Got InterruptedException while doing replicascheck", ie);
-            }
+                ledgerManager.readLedgerMetadata(ledgerId)
+                        .whenComplete(new ReadLedgerMetadataCallbackForReplicasCheck(ledgerId,
+                                callback, ledgersWithMissingEntries, ledgersWithUnavailableBookies));
+            }, () -> true);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            LOG.error("Got InterruptedException while doing replicascheck", ie);
+            throw new BKAuditException("Got InterruptedException while doing replicascheck", ie);
+        } finally {
             reportLedgersWithMissingEntries(ledgersWithMissingEntries);
             reportLedgersWithUnavailableBookies(ledgersWithUnavailableBookies);
-            int resultCodeIntValue = resultCode.get();
-            if (resultCodeIntValue != BKException.Code.OK) {
-                throw new BKAuditException("Exception while doing replicas check",
-                        BKException.create(resultCodeIntValue));
-            }
+        }
+        reportLedgerScan("replicasCheck", result, replicasCheckThroughput, replicasCheckCoverage);
+        if (result.rc != BKException.Code.OK) {
+            throw new BKAuditException("Exception while doing replicas check", BKException.create(result.rc));
         }
         try {
             ledgerUnderreplicationManager.setReplicasCheckCTime(System.currentTimeMillis());
@@ -2066,6 +2094,9 @@ public class Auditor implements AutoCloseable {
     public void shutdown() {
         LOG.info("Shutting down auditor");
         executor.shutdown();
+        if (bookieLedgerIndexer instanceof IncrementalBookieLedgerIndexer) {
+            ((IncrementalBookieLedgerIndexer) bookieLedgerIndexer).close();
+        }
         try {
             while (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
                 LOG.warn("Executor not shutting down, interrupting");
@@ -0,0 +1,263 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.replication;
+
+import java.io.IOException;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.apache.bookkeeper.replication.ReplicationException.BKAuditException;
+import org.apache.bookkeeper.replication.ReplicationException.UnavailableException;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walk of all the ledgers for a check of the auditor, checking the ledgers of each range of
+ * ledgers in parallel and recording the progress of the walk after each range, so that an
+ * interrupted walk resumes where it stopped instead of starting over.
+ *
+ * <p>The ledger managers list the ranges of ledgers in ascending order of ledger ids, so the last
+ * ledger of the last range checked is enough to resume the walk. If a range is listed out of
+ * order, the progress is not recorded anymore until the end of the walk.
+ */
+class CheckpointedLedgerScan {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointedLedgerScan.class);
+
+    /**
+     * Check of a ledger, calling back once the ledger is checked.
+     */
+    interface LedgerCheck {
+        void check(long ledgerId, VoidCallback cb);
+    }
+
+    /**
+     * Storage of the last ledger checked by an unfinished walk.
+     */
+    interface Checkpoint {
+        long get() throws UnavailableException;
+
+        void set(long lastCheckedLedgerId) throws UnavailableException;
+    }
+
+    /**
+     * Outcome of a walk.
+     */
+    static class Result {
+        // Ledgers listed, including the ones checked by the interrupted walk this walk resumed
+        long numLedgers = 0;
+        long numLedgersChecked = 0;
+        long numLedgersSkipped = 0;
+        long elapsedNanos = 0;
+        int rc = BKException.Code.OK;
+        boolean completed = false;
+
+        double ledgersCheckedPerSecond() {
+            return elapsedNanos > 0 ? numLedgersChecked * 1e9 / elapsedNanos : 0;
+        }
+
+        long coveragePercentage() {
+            return numLedgers > 0 ? (numLedgersChecked + numLedgersSkipped) * 100 / numLedgers : 100;
+        }
+    }
+
+    private final String name;
+    private final LedgerManager ledgerManager;
+    private final long zkOpTimeoutMs;
+    private final int parallelism;
+    private final long timeoutMs;
+    private final Checkpoint checkpoint;
+
+    /**
+     * Create a walk of all the ledgers.
+     *
+     * @param name name of the check, for logging
+     * @param ledgerManager the ledger manager listing the ledgers
+     * @param zkOpTimeoutMs timeout of listing the ledgers
+     * @param parallelism max number of ledgers checked in parallel
+     * @param timeoutMs max time to wait for a ledger check to start, or for a range to be checked, 0 to wait forever
+     * @param checkpoint storage of the progress of the walk, or null to not record the progress
+     */
+    CheckpointedLedgerScan(String name, LedgerManager ledgerManager, long zkOpTimeoutMs, int parallelism,
+                           long timeoutMs, Checkpoint checkpoint) {
+        this.name = name;
+        this.ledgerManager = ledgerManager;
+        this.zkOpTimeoutMs = zkOpTimeoutMs;
+        this.parallelism = parallelism;
+        this.timeoutMs = timeoutMs;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Check all the ledgers, after the last ledger checked by the previous walk if it was interrupted.
+     *
+     * <p>A ledger failing its check does not stop the walk, but the progress is not recorded after
+     * it, so that the next walk checks it again if this walk is interrupted. A walk reaching the end of
+     * the ledgers clears the checkpoint, whatever the outcome of the checks, so that the next walk
+     * checks all the ledgers.
+     *
+     * @param check the check of a ledger
+     * @param shouldContinue checked before each range, the walk stops if it returns false
+     * @return the outcome of the walk
+     */
+    Result run(LedgerCheck check, BooleanSupplier shouldContinue) throws BKAuditException, InterruptedException {
+        Result result = new Result();
+        long startTime = MathUtils.nowInNano();
+        long resumeAfter = getCheckpoint();
+        if (resumeAfter >= 0) {
+            LOG.info("Resuming {} after ledger {}", name, resumeAfter);
+        }
+        boolean recordProgress = checkpoint != null;
+        long lastListedLedger = -1;
+
+        Semaphore permits = new Semaphore(parallelism);
+        LedgerRangeIterator iterator = ledgerManager.getLedgerRanges(zkOpTimeoutMs);
+        try {
+            while (true) {
+                if (!shouldContinue.getAsBoolean()) {
+                    LOG.info("Stopping {} after {} ledgers", name, result.numLedgersChecked);
+                    return result;
+                }
+                LedgerRange range;
+                try {
+                    if (!iterator.hasNext()) {
+                        break;
+                    }
+                    range = iterator.next();
+                } catch (IOException ioe) {
+                    LOG.error("Got IOException while iterating LedgerRangeIterator", ioe);
+                    throw new BKAuditException("Got IOException while iterating LedgerRangeIterator", ioe);
+                }
+                NavigableSet<Long> ledgers = new TreeSet<>(range.getLedgers());
+                if (ledgers.isEmpty()) {
+                    continue;
+                }
+                if (ledgers.first() <= lastListedLedger && recordProgress) {
+                    LOG.warn("Ledgers of {} are not listed in order, not recording its progress anymore", name);
+                    recordProgress = false;
+                }
+                lastListedLedger = Math.max(lastListedLedger, ledgers.last());
+
+                NavigableSet<Long> toCheck = ledgers.tailSet(resumeAfter, false);
+                result.numLedgers += ledgers.size();
+                result.numLedgersSkipped += ledgers.size() - toCheck.size();
+                if (toCheck.isEmpty()) {
+                    continue;
+                }
+
+                int rc = checkRange(toCheck, check, permits);
+                result.numLedgersChecked += toCheck.size();
+                if (rc != BKException.Code.OK) {
+                    if (result.rc == BKException.Code.OK) {
+                        result.rc = rc;
+                    }
+                    recordProgress = false;
+                } else if (recordProgress) {
+                    setCheckpoint(ledgers.last());
+                }
+            }
+            result.completed = true;
+            // only an interrupted walk is resumed, the ledgers which failed their check are checked
+            // again by the next walk
+            setCheckpoint(-1);
+            return result;
+        } finally {
+            result.elapsedNanos = MathUtils.elapsedNanos(startTime);
+        }
+    }
+
+    private int checkRange(NavigableSet<Long> ledgers, LedgerCheck check, Semaphore permits)
+            throws BKAuditException, InterruptedException {
+        final AtomicInteger numPending = new AtomicInteger(ledgers.size());
+        final AtomicInteger rangeRc = new AtomicInteger(BKException.Code.OK);
+        final CountDownLatch rangeLatch = new CountDownLatch(1);
+        VoidCallback cb = (rc, path, ctx) -> {
+            permits.release();
+            if (rc != BKException.Code.OK) {
+                rangeRc.compareAndSet(BKException.Code.OK, rc);
+            }
+            if (numPending.decrementAndGet() == 0) {
+                rangeLatch.countDown();
+            }
+        };
+
+        for (long ledgerId : ledgers) {
+            if (timeoutMs > 0) {
+                if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                    LOG.error("Timedout ({} ms) while waiting to check ledger {} in {}", timeoutMs, ledgerId, name);
+                    throw new BKAuditException("Timedout while waiting for acquiring semaphore");
+                }
+            } else {
+                permits.acquire();
+            }
+            try {
+                check.check(ledgerId, cb);
+            } catch (RuntimeException re) {
+                LOG.error("Unexpected exception while checking ledger {} in {}", ledgerId, name, re);
+                cb.processResult(BKException.Code.UnexpectedConditionException, null, null);
+            }
+        }
+
+        if (timeoutMs > 0) {
+            if (!rangeLatch.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                LOG.error("Range of {} ledgers not checked in {} ms by {}, giving up", ledgers.size(), timeoutMs,
+                        name);
+                throw new BKAuditException("Timedout while waiting for the ledgers to be checked");
+            }
+        } else {
+            rangeLatch.await();
+        }
+        return rangeRc.get();
+    }
+
+    private long getCheckpoint() {
+        if (checkpoint == null) {
+            return -1;
+        }
+        try {
+            return checkpoint.get();
+        } catch (UnavailableException ue) {
+            LOG.warn("Failed to get the checkpoint of {}, checking all the ledgers", name, ue);
+            return -1;
+        }
+    }
+
+    private void setCheckpoint(long lastCheckedLedgerId) {
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            checkpoint.set(lastCheckedLedgerId);
+        } catch (UnavailableException ue) {
+            LOG.warn("Failed to record the checkpoint of {} at ledger {}", name, lastCheckedLedgerId, ue);
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.replication;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
+import org.apache.bookkeeper.replication.ReplicationException.BKAuditException;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bookie vs its corresponding ledgers, kept up to date instead of being generated for each audit.
+ *
+ * <p>A metadata listener is registered on each ledger, so that the index follows the changes of the
+ * ensembles and the deletion of the ledgers. The ledgers created since the last audit are found by
+ * listing the ledger ids before each audit, which is much cheaper than reading the metadata of every
+ * ledger: only the metadata of the new ledgers is read, when registering their listener.
+ *
+ * <p>The index can be saved to a local snapshot file after each reconciliation, so that an auditor
+ * restarting on the same node answers its first audits from the snapshot while the listeners of
+ * the ledgers are registered again.
+ */
+public class IncrementalBookieLedgerIndexer extends BookieLedgerIndexer implements LedgerMetadataListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalBookieLedgerIndexer.class);
+
+    private static final int SNAPSHOT_FORMAT_VERSION = 1;
+
+    private final LedgerManager ledgerManager;
+    private final long reconcileIntervalSec;
+    private final long zkOpTimeoutMs;
+    private final File snapshotFile;
+    private final ScheduledExecutorService executor;
+
+    // Guarded by this
+    private final ConcurrentLongHashMap<String[]> ledgerToBookies = ConcurrentLongHashMap.<String[]>newBuilder()
+            .expectedItems(4096)
+            .build();
+    private final Map<String, Set<Long>> bookieToLedgers = new ConcurrentHashMap<>();
+    // Ledgers whose metadata listener is registered
+    private final ConcurrentLongHashSet watchedLedgers = ConcurrentLongHashSet.newBuilder().build();
+    // Ledgers whose listener was registered during the current reconciliation, but not notified yet
+    private final ConcurrentLongHashMap<CompletableFuture<Void>> pendingLedgers =
+            ConcurrentLongHashMap.<CompletableFuture<Void>>newBuilder().build();
+
+    private volatile boolean initialized = false;
+
+    /**
+     * Create the index of the bookies and their ledgers.
+     *
+     * @param ledgerManager the ledger manager to list and watch the ledgers
+     * @param reconcileIntervalSec interval between two listings of the ledger ids
+     * @param zkOpTimeoutMs timeout of the metadata operations
+     * @param snapshotFile the file the index is saved to, or null if the index is not saved
+     */
+    public IncrementalBookieLedgerIndexer(LedgerManager ledgerManager, long reconcileIntervalSec, long zkOpTimeoutMs,
+                                          File snapshotFile) {
+        super(ledgerManager);
+        this.ledgerManager = ledgerManager;
+        this.reconcileIntervalSec = reconcileIntervalSec;
+        this.zkOpTimeoutMs = zkOpTimeoutMs;
+        this.snapshotFile = snapshotFile;
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new DefaultThreadFactory("AuditorBookieLedgerIndex", true));
+    }
+
+    /**
+     * Load the snapshot, if any, and start watching the ledgers.
+     */
+    public void start() {
+        if (snapshotFile != null && snapshotFile.exists()) {
+            try {
+                loadSnapshot();
+                initialized = true;
+                LOG.info("Loaded the index of {} ledgers from {}", ledgerToBookies.size(), snapshotFile);
+            } catch (IOException e) {
+                LOG.warn("Failed to load the bookie ledger index from {}, rebuilding it", snapshotFile, e);
+                clear();
+            }
+        }
+        executor.scheduleWithFixedDelay(this::reconcileAndSave, 0, reconcileIntervalSec, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop reconciling the index and unregister the listeners of the ledgers.
+     */
+    public void close() {
+        executor.shutdownNow();
+        watchedLedgers.forEach(ledgerId -> ledgerManager.unregisterLedgerMetadataListener(ledgerId, this));
+        watchedLedgers.clear();
+    }
+
+    /**
+     * Get the index of the bookies and their ledgers.
+     *
+     * <p>The ledger ids are listed first, so that the ledgers created since the last reconciliation are
+     * indexed too. The map returned is a copy of the index, which is not updated afterwards.
+     */
+    @Override
+    public Map<String, Set<Long>> getBookieToLedgerIndex() throws BKAuditException {
+        boolean indexed;
+        try {
+            // the first reconciliation builds the index, which is saved so that a restart does not rebuild it
+            indexed = executor.submit(() -> initialized ? reconcile(false) : reconcileAndSave()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BKAuditException("Interrupted while building the bookie-ledgers index", e);
+        } catch (Exception e) {
+            LOG.warn("Failed to reconcile the bookie ledger index", e);
+            indexed = false;
+        }
+        if (!indexed) {
+            // some ledgers may be missing from the index, fall back to reading the metadata of all the ledgers
+            return super.getBookieToLedgerIndex();
+        }
+        return copyBookieToLedgers();
+    }
+
+    @Override
+    public void onChanged(long ledgerId, Versioned<LedgerMetadata> metadata) {
+        if (metadata == null) {
+            // the ledger was deleted
+            watchedLedgers.remove(ledgerId);
+            removeLedger(ledgerId);
+        } else {
+            updateLedger(ledgerId, getBookies(metadata.getValue()));
+        }
+        CompletableFuture<Void> pending = pendingLedgers.remove(ledgerId);
+        if (pending != null) {
+            pending.complete(null);
+        }
+    }
+
+    private boolean reconcileAndSave() {
+        try {
+            boolean indexed = reconcile(true);
+            initialized = true;
+            if (snapshotFile != null) {
+                saveSnapshot();
+            }
+            return indexed;
+        } catch (IOException e) {
+            LOG.warn("Failed to reconcile the bookie ledger index, will retry in {} seconds",
+                    reconcileIntervalSec, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Watch the ledgers which are not watched yet and drop the ledgers which no longer exist.
+     *
+     * <p>Unless it is a full reconciliation, only the ledgers missing from the index are watched, the
+     * ledgers loaded from the snapshot are left to the next full reconciliation, and no ledger is dropped.
+     *
+     * @param full whether to watch all the ledgers and drop the ledgers which no longer exist
+     * @return true if every ledger listed is indexed, false if the metadata of some ledgers is not read yet
+     */
+    boolean reconcile(boolean full) throws IOException, InterruptedException {
+        long startTime = System.nanoTime();
+        ConcurrentLongHashSet existingLedgers = ConcurrentLongHashSet.newBuilder()
+                .expectedItems((int) Math.max(16, ledgerToBookies.size()))
+                .build();
+        long numNewLedgers = 0;
+
+        LedgerRangeIterator iterator = ledgerManager.getLedgerRanges(zkOpTimeoutMs);
+        while (iterator.hasNext()) {
+            LedgerRange range = iterator.next();
+            List<CompletableFuture<Void>> registered = new ArrayList<>();
+            for (long ledgerId : range.getLedgers()) {
+                existingLedgers.add(ledgerId);
+                if (!full && ledgerToBookies.containsKey(ledgerId)) {
+                    continue;
+                }
+                if (watchedLedgers.add(ledgerId)) {
+                    CompletableFuture<Void> pending = new CompletableFuture<>();
+                    pendingLedgers.put(ledgerId, pending);
+                    registered.add(pending);
+                    // reads the metadata of the ledger and notifies it
+                    ledgerManager.registerLedgerMetadataListener(ledgerId, this);
+                }
+            }
+            numNewLedgers += registered.size();
+            // bound the reads in flight to a range of ledgers
+            try {
+                FutureUtils.result(FutureUtils.collect(registered), zkOpTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                LOG.warn("Timed out reading the metadata of {} ledgers, they will be indexed once read",
+                        registered.size());
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+
+        boolean indexed = true;
+        for (long ledgerId : pendingLedgers.keys()) {
+            if (!ledgerToBookies.containsKey(ledgerId)) {
+                indexed = false;
+                break;
+            }
+        }
+        if (!full) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Indexed {} new ledgers in {} ms", numNewLedgers,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+            }
+            return indexed;
+        }
+
+        // only once all the ledgers were listed, drop the ones which no longer exist
+        List<Long> deletedLedgers = new ArrayList<>();
+        ledgerToBookies.forEach((ledgerId, bookies) -> {
+            if (!existingLedgers.contains(ledgerId)) {
+                deletedLedgers.add(ledgerId);
+            }
+        });
+        watchedLedgers.forEach(ledgerId -> {
+            if (!existingLedgers.contains(ledgerId)) {
+                deletedLedgers.add(ledgerId);
+            }
+        });
+        for (long ledgerId : deletedLedgers) {
+            if (watchedLedgers.remove(ledgerId)) {
+                ledgerManager.unregisterLedgerMetadataListener(ledgerId, this);
+            }
+            pendingLedgers.remove(ledgerId);
+            removeLedger(ledgerId);
+        }
+
+        LOG.info("Reconciled the bookie ledger index in {} ms: {} ledgers, {} new, {} deleted",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), existingLedgers.size(),
+                numNewLedgers, deletedLedgers.size());
+        return indexed;
+    }
+
+    private static String[] getBookies(LedgerMetadata metadata) {
+        Set<String> bookies = new TreeSet<>();
+        for (List<BookieId> ensemble : metadata.getAllEnsembles().values()) {
+            for (BookieId bookie : ensemble) {
+                bookies.add(bookie.toString());
+            }
+        }
+        return bookies.toArray(new String[0]);
+    }
+
+    private synchronized void updateLedger(long ledgerId, String[] bookies) {
+        String[] previousBookies = ledgerToBookies.put(ledgerId, bookies);
+        if (previousBookies != null) {
+            for (String bookie : previousBookies) {
+                removeFromBookie(bookie, ledgerId);
+            }
+        }
+        for (String bookie : bookies) {
+            bookieToLedgers.computeIfAbsent(bookie, b -> ConcurrentHashMap.newKeySet()).add(ledgerId);
+        }
+    }
+
+    private synchronized void removeLedger(long ledgerId) {
+        String[] bookies = ledgerToBookies.remove(ledgerId);
+        if (bookies != null) {
+            for (String bookie : bookies) {
+                removeFromBookie(bookie, ledgerId);
+            }
+        }
+    }
+
+    // Guarded by this
+    private void removeFromBookie(String bookie, long ledgerId) {
+        Set<Long> ledgers = bookieToLedgers.get(bookie);
+        if (ledgers != null) {
+            ledgers.remove(ledgerId);
+            if (ledgers.isEmpty()) {
+                // the bookie is no longer known from the index
+                bookieToLedgers.remove(bookie);
+            }
+        }
+    }
+
+    private synchronized Map<String, Set<Long>> copyBookieToLedgers() {
+        Map<String, Set<Long>> copy = new HashMap<>();
+        bookieToLedgers.forEach((bookie, ledgers) -> copy.put(bookie, new HashSet<>(ledgers)));
+        return copy;
+    }
+
+    private synchronized void clear() {
+        ledgerToBookies.clear();
+        bookieToLedgers.clear();
+    }
+
+    /**
+     * Save the index, as a dictionary of the bookies followed by the bookies of each ledger.
+     */
+    private void saveSnapshot() throws IOException {
+        File tmpFile = new File(snapshotFile.getPath() + ".tmp");
+        synchronized (this) {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                Map<String, Integer> bookieIndexes = new HashMap<>();
+                List<String> bookies = new ArrayList<>(bookieToLedgers.keySet());
+                out.writeInt(SNAPSHOT_FORMAT_VERSION);
+                out.writeInt(bookies.size());
+                for (String bookie : bookies) {
+                    bookieIndexes.put(bookie, bookieIndexes.size());
+                    out.writeUTF(bookie);
+                }
+                out.writeLong(ledgerToBookies.size());
+                for (long ledgerId : ledgerToBookies.keys()) {
+                    String[] ledgerBookies = ledgerToBookies.get(ledgerId);
+                    out.writeLong(ledgerId);
+                    out.writeInt(ledgerBookies.length);
+                    for (String bookie : ledgerBookies) {
+                        out.writeInt(bookieIndexes.get(bookie));
+                    }
+                }
+            }
+        }
+        Files.move(tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void loadSnapshot() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            int version = in.readInt();
+            if (version != SNAPSHOT_FORMAT_VERSION) {
+                throw new IOException("Unsupported bookie ledger index snapshot version " + version);
+            }
+            String[] bookies = new String[in.readInt()];
+            for (int i = 0; i < bookies.length; i++) {
+                bookies[i] = in.readUTF();
+            }
+            long numLedgers = in.readLong();
+            for (long i = 0; i < numLedgers; i++) {
+                long ledgerId = in.readLong();
+                String[] ledgerBookies = new String[in.readInt()];
+                for (int j = 0; j < ledgerBookies.length; j++) {
+                    ledgerBookies[j] = bookies[in.readInt()];
+                }
+                updateLedger(ledgerId, ledgerBookies);
+            }
+        }
+    }
+}
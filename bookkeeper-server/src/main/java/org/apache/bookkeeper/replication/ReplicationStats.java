@@ -36,6 +36,12 @@ public interface ReplicationStats {
     String CHECK_ALL_LEDGERS_TIME = "CHECK_ALL_LEDGERS_TIME";
     String PLACEMENT_POLICY_CHECK_TIME = "PLACEMENT_POLICY_CHECK_TIME";
     String REPLICAS_CHECK_TIME = "REPLICAS_CHECK_TIME";
+    String CHECK_ALL_LEDGERS_THROUGHPUT = "CHECK_ALL_LEDGERS_THROUGHPUT";
+    String CHECK_ALL_LEDGERS_COVERAGE = "CHECK_ALL_LEDGERS_COVERAGE";
+    String CHECK_ALL_LEDGERS_ENTRIES_VERIFIED = "CHECK_ALL_LEDGERS_ENTRIES_VERIFIED";
+    String REPLICAS_CHECK_THROUGHPUT = "REPLICAS_CHECK_THROUGHPUT";
+    String REPLICAS_CHECK_COVERAGE = "REPLICAS_CHECK_COVERAGE";
+    String NUM_LEDGERS_SKIPPED_BY_CHECKPOINT = "NUM_LEDGERS_SKIPPED_BY_CHECKPOINT";
     String AUDIT_BOOKIES_TIME = "AUDIT_BOOKIES_TIME";
     String NUM_FRAGMENTS_PER_LEDGER = "NUM_FRAGMENTS_PER_LEDGER";
     String NUM_BOOKIES_PER_LEDGER = "NUM_BOOKIES_PER_LEDGER";
@@ -61,6 +67,9 @@ public interface ReplicationStats {
     String NUM_BYTES_WRITTEN = "NUM_BYTES_WRITTEN";
     String READ_DATA_LATENCY = "READ_DATA_LATENCY";
     String WRITE_DATA_LATENCY = "WRITE_DATA_LATENCY";
+    String NUM_BYTES_READ_FROM_BOOKIE = "NUM_BYTES_READ_FROM_BOOKIE";
+    String NUM_BYTES_WRITTEN_TO_BOOKIE = "NUM_BYTES_WRITTEN_TO_BOOKIE";
+    String REPLICATION_IN_FLIGHT_BYTES = "REPLICATION_IN_FLIGHT_BYTES";
     String REPLICATE_EXCEPTION = "exceptions";
     String NUM_DEFER_LEDGER_LOCK_RELEASE_OF_FAILED_LEDGER = "NUM_DEFER_LEDGER_LOCK_RELEASE_OF_FAILED_LEDGER";
     String NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION = "NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION";
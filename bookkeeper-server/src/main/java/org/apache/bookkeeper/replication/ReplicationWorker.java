@@ -32,9 +32,9 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
@@ -42,8 +42,12 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
@@ -76,6 +80,11 @@ import org.slf4j.LoggerFactory;
 /**
  * ReplicationWorker will take the fragments one by one from
  * ZKLedgerUnderreplicationManager and replicates to it.
+ *
+ * <p>When configured with {@link ServerConfiguration#getRereplicationConcurrentLedgers()} greater than 1,
+ * the worker keeps acquiring under replicated ledgers until that many ledgers are being replicated,
+ * each one by a thread of a pool, so that healing a lost bookie is not limited by the latency of
+ * replicating a single ledger at a time.
  */
 @StatsDoc(
     name = REPLICATION_WORKER_SCOPE,
@@ -95,6 +104,9 @@ public class ReplicationWorker implements Runnable {
     private final BookKeeper bkc;
     private final boolean ownBkc;
     private final Thread workerThread;
+    private final int concurrentLedgers;
+    private final ExecutorService replicationExecutor;
+    private final Semaphore replicationPermits;
     private final long rwRereplicateBackoffMs;
     private final long openLedgerRereplicationGracePeriod;
     private final Timer pendingReplicationTimer;
@@ -179,6 +191,15 @@ public class ReplicationWorker implements Runnable {
         this.admin = new BookKeeperAdmin(bkc, statsLogger, new ClientConfiguration(conf));
         this.ledgerChecker = new LedgerChecker(bkc);
         this.workerThread = new BookieThread(this, "ReplicationWorker");
+        this.concurrentLedgers = Math.max(1, conf.getRereplicationConcurrentLedgers());
+        if (concurrentLedgers > 1) {
+            this.replicationExecutor = Executors.newFixedThreadPool(concurrentLedgers,
+                    new DefaultThreadFactory("ReplicationWorker-pool"));
+            this.replicationPermits = new Semaphore(concurrentLedgers);
+        } else {
+            this.replicationExecutor = null;
+            this.replicationPermits = null;
+        }
         this.openLedgerRereplicationGracePeriod = conf
                 .getOpenLedgerRereplicationGracePeriod();
         this.lockReleaseOfFailedLedgerGracePeriod = conf.getLockReleaseOfFailedLedgerGracePeriod();
@@ -211,7 +232,7 @@ public class ReplicationWorker implements Runnable {
                 .getCounter(NUM_DEFER_LEDGER_LOCK_RELEASE_OF_FAILED_LEDGER);
         this.numEntriesUnableToReadForReplication = this.statsLogger
                 .getCounter(NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION);
-        this.exceptionCounters = new HashMap<String, Counter>();
+        this.exceptionCounters = new ConcurrentHashMap<String, Counter>();
         this.onReadEntryFailureCallback = (ledgerid, entryid) -> {
             numEntriesUnableToReadForReplication.inc();
             unableToReadEntriesForReplication.getUnchecked(ledgerid).add(entryid);
@@ -228,6 +249,10 @@ public class ReplicationWorker implements Runnable {
     @Override
     public void run() {
         workerRunning = true;
+        if (replicationExecutor != null) {
+            runConcurrently();
+            return;
+        }
         while (workerRunning) {
             try {
                 if (!rereplicate()) {
@@ -257,6 +282,71 @@ public class ReplicationWorker implements Runnable {
         LOG.info("ReplicationWorker exited loop!");
     }
 
+    /**
+     * Acquire under replicated ledgers while there are less than {@code concurrentLedgers} ledgers
+     * being replicated, and replicate each of them on the pool.
+     */
+    private void runConcurrently() {
+        LOG.info("Replicating up to {} ledgers concurrently", concurrentLedgers);
+        while (workerRunning) {
+            try {
+                replicationPermits.acquire();
+                final long ledgerIdToReplicate;
+                try {
+                    ledgerIdToReplicate = underreplicationManager.getLedgerToRereplicate();
+                } catch (UnavailableException e) {
+                    replicationPermits.release();
+                    throw e;
+                }
+                replicationExecutor.execute(() -> {
+                    try {
+                        rereplicateAndBackOffOnFailure(ledgerIdToReplicate);
+                    } finally {
+                        replicationPermits.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                LOG.error("InterruptedException "
+                        + "while replicating fragments", e);
+                shutdown();
+                Thread.currentThread().interrupt();
+                return;
+            } catch (UnavailableException e) {
+                LOG.error("UnavailableException "
+                        + "while replicating fragments", e);
+                waitBackOffTime(rwRereplicateBackoffMs);
+                if (Thread.currentThread().isInterrupted()) {
+                    LOG.error("Interrupted  while replicating fragments");
+                    shutdown();
+                    return;
+                }
+            }
+        }
+        LOG.info("ReplicationWorker exited loop!");
+    }
+
+    /**
+     * Replicate a ledger on a thread of the pool, the thread backs off after a failure as the worker
+     * thread would do when replicating a single ledger at a time.
+     */
+    private void rereplicateAndBackOffOnFailure(long ledgerIdToReplicate) {
+        try {
+            if (!rereplicateAndRecordStats(ledgerIdToReplicate)) {
+                LOG.warn("failed while replicating fragments of ledger {}", ledgerIdToReplicate);
+                waitBackOffTime(rwRereplicateBackoffMs);
+            }
+        } catch (InterruptedException e) {
+            LOG.info("Interrupted while replicating fragments of ledger {}", ledgerIdToReplicate);
+            Thread.currentThread().interrupt();
+        } catch (BKException e) {
+            LOG.error("BKException while replicating fragments of ledger {}", ledgerIdToReplicate, e);
+            waitBackOffTime(rwRereplicateBackoffMs);
+        } catch (UnavailableException e) {
+            LOG.error("UnavailableException while replicating fragments of ledger {}", ledgerIdToReplicate, e);
+            waitBackOffTime(rwRereplicateBackoffMs);
+        }
+    }
+
     private static void waitBackOffTime(long backoffMs) {
         try {
             Thread.sleep(backoffMs);
@@ -273,7 +363,11 @@ public class ReplicationWorker implements Runnable {
             UnavailableException {
         long ledgerIdToReplicate = underreplicationManager
                 .getLedgerToRereplicate();
+        return rereplicateAndRecordStats(ledgerIdToReplicate);
+    }
 
+    private boolean rereplicateAndRecordStats(long ledgerIdToReplicate) throws InterruptedException,
+            BKException, UnavailableException {
         Stopwatch stopwatch = Stopwatch.createStarted();
         boolean success = false;
         try {
@@ -357,8 +451,9 @@ public class ReplicationWorker implements Runnable {
         return (returnRCValue.get() == BKException.Code.OK);
     }
 
+    @VisibleForTesting
     @SuppressFBWarnings("RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE")
-    private boolean rereplicate(long ledgerIdToReplicate) throws InterruptedException, BKException,
+    boolean rereplicate(long ledgerIdToReplicate) throws InterruptedException, BKException,
             UnavailableException {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Going to replicate the fragments of the ledger: {}", ledgerIdToReplicate);
@@ -641,6 +736,18 @@ public class ReplicationWorker implements Runnable {
                     e);
             Thread.currentThread().interrupt();
         }
+        if (replicationExecutor != null) {
+            // the ledgers being replicated are released by the interrupted threads
+            replicationExecutor.shutdownNow();
+        }
+        try {
+            admin.close();
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while closing the admin client", e);
+            Thread.currentThread().interrupt();
+        } catch (BKException e) {
+            LOG.warn("Exception while closing the admin client", e);
+        }
         if (ownBkc) {
             try {
                 bkc.close();
@@ -692,12 +799,7 @@ public class ReplicationWorker implements Runnable {
     }
 
     private Counter getExceptionCounter(String name) {
-        Counter counter = this.exceptionCounters.get(name);
-        if (counter == null) {
-            counter = this.exceptionLogger.getCounter(name);
-            this.exceptionCounters.put(name, counter);
-        }
-        return counter;
+        return this.exceptionCounters.computeIfAbsent(name, this.exceptionLogger::getCounter);
     }
 
 }
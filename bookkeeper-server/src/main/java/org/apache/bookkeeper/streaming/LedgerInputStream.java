@@ -22,24 +22,28 @@ package org.apache.bookkeeper.streaming;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
-import java.util.Enumeration;
 import org.apache.bookkeeper.client.BKException;
-import org.apache.bookkeeper.client.LedgerEntry;
 import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.SequentialReader;
 
 /**
  * An input stream on reading data from a ledger.
+ *
+ * <p>The entries are read ahead of the stream with a {@link SequentialReader}.
  */
 public class LedgerInputStream extends InputStream {
 
     private final LedgerHandle lh;
     private ByteBuffer bytebuff;
     byte[] bbytes;
-    long lastEntry = 0;
-    int increment = 50;
+    long lastEntry;
     int defaultSize = 1024 * 1024; // 1MB default size
-    Enumeration<LedgerEntry> ledgerSeq = null;
+    long defaultReadAheadBytes = 16 * 1024 * 1024; // 16MB default read ahead
+    private final long readAheadBytes;
+    private SequentialReader reader;
 
     /**
      * construct a outputstream from a ledger handle.
@@ -54,8 +58,9 @@ public class LedgerInputStream extends InputStream {
         bbytes = new byte[defaultSize];
         this.bytebuff = ByteBuffer.wrap(bbytes);
         this.bytebuff.position(this.bytebuff.limit());
-        lastEntry = Math.min(lh.getLastAddConfirmed(), increment);
-        ledgerSeq = lh.readEntries(0, lastEntry);
+        this.readAheadBytes = defaultReadAheadBytes;
+        lastEntry = lh.getLastAddConfirmed();
+        reader = lh.newSequentialReader(0, lastEntry, readAheadBytes);
     }
 
     /**
@@ -69,24 +74,41 @@ public class LedgerInputStream extends InputStream {
      * @throws InterruptedException when opening a ledger input stream is interrupted.
      */
     public LedgerInputStream(LedgerHandle lh, int size) throws BKException, InterruptedException {
+        this(lh, size, 16L * size);
+    }
+
+    /**
+     * construct a outputstream from a ledger handle.
+     *
+     * @param lh
+     *            the ledger handle
+     * @param size
+     *            the size of the buffer
+     * @param readAheadBytes
+     *            the max number of bytes of the entries read ahead of the stream
+     * @throws BKException when encountered bookkeeper exceptions
+     * @throws InterruptedException when opening a ledger input stream is interrupted.
+     * @since 4.16
+     */
+    public LedgerInputStream(LedgerHandle lh, int size, long readAheadBytes)
+            throws BKException, InterruptedException {
         this.lh = lh;
         bbytes = new byte[size];
         this.bytebuff = ByteBuffer.wrap(bbytes);
         this.bytebuff.position(this.bytebuff.limit());
-        lastEntry = Math.min(lh.getLastAddConfirmed(), increment);
-        ledgerSeq = lh.readEntries(0, lastEntry);
+        this.readAheadBytes = readAheadBytes;
+        lastEntry = lh.getLastAddConfirmed();
+        reader = lh.newSequentialReader(0, lastEntry, readAheadBytes);
     }
 
     /**
-     * Method close currently doesn't do anything. The application
-     * is supposed to open and close the ledger handle backing up
-     * a stream ({@link LedgerHandle}).
+     * Method close releases the entries read ahead, but doesn't close
+     * the ledger. The application is supposed to open and close the
+     * ledger handle backing up a stream ({@link LedgerHandle}).
      */
     @Override
-    public void close() {
-        // do nothing
-        // let the application
-        // close the ledger
+    public synchronized void close() {
+        reader.close();
     }
 
     /**
@@ -96,25 +118,28 @@ public class LedgerInputStream extends InputStream {
      */
     private synchronized boolean refill() throws IOException {
         bytebuff.clear();
-        if (!ledgerSeq.hasMoreElements() && lastEntry >= lh.getLastAddConfirmed()) {
-            return false;
-        }
-        if (!ledgerSeq.hasMoreElements()) {
-            // do refill
-            long last = Math.min(lastEntry + increment, lh.getLastAddConfirmed());
-            try {
-                ledgerSeq = lh.readEntries(lastEntry + 1, last);
-            } catch (BKException bk) {
-                IOException ie = new IOException(bk.getMessage());
-                ie.initCause(bk);
-                throw ie;
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
+        if (!reader.hasNext()) {
+            // read the entries confirmed since the stream was created
+            long lastAddConfirmed = lh.getLastAddConfirmed();
+            if (lastEntry >= lastAddConfirmed) {
+                return false;
             }
-            lastEntry = last;
+            reader.close();
+            reader = lh.newSequentialReader(lastEntry + 1, lastAddConfirmed, readAheadBytes);
+            lastEntry = lastAddConfirmed;
+        }
+        try (LedgerEntry le = reader.next()) {
+            bbytes = le.getEntryBytes();
+        } catch (org.apache.bookkeeper.client.api.BKException bk) {
+            IOException ie = new IOException(bk.getMessage());
+            ie.initCause(bk);
+            throw ie;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            IOException iioe = new InterruptedIOException("Interrupted while reading the ledger");
+            iioe.initCause(ie);
+            throw iioe;
         }
-        LedgerEntry le = ledgerSeq.nextElement();
-        bbytes = le.getEntry();
         bytebuff = ByteBuffer.wrap(bbytes);
         return true;
     }
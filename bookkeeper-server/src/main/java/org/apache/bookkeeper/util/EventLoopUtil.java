@@ -21,6 +21,8 @@ import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SelectStrategy;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
 
 import java.util.concurrent.ThreadFactory;
 
@@ -40,19 +42,32 @@ import org.apache.commons.lang.SystemUtils;
 @UtilityClass
 public class EventLoopUtil {
     public static EventLoopGroup getClientEventLoopGroup(ClientConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.isIoUringEnabled());
     }
 
     public static EventLoopGroup getServerEventLoopGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.isIoUringEnabled());
     }
 
     private static EventLoopGroup getEventLoopGroup(ThreadFactory threadFactory,
-            int numThreads, boolean enableBusyWait) {
+            int numThreads, boolean enableBusyWait, boolean enableIoUring) {
         if (!SystemUtils.IS_OS_LINUX) {
             return new NioEventLoopGroup(numThreads, threadFactory);
         }
 
+        if (enableIoUring) {
+            try {
+                if (IOUring.isAvailable()) {
+                    return new IOUringEventLoopGroup(numThreads, threadFactory);
+                }
+                log.warn("Could not use Netty io_uring event loop: {}", IOUring.unavailabilityCause().getMessage());
+            } catch (ExceptionInInitializerError | NoClassDefFoundError | UnsatisfiedLinkError e) {
+                log.warn("Could not use Netty io_uring event loop: {}", e.getMessage());
+            }
+        }
+
         try {
             if (!enableBusyWait) {
                 // Regular Epoll based event loop
@@ -62,6 +62,17 @@ public class SynchronizedHashMultiMap<K, V> {
         return pair.map(p -> p.getRight());
     }
 
+    public synchronized boolean remove(K k, V v) {
+        Set<Pair<K, V>> set = map.get(k.hashCode());
+        if (set == null || !set.remove(Pair.of(k, v))) {
+            return false;
+        }
+        if (set.isEmpty()) {
+            map.remove(k.hashCode());
+        }
+        return true;
+    }
+
     public synchronized int removeIf(BiPredicate<K, V> predicate) {
         int removedSum = map.values().stream().mapToInt(
                 pairs -> {
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.util.compression;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@code deflate} based {@link CompressionCodec} implementation, using the compression
+ * library bundled with the JDK.
+ *
+ * <p>All functions are thread safe.
+ */
+public class DeflateCompressionCodec implements CompressionCodec {
+
+    public static DeflateCompressionCodec of() {
+        return INSTANCE;
+    }
+
+    private static final DeflateCompressionCodec INSTANCE = new DeflateCompressionCodec();
+
+    // Deflater and Inflater hold native memory, reuse them across calls on the same thread
+    private static final ThreadLocal<Deflater> deflater =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    @Override
+    public Type type() {
+        return Type.DEFLATE;
+    }
+
+    @Override
+    public ByteBuf compress(ByteBuf uncompressed, int headerLen) {
+        checkNotNull(uncompressed);
+        checkArgument(uncompressed.readableBytes() > 0);
+
+        int uncompressedLen = uncompressed.readableBytes();
+        Deflater d = deflater.get();
+        d.reset();
+        if (uncompressed.hasArray()) {
+            d.setInput(uncompressed.array(), uncompressed.arrayOffset() + uncompressed.readerIndex(),
+                    uncompressedLen);
+        } else {
+            byte[] input = new byte[uncompressedLen];
+            uncompressed.getBytes(uncompressed.readerIndex(), input);
+            d.setInput(input);
+        }
+        d.finish();
+
+        // Raw deflate expands incompressible data by a few bytes every 16KB block at most
+        int maxLen = uncompressedLen + (uncompressedLen >> 12) + (uncompressedLen >> 14) + 16;
+        ByteBuf compressed = PooledByteBufAllocator.DEFAULT.heapBuffer(maxLen + headerLen);
+        compressed.writerIndex(headerLen);
+        while (!d.finished()) {
+            compressed.ensureWritable(1024);
+            int len = d.deflate(compressed.array(), compressed.arrayOffset() + compressed.writerIndex(),
+                    compressed.writableBytes());
+            compressed.writerIndex(compressed.writerIndex() + len);
+        }
+
+        return compressed;
+    }
+
+    @Override
+    public ByteBuf decompress(ByteBuf compressed, int decompressedSize) throws IOException {
+        checkNotNull(compressed);
+        checkArgument(decompressedSize >= 0);
+
+        Inflater i = inflater.get();
+        i.reset();
+        int compressedLen = compressed.readableBytes();
+        if (compressed.hasArray()) {
+            i.setInput(compressed.array(), compressed.arrayOffset() + compressed.readerIndex(), compressedLen);
+        } else {
+            byte[] input = new byte[compressedLen];
+            compressed.getBytes(compressed.readerIndex(), input);
+            i.setInput(input);
+        }
+
+        ByteBuf uncompressed = PooledByteBufAllocator.DEFAULT.heapBuffer(decompressedSize, decompressedSize);
+        try {
+            int len = 0;
+            while (len < decompressedSize && !i.finished()) {
+                int n = i.inflate(uncompressed.array(), uncompressed.arrayOffset() + len, decompressedSize - len);
+                if (n == 0 && (i.needsInput() || i.needsDictionary())) {
+                    break;
+                }
+                len += n;
+            }
+            if (len != decompressedSize) {
+                throw new IOException("Decompressed " + len + " bytes, expected " + decompressedSize);
+            }
+            uncompressed.writerIndex(decompressedSize);
+            return uncompressed;
+        } catch (DataFormatException e) {
+            uncompressed.release();
+            throw new IOException("Invalid deflate data", e);
+        } catch (IOException e) {
+            uncompressed.release();
+            throw e;
+        }
+    }
+}
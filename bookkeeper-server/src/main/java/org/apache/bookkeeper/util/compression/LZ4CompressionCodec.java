@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+package org.apache.bookkeeper.util.compression;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * An {@code lz4} based {@link CompressionCodec} implementation.
+ *
+ * <p>All functions are thread safe.
+ */
+public class LZ4CompressionCodec implements CompressionCodec {
+
+    public static LZ4CompressionCodec of() {
+        return INSTANCE;
+    }
+
+    private static final LZ4CompressionCodec INSTANCE = new LZ4CompressionCodec();
+
+    private static final LZ4Factory factory = LZ4Factory.fastestJavaInstance();
+    // Used for compression
+    private static final LZ4Compressor compressor = factory.fastCompressor();
+    // Used for decompression, bounded by the compressed length so corrupted data can't overrun it
+    private static final LZ4SafeDecompressor decompressor = factory.safeDecompressor();
+
+    @Override
+    public Type type() {
+        return Type.LZ4;
+    }
+
+    @Override
+    public ByteBuf compress(ByteBuf uncompressed, int headerLen) {
+        checkNotNull(uncompressed);
+        checkArgument(uncompressed.readableBytes() > 0);
+
+        int uncompressedLen = uncompressed.readableBytes();
+        int maxLen = compressor.maxCompressedLength(uncompressedLen);
+
+        ByteBuffer uncompressedNio = uncompressed.nioBuffer(uncompressed.readerIndex(), uncompressedLen);
+        ByteBuf compressed = PooledByteBufAllocator.DEFAULT.heapBuffer(maxLen + headerLen, maxLen + headerLen);
+        ByteBuffer compressedNio = compressed.nioBuffer(headerLen, maxLen);
+
+        int compressedLen = compressor.compress(
+                uncompressedNio, uncompressedNio.position(), uncompressedLen,
+                compressedNio, compressedNio.position(), maxLen);
+        compressed.writerIndex(compressedLen + headerLen);
+
+        return compressed;
+    }
+
+    @Override
+    public ByteBuf decompress(ByteBuf compressed, int decompressedSize) throws IOException {
+        checkNotNull(compressed);
+        checkArgument(decompressedSize >= 0);
+
+        int compressedLen = compressed.readableBytes();
+        ByteBuf uncompressed = PooledByteBufAllocator.DEFAULT.heapBuffer(decompressedSize, decompressedSize);
+        ByteBuffer uncompressedNio = uncompressed.nioBuffer(0, decompressedSize);
+        ByteBuffer compressedNio = compressed.nioBuffer(compressed.readerIndex(), compressedLen);
+
+        try {
+            int len = decompressor.decompress(
+                    compressedNio, compressedNio.position(), compressedLen,
+                    uncompressedNio, uncompressedNio.position(), decompressedSize);
+            if (len != decompressedSize) {
+                throw new IOException("Decompressed " + len + " bytes, expected " + decompressedSize);
+            }
+            uncompressed.writerIndex(decompressedSize);
+            return uncompressed;
+        } catch (LZ4Exception e) {
+            uncompressed.release();
+            throw new IOException("Invalid lz4 data", e);
+        } catch (IOException e) {
+            uncompressed.release();
+            throw e;
+        }
+    }
+}
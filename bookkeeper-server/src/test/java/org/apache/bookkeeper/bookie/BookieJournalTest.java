@@ -0,0 +1,409 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.bookkeeper.util.compression.CompressionCodec;
+import org.apache.bookkeeper.util.compression.CompressionUtils;
+import org.apache.bookkeeper.util.compression.DeflateCompressionCodec;
+import org.apache.bookkeeper.util.compression.LZ4CompressionCodec;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test writing and replaying journal files with compressed blocks of entries and pipelined writes.
+ */
+public class BookieJournalTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int ENTRY_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private File journalDir;
+    private ServerConfiguration conf;
+
+    @Before
+    public void setup() throws Exception {
+        journalDir = tmpDir.newFolder("journal");
+        File ledgerDir = tmpDir.newFolder("ledgers");
+        conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setJournalFormatVersionToWrite(JournalChannel.V7);
+        conf.setJournalRemovePagesFromCache(false);
+    }
+
+    private Journal newJournal() throws IOException {
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        return new Journal(0, journalDir, conf, ledgerDirsManager);
+    }
+
+    private static ByteBuf entry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(LEDGER_ID).writeLong(entryId);
+        // compressible payload
+        while (entry.isWritable()) {
+            entry.writeByte((int) (entryId % 16));
+        }
+        return entry;
+    }
+
+    private static void writeRecord(ByteBuf dst, long entryId) {
+        ByteBuf entry = entry(entryId);
+        dst.writeInt(entry.readableBytes());
+        dst.writeBytes(entry);
+        entry.release();
+    }
+
+    /**
+     * Journal file writer, writing records the way the journal thread does.
+     */
+    private class JournalWriter implements AutoCloseable {
+        final JournalChannel jc;
+        final BufferedChannel bc;
+
+        JournalWriter(long logId) throws IOException {
+            jc = new JournalChannel(journalDir, logId, 4 * 1024 * 1024, 65536, JournalChannel.SECTOR_SIZE,
+                                    false, JournalChannel.V7, conf, new DefaultFileChannelProvider());
+            bc = jc.getBufferedChannel();
+        }
+
+        void writeRecords(long firstEntryId, long lastEntryId) throws IOException {
+            ByteBuf records = Unpooled.buffer();
+            for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+                writeRecord(records, entryId);
+            }
+            bc.write(records);
+            records.release();
+        }
+
+        /**
+         * @return the position of the block in the file
+         */
+        long writeBlock(long firstEntryId, long lastEntryId) throws IOException {
+            return writeBlock(LZ4CompressionCodec.of(), firstEntryId, lastEntryId);
+        }
+
+        long writeBlock(CompressionCodec codec, long firstEntryId, long lastEntryId) throws IOException {
+            ByteBuf records = Unpooled.buffer();
+            for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+                writeRecord(records, entryId);
+            }
+            ByteBuf block = Journal.compressBlock(codec, records);
+            records.release();
+            assertNotNull(block);
+            long position = bc.position();
+            bc.write(block);
+            block.release();
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            bc.flushAndForceWrite(false);
+            jc.close();
+        }
+    }
+
+    private static class ScannedEntries implements Journal.JournalScanner {
+        final List<Long> entryIds = new ArrayList<>();
+        final Set<Long> offsets = new HashSet<>();
+
+        @Override
+        public void process(int journalVersion, long offset, ByteBuffer entry) {
+            assertEquals(JournalChannel.V7, journalVersion);
+            assertEquals(LEDGER_ID, entry.getLong(entry.position()));
+            long entryId = entry.getLong(entry.position() + Long.BYTES);
+            ByteBuf expected = entry(entryId);
+            assertEquals(expected.nioBuffer(), entry);
+            expected.release();
+            entryIds.add(entryId);
+            offsets.add(offset);
+        }
+    }
+
+    private ScannedEntries scan(Journal journal, long logId) throws IOException {
+        ScannedEntries scanned = new ScannedEntries();
+        journal.scanJournal(logId, 0, scanned);
+        return scanned;
+    }
+
+    private static List<Long> range(long first, long last) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = first; id <= last; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testReplayCompressedBlocks() throws Exception {
+        try (JournalWriter writer = new JournalWriter(1L)) {
+            writer.writeRecords(0, 1);
+            writer.writeBlock(2, 9);
+            writer.writeRecords(10, 10);
+            writer.writeBlock(DeflateCompressionCodec.of(), 11, 20);
+            writer.writeBlock(21, 30);
+        }
+
+        ScannedEntries scanned = scan(newJournal(), 1L);
+        assertEquals(range(0, 30), scanned.entryIds);
+        // the entries of a block are all reported at the offset of the block
+        assertEquals(6, scanned.offsets.size());
+    }
+
+    @Test
+    public void testCorruptedLz4DataIsRejected() throws Exception {
+        ByteBuf records = Unpooled.buffer();
+        for (long entryId = 0; entryId < 10; entryId++) {
+            writeRecord(records, entryId);
+        }
+        int uncompressedLen = records.readableBytes();
+        ByteBuf compressed = LZ4CompressionCodec.of().compress(records, 0);
+        records.release();
+        try {
+            ByteBuf decompressed = LZ4CompressionCodec.of().decompress(compressed, uncompressedLen);
+            assertEquals(uncompressedLen, decompressed.readableBytes());
+            decompressed.release();
+
+            // truncated block
+            ByteBuf truncated = compressed.slice(0, compressed.readableBytes() / 2);
+            try {
+                LZ4CompressionCodec.of().decompress(truncated, uncompressedLen);
+                fail("Should fail to decompress a truncated block");
+            } catch (IOException ioe) {
+                // expected
+            }
+        } finally {
+            compressed.release();
+        }
+    }
+
+    @Test
+    public void testIncompressibleRecordsAreNotPacked() throws Exception {
+        byte[] data = new byte[ENTRY_SIZE];
+        new Random(0).nextBytes(data);
+        ByteBuf records = Unpooled.buffer().writeInt(data.length).writeBytes(data);
+        assertNull(Journal.compressBlock(LZ4CompressionCodec.of(), records));
+        assertNull(Journal.compressBlock(DeflateCompressionCodec.of(), records));
+        records.release();
+    }
+
+    @Test
+    public void testBlockTruncatedAtFileEnd() throws Exception {
+        long blockPosition;
+        try (JournalWriter writer = new JournalWriter(1L)) {
+            writer.writeRecords(0, 4);
+            blockPosition = writer.writeBlock(5, 50);
+        }
+        File journalFile = new File(journalDir, Long.toHexString(1L) + ".txn");
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            // the crash happened while the block was being written
+            file.setLength(blockPosition + 64);
+        }
+
+        ScannedEntries scanned = scan(newJournal(), 1L);
+        assertEquals(range(0, 4), scanned.entryIds);
+    }
+
+    @Test
+    public void testBlockPartiallyWrittenInPreallocatedFile() throws Exception {
+        long blockPosition;
+        long blockEnd;
+        try (JournalWriter writer = new JournalWriter(1L)) {
+            writer.writeRecords(0, 4);
+            blockPosition = writer.writeBlock(5, 50);
+            blockEnd = writer.bc.position();
+        }
+        File journalFile = new File(journalDir, Long.toHexString(1L) + ".txn");
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            // only the first half of the block made it to the disk, the rest of the
+            // preallocated file is still zeroed
+            long start = (blockPosition + blockEnd) / 2;
+            file.seek(start);
+            file.write(new byte[(int) (blockEnd - start)]);
+        }
+
+        ScannedEntries scanned = scan(newJournal(), 1L);
+        assertEquals(range(0, 4), scanned.entryIds);
+    }
+
+    @Test
+    public void testJournalWritesCompressedBlocks() throws Exception {
+        verifyJournalWritesCompressedBlocks(CompressionUtils.LZ4);
+    }
+
+    @Test
+    public void testJournalWritesDeflateBlocks() throws Exception {
+        verifyJournalWritesCompressedBlocks(CompressionUtils.DEFLATE);
+    }
+
+    private void verifyJournalWritesCompressedBlocks(String codec) throws Exception {
+        conf.setJournalCompressionCodec(codec);
+        Journal journal = newJournal();
+        journal.start();
+        int numEntries = 200;
+        CountDownLatch latch = new CountDownLatch(numEntries);
+        AtomicInteger failures = new AtomicInteger();
+        try {
+            for (long entryId = 0; entryId < numEntries; entryId++) {
+                journal.logAddEntry(entry(entryId), false, (rc, ledgerId, eId, addr, ctx) -> {
+                    if (rc != BKException.Code.OK) {
+                        failures.incrementAndGet();
+                    }
+                    latch.countDown();
+                }, null);
+            }
+            assertTrue(latch.await(30, TimeUnit.SECONDS));
+            assertEquals(0, failures.get());
+        } finally {
+            journal.shutdown();
+        }
+
+        List<Long> journalIds = Journal.listJournalIds(journalDir, null);
+        assertEquals(1, journalIds.size());
+        ScannedEntries scanned = scan(newJournal(), journalIds.get(0));
+        assertEquals(range(0, numEntries - 1), scanned.entryIds);
+        assertTrue("Entries should be packed in blocks", scanned.offsets.size() < numEntries);
+    }
+
+    private void addEntries(Journal journal, int numEntries, boolean ackBeforeSync) throws Exception {
+        CountDownLatch latch = new CountDownLatch(numEntries);
+        AtomicInteger failures = new AtomicInteger();
+        List<Long> acked = new ArrayList<>();
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            journal.logAddEntry(entry(entryId), ackBeforeSync, (rc, ledgerId, eId, addr, ctx) -> {
+                if (rc != BKException.Code.OK) {
+                    failures.incrementAndGet();
+                }
+                synchronized (acked) {
+                    acked.add(eId);
+                }
+                latch.countDown();
+            }, null);
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+        // callbacks are triggered in submission order
+        assertEquals(range(0, numEntries - 1), acked);
+    }
+
+    @Test
+    public void testPipelinedJournalWrites() throws Exception {
+        conf.setJournalWritePipelineDepth(4);
+        // small groups, so that several of them are in flight
+        conf.setJournalBufferedEntriesThreshold(5);
+        Journal journal = newJournal();
+        journal.start();
+        int numEntries = 500;
+        try {
+            addEntries(journal, numEntries, false);
+        } finally {
+            journal.shutdown();
+        }
+
+        List<Long> journalIds = Journal.listJournalIds(journalDir, null);
+        assertEquals(1, journalIds.size());
+        ScannedEntries scanned = scan(newJournal(), journalIds.get(0));
+        assertEquals(range(0, numEntries - 1), scanned.entryIds);
+    }
+
+    @Test
+    public void testPipelinedJournalWritesWithCompression() throws Exception {
+        conf.setJournalWritePipelineDepth(2);
+        conf.setJournalCompressionCodec(CompressionUtils.LZ4);
+        Journal journal = newJournal();
+        journal.start();
+        int numEntries = 200;
+        try {
+            addEntries(journal, numEntries, false);
+        } finally {
+            journal.shutdown();
+        }
+
+        List<Long> journalIds = Journal.listJournalIds(journalDir, null);
+        assertEquals(1, journalIds.size());
+        ScannedEntries scanned = scan(newJournal(), journalIds.get(0));
+        assertEquals(range(0, numEntries - 1), scanned.entryIds);
+    }
+
+    @Test
+    public void testWritePipelineDepthValidation() throws Exception {
+        conf.setAllowEphemeralPorts(true);
+        conf.setFileInfoFormatVersionToWrite(1);
+
+        conf.setJournalWritePipelineDepth(0);
+        conf.validate();
+        conf.setJournalWritePipelineDepth(2);
+        conf.validate();
+        conf.setJournalWritePipelineDepth(16);
+        conf.validate();
+
+        for (int depth : new int[] { 1, -1 }) {
+            conf.setJournalWritePipelineDepth(depth);
+            try {
+                conf.validate();
+                fail("Pipeline depth " + depth + " should be rejected");
+            } catch (ConfigurationException e) {
+                assertTrue(e.getMessage().contains("pipeline depth"));
+            }
+        }
+    }
+
+    @Test
+    public void testJournalRejectsPipelineDepthOne() throws Exception {
+        conf.setJournalWritePipelineDepth(1);
+        try {
+            newJournal();
+            fail("A journal write pipeline of depth 1 should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
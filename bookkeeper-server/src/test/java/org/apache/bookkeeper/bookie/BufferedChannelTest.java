@@ -16,6 +16,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -28,6 +29,7 @@ import org.powermock.reflect.Whitebox;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
 
@@ -293,4 +295,114 @@ public class BufferedChannelTest {
 			Assert.assertEquals(1998, writeBuffer.readInt());
 		}
 	}
+	
+	public static class WriteWithoutCopyTest {
+		
+		private RandomAccessFile randomAccessFile;
+		private BufferedChannel bC;
+		
+		@Before
+		public void setup() throws IOException {
+			newChannel(0);
+		}
+		
+		private void newChannel(long unpersistedBytesBound) throws IOException {
+			File newLogFile = File.createTempFile("test", "log");
+			newLogFile.deleteOnExit();
+			randomAccessFile = new RandomAccessFile(newLogFile, "rw");
+			bC = new BufferedChannel(
+					UnpooledByteBufAllocator.DEFAULT, 
+					randomAccessFile.getChannel(),
+					INTERNAL_BUFFER_WRITE_CAPACITY, 
+					INTERNAL_BUFFER_READ_CAPACITY,
+					unpersistedBytesBound);
+		}
+		
+		@After
+		public void teardown() throws IOException {
+			bC.close();
+		}
+		
+		private static ByteBuf ints(int first, int count) {
+			ByteBuf buf = Unpooled.directBuffer(count * 4);
+			for (int i = 0; i < count; i++) {
+				buf.writeInt(first + i);
+			}
+			return buf;
+		}
+		
+		private void assertInts(long pos, int first, int count) throws IOException {
+			ByteBuf dest = Unpooled.buffer(count * 4);
+			bC.read(dest, pos, count * 4);
+			for (int i = 0; i < count; i++) {
+				Assert.assertEquals(first + i, dest.readInt());
+			}
+		}
+		
+		@Test
+		public void writesBufferedBytesFirst() throws IOException {
+			ByteBuf buffered = ints(0, 10);
+			ByteBuf src = ints(10, 1000);
+			bC.write(buffered);
+			bC.writeWithoutCopy(src);
+			
+			// Both are written to the file, nothing is left in the write buffer
+			Assert.assertEquals(4040, bC.position());
+			Assert.assertEquals(4040, bC.getFileChannelPosition());
+			Assert.assertEquals(4040, randomAccessFile.length());
+			ByteBuf writeBuffer = Whitebox.getInternalState(bC, "writeBuffer");
+			Assert.assertEquals(0, writeBuffer.readableBytes());
+			assertInts(0, 0, 1010);
+			
+			// The source is left untouched, for the caller to release
+			Assert.assertEquals(4000, src.readableBytes());
+			Assert.assertEquals(1, src.refCnt());
+			src.release();
+			buffered.release();
+		}
+		
+		@Test
+		public void nextWritesFollowTheEntry() throws IOException {
+			ByteBuf src = ints(0, 100);
+			bC.writeWithoutCopy(src);
+			ByteBuf next = ints(100, 10);
+			bC.write(next);
+			bC.flush();
+			
+			Assert.assertEquals(440, bC.position());
+			assertInts(0, 0, 110);
+			src.release();
+			next.release();
+		}
+		
+		@Test
+		public void writesAllTheComponents() throws IOException {
+			CompositeByteBuf src = Unpooled.compositeBuffer();
+			src.addComponent(true, ints(0, 100));
+			src.addComponent(true, ints(100, 100));
+			src.addComponent(true, ints(200, 100));
+			bC.writeWithoutCopy(src);
+			
+			Assert.assertEquals(1200, bC.position());
+			assertInts(0, 0, 300);
+			src.release();
+		}
+		
+		@Test
+		public void forceWritesPastTheUnpersistedBound() throws IOException {
+			bC.close();
+			newChannel(1000);
+			
+			ByteBuf small = ints(0, 100);
+			bC.writeWithoutCopy(small);
+			Assert.assertEquals(400, bC.getUnpersistedBytes());
+			
+			ByteBuf large = ints(100, 200);
+			bC.writeWithoutCopy(large);
+			Assert.assertEquals(0, bC.getUnpersistedBytes());
+			assertInts(0, 0, 300);
+			small.release();
+			large.release();
+		}
+	}
 }
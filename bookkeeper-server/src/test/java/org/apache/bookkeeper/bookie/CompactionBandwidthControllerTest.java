@@ -0,0 +1,139 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.util.MathUtils;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link CompactionBandwidthController}.
+ */
+public class CompactionBandwidthControllerTest {
+
+    private static final long MAX_RATE = 1000_000;
+    private static final long TARGET_LATENCY_MILLIS = 10;
+    private static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double DELTA = 0.001;
+
+    private final CompactionBandwidthController controller =
+            new CompactionBandwidthController(MAX_RATE, TARGET_LATENCY_MILLIS);
+    private long now = MathUtils.nowInNano();
+
+    private void adjustWithLatency(long latencyMillis) {
+        controller.recordForegroundLatency(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        now += INTERVAL_NANOS;
+        controller.maybeAdjustRate(now);
+    }
+
+    @Test
+    public void testStartsAtMaxRate() {
+        assertEquals(MAX_RATE, controller.getRate(), DELTA);
+    }
+
+    @Test
+    public void testSlowForegroundHalvesRateDownToMinimum() {
+        adjustWithLatency(20);
+        assertEquals(MAX_RATE / 2, controller.getRate(), DELTA);
+        adjustWithLatency(20);
+        assertEquals(MAX_RATE / 4, controller.getRate(), DELTA);
+        adjustWithLatency(20);
+        assertEquals(MAX_RATE / 8, controller.getRate(), DELTA);
+        // never below 10% of the max rate
+        adjustWithLatency(20);
+        assertEquals(MAX_RATE / 10, controller.getRate(), DELTA);
+        adjustWithLatency(20);
+        assertEquals(MAX_RATE / 10, controller.getRate(), DELTA);
+    }
+
+    @Test
+    public void testFastForegroundIncreasesRateUpToMax() {
+        adjustWithLatency(20);
+        adjustWithLatency(20);
+        assertEquals(MAX_RATE / 4, controller.getRate(), DELTA);
+
+        adjustWithLatency(1);
+        assertEquals(MAX_RATE * 0.35, controller.getRate(), DELTA);
+        // no foreground request counts as a fast foreground
+        now += INTERVAL_NANOS;
+        controller.maybeAdjustRate(now);
+        assertEquals(MAX_RATE * 0.45, controller.getRate(), DELTA);
+
+        for (int i = 0; i < 10; i++) {
+            adjustWithLatency(1);
+        }
+        assertEquals(MAX_RATE, controller.getRate(), DELTA);
+    }
+
+    @Test
+    public void testAverageLatencyIsCompared() {
+        controller.recordForegroundLatency(TimeUnit.MILLISECONDS.toNanos(1));
+        controller.recordForegroundLatency(TimeUnit.MILLISECONDS.toNanos(1));
+        // average of 9ms is below the target
+        adjustWithLatency(25);
+        assertEquals(MAX_RATE, controller.getRate(), DELTA);
+
+        controller.recordForegroundLatency(TimeUnit.MILLISECONDS.toNanos(5));
+        // average of 12.5ms is above the target
+        adjustWithLatency(20);
+        assertEquals(MAX_RATE / 2, controller.getRate(), DELTA);
+    }
+
+    @Test
+    public void testRateAdjustedOncePerInterval() {
+        adjustWithLatency(20);
+        assertEquals(MAX_RATE / 2, controller.getRate(), DELTA);
+
+        controller.recordForegroundLatency(TimeUnit.MILLISECONDS.toNanos(20));
+        controller.maybeAdjustRate(now + INTERVAL_NANOS / 2);
+        assertEquals(MAX_RATE / 2, controller.getRate(), DELTA);
+
+        // the latencies recorded in the meantime are used by the next adjustment
+        controller.maybeAdjustRate(now + INTERVAL_NANOS);
+        assertEquals(MAX_RATE / 4, controller.getRate(), DELTA);
+    }
+
+    @Test
+    public void testNoTargetLatencyKeepsMaxRate() {
+        CompactionBandwidthController fixed = new CompactionBandwidthController(MAX_RATE, 0);
+        for (int i = 1; i <= 5; i++) {
+            fixed.recordForegroundLatency(TimeUnit.SECONDS.toNanos(1));
+            fixed.maybeAdjustRate(now + i * INTERVAL_NANOS);
+        }
+        assertEquals(MAX_RATE, fixed.getRate(), DELTA);
+    }
+
+    @Test
+    public void testAcquireIsThrottled() {
+        CompactionBandwidthController slow = new CompactionBandwidthController(1000, 0);
+        // the first acquire is served from the initial permits
+        slow.acquire(0);
+        long start = System.nanoTime();
+        slow.acquire(500);
+        slow.acquire(500);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Acquired 1000 bytes in " + elapsedMillis + " ms", elapsedMillis >= 400);
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.bookie.storage.EntryLogger.LOG_FILE_SUFFIX;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test of {@link DirectEntryLogger}.
+ */
+public class DirectEntryLoggerTest {
+
+    private static final long MAX_FILE_SIZE = 64 * 1024;
+    private static final int ENTRY_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private File ledgerDir;
+    private JavaNativeIO nativeIO;
+    private DirectEntryLogger entryLogger;
+
+    @Before
+    public void setup() throws Exception {
+        ledgerDir = tmpDir.newFolder("ledgers");
+        nativeIO = new JavaNativeIO();
+        entryLogger = new DirectEntryLogger(ledgerDir, nativeIO, UnpooledByteBufAllocator.DEFAULT,
+                                            MAX_FILE_SIZE, 4 * 8192, 4096, 4096, NullStatsLogger.INSTANCE);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        entryLogger.close();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId).writeLong(entryId).writeZero(ENTRY_SIZE - 2 * Long.BYTES);
+        return entry;
+    }
+
+    private long addEntry(long ledgerId, long entryId) throws IOException {
+        ByteBuf entry = entry(ledgerId, entryId);
+        try {
+            return entryLogger.addEntry(ledgerId, entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testRolledLogsAreTruncated() throws Exception {
+        List<Long> locations = new ArrayList<>();
+        for (long entryId = 0; entryId < 200; entryId++) {
+            locations.add(addEntry(1L, entryId));
+        }
+        entryLogger.flush();
+
+        long firstLogId = locations.get(0) >> 32L;
+        long lastLogId = locations.get(locations.size() - 1) >> 32L;
+        assertTrue(lastLogId > firstLogId);
+        for (long logId = firstLogId; logId < lastLogId; logId++) {
+            File file = entryLogger.logFile(logId, LOG_FILE_SUFFIX);
+            // the preallocated space was released, the ledgers map index is the last data of the file
+            assertTrue(file.length() < MAX_FILE_SIZE);
+            assertTrue(Buffer.isAligned(file.length()));
+            assertEquals(1, entryLogger.getEntryLogMetadata(logId).getLedgersMap().size());
+        }
+        // the current log is still preallocated
+        assertEquals(MAX_FILE_SIZE, entryLogger.logFile(lastLogId, LOG_FILE_SUFFIX).length());
+
+        entryLogger.close();
+        assertTrue(entryLogger.logFile(lastLogId, LOG_FILE_SUFFIX).length() < MAX_FILE_SIZE);
+    }
+
+    @Test
+    public void testCompactionLogIsNotPreallocated() throws Exception {
+        long location = addEntry(1L, 0L);
+        entryLogger.flush();
+
+        CompactionEntryLog compactionLog = entryLogger.newCompactionLog(location >> 32L);
+        File compactingFile = entryLogger.logFile(compactionLog.getDstLogId(), DirectEntryLogger.COMPACTING_SUFFIX);
+        assertEquals(0L, compactingFile.length());
+        ByteBuf entry = entry(1L, 0L);
+        compactionLog.addEntry(1L, entry);
+        entry.release();
+        compactionLog.flush();
+        // the header block, and a block for the entry and the ledgers map
+        assertEquals(2 * Buffer.ALIGNMENT, compactingFile.length());
+        compactionLog.abort();
+    }
+
+    @Test
+    public void testRemoveEntryLogClosesCachedReaders() throws Exception {
+        long location = addEntry(1L, 0L);
+        long logId = location >> 32L;
+        // roll the log, so that it can be removed
+        while (addEntry(1L, 1L) >> 32L == logId) {
+            // keep writing
+        }
+        entryLogger.flush();
+        int openFiles = nativeIO.openFiles();
+
+        // the reader is cached by the reading thread
+        ExecutorService readThread = Executors.newSingleThreadExecutor();
+        try {
+            readThread.submit(() -> entryLogger.readEntry(1L, 0L, location).release()).get();
+            assertEquals(openFiles + 1, nativeIO.openFiles());
+
+            entryLogger.removeEntryLog(logId);
+            assertEquals(openFiles, nativeIO.openFiles());
+
+            try {
+                readThread.submit(() -> entryLogger.readEntry(1L, 0L, location).release()).get();
+                fail("The entry log was removed");
+            } catch (ExecutionException ee) {
+                assertTrue(ee.getCause() instanceof IOException);
+            }
+        } finally {
+            readThread.shutdown();
+        }
+    }
+}
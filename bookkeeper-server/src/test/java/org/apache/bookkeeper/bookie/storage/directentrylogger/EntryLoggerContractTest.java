@@ -0,0 +1,302 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Tests of the {@link EntryLogger} contract, run against both {@link DefaultEntryLogger}
+ * and {@link DirectEntryLogger}.
+ */
+@RunWith(Parameterized.class)
+public class EntryLoggerContractTest {
+
+    private static final long MAX_FILE_SIZE = 64 * 1024;
+    private static final int ENTRY_SIZE = 1000;
+    private static final int NUM_LEDGERS = 3;
+    private static final int ENTRIES_PER_LEDGER = 100;
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> implementations() {
+        return Arrays.asList(new Object[][] { { "default" }, { "direct" } });
+    }
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private final String implementation;
+    private File ledgerDir;
+    private EntryLogger entryLogger;
+    // ledgerId -> entryId -> location
+    private Map<Long, Map<Long, Long>> locations;
+
+    public EntryLoggerContractTest(String implementation) {
+        this.implementation = implementation;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        ledgerDir = tmpDir.newFolder("ledgers");
+        entryLogger = newEntryLogger();
+        locations = new HashMap<>();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        entryLogger.close();
+    }
+
+    private EntryLogger newEntryLogger() throws IOException {
+        if ("direct".equals(implementation)) {
+            return new DirectEntryLogger(ledgerDir, new JavaNativeIO(), UnpooledByteBufAllocator.DEFAULT,
+                                         MAX_FILE_SIZE, 4 * 8192, 4096, 4096, NullStatsLogger.INSTANCE);
+        }
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        conf.setEntryLogSizeLimit(MAX_FILE_SIZE);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        for (File dir : ledgerDirsManager.getAllLedgerDirs()) {
+            assertTrue(dir.isDirectory() || dir.mkdirs());
+        }
+        return new DefaultEntryLogger(conf, ledgerDirsManager, null, NullStatsLogger.INSTANCE,
+                                      ByteBufAllocator.DEFAULT);
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId).writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private void addEntries() throws IOException {
+        for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+            for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+                ByteBuf entry = entry(ledgerId, entryId);
+                long location = entryLogger.addEntry(ledgerId, entry);
+                entry.release();
+                locations.computeIfAbsent(ledgerId, k -> new TreeMap<>()).put(entryId, location);
+            }
+        }
+        entryLogger.flush();
+    }
+
+    private static long logId(long location) {
+        return location >> 32L;
+    }
+
+    // logId -> ledgerId -> bytes written
+    private Map<Long, Map<Long, Long>> writtenSizes() {
+        Map<Long, Map<Long, Long>> sizes = new TreeMap<>();
+        locations.forEach((ledgerId, ledgerLocations) -> ledgerLocations.values().forEach(location ->
+                sizes.computeIfAbsent(logId(location), k -> new TreeMap<>())
+                     .merge(ledgerId, (long) ENTRY_SIZE + Integer.BYTES, Long::sum)));
+        return sizes;
+    }
+
+    private void reopen() throws IOException {
+        entryLogger.close();
+        entryLogger = newEntryLogger();
+    }
+
+    private void assertEntry(long ledgerId, long entryId, long location) throws IOException {
+        ByteBuf expected = entry(ledgerId, entryId);
+        ByteBuf read = entryLogger.readEntry(ledgerId, entryId, location);
+        try {
+            assertEquals(expected, read);
+        } finally {
+            expected.release();
+            read.release();
+        }
+    }
+
+    @Test
+    public void testAddAndReadEntries() throws Exception {
+        addEntries();
+        assertTrue("Entries should span several logs", writtenSizes().size() > 1);
+        for (Map.Entry<Long, Map<Long, Long>> ledger : locations.entrySet()) {
+            for (Map.Entry<Long, Long> e : ledger.getValue().entrySet()) {
+                assertEntry(ledger.getKey(), e.getKey(), e.getValue());
+            }
+        }
+        reopen();
+        assertEntry(2L, 50L, locations.get(2L).get(50L));
+    }
+
+    @Test
+    public void testScanEntryLog() throws Exception {
+        addEntries();
+        reopen();
+        Map<Long, List<Long>> scanned = new HashMap<>();
+        for (long logId : writtenSizes().keySet()) {
+            entryLogger.scanEntryLog(logId, new EntryLogScanner() {
+                @Override
+                public boolean accept(long ledgerId) {
+                    return ledgerId != 2L;
+                }
+
+                @Override
+                public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                    assertEquals(ledgerId, entry.getLong(entry.readerIndex()));
+                    long entryId = entry.getLong(entry.readerIndex() + Long.BYTES);
+                    ByteBuf expected = entry(ledgerId, entryId);
+                    assertEquals(expected, entry);
+                    expected.release();
+                    assertEquals(logId, logId(locations.get(ledgerId).get(entryId)));
+                    scanned.computeIfAbsent(ledgerId, k -> new ArrayList<>()).add(entryId);
+                }
+            });
+        }
+        assertNull(scanned.get(2L));
+        for (long ledgerId : new long[] { 1L, 3L }) {
+            assertEquals(new ArrayList<>(locations.get(ledgerId).keySet()), scanned.get(ledgerId));
+        }
+    }
+
+    @Test
+    public void testGetEntryLogMetadata() throws Exception {
+        addEntries();
+        reopen();
+        for (Map.Entry<Long, Map<Long, Long>> log : writtenSizes().entrySet()) {
+            EntryLogMetadata meta = entryLogger.getEntryLogMetadata(log.getKey());
+            assertEquals(log.getValue().size(), meta.getLedgersMap().size());
+            long totalSize = 0;
+            for (Map.Entry<Long, Long> ledger : log.getValue().entrySet()) {
+                assertEquals((long) ledger.getValue(), meta.getLedgersMap().get(ledger.getKey()));
+                totalSize += ledger.getValue();
+            }
+            assertEquals(totalSize, meta.getTotalSize());
+        }
+    }
+
+    @Test
+    public void testCompactionLog() throws Exception {
+        addEntries();
+        long srcLogId = writtenSizes().keySet().iterator().next();
+
+        // keep the entries of ledger 1 only
+        CompactionEntryLog compactionLog = entryLogger.newCompactionLog(srcLogId);
+        assertEquals(srcLogId, compactionLog.getSrcLogId());
+        Map<Long, Long> compactedLocations = new TreeMap<>();
+        entryLogger.scanEntryLog(srcLogId, new EntryLogScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return ledgerId == 1L;
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                long entryId = entry.getLong(entry.readerIndex() + Long.BYTES);
+                compactedLocations.put(entryId, compactionLog.addEntry(ledgerId, entry));
+            }
+        });
+        assertFalse(compactedLocations.isEmpty());
+        compactionLog.flush();
+        compactionLog.markCompacted();
+        compactionLog.makeAvailable();
+
+        // the compacted log is scanned when recovering the index
+        List<Long> rescanned = new ArrayList<>();
+        compactionLog.scan(new EntryLogScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return true;
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                assertEquals(1L, ledgerId);
+                rescanned.add(entry.getLong(entry.readerIndex() + Long.BYTES));
+            }
+        });
+        assertEquals(new ArrayList<>(compactedLocations.keySet()), rescanned);
+
+        compactionLog.finalizeAndCleanup();
+        assertTrue(entryLogger.removeEntryLog(srcLogId));
+        assertFalse(entryLogger.logExists(srcLogId));
+        assertTrue(entryLogger.logExists(compactionLog.getDstLogId()));
+
+        for (Map.Entry<Long, Long> e : compactedLocations.entrySet()) {
+            assertEquals(compactionLog.getDstLogId(), logId(e.getValue()));
+            assertEntry(1L, e.getKey(), e.getValue());
+        }
+        EntryLogMetadata meta = entryLogger.getEntryLogMetadata(compactionLog.getDstLogId());
+        assertEquals(1, meta.getLedgersMap().size());
+        assertEquals(compactedLocations.size() * (long) (ENTRY_SIZE + Integer.BYTES),
+                     meta.getLedgersMap().get(1L));
+    }
+
+    @Test
+    public void testIncompleteCompactionIsRecovered() throws Exception {
+        addEntries();
+        long srcLogId = writtenSizes().keySet().iterator().next();
+        CompactionEntryLog compactionLog = entryLogger.newCompactionLog(srcLogId);
+        ByteBuf entry = entry(1L, 0L);
+        compactionLog.addEntry(1L, entry);
+        entry.release();
+        compactionLog.flush();
+        compactionLog.markCompacted();
+
+        reopen();
+        Collection<CompactionEntryLog> incomplete = entryLogger.incompleteCompactionLogs();
+        assertEquals(1, incomplete.size());
+        CompactionEntryLog recovered = incomplete.iterator().next();
+        assertEquals(srcLogId, recovered.getSrcLogId());
+        assertEquals(compactionLog.getDstLogId(), recovered.getDstLogId());
+    }
+}
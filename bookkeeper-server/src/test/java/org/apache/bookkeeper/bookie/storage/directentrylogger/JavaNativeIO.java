@@ -0,0 +1,168 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+// CHECKSTYLE.OFF: IllegalImport
+import io.netty.util.internal.PlatformDependent;
+// CHECKSTYLE.ON: IllegalImport
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+
+/**
+ * {@link NativeIO} implemented with java file channels, for the tests running where the
+ * native library is not available. Direct IO is not emulated.
+ */
+class JavaNativeIO implements NativeIO {
+    private final AtomicInteger nextFd = new AtomicInteger(100);
+    private final Map<Integer, FileChannel> files = new ConcurrentHashMap<>();
+
+    /**
+     * @return the number of files currently open.
+     */
+    int openFiles() {
+        return files.size();
+    }
+
+    @Override
+    public int open(String pathname, int flags, int mode) throws NativeIOException {
+        File file = new File(pathname);
+        if ((flags & O_CREAT) == 0 && !file.exists()) {
+            throw new NativeIOException("No such file: " + pathname);
+        }
+        try {
+            FileChannel channel = new RandomAccessFile(file, (flags & O_RDONLY) != 0 ? "r" : "rw").getChannel();
+            if ((flags & O_TRUNC) != 0) {
+                channel.truncate(0);
+            }
+            int fd = nextFd.incrementAndGet();
+            files.put(fd, channel);
+            return fd;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public int fsync(int fd) throws NativeIOException {
+        try {
+            channel(fd).force(true);
+            return 0;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public int fallocate(int fd, int mode, long offset, long len) throws NativeIOException {
+        try {
+            FileChannel channel = channel(fd);
+            if (channel.size() < offset + len) {
+                channel.write(ByteBuffer.allocate(1), offset + len - 1);
+            }
+            return 0;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException {
+        byte[] data = new byte[count];
+        PlatformDependent.copyMemory(pointer, data, 0, count);
+        try {
+            FileChannel channel = channel(fd);
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                channel.write(buf, offset + buf.position());
+            }
+            return count;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public long posix_memalign(int alignment, int size) throws NativeIOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void free(long pointer) throws NativeIOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long lseek(int fd, long offset, int whence) throws NativeIOException {
+        try {
+            FileChannel channel = channel(fd);
+            long position = (whence == SEEK_END ? channel.size() : 0) + offset;
+            channel.position(position);
+            return position;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
+        try {
+            FileChannel channel = channel(fd);
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && offset + buf.position() < channel.size()) {
+                channel.read(buf, offset + buf.position());
+            }
+            PlatformDependent.copyMemory(buf.array(), 0, pointer, buf.position());
+            return buf.position();
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public int close(int fd) throws NativeIOException {
+        FileChannel channel = files.remove(fd);
+        if (channel == null) {
+            throw new NativeIOException("Bad file descriptor: " + fd);
+        }
+        try {
+            channel.close();
+            return 0;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    private FileChannel channel(int fd) throws NativeIOException {
+        FileChannel channel = files.get(fd);
+        if (channel == null) {
+            throw new NativeIOException("Bad file descriptor: " + fd);
+        }
+        return channel;
+    }
+}
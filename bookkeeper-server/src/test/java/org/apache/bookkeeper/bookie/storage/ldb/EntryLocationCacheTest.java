@@ -0,0 +1,194 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.apache.bookkeeper.bookie.storage.ldb.EntryLocationCache.MAX_ENTRIES_PER_LEDGER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link EntryLocationCache}.
+ */
+public class EntryLocationCacheTest {
+
+    // Memory used by a ledger with less than 1024 cached entries
+    private static final int LEDGER_SIZE = 1024 * Long.BYTES;
+
+    private EntryLocationCache cache;
+
+    @Before
+    public void setup() {
+        cache = new EntryLocationCache(UnpooledByteBufAllocator.DEFAULT, 10 * LEDGER_SIZE);
+    }
+
+    @After
+    public void teardown() {
+        cache.close();
+    }
+
+    private static long location(long ledgerId, long entryId) {
+        return (ledgerId << 32) + entryId + 1;
+    }
+
+    private void putEntries(long ledgerId, long firstEntryId, long lastEntryId) {
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            cache.putLocation(ledgerId, entryId, location(ledgerId, entryId));
+        }
+    }
+
+    @Test
+    public void testGetLocation() {
+        putEntries(1, 10, 19);
+        for (long entryId = 10; entryId <= 19; entryId++) {
+            assertEquals(location(1, entryId), cache.getLocation(1, entryId));
+        }
+        // Outside of the cached window, or unknown ledger
+        assertEquals(0L, cache.getLocation(1, 9));
+        assertEquals(0L, cache.getLocation(1, 20));
+        assertEquals(0L, cache.getLocation(2, 10));
+
+        // Entries older than the window are not cached
+        cache.putLocation(1, 5, location(1, 5));
+        assertEquals(0L, cache.getLocation(1, 5));
+        assertEquals(1, cache.count());
+        assertEquals(LEDGER_SIZE, cache.size());
+    }
+
+    @Test
+    public void testWindowSlides() {
+        cache.close();
+        cache = new EntryLocationCache(UnpooledByteBufAllocator.DEFAULT, MAX_ENTRIES_PER_LEDGER * Long.BYTES);
+        putEntries(1, 0, MAX_ENTRIES_PER_LEDGER - 1);
+        assertEquals(location(1, 0), cache.getLocation(1, 0));
+        long size = cache.size();
+
+        // Keep the most recent half of the entries
+        cache.putLocation(1, MAX_ENTRIES_PER_LEDGER, location(1, MAX_ENTRIES_PER_LEDGER));
+        long firstEntryId = MAX_ENTRIES_PER_LEDGER / 2;
+        assertEquals(0L, cache.getLocation(1, firstEntryId - 1));
+        for (long entryId = firstEntryId; entryId <= MAX_ENTRIES_PER_LEDGER; entryId++) {
+            assertEquals(location(1, entryId), cache.getLocation(1, entryId));
+        }
+        assertEquals(0L, cache.getLocation(1, MAX_ENTRIES_PER_LEDGER + 1));
+        assertEquals(size, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        for (long ledgerId = 1; ledgerId <= 10; ledgerId++) {
+            putEntries(ledgerId, 0, 9);
+        }
+        assertEquals(10, cache.count());
+
+        // Over the limit, the oldest ledgers are evicted down to 90% of it
+        putEntries(11, 0, 9);
+        assertEquals(9, cache.count());
+        assertEquals(0L, cache.getLocation(1, 0));
+        assertEquals(0L, cache.getLocation(2, 0));
+        for (long ledgerId = 3; ledgerId <= 11; ledgerId++) {
+            assertEquals(location(ledgerId, 5), cache.getLocation(ledgerId, 5));
+        }
+
+        // The cache stays within its limit as new ledgers are written
+        cache.putLocation(12, 0, location(12, 0));
+        cache.putLocation(13, 0, location(13, 0));
+        assertEquals(9, cache.count());
+        assertTrue(cache.size() <= 10 * LEDGER_SIZE);
+    }
+
+    @Test
+    public void testEvictionGivesSecondChance() {
+        for (long ledgerId = 1; ledgerId <= 11; ledgerId++) {
+            putEntries(ledgerId, 0, 9);
+        }
+        // Ledgers 1 and 2 were evicted, and the others are no longer marked as accessed
+        assertEquals(9, cache.count());
+
+        assertEquals(location(3, 0), cache.getLocation(3, 0));
+        putEntries(12, 0, 9);
+        putEntries(13, 0, 9);
+
+        assertEquals(location(3, 0), cache.getLocation(3, 0));
+        assertEquals(0L, cache.getLocation(4, 0));
+        assertEquals(0L, cache.getLocation(5, 0));
+        for (long ledgerId = 6; ledgerId <= 13; ledgerId++) {
+            assertEquals(location(ledgerId, 0), cache.getLocation(ledgerId, 0));
+        }
+        assertEquals(9 * LEDGER_SIZE, cache.size());
+    }
+
+    @Test
+    public void testRemoveLedger() {
+        putEntries(1, 0, 9);
+        putEntries(2, 0, 9);
+        cache.removeLedger(1);
+
+        assertEquals(0L, cache.getLocation(1, 0));
+        assertEquals(location(2, 0), cache.getLocation(2, 0));
+        assertEquals(1, cache.count());
+        assertEquals(LEDGER_SIZE, cache.size());
+
+        // Removing a ledger that is not cached is a no-op
+        cache.removeLedger(3);
+        assertEquals(1, cache.count());
+
+        // The ledger is cached again if it's written again
+        cache.putLocation(1, 20, location(1, 20));
+        assertEquals(location(1, 20), cache.getLocation(1, 20));
+        assertEquals(0L, cache.getLocation(1, 0));
+        assertEquals(2 * LEDGER_SIZE, cache.size());
+    }
+
+    @Test
+    public void testUpdateLocation() {
+        putEntries(1, 10, 19);
+
+        cache.updateLocation(1, 15, 12345L);
+        assertEquals(12345L, cache.getLocation(1, 15));
+        assertEquals(location(1, 14), cache.getLocation(1, 14));
+
+        // Only the cached window is updated
+        cache.updateLocation(1, 5, 12345L);
+        cache.updateLocation(1, 20, 12345L);
+        assertEquals(0L, cache.getLocation(1, 5));
+        assertEquals(0L, cache.getLocation(1, 20));
+
+        // Compacted ledgers that are not cached are not loaded
+        cache.updateLocation(2, 0, 12345L);
+        assertEquals(0L, cache.getLocation(2, 0));
+        assertEquals(1, cache.count());
+    }
+
+    @Test
+    public void testCloseReleasesMemory() {
+        putEntries(1, 0, 9);
+        putEntries(2, 0, 9);
+        cache.close();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.count());
+        assertEquals(0L, cache.getLocation(1, 0));
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ParallelLocationBatch}.
+ */
+public class ParallelLocationBatchTest {
+
+    private static final int BATCHES = 4;
+    // Several chunks per batch
+    private static final int ENTRIES = 50_000;
+
+    /**
+     * Batch recording the locations put in it.
+     */
+    private static class RecordingBatch implements Batch {
+        final Map<Long, Long> locations = new HashMap<>();
+        volatile int flushes = 0;
+        volatile boolean closed = false;
+        volatile boolean failPut = false;
+        volatile boolean failFlush = false;
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            if (failPut) {
+                throw new IOException("put failure");
+            }
+            // Ledger 1 only, keyed by entry id
+            locations.put(ArrayUtil.getLong(key, 8), ArrayUtil.getLong(value, 0));
+        }
+
+        @Override
+        public void remove(byte[] key) {
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) {
+        }
+
+        @Override
+        public void clear() {
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (failFlush) {
+                throw new IOException("flush failure");
+            }
+            flushes++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private ExecutorService executor;
+    private EntryLocationIndex index;
+    private List<RecordingBatch> batches;
+
+    @Before
+    public void setup() throws Exception {
+        executor = Executors.newFixedThreadPool(BATCHES);
+        batches = new ArrayList<>();
+        KeyValueStorage storage = mock(KeyValueStorage.class);
+        when(storage.newBatch()).thenAnswer(invocation -> {
+            RecordingBatch batch = new RecordingBatch();
+            batches.add(batch);
+            return batch;
+        });
+        index = new EntryLocationIndex(new ServerConfiguration(), (basePath, subPath, type, conf) -> storage,
+                "", NullStatsLogger.INSTANCE);
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    private ParallelLocationBatch newBatch() {
+        ParallelLocationBatch batch = new ParallelLocationBatch(index, BATCHES, executor);
+        assertEquals(BATCHES, batches.size());
+        return batch;
+    }
+
+    private static void addLocations(ParallelLocationBatch batch) {
+        for (long entryId = 0; entryId < ENTRIES; entryId++) {
+            batch.addLocation(1L, entryId, entryId * 10);
+        }
+    }
+
+    @Test
+    public void testAllLocationsCommitted() throws Exception {
+        try (ParallelLocationBatch batch = newBatch()) {
+            addLocations(batch);
+            for (RecordingBatch b : batches) {
+                assertEquals(0, b.flushes);
+            }
+            batch.flush();
+
+            Map<Long, Long> committed = new HashMap<>();
+            for (RecordingBatch b : batches) {
+                assertEquals(1, b.flushes);
+                // The locations are spread over all the batches
+                assertTrue(b.locations.size() > 0);
+                committed.putAll(b.locations);
+            }
+            assertEquals(ENTRIES, committed.size());
+            for (long entryId = 0; entryId < ENTRIES; entryId++) {
+                assertEquals(entryId * 10, (long) committed.get(entryId));
+            }
+        }
+        for (RecordingBatch b : batches) {
+            assertTrue(b.closed);
+        }
+    }
+
+    @Test
+    public void testFlushIsNotAtomic() throws Exception {
+        try (ParallelLocationBatch batch = newBatch()) {
+            batches.get(1).failFlush = true;
+            addLocations(batch);
+            try {
+                batch.flush();
+                fail("Should fail to commit a batch");
+            } catch (IOException e) {
+                assertEquals("flush failure", e.getMessage());
+            }
+            // The other batches are still committed, the locations of the failed one are left to the journal replay
+            assertEquals(1, batches.get(0).flushes);
+            assertEquals(0, batches.get(1).flushes);
+            assertEquals(1, batches.get(2).flushes);
+            assertEquals(1, batches.get(3).flushes);
+        }
+        for (RecordingBatch b : batches) {
+            assertTrue(b.closed);
+        }
+    }
+
+    @Test
+    public void testFailureBuildingBatch() throws Exception {
+        try (ParallelLocationBatch batch = newBatch()) {
+            batches.get(2).failPut = true;
+            addLocations(batch);
+            try {
+                batch.flush();
+                fail("Should fail to build a batch");
+            } catch (IOException e) {
+                assertEquals("put failure", e.getMessage());
+            }
+            assertEquals(0, batches.get(2).flushes);
+        }
+        for (RecordingBatch b : batches) {
+            assertTrue(b.closed);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ReadAheadManager}.
+ */
+public class ReadAheadManagerTest {
+
+    private static final int ENTRY_SIZE = 100;
+    // distance between two entries of a ledger in the entry log
+    private static final long STRIDE = Integer.BYTES + ENTRY_SIZE;
+    private static final int MAX_WINDOW_SIZE = 64;
+
+    private EntryLogger entryLogger;
+    private EntryLocationIndex entryLocationIndex;
+    private ReadCache readCache;
+    private DbLedgerStorageStats stats;
+    private ReadAheadManager readAheadManager;
+
+    @Before
+    public void setup() throws Exception {
+        // the entries of each ledger are written one after the other, in their own entry log
+        entryLogger = mock(EntryLogger.class);
+        when(entryLogger.readEntry(anyLong())).thenAnswer(invocation -> {
+            long location = invocation.getArgument(0);
+            return entry(location >>> 32, (location & 0xffffffffL) / STRIDE - 1);
+        });
+        entryLocationIndex = mock(EntryLocationIndex.class);
+        when(entryLocationIndex.getLocation(anyLong(), anyLong())).thenAnswer(
+                invocation -> location(invocation.getArgument(0), invocation.getArgument(1)));
+        readCache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 1024 * 1024);
+        stats = new DbLedgerStorageStats(NullStatsLogger.INSTANCE, () -> 0L, () -> 0L, () -> 0L, () -> 0L,
+                                         () -> 0.0, () -> 0L, () -> 0L, 0, idx -> 0L);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (readAheadManager != null) {
+            readAheadManager.close();
+        }
+        readCache.close();
+    }
+
+    private static long location(long ledgerId, long entryId) {
+        return (ledgerId << 32) | ((entryId + 1) * STRIDE);
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        return Unpooled.buffer(ENTRY_SIZE).writeLong(ledgerId).writeLong(entryId).writeZero(ENTRY_SIZE - 16);
+    }
+
+    private ReadAheadManager newReadAheadManager(ExecutorService executor) {
+        return new ReadAheadManager(entryLogger, entryLocationIndex, readCache, stats, MAX_WINDOW_SIZE,
+                                    Long.MAX_VALUE, executor);
+    }
+
+    /**
+     * Read an entry the way the ledger storage does.
+     */
+    private void read(long ledgerId, long entryId) {
+        ByteBuf entry = readCache.get(ledgerId, entryId);
+        if (entry != null) {
+            entry.release();
+            readAheadManager.onReadCacheHit(ledgerId, entryId);
+        } else {
+            readAheadManager.onReadCacheMiss(ledgerId, entryId, location(ledgerId, entryId + 1));
+        }
+    }
+
+    @Test
+    public void testNoReadAheadForRandomReads() throws Exception {
+        readAheadManager = newReadAheadManager(MoreExecutors.newDirectExecutorService());
+        for (long entryId = 0; entryId < 1000; entryId += 10) {
+            read(1L, entryId);
+        }
+        verify(entryLogger, never()).readEntry(anyLong());
+        assertEquals(0, readCache.count());
+    }
+
+    @Test
+    public void testWindowGrowsWhilePrefetchedEntriesAreRead() throws Exception {
+        readAheadManager = newReadAheadManager(MoreExecutors.newDirectExecutorService());
+        read(1L, 0L);
+        read(1L, 1L);
+        // the read-ahead starts with the min window
+        assertEquals(8, readAheadManager.windowSize(1L));
+        assertTrue(readCache.hasEntry(1L, 9L));
+        assertFalse(readCache.hasEntry(1L, 10L));
+
+        for (long entryId = 2; entryId < 500; entryId++) {
+            read(1L, entryId);
+        }
+        assertEquals(MAX_WINDOW_SIZE, readAheadManager.windowSize(1L));
+        // all the entries after the first ones were served by the read cache
+        assertTrue(readCache.hitRate() > 0.99);
+    }
+
+    @Test
+    public void testWindowShrinksWhenPrefetchedEntriesAreWasted() throws Exception {
+        readAheadManager = newReadAheadManager(MoreExecutors.newDirectExecutorService());
+        for (long entryId = 0; entryId < 500; entryId++) {
+            read(1L, entryId);
+        }
+        assertEquals(MAX_WINDOW_SIZE, readAheadManager.windowSize(1L));
+
+        // the reader jumps back, leaving the entries read ahead of it unread
+        read(1L, 10L);
+        assertEquals(MAX_WINDOW_SIZE / 2, readAheadManager.windowSize(1L));
+        read(1L, 5000L);
+        assertEquals(MAX_WINDOW_SIZE / 2, readAheadManager.windowSize(1L));
+    }
+
+    @Test
+    public void testSlowReadDoesNotBlockOtherLedgers() throws Exception {
+        CountDownLatch slowReadStarted = new CountDownLatch(1);
+        CountDownLatch slowReadDone = new CountDownLatch(1);
+        when(entryLogger.readEntry(anyLong())).thenAnswer(invocation -> {
+            long location = invocation.getArgument(0);
+            long ledgerId = location >>> 32;
+            if (ledgerId == 1L) {
+                slowReadStarted.countDown();
+                slowReadDone.await();
+            }
+            return entry(ledgerId, (location & 0xffffffffL) / STRIDE - 1);
+        });
+        readAheadManager = new ReadAheadManager(entryLogger, entryLocationIndex, readCache, stats,
+                                                MAX_WINDOW_SIZE, Long.MAX_VALUE);
+        try {
+            read(1L, 0L);
+            read(1L, 1L);
+            assertTrue(slowReadStarted.await(10, TimeUnit.SECONDS));
+
+            read(2L, 0L);
+            read(2L, 1L);
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!readCache.hasEntry(2L, 9L) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(readCache.hasEntry(2L, 9L));
+        } finally {
+            slowReadDone.countDown();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ReadCache}.
+ */
+public class ReadCacheTest {
+
+    private static final int ENTRY_SIZE = 1024;
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId).writeLong(entryId).writeZero(ENTRY_SIZE - 2 * Long.BYTES);
+        return entry;
+    }
+
+    private static void put(ReadCache cache, long ledgerId, long entryId) {
+        ByteBuf entry = entry(ledgerId, entryId);
+        cache.put(ledgerId, entryId, entry);
+        entry.release();
+    }
+
+    private static void assertCached(ReadCache cache, long ledgerId, long entryId) {
+        ByteBuf entry = cache.get(ledgerId, entryId);
+        assertNotNull("Entry " + ledgerId + ":" + entryId + " should be cached", entry);
+        try {
+            assertEquals(ENTRY_SIZE, entry.readableBytes());
+            assertEquals(ledgerId, entry.getLong(entry.readerIndex()));
+            assertEquals(entryId, entry.getLong(entry.readerIndex() + Long.BYTES));
+        } finally {
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testPutAndGet() {
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 10 * ENTRY_SIZE);
+        assertNull(cache.get(1, 0));
+        put(cache, 1, 0);
+        put(cache, 1, 1);
+        assertTrue(cache.hasEntry(1, 0));
+        assertFalse(cache.hasEntry(1, 2));
+        assertCached(cache, 1, 0);
+        assertCached(cache, 1, 1);
+        assertEquals(2, cache.count());
+        assertEquals(2 * ENTRY_SIZE, cache.size());
+        assertEquals(2.0 / 3, cache.hitRate(), 0.001);
+        cache.close();
+    }
+
+    @Test
+    public void testSegmentsAllocatedWithAllocator() {
+        ByteBufAllocator allocator = spy(new UnpooledByteBufAllocator(true));
+        ReadCache cache = new ReadCache(allocator, 4 * ENTRY_SIZE, 2 * ENTRY_SIZE);
+        verify(allocator, times(2)).directBuffer(anyInt(), anyInt());
+
+        // pin the oldest segment while rotating all the segments, no memory is allocated
+        put(cache, 1, 0);
+        ByteBuf slice = cache.get(1, 0);
+        for (long entryId = 1; entryId < 10; entryId++) {
+            put(cache, 1, entryId);
+        }
+        slice.release();
+        verify(allocator, times(2)).directBuffer(anyInt(), anyInt());
+        cache.close();
+    }
+
+    @Test
+    public void testEvictionPurgesIndex() {
+        // 2 segments of 2 entries each
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * ENTRY_SIZE, 2 * ENTRY_SIZE);
+        assertEquals(2, cache.segmentsCount());
+        for (long entryId = 0; entryId < 4; entryId++) {
+            put(cache, 1, entryId);
+        }
+        assertEquals(4, cache.count());
+        assertEquals(0, cache.evictions());
+
+        // the first segment is rotated, and its entries removed from the index
+        put(cache, 1, 4);
+        assertEquals(2, cache.evictions());
+        assertEquals(3, cache.count());
+        assertFalse(cache.hasEntry(1, 0));
+        assertNull(cache.get(1, 1));
+        assertCached(cache, 1, 2);
+        assertCached(cache, 1, 3);
+        assertCached(cache, 1, 4);
+        assertEquals(ENTRY_SIZE, cache.segmentSize(0));
+        assertEquals(2 * ENTRY_SIZE, cache.segmentSize(1));
+        cache.close();
+    }
+
+    @Test
+    public void testSliceOutlivesEviction() {
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * ENTRY_SIZE, 2 * ENTRY_SIZE);
+        put(cache, 1, 0);
+        ByteBuf slice = cache.get(1, 0);
+        for (long entryId = 1; entryId < 5; entryId++) {
+            put(cache, 1, entryId);
+        }
+        // the segment holding the slice was rotated, but not overwritten
+        assertFalse(cache.hasEntry(1, 0));
+        assertEquals(1L, slice.getLong(slice.readerIndex()));
+        assertEquals(0L, slice.getLong(slice.readerIndex() + Long.BYTES));
+        assertEquals(1, cache.pinnedSkips());
+        assertFalse(cache.hasEntry(1, 4));
+
+        // once the slice is released, the segment is written again
+        slice.release();
+        put(cache, 1, 5);
+        assertCached(cache, 1, 5);
+        assertEquals(1, cache.pinnedSkips());
+        cache.close();
+    }
+
+    @Test
+    public void testEntryLargerThanSegmentIsSkipped() {
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 2 * ENTRY_SIZE, ENTRY_SIZE / 2);
+        put(cache, 1, 0);
+        assertEquals(0, cache.count());
+        cache.close();
+    }
+
+    @Test
+    public void testConcurrentPutAndGet() throws Exception {
+        ReadCache cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, 64 * ENTRY_SIZE, 8 * ENTRY_SIZE);
+        int numThreads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                final long ledgerId = t;
+                futures.add(executor.submit(() -> {
+                    for (long entryId = 0; entryId < 10000; entryId++) {
+                        put(cache, ledgerId, entryId);
+                        ByteBuf entry = cache.get(ledgerId, entryId - 10);
+                        if (entry != null) {
+                            assertEquals(ledgerId, entry.getLong(entry.readerIndex()));
+                            assertEquals(entryId - 10, entry.getLong(entry.readerIndex() + Long.BYTES));
+                            entry.release();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.size() <= 64 * ENTRY_SIZE);
+        assertTrue(cache.count() <= 64);
+        cache.close();
+    }
+}
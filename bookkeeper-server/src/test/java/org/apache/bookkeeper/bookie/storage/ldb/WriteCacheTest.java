@@ -0,0 +1,326 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link WriteCache}.
+ */
+public class WriteCacheTest {
+
+    private static final int ZERO_COPY_THRESHOLD = 1024;
+    private static final int MAX_CACHE_SIZE = 16 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 8 * 1024;
+
+    private WriteCache cache;
+
+    @Before
+    public void setup() {
+        cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, MAX_CACHE_SIZE, MAX_SEGMENT_SIZE,
+                ZERO_COPY_THRESHOLD);
+    }
+
+    @After
+    public void teardown() {
+        cache.close();
+    }
+
+    private static ByteBuf entry(ByteBuf buffer, int size, int value) {
+        for (int i = 0; i < size; i += Integer.BYTES) {
+            buffer.writeInt(value);
+        }
+        return buffer;
+    }
+
+    private static void assertEntry(ByteBuf entry, int size, int value) {
+        assertEquals(size, entry.readableBytes());
+        for (int i = 0; i < size; i += Integer.BYTES) {
+            assertEquals(value, entry.getInt(entry.readerIndex() + i));
+        }
+    }
+
+    @Test
+    public void testLargeDirectEntryIsReferenced() {
+        ByteBuf entry = entry(Unpooled.directBuffer(2048, 2048), 2048, 1);
+        assertTrue(cache.put(1, 0, entry));
+        // The cache keeps its own reference to the buffer
+        assertEquals(2, entry.refCnt());
+
+        ByteBuf read = cache.get(1, 0);
+        assertEntry(read, 2048, 1);
+        assertEquals(3, entry.refCnt());
+        read.release();
+
+        assertEquals(2048, cache.size());
+        assertEquals(1, cache.count());
+
+        cache.clear();
+        assertEquals(1, entry.refCnt());
+        assertNull(cache.get(1, 0));
+        entry.release();
+    }
+
+    @Test
+    public void testSmallOrHeapEntriesAreCopied() {
+        ByteBuf small = entry(Unpooled.directBuffer(512, 512), 512, 1);
+        ByteBuf heap = entry(Unpooled.buffer(2048, 2048), 2048, 2);
+        assertTrue(cache.put(1, 0, small));
+        assertTrue(cache.put(1, 1, heap));
+        assertEquals(1, small.refCnt());
+        assertEquals(1, heap.refCnt());
+
+        // The copies are not affected by changes to the original buffers
+        small.setZero(0, small.capacity());
+        heap.setZero(0, heap.capacity());
+        ByteBuf read = cache.get(1, 0);
+        assertEntry(read, 512, 1);
+        read.release();
+        read = cache.get(1, 1);
+        assertEntry(read, 2048, 2);
+        read.release();
+
+        small.release();
+        heap.release();
+    }
+
+    @Test
+    public void testSliceOfLargerBufferIsCopied() {
+        // e.g. an entry decoded from a cumulation of network reads
+        ByteBuf cumulation = Unpooled.directBuffer(8192, 8192);
+        entry(cumulation, 8192, 3);
+        ByteBuf entry = cumulation.slice(0, 2048);
+        assertTrue(cache.put(1, 0, entry));
+        assertEquals(1, cumulation.refCnt());
+        assertEquals(2048, cache.size());
+
+        // A slice covering most of its buffer is still referenced
+        ByteBuf mostOfIt = cumulation.slice(0, 6000);
+        assertTrue(cache.put(1, 1, mostOfIt));
+        assertEquals(2, cumulation.refCnt());
+
+        ByteBuf read = cache.get(1, 1);
+        assertEntry(read, 6000, 3);
+        read.release();
+
+        cache.clear();
+        assertEquals(1, cumulation.refCnt());
+        cumulation.release();
+    }
+
+    @Test
+    public void testReferencedEntriesCountTheirBufferCapacity() {
+        List<ByteBuf> buffers = new ArrayList<>();
+        int added = 0;
+        while (true) {
+            // Each entry keeps alive a buffer twice its size
+            ByteBuf buffer = entry(Unpooled.directBuffer(4096, 4096), 4096, added);
+            buffers.add(buffer);
+            if (!cache.put(1, added, buffer.slice(0, 2048))) {
+                break;
+            }
+            added++;
+        }
+        assertEquals(MAX_CACHE_SIZE / 4096, added);
+        assertEquals(added * 2048, cache.size());
+
+        // The entry that didn't fit is not referenced
+        assertEquals(1, buffers.get(added).refCnt());
+
+        cache.clear();
+        for (ByteBuf buffer : buffers) {
+            assertEquals(1, buffer.refCnt());
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testReferencedAndCopiedEntriesShareTheCacheSize() {
+        ByteBuf referenced = entry(Unpooled.directBuffer(8192, 8192), 8192, 1);
+        assertTrue(cache.put(1, 0, referenced));
+
+        // Only room left for one segment of copied entries
+        ByteBuf copied = entry(Unpooled.buffer(4096, 4096), 4096, 2);
+        assertTrue(cache.put(1, 1, copied));
+        assertTrue(cache.put(1, 2, copied));
+        assertFalse(cache.put(1, 3, copied));
+
+        copied.release();
+        cache.clear();
+        referenced.release();
+    }
+
+    @Test
+    public void testForEachIncludesReferencedEntries() {
+        ByteBuf referenced = entry(Unpooled.directBuffer(2048, 2048), 2048, 1);
+        ByteBuf copied = entry(Unpooled.buffer(512, 512), 512, 2);
+        assertTrue(cache.put(1, 1, referenced));
+        assertTrue(cache.put(1, 0, copied));
+        assertTrue(cache.put(2, 0, referenced));
+
+        List<String> entries = new ArrayList<>();
+        cache.forEach((ledgerId, entryId, entry) -> {
+            entries.add(ledgerId + "@" + entryId);
+            if (entryId == 1 || ledgerId == 2) {
+                assertEntry(entry, 2048, 1);
+            } else {
+                assertEntry(entry, 512, 2);
+            }
+        });
+        assertEquals(3, entries.size());
+        assertEquals("1@0", entries.get(0));
+        assertEquals("1@1", entries.get(1));
+        assertEquals("2@0", entries.get(2));
+        // Iterating doesn't take more references
+        assertEquals(3, referenced.refCnt());
+
+        copied.release();
+        cache.clear();
+        assertEquals(1, referenced.refCnt());
+        referenced.release();
+    }
+
+    private static List<String> forEachEntry(WriteCache writeCache) {
+        List<String> entries = new ArrayList<>();
+        writeCache.forEach((ledgerId, entryId, entry) -> {
+            entries.add(ledgerId + "@" + entryId + "=" + entry.getInt(entry.readerIndex()));
+        });
+        return entries;
+    }
+
+    @Test
+    public void testOutOfOrderEntriesAreOrdered() {
+        ByteBuf entry = Unpooled.buffer(64, 64);
+        for (long entryId : new long[] { 0, 1, 2, 5, 3, 6, 4 }) {
+            entry.clear();
+            assertTrue(cache.put(1, entryId, entry(entry, 64, (int) entryId)));
+        }
+        // entries added before the tail shift the following ones
+        assertEquals(Arrays.asList("1@0=0", "1@1=1", "1@2=2", "1@3=3", "1@4=4", "1@5=5", "1@6=6"),
+                forEachEntry(cache));
+        entry.release();
+    }
+
+    @Test
+    public void testLedgerRunGrows() {
+        ByteBuf entry = Unpooled.buffer(4, 4);
+        List<String> expected = new ArrayList<>();
+        // more entries than the initial capacity of a run, added from the last one
+        for (int entryId = 99; entryId >= 0; entryId--) {
+            entry.clear();
+            assertTrue(cache.put(1, entryId, entry(entry, 4, entryId)));
+            expected.add(0, "1@" + entryId + "=" + entryId);
+        }
+        assertEquals(expected, forEachEntry(cache));
+        entry.release();
+    }
+
+    @Test
+    public void testEntryAddedAgainIsReplaced() {
+        ByteBuf entry = Unpooled.buffer(64, 64);
+        assertTrue(cache.put(1, 0, entry(entry.clear(), 64, 1)));
+        assertTrue(cache.put(1, 1, entry(entry.clear(), 64, 2)));
+        assertTrue(cache.put(1, 0, entry(entry.clear(), 64, 3)));
+
+        assertEquals(Arrays.asList("1@0=3", "1@1=2"), forEachEntry(cache));
+        ByteBuf read = cache.get(1, 0);
+        assertEntry(read, 64, 3);
+        read.release();
+        entry.release();
+    }
+
+    @Test
+    public void testGetLastEntryAfterOutOfOrderEntries() {
+        ByteBuf entry = Unpooled.buffer(64, 64);
+        assertNull(cache.getLastEntry(1));
+        assertTrue(cache.put(1, 5, entry(entry.clear(), 64, 5)));
+        assertTrue(cache.put(1, 2, entry(entry.clear(), 64, 2)));
+        assertTrue(cache.put(1, 3, entry(entry.clear(), 64, 3)));
+
+        ByteBuf last = cache.getLastEntry(1);
+        assertEntry(last, 64, 5);
+        last.release();
+
+        assertTrue(cache.put(1, 7, entry(entry.clear(), 64, 7)));
+        last = cache.getLastEntry(1);
+        assertEntry(last, 64, 7);
+        last.release();
+
+        cache.clear();
+        assertNull(cache.getLastEntry(1));
+        entry.release();
+    }
+
+    @Test
+    public void testForEachSkipsDeletedLedgers() {
+        ByteBuf entry = Unpooled.buffer(64, 64);
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            assertTrue(cache.put(ledgerId, 0, entry(entry.clear(), 64, (int) ledgerId)));
+        }
+        cache.deleteLedger(2);
+        assertEquals(Arrays.asList("1@0=1", "3@0=3"), forEachEntry(cache));
+
+        // a ledger is only deleted until the cache is cleared
+        cache.clear();
+        assertTrue(cache.put(2, 0, entry(entry.clear(), 64, 2)));
+        assertEquals(Arrays.asList("2@0=2"), forEachEntry(cache));
+        entry.release();
+    }
+
+    @Test
+    public void testLedgerRunsDontUseDirectMemory() {
+        UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+        WriteCache runsCache = new WriteCache(allocator, MAX_CACHE_SIZE, MAX_SEGMENT_SIZE);
+        ByteBuf entry = entry(Unpooled.buffer(4, 4), 4, 1);
+        // the direct memory of the cache is bounded by its max size, whatever the number of ledgers
+        for (long ledgerId = 0; ledgerId < MAX_CACHE_SIZE / 128; ledgerId++) {
+            assertTrue(runsCache.put(ledgerId, 0, entry));
+        }
+        assertEquals(0, allocator.metric().usedDirectMemory());
+        runsCache.close();
+        entry.release();
+    }
+
+    @Test
+    public void testCloseReleasesReferencedEntries() {
+        ByteBuf entry = entry(Unpooled.directBuffer(2048, 2048), 2048, 1);
+        assertTrue(cache.put(1, 0, entry));
+        assertEquals(2, entry.refCnt());
+
+        cache.close();
+        cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, MAX_CACHE_SIZE, MAX_SEGMENT_SIZE);
+        assertEquals(1, entry.refCnt());
+        entry.release();
+    }
+}
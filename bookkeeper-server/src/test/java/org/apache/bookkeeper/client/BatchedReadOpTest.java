@@ -0,0 +1,214 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link BatchedReadOp}.
+ */
+public class BatchedReadOpTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int NUM_ENTRIES = 10;
+
+    private final BookieId bookie0 = BookieId.parse("bookie0:3181");
+    private final BookieId bookie1 = BookieId.parse("bookie1:3181");
+
+    private LedgerHandle lh;
+    private ClientContext clientCtx;
+    private BookieClient bookieClient;
+    private DigestManager digestManager;
+    // start entry of each request, per bookie
+    private List<Long> requests0;
+    private List<Long> requests1;
+
+    @Before
+    public void setup() throws Exception {
+        digestManager = DigestManager.instantiate(LEDGER_ID, new byte[0], DigestType.CRC32C,
+                                                  UnpooledByteBufAllocator.DEFAULT, false);
+        LedgerMetadata metadata = LedgerMetadataBuilder.create().withId(LEDGER_ID)
+            .withEnsembleSize(2).withWriteQuorumSize(2).withAckQuorumSize(2)
+            .newEnsembleEntry(0L, Arrays.asList(bookie0, bookie1)).build();
+        DistributionSchedule schedule = new RoundRobinDistributionSchedule(2, 2, 2);
+
+        lh = mock(LedgerHandle.class);
+        when(lh.getId()).thenReturn(LEDGER_ID);
+        when(lh.getLedgerMetadata()).thenReturn(metadata);
+        when(lh.getWriteSetForReadOperation(anyLong())).thenAnswer(
+                invocation -> schedule.getWriteSet(invocation.getArgument(0)));
+        Field macManager = LedgerHandle.class.getDeclaredField("macManager");
+        macManager.setAccessible(true);
+        macManager.set(lh, digestManager);
+
+        bookieClient = mock(BookieClient.class);
+        clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.defaultValues());
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+
+        requests0 = new ArrayList<>();
+        requests1 = new ArrayList<>();
+    }
+
+    private ByteBuf entry(long entryId) {
+        ByteBuf data = Unpooled.buffer(8).writeLong(entryId);
+        ByteBufList packaged = digestManager.computeDigestAndPackageForSending(entryId, entryId - 1, 8 * (entryId + 1),
+                                                                              data);
+        ByteBuf entry = ByteBufList.coalesce(packaged);
+        packaged.release();
+        return entry;
+    }
+
+    /**
+     * Answer the batch reads sent to a bookie with at most {@code maxEntries} entries, or with {@code rc}.
+     */
+    private void answerBatchReads(BookieId bookie, List<Long> requests, int maxEntries, int rc) {
+        doAnswer(invocation -> {
+            long startEntryId = invocation.getArgument(2);
+            int maxCount = invocation.getArgument(3);
+            BatchedReadEntryCallback cb = invocation.getArgument(5);
+            Object ctx = invocation.getArgument(6);
+            requests.add(startEntryId);
+            if (rc != BKException.Code.OK) {
+                cb.readEntriesComplete(rc, LEDGER_ID, startEntryId, null, ctx);
+                return null;
+            }
+            ByteBufList entries = ByteBufList.get();
+            for (long entryId = startEntryId; entryId < startEntryId + Math.min(maxCount, maxEntries); entryId++) {
+                entries.add(entry(entryId));
+            }
+            cb.readEntriesComplete(rc, LEDGER_ID, startEntryId, entries, ctx);
+            entries.release();
+            return null;
+        }).when(bookieClient).batchReadEntries(eq(bookie), anyLong(), anyLong(),
+                                               anyInt(), anyLong(), any(), any(), anyInt());
+    }
+
+    private LedgerEntries read(long firstEntryId, long lastEntryId) throws Exception {
+        BatchedReadOp op = new BatchedReadOp(lh, clientCtx, firstEntryId, lastEntryId, Long.MAX_VALUE);
+        op.initiate();
+        return op.future().get();
+    }
+
+    private static void assertEntries(LedgerEntries entries, long firstEntryId, long lastEntryId) {
+        long expected = firstEntryId;
+        for (LedgerEntry entry : entries) {
+            assertEquals(expected, entry.getEntryId());
+            assertEquals(expected, ByteBuffer.wrap(entry.getEntryBytes()).getLong());
+            expected++;
+        }
+        assertEquals(lastEntryId + 1, expected);
+    }
+
+    @Test
+    public void testReadInOneBatch() throws Exception {
+        answerBatchReads(bookie0, requests0, NUM_ENTRIES, BKException.Code.OK);
+        try (LedgerEntries entries = read(0, NUM_ENTRIES - 1)) {
+            assertEntries(entries, 0, NUM_ENTRIES - 1);
+        }
+        assertEquals(Arrays.asList(0L), requests0);
+    }
+
+    @Test
+    public void testPartialBatchesAreFollowedUp() throws Exception {
+        answerBatchReads(bookie0, requests0, 3, BKException.Code.OK);
+        try (LedgerEntries entries = read(2, 9)) {
+            assertEntries(entries, 2, 9);
+        }
+        assertEquals(Arrays.asList(2L, 5L, 8L), requests0);
+    }
+
+    @Test
+    public void testErrorFailsOverToNextReplica() throws Exception {
+        answerBatchReads(bookie0, requests0, 3, BKException.Code.OK);
+        answerBatchReads(bookie1, requests1, NUM_ENTRIES, BKException.Code.OK);
+        // bookie0 fails after its first batch
+        doAnswer(invocation -> {
+            long startEntryId = invocation.getArgument(2);
+            BatchedReadEntryCallback cb = invocation.getArgument(5);
+            requests0.add(startEntryId);
+            if (startEntryId == 0) {
+                ByteBufList entries = ByteBufList.get(entry(0), entry(1));
+                cb.readEntriesComplete(BKException.Code.OK, LEDGER_ID, 0, entries, invocation.getArgument(6));
+                entries.release();
+            } else {
+                cb.readEntriesComplete(BKException.Code.ReadException, LEDGER_ID, startEntryId, null,
+                                       invocation.getArgument(6));
+            }
+            return null;
+        }).when(bookieClient).batchReadEntries(eq(bookie0), anyLong(), anyLong(),
+                                               anyInt(), anyLong(), any(), any(), anyInt());
+
+        try (LedgerEntries entries = read(0, 5)) {
+            assertEntries(entries, 0, 5);
+        }
+        assertEquals(Arrays.asList(0L, 2L), requests0);
+        // the next replica is asked for the first entry not received yet
+        assertEquals(Arrays.asList(2L), requests1);
+        verify(lh).recordReadErrorOnBookie(0);
+    }
+
+    @Test
+    public void testReadFailsOnAllReplicas() throws Exception {
+        answerBatchReads(bookie0, requests0, NUM_ENTRIES, BKException.Code.NoSuchEntryException);
+        answerBatchReads(bookie1, requests1, NUM_ENTRIES, BKException.Code.ReadException);
+        try {
+            read(0, 5);
+            fail("Should fail when no replica can be read");
+        } catch (ExecutionException ee) {
+            assertEquals(BKException.Code.ReadException, ((BKException) ee.getCause()).getCode());
+        }
+        assertEquals(Arrays.asList(0L), requests0);
+        assertEquals(Arrays.asList(0L), requests1);
+    }
+}
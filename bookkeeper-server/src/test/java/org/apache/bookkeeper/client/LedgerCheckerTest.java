@@ -0,0 +1,154 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the sampling of the entries verified by {@link LedgerChecker}.
+ */
+public class LedgerCheckerTest {
+
+    private static final long LEDGER_ID = 1L;
+
+    private final BookieId bookie = BookieId.parse("bookie0:3181");
+
+    private BookieClient bookieClient;
+    private LedgerChecker checker;
+    // entries read by the checker
+    private List<Long> reads;
+
+    @Before
+    public void setup() {
+        bookieClient = mock(BookieClient.class);
+        BookieWatcher bookieWatcher = mock(BookieWatcher.class);
+        checker = new LedgerChecker(bookieClient, bookieWatcher, -1);
+        reads = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            long entryId = invocation.getArgument(2);
+            ReadEntryCallback cb = invocation.getArgument(3);
+            reads.add(entryId);
+            cb.readEntryComplete(BKException.Code.OK, LEDGER_ID, entryId, null, invocation.getArgument(4));
+            return null;
+        }).when(bookieClient).readEntry(eq(bookie), anyLong(), anyLong(), any(ReadEntryCallback.class), any(),
+                                        anyInt());
+    }
+
+    /**
+     * Check a closed ledger of {@code lastEntryId + 1} entries stored on a single bookie.
+     */
+    private void check(long lastEntryId, long percentageToBeVerified) throws Exception {
+        LedgerMetadata metadata = LedgerMetadataBuilder.create().withId(LEDGER_ID)
+            .withEnsembleSize(1).withWriteQuorumSize(1).withAckQuorumSize(1)
+            .withPassword(new byte[0]).withDigestType(DigestType.CRC32C)
+            .newEnsembleEntry(0L, Arrays.asList(bookie))
+            .withClosedState().withLastEntryId(lastEntryId).withLength(lastEntryId + 1)
+            .build();
+        DistributionSchedule schedule = new RoundRobinDistributionSchedule(1, 1, 1);
+        LedgerHandle lh = mock(LedgerHandle.class);
+        when(lh.getId()).thenReturn(LEDGER_ID);
+        when(lh.getLedgerMetadata()).thenReturn(metadata);
+        when(lh.getDistributionSchedule()).thenReturn(schedule);
+        when(lh.getLastAddConfirmed()).thenReturn(lastEntryId);
+        when(lh.isClosed()).thenReturn(true);
+
+        CompletableFuture<Set<LedgerFragment>> result = new CompletableFuture<>();
+        checker.checkLedger(lh, (rc, fragments) -> {
+            if (rc == BKException.Code.OK) {
+                result.complete(fragments);
+            } else {
+                result.completeExceptionally(BKException.create(rc));
+            }
+        }, percentageToBeVerified);
+        assertTrue("No fragment should be missing", result.get().isEmpty());
+    }
+
+    /**
+     * Assert that each of the {@code numBuckets} buckets of the same length over the entries was sampled.
+     */
+    private void assertEveryBucketSampled(long numEntries, long numBuckets) {
+        TreeSet<Long> sampled = new TreeSet<>(reads);
+        double lengthOfBucket = (double) numEntries / numBuckets;
+        for (long bucket = 0; bucket < numBuckets; bucket++) {
+            long startOfBucket = (long) (bucket * lengthOfBucket);
+            long endOfBucket = (long) ((bucket + 1) * lengthOfBucket);
+            Long entry = sampled.ceiling(startOfBucket);
+            assertTrue("No entry sampled in bucket " + bucket, entry != null && entry < endOfBucket);
+        }
+    }
+
+    @Test
+    public void testSampleSpreadOverAllBuckets() throws Exception {
+        check(999, 10);
+        assertEveryBucketSampled(1000, 100);
+        // one entry per bucket, and the first and last entries
+        assertTrue("Too many entries read: " + reads.size(), reads.size() <= 102);
+        assertTrue(reads.contains(0L));
+        assertTrue(reads.contains(999L));
+    }
+
+    @Test
+    public void testLastBucketOfUnevenBucketsSampled() throws Exception {
+        // 30 buckets of 33.5 entries, the last one ends with the last entry
+        for (int i = 0; i < 20; i++) {
+            reads.clear();
+            check(1004, 3);
+            assertEveryBucketSampled(1005, 30);
+            assertTrue("Too many entries read: " + reads.size(), reads.size() <= 32);
+        }
+    }
+
+    @Test
+    public void testFirstAndLastEntriesVerifiedByDefault() throws Exception {
+        check(99, 0);
+        assertEquals(Arrays.asList(0L, 99L), new ArrayList<>(new TreeSet<>(reads)));
+    }
+
+    @Test
+    public void testWholeFragmentVerified() throws Exception {
+        check(49, 100);
+        assertEquals(50, reads.size());
+        assertEquals(50, new TreeSet<>(reads).size());
+    }
+}
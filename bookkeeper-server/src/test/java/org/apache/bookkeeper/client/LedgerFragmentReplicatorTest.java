@@ -0,0 +1,324 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the pipelined batches of {@link LedgerFragmentReplicator}.
+ */
+public class LedgerFragmentReplicatorTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int BATCH_SIZE = 10;
+    private static final int ENTRY_SIZE = 1024;
+    private static final long BATCH_BYTES = BATCH_SIZE * ENTRY_SIZE;
+
+    private final BookieId bookie0 = BookieId.parse("bookie0:3181");
+    private final BookieId bookie1 = BookieId.parse("bookie1:3181");
+    private final BookieId newBookie = BookieId.parse("bookie2:3181");
+
+    private LedgerHandle lh;
+    private BookKeeper bkc;
+    private ClientConfiguration conf;
+    private LedgerFragmentReplicator replicator;
+    // batch reads started, by first entry of the batch
+    private final List<Long> readStarts = Collections.synchronizedList(new ArrayList<>());
+    private final List<CompletableFuture<LedgerEntries>> reads = Collections.synchronizedList(new ArrayList<>());
+    // writes to the new bookie not completed yet
+    private final List<PendingWrite> writes = Collections.synchronizedList(new ArrayList<>());
+
+    private static class PendingWrite {
+        final long entryId;
+        final WriteCallback cb;
+        final Object ctx;
+
+        PendingWrite(long entryId, WriteCallback cb, Object ctx) {
+            this.entryId = entryId;
+            this.cb = cb;
+            this.ctx = ctx;
+        }
+
+        void complete(int rc) {
+            cb.writeComplete(rc, LEDGER_ID, entryId, BookieId.parse("bookie2:3181"), ctx);
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        LedgerMetadata metadata = LedgerMetadataBuilder.create().withId(LEDGER_ID)
+            .withEnsembleSize(2).withWriteQuorumSize(2).withAckQuorumSize(2)
+            .withPassword(new byte[0]).withDigestType(org.apache.bookkeeper.client.api.DigestType.CRC32C)
+            .newEnsembleEntry(0L, Arrays.asList(bookie0, bookie1))
+            .withClosedState().withLastEntryId(4 * BATCH_SIZE - 1).withLength(4 * BATCH_BYTES)
+            .build();
+        DistributionSchedule schedule = new RoundRobinDistributionSchedule(2, 2, 2);
+        DigestManager digestManager = DigestManager.instantiate(LEDGER_ID, new byte[0], DigestType.CRC32C,
+                                                                UnpooledByteBufAllocator.DEFAULT, false);
+        lh = mock(LedgerHandle.class);
+        when(lh.getId()).thenReturn(LEDGER_ID);
+        when(lh.getLedgerMetadata()).thenReturn(metadata);
+        when(lh.getDistributionSchedule()).thenReturn(schedule);
+        when(lh.getDigestManager()).thenReturn(digestManager);
+        when(lh.getLastAddConfirmed()).thenReturn(4L * BATCH_SIZE - 1);
+        when(lh.getLedgerKey()).thenReturn(new byte[0]);
+
+        BookieClient bookieClient = mock(BookieClient.class);
+        doAnswer(invocation -> {
+            ByteBufList toSend = invocation.getArgument(4);
+            toSend.release();
+            writes.add(new PendingWrite(invocation.getArgument(3), invocation.getArgument(5),
+                                        invocation.getArgument(6)));
+            return null;
+        }).when(bookieClient).addEntry(any(), anyLong(), any(), anyLong(), any(), any(), any(), anyInt(),
+                                       anyBoolean(), any());
+
+        conf = new ClientConfiguration();
+        conf.setRereplicationEntryBatchSize(BATCH_SIZE);
+        bkc = mock(BookKeeper.class);
+        when(bkc.getConf()).thenReturn(conf);
+        when(bkc.getBookieClient()).thenReturn(bookieClient);
+    }
+
+    @After
+    public void teardown() {
+        if (replicator != null) {
+            replicator.shutdown();
+        }
+    }
+
+    private void newReplicator(long maxInFlightBytes) {
+        conf.setRereplicationMaxInFlightBytes(maxInFlightBytes);
+        replicator = new LedgerFragmentReplicator(bkc, NullStatsLogger.INSTANCE, conf) {
+            @Override
+            CompletableFuture<LedgerEntries> readBatch(LedgerHandle lh, long firstEntryId, long lastEntryId) {
+                CompletableFuture<LedgerEntries> read = new CompletableFuture<>();
+                readStarts.add(firstEntryId);
+                reads.add(read);
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Replicate the fragment of the first {@code numBatches} batches of entries of bookie0.
+     */
+    private CompletableFuture<Integer> replicate(int numBatches, Set<BookieId> targetBookies) throws Exception {
+        LedgerFragment fragment = new LedgerFragment(lh, 0, numBatches * BATCH_SIZE - 1,
+                                                     new HashSet<>(Arrays.asList(0)));
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        replicator.replicate(lh, fragment, (rc, path, ctx) -> result.complete(rc), targetBookies,
+                             (ledgerId, entryId) -> {});
+        return result;
+    }
+
+    private static LedgerEntries entries(long firstEntryId) {
+        List<org.apache.bookkeeper.client.api.LedgerEntry> entries = new ArrayList<>();
+        for (long entryId = firstEntryId; entryId < firstEntryId + BATCH_SIZE; entryId++) {
+            entries.add(LedgerEntryImpl.create(LEDGER_ID, entryId, ENTRY_SIZE,
+                                               Unpooled.wrappedBuffer(new byte[ENTRY_SIZE])));
+        }
+        return LedgerEntriesImpl.create(entries);
+    }
+
+    private void completeRead(int index) {
+        reads.get(index).complete(entries(readStarts.get(index)));
+    }
+
+    private void completeWrites(int rc) {
+        List<PendingWrite> toComplete;
+        synchronized (writes) {
+            toComplete = new ArrayList<>(writes);
+            writes.clear();
+        }
+        for (PendingWrite write : toComplete) {
+            write.complete(rc);
+        }
+    }
+
+    private static void waitFor(String what, BooleanSupplier condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for " + what);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testInFlightBudget() throws Exception {
+        LedgerFragmentReplicator.InFlightBudget budget = new LedgerFragmentReplicator.InFlightBudget(100);
+        budget.acquire(60);
+        assertEquals(60, budget.getInFlightBytes());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                budget.acquire(50);
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        // 60 + 50 bytes do not fit in the budget
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        // the actual size of a batch lower than estimated leaves room for the waiting batch
+        budget.add(-20);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        assertEquals(90, budget.getInFlightBytes());
+        waiter.join();
+
+        budget.release(40);
+        budget.release(50);
+        assertEquals(0, budget.getInFlightBytes());
+
+        // a batch larger than the budget is let through when nothing is in flight
+        budget.acquire(1000);
+        assertEquals(1000, budget.getInFlightBytes());
+        budget.release(1000);
+    }
+
+    @Test
+    public void testBatchesBoundedByBudget() throws Exception {
+        // room for the estimate of 2 batches, but not 3
+        newReplicator(2 * BATCH_BYTES + BATCH_BYTES / 2);
+        CompletableFuture<Integer> result = replicate(4, Collections.singleton(newBookie));
+
+        waitFor("2 batches read", () -> reads.size() == 2);
+        Thread.sleep(100);
+        assertEquals(2, reads.size());
+
+        // a batch read is still in flight until it is written
+        completeRead(0);
+        waitFor("the writes of a batch", () -> writes.size() == BATCH_SIZE);
+        Thread.sleep(100);
+        assertEquals(2, reads.size());
+
+        // once written, the next batch is read
+        completeWrites(BKException.Code.OK);
+        waitFor("3 batches read", () -> reads.size() == 3);
+
+        for (int i = 1; i < 4; i++) {
+            int batch = i;
+            waitFor("batch " + batch + " read", () -> reads.size() > batch);
+            completeRead(batch);
+            waitFor("the writes of batch " + batch, () -> writes.size() == BATCH_SIZE);
+            completeWrites(BKException.Code.OK);
+        }
+        assertEquals(BKException.Code.OK, (int) result.get(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0L, 10L, 20L, 30L), new ArrayList<>(new TreeSet<>(readStarts)));
+    }
+
+    @Test
+    public void testWriteFailureWhileBatchInFlight() throws Exception {
+        newReplicator(4 * BATCH_BYTES);
+        CompletableFuture<Integer> result = replicate(2, Collections.singleton(newBookie));
+
+        waitFor("2 batches read", () -> reads.size() == 2);
+        completeRead(0);
+        waitFor("the writes of a batch", () -> writes.size() == BATCH_SIZE);
+        // one write of the first batch fails while the second batch is still being read
+        writes.remove(0).complete(BKException.Code.WriteException);
+        completeWrites(BKException.Code.OK);
+        assertFalse(result.isDone());
+
+        completeRead(1);
+        waitFor("the writes of a batch", () -> writes.size() == BATCH_SIZE);
+        completeWrites(BKException.Code.OK);
+        assertNotEquals(BKException.Code.OK, (int) result.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testShutdownFailsQueuedBatches() throws Exception {
+        // room for a single batch at a time
+        newReplicator(BATCH_BYTES);
+        CompletableFuture<Integer> result = replicate(4, Collections.singleton(newBookie));
+        waitFor("a batch read", () -> reads.size() == 1);
+
+        // the other batches are waiting for the budget or queued
+        replicator.shutdown();
+        assertFalse(result.isDone());
+
+        // the batch in flight fails, and can not be retried entry by entry anymore
+        reads.get(0).completeExceptionally(new BKException.BKReadException());
+        assertNotEquals(BKException.Code.OK, (int) result.get(10, TimeUnit.SECONDS));
+        assertEquals(1, reads.size());
+    }
+
+    @Test
+    public void testReplicateAfterShutdown() throws Exception {
+        newReplicator(BATCH_BYTES);
+        replicator.shutdown();
+        CompletableFuture<Integer> result = replicate(2, Collections.singleton(newBookie));
+        assertNotEquals(BKException.Code.OK, (int) result.get(10, TimeUnit.SECONDS));
+        assertTrue(reads.isEmpty());
+    }
+
+    @Test
+    public void testNoTargetBookie() throws Exception {
+        newReplicator(BATCH_BYTES);
+        CompletableFuture<Integer> result = replicate(2, Collections.emptySet());
+        assertEquals(BKException.Code.IncorrectParameterException, (int) result.get(10, TimeUnit.SECONDS));
+        assertTrue(reads.isEmpty());
+    }
+}
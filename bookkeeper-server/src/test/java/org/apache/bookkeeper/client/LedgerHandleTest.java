@@ -0,0 +1,266 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Lists;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.common.util.SafeRunnable;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit test of the add path of {@link LedgerHandle}.
+ */
+public class LedgerHandleTest {
+
+    private static final long LEDGER_ID = 1L;
+
+    private final BookieId bookie = BookieId.parse("bookie0:3181");
+
+    private OrderedExecutor executor;
+    private OrderedScheduler scheduler;
+    private BookieClient bookieClient;
+    private LedgerManager ledgerManager;
+    private BookKeeperClientStats clientStats;
+    private ClientContext clientCtx;
+    // whether the bookie acknowledges the adds
+    private volatile boolean ackAdds = true;
+
+    @Before
+    public void setup() {
+        executor = spy(OrderedExecutor.newBuilder().numThreads(1).name("test-worker").build());
+        scheduler = OrderedScheduler.newSchedulerBuilder().numThreads(1).name("test-scheduler").build();
+
+        bookieClient = mock(BookieClient.class);
+        doAnswer(invocation -> {
+            BookieId addr = invocation.getArgument(0);
+            long entryId = invocation.getArgument(3);
+            WriteCallback cb = invocation.getArgument(5);
+            Object ctx = invocation.getArgument(6);
+            if (ackAdds) {
+                executor.executeOrdered(LEDGER_ID, SafeRunnable.safeRun(
+                        () -> cb.writeComplete(BKException.Code.OK, LEDGER_ID, entryId, addr, ctx)));
+            }
+            return null;
+        }).when(bookieClient).addEntry(any(), anyLong(), any(), anyLong(), any(), any(), any(),
+                                       anyInt(), anyBoolean(), any());
+
+        ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.writeLedgerMetadata(anyLong(), any(), any())).thenAnswer(invocation -> {
+            LedgerMetadata metadata = invocation.getArgument(1);
+            LongVersion version = invocation.getArgument(2);
+            return CompletableFuture.completedFuture(
+                    new Versioned<>(metadata, new LongVersion(version.getLongVersion() + 1)));
+        });
+
+        clientStats = spy(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+
+        clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(new ClientConfiguration()));
+        when(clientCtx.getMainWorkerPool()).thenReturn(executor);
+        when(clientCtx.getScheduler()).thenReturn(scheduler);
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getLedgerManager()).thenReturn(ledgerManager);
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getClientStats()).thenReturn(clientStats);
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdown();
+        scheduler.shutdown();
+    }
+
+    private LedgerHandle newLedgerHandle() throws Exception {
+        LedgerMetadata metadata = LedgerMetadataBuilder.create().withId(LEDGER_ID)
+            .withEnsembleSize(1).withWriteQuorumSize(1).withAckQuorumSize(1)
+            .withPassword(new byte[0]).withDigestType(BookKeeper.DigestType.CRC32C.toApiDigestType())
+            .newEnsembleEntry(0L, Lists.newArrayList(bookie)).build();
+        return new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0)),
+                                BookKeeper.DigestType.CRC32C, new byte[0], WriteFlag.NONE);
+    }
+
+    private static void waitForOrderedThread(OrderedExecutor executor) throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.executeOrdered(LEDGER_ID, SafeRunnable.safeRun(latch::countDown));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCloseRacingWithAdds() throws Exception {
+        for (int iteration = 0; iteration < 20; iteration++) {
+            LedgerHandle lh = newLedgerHandle();
+            int numProducers = 4;
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicInteger numAdds = new AtomicInteger();
+            AtomicInteger numCallbacks = new AtomicInteger();
+            Set<Long> added = ConcurrentHashMap.newKeySet();
+            AtomicInteger unexpectedFailures = new AtomicInteger();
+            CountDownLatch someAdded = new CountDownLatch(100);
+            // bound the adds in flight, as the bookie acks on the single ordered thread
+            Semaphore inFlight = new Semaphore(1000);
+
+            List<Thread> producers = new ArrayList<>();
+            for (int i = 0; i < numProducers; i++) {
+                Thread producer = new Thread(() -> {
+                    while (running.get()) {
+                        try {
+                            if (!inFlight.tryAcquire(10, TimeUnit.MILLISECONDS)) {
+                                continue;
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        numAdds.incrementAndGet();
+                        lh.asyncAddEntry(new byte[16], (rc, handle, entryId, ctx) -> {
+                            if (rc == BKException.Code.OK) {
+                                added.add(entryId);
+                                someAdded.countDown();
+                            } else if (rc != BKException.Code.LedgerClosedException) {
+                                unexpectedFailures.incrementAndGet();
+                            }
+                            numCallbacks.incrementAndGet();
+                            inFlight.release();
+                        }, null);
+                    }
+                }, "producer-" + i);
+                producer.start();
+                producers.add(producer);
+            }
+
+            assertTrue(someAdded.await(10, TimeUnit.SECONDS));
+            lh.close();
+            // adds keep racing with the closed handle for a while
+            Thread.sleep(5);
+            running.set(false);
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            waitForOrderedThread(executor);
+
+            assertEquals(numAdds.get(), numCallbacks.get());
+            assertEquals(0, unexpectedFailures.get());
+            long lastEntryId = lh.getLedgerMetadata().getLastEntryId();
+            assertEquals(lastEntryId, lh.getLastAddPushed());
+            assertEquals(lastEntryId, lh.getLastAddConfirmed());
+            // the acknowledged entries are exactly the entries of the closed ledger
+            assertEquals(lastEntryId + 1, added.size());
+            for (long entryId : added) {
+                assertTrue(entryId <= lastEntryId);
+            }
+        }
+    }
+
+    @Test
+    public void testRejectedSubmissionClosesLedger() throws Exception {
+        LedgerHandle lh = newLedgerHandle();
+        lh.addEntry(new byte[16]);
+
+        // the hop of the next add to the ordered thread is rejected
+        doThrow(new RejectedExecutionException("rejected")).doCallRealMethod()
+            .when(executor).executeOrdered(eq(LEDGER_ID), any(SafeRunnable.class));
+        CompletableFuture<Integer> rejected = new CompletableFuture<>();
+        lh.asyncAddEntry(new byte[16], (rc, handle, entryId, ctx) -> rejected.complete(rc), null);
+        assertEquals(BKException.Code.InterruptedException, (int) rejected.get(10, TimeUnit.SECONDS));
+
+        // the entry id of the rejected add is lost, so the ledger is closed before it
+        waitForOrderedThread(executor);
+        assertTrue(lh.getLedgerMetadata().isClosed());
+        assertEquals(0L, lh.getLedgerMetadata().getLastEntryId());
+        assertEquals(0L, lh.getLastAddPushed());
+
+        CompletableFuture<Integer> next = new CompletableFuture<>();
+        lh.asyncAddEntry(new byte[16], (rc, handle, entryId, ctx) -> next.complete(rc), null);
+        assertEquals(BKException.Code.LedgerClosedException, (int) next.get(10, TimeUnit.SECONDS));
+        assertEquals(0L, lh.getLastAddPushed());
+    }
+
+    @Test
+    public void testPendingAddsGauge() throws Exception {
+        LedgerHandle lh = newLedgerHandle();
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Gauge<Integer>> gaugeCaptor = ArgumentCaptor.forClass(Gauge.class);
+        verify(clientStats).registerPendingAddsGauge(gaugeCaptor.capture());
+        Gauge<Integer> gauge = gaugeCaptor.getValue();
+        assertEquals(0, (int) gauge.getSample());
+
+        ackAdds = false;
+        // block the ordered thread, so that the adds are not handed to the ring yet
+        CountDownLatch blocked = new CountDownLatch(1);
+        executor.executeOrdered(LEDGER_ID, SafeRunnable.safeRun(() -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        for (int i = 0; i < 3; i++) {
+            lh.asyncAddEntry(new byte[16], (rc, handle, entryId, ctx) -> {}, null);
+        }
+        assertEquals(3, (int) gauge.getSample());
+
+        blocked.countDown();
+        waitForOrderedThread(executor);
+        // the adds are now in flight
+        assertEquals(3, (int) gauge.getSample());
+    }
+}
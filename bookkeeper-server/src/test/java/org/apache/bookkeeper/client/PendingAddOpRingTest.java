@@ -0,0 +1,214 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Lists;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link PendingAddOpRing}.
+ */
+public class PendingAddOpRingTest {
+
+    private static PendingAddOp op(long entryId) {
+        PendingAddOp op = mock(PendingAddOp.class);
+        when(op.getEntryId()).thenReturn(entryId);
+        return op;
+    }
+
+    private static void assertReady(PendingAddOpRing ring, PendingAddOp... ops) {
+        for (PendingAddOp op : ops) {
+            assertSame(op, ring.pollReady());
+        }
+        assertNull(ring.pollReady());
+    }
+
+    @Test
+    public void testInOrderSubmission() {
+        PendingAddOpRing ring = new PendingAddOpRing(4, 0);
+        PendingAddOp op0 = op(0);
+        PendingAddOp op1 = op(1);
+        assertTrue(ring.submit(op0, 0));
+        assertTrue(ring.submit(op1, 0));
+        // Waiting ops are not in flight yet
+        assertTrue(ring.isEmpty());
+
+        assertReady(ring, op0, op1);
+        assertEquals(2, ring.size());
+        assertSame(op0, ring.peek());
+        assertSame(op0, ring.poll());
+        assertSame(op1, ring.poll());
+        assertNull(ring.poll());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void testOutOfOrderSubmission() {
+        PendingAddOpRing ring = new PendingAddOpRing(4, 0);
+        PendingAddOp op0 = op(0);
+        PendingAddOp op1 = op(1);
+        PendingAddOp op2 = op(2);
+
+        assertTrue(ring.submit(op2, 0));
+        assertTrue(ring.submit(op1, 0));
+        // Waiting for entry 0
+        assertNull(ring.pollReady());
+        assertEquals(0, ring.size());
+        assertEquals(2, ring.numWaiting());
+
+        assertTrue(ring.submit(op0, 0));
+        assertEquals(3, ring.numWaiting());
+        assertReady(ring, op0, op1, op2);
+        assertEquals(0, ring.numWaiting());
+        assertEquals(Arrays.asList(op0, op1, op2), Lists.newArrayList(ring.iterator()));
+    }
+
+    @Test
+    public void testRingGrows() {
+        PendingAddOpRing ring = new PendingAddOpRing(4, 0);
+        PendingAddOp[] ops = new PendingAddOp[100];
+        for (int i = ops.length - 1; i >= 0; i--) {
+            ops[i] = op(i);
+        }
+        // The first entry is submitted last, all the others wait for it
+        for (int i = ops.length - 1; i >= 0; i--) {
+            assertTrue(ring.submit(ops[i], 0));
+        }
+        assertReady(ring, ops);
+        assertEquals(ops.length, ring.size());
+        for (PendingAddOp op : ops) {
+            assertSame(op, ring.poll());
+        }
+    }
+
+    @Test
+    public void testWrapAround() {
+        PendingAddOpRing ring = new PendingAddOpRing(4, 0);
+        PendingAddOp inFlight = op(0);
+        assertTrue(ring.submit(inFlight, 0));
+        assertReady(ring, inFlight);
+        for (long entryId = 1; entryId < 50; entryId++) {
+            PendingAddOp op = op(entryId);
+            assertTrue(ring.submit(op, 0));
+            assertReady(ring, op);
+            // Complete the oldest op, keeping 1 op in flight
+            assertSame(inFlight, ring.poll());
+            assertEquals(1, ring.size());
+            inFlight = op;
+        }
+    }
+
+    @Test
+    public void testRejectAlreadySubmittedEntry() {
+        PendingAddOpRing ring = new PendingAddOpRing(4, 0);
+        PendingAddOp op0 = op(0);
+        assertTrue(ring.submit(op0, 0));
+        assertReady(ring, op0);
+
+        // Already in flight
+        assertFalse(ring.submit(op(0), 0));
+        // Already waiting
+        PendingAddOp op2 = op(2);
+        assertTrue(ring.submit(op2, 0));
+        assertFalse(ring.submit(op(2), 0));
+
+        assertEquals(Arrays.asList(op0), Lists.newArrayList(ring.iterator()));
+        assertEquals(Arrays.asList(op2), ring.drainWaiting());
+    }
+
+    @Test
+    public void testDrainWaitingOnFailure() {
+        PendingAddOpRing ring = new PendingAddOpRing(4, 0);
+        PendingAddOp op0 = op(0);
+        PendingAddOp op2 = op(2);
+        PendingAddOp op3 = op(3);
+        assertTrue(ring.submit(op0, 0));
+        assertReady(ring, op0);
+        assertTrue(ring.submit(op3, 0));
+        assertTrue(ring.submit(op2, 0));
+
+        assertEquals(2, ring.numWaiting());
+
+        // The waiting ops are removed, the ones in flight stay in the queue
+        List<PendingAddOp> waiting = ring.drainWaiting();
+        assertEquals(Arrays.asList(op2, op3), waiting);
+        assertEquals(0, ring.numWaiting());
+        assertTrue(ring.drainWaiting().isEmpty());
+        assertEquals(Arrays.asList(op0), Lists.newArrayList(ring.iterator()));
+
+        // The entry ids after the in flight ones can be submitted again
+        PendingAddOp op1 = op(1);
+        assertTrue(ring.submit(op1, 0));
+        assertReady(ring, op1);
+        assertEquals(2, ring.size());
+    }
+
+    @Test
+    public void testSkipToExpectedEntryWhenEmpty() {
+        // e.g. after the recovery of the ledger pushed entries 0 to 4
+        PendingAddOpRing ring = new PendingAddOpRing(4, 0);
+        PendingAddOp op5 = op(5);
+        assertTrue(ring.submit(op5, 5));
+        assertReady(ring, op5);
+
+        // Entries before the expected one are rejected
+        assertFalse(ring.submit(op(4), 5));
+        assertEquals(1, ring.size());
+    }
+
+    @Test
+    public void testNoSkipWhileOpsArePending() {
+        PendingAddOpRing ring = new PendingAddOpRing(4, 0);
+        PendingAddOp op0 = op(0);
+        PendingAddOp op2 = op(2);
+        assertTrue(ring.submit(op0, 0));
+        assertReady(ring, op0);
+        // The expected entry is ignored, as entry 0 is still in flight
+        assertTrue(ring.submit(op2, 2));
+        assertNull(ring.pollReady());
+    }
+
+    @Test
+    public void testRemoveOldestAfterConcurrentDrain() {
+        PendingAddOpRing ring = new PendingAddOpRing(4, 0);
+        PendingAddOp op0 = op(0);
+        PendingAddOp op1 = op(1);
+        assertTrue(ring.submit(op0, 0));
+        assertTrue(ring.submit(op1, 0));
+        assertReady(ring, op0, op1);
+
+        // Only the oldest op can be removed
+        assertFalse(ring.removeOldest(op1));
+        assertTrue(ring.removeOldest(op0));
+
+        // op1 was drained by a failure path before its completion removes it
+        assertSame(op1, ring.poll());
+        assertFalse(ring.removeOldest(op1));
+        assertTrue(ring.isEmpty());
+    }
+}
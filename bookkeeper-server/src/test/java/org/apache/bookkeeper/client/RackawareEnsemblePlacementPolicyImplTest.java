@@ -0,0 +1,149 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Test;
+
+/**
+ * Unit test of the read latency reordering of {@link RackawareEnsemblePlacementPolicyImpl}.
+ */
+public class RackawareEnsemblePlacementPolicyImplTest {
+
+    private static final double RATIO = 1.5;
+
+    private final List<BookieId> ensemble = new ArrayList<>();
+    private final Map<BookieId, Long> latencies = new HashMap<>();
+    private final BookiesHealthInfo healthInfo = new BookiesHealthInfo() {
+        @Override
+        public long getBookieFailureHistory(BookieId bookieSocketAddress) {
+            return -1L;
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookieSocketAddress) {
+            return 0L;
+        }
+
+        @Override
+        public long getBookieReadLatency(BookieId bookieSocketAddress, double quantile) {
+            assertEquals(RackawareEnsemblePlacementPolicyImpl.READ_REORDER_LATENCY_QUANTILE, quantile, 0.0);
+            return latencies.getOrDefault(bookieSocketAddress, -1L);
+        }
+    };
+
+    /**
+     * Reorder the write set of entry 0 over an ensemble with the given read latencies.
+     *
+     * @return the reordered bookie indexes
+     */
+    private List<Integer> reorder(long... bookieLatencies) {
+        ensemble.clear();
+        latencies.clear();
+        for (int i = 0; i < bookieLatencies.length; i++) {
+            BookieId bookie = BookieId.parse("bookie" + i + ":3181");
+            ensemble.add(bookie);
+            latencies.put(bookie, bookieLatencies[i]);
+        }
+        int size = bookieLatencies.length;
+        DistributionSchedule.WriteSet writeSet =
+                new RoundRobinDistributionSchedule(size, size, size).getWriteSet(0);
+        boolean reordered = RackawareEnsemblePlacementPolicyImpl.reorderByReadLatency(
+                ensemble, writeSet, healthInfo, RATIO);
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < writeSet.size(); i++) {
+            order.add(writeSet.get(i));
+        }
+        writeSet.recycle();
+        assertEquals(!order.equals(identity(size)), reordered);
+        return order;
+    }
+
+    private static List<Integer> identity(int size) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            order.add(i);
+        }
+        return order;
+    }
+
+    @Test
+    public void testOrderedByLatency() {
+        assertEquals(Arrays.asList(2, 1, 0), reorder(9000, 3000, 1000));
+        assertEquals(Arrays.asList(1, 2, 0), reorder(9000, 1000, 3000));
+        assertEquals(Arrays.asList(0, 1, 2), reorder(1000, 3000, 9000));
+    }
+
+    @Test
+    public void testSimilarLatenciesKeepOrder() {
+        // within the threshold ratio of each other
+        assertEquals(Arrays.asList(0, 1, 2), reorder(1400, 1000, 1200));
+        assertEquals(Arrays.asList(0, 1, 2), reorder(1000, 1000, 1000));
+        // exactly at the threshold is not enough
+        assertEquals(Arrays.asList(0, 1), reorder(1500, 1000));
+        assertEquals(Arrays.asList(1, 0), reorder(1501, 1000));
+    }
+
+    @Test
+    public void testStableForEqualLatencies() {
+        // the fast bookies move ahead, keeping their relative order
+        assertEquals(Arrays.asList(1, 3, 0, 2), reorder(5000, 1000, 5000, 1000));
+        assertEquals(Arrays.asList(1, 2, 3, 0), reorder(5000, 1000, 1000, 1000));
+    }
+
+    @Test
+    public void testUnknownLatencyFirst() {
+        // the latency of bookie 2 is unknown, it is tried first to measure it again
+        assertEquals(Arrays.asList(2, 0, 1), reorder(1000, 1000, -1));
+        // two unknown bookies keep their order
+        assertEquals(Arrays.asList(1, 2, 0), reorder(1000, -1, -1));
+        // no latency is known
+        assertEquals(Arrays.asList(0, 1, 2), reorder(-1, -1, -1));
+    }
+
+    @Test
+    public void testRatioBelowOneIsOne() {
+        DistributionSchedule.WriteSet writeSet = new RoundRobinDistributionSchedule(2, 2, 2).getWriteSet(0);
+        ensemble.clear();
+        latencies.clear();
+        BookieId slow = BookieId.parse("slow:3181");
+        BookieId fast = BookieId.parse("fast:3181");
+        ensemble.add(slow);
+        ensemble.add(fast);
+        latencies.put(slow, 1001L);
+        latencies.put(fast, 1000L);
+        assertTrue(RackawareEnsemblePlacementPolicyImpl.reorderByReadLatency(ensemble, writeSet, healthInfo, 0.5));
+        assertEquals(1, writeSet.get(0));
+
+        latencies.put(fast, 1001L);
+        assertFalse(RackawareEnsemblePlacementPolicyImpl.reorderByReadLatency(ensemble, writeSet, healthInfo, 0.5));
+        writeSet.recycle();
+    }
+}
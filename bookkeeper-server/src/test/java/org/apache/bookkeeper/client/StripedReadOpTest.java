@@ -0,0 +1,245 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.SequentialReader;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.SafeRunnable;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link StripedReadOp} and of the sequential reader of {@link LedgerHandle}.
+ */
+public class StripedReadOpTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int NUM_ENTRIES = 40;
+
+    private final BookieId bookie0 = BookieId.parse("bookie0:3181");
+    private final BookieId bookie1 = BookieId.parse("bookie1:3181");
+
+    private OrderedExecutor executor;
+    private BookieClient bookieClient;
+    private ClientContext clientCtx;
+    private ClientConfiguration conf;
+    private LedgerHandle lh;
+    // first bookie each entry was read from
+    private final Map<Long, BookieId> readFrom = new ConcurrentHashMap<>();
+
+    @Before
+    public void setup() {
+        executor = spy(OrderedExecutor.newBuilder().numThreads(4).name("test-worker").build());
+
+        bookieClient = mock(BookieClient.class);
+        doAnswer(invocation -> {
+            BookieId addr = invocation.getArgument(0);
+            long entryId = invocation.getArgument(2);
+            ReadEntryCallback cb = invocation.getArgument(3);
+            Object ctx = invocation.getArgument(4);
+            readFrom.putIfAbsent(entryId, addr);
+            // the responses of a ledger are delivered on the thread of the ledger
+            executor.executeOrdered(LEDGER_ID, SafeRunnable.safeRun(() -> {
+                ByteBuf entry = entry(entryId);
+                cb.readEntryComplete(BKException.Code.OK, LEDGER_ID, entryId, entry, ctx);
+                entry.release();
+            }));
+            return null;
+        }).when(bookieClient).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt());
+
+        EnsemblePlacementPolicy placementPolicy = mock(EnsemblePlacementPolicy.class);
+        when(placementPolicy.getStickyReadBookieIndex(any(), any())).thenReturn(0);
+
+        conf = new ClientConfiguration();
+        // no speculative read, each entry is read from a single bookie
+        conf.setSpeculativeReadTimeout(0);
+        clientCtx = mock(ClientContext.class);
+        when(clientCtx.getMainWorkerPool()).thenReturn(executor);
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getPlacementPolicy()).thenReturn(placementPolicy);
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdown();
+    }
+
+    private LedgerHandle newLedgerHandle() throws Exception {
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        LedgerMetadata metadata = LedgerMetadataBuilder.create().withId(LEDGER_ID)
+            .withEnsembleSize(2).withWriteQuorumSize(2).withAckQuorumSize(2)
+            .withPassword(new byte[0]).withDigestType(BookKeeper.DigestType.CRC32C.toApiDigestType())
+            .newEnsembleEntry(0L, Lists.newArrayList(bookie0, bookie1))
+            .withClosedState().withLastEntryId(NUM_ENTRIES - 1).withLength(8 * NUM_ENTRIES)
+            .build();
+        lh = new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0)),
+                              BookKeeper.DigestType.CRC32C, new byte[0], WriteFlag.NONE);
+        return lh;
+    }
+
+    private ByteBuf entry(long entryId) {
+        ByteBuf data = Unpooled.buffer(8).writeLong(entryId);
+        ByteBufList packaged = lh.getDigestManager().computeDigestAndPackageForSending(entryId, entryId - 1,
+                                                                                      8 * (entryId + 1), data);
+        ByteBuf entry = ByteBufList.coalesce(packaged);
+        packaged.release();
+        return entry;
+    }
+
+    private static void assertEntry(long entryId, LedgerEntry entry) {
+        assertEquals(entryId, entry.getEntryId());
+        assertEquals(entryId, ByteBuffer.wrap(entry.getEntryBytes()).getLong());
+    }
+
+    @Test
+    public void testResponsesHandledOnTheThreadOfTheStripe() throws Exception {
+        newLedgerHandle();
+        StripedReadOp op = new StripedReadOp(lh, clientCtx, 0, 15, 3);
+        assertEquals(LEDGER_ID + 3, op.getOrderingKey());
+
+        op.submit();
+        try (LedgerEntries entries = op.future().get(10, TimeUnit.SECONDS)) {
+            long entryId = 0;
+            for (LedgerEntry entry : entries) {
+                assertEntry(entryId++, entry);
+            }
+            assertEquals(16, entryId);
+        }
+        // the op and each of the 16 responses are executed on the thread of the stripe
+        verify(executor).executeOrdered(LEDGER_ID + 3, op);
+        verify(executor, times(1 + 16)).executeOrdered(eq(LEDGER_ID + 3), any(SafeRunnable.class));
+    }
+
+    @Test
+    public void testStickyReadsBypassed() throws Exception {
+        conf.setStickyReadsEnabled(true);
+        newLedgerHandle();
+
+        // all the entries of a regular read come from the sticky bookie
+        lh.readAsync(0, 15).get(10, TimeUnit.SECONDS).close();
+        for (long entryId = 0; entryId < 16; entryId++) {
+            assertEquals(bookie0, readFrom.get(entryId));
+        }
+
+        // the entries of a stripe are spread across the ensemble
+        readFrom.clear();
+        StripedReadOp op = new StripedReadOp(lh, clientCtx, 0, 15, 0);
+        op.submit();
+        op.future().get(10, TimeUnit.SECONDS).close();
+        for (long entryId = 0; entryId < 16; entryId++) {
+            assertEquals(entryId % 2 == 0 ? bookie0 : bookie1, readFrom.get(entryId));
+        }
+    }
+
+    @Test
+    public void testSequentialReaderReadsInStripes() throws Exception {
+        newLedgerHandle();
+        try (SequentialReader reader = lh.newSequentialReader(0, NUM_ENTRIES - 1, Long.MAX_VALUE)) {
+            for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+                assertTrue(reader.hasNext());
+                try (LedgerEntry entry = reader.next()) {
+                    assertEntry(entryId, entry);
+                }
+            }
+            assertFalse(reader.hasNext());
+        }
+        // stripes of 8 entries per bookie of the ensemble, each on its own thread
+        int entriesPerStripe = 2 * StripedReadOp.ENTRIES_PER_BOOKIE;
+        for (long stripe = 0; stripe < 3; stripe++) {
+            long numEntries = Math.min(entriesPerStripe, NUM_ENTRIES - stripe * entriesPerStripe);
+            verify(executor, times((int) (1 + numEntries)))
+                .executeOrdered(eq(LEDGER_ID + stripe), any(SafeRunnable.class));
+        }
+    }
+
+    @Test
+    public void testSequentialReaderPastLastAddConfirmed() throws Exception {
+        newLedgerHandle();
+        try (SequentialReader reader = lh.newSequentialReader(0, NUM_ENTRIES + 4, Long.MAX_VALUE)) {
+            for (long entryId = 0; entryId < 32; entryId++) {
+                try (LedgerEntry entry = reader.next()) {
+                    assertEntry(entryId, entry);
+                }
+            }
+            // the last stripe ends past the last add confirmed
+            try {
+                reader.next();
+                fail("Should fail to read past the last add confirmed");
+            } catch (BKException.BKReadException e) {
+                // expected
+            }
+        }
+        // the stripe is not sent to the bookies
+        assertFalse(readFrom.containsKey(32L));
+    }
+
+    @Test
+    public void testSequentialReaderOfClosedClient() throws Exception {
+        newLedgerHandle();
+        when(clientCtx.isClientClosed()).thenReturn(true);
+        try (SequentialReader reader = lh.newSequentialReader(0, NUM_ENTRIES - 1, Long.MAX_VALUE)) {
+            reader.nextAsync().get(10, TimeUnit.SECONDS);
+            fail("Should fail to read with a closed client");
+        } catch (ExecutionException e) {
+            assertEquals(BKException.Code.ClientClosedException, ((BKException) e.getCause()).getCode());
+        }
+        assertTrue(readFrom.isEmpty());
+    }
+}
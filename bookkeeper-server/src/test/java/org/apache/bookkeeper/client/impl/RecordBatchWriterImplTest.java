@@ -0,0 +1,273 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link RecordBatchWriterImpl} and {@link LedgerRecordsImpl}.
+ */
+public class RecordBatchWriterImplTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int RECORD_SIZE = 10;
+    private static final long NO_DELAY = TimeUnit.HOURS.toMillis(1);
+
+    private final List<ByteBuf> batches = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+    private WriteHandle handle;
+
+    @Before
+    public void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        handle = mock(WriteHandle.class);
+        when(handle.appendAsync(any(ByteBuf.class))).thenAnswer(invocation -> {
+            synchronized (batches) {
+                batches.add(invocation.getArgument(0));
+                return CompletableFuture.completedFuture((long) batches.size() - 1);
+            }
+        });
+    }
+
+    @After
+    public void teardown() {
+        scheduler.shutdownNow();
+        batches.forEach(ByteBuf::release);
+    }
+
+    private RecordBatchWriterImpl newWriter(CompletableFuture<Void> marked, int maxRecords, int maxBytes,
+                                            long maxDelayMillis) {
+        return new RecordBatchWriterImpl(handle, scheduler, ByteBufAllocator.DEFAULT, marked,
+                maxRecords, maxBytes, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static ByteBuf record(int i) {
+        byte[] data = new byte[RECORD_SIZE];
+        Arrays.fill(data, (byte) i);
+        return Unpooled.wrappedBuffer(data);
+    }
+
+    private int numBatches() {
+        synchronized (batches) {
+            return batches.size();
+        }
+    }
+
+    private List<ByteBuf> readEntry(int entryId, boolean batched) {
+        ByteBuf batch;
+        synchronized (batches) {
+            batch = batches.get(entryId);
+        }
+        LedgerEntry entry = LedgerEntryImpl.create(LEDGER_ID, entryId, batch.readableBytes(), batch.retainedSlice());
+        List<ByteBuf> records = new ArrayList<>();
+        try (LedgerEntries entries = LedgerRecordsImpl.create(
+                LedgerEntriesImpl.create(new ArrayList<>(Arrays.asList(entry))), batched)) {
+            for (LedgerEntry record : entries) {
+                records.add(Unpooled.wrappedBuffer(record.getEntryBytes()));
+            }
+        }
+        return records;
+    }
+
+    private static void assertPositions(long entryId, List<CompletableFuture<RecordPosition>> futures)
+            throws Exception {
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(new RecordPosition(entryId, i), futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testFlushOnRecordCount() throws Exception {
+        RecordBatchWriterImpl writer = newWriter(FutureUtils.Void(), 3, 1024 * 1024, NO_DELAY);
+        List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(writer.appendAsync(record(i)));
+        }
+        assertEquals(1, numBatches());
+        assertPositions(0, futures);
+        assertEquals(Arrays.asList(record(0), record(1), record(2)), readEntry(0, true));
+
+        CompletableFuture<RecordPosition> pending = writer.appendAsync(record(3));
+        assertEquals(1, numBatches());
+        assertFalse(pending.isDone());
+    }
+
+    @Test
+    public void testFlushOnBatchSize() throws Exception {
+        int recordSize = RecordBatchFormat.RECORD_HEADER_SIZE + RECORD_SIZE;
+        // room for two records and a half
+        RecordBatchWriterImpl writer = newWriter(FutureUtils.Void(), 100,
+                RecordBatchFormat.HEADER_SIZE + recordSize * 5 / 2, NO_DELAY);
+        List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+        futures.add(writer.appendAsync(record(0)));
+        futures.add(writer.appendAsync(record(1)));
+        assertEquals(0, numBatches());
+        // the third record does not fit, the first two are written
+        CompletableFuture<RecordPosition> third = writer.appendAsync(record(2));
+        assertEquals(1, numBatches());
+        assertPositions(0, futures);
+        assertFalse(third.isDone());
+        assertEquals(Arrays.asList(record(0), record(1)), readEntry(0, true));
+
+        // a batch which reaches the max size is written right away
+        writer = newWriter(FutureUtils.Void(), 100, RecordBatchFormat.HEADER_SIZE + recordSize * 2, NO_DELAY);
+        writer.appendAsync(record(3));
+        assertEquals(1, numBatches());
+        writer.appendAsync(record(4));
+        assertEquals(2, numBatches());
+        assertEquals(Arrays.asList(record(3), record(4)), readEntry(1, true));
+    }
+
+    @Test
+    public void testFlushOnMaxDelay() throws Exception {
+        RecordBatchWriterImpl writer = newWriter(FutureUtils.Void(), 100, 1024 * 1024, 50);
+        long start = System.nanoTime();
+        CompletableFuture<RecordPosition> first = writer.appendAsync(record(0));
+        CompletableFuture<RecordPosition> second = writer.appendAsync(record(1));
+        assertEquals(new RecordPosition(0, 0), first.get(10, TimeUnit.SECONDS));
+        assertEquals(new RecordPosition(0, 1), second.get(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, numBatches());
+
+        // the timer of a batch written because of its count does not flush the next batch early
+        writer = newWriter(FutureUtils.Void(), 2, 1024 * 1024, 200);
+        writer.appendAsync(record(2));
+        writer.appendAsync(record(3));
+        assertEquals(2, numBatches());
+        start = System.nanoTime();
+        CompletableFuture<RecordPosition> next = writer.appendAsync(record(4));
+        assertEquals(new RecordPosition(2, 0), next.get(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void testFlushAndClose() throws Exception {
+        RecordBatchWriterImpl writer = newWriter(FutureUtils.Void(), 100, 1024 * 1024, NO_DELAY);
+        CompletableFuture<RecordPosition> first = writer.appendAsync(record(0));
+        writer.flush().get(10, TimeUnit.SECONDS);
+        assertEquals(new RecordPosition(0, 0), first.get());
+
+        CompletableFuture<RecordPosition> second = writer.appendAsync(record(1));
+        writer.closeAsync().get(10, TimeUnit.SECONDS);
+        assertEquals(new RecordPosition(1, 0), second.get());
+
+        ByteBuf rejected = record(2);
+        try {
+            writer.appendAsync(rejected).get();
+            fail("Appends after close should be rejected");
+        } catch (ExecutionException e) {
+            assertEquals(BKException.Code.LedgerClosedException, BKException.getExceptionCode(e.getCause()));
+        }
+        assertEquals(0, rejected.refCnt());
+        assertEquals(2, numBatches());
+    }
+
+    @Test
+    public void testBatchesWaitForBatchedLedgerMarker() throws Exception {
+        CompletableFuture<Void> marked = new CompletableFuture<>();
+        RecordBatchWriterImpl writer = newWriter(marked, 1, 1024 * 1024, NO_DELAY);
+        List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(writer.appendAsync(record(i)));
+        }
+        CompletableFuture<Void> flushed = writer.flush();
+        assertEquals(0, numBatches());
+        assertFalse(flushed.isDone());
+
+        marked.complete(null);
+        flushed.get(10, TimeUnit.SECONDS);
+        // batches are appended in order once the ledger is marked
+        for (int i = 0; i < 5; i++) {
+            assertEquals(new RecordPosition(i, 0), futures.get(i).get());
+            assertEquals(Arrays.asList(record(i)), readEntry(i, true));
+        }
+    }
+
+    @Test
+    public void testBatchedLedgerMarkerFailure() throws Exception {
+        CompletableFuture<Void> marked = new CompletableFuture<>();
+        RecordBatchWriterImpl writer = newWriter(marked, 1, 1024 * 1024, NO_DELAY);
+        CompletableFuture<RecordPosition> first = writer.appendAsync(record(0));
+        CompletableFuture<RecordPosition> second = writer.appendAsync(record(1));
+
+        BKException failure = BKException.create(BKException.Code.LedgerClosedException);
+        marked.completeExceptionally(failure);
+        for (CompletableFuture<RecordPosition> future : Arrays.asList(first, second)) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("Records should fail when the ledger cannot be marked");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+        assertEquals(0, numBatches());
+    }
+
+    @Test
+    public void testOnlyBatchedLedgersAreUnpacked() throws Exception {
+        RecordBatchWriterImpl writer = newWriter(FutureUtils.Void(), 2, 1024 * 1024, NO_DELAY);
+        writer.appendAsync(record(0));
+        writer.appendAsync(record(1));
+        assertEquals(1, numBatches());
+        assertEquals(2, readEntry(0, true).size());
+
+        // in a ledger which is not marked, an entry which looks like a batch is a plain entry
+        List<ByteBuf> plain = readEntry(0, false);
+        assertEquals(1, plain.size());
+        assertEquals(batches.get(0), plain.get(0));
+
+        // in a marked ledger, an entry which is not a valid batch is a plain entry
+        ByteBuf entry = Unpooled.copiedBuffer("not a batch", StandardCharsets.UTF_8);
+        synchronized (batches) {
+            batches.add(entry);
+        }
+        assertEquals(Arrays.asList(entry), readEntry(1, true));
+    }
+}
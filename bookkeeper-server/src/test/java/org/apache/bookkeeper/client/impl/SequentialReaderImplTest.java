@@ -0,0 +1,279 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link SequentialReaderImpl}.
+ */
+public class SequentialReaderImplTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int ENTRIES_PER_READ = 10;
+
+    private ReadHandle handle;
+    // reads sent, in order: first entry, last entry and index of each read
+    private final List<long[]> reads = new ArrayList<>();
+    private final List<CompletableFuture<LedgerEntries>> futures = new ArrayList<>();
+    // buffer of each entry read
+    private final Map<Long, ByteBuf> buffers = new HashMap<>();
+
+    @Before
+    public void setup() {
+        handle = mock(ReadHandle.class);
+        ledger(99, 100 * 100);
+    }
+
+    private void ledger(long lastAddConfirmed, long length) {
+        when(handle.getLastAddConfirmed()).thenReturn(lastAddConfirmed);
+        when(handle.getLength()).thenReturn(length);
+    }
+
+    private SequentialReaderImpl newReader(long firstEntry, long lastEntry, long maxBytesInFlight) {
+        return new SequentialReaderImpl(handle, firstEntry, lastEntry, maxBytesInFlight, ENTRIES_PER_READ,
+                (first, last, index) -> {
+                    CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+                    reads.add(new long[] { first, last, index });
+                    futures.add(future);
+                    return future;
+                });
+    }
+
+    /**
+     * Complete the read of the given index with entries of {@code entrySize} bytes.
+     */
+    private void completeRead(int index, int entrySize) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (long entryId = reads.get(index)[0]; entryId <= reads.get(index)[1]; entryId++) {
+            ByteBuf buffer = Unpooled.buffer(entrySize).writeLong(entryId).writeZero(entrySize - 8);
+            buffers.put(entryId, buffer);
+            entries.add(LedgerEntryImpl.create(LEDGER_ID, entryId, entrySize, buffer));
+        }
+        futures.get(index).complete(LedgerEntriesImpl.create(entries));
+    }
+
+    private static void assertEntry(long entryId, LedgerEntry entry) {
+        assertEquals(entryId, entry.getEntryId());
+        assertEquals(entryId, entry.getEntryBuffer().getLong(0));
+    }
+
+    private static void takeAndClose(SequentialReaderImpl reader, long entryId) throws Exception {
+        try (LedgerEntry entry = reader.nextAsync().get()) {
+            assertEntry(entryId, entry);
+        }
+    }
+
+    @Test
+    public void testReadAheadBoundedByBytes() throws Exception {
+        // 2 reads of 10 entries of 100 bytes, but not 3
+        SequentialReaderImpl reader = newReader(0, 99, 2500);
+        assertEquals(2, reads.size());
+        completeRead(0, 100);
+        completeRead(1, 100);
+        assertEquals(2, reads.size());
+
+        // the entries returned leave room for another read
+        for (long entryId = 0; entryId < 4; entryId++) {
+            takeAndClose(reader, entryId);
+        }
+        assertEquals(2, reads.size());
+        takeAndClose(reader, 4);
+        assertEquals(3, reads.size());
+        assertEquals(20, reads.get(2)[0]);
+        assertEquals(29, reads.get(2)[1]);
+        reader.close();
+    }
+
+    @Test
+    public void testEstimateReplacedByActualSize() throws Exception {
+        // entries of 100 bytes according to the length of the ledger, but 10 bytes actually
+        SequentialReaderImpl reader = newReader(0, 99, 2500);
+        assertEquals(2, reads.size());
+        completeRead(0, 10);
+        completeRead(1, 10);
+
+        takeAndClose(reader, 0);
+        // the remaining reads are estimated from the entries read
+        assertEquals(10, reads.size());
+        reader.close();
+    }
+
+    @Test
+    public void testAtLeastOneReadInFlight() throws Exception {
+        // unknown length, entries are assumed to be larger than the budget
+        ledger(-1, 0);
+        SequentialReaderImpl reader = newReader(0, 99, 1000);
+        assertEquals(1, reads.size());
+        reader.close();
+    }
+
+    @Test
+    public void testApplicationAheadOfReadAhead() throws Exception {
+        SequentialReaderImpl reader = newReader(0, 99, 1000);
+        assertEquals(1, reads.size());
+        List<CompletableFuture<LedgerEntry>> results = new ArrayList<>();
+        for (int i = 0; i < ENTRIES_PER_READ; i++) {
+            results.add(reader.nextAsync());
+        }
+        assertEquals(1, reads.size());
+        // the next entry is read even though the budget is used
+        results.add(reader.nextAsync());
+        assertEquals(2, reads.size());
+
+        // completed out of order, returned in order
+        completeRead(1, 100);
+        completeRead(0, 100);
+        for (int entryId = 0; entryId <= ENTRIES_PER_READ; entryId++) {
+            try (LedgerEntry entry = results.get(entryId).get()) {
+                assertEntry(entryId, entry);
+            }
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testEndOfRange() throws Exception {
+        SequentialReaderImpl reader = newReader(5, 29, Long.MAX_VALUE);
+        assertEquals(3, reads.size());
+        assertTrue(Arrays.equals(new long[] { 5, 14, 0 }, reads.get(0)));
+        assertTrue(Arrays.equals(new long[] { 15, 24, 1 }, reads.get(1)));
+        // the last read stops at the end of the range
+        assertTrue(Arrays.equals(new long[] { 25, 29, 2 }, reads.get(2)));
+        for (int i = 0; i < 3; i++) {
+            completeRead(i, 100);
+        }
+
+        for (long entryId = 5; entryId <= 29; entryId++) {
+            assertTrue(reader.hasNext());
+            takeAndClose(reader, entryId);
+        }
+        assertFalse(reader.hasNext());
+        try {
+            reader.nextAsync().get();
+            fail("Should fail to read past the end of the range");
+        } catch (ExecutionException ee) {
+            assertEquals(BKException.Code.NoSuchEntryException, ((BKException) ee.getCause()).getCode());
+        }
+        assertEquals(3, reads.size());
+        reader.close();
+    }
+
+    @Test
+    public void testEmptyRange() {
+        SequentialReaderImpl reader = newReader(0, -1, Long.MAX_VALUE);
+        assertFalse(reader.hasNext());
+        assertTrue(reads.isEmpty());
+        reader.close();
+    }
+
+    @Test
+    public void testReadFailure() throws Exception {
+        SequentialReaderImpl reader = newReader(0, 19, Long.MAX_VALUE);
+        BKException failure = BKException.create(BKException.Code.ReadException);
+        futures.get(0).completeExceptionally(failure);
+        completeRead(1, 100);
+
+        for (long entryId = 0; entryId < ENTRIES_PER_READ; entryId++) {
+            try {
+                reader.nextAsync().get();
+                fail("Should fail to read an entry of a failed read");
+            } catch (ExecutionException ee) {
+                assertSame(failure, ee.getCause());
+            }
+        }
+        // the following reads are not affected
+        for (long entryId = ENTRIES_PER_READ; entryId < 2 * ENTRIES_PER_READ; entryId++) {
+            takeAndClose(reader, entryId);
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testCloseReleasesEntriesReadAhead() throws Exception {
+        SequentialReaderImpl reader = newReader(0, 29, Long.MAX_VALUE);
+        assertEquals(3, reads.size());
+        completeRead(0, 100);
+        LedgerEntry returned = reader.nextAsync().get();
+
+        reader.close();
+        assertFalse(reader.hasNext());
+        // the entries read ahead are released, the entry returned is owned by the application
+        for (long entryId = 1; entryId < ENTRIES_PER_READ; entryId++) {
+            assertEquals(0, buffers.get(entryId).refCnt());
+        }
+        assertEntry(0, returned);
+        returned.close();
+        assertEquals(0, buffers.get(0L).refCnt());
+
+        // the reads in flight are released once completed
+        completeRead(1, 100);
+        completeRead(2, 100);
+        for (long entryId = ENTRIES_PER_READ; entryId < 30; entryId++) {
+            assertEquals(0, buffers.get(entryId).refCnt());
+        }
+
+        try {
+            reader.nextAsync().get();
+            fail("Should fail to read from a closed reader");
+        } catch (ExecutionException ee) {
+            assertEquals(BKException.Code.UnexpectedConditionException, ((BKException) ee.getCause()).getCode());
+        }
+    }
+
+    @Test
+    public void testCloseWithEntryRequested() throws Exception {
+        SequentialReaderImpl reader = newReader(0, 9, Long.MAX_VALUE);
+        CompletableFuture<LedgerEntry> requested = reader.nextAsync();
+        reader.close();
+
+        // the entry requested before the close is still returned
+        completeRead(0, 100);
+        try (LedgerEntry entry = requested.get()) {
+            assertEntry(0, entry);
+        }
+        for (long entryId = 0; entryId < ENTRIES_PER_READ; entryId++) {
+            assertEquals(0, buffers.get(entryId).refCnt());
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Version;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.apache.zookeeper.AsyncCallback.MultiCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.proto.SetDataRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the bulk ledger metadata writes of {@link AbstractZkLedgerManager}.
+ */
+public class AbstractZkLedgerManagerTest {
+
+    private ZooKeeper zk;
+    private AbstractZkLedgerManager ledgerManager;
+    // version of the znode of each ledger, a ledger without a znode does not exist
+    private Map<String, Integer> znodeVersions;
+    private List<Integer> multiSizes;
+
+    @Before
+    public void setup() {
+        zk = mock(ZooKeeper.class);
+        ledgerManager = new LongHierarchicalLedgerManager(new ServerConfiguration(), zk);
+        znodeVersions = new HashMap<>();
+        multiSizes = new ArrayList<>();
+
+        // a multi is applied only if all its updates succeed, like the ZooKeeper server does
+        doAnswer(invocation -> {
+            Iterable<Op> ops = invocation.getArgument(0);
+            MultiCallback cb = invocation.getArgument(1);
+            List<OpResult> results = new ArrayList<>();
+            int rc = Code.OK.intValue();
+            for (Op op : ops) {
+                SetDataRequest request = (SetDataRequest) op.toRequestRecord();
+                if (rc != Code.OK.intValue()) {
+                    results.add(new OpResult.ErrorResult(Code.RUNTIMEINCONSISTENCY.intValue()));
+                    continue;
+                }
+                int opRc = checkVersion(request.getPath(), request.getVersion());
+                if (opRc == Code.OK.intValue()) {
+                    results.add(new OpResult.SetDataResult(stat(request.getVersion() + 1)));
+                } else {
+                    // the updates before the failed one are rolled back
+                    for (int i = 0; i < results.size(); i++) {
+                        results.set(i, new OpResult.ErrorResult(Code.OK.intValue()));
+                    }
+                    results.add(new OpResult.ErrorResult(opRc));
+                    rc = opRc;
+                }
+            }
+            multiSizes.add(results.size());
+            if (rc == Code.OK.intValue()) {
+                // apply the updates of the multi
+                for (Op op : ops) {
+                    SetDataRequest request = (SetDataRequest) op.toRequestRecord();
+                    znodeVersions.put(request.getPath(), request.getVersion() + 1);
+                }
+            }
+            cb.processResult(rc, null, invocation.getArgument(2), results);
+            return null;
+        }).when(zk).multi(any(), any(MultiCallback.class), any());
+
+        doAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            int version = invocation.getArgument(2);
+            StatCallback cb = invocation.getArgument(3);
+            int rc = checkVersion(path, version);
+            if (rc == Code.OK.intValue()) {
+                znodeVersions.put(path, version + 1);
+                cb.processResult(rc, path, invocation.getArgument(4), stat(version + 1));
+            } else {
+                cb.processResult(rc, path, invocation.getArgument(4), null);
+            }
+            return null;
+        }).when(zk).setData(anyString(), any(), anyInt(), any(StatCallback.class), any());
+    }
+
+    @After
+    public void teardown() {
+        ledgerManager.close();
+    }
+
+    private int checkVersion(String path, int version) {
+        Integer currentVersion = znodeVersions.get(path);
+        if (currentVersion == null) {
+            return Code.NONODE.intValue();
+        } else if (currentVersion != version) {
+            return Code.BADVERSION.intValue();
+        }
+        return Code.OK.intValue();
+    }
+
+    private static Stat stat(int version) {
+        Stat stat = new Stat();
+        stat.setVersion(version);
+        return stat;
+    }
+
+    private static LedgerMetadata metadata(long ledgerId) {
+        return LedgerMetadataBuilder.create().withId(ledgerId)
+            .withEnsembleSize(2).withWriteQuorumSize(2).withAckQuorumSize(2)
+            .withPassword(new byte[0]).withDigestType(DigestType.CRC32C)
+            .newEnsembleEntry(0L, Arrays.asList(BookieId.parse("bookie0:3181"), BookieId.parse("bookie1:3181")))
+            .build();
+    }
+
+    /**
+     * Create the znodes of the ledgers at version {@code version}, and the updates expecting it.
+     */
+    private Map<Long, Versioned<LedgerMetadata>> updates(long firstLedgerId, int numLedgers, int version) {
+        Map<Long, Versioned<LedgerMetadata>> updates = new LinkedHashMap<>();
+        for (long ledgerId = firstLedgerId; ledgerId < firstLedgerId + numLedgers; ledgerId++) {
+            znodeVersions.put(ledgerManager.getLedgerPath(ledgerId), version);
+            updates.put(ledgerId, new Versioned<>(metadata(ledgerId), new LongVersion(version)));
+        }
+        return updates;
+    }
+
+    private static void assertWritten(CompletableFuture<Versioned<LedgerMetadata>> result, long ledgerId,
+                                      long version) throws Exception {
+        Versioned<LedgerMetadata> written = result.get();
+        assertEquals(ledgerId, written.getValue().getLedgerId());
+        assertEquals(version, ((LongVersion) written.getVersion()).getLongVersion());
+    }
+
+    private static void assertFailed(CompletableFuture<Versioned<LedgerMetadata>> result,
+                                     Class<? extends BKException> expected) throws Exception {
+        try {
+            result.get();
+            fail("Write should have failed");
+        } catch (ExecutionException ee) {
+            assertTrue("Unexpected failure " + ee.getCause(), expected.isInstance(ee.getCause()));
+        }
+    }
+
+    @Test
+    public void testBatchWrittenWithOneMulti() throws Exception {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates(1L, 5, 3));
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), new ArrayList<>(results.keySet()));
+        for (long ledgerId = 1L; ledgerId <= 5L; ledgerId++) {
+            assertWritten(results.get(ledgerId), ledgerId, 4);
+        }
+        assertEquals(Arrays.asList(5), multiSizes);
+        verify(zk, never()).setData(anyString(), any(), anyInt(), any(StatCallback.class), any());
+    }
+
+    @Test
+    public void testVersionConflictFailsOnlyConflictingLedgers() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> updates = updates(1L, 4, 3);
+        // ledger 2 was updated concurrently
+        znodeVersions.put(ledgerManager.getLedgerPath(2L), 4);
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates);
+
+        assertFailed(results.get(2L), BKException.BKMetadataVersionException.class);
+        assertEquals(4, (int) znodeVersions.get(ledgerManager.getLedgerPath(2L)));
+        // the ledgers rolled back by the failed multi are written one by one
+        for (long ledgerId : Arrays.asList(1L, 3L, 4L)) {
+            assertWritten(results.get(ledgerId), ledgerId, 4);
+        }
+        assertEquals(Arrays.asList(4), multiSizes);
+        verify(zk, times(3)).setData(anyString(), any(), anyInt(), any(StatCallback.class), any());
+    }
+
+    @Test
+    public void testMissingLedgerFailsOnlyThatLedger() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> updates = updates(1L, 3, 0);
+        znodeVersions.remove(ledgerManager.getLedgerPath(3L));
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates);
+
+        assertWritten(results.get(1L), 1L, 1);
+        assertWritten(results.get(2L), 2L, 1);
+        assertFailed(results.get(3L), BKException.BKNoSuchLedgerExistsOnMetadataServerException.class);
+        verify(zk, times(2)).setData(anyString(), any(), anyInt(), any(StatCallback.class), any());
+    }
+
+    @Test
+    public void testConflictInRetryIsReported() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> updates = updates(1L, 3, 0);
+        znodeVersions.put(ledgerManager.getLedgerPath(1L), 1);
+        // ledger 3 is updated concurrently after the multi failed, before it is written by itself
+        doAnswer(invocation -> {
+            StatCallback cb = invocation.getArgument(3);
+            String path = invocation.getArgument(0);
+            if (path.equals(ledgerManager.getLedgerPath(3L))) {
+                cb.processResult(Code.BADVERSION.intValue(), path, invocation.getArgument(4), null);
+            } else {
+                cb.processResult(Code.OK.intValue(), path, invocation.getArgument(4), stat(1));
+            }
+            return null;
+        }).when(zk).setData(anyString(), any(), anyInt(), any(StatCallback.class), any());
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates);
+
+        assertFailed(results.get(1L), BKException.BKMetadataVersionException.class);
+        assertWritten(results.get(2L), 2L, 1);
+        assertFailed(results.get(3L), BKException.BKMetadataVersionException.class);
+    }
+
+    @Test
+    public void testMultiNotAppliedFailsAllLedgers() throws Exception {
+        doAnswer(invocation -> {
+            MultiCallback cb = invocation.getArgument(1);
+            cb.processResult(Code.CONNECTIONLOSS.intValue(), null, invocation.getArgument(2), null);
+            return null;
+        }).when(zk).multi(any(), any(MultiCallback.class), any());
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates(1L, 3, 0));
+
+        for (CompletableFuture<Versioned<LedgerMetadata>> result : results.values()) {
+            assertFailed(result, BKException.ZKException.class);
+        }
+        verify(zk, never()).setData(anyString(), any(), anyInt(), any(StatCallback.class), any());
+    }
+
+    @Test
+    public void testBatchSplitIntoSeveralMultis() throws Exception {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates(1L, 300, 0));
+
+        for (long ledgerId = 1L; ledgerId <= 300L; ledgerId++) {
+            assertWritten(results.get(ledgerId), ledgerId, 1);
+        }
+        assertEquals(Arrays.asList(128, 128, 44), multiSizes);
+    }
+
+    @Test
+    public void testSingleLedgerWrittenWithoutMulti() throws Exception {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates(1L, 1, 0));
+
+        assertWritten(results.get(1L), 1L, 1);
+        verify(zk, never()).multi(any(), any(MultiCallback.class), any());
+    }
+
+    @Test
+    public void testInvalidVersionFailsWithoutWrite() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> updates = updates(1L, 2, 0);
+        updates.put(3L, new Versioned<>(metadata(3L), Version.NEW));
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates);
+
+        assertFailed(results.get(3L), BKException.BKMetadataVersionException.class);
+        assertWritten(results.get(1L), 1L, 1);
+        assertWritten(results.get(2L), 2L, 1);
+        assertEquals(Arrays.asList(2), multiSizes);
+    }
+}
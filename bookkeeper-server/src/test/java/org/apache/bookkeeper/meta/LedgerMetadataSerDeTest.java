@@ -0,0 +1,282 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.CompactSegment;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link LedgerMetadataSerDe}, for the compact ensembles of the metadata format version 4.
+ */
+public class LedgerMetadataSerDeTest {
+
+    private static final long LEDGER_ID = 1234L;
+
+    private static final BookieId[] BOOKIES = new BookieId[7];
+    static {
+        for (int i = 0; i < BOOKIES.length; i++) {
+            BOOKIES[i] = BookieId.parse("bookie" + i + ":3181");
+        }
+    }
+
+    private final LedgerMetadataSerDe serDe = new LedgerMetadataSerDe();
+
+    private static List<BookieId> ensemble(int... bookies) {
+        BookieId[] ensemble = new BookieId[bookies.length];
+        for (int i = 0; i < bookies.length; i++) {
+            ensemble[i] = BOOKIES[bookies[i]];
+        }
+        return Arrays.asList(ensemble);
+    }
+
+    /**
+     * Closed ledger with a replacement of one bookie, of two bookies, of the whole ensemble, and a
+     * segment keeping the same ensemble.
+     */
+    private static LedgerMetadataBuilder builder() {
+        return LedgerMetadataBuilder.create().withId(LEDGER_ID)
+            .withEnsembleSize(3).withWriteQuorumSize(2).withAckQuorumSize(2)
+            .withPassword("secret".getBytes(UTF_8)).withDigestType(DigestType.CRC32C)
+            .withCreationTime(1000L).storingCreationTime(true).withCToken(7L)
+            .withCustomMetadata(Collections.singletonMap("application", "test".getBytes(UTF_8)))
+            .newEnsembleEntry(0L, ensemble(0, 1, 2))
+            .newEnsembleEntry(10L, ensemble(0, 3, 2))
+            .newEnsembleEntry(25L, ensemble(4, 3, 5))
+            .newEnsembleEntry(40L, ensemble(1, 0, 6))
+            .newEnsembleEntry(41L, ensemble(1, 0, 6))
+            .withClosedState().withLastEntryId(50L).withLength(5000L);
+    }
+
+    private static LedgerMetadata metadata(int formatVersion) {
+        return builder().withMetadataFormatVersion(formatVersion).build();
+    }
+
+    private LedgerMetadata parse(byte[] serialized) throws IOException {
+        return serDe.parseConfig(serialized, LEDGER_ID, Optional.empty());
+    }
+
+    /**
+     * Decode the protobuf message of serialized metadata, after its version header.
+     */
+    private static LedgerMetadataFormat decodeFormat(byte[] serialized) throws IOException {
+        ByteArrayInputStream is = new ByteArrayInputStream(serialized);
+        while (is.read() != '\n') {
+            // skip the version header
+        }
+        return LedgerMetadataFormat.parseDelimitedFrom(is);
+    }
+
+    private static byte[] encodeFormat(LedgerMetadataFormat format) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        os.write(("BookieMetadataFormatVersion\t" + LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4 + "\n")
+                 .getBytes(UTF_8));
+        format.writeDelimitedTo(os);
+        return os.toByteArray();
+    }
+
+    private static void assertSameMetadata(LedgerMetadata expected, LedgerMetadata actual) {
+        assertEquals(expected.getLedgerId(), actual.getLedgerId());
+        assertEquals(expected.getEnsembleSize(), actual.getEnsembleSize());
+        assertEquals(expected.getWriteQuorumSize(), actual.getWriteQuorumSize());
+        assertEquals(expected.getAckQuorumSize(), actual.getAckQuorumSize());
+        assertEquals(expected.getState(), actual.getState());
+        assertEquals(expected.getLastEntryId(), actual.getLastEntryId());
+        assertEquals(expected.getLength(), actual.getLength());
+        assertArrayEquals(expected.getPassword(), actual.getPassword());
+        assertEquals(expected.getDigestType(), actual.getDigestType());
+        assertEquals(expected.getCtime(), actual.getCtime());
+        assertEquals(expected.getCToken(), actual.getCToken());
+        assertEquals(expected.getCustomMetadata().keySet(), actual.getCustomMetadata().keySet());
+        for (Map.Entry<String, byte[]> entry : expected.getCustomMetadata().entrySet()) {
+            assertArrayEquals(entry.getValue(), actual.getCustomMetadata().get(entry.getKey()));
+        }
+        assertEquals(expected.getAllEnsembles(), actual.getAllEnsembles());
+    }
+
+    private void assertCorrupt(LedgerMetadataFormat format, String expectedMessage) throws Exception {
+        try {
+            parse(encodeFormat(format));
+            fail("Corrupt metadata should be rejected");
+        } catch (IOException ioe) {
+            assertTrue("Unexpected error " + ioe.getMessage(), ioe.getMessage().contains(expectedMessage));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (int formatVersion : Arrays.asList(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3,
+                                               LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4)) {
+            LedgerMetadata metadata = metadata(formatVersion);
+            LedgerMetadata parsed = parse(serDe.serialize(metadata));
+            assertEquals(formatVersion, parsed.getMetadataFormatVersion());
+            assertSameMetadata(metadata, parsed);
+        }
+    }
+
+    @Test
+    public void testVersion3And4Equal() throws Exception {
+        LedgerMetadata v3 = parse(serDe.serialize(metadata(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3)));
+        LedgerMetadata v4 = parse(serDe.serialize(metadata(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4)));
+        assertSameMetadata(v3, v4);
+
+        // rewriting the metadata read in one format with the other format keeps it unchanged, the
+        // builder does not copy the cToken of the metadata
+        LedgerMetadata v3ToV4 = parse(serDe.serialize(LedgerMetadataBuilder.from(v3).withCToken(v3.getCToken())
+                .withMetadataFormatVersion(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4).build()));
+        assertEquals(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4, v3ToV4.getMetadataFormatVersion());
+        assertSameMetadata(v3, v3ToV4);
+        LedgerMetadata v4ToV3 = parse(serDe.serialize(LedgerMetadataBuilder.from(v4).withCToken(v4.getCToken())
+                .withMetadataFormatVersion(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3).build()));
+        assertEquals(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3, v4ToV3.getMetadataFormatVersion());
+        assertSameMetadata(v4, v4ToV3);
+    }
+
+    @Test
+    public void testVersion4IsSmaller() throws Exception {
+        int v3Size = serDe.serialize(metadata(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_3)).length;
+        int v4Size = serDe.serialize(metadata(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4)).length;
+        assertTrue("v3 " + v3Size + " bytes, v4 " + v4Size + " bytes", v4Size < v3Size);
+    }
+
+    @Test
+    public void testEnsembleChangeDeltas() throws Exception {
+        LedgerMetadataFormat format = decodeFormat(
+                serDe.serialize(metadata(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4)));
+
+        assertEquals(0, format.getSegmentCount());
+        // each bookie is stored once, in the order of first use
+        assertEquals(Arrays.asList("bookie0:3181", "bookie1:3181", "bookie2:3181", "bookie3:3181",
+                                   "bookie4:3181", "bookie5:3181", "bookie6:3181"),
+                     format.getBookieList());
+        assertEquals(5, format.getCompactSegmentCount());
+        assertSegment(format.getCompactSegment(0), 0L, Collections.emptyList(), Arrays.asList(0, 1, 2));
+        // one bookie replaced
+        assertSegment(format.getCompactSegment(1), 10L, Arrays.asList(1), Arrays.asList(3));
+        // two bookies replaced
+        assertSegment(format.getCompactSegment(2), 15L, Arrays.asList(0, 2), Arrays.asList(4, 5));
+        // the whole ensemble is replaced, so it is stored as a whole, reusing known bookies
+        assertSegment(format.getCompactSegment(3), 15L, Collections.emptyList(), Arrays.asList(1, 0, 6));
+        // an unchanged ensemble is stored as a whole too
+        assertSegment(format.getCompactSegment(4), 1L, Collections.emptyList(), Arrays.asList(1, 0, 6));
+    }
+
+    private static void assertSegment(CompactSegment segment, long firstEntryIdDelta,
+                                      List<Integer> ensembleIndexes, List<Integer> bookieIndexes) {
+        assertEquals(firstEntryIdDelta, segment.getFirstEntryIdDelta());
+        assertEquals(ensembleIndexes, segment.getEnsembleIndexList());
+        assertEquals(bookieIndexes, segment.getBookieIndexList());
+    }
+
+    @Test
+    public void testCorruptIndexesRejected() throws Exception {
+        LedgerMetadataFormat format = decodeFormat(
+                serDe.serialize(metadata(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4)));
+        // sanity check of the unmodified message
+        assertSameMetadata(metadata(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4), parse(encodeFormat(format)));
+
+        // bookie index out of the bookies of the ledger
+        assertCorrupt(withSegment(format, 0, format.getCompactSegment(0).toBuilder().setBookieIndex(2, 7)),
+                      "refers to unknown bookie 7");
+        assertCorrupt(withSegment(format, 1, format.getCompactSegment(1).toBuilder().setBookieIndex(0, -1)),
+                      "refers to unknown bookie -1");
+        // replaced position out of the ensemble
+        assertCorrupt(withSegment(format, 1, format.getCompactSegment(1).toBuilder().setEnsembleIndex(0, 3)),
+                      "replaces invalid position 3");
+        assertCorrupt(withSegment(format, 2, format.getCompactSegment(2).toBuilder().setEnsembleIndex(1, -1)),
+                      "replaces invalid position -1");
+        // replaced positions without a bookie each
+        assertCorrupt(withSegment(format, 2, format.getCompactSegment(2).toBuilder().clearBookieIndex()
+                                  .addBookieIndex(4)),
+                      "Segment at entry 25 has invalid replaced bookies");
+        // whole ensemble of the wrong size
+        assertCorrupt(withSegment(format, 3, format.getCompactSegment(3).toBuilder().clearBookieIndex()
+                                  .addBookieIndex(1).addBookieIndex(0)),
+                      "Segment at entry 40 has 2 bookies, expected 3");
+        // first segment replacing bookies of no previous ensemble
+        assertCorrupt(format.toBuilder().removeCompactSegment(0).build(),
+                      "Segment at entry 10 has invalid replaced bookies");
+    }
+
+    private static LedgerMetadataFormat withSegment(LedgerMetadataFormat format, int index,
+                                                    CompactSegment.Builder segment) {
+        return format.toBuilder().setCompactSegment(index, segment).build();
+    }
+
+    @Test
+    public void testBookiesParsedOnAccess() throws Exception {
+        LedgerMetadataFormat format = decodeFormat(
+                serDe.serialize(metadata(LedgerMetadataSerDe.METADATA_FORMAT_VERSION_4)));
+        // the bookie replaced at entry 10 cannot be parsed, which goes unnoticed until it is accessed
+        LedgerMetadata metadata = parse(encodeFormat(format.toBuilder().setBookie(3, "invalid bookie").build()));
+
+        List<BookieId> first = metadata.getEnsembleAt(0L);
+        List<BookieId> second = metadata.getEnsembleAt(10L);
+        assertTrue(first instanceof CompactEnsemble);
+        assertEquals(ensemble(0, 1, 2), first);
+        assertEquals(BOOKIES[2], second.get(2));
+        try {
+            second.get(1);
+            fail("An invalid bookie id should fail once parsed");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        // the ensembles share the bookies parsed by any of them
+        assertSame(first.get(0), second.get(0));
+        assertSame(first.get(2), metadata.getEnsembleAt(10L).get(2));
+    }
+
+    @Test
+    public void testDictionaryParsesOnce() {
+        CompactEnsemble.Dictionary dictionary = new CompactEnsemble.Dictionary(
+                Arrays.asList("bookie0:3181", "invalid bookie"));
+        CompactEnsemble ensemble = new CompactEnsemble(dictionary, new int[] { 0, 0 });
+        assertEquals(2, ensemble.size());
+        assertEquals(2, dictionary.size());
+
+        BookieId bookie = ensemble.get(0);
+        assertEquals(BOOKIES[0], bookie);
+        assertSame(bookie, ensemble.get(1));
+        assertSame(bookie, dictionary.get(0));
+        try {
+            dictionary.get(1);
+            fail("An invalid bookie id should fail once parsed");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.meta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.replication.ReplicationException.UnavailableException;
+import org.apache.bookkeeper.util.BookKeeperConstants;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the checkpoints of the auditor checks in {@link ZkLedgerUnderreplicationManager}.
+ */
+public class ZkLedgerUnderreplicationManagerTest {
+
+    private ZooKeeper zk;
+    // data of the znodes
+    private Map<String, byte[]> znodes;
+    private ZkLedgerUnderreplicationManager underreplicationManager;
+
+    @Before
+    public void setup() throws Exception {
+        zk = mock(ZooKeeper.class);
+        znodes = new ConcurrentHashMap<>();
+        when(zk.exists(anyString(), anyBoolean())).thenAnswer(
+                invocation -> znodes.containsKey(invocation.<String>getArgument(0)) ? new Stat() : null);
+        when(zk.create(anyString(), any(), anyList(), any())).thenAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            if (znodes.putIfAbsent(path, invocation.getArgument(1)) != null) {
+                throw new KeeperException.NodeExistsException(path);
+            }
+            return path;
+        });
+        when(zk.getData(anyString(), anyBoolean(), any())).thenAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            byte[] data = znodes.get(path);
+            if (data == null) {
+                throw new KeeperException.NoNodeException(path);
+            }
+            return data;
+        });
+        when(zk.setData(anyString(), any(), anyInt())).thenAnswer(invocation -> {
+            String path = invocation.getArgument(0);
+            if (znodes.replace(path, invocation.getArgument(1)) == null) {
+                throw new KeeperException.NoNodeException(path);
+            }
+            return new Stat();
+        });
+
+        underreplicationManager = new ZkLedgerUnderreplicationManager(new ServerConfiguration(), zk);
+    }
+
+    private String checkpointPath(String name) {
+        return ZkLedgerUnderreplicationManager.getBasePath(BookKeeperConstants.DEFAULT_ZK_LEDGERS_ROOT_PATH)
+                + '/' + name;
+    }
+
+    @Test
+    public void testNoCheckpoint() throws Exception {
+        assertEquals(-1, underreplicationManager.getCheckAllLedgersCheckpoint());
+        assertEquals(-1, underreplicationManager.getReplicasCheckCheckpoint());
+    }
+
+    @Test
+    public void testSetAndGetCheckpoints() throws Exception {
+        underreplicationManager.setCheckAllLedgersCheckpoint(42);
+        assertEquals(42, underreplicationManager.getCheckAllLedgersCheckpoint());
+        // the checkpoints of the checks are independent
+        assertEquals(-1, underreplicationManager.getReplicasCheckCheckpoint());
+
+        underreplicationManager.setReplicasCheckCheckpoint(7);
+        assertEquals(7, underreplicationManager.getReplicasCheckCheckpoint());
+        assertEquals(42, underreplicationManager.getCheckAllLedgersCheckpoint());
+
+        // an existing checkpoint is updated, and cleared once the check is complete
+        underreplicationManager.setCheckAllLedgersCheckpoint(100);
+        assertEquals(100, underreplicationManager.getCheckAllLedgersCheckpoint());
+        underreplicationManager.setCheckAllLedgersCheckpoint(-1);
+        assertEquals(-1, underreplicationManager.getCheckAllLedgersCheckpoint());
+        assertEquals(7, underreplicationManager.getReplicasCheckCheckpoint());
+    }
+
+    @Test
+    public void testCheckpointStoredUnderReplicationRoot() throws Exception {
+        underreplicationManager.setCheckAllLedgersCheckpoint(42);
+        underreplicationManager.setReplicasCheckCheckpoint(7);
+        assertTrue(znodes.containsKey(checkpointPath(BookKeeperConstants.CHECK_ALL_LEDGERS_CHECKPOINT)));
+        assertTrue(znodes.containsKey(checkpointPath(BookKeeperConstants.REPLICAS_CHECK_CHECKPOINT)));
+    }
+
+    @Test
+    public void testZooKeeperErrors() throws Exception {
+        String checkpointPath = checkpointPath(BookKeeperConstants.CHECK_ALL_LEDGERS_CHECKPOINT);
+        doThrow(new KeeperException.ConnectionLossException())
+            .when(zk).getData(eq(checkpointPath), anyBoolean(), any());
+        try {
+            underreplicationManager.getCheckAllLedgersCheckpoint();
+            fail("Getting the checkpoint should fail");
+        } catch (UnavailableException ue) {
+            // expected
+        }
+
+        doThrow(new KeeperException.ConnectionLossException()).when(zk).exists(eq(checkpointPath), anyBoolean());
+        try {
+            underreplicationManager.setCheckAllLedgersCheckpoint(42);
+            fail("Setting the checkpoint should fail");
+        } catch (UnavailableException ue) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCorruptedCheckpoint() throws Exception {
+        znodes.put(checkpointPath(BookKeeperConstants.REPLICAS_CHECK_CHECKPOINT), new byte[] { (byte) 0xff });
+        try {
+            underreplicationManager.getReplicasCheckCheckpoint();
+            fail("Parsing the checkpoint should fail");
+        } catch (UnavailableException ue) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link BatchReadEntryProcessorV3}.
+ */
+public class BatchReadEntryProcessorV3Test {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int ENTRY_SIZE = 1000;
+
+    private Bookie bookie;
+    private BookieRequestProcessor requestProcessor;
+    private EmbeddedChannel channel;
+    private List<ByteBuf> entries;
+
+    @Before
+    public void setup() throws Exception {
+        bookie = mock(Bookie.class);
+        entries = new ArrayList<>();
+        for (long entryId = 0; entryId < 10; entryId++) {
+            // heap buffers, so that the response can be checked after the entries are released
+            ByteBuf entry = Unpooled.buffer(ENTRY_SIZE).writeBytes(new byte[ENTRY_SIZE]);
+            entry.setLong(0, entryId);
+            entries.add(entry);
+            when(bookie.readEntry(LEDGER_ID, entryId)).thenReturn(entry);
+        }
+        when(bookie.readEntry(LEDGER_ID, 10L)).thenThrow(new Bookie.NoEntryException(LEDGER_ID, 10L));
+        when(bookie.readLastAddConfirmed(LEDGER_ID)).thenReturn(9L);
+
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        channel = new EmbeddedChannel();
+    }
+
+    private static Request batchReadRequest(long startEntryId, int maxCount, long maxSize) {
+        return Request.newBuilder()
+            .setHeader(BKPacketHeader.newBuilder()
+                       .setVersion(ProtocolVersion.VERSION_THREE)
+                       .setOperation(OperationType.BATCH_READ_ENTRY)
+                       .setTxnId(1L))
+            .setBatchReadRequest(BatchReadRequest.newBuilder()
+                                 .setLedgerId(LEDGER_ID)
+                                 .setStartEntryId(startEntryId)
+                                 .setMaxCount(maxCount)
+                                 .setMaxSize(maxSize))
+            .build();
+    }
+
+    private BatchReadResponse run(Request request, long maxBatchReadSize) {
+        new BatchReadEntryProcessorV3(request, channel, requestProcessor, maxBatchReadSize).safeRun();
+        Response response = channel.readOutbound();
+        return response.getBatchReadResponse();
+    }
+
+    @Test
+    public void testBatchRead() throws Exception {
+        BatchReadResponse response = run(batchReadRequest(2, 5, Long.MAX_VALUE), Long.MAX_VALUE);
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEquals(9L, response.getMaxLAC());
+        assertEquals(5, response.getBodyCount());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(2 + i, response.getBody(i).asReadOnlyByteBuffer().getLong());
+        }
+        // the entries are released once the response is written
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, entries.get(2 + i).refCnt());
+        }
+    }
+
+    @Test
+    public void testBatchReadStopsAtMissingEntry() throws Exception {
+        BatchReadResponse response = run(batchReadRequest(8, 100, Long.MAX_VALUE), Long.MAX_VALUE);
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEquals(2, response.getBodyCount());
+    }
+
+    @Test
+    public void testBatchReadMissingFirstEntry() throws Exception {
+        BatchReadResponse response = run(batchReadRequest(10, 100, Long.MAX_VALUE), Long.MAX_VALUE);
+        assertEquals(StatusCode.ENOENTRY, response.getStatus());
+        assertEquals(0, response.getBodyCount());
+    }
+
+    @Test
+    public void testResponseFitsInFrame() throws Exception {
+        long maxFrameSize = BatchReadEntryProcessorV3.RESPONSE_HEADER_SIZE + 5 * ENTRY_SIZE;
+        new BatchReadEntryProcessorV3(batchReadRequest(0, 100, Long.MAX_VALUE), channel, requestProcessor,
+                                      maxFrameSize).safeRun();
+        Response response = channel.readOutbound();
+        // the framing of the entries leaves room for 4 entries only
+        assertEquals(4, response.getBatchReadResponse().getBodyCount());
+        assertTrue(response.getSerializedSize() + 4 <= maxFrameSize);
+    }
+
+    @Test
+    public void testResponseFitsInClientMaxSize() throws Exception {
+        long maxSize = 3 * (ENTRY_SIZE + BatchReadEntryProcessorV3.ENTRY_OVERHEAD_SIZE);
+        BatchReadResponse response = run(batchReadRequest(0, 100, maxSize), Long.MAX_VALUE);
+        assertEquals(3, response.getBodyCount());
+        long bodySize = 0;
+        for (int i = 0; i < response.getBodyCount(); i++) {
+            bodySize += response.getBody(i).size() + BatchReadEntryProcessorV3.ENTRY_OVERHEAD_SIZE;
+        }
+        assertTrue(bodySize <= maxSize);
+    }
+}
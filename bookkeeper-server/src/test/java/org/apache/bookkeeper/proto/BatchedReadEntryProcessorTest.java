@@ -0,0 +1,134 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of reading the entries of a batch read request.
+ */
+public class BatchedReadEntryProcessorTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int ENTRY_SIZE = 100;
+    private static final int OVERHEAD = 4;
+
+    private Bookie bookie;
+    private List<ByteBuf> entries;
+
+    @Before
+    public void setup() throws Exception {
+        bookie = mock(Bookie.class);
+        entries = new ArrayList<>();
+        for (long entryId = 0; entryId < 10; entryId++) {
+            ByteBuf entry = Unpooled.buffer(ENTRY_SIZE).writeZero(ENTRY_SIZE);
+            entries.add(entry);
+            when(bookie.readEntry(LEDGER_ID, entryId)).thenReturn(entry);
+        }
+        when(bookie.readEntry(eq(LEDGER_ID), eq(10L))).thenThrow(new Bookie.NoEntryException(LEDGER_ID, 10L));
+    }
+
+    @Test
+    public void testReadUpToMaxCount() throws Exception {
+        ByteBufList read = BatchedReadEntryProcessor.readEntries(bookie, LEDGER_ID, 2, 5, Long.MAX_VALUE, OVERHEAD);
+        try {
+            assertEquals(5, read.size());
+            for (int i = 0; i < 5; i++) {
+                assertEquals(entries.get(2 + i), read.getBuffer(i));
+            }
+        } finally {
+            read.release();
+        }
+    }
+
+    @Test
+    public void testReadStopsAtMissingEntry() throws Exception {
+        ByteBufList read = BatchedReadEntryProcessor.readEntries(bookie, LEDGER_ID, 7, 100, Long.MAX_VALUE, OVERHEAD);
+        try {
+            assertEquals(3, read.size());
+        } finally {
+            read.release();
+        }
+    }
+
+    @Test
+    public void testReadCountsEntryOverhead() throws Exception {
+        // room for 3 entries without their overhead, but only for 2 with it
+        long maxSize = 3 * ENTRY_SIZE;
+        ByteBufList read = BatchedReadEntryProcessor.readEntries(bookie, LEDGER_ID, 0, 100, maxSize, OVERHEAD);
+        try {
+            assertEquals(2, read.size());
+            // the entry read but not returned is released
+            assertEquals(1, entries.get(1).refCnt());
+            assertEquals(0, entries.get(2).refCnt());
+        } finally {
+            read.release();
+        }
+    }
+
+    @Test
+    public void testFirstEntryAlwaysReturned() throws Exception {
+        ByteBufList read = BatchedReadEntryProcessor.readEntries(bookie, LEDGER_ID, 0, 100, 1, OVERHEAD);
+        try {
+            assertEquals(1, read.size());
+        } finally {
+            read.release();
+        }
+    }
+
+    @Test
+    public void testMissingFirstEntryFails() throws Exception {
+        try {
+            BatchedReadEntryProcessor.readEntries(bookie, LEDGER_ID, 10, 100, Long.MAX_VALUE, OVERHEAD);
+            fail("Should fail reading a missing first entry");
+        } catch (Bookie.NoEntryException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEntriesReleasedOnError() throws Exception {
+        when(bookie.readEntry(LEDGER_ID, 3L)).thenThrow(new IOException("read failure"));
+        try {
+            BatchedReadEntryProcessor.readEntries(bookie, LEDGER_ID, 0, 100, Long.MAX_VALUE, OVERHEAD);
+            fail("Should propagate the read failure");
+        } catch (IOException ioe) {
+            // expected
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, entries.get(i).refCnt());
+        }
+    }
+}
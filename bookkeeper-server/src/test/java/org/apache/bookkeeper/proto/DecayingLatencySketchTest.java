@@ -0,0 +1,83 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link DecayingLatencySketch}.
+ */
+public class DecayingLatencySketchTest {
+
+    @Test
+    public void testBucketBounds() {
+        int previous = -1;
+        for (long micros = 0; micros < TimeUnit.MINUTES.toMicros(20); micros = micros * 9 / 8 + 1) {
+            long latencyNanos = TimeUnit.MICROSECONDS.toNanos(micros);
+            int index = DecayingLatencySketch.bucketIndex(latencyNanos);
+            assertTrue(index >= previous);
+            previous = index;
+            long upperBound = DecayingLatencySketch.bucketUpperBoundNanos(index);
+            if (micros < TimeUnit.SECONDS.toMicros(1 << 10)) {
+                // the bucket holds the latency, within 25%
+                assertTrue(upperBound > latencyNanos);
+                assertTrue(upperBound <= Math.max(latencyNanos * 5 / 4, latencyNanos + 1000));
+            }
+        }
+        assertEquals(0, DecayingLatencySketch.bucketIndex(-1L));
+        assertEquals(DecayingLatencySketch.bucketIndex(Long.MAX_VALUE),
+                DecayingLatencySketch.bucketIndex(TimeUnit.HOURS.toNanos(1)));
+    }
+
+    @Test
+    public void testUnknownBelowMinSamples() {
+        DecayingLatencySketch sketch = new DecayingLatencySketch();
+        assertEquals(-1L, sketch.quantile(0.95));
+        for (int i = 0; i < 7; i++) {
+            sketch.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertEquals(-1L, sketch.quantile(0.95));
+        // the weight of the first samples already decayed a little
+        sketch.record(TimeUnit.MILLISECONDS.toNanos(1));
+        sketch.record(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(DecayingLatencySketch.bucketUpperBoundNanos(
+                DecayingLatencySketch.bucketIndex(TimeUnit.MILLISECONDS.toNanos(1))), sketch.quantile(0.95));
+    }
+
+    @Test
+    public void testQuantiles() {
+        DecayingLatencySketch sketch = new DecayingLatencySketch();
+        for (int i = 0; i < 90; i++) {
+            sketch.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        for (int i = 0; i < 10; i++) {
+            sketch.record(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        long median = sketch.quantile(0.5);
+        long tail = sketch.quantile(0.95);
+        assertTrue(median >= TimeUnit.MILLISECONDS.toNanos(1) && median <= TimeUnit.MICROSECONDS.toNanos(1250));
+        assertTrue(tail >= TimeUnit.MILLISECONDS.toNanos(100) && tail <= TimeUnit.MICROSECONDS.toNanos(125000));
+    }
+}
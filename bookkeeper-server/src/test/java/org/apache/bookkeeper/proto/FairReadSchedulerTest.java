@@ -0,0 +1,259 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.HashedWheelTimer;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.SafeRunnable;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link FairReadScheduler}.
+ */
+public class FairReadSchedulerTest {
+
+    private final List<SafeRunnable> dispatched = new ArrayList<>();
+    private final List<String> reads = new ArrayList<>();
+    private final AtomicBoolean rejectExecution = new AtomicBoolean(false);
+    private OrderedExecutor readThreadPool;
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setup() {
+        // the dispatched reads run when the test decides to
+        readThreadPool = mock(OrderedExecutor.class);
+        doAnswer(invocation -> {
+            if (rejectExecution.get()) {
+                throw new RejectedExecutionException("rejected");
+            }
+            synchronized (dispatched) {
+                dispatched.add(invocation.getArgument(1));
+            }
+            return null;
+        }).when(readThreadPool).executeOrdered(anyLong(), any(SafeRunnable.class));
+        timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void teardown() {
+        timer.stop();
+    }
+
+    private FairReadScheduler newScheduler(ServerConfiguration conf) {
+        return new FairReadScheduler(conf, readThreadPool, timer, new RequestStats(NullStatsLogger.INSTANCE));
+    }
+
+    private static Channel newChannel(String host) {
+        return new EmbeddedChannel() {
+            @Override
+            public SocketAddress remoteAddress() {
+                return new InetSocketAddress(host, 3181);
+            }
+        };
+    }
+
+    private void submit(FairReadScheduler scheduler, Channel channel, String read, Runnable onRejected) {
+        scheduler.submit(channel, 1L, () -> {
+            synchronized (reads) {
+                reads.add(read);
+            }
+        }, onRejected);
+    }
+
+    private int numDispatched() {
+        synchronized (dispatched) {
+            return dispatched.size();
+        }
+    }
+
+    // Run the dispatched reads, which dispatches the next ones, until n reads completed
+    private List<String> runReads(int n) {
+        for (int i = 0; i < n; i++) {
+            SafeRunnable read;
+            synchronized (dispatched) {
+                read = dispatched.remove(0);
+            }
+            read.run();
+        }
+        synchronized (reads) {
+            return new ArrayList<>(reads);
+        }
+    }
+
+    private static int count(List<String> reads, String prefix) {
+        return (int) reads.stream().filter(read -> read.startsWith(prefix)).count();
+    }
+
+    @Test
+    public void testClientsShareTheReadThreads() {
+        FairReadScheduler scheduler = newScheduler(new ServerConfiguration().setFairReadMaxInFlightRequests(1));
+        Channel heavy = newChannel("10.0.0.1");
+        Channel light = newChannel("10.0.0.2");
+        for (int i = 0; i < 10; i++) {
+            submit(scheduler, heavy, "heavy-" + i, () -> {});
+        }
+        submit(scheduler, light, "light-0", () -> {});
+        submit(scheduler, light, "light-1", () -> {});
+        assertEquals(1, numDispatched());
+
+        // the reads of the light client do not wait for the backlog of the heavy client
+        List<String> reads = runReads(4);
+        assertEquals("heavy-0", reads.get(0));
+        assertEquals("light-0", reads.get(1));
+        assertEquals(2, count(reads, "light-"));
+
+        // the reads of a client run in order
+        reads = runReads(8);
+        List<String> heavyReads = new ArrayList<>();
+        reads.stream().filter(read -> read.startsWith("heavy-")).forEach(heavyReads::add);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("heavy-" + i, heavyReads.get(i));
+        }
+    }
+
+    @Test
+    public void testClientWeights() {
+        FairReadScheduler scheduler = newScheduler(new ServerConfiguration()
+                .setFairReadMaxInFlightRequests(1)
+                .setFairReadClientWeights("10.0.0.1:2"));
+        Channel weighted = newChannel("10.0.0.1");
+        Channel other = newChannel("10.0.0.2");
+        for (int i = 0; i < 30; i++) {
+            submit(scheduler, weighted, "weighted-" + i, () -> {});
+            submit(scheduler, other, "other-" + i, () -> {});
+        }
+
+        List<String> reads = runReads(30);
+        assertEquals(20, count(reads, "weighted-"), 1);
+        assertEquals(10, count(reads, "other-"), 1);
+    }
+
+    @Test
+    public void testChannelsOfAClientShareItsQueue() {
+        FairReadScheduler scheduler = newScheduler(new ServerConfiguration()
+                .setFairReadMaxInFlightRequests(1)
+                .setFairReadMaxQueuedRequestsPerClient(2));
+        AtomicInteger rejected = new AtomicInteger();
+        // the channels of the same host are the same client
+        Channel first = newChannel("10.0.0.1");
+        Channel second = newChannel("10.0.0.1");
+        submit(scheduler, first, "read-0", rejected::incrementAndGet);
+        submit(scheduler, first, "read-1", rejected::incrementAndGet);
+        submit(scheduler, second, "read-2", rejected::incrementAndGet);
+        assertEquals(0, rejected.get());
+
+        // read-0 is in flight and the queue of the client is full
+        submit(scheduler, second, "read-3", rejected::incrementAndGet);
+        assertEquals(1, rejected.get());
+        // the queue of another client is not
+        submit(scheduler, newChannel("10.0.0.2"), "other-0", rejected::incrementAndGet);
+        assertEquals(1, rejected.get());
+
+        List<String> reads = runReads(4);
+        assertEquals(4, reads.size());
+        assertFalse(reads.contains("read-3"));
+    }
+
+    @Test
+    public void testRejectedExecution() {
+        FairReadScheduler scheduler = newScheduler(new ServerConfiguration().setFairReadMaxInFlightRequests(1));
+        Channel channel = newChannel("10.0.0.1");
+        AtomicInteger rejected = new AtomicInteger();
+        rejectExecution.set(true);
+        for (int i = 0; i < 3; i++) {
+            submit(scheduler, channel, "rejected-" + i, () -> {
+                // the scheduler is not locked while a rejection is notified
+                assertFalse(Thread.holdsLock(scheduler));
+                rejected.incrementAndGet();
+            });
+        }
+        assertEquals(3, rejected.get());
+
+        // the rejected reads are not in flight anymore
+        rejectExecution.set(false);
+        submit(scheduler, channel, "read", () -> rejected.incrementAndGet());
+        assertEquals(1, numDispatched());
+        assertEquals("read", runReads(1).get(0));
+        assertEquals(3, rejected.get());
+    }
+
+    @Test
+    public void testRequestRateQuota() throws Exception {
+        FairReadScheduler scheduler = newScheduler(new ServerConfiguration()
+                .setFairReadMaxInFlightRequests(100)
+                .setClientReadRequestRateQuota(10));
+        Channel limited = newChannel("10.0.0.1");
+        for (int i = 0; i < 12; i++) {
+            submit(scheduler, limited, "limited-" + i, () -> {});
+        }
+        // a burst of one second of quota
+        assertEquals(10, numDispatched());
+        // another client has its own quota
+        submit(scheduler, newChannel("10.0.0.2"), "other", () -> {});
+        assertEquals(11, numDispatched());
+
+        // the throttled reads are dispatched as the quota is refilled
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (numDispatched() < 13 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(13, numDispatched());
+    }
+
+    @Test
+    public void testReadsDispatchedConcurrently() throws Exception {
+        FairReadScheduler scheduler = newScheduler(new ServerConfiguration().setFairReadMaxInFlightRequests(2));
+        Channel channel = newChannel("10.0.0.1");
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit(channel, i, done::countDown, () -> {});
+        }
+        // no more than the max in flight reads are dispatched
+        assertEquals(2, numDispatched());
+        runReads(2);
+        assertEquals(2, numDispatched());
+        runReads(2);
+        assertTrue(done.await(0, TimeUnit.SECONDS));
+    }
+}
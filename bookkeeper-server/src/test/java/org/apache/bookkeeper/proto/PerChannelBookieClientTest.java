@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.processor.RequestProcessor;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.PerChannelBookieClient.AddCompletion;
+import org.apache.bookkeeper.proto.PerChannelBookieClient.CompletionKey;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.EventLoopUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link PerChannelBookieClient}.
+ */
+public class PerChannelBookieClientTest {
+
+    private static final long LEDGER_ID = 1L;
+
+    private OrderedExecutor executor;
+    private EventLoopGroup eventLoopGroup;
+    private PerChannelBookieClient client;
+
+    @Before
+    public void setup() throws Exception {
+        executor = OrderedExecutor.newBuilder().numThreads(1).name("test-worker").build();
+        eventLoopGroup = new DefaultEventLoopGroup(1);
+        ClientConfiguration conf = new ClientConfiguration().setAddEntryTimeout(10);
+        client = new PerChannelBookieClient(conf, executor, eventLoopGroup, BookieId.parse("bookie0:3181"),
+                NullStatsLogger.INSTANCE, null, null, null, mock(BookieAddressResolver.class));
+    }
+
+    @After
+    public void teardown() {
+        client.close();
+        eventLoopGroup.shutdownGracefully();
+        executor.shutdown();
+    }
+
+    private static WriteCallback completeWith(CompletableFuture<Integer> future) {
+        return (rc, ledgerId, entryId, addr, ctx) -> future.complete(rc);
+    }
+
+    private void testTimeoutOfRecycledAddCompletion(boolean useV2Keys) throws Exception {
+        CompletionKey firstKey = useV2Keys ? client.acquireV2Key(LEDGER_ID, 0L, OperationType.ADD_ENTRY)
+                : client.newCompletionKey(1L, OperationType.ADD_ENTRY);
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        AddCompletion completion = client.acquireAddCompletion(firstKey, completeWith(first), null, LEDGER_ID, 0L);
+        client.putCompletionKeyValue(firstKey, completion);
+
+        // the deadline of the add passed and the wheel unlinked the completion, but the response is
+        // received before the wheel notifies it
+        long expiredGeneration = completion.generation();
+        assertSame(completion, client.getCompletionValue(firstKey));
+        completion.writeComplete(BKException.Code.OK, LEDGER_ID, 0L, null, null);
+        assertEquals(BKException.Code.OK, (int) first.get());
+
+        // the completion is recycled for the next add, of the same entry for the v2 keys
+        CompletionKey secondKey = useV2Keys ? client.acquireV2Key(LEDGER_ID, 0L, OperationType.ADD_ENTRY)
+                : client.newCompletionKey(2L, OperationType.ADD_ENTRY);
+        CompletableFuture<Integer> second = new CompletableFuture<>();
+        AddCompletion reused = client.acquireAddCompletion(secondKey, completeWith(second), null, LEDGER_ID, 0L);
+        assumeTrue(reused == completion);
+        client.putCompletionKeyValue(secondKey, reused);
+
+        // the late notification of the previous use does not time out the next add
+        assertFalse(completion.onTimeout(expiredGeneration));
+        assertFalse(second.isDone());
+        client.checkTimeoutOnPendingOperations();
+        assertFalse(second.isDone());
+
+        // the next add times out at its own deadline
+        assertTrue(reused.onTimeout(reused.generation()));
+        assertEquals(BKException.Code.TimeoutException, (int) second.get(10, TimeUnit.SECONDS));
+        assertFalse(reused.onTimeout(reused.generation()));
+    }
+
+    @Test
+    public void testTimeoutOfRecycledAddCompletionV3() throws Exception {
+        testTimeoutOfRecycledAddCompletion(false);
+    }
+
+    @Test
+    public void testTimeoutOfRecycledAddCompletionV2() throws Exception {
+        testTimeoutOfRecycledAddCompletion(true);
+    }
+
+    private static int busyPollMicros(Channel channel) {
+        return ((EpollSocketChannel) channel).config().getOption(EpollChannelOption.SO_BUSY_POLL);
+    }
+
+    private void testBusyPollOfSockets(int busyPollMicros) throws Exception {
+        ServerConfiguration serverConf = new ServerConfiguration()
+            .setBookiePort(0)
+            .setAllowLoopback(true)
+            .setBusyPollMicros(busyPollMicros);
+        BookieNettyServer server = new BookieNettyServer(serverConf, mock(RequestProcessor.class),
+                UnpooledByteBufAllocator.DEFAULT);
+        EventLoopGroup epollEventLoopGroup = new EpollEventLoopGroup(1);
+        try {
+            server.start();
+            BookieId bookieId = BookieId.parse("bookie0:3181");
+            BookieAddressResolver resolver = mock(BookieAddressResolver.class);
+            when(resolver.resolve(bookieId)).thenReturn(new BookieSocketAddress("127.0.0.1",
+                    serverConf.getBookiePort()));
+            ClientConfiguration clientConf = new ClientConfiguration().setBusyPollMicros(busyPollMicros);
+            PerChannelBookieClient epollClient = new PerChannelBookieClient(clientConf, executor,
+                    epollEventLoopGroup, bookieId, NullStatsLogger.INSTANCE, null, null, null, resolver);
+            try {
+                CompletableFuture<Integer> connected = new CompletableFuture<>();
+                epollClient.connectIfNeededAndDoOp((rc, pcbc) -> connected.complete(rc));
+                assertEquals(BKException.Code.OK, (int) connected.get(10, TimeUnit.SECONDS));
+                assertEquals(busyPollMicros, busyPollMicros(epollClient.channel));
+                // the socket accepted by the bookie
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (server.allChannels.isEmpty() && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(1, server.allChannels.size());
+                assertEquals(busyPollMicros, busyPollMicros(server.allChannels.iterator().next()));
+            } finally {
+                epollClient.close();
+            }
+        } finally {
+            server.shutdown();
+            epollEventLoopGroup.shutdownGracefully();
+        }
+    }
+
+    @Test
+    public void testBusyPollOfSockets() throws Exception {
+        assumeTrue(Epoll.isAvailable());
+        testBusyPollOfSockets(50);
+    }
+
+    @Test
+    public void testBusyPollDisabledByDefault() throws Exception {
+        assumeTrue(Epoll.isAvailable());
+        assertEquals(0, new ClientConfiguration().getBusyPollMicros());
+        assertEquals(0, new ServerConfiguration().getBusyPollMicros());
+        testBusyPollOfSockets(0);
+    }
+
+    @Test
+    public void testIoUringTransport() throws Exception {
+        assumeTrue(IOUring.isAvailable());
+        ServerConfiguration serverConf = new ServerConfiguration()
+            .setBookiePort(0)
+            .setAllowLoopback(true)
+            .setIoUringEnabled(true);
+        BookieNettyServer server = new BookieNettyServer(serverConf, mock(RequestProcessor.class),
+                UnpooledByteBufAllocator.DEFAULT);
+        ClientConfiguration clientConf = new ClientConfiguration().setIoUringEnabled(true);
+        EventLoopGroup eventLoopGroup = EventLoopUtil.getClientEventLoopGroup(clientConf,
+                new DefaultThreadFactory("test-io"));
+        assertTrue(eventLoopGroup instanceof IOUringEventLoopGroup);
+        try {
+            server.start();
+            BookieId bookieId = BookieId.parse("bookie0:3181");
+            BookieAddressResolver resolver = mock(BookieAddressResolver.class);
+            when(resolver.resolve(bookieId)).thenReturn(new BookieSocketAddress("127.0.0.1",
+                    serverConf.getBookiePort()));
+            PerChannelBookieClient client = new PerChannelBookieClient(clientConf, executor,
+                    eventLoopGroup, bookieId, NullStatsLogger.INSTANCE, null, null, null, resolver);
+            try {
+                CompletableFuture<Integer> connected = new CompletableFuture<>();
+                client.connectIfNeededAndDoOp((rc, pcbc) -> connected.complete(rc));
+                assertEquals(BKException.Code.OK, (int) connected.get(10, TimeUnit.SECONDS));
+                assertTrue(client.channel instanceof IOUringSocketChannel);
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (server.allChannels.isEmpty() && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(1, server.allChannels.size());
+                assertTrue(server.allChannels.iterator().next() instanceof IOUringSocketChannel);
+            } finally {
+                client.close();
+            }
+        } finally {
+            server.shutdown();
+            eventLoopGroup.shutdownGracefully();
+        }
+    }
+}
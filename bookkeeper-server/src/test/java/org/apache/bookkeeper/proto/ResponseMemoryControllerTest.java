@@ -0,0 +1,195 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ResponseMemoryController}.
+ */
+public class ResponseMemoryControllerTest {
+
+    private static final long LIMIT = 1000;
+
+    // Channels resumed, in order
+    private final List<Channel> resumed = new ArrayList<>();
+
+    private Channel newChannel() {
+        AtomicBoolean active = new AtomicBoolean(false);
+        Channel channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void read(ChannelHandlerContext ctx) throws Exception {
+                // a channel reads once it becomes active, and then each time autoread is re-enabled
+                if (active.get()) {
+                    synchronized (resumed) {
+                        resumed.add(ctx.channel());
+                    }
+                }
+                super.read(ctx);
+            }
+        });
+        active.set(true);
+        return channel;
+    }
+
+    @Test
+    public void testSizeOf() {
+        assertEquals(100, ResponseMemoryController.sizeOf(Unpooled.wrappedBuffer(new byte[100])));
+        assertTrue(ResponseMemoryController.sizeOf(new Object()) > 0);
+    }
+
+    @Test
+    public void testPauseAndResume() {
+        ResponseMemoryController controller = new ResponseMemoryController(LIMIT, NullStatsLogger.INSTANCE);
+        Channel first = newChannel();
+        Channel second = newChannel();
+        ChannelPromise firstWrite = first.newPromise();
+        ChannelPromise secondWrite = second.newPromise();
+
+        controller.track(first, 600, firstWrite);
+        assertTrue(first.config().isAutoRead());
+        // the write which exceeds the limit pauses its channel
+        controller.track(second, 600, secondWrite);
+        assertEquals(1200, controller.getUsage());
+        assertTrue(first.config().isAutoRead());
+        assertFalse(second.config().isAutoRead());
+
+        // the memory used is still above 3/4 of the limit
+        ChannelPromise smallWrite = first.newPromise();
+        controller.track(first, 100, smallWrite);
+        assertFalse(first.config().isAutoRead());
+        smallWrite.setSuccess();
+        assertFalse(first.config().isAutoRead());
+        assertFalse(second.config().isAutoRead());
+
+        // a failed write releases its memory too
+        firstWrite.setFailure(new Exception("write failed"));
+        assertEquals(600, controller.getUsage());
+        assertTrue(first.config().isAutoRead());
+        assertTrue(second.config().isAutoRead());
+
+        secondWrite.setSuccess();
+        assertEquals(0, controller.getUsage());
+    }
+
+    @Test
+    public void testResumeChannelsWithFewestPendingBytesFirst() {
+        ResponseMemoryController controller = new ResponseMemoryController(LIMIT, NullStatsLogger.INSTANCE);
+        Channel behind = newChannel();
+        Channel consuming = newChannel();
+        ChannelPromise behindWrite = behind.newPromise();
+        ChannelPromise consumingWrite = consuming.newPromise();
+        ChannelPromise bigWrite = newChannel().newPromise();
+
+        controller.track(bigWrite.channel(), 900, bigWrite);
+        controller.track(behind, 400, behindWrite);
+        controller.track(consuming, 100, consumingWrite);
+        assertFalse(behind.config().isAutoRead());
+        assertFalse(consuming.config().isAutoRead());
+
+        bigWrite.setSuccess();
+        assertEquals(2, resumed.size());
+        assertEquals(consuming, resumed.get(0));
+        assertEquals(behind, resumed.get(1));
+    }
+
+    @Test
+    public void testClosedChannelIsNotResumed() {
+        ResponseMemoryController controller = new ResponseMemoryController(LIMIT, NullStatsLogger.INSTANCE);
+        Channel closed = newChannel();
+        ChannelPromise write = closed.newPromise();
+        controller.track(closed, 2000, write);
+        assertFalse(closed.config().isAutoRead());
+        closed.close();
+
+        write.setSuccess();
+        assertEquals(0, controller.getUsage());
+        assertTrue(resumed.isEmpty());
+
+        // an inactive channel is not paused
+        ChannelPromise afterClose = closed.newPromise();
+        controller.track(closed, 2000, afterClose);
+        afterClose.setSuccess();
+        assertTrue(resumed.isEmpty());
+    }
+
+    @Test
+    public void testNoChannelLeftPaused() throws Exception {
+        ResponseMemoryController controller = new ResponseMemoryController(LIMIT, NullStatsLogger.INSTANCE);
+        int numThreads = 4;
+        int iterations = 20000;
+        List<Channel> channels = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            channels.add(newChannel());
+        }
+
+        CyclicBarrier barrier = new CyclicBarrier(numThreads);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            Channel channel = channels.get(i);
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < iterations; j++) {
+                        // writes which take the memory used over the limit and back, from all the threads
+                        barrier.await();
+                        ChannelPromise write = channel.newPromise();
+                        controller.track(channel, LIMIT / 2, write);
+                        write.setSuccess();
+                        barrier.await();
+                        // once all the responses are flushed, no channel is left paused
+                        if (!channel.config().isAutoRead()) {
+                            throw new AssertionError("Channel left paused at iteration " + j);
+                        }
+                    }
+                } catch (Throwable t) {
+                    synchronized (failures) {
+                        failures.add(t);
+                    }
+                    barrier.reset();
+                }
+            }, "writer-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(String.valueOf(failures), failures.isEmpty());
+        assertEquals(0, controller.getUsage());
+    }
+}
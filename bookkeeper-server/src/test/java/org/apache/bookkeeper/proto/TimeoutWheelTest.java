@@ -0,0 +1,195 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.util.MathUtils;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link TimeoutWheel}.
+ */
+public class TimeoutWheelTest {
+
+    private static class TestEntry extends TimeoutWheel.Entry {
+        final List<Long> timeouts = new ArrayList<>();
+
+        @Override
+        boolean onTimeout(long generation) {
+            timeouts.add(generation);
+            return generation == generation();
+        }
+    }
+
+    @Test
+    public void testExpire() {
+        TimeoutWheel wheel = new TimeoutWheel();
+        long now = MathUtils.nowInNano();
+        TestEntry expired = new TestEntry();
+        TestEntry pending = new TestEntry();
+        TestEntry removed = new TestEntry();
+        TestEntry later = new TestEntry();
+        wheel.add(expired, now - 1, 1L);
+        wheel.add(pending, now + TimeUnit.SECONDS.toNanos(10), 1L);
+        wheel.add(removed, now - 1, 2L);
+        // more than a full turn of the wheel away
+        wheel.add(later, now + TimeUnit.MINUTES.toNanos(5), 3L);
+        wheel.remove(removed);
+
+        assertEquals(1, wheel.expire(now));
+        assertEquals(1, expired.timeouts.size());
+        assertTrue(pending.timeouts.isEmpty());
+        assertTrue(removed.timeouts.isEmpty());
+        // an expired entry is notified once
+        assertEquals(0, wheel.expire(now));
+        assertEquals(1, expired.timeouts.size());
+
+        assertEquals(1, wheel.expire(now + TimeUnit.SECONDS.toNanos(11)));
+        assertEquals(1, pending.timeouts.size());
+        assertTrue(later.timeouts.isEmpty());
+        assertEquals(1, wheel.expire(now + TimeUnit.MINUTES.toNanos(6)));
+        assertEquals(1, later.timeouts.size());
+    }
+
+    @Test
+    public void testGenerationOfReusedEntry() {
+        TimeoutWheel wheel = new TimeoutWheel();
+        long now = MathUtils.nowInNano();
+        TestEntry entry = new TestEntry();
+        wheel.add(entry, now - 1, 1L);
+        long generation = entry.generation();
+        wheel.remove(entry);
+        // the entry is reused, its previous deadline does not apply anymore
+        wheel.add(entry, now + TimeUnit.SECONDS.toNanos(10), 1L);
+        assertEquals(generation + 1, entry.generation());
+        assertEquals(0, wheel.expire(now));
+        assertTrue(entry.timeouts.isEmpty());
+        assertEquals(1, wheel.expire(now + TimeUnit.SECONDS.toNanos(11)));
+        assertEquals(generation + 1, (long) entry.timeouts.get(0));
+    }
+
+    /**
+     * An entry which completes like the completions of {@link PerChannelBookieClient}: the timeout and the
+     * response race to remove it from the requests in flight, and the winner returns it to the pool.
+     */
+    private static class PooledEntry extends TimeoutWheel.Entry {
+        final ConcurrentHashMap<Long, PooledEntry> inFlight;
+        final Queue<PooledEntry> pool;
+        final AtomicLong timedOutKey;
+        long key;
+
+        PooledEntry(ConcurrentHashMap<Long, PooledEntry> inFlight, Queue<PooledEntry> pool, AtomicLong timedOutKey) {
+            this.inFlight = inFlight;
+            this.pool = pool;
+            this.timedOutKey = timedOutKey;
+        }
+
+        @Override
+        boolean onTimeout(long generation) {
+            // widen the window between the sweep and the notification, until the entry is reused
+            long waitUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1);
+            while (System.nanoTime() < waitUntil) {
+                synchronized (this) {
+                    if (generation != generation()) {
+                        break;
+                    }
+                }
+                Thread.yield();
+            }
+
+            long timedOut;
+            synchronized (this) {
+                if (generation != generation() || !inFlight.remove(key, this)) {
+                    return false;
+                }
+                timedOut = key;
+            }
+            if (timedOut % 2 != 0) {
+                // only the requests with an even key have a deadline which passed
+                timedOutKey.set(timedOut);
+            }
+            pool.add(this);
+            return true;
+        }
+    }
+
+    @Test
+    public void testTimeoutRacingWithReuse() throws Exception {
+        TimeoutWheel wheel = new TimeoutWheel();
+        ConcurrentHashMap<Long, PooledEntry> inFlight = new ConcurrentHashMap<>();
+        Queue<PooledEntry> pool = new ConcurrentLinkedQueue<>();
+        AtomicLong timedOutKey = new AtomicLong(-1L);
+        for (int i = 0; i < 4; i++) {
+            pool.add(new PooledEntry(inFlight, pool, timedOutKey));
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread sweeper = new Thread(() -> {
+            while (running.get()) {
+                wheel.expire(MathUtils.nowInNano());
+            }
+        }, "sweeper");
+        sweeper.start();
+
+        Queue<Object> sent = new ArrayDeque<>();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        for (long key = 0; System.nanoTime() < end && timedOutKey.get() < 0; key++) {
+            PooledEntry entry;
+            while ((entry = pool.poll()) == null) {
+                Thread.yield();
+            }
+            long now = MathUtils.nowInNano();
+            // the deadline of the even keys already passed
+            long deadline = key % 2 == 0 ? now - 1 : now + TimeUnit.MINUTES.toNanos(1);
+            synchronized (entry) {
+                entry.key = key;
+                wheel.add(entry, deadline, 1L);
+                inFlight.put(key, entry);
+            }
+            sent.add(key);
+            sent.add(entry);
+            // the response of an earlier request, racing with its timeout
+            if (sent.size() > 4) {
+                long respondedKey = (Long) sent.poll();
+                PooledEntry responded = (PooledEntry) sent.poll();
+                if (inFlight.remove(respondedKey, responded)) {
+                    wheel.remove(responded);
+                    pool.add(responded);
+                }
+            }
+        }
+        running.set(false);
+        sweeper.join();
+
+        assertEquals(-1L, timedOutKey.get());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.apache.bookkeeper.proto.checksum;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.bookkeeper.proto.checksum.CRC32CDigestManager.CRC32CDigest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test that {@link JdkCRC32CDigest} and {@link CirceCRC32CDigest} compute the same checksums.
+ */
+public class CRC32CDigestTest {
+
+    private static final int[] SIZES = { 0, 1, 7, 8, 15, 16, 100, 1023, 4096, 65536 + 3 };
+    private static final int[] OFFSETS = { 0, 1, 3, 8 };
+
+    private final Random random = new Random(42);
+    private final List<ByteBuf> buffers = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        assumeTrue(JdkCRC32CDigest.isSupported());
+    }
+
+    @After
+    public void teardown() {
+        buffers.forEach(ByteBuf::release);
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+
+    // Buffers holding the given bytes, readable from an offset in the backing memory
+    private ByteBuf heapBuffer(byte[] data, int offset) {
+        ByteBuf buf = Unpooled.buffer(offset + data.length);
+        buf.writerIndex(offset).readerIndex(offset);
+        buf.writeBytes(data);
+        buffers.add(buf);
+        return buf;
+    }
+
+    private ByteBuf directBuffer(byte[] data, int offset) {
+        ByteBuf buf = Unpooled.directBuffer(offset + data.length);
+        buf.writerIndex(offset).readerIndex(offset);
+        buf.writeBytes(data);
+        buffers.add(buf);
+        return buf;
+    }
+
+    private ByteBuf compositeBuffer(byte[] data, int offset) {
+        CompositeByteBuf buf = ByteBufAllocator.DEFAULT.compositeBuffer();
+        // alternate heap and direct components of uneven sizes
+        int start = 0;
+        for (int i = 0; start < data.length; i++) {
+            int length = Math.min(data.length - start, 1 + random.nextInt(100 + data.length / 4));
+            byte[] component = new byte[offset + length];
+            System.arraycopy(data, start, component, offset, length);
+            ByteBuf componentBuf = i % 2 == 0
+                    ? Unpooled.buffer(component.length) : Unpooled.directBuffer(component.length);
+            componentBuf.writeBytes(component).readerIndex(offset);
+            buf.addComponent(true, componentBuf);
+            start += length;
+        }
+        buffers.add(buf);
+        return buf;
+    }
+
+    private static int checksum(CRC32CDigest digest, ByteBuf... bufs) {
+        for (ByteBuf buf : bufs) {
+            int readerIndex = buf.readerIndex();
+            digest.update(buf);
+            // the readable bytes of the buffer are not consumed
+            assertEquals(readerIndex, buf.readerIndex());
+        }
+        return digest.getValueAndReset();
+    }
+
+    private void assertSameChecksum(ByteBuf... bufs) {
+        int expected = checksum(new CirceCRC32CDigest(), bufs);
+        assertEquals(expected, checksum(new JdkCRC32CDigest(), bufs));
+    }
+
+    @Test
+    public void testKnownValue() {
+        ByteBuf buf = Unpooled.copiedBuffer("123456789", StandardCharsets.US_ASCII);
+        buffers.add(buf);
+        assertEquals(0xE3069283, checksum(new JdkCRC32CDigest(), buf));
+        assertEquals(0xE3069283, checksum(new CirceCRC32CDigest(), buf));
+    }
+
+    @Test
+    public void testHeapBuffers() {
+        for (int size : SIZES) {
+            for (int offset : OFFSETS) {
+                assertSameChecksum(heapBuffer(randomBytes(size), offset));
+            }
+        }
+    }
+
+    @Test
+    public void testDirectBuffers() {
+        for (int size : SIZES) {
+            for (int offset : OFFSETS) {
+                assertSameChecksum(directBuffer(randomBytes(size), offset));
+            }
+        }
+    }
+
+    @Test
+    public void testCompositeBuffers() {
+        for (int size : SIZES) {
+            for (int offset : OFFSETS) {
+                byte[] data = randomBytes(size);
+                ByteBuf composite = compositeBuffer(data, offset);
+                assertSameChecksum(composite);
+                // the same bytes in a single buffer have the same checksum
+                assertEquals(checksum(new JdkCRC32CDigest(), heapBuffer(data, 0)),
+                        checksum(new JdkCRC32CDigest(), composite));
+            }
+        }
+    }
+
+    @Test
+    public void testSlices() {
+        byte[] data = randomBytes(4096);
+        for (ByteBuf buf : new ByteBuf[] { heapBuffer(data, 5), directBuffer(data, 5), compositeBuffer(data, 5) }) {
+            for (int offset : OFFSETS) {
+                assertSameChecksum(buf.slice(buf.readerIndex() + offset, 1000 + offset));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        // a header and a payload, as they are checksummed for an entry
+        byte[] header = randomBytes(32);
+        byte[] payload = randomBytes(10000);
+        byte[] all = new byte[header.length + payload.length];
+        System.arraycopy(header, 0, all, 0, header.length);
+        System.arraycopy(payload, 0, all, header.length, payload.length);
+        int expected = checksum(new CirceCRC32CDigest(), heapBuffer(all, 0));
+
+        assertEquals(expected, checksum(new JdkCRC32CDigest(), heapBuffer(header, 1), directBuffer(payload, 3)));
+        assertEquals(expected, checksum(new JdkCRC32CDigest(), directBuffer(header, 0), compositeBuffer(payload, 2)));
+        assertEquals(expected, checksum(new CirceCRC32CDigest(), directBuffer(header, 0), compositeBuffer(payload, 2)));
+
+        // the digest is reset after each value
+        CRC32CDigest digest = new JdkCRC32CDigest();
+        assertEquals(expected, checksum(digest, heapBuffer(all, 0)));
+        assertEquals(expected, checksum(digest, directBuffer(all, 0)));
+    }
+}
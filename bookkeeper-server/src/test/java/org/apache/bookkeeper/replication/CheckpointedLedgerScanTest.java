@@ -0,0 +1,226 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.replication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link CheckpointedLedgerScan}.
+ */
+public class CheckpointedLedgerScanTest {
+
+    private LedgerManager ledgerManager;
+    // ranges of ledgers listed by the ledger manager, in order
+    private List<List<Long>> ranges;
+    // value of the checkpoint, and all the values it was set to
+    private long checkpointValue;
+    private List<Long> checkpoints;
+    private CheckpointedLedgerScan.Checkpoint checkpoint;
+    // ledgers checked, in order
+    private List<Long> checked;
+
+    @Before
+    public void setup() {
+        ranges = new ArrayList<>();
+        ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.getLedgerRanges(anyLong())).thenAnswer(invocation -> {
+            Iterator<List<Long>> iterator = new ArrayList<>(ranges).iterator();
+            return new LedgerRangeIterator() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public LedgerRange next() {
+                    return new LedgerRange(Sets.newHashSet(iterator.next()));
+                }
+            };
+        });
+
+        checkpointValue = -1;
+        checkpoints = new ArrayList<>();
+        checkpoint = new CheckpointedLedgerScan.Checkpoint() {
+            @Override
+            public long get() {
+                return checkpointValue;
+            }
+
+            @Override
+            public void set(long lastCheckedLedgerId) {
+                checkpointValue = lastCheckedLedgerId;
+                checkpoints.add(lastCheckedLedgerId);
+            }
+        };
+        checked = new ArrayList<>();
+    }
+
+    private CheckpointedLedgerScan.Result scan(long... failedLedgers) throws Exception {
+        return scanRanges(Integer.MAX_VALUE, failedLedgers);
+    }
+
+    /**
+     * Check all the ledgers, stopping after {@code numRanges} ranges and failing the checks of {@code failedLedgers}.
+     */
+    private CheckpointedLedgerScan.Result scanRanges(int numRanges, long... failedLedgers) throws Exception {
+        CheckpointedLedgerScan scan = new CheckpointedLedgerScan("test", ledgerManager, 1000, 4, 0, checkpoint);
+        AtomicInteger rangesLeft = new AtomicInteger(numRanges);
+        return scan.run((ledgerId, cb) -> {
+            checked.add(ledgerId);
+            boolean failed = Arrays.stream(failedLedgers).anyMatch(id -> id == ledgerId);
+            cb.processResult(failed ? BKException.Code.ReadException : BKException.Code.OK, null, null);
+        }, () -> rangesLeft.getAndDecrement() > 0);
+    }
+
+    @Test
+    public void testCheckpointClearedOnceComplete() throws Exception {
+        ranges.add(Arrays.asList(1L, 2L));
+        ranges.add(Arrays.asList(3L, 4L));
+        ranges.add(Arrays.asList(5L));
+
+        CheckpointedLedgerScan.Result result = scan();
+        assertTrue(result.completed);
+        assertEquals(BKException.Code.OK, result.rc);
+        assertEquals(5, result.numLedgers);
+        assertEquals(5, result.numLedgersChecked);
+        assertEquals(0, result.numLedgersSkipped);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), checked);
+        // the progress is recorded after each range
+        assertEquals(Arrays.asList(2L, 4L, 5L, -1L), checkpoints);
+    }
+
+    @Test
+    public void testResumeAfterInterruptedWalk() throws Exception {
+        ranges.add(Arrays.asList(1L, 2L));
+        ranges.add(Arrays.asList(3L, 4L));
+        ranges.add(Arrays.asList(5L));
+
+        CheckpointedLedgerScan.Result result = scanRanges(1);
+        assertFalse(result.completed);
+        assertEquals(Arrays.asList(1L, 2L), checked);
+        assertEquals(2L, checkpointValue);
+
+        checked.clear();
+        result = scan();
+        assertTrue(result.completed);
+        assertEquals(5, result.numLedgers);
+        assertEquals(3, result.numLedgersChecked);
+        assertEquals(2, result.numLedgersSkipped);
+        assertEquals(100, result.coveragePercentage());
+        assertEquals(Arrays.asList(3L, 4L, 5L), checked);
+        assertEquals(-1L, checkpointValue);
+    }
+
+    @Test
+    public void testFailedLedgerCheckedAgainAfterInterruptedWalk() throws Exception {
+        ranges.add(Arrays.asList(1L, 2L));
+        ranges.add(Arrays.asList(3L, 4L));
+        ranges.add(Arrays.asList(5L, 6L));
+
+        CheckpointedLedgerScan.Result result = scanRanges(2, 3L);
+        assertFalse(result.completed);
+        assertEquals(BKException.Code.ReadException, result.rc);
+        // no progress recorded past the failed ledger
+        assertEquals(Arrays.asList(2L), checkpoints);
+
+        checked.clear();
+        result = scan();
+        assertTrue(result.completed);
+        assertEquals(Arrays.asList(3L, 4L, 5L, 6L), checked);
+    }
+
+    @Test
+    public void testCompletedWalkWithFailureClearsCheckpoint() throws Exception {
+        ranges.add(Arrays.asList(1L, 2L));
+        ranges.add(Arrays.asList(3L, 4L));
+        ranges.add(Arrays.asList(5L, 6L));
+
+        // an interrupted walk left a checkpoint
+        scanRanges(1);
+        assertEquals(2L, checkpointValue);
+
+        // the walk resumed fails a ledger, but reaches the end of the ledgers
+        checked.clear();
+        CheckpointedLedgerScan.Result result = scan(5L);
+        assertTrue(result.completed);
+        assertEquals(BKException.Code.ReadException, result.rc);
+        assertEquals(Arrays.asList(3L, 4L, 5L, 6L), checked);
+        assertEquals(-1L, checkpointValue);
+
+        // the next walk checks all the ledgers again
+        checked.clear();
+        result = scan();
+        assertTrue(result.completed);
+        assertEquals(BKException.Code.OK, result.rc);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L), checked);
+    }
+
+    @Test
+    public void testOutOfOrderListing() throws Exception {
+        ranges.add(Arrays.asList(3L, 4L));
+        ranges.add(Arrays.asList(1L, 2L));
+        ranges.add(Arrays.asList(5L));
+
+        CheckpointedLedgerScan.Result result = scanRanges(2);
+        assertFalse(result.completed);
+        assertEquals(Arrays.asList(3L, 4L, 1L, 2L), checked);
+        // the progress is not recorded once a range is listed out of order
+        assertEquals(Arrays.asList(4L), checkpoints);
+
+        // the ledgers listed before the checkpoint are skipped, and the progress is not recorded anymore
+        checked.clear();
+        checkpoints.clear();
+        result = scan();
+        assertTrue(result.completed);
+        assertEquals(4, result.numLedgersSkipped);
+        assertEquals(Arrays.asList(5L), checked);
+        assertEquals(Arrays.asList(-1L), checkpoints);
+    }
+
+    @Test
+    public void testWithoutCheckpoint() throws Exception {
+        ranges.add(Arrays.asList(1L, 2L));
+        ranges.add(Arrays.asList(3L));
+        checkpoint = null;
+
+        CheckpointedLedgerScan.Result result = scan();
+        assertTrue(result.completed);
+        assertEquals(Arrays.asList(1L, 2L, 3L), checked);
+        assertTrue(checkpoints.isEmpty());
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.replication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link IncrementalBookieLedgerIndexer}.
+ */
+public class IncrementalBookieLedgerIndexerTest {
+
+    private static final String BOOKIE0 = "bookie0:3181";
+    private static final String BOOKIE1 = "bookie1:3181";
+    private static final String BOOKIE2 = "bookie2:3181";
+
+    private LedgerManager ledgerManager;
+    // metadata of the existing ledgers
+    private Map<Long, LedgerMetadata> ledgers;
+    private IncrementalBookieLedgerIndexer indexer;
+
+    @Before
+    public void setup() {
+        ledgers = new ConcurrentSkipListMap<>();
+        ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.getLedgerRanges(anyLong())).thenAnswer(invocation -> {
+            List<Long> ledgerIds = new ArrayList<>(ledgers.keySet());
+            return new LedgerRangeIterator() {
+                boolean listed = ledgerIds.isEmpty();
+
+                @Override
+                public boolean hasNext() {
+                    return !listed;
+                }
+
+                @Override
+                public LedgerRange next() {
+                    listed = true;
+                    return new LedgerRange(Sets.newHashSet(ledgerIds));
+                }
+            };
+        });
+        // reads the metadata of the ledger and notifies it, like the ledger managers do
+        doAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            LedgerMetadataListener listener = invocation.getArgument(1);
+            LedgerMetadata metadata = ledgers.get(ledgerId);
+            listener.onChanged(ledgerId, metadata == null ? null : new Versioned<>(metadata, new LongVersion(0)));
+            return null;
+        }).when(ledgerManager).registerLedgerMetadataListener(anyLong(), any());
+
+        // reconcile once an hour only
+        indexer = new IncrementalBookieLedgerIndexer(ledgerManager, 3600, 10000, null);
+    }
+
+    @After
+    public void teardown() {
+        indexer.close();
+    }
+
+    private static LedgerMetadata metadata(long ledgerId, String... bookies) {
+        List<BookieId> ensemble = new ArrayList<>();
+        for (String bookie : bookies) {
+            ensemble.add(BookieId.parse(bookie));
+        }
+        return LedgerMetadataBuilder.create().withId(ledgerId)
+            .withEnsembleSize(ensemble.size()).withWriteQuorumSize(ensemble.size())
+            .withAckQuorumSize(ensemble.size())
+            .withPassword(new byte[0]).withDigestType(DigestType.CRC32C)
+            .newEnsembleEntry(0L, ensemble)
+            .build();
+    }
+
+    @Test
+    public void testIndexBuiltOnFirstAudit() throws Exception {
+        ledgers.put(1L, metadata(1L, BOOKIE0, BOOKIE1));
+        ledgers.put(2L, metadata(2L, BOOKIE1, BOOKIE2));
+
+        Map<String, Set<Long>> index = indexer.getBookieToLedgerIndex();
+        assertEquals(Sets.newHashSet(1L), index.get(BOOKIE0));
+        assertEquals(Sets.newHashSet(1L, 2L), index.get(BOOKIE1));
+        assertEquals(Sets.newHashSet(2L), index.get(BOOKIE2));
+    }
+
+    @Test
+    public void testLedgerCreatedAfterLastReconciliation() throws Exception {
+        ledgers.put(1L, metadata(1L, BOOKIE0, BOOKIE1));
+        indexer.start();
+        assertEquals(Sets.newHashSet(BOOKIE0, BOOKIE1), indexer.getBookieToLedgerIndex().keySet());
+
+        // the next reconciliation is an hour away
+        ledgers.put(2L, metadata(2L, BOOKIE1, BOOKIE2));
+        Map<String, Set<Long>> index = indexer.getBookieToLedgerIndex();
+        assertEquals(Sets.newHashSet(1L, 2L), index.get(BOOKIE1));
+        assertEquals(Sets.newHashSet(2L), index.get(BOOKIE2));
+
+        // only the metadata of the new ledger is read
+        verify(ledgerManager, times(1)).registerLedgerMetadataListener(1L, indexer);
+        verify(ledgerManager, times(1)).registerLedgerMetadataListener(2L, indexer);
+    }
+
+    @Test
+    public void testEnsembleChange() throws Exception {
+        ledgers.put(1L, metadata(1L, BOOKIE0, BOOKIE1));
+        ledgers.put(2L, metadata(2L, BOOKIE0, BOOKIE1));
+        Map<String, Set<Long>> before = indexer.getBookieToLedgerIndex();
+
+        // bookie1 is replaced by bookie2 in the ensemble of ledger 1
+        LedgerMetadata changed = LedgerMetadataBuilder.from(ledgers.get(1L))
+            .replaceEnsembleEntry(0L, Arrays.asList(BookieId.parse(BOOKIE0), BookieId.parse(BOOKIE2)))
+            .build();
+        ledgers.put(1L, changed);
+        indexer.onChanged(1L, new Versioned<>(changed, new LongVersion(1)));
+
+        Map<String, Set<Long>> after = indexer.getBookieToLedgerIndex();
+        assertEquals(Sets.newHashSet(1L, 2L), after.get(BOOKIE0));
+        assertEquals(Sets.newHashSet(2L), after.get(BOOKIE1));
+        assertEquals(Sets.newHashSet(1L), after.get(BOOKIE2));
+
+        // the index returned before is a snapshot, not updated by the change
+        assertEquals(Sets.newHashSet(1L, 2L), before.get(BOOKIE1));
+        assertNull(before.get(BOOKIE2));
+    }
+
+    @Test
+    public void testDeletedLedger() throws Exception {
+        ledgers.put(1L, metadata(1L, BOOKIE0, BOOKIE1));
+        ledgers.put(2L, metadata(2L, BOOKIE0, BOOKIE2));
+        Map<String, Set<Long>> before = indexer.getBookieToLedgerIndex();
+
+        ledgers.remove(2L);
+        indexer.onChanged(2L, null);
+
+        Map<String, Set<Long>> after = indexer.getBookieToLedgerIndex();
+        assertEquals(Sets.newHashSet(1L), after.get(BOOKIE0));
+        assertFalse(after.containsKey(BOOKIE2));
+        // a bookie removed from the index is still in the snapshot returned before
+        assertEquals(Sets.newHashSet(2L), before.get(BOOKIE2));
+    }
+}
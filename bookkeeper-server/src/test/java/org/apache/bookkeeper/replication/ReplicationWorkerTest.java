@@ -0,0 +1,152 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.replication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManagerFactory;
+import org.apache.bookkeeper.meta.LedgerUnderreplicationManager;
+import org.apache.bookkeeper.replication.ReplicationException.UnavailableException;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the concurrent replication of ledgers by {@link ReplicationWorker}.
+ */
+public class ReplicationWorkerTest {
+
+    private static final int CONCURRENT_LEDGERS = 3;
+    private static final int NUM_LEDGERS = 10;
+
+    private final LinkedBlockingQueue<Long> underreplicatedLedgers = new LinkedBlockingQueue<>();
+    private final Set<Long> replicatedLedgers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger numReplicating = new AtomicInteger();
+    private final AtomicInteger maxReplicating = new AtomicInteger();
+    private final CountDownLatch replicationAllowed = new CountDownLatch(1);
+
+    private ReplicationWorker worker;
+    private Thread workerThread;
+
+    @Before
+    public void setup() throws Exception {
+        LedgerUnderreplicationManager underreplicationManager = mock(LedgerUnderreplicationManager.class);
+        // blocks until a ledger is underreplicated, as the ZooKeeper based manager
+        when(underreplicationManager.getLedgerToRereplicate()).thenAnswer(invocation -> {
+            try {
+                return underreplicatedLedgers.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UnavailableException("Interrupted while waiting for an underreplicated ledger", e);
+            }
+        });
+        LedgerManagerFactory ledgerManagerFactory = mock(LedgerManagerFactory.class);
+        when(ledgerManagerFactory.newLedgerUnderreplicationManager()).thenReturn(underreplicationManager);
+        BookKeeper bkc = mock(BookKeeper.class);
+        when(bkc.getLedgerManagerFactory()).thenReturn(ledgerManagerFactory);
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setRereplicationConcurrentLedgers(CONCURRENT_LEDGERS);
+        conf.setRwRereplicateBackoffMs(10);
+        worker = spy(new ReplicationWorker(conf, bkc, false, NullStatsLogger.INSTANCE));
+        doAnswer(invocation -> {
+            int replicating = numReplicating.incrementAndGet();
+            maxReplicating.accumulateAndGet(replicating, Math::max);
+            try {
+                replicationAllowed.await();
+            } finally {
+                numReplicating.decrementAndGet();
+            }
+            replicatedLedgers.add(invocation.getArgument(0));
+            return true;
+        }).when(worker).rereplicate(anyLong());
+        workerThread = new Thread(worker, "ReplicationWorkerTest");
+    }
+
+    @After
+    public void teardown() throws Exception {
+        worker.shutdown();
+        workerThread.interrupt();
+        workerThread.join(10000);
+    }
+
+    private static void waitFor(String what, BooleanSupplier condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for " + what);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testConcurrentLedgersBounded() throws Exception {
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            underreplicatedLedgers.add(ledgerId);
+        }
+        workerThread.start();
+
+        waitFor("ledgers being replicated", () -> numReplicating.get() == CONCURRENT_LEDGERS);
+        Thread.sleep(100);
+        // no more ledgers are acquired while the pool is busy
+        assertEquals(CONCURRENT_LEDGERS, numReplicating.get());
+        assertEquals(NUM_LEDGERS - CONCURRENT_LEDGERS, underreplicatedLedgers.size());
+
+        replicationAllowed.countDown();
+        waitFor("all the ledgers replicated", () -> replicatedLedgers.size() == NUM_LEDGERS);
+        assertEquals(CONCURRENT_LEDGERS, maxReplicating.get());
+        assertTrue(underreplicatedLedgers.isEmpty());
+    }
+
+    @Test
+    public void testShutdownWhileReplicating() throws Exception {
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            underreplicatedLedgers.add(ledgerId);
+        }
+        workerThread.start();
+        waitFor("ledgers being replicated", () -> numReplicating.get() == CONCURRENT_LEDGERS);
+
+        // the replications in flight are interrupted
+        worker.shutdown();
+        workerThread.interrupt();
+        workerThread.join(10000);
+        assertFalse(workerThread.isAlive());
+        waitFor("the replications interrupted", () -> numReplicating.get() == 0);
+        assertTrue(replicatedLedgers.isEmpty());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.streaming;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.client.impl.SequentialReaderImpl;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link LedgerInputStream}.
+ */
+public class LedgerInputStreamTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int NUM_ENTRIES = 10;
+    private static final int ENTRIES_PER_READ = 4;
+
+    private LedgerHandle lh;
+    // buffer of each entry read
+    private final Map<Long, ByteBuf> buffers = new HashMap<>();
+    private volatile BKException readFailure = null;
+
+    @Before
+    public void setup() throws Exception {
+        lh = mock(LedgerHandle.class);
+        when(lh.getId()).thenReturn(LEDGER_ID);
+        when(lh.getLastAddConfirmed()).thenReturn(NUM_ENTRIES - 1L);
+        when(lh.newSequentialReader(anyLong(), anyLong(), anyLong())).thenAnswer(invocation -> new SequentialReaderImpl(
+                lh, invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2),
+                ENTRIES_PER_READ, (first, last, index) -> {
+                    if (readFailure != null) {
+                        return FutureUtils.exception(readFailure);
+                    }
+                    List<LedgerEntry> entries = new ArrayList<>();
+                    for (long entryId = first; entryId <= last; entryId++) {
+                        ByteBuf buffer = Unpooled.wrappedBuffer(data(entryId));
+                        buffers.put(entryId, buffer);
+                        entries.add(LedgerEntryImpl.create(LEDGER_ID, entryId, buffer.readableBytes(), buffer));
+                    }
+                    return FutureUtils.value(LedgerEntriesImpl.create(entries));
+                }));
+    }
+
+    private static byte[] data(long entryId) {
+        StringBuilder data = new StringBuilder();
+        for (long i = 0; i <= entryId; i++) {
+            data.append("entry-").append(entryId).append(';');
+        }
+        return data.toString().getBytes(UTF_8);
+    }
+
+    private static byte[] data(long firstEntryId, long lastEntryId) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            data.write(data(entryId));
+        }
+        return data.toByteArray();
+    }
+
+    private static byte[] readAll(LedgerInputStream in, int bufferSize) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        int read;
+        while ((read = in.read(buffer, 1, bufferSize - 1)) != -1) {
+            data.write(buffer, 1, read);
+        }
+        return data.toByteArray();
+    }
+
+    @Test
+    public void testReadByteByByte() throws Exception {
+        LedgerInputStream in = new LedgerInputStream(lh, 1024);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            data.write(b);
+        }
+        assertArrayEquals(data(0, NUM_ENTRIES - 1), data.toByteArray());
+        in.close();
+    }
+
+    @Test
+    public void testReadIntoArrays() throws Exception {
+        LedgerInputStream in = new LedgerInputStream(lh, 1024);
+        assertArrayEquals(data(0, NUM_ENTRIES - 1), readAll(in, 7));
+        in.close();
+
+        // each read returns at most the rest of an entry
+        in = new LedgerInputStream(lh, 1024);
+        byte[] buffer = new byte[1024];
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertEquals(data(entryId).length, in.read(buffer));
+        }
+        assertEquals(-1, in.read(buffer));
+        in.close();
+    }
+
+    @Test
+    public void testReadAheadBytes() throws Exception {
+        new LedgerInputStream(lh, 1024, 4096).close();
+        verify(lh).newSequentialReader(0, NUM_ENTRIES - 1, 4096);
+        new LedgerInputStream(lh, 1024).close();
+        verify(lh).newSequentialReader(0, NUM_ENTRIES - 1, 16 * 1024);
+    }
+
+    @Test
+    public void testEntriesConfirmedAfterCreation() throws Exception {
+        when(lh.getLastAddConfirmed()).thenReturn(4L);
+        LedgerInputStream in = new LedgerInputStream(lh, 1024);
+        byte[] buffer = new byte[1024];
+        for (long entryId = 0; entryId <= 4; entryId++) {
+            assertEquals(data(entryId).length, in.read(buffer));
+        }
+
+        // the stream goes on with the entries confirmed since
+        when(lh.getLastAddConfirmed()).thenReturn(NUM_ENTRIES - 1L);
+        assertArrayEquals(data(5, NUM_ENTRIES - 1), readAll(in, 1024));
+        verify(lh).newSequentialReader(5, NUM_ENTRIES - 1, 16 * 1024);
+        in.close();
+    }
+
+    @Test
+    public void testEmptyLedger() throws Exception {
+        when(lh.getLastAddConfirmed()).thenReturn(-1L);
+        LedgerInputStream in = new LedgerInputStream(lh);
+        assertEquals(-1, in.read());
+        assertEquals(-1, in.read(new byte[16]));
+        in.close();
+    }
+
+    @Test
+    public void testCloseReleasesEntriesReadAhead() throws Exception {
+        LedgerInputStream in = new LedgerInputStream(lh, 1024);
+        assertEquals('e', in.read());
+        in.close();
+        assertEquals(NUM_ENTRIES, buffers.size());
+        for (ByteBuf buffer : buffers.values()) {
+            assertEquals(0, buffer.refCnt());
+        }
+    }
+
+    @Test
+    public void testReadFailure() throws Exception {
+        readFailure = BKException.create(BKException.Code.ReadException);
+        LedgerInputStream in = new LedgerInputStream(lh, 1024);
+        try {
+            in.read();
+            fail("Should fail to read the ledger");
+        } catch (IOException ioe) {
+            assertSame(readFailure, ioe.getCause());
+        }
+        in.close();
+    }
+}
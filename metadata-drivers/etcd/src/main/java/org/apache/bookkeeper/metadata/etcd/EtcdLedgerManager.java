@@ -18,6 +18,7 @@
  */
 package org.apache.bookkeeper.metadata.etcd;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Sets;
 
 import io.etcd.jetcd.ByteSequence;
@@ -35,7 +36,11 @@ import io.etcd.jetcd.options.PutOption;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -47,6 +52,7 @@ import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.meta.LedgerMetadataSerDe;
 import org.apache.bookkeeper.metadata.etcd.helpers.KeyIterator;
@@ -66,6 +72,9 @@ import org.apache.zookeeper.AsyncCallback.VoidCallback;
 @Slf4j
 class EtcdLedgerManager implements LedgerManager {
 
+    // Max number of operations of a transaction, the default of the max-txn-ops setting of etcd
+    static final int MAX_OPS_PER_TXN = 128;
+
     private final LedgerMetadataSerDe serDe = new LedgerMetadataSerDe();
 
     private final String scope;
@@ -81,10 +90,18 @@ class EtcdLedgerManager implements LedgerManager {
 
     EtcdLedgerManager(Client client,
                       String scope) {
+        this(client, client.getKVClient(), new EtcdWatchClient(client), scope);
+    }
+
+    @VisibleForTesting
+    EtcdLedgerManager(Client client,
+                      KV kvClient,
+                      EtcdWatchClient watchClient,
+                      String scope) {
         this.client = client;
-        this.kvClient = client.getKVClient();
+        this.kvClient = kvClient;
         this.scope = scope;
-        this.watchClient = new EtcdWatchClient(client);
+        this.watchClient = watchClient;
     }
 
     private boolean isClosed() {
@@ -219,22 +236,7 @@ class EtcdLedgerManager implements LedgerManager {
         ByteSequence ledgerKeyBs = ByteSequence.from(ledgerKey, StandardCharsets.UTF_8);
         log.info("read ledger metadata under key {}", ledgerKey);
         kvClient.get(ledgerKeyBs)
-            .thenAccept(getResp -> {
-                if (getResp.getCount() > 0) {
-                    KeyValue kv = getResp.getKvs().get(0);
-                    byte[] data = kv.getValue().getBytes();
-                    try {
-                        LedgerMetadata metadata = serDe.parseConfig(data, ledgerId, Optional.empty());
-                        promise.complete(new Versioned<>(metadata, new LongVersion(kv.getModRevision())));
-                    } catch (IOException ioe) {
-                        log.error("Could not parse ledger metadata for ledger : {}", ledgerId, ioe);
-                        promise.completeExceptionally(new BKException.MetaStoreException());
-                        return;
-                    }
-                } else {
-                    promise.completeExceptionally(new BKException.BKNoSuchLedgerExistsException());
-                }
-            })
+            .thenAccept(getResp -> completeLedgerMetadataRead(ledgerId, getResp, promise))
             .exceptionally(cause -> {
                     promise.completeExceptionally(new BKException.MetaStoreException());
                     return null;
@@ -242,6 +244,71 @@ class EtcdLedgerManager implements LedgerManager {
         return promise;
     }
 
+    private void completeLedgerMetadataRead(long ledgerId, GetResponse getResp,
+                                            CompletableFuture<Versioned<LedgerMetadata>> promise) {
+        if (getResp.getCount() > 0) {
+            KeyValue kv = getResp.getKvs().get(0);
+            byte[] data = kv.getValue().getBytes();
+            try {
+                LedgerMetadata metadata = serDe.parseConfig(data, ledgerId, Optional.empty());
+                promise.complete(new Versioned<>(metadata, new LongVersion(kv.getModRevision())));
+            } catch (IOException ioe) {
+                log.error("Could not parse ledger metadata for ledger : {}", ledgerId, ioe);
+                promise.completeExceptionally(new BKException.MetaStoreException());
+            }
+        } else {
+            promise.completeExceptionally(new BKException.BKNoSuchLedgerExistsException());
+        }
+    }
+
+    /**
+     * Read ledger metadata of several ledgers, getting the metadata of up to {@link #MAX_OPS_PER_TXN}
+     * ledgers with a single transaction.
+     */
+    @Override
+    public Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> readLedgerMetadataBatch(
+            Collection<Long> ledgerIds) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results = new LinkedHashMap<>();
+        List<Long> groupIds = new ArrayList<>();
+        List<CompletableFuture<Versioned<LedgerMetadata>>> groupPromises = new ArrayList<>();
+        for (long ledgerId : ledgerIds) {
+            CompletableFuture<Versioned<LedgerMetadata>> promise = new CompletableFuture<>();
+            results.put(ledgerId, promise);
+            groupIds.add(ledgerId);
+            groupPromises.add(promise);
+            if (groupIds.size() == MAX_OPS_PER_TXN) {
+                readLedgerMetadataGroup(groupIds, groupPromises);
+                groupIds = new ArrayList<>();
+                groupPromises = new ArrayList<>();
+            }
+        }
+        if (!groupIds.isEmpty()) {
+            readLedgerMetadataGroup(groupIds, groupPromises);
+        }
+        return results;
+    }
+
+    private void readLedgerMetadataGroup(List<Long> ledgerIds,
+                                         List<CompletableFuture<Versioned<LedgerMetadata>>> promises) {
+        io.etcd.jetcd.op.Op[] gets = new io.etcd.jetcd.op.Op[ledgerIds.size()];
+        for (int i = 0; i < gets.length; i++) {
+            gets[i] = io.etcd.jetcd.op.Op.get(getLedgerKeyBs(ledgerIds.get(i)), GetOption.DEFAULT);
+        }
+        kvClient.txn()
+            .Then(gets)
+            .commit()
+            .thenAccept(resp -> {
+                List<GetResponse> getResps = resp.getGetResponses();
+                for (int i = 0; i < promises.size(); i++) {
+                    completeLedgerMetadataRead(ledgerIds.get(i), getResps.get(i), promises.get(i));
+                }
+            })
+            .exceptionally(cause -> {
+                    promises.forEach(promise -> promise.completeExceptionally(new BKException.MetaStoreException()));
+                    return null;
+                });
+    }
+
     @Override
     public CompletableFuture<Versioned<LedgerMetadata>> writeLedgerMetadata(long ledgerId, LedgerMetadata metadata,
                                                                             Version currentVersion) {
@@ -297,6 +364,111 @@ class EtcdLedgerManager implements LedgerManager {
         return promise;
     }
 
+    /**
+     * Write ledger metadata of several ledgers, updating up to {@link #MAX_OPS_PER_TXN} ledgers with
+     * a single transaction, conditional on the revisions of all the ledgers of the transaction.
+     *
+     * <p>If the revision of a ledger of a transaction changed, none of the ledgers of the transaction
+     * is written: the ledgers whose revision changed are failed, and the others are written one by one.
+     */
+    @Override
+    public Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> writeLedgerMetadataBatch(
+            Map<Long, Versioned<LedgerMetadata>> updates) {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results = new LinkedHashMap<>();
+        List<LedgerMetadataWrite> group = new ArrayList<>();
+        for (Map.Entry<Long, Versioned<LedgerMetadata>> update : updates.entrySet()) {
+            long ledgerId = update.getKey();
+            LedgerMetadata metadata = update.getValue().getValue();
+            Version currentVersion = update.getValue().getVersion();
+            CompletableFuture<Versioned<LedgerMetadata>> promise = new CompletableFuture<>();
+            results.put(ledgerId, promise);
+            if (Version.NEW == currentVersion || !(currentVersion instanceof LongVersion)) {
+                promise.completeExceptionally(new BKException.BKMetadataVersionException());
+                continue;
+            }
+            final ByteSequence valueBs;
+            try {
+                valueBs = ByteSequence.from(serDe.serialize(metadata));
+            } catch (IOException ioe) {
+                promise.completeExceptionally(new BKException.BKMetadataSerializationException(ioe));
+                continue;
+            }
+            group.add(new LedgerMetadataWrite(ledgerId, metadata, (LongVersion) currentVersion, valueBs, promise));
+            if (group.size() == MAX_OPS_PER_TXN) {
+                writeLedgerMetadataGroup(group);
+                group = new ArrayList<>();
+            }
+        }
+        if (!group.isEmpty()) {
+            writeLedgerMetadataGroup(group);
+        }
+        return results;
+    }
+
+    private void writeLedgerMetadataGroup(List<LedgerMetadataWrite> writes) {
+        Cmp[] cmps = new Cmp[writes.size()];
+        io.etcd.jetcd.op.Op[] puts = new io.etcd.jetcd.op.Op[writes.size()];
+        io.etcd.jetcd.op.Op[] gets = new io.etcd.jetcd.op.Op[writes.size()];
+        for (int i = 0; i < writes.size(); i++) {
+            LedgerMetadataWrite write = writes.get(i);
+            ByteSequence ledgerKeyBs = getLedgerKeyBs(write.ledgerId);
+            cmps[i] = new Cmp(ledgerKeyBs, Cmp.Op.EQUAL, CmpTarget.modRevision(write.currentVersion.getLongVersion()));
+            puts[i] = io.etcd.jetcd.op.Op.put(ledgerKeyBs, write.valueBs, PutOption.DEFAULT);
+            gets[i] = io.etcd.jetcd.op.Op.get(ledgerKeyBs, GetOption.DEFAULT);
+        }
+        kvClient.txn()
+            .If(cmps)
+            .Then(puts)
+            .Else(gets)
+            .commit()
+            .thenAccept(resp -> {
+                if (resp.isSucceeded()) {
+                    LongVersion version = new LongVersion(resp.getHeader().getRevision());
+                    writes.forEach(write -> write.promise.complete(new Versioned<>(write.metadata, version)));
+                    return;
+                }
+                List<GetResponse> getResps = resp.getGetResponses();
+                for (int i = 0; i < writes.size(); i++) {
+                    LedgerMetadataWrite write = writes.get(i);
+                    GetResponse getResp = getResps.get(i);
+                    if (getResp.getCount() == 0) {
+                        write.promise.completeExceptionally(new BKException.BKNoSuchLedgerExistsException());
+                    } else if (getResp.getKvs().get(0).getModRevision() != write.currentVersion.getLongVersion()) {
+                        write.promise.completeExceptionally(new BKException.BKMetadataVersionException());
+                    } else {
+                        FutureUtils.proxyTo(
+                            writeLedgerMetadata(write.ledgerId, write.metadata, write.currentVersion),
+                            write.promise);
+                    }
+                }
+            })
+            .exceptionally(cause -> {
+                    writes.forEach(write -> write.promise.completeExceptionally(new BKException.MetaStoreException()));
+                    return null;
+                });
+    }
+
+    private ByteSequence getLedgerKeyBs(long ledgerId) {
+        return ByteSequence.from(EtcdUtils.getLedgerKey(scope, ledgerId), StandardCharsets.UTF_8);
+    }
+
+    private static class LedgerMetadataWrite {
+        final long ledgerId;
+        final LedgerMetadata metadata;
+        final LongVersion currentVersion;
+        final ByteSequence valueBs;
+        final CompletableFuture<Versioned<LedgerMetadata>> promise;
+
+        LedgerMetadataWrite(long ledgerId, LedgerMetadata metadata, LongVersion currentVersion,
+                            ByteSequence valueBs, CompletableFuture<Versioned<LedgerMetadata>> promise) {
+            this.ledgerId = ledgerId;
+            this.metadata = metadata;
+            this.currentVersion = currentVersion;
+            this.valueBs = valueBs;
+            this.promise = promise;
+        }
+    }
+
     private LedgerMetadataConsumer listenerToConsumer(long ledgerId,
                                                       LedgerMetadataListener listener,
                                                       Consumer<Long> onDeletedConsumer) {
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.etcd.jetcd.op;
+
+import io.etcd.jetcd.ByteSequence;
+import io.etcd.jetcd.api.Compare;
+import io.etcd.jetcd.api.RequestOp;
+
+/**
+ * Access the requests built by the etcd compares and operations, to check them in tests.
+ */
+public final class EtcdOpUtils {
+
+    private EtcdOpUtils() {}
+
+    public static Compare toCompare(Cmp cmp) {
+        return cmp.toCompare(ByteSequence.EMPTY);
+    }
+
+    public static RequestOp toRequestOp(Op op) {
+        return op.toRequestOp(ByteSequence.EMPTY);
+    }
+}
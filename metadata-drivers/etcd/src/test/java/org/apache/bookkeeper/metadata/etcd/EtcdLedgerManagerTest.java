@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.metadata.etcd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import io.etcd.jetcd.ByteSequence;
+import io.etcd.jetcd.Client;
+import io.etcd.jetcd.KV;
+import io.etcd.jetcd.Txn;
+import io.etcd.jetcd.api.Compare;
+import io.etcd.jetcd.api.KeyValue;
+import io.etcd.jetcd.api.PutResponse;
+import io.etcd.jetcd.api.RangeResponse;
+import io.etcd.jetcd.api.RequestOp;
+import io.etcd.jetcd.api.ResponseHeader;
+import io.etcd.jetcd.api.ResponseOp;
+import io.etcd.jetcd.kv.TxnResponse;
+import io.etcd.jetcd.op.Cmp;
+import io.etcd.jetcd.op.EtcdOpUtils;
+import io.etcd.jetcd.op.Op;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerMetadataSerDe;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Version;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the bulk ledger metadata reads and writes of {@link EtcdLedgerManager}.
+ */
+public class EtcdLedgerManagerTest {
+
+    private static final String SCOPE = "/test";
+
+    private final LedgerMetadataSerDe serDe = new LedgerMetadataSerDe();
+
+    private EtcdLedgerManager ledgerManager;
+    // content of the etcd store
+    private Map<ByteString, KeyValue> kvs;
+    private long revision;
+    // number of operations of each transaction committed
+    private List<Integer> txnSizes;
+    // actions run before committing the transaction at the given index, e.g. concurrent updates
+    private Map<Integer, Runnable> beforeCommits;
+    private boolean failCommits;
+
+    @Before
+    public void setup() {
+        kvs = new HashMap<>();
+        revision = 100L;
+        txnSizes = new ArrayList<>();
+        beforeCommits = new HashMap<>();
+        failCommits = false;
+
+        KV kvClient = mock(KV.class);
+        when(kvClient.txn()).thenAnswer(invocation -> new FakeTxn());
+        ledgerManager = new EtcdLedgerManager(mock(Client.class), kvClient, mock(EtcdWatchClient.class), SCOPE);
+    }
+
+    @After
+    public void teardown() {
+        ledgerManager.close();
+    }
+
+    /**
+     * Transaction applied to the in-memory store, supporting the operations of the ledger manager.
+     */
+    private class FakeTxn implements Txn {
+        private Cmp[] cmps = new Cmp[0];
+        private Op[] thenOps = new Op[0];
+        private Op[] elseOps = new Op[0];
+
+        @Override
+        public Txn If(Cmp... cmps) {
+            this.cmps = cmps;
+            return this;
+        }
+
+        @Override
+        public Txn Then(Op... ops) {
+            this.thenOps = ops;
+            return this;
+        }
+
+        @Override
+        public Txn Else(Op... ops) {
+            this.elseOps = ops;
+            return this;
+        }
+
+        @Override
+        public CompletableFuture<TxnResponse> commit() {
+            Runnable beforeCommit = beforeCommits.get(txnSizes.size());
+            if (beforeCommit != null) {
+                beforeCommit.run();
+            }
+            txnSizes.add(thenOps.length);
+            if (failCommits) {
+                CompletableFuture<TxnResponse> failure = new CompletableFuture<>();
+                failure.completeExceptionally(new RuntimeException("etcd unavailable"));
+                return failure;
+            }
+
+            boolean succeeded = true;
+            for (Cmp cmp : cmps) {
+                Compare compare = EtcdOpUtils.toCompare(cmp);
+                assertEquals(Compare.CompareTarget.MOD, compare.getTarget());
+                assertEquals(Compare.CompareResult.EQUAL, compare.getResult());
+                KeyValue kv = kvs.get(compare.getKey());
+                // a missing key has a revision of 0
+                succeeded &= kv != null && kv.getModRevision() == compare.getModRevision();
+            }
+            Op[] ops = succeeded ? thenOps : elseOps;
+            io.etcd.jetcd.api.TxnResponse.Builder response = io.etcd.jetcd.api.TxnResponse.newBuilder()
+                .setSucceeded(succeeded);
+            boolean revisionIncremented = false;
+            for (Op op : ops) {
+                RequestOp request = EtcdOpUtils.toRequestOp(op);
+                if (request.getRequestCase() == RequestOp.RequestCase.REQUEST_PUT) {
+                    // all the puts of a transaction share the same revision
+                    if (!revisionIncremented) {
+                        revision++;
+                        revisionIncremented = true;
+                    }
+                    put(request.getRequestPut().getKey(), request.getRequestPut().getValue());
+                    response.addResponses(ResponseOp.newBuilder().setResponsePut(PutResponse.getDefaultInstance()));
+                } else {
+                    assertEquals(RequestOp.RequestCase.REQUEST_RANGE, request.getRequestCase());
+                    RangeResponse.Builder range = RangeResponse.newBuilder();
+                    KeyValue kv = kvs.get(request.getRequestRange().getKey());
+                    if (kv != null) {
+                        range.addKvs(kv).setCount(1);
+                    }
+                    response.addResponses(ResponseOp.newBuilder().setResponseRange(range));
+                }
+            }
+            response.setHeader(ResponseHeader.newBuilder().setRevision(revision));
+            return CompletableFuture.completedFuture(new TxnResponse(response.build(), ByteSequence.EMPTY));
+        }
+    }
+
+    private void put(ByteString key, ByteString value) {
+        kvs.put(key, KeyValue.newBuilder().setKey(key).setValue(value).setModRevision(revision).build());
+    }
+
+    private static ByteString ledgerKey(long ledgerId) {
+        return ByteString.copyFrom(EtcdUtils.getLedgerKey(SCOPE, ledgerId), StandardCharsets.UTF_8);
+    }
+
+    private long modRevision(long ledgerId) {
+        return kvs.get(ledgerKey(ledgerId)).getModRevision();
+    }
+
+    /**
+     * Update the metadata of a ledger, as if it was done by another client.
+     */
+    private void concurrentUpdate(long ledgerId) {
+        revision++;
+        put(ledgerKey(ledgerId), kvs.get(ledgerKey(ledgerId)).getValue());
+    }
+
+    private static LedgerMetadata metadata(long ledgerId, long lastEntryId) {
+        return LedgerMetadataBuilder.create().withId(ledgerId)
+            .withEnsembleSize(2).withWriteQuorumSize(2).withAckQuorumSize(2)
+            .withPassword(new byte[0]).withDigestType(DigestType.CRC32C)
+            .newEnsembleEntry(0L, Arrays.asList(BookieId.parse("bookie0:3181"), BookieId.parse("bookie1:3181")))
+            .withClosedState().withLastEntryId(lastEntryId).withLength(lastEntryId + 1)
+            .build();
+    }
+
+    /**
+     * Store the metadata of the ledgers, and return the updates of their last entry to {@code lastEntryId}.
+     */
+    private Map<Long, Versioned<LedgerMetadata>> updates(long firstLedgerId, int numLedgers, long lastEntryId)
+            throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> updates = new LinkedHashMap<>();
+        for (long ledgerId = firstLedgerId; ledgerId < firstLedgerId + numLedgers; ledgerId++) {
+            revision++;
+            put(ledgerKey(ledgerId), ByteString.copyFrom(serDe.serialize(metadata(ledgerId, 0L))));
+            updates.put(ledgerId, new Versioned<>(metadata(ledgerId, lastEntryId),
+                                                  new LongVersion(modRevision(ledgerId))));
+        }
+        return updates;
+    }
+
+    private void assertWritten(CompletableFuture<Versioned<LedgerMetadata>> result, long ledgerId,
+                               long lastEntryId) throws Exception {
+        Versioned<LedgerMetadata> written = result.get();
+        assertEquals(modRevision(ledgerId), ((LongVersion) written.getVersion()).getLongVersion());
+        LedgerMetadata stored = serDe.parseConfig(kvs.get(ledgerKey(ledgerId)).getValue().toByteArray(),
+                                                  ledgerId, Optional.empty());
+        assertEquals(lastEntryId, stored.getLastEntryId());
+    }
+
+    private static void assertFailed(CompletableFuture<Versioned<LedgerMetadata>> result,
+                                     Class<? extends BKException> expected) throws Exception {
+        try {
+            result.get();
+            fail("Operation should have failed");
+        } catch (ExecutionException ee) {
+            assertTrue("Unexpected failure " + ee.getCause(), expected.isInstance(ee.getCause()));
+        }
+    }
+
+    @Test
+    public void testBatchWrittenWithOneTxn() throws Exception {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates(1L, 5, 10L));
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), new ArrayList<>(results.keySet()));
+        for (long ledgerId = 1L; ledgerId <= 5L; ledgerId++) {
+            assertWritten(results.get(ledgerId), ledgerId, 10L);
+        }
+        assertEquals(Arrays.asList(5), txnSizes);
+    }
+
+    @Test
+    public void testVersionConflictFailsOnlyConflictingLedgers() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> updates = updates(1L, 4, 10L);
+        concurrentUpdate(2L);
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates);
+
+        assertFailed(results.get(2L), BKException.BKMetadataVersionException.class);
+        // the ledgers of the failed transaction are written one by one
+        for (long ledgerId : Arrays.asList(1L, 3L, 4L)) {
+            assertWritten(results.get(ledgerId), ledgerId, 10L);
+        }
+        assertEquals(Arrays.asList(4, 1, 1, 1), txnSizes);
+    }
+
+    @Test
+    public void testMissingLedgerFailsOnlyThatLedger() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> updates = updates(1L, 3, 10L);
+        kvs.remove(ledgerKey(3L));
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates);
+
+        assertWritten(results.get(1L), 1L, 10L);
+        assertWritten(results.get(2L), 2L, 10L);
+        assertFailed(results.get(3L), BKException.BKNoSuchLedgerExistsException.class);
+    }
+
+    @Test
+    public void testConflictInRetryIsReported() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> updates = updates(1L, 3, 10L);
+        concurrentUpdate(1L);
+        // ledger 3 is updated after the transaction failed, before it is written by itself
+        beforeCommits.put(2, () -> concurrentUpdate(3L));
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates);
+
+        assertFailed(results.get(1L), BKException.BKMetadataVersionException.class);
+        assertWritten(results.get(2L), 2L, 10L);
+        assertFailed(results.get(3L), BKException.BKMetadataVersionException.class);
+        assertEquals(Arrays.asList(3, 1, 1), txnSizes);
+    }
+
+    @Test
+    public void testTxnFailureFailsAllLedgers() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> updates = updates(1L, 3, 10L);
+        failCommits = true;
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates);
+
+        for (CompletableFuture<Versioned<LedgerMetadata>> result : results.values()) {
+            assertFailed(result, BKException.MetaStoreException.class);
+        }
+        assertEquals(Arrays.asList(3), txnSizes);
+    }
+
+    @Test
+    public void testBatchSplitIntoSeveralTxns() throws Exception {
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates(1L, 300, 10L));
+
+        for (long ledgerId = 1L; ledgerId <= 300L; ledgerId++) {
+            assertWritten(results.get(ledgerId), ledgerId, 10L);
+        }
+        assertEquals(Arrays.asList(128, 128, 44), txnSizes);
+    }
+
+    @Test
+    public void testInvalidVersionFailsWithoutWrite() throws Exception {
+        Map<Long, Versioned<LedgerMetadata>> updates = updates(1L, 2, 10L);
+        updates.put(3L, new Versioned<>(metadata(3L, 10L), Version.NEW));
+
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.writeLedgerMetadataBatch(updates);
+
+        assertFailed(results.get(3L), BKException.BKMetadataVersionException.class);
+        assertWritten(results.get(1L), 1L, 10L);
+        assertWritten(results.get(2L), 2L, 10L);
+        assertEquals(Arrays.asList(2), txnSizes);
+    }
+
+    @Test
+    public void testReadBatch() throws Exception {
+        updates(1L, 3, 10L);
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.readLedgerMetadataBatch(Arrays.asList(3L, 4L, 1L));
+
+        assertEquals(Arrays.asList(3L, 4L, 1L), new ArrayList<>(results.keySet()));
+        for (long ledgerId : Arrays.asList(1L, 3L)) {
+            Versioned<LedgerMetadata> read = results.get(ledgerId).get();
+            assertEquals(ledgerId, read.getValue().getLedgerId());
+            assertEquals(modRevision(ledgerId), ((LongVersion) read.getVersion()).getLongVersion());
+        }
+        assertFailed(results.get(4L), BKException.BKNoSuchLedgerExistsException.class);
+        assertEquals(Arrays.asList(3), txnSizes);
+    }
+
+    @Test
+    public void testReadBatchSplitIntoSeveralTxns() throws Exception {
+        updates(1L, 130, 10L);
+        List<Long> ledgerIds = new ArrayList<>();
+        for (long ledgerId = 1L; ledgerId <= 130L; ledgerId++) {
+            ledgerIds.add(ledgerId);
+        }
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.readLedgerMetadataBatch(ledgerIds);
+
+        for (long ledgerId : ledgerIds) {
+            assertEquals(ledgerId, results.get(ledgerId).get().getValue().getLedgerId());
+        }
+        assertEquals(Arrays.asList(128, 2), txnSizes);
+    }
+
+    @Test
+    public void testReadTxnFailureFailsAllLedgers() throws Exception {
+        updates(1L, 2, 10L);
+        failCommits = true;
+        Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> results =
+            ledgerManager.readLedgerMetadataBatch(Arrays.asList(1L, 2L));
+
+        for (CompletableFuture<Versioned<LedgerMetadata>> result : results.values()) {
+            assertFailed(result, BKException.MetaStoreException.class);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmark of concurrent appends to a single {@link LedgerHandle}.
+ *
+ * <p>The bookie client acknowledges the writes right away, on the ordered thread of the
+ * ledger, so that the benchmark measures the client add path: entry id assignment,
+ * pending add tracking and ordered completion.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class LedgerHandleAddBenchmark {
+
+    private static final int MAX_OUTSTANDING_ADDS = 10000;
+
+    /**
+     * State holder of the benchmark.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({"64", "1024"})
+        private int entrySize;
+
+        private OrderedExecutor mainWorkerPool;
+        private OrderedScheduler scheduler;
+        private LedgerHandle lh;
+        private byte[] data;
+        private Semaphore outstandingAdds;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            mainWorkerPool = OrderedExecutor.newBuilder().name("bench-main").numThreads(1).build();
+            scheduler = OrderedScheduler.newSchedulerBuilder().name("bench-scheduler").numThreads(1).build();
+            data = new byte[entrySize];
+            outstandingAdds = new Semaphore(MAX_OUTSTANDING_ADDS);
+
+            List<BookieId> ensemble = Arrays.asList(
+                    BookieId.parse("127.0.0.1:3181"),
+                    BookieId.parse("127.0.0.2:3181"),
+                    BookieId.parse("127.0.0.3:3181"));
+            LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                    .withId(1L)
+                    .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                    .withPassword(new byte[0])
+                    .withDigestType(BookKeeper.DigestType.CRC32C.toApiDigestType())
+                    .newEnsembleEntry(0L, ensemble)
+                    .build();
+
+            ClientContext clientCtx = new BenchmarkClientContext(mainWorkerPool, scheduler);
+            lh = new LedgerHandle(clientCtx, 1L, new Versioned<>(metadata, new LongVersion(0L)),
+                    BookKeeper.DigestType.CRC32C, new byte[0], EnumSet.noneOf(WriteFlag.class));
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            outstandingAdds.acquire(MAX_OUTSTANDING_ADDS);
+            mainWorkerPool.shutdown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void append(TestState s) throws Exception {
+        s.outstandingAdds.acquire();
+        s.lh.asyncAddEntry(s.data, (rc, lh, entryId, ctx) -> s.outstandingAdds.release(), null);
+    }
+
+    private static class BenchmarkClientContext implements ClientContext {
+        // Adds are only limited by the outstanding adds, not by the client throttling
+        private final ClientInternalConf conf = ClientInternalConf.fromConfig(
+                new ClientConfiguration().setThrottleValue(0));
+        private final BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+        private final OrderedExecutor mainWorkerPool;
+        private final OrderedScheduler scheduler;
+        private final BookieClient bookieClient;
+
+        BenchmarkClientContext(OrderedExecutor mainWorkerPool, OrderedScheduler scheduler) {
+            this.mainWorkerPool = mainWorkerPool;
+            this.scheduler = scheduler;
+            this.bookieClient = new AckingBookieClient(mainWorkerPool);
+        }
+
+        @Override
+        public ClientInternalConf getConf() {
+            return conf;
+        }
+
+        @Override
+        public LedgerManager getLedgerManager() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BookieWatcher getBookieWatcher() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EnsemblePlacementPolicy getPlacementPolicy() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BookieClient getBookieClient() {
+            return bookieClient;
+        }
+
+        @Override
+        public ByteBufAllocator getByteBufAllocator() {
+            return ByteBufAllocator.DEFAULT;
+        }
+
+        @Override
+        public OrderedExecutor getMainWorkerPool() {
+            return mainWorkerPool;
+        }
+
+        @Override
+        public OrderedScheduler getScheduler() {
+            return scheduler;
+        }
+
+        @Override
+        public BookKeeperClientStats getClientStats() {
+            return clientStats;
+        }
+
+        @Override
+        public boolean isClientClosed() {
+            return false;
+        }
+    }
+
+    /**
+     * Bookie client which acknowledges all the writes on the ordered thread of the ledger.
+     */
+    private static class AckingBookieClient implements BookieClient {
+        private final OrderedExecutor executor;
+
+        AckingBookieClient(OrderedExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void addEntry(BookieId address, long ledgerId, byte[] masterKey, long entryId, ByteBufList toSend,
+                             WriteCallback cb, Object ctx, int options, boolean allowFastFail,
+                             EnumSet<WriteFlag> writeFlags) {
+            executor.executeOrdered(ledgerId,
+                    () -> cb.writeComplete(BKException.Code.OK, ledgerId, entryId, address, ctx));
+        }
+
+        @Override
+        public List<BookieId> getFaultyBookies() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isWritable(BookieId address, long ledgerId) {
+            return true;
+        }
+
+        @Override
+        public long getNumPendingRequests(BookieId address, long ledgerId) {
+            return 0;
+        }
+
+        @Override
+        public void forceLedger(BookieId address, long ledgerId, ForceLedgerCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readLac(BookieId address, long ledgerId, ReadLacCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeLac(BookieId address, long ledgerId, byte[] masterKey, long lac, ByteBufList toSend,
+                             WriteLacCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readEntry(BookieId address, long ledgerId, long entryId, ReadEntryCallback cb, Object ctx,
+                              int flags, byte[] masterKey, boolean allowFastFail) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void batchReadEntries(BookieId address, long ledgerId, long startEntryId, int maxCount, long maxSize,
+                                     BatchedReadEntryCallback cb, Object ctx, int flags) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readEntryWaitForLACUpdate(BookieId address, long ledgerId, long entryId, long previousLAC,
+                                              long timeOutInMillis, boolean piggyBackEntry, ReadEntryCallback cb,
+                                              Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getBookieInfo(BookieId address, long requested, GetBookieInfoCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
+                                                                                        long ledgerId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -63,9 +63,21 @@ public class DigestTypeBenchmark {
     public enum BufferType {
         ARRAY_BACKED,
         NOT_ARRAY_BACKED,
-        BYTE_BUF_DEFAULT_ALLOC
+        BYTE_BUF_DEFAULT_ALLOC,
+        COMPOSITE_DIRECT
     }
 
+    /**
+     * CRC32C implementation.
+     */
+    public enum Crc32cImpl {
+        JDK,
+        CIRCE
+    }
+
+    // Number of components of the composite buffers, as built when a payload is assembled from several buffers
+    static final int COMPOSITE_COMPONENTS = 4;
+
     /**
      * Digest.
      */
@@ -81,6 +93,19 @@ public class DigestTypeBenchmark {
         return b;
     }
 
+    static CompositeByteBuf compositeDirectBuffer(int size) {
+        CompositeByteBuf buffer = PooledByteBufAllocator.DEFAULT.compositeDirectBuffer(COMPOSITE_COMPONENTS);
+        int remaining = size;
+        for (int i = 0; i < COMPOSITE_COMPONENTS; i++) {
+            int componentSize = i == COMPOSITE_COMPONENTS - 1 ? remaining : size / COMPOSITE_COMPONENTS;
+            ByteBuf component = PooledByteBufAllocator.DEFAULT.directBuffer(componentSize, componentSize);
+            component.writeBytes(randomBytes(componentSize));
+            buffer.addComponent(true, component);
+            remaining -= componentSize;
+        }
+        return buffer;
+    }
+
     /**
      * MyState.
      */
@@ -101,6 +126,7 @@ public class DigestTypeBenchmark {
         private ByteBuf arrayBackedBuffer;
         private CompositeByteBuf notArrayBackedBuffer;
         private ByteBuf byteBufDefaultAlloc;
+        private CompositeByteBuf compositeDirectBuffer;
 
         public ByteBuf digestBuf;
 
@@ -128,6 +154,8 @@ public class DigestTypeBenchmark {
             byteBufDefaultAlloc = ByteBufAllocator.DEFAULT.buffer(entrySize, entrySize);
             byteBufDefaultAlloc.writeBytes(randomBytes(entrySize));
 
+            compositeDirectBuffer = compositeDirectBuffer(entrySize);
+
             if (!arrayBackedBuffer.hasArray() || notArrayBackedBuffer.hasArray()) {
                 throw new IllegalStateException("buffers in invalid state");
             }
@@ -135,6 +163,7 @@ public class DigestTypeBenchmark {
 
         @TearDown(Level.Trial)
         public void doTearDown() {
+            compositeDirectBuffer.release();
         }
 
         public ByteBuf getByteBuff(BufferType bType) {
@@ -145,6 +174,8 @@ public class DigestTypeBenchmark {
                     return notArrayBackedBuffer;
                 case BYTE_BUF_DEFAULT_ALLOC:
                     return byteBufDefaultAlloc;
+                case COMPOSITE_DIRECT:
+                    return compositeDirectBuffer;
                 default:
                     throw new IllegalArgumentException("unknown buffer type " + bType);
             }
@@ -179,4 +210,83 @@ public class DigestTypeBenchmark {
         dm.populateValueAndReset(state.digestBuf);
     }
 
+    /**
+     * State with entries of mixed sizes, from a few bytes to 64KB, to checksum one after the other.
+     */
+    @State(Scope.Thread)
+    public static class MixedSizesState {
+
+        @Param
+        public BufferType bufferType;
+        @Param({"JDK", "CIRCE"})
+        public Crc32cImpl impl;
+
+        static final int NUM_ENTRIES = 64;
+        static final int MAX_ENTRY_SIZE = 64 * 1024;
+
+        private final ByteBuf[] entries = new ByteBuf[NUM_ENTRIES];
+        private int next = 0;
+
+        CRC32CDigestManager.CRC32CDigest crc32c;
+
+        @Setup(Level.Trial)
+        public void doSetup() throws Exception {
+            if (impl == Crc32cImpl.JDK && !JdkCRC32CDigest.isSupported()) {
+                throw new IllegalStateException("java.util.zip.CRC32C is not available");
+            }
+            crc32c = impl == Crc32cImpl.JDK ? new JdkCRC32CDigest() : new CirceCRC32CDigest();
+
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                // Log-uniform sizes, as most entries are small but most bytes are in large entries
+                int size = (int) Math.pow(2, ThreadLocalRandom.current().nextDouble(4, Math.log(MAX_ENTRY_SIZE)
+                        / Math.log(2)));
+                switch (bufferType) {
+                    case ARRAY_BACKED:
+                        entries[i] = Unpooled.wrappedBuffer(randomBytes(size));
+                        break;
+                    case NOT_ARRAY_BACKED:
+                        CompositeByteBuf composite = new CompositeByteBuf(ByteBufAllocator.DEFAULT, true, 2);
+                        composite.addComponent(true, Unpooled.wrappedBuffer(randomBytes(size / 2)));
+                        composite.addComponent(true, Unpooled.wrappedBuffer(randomBytes(size - size / 2)));
+                        entries[i] = composite;
+                        break;
+                    case BYTE_BUF_DEFAULT_ALLOC:
+                        entries[i] = ByteBufAllocator.DEFAULT.buffer(size, size);
+                        entries[i].writeBytes(randomBytes(size));
+                        break;
+                    case COMPOSITE_DIRECT:
+                        entries[i] = compositeDirectBuffer(size);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown buffer type " + bufferType);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() {
+            for (ByteBuf entry : entries) {
+                entry.release();
+            }
+        }
+
+        ByteBuf nextEntry() {
+            ByteBuf entry = entries[next];
+            next = (next + 1) % NUM_ENTRIES;
+            return entry;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 5, time = 12, timeUnit = TimeUnit.SECONDS)
+    @Threads(2)
+    @Fork(value = 1, warmups = 1)
+    public int crc32cMixedSizes(MixedSizesState state) {
+        state.crc32c.update(state.nextEntry());
+        return state.crc32c.getValueAndReset();
+    }
+
 }
@@ -18,6 +18,7 @@ import org.apache.bookkeeper.tools.common.BKFlags;
 import org.apache.bookkeeper.tools.framework.CliCommandGroup;
 import org.apache.bookkeeper.tools.framework.CliSpec;
 import org.apache.bookkeeper.tools.perf.journal.AppendCommand;
+import org.apache.bookkeeper.tools.perf.journal.LatencyCurveCommand;
 
 /**
  * Commands that evaluate performance of the bookkeeper journal library.
@@ -32,6 +33,7 @@ public class JournalPerfCommandGroup extends CliCommandGroup<BKFlags> implements
         .withDescription(DESC)
         .withParent(BKPerf.NAME)
         .addCommand(new AppendCommand())
+        .addCommand(new LatencyCurveCommand())
         .build();
 
     public JournalPerfCommandGroup() {
@@ -175,8 +175,30 @@ public class JournalWriter implements Runnable {
         )
         public int numJournalCallbackThreads = 8;
 
+        @Parameter(
+            names = {
+                "-pd", "--write-pipeline-depth"
+            },
+            description = "Number of journal write groups in flight, 0 to disable pipelined journal writes"
+        )
+        public int writePipelineDepth = 0;
+
     }
 
+    /**
+     * Throughput and latency measured over a run of {@link #measure(long)}.
+     */
+    static class Measurement {
+        final double recordsRate;
+        final double bytesRate;
+        final Histogram latency;
+
+        Measurement(double recordsRate, double bytesRate, Histogram latency) {
+            this.recordsRate = recordsRate;
+            this.bytesRate = bytesRate;
+            this.latency = latency;
+        }
+    }
 
     // stats
     private final LongAdder recordsWritten = new LongAdder();
@@ -226,6 +248,51 @@ public class JournalWriter implements Runnable {
             .scope(BOOKIE_SCOPE);
 
 
+        Journal[] journals = startJournals(statsLogger.scope(JOURNAL_SCOPE));
+        try {
+            execute(journals);
+        } finally {
+            for (Journal journal : journals) {
+                journal.shutdown();
+            }
+
+            Stats.get().stop();
+        }
+    }
+
+    /**
+     * Append entries for the given duration and return the throughput and latency observed.
+     */
+    Measurement measure(long durationSeconds) throws Exception {
+        checkArgument(flags.journalDirs.size() > 0, "No journal dirs is provided");
+
+        updateServerConf(conf, flags);
+
+        Journal[] journals = startJournals(NullStatsLogger.INSTANCE);
+        ExecutorService executor = Executors.newFixedThreadPool(flags.numTestThreads);
+        try {
+            long startTime = System.nanoTime();
+            startWriteThreads(executor, journals);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+            isDone.set(true);
+            executor.shutdown();
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+            double elapsed = (System.nanoTime() - startTime) / 1e9;
+
+            return new Measurement(
+                recordsWritten.sum() / elapsed,
+                bytesWritten.sum() / elapsed,
+                cumulativeRecorder.getIntervalHistogram());
+        } finally {
+            for (Journal journal : journals) {
+                journal.shutdown();
+            }
+        }
+    }
+
+    private Journal[] startJournals(StatsLogger journalStatsLogger) throws IOException {
         ByteBufAllocator allocator = getAllocator(conf);
         DiskChecker checker = new DiskChecker(
             conf.getDiskUsageThreshold(),
@@ -244,20 +311,12 @@ public class JournalWriter implements Runnable {
                 new File(flags.journalDirs.get(i)),
                 conf,
                 manager,
-                statsLogger.scope(JOURNAL_SCOPE),
+                journalStatsLogger,
                 allocator);
             journals[i] = journal;
             journal.start();
         }
-        try {
-            execute(journals);
-        } finally {
-            for (Journal journal : journals) {
-                journal.shutdown();
-            }
-
-            Stats.get().stop();
-        }
+        return journals;
     }
 
     void execute(Journal[] journals) throws Exception {
@@ -281,29 +340,7 @@ public class JournalWriter implements Runnable {
 
         ExecutorService executor = Executors.newFixedThreadPool(flags.numTestThreads);
         try {
-            for (int i = 0; i < flags.numTestThreads; i++) {
-                final int idx = i;
-                final long numRecordsForThisThread = flags.numEntries / flags.numTestThreads;
-                final long numBytesForThisThread = flags.numBytes / flags.numTestThreads;
-                final double writeRateForThisThread = flags.writeRate / (double) flags.numTestThreads;
-                final long maxOutstandingBytesForThisThread =
-                    flags.maxOutstandingMB * 1024 * 1024 / flags.numTestThreads;
-                final int numLedgersForThisThread = flags.numLedgers / flags.numTestThreads;
-                executor.submit(() -> {
-                    try {
-                        write(
-                            idx,
-                            journals,
-                            numLedgersForThisThread,
-                            writeRateForThisThread,
-                            (int) maxOutstandingBytesForThisThread,
-                            numRecordsForThisThread,
-                            numBytesForThisThread);
-                    } catch (Throwable t) {
-                        log.error("Encountered error at writing records", t);
-                    }
-                });
-            }
+            startWriteThreads(executor, journals);
             log.info("Started {} write threads", flags.numTestThreads);
             reportStats();
         } finally {
@@ -315,6 +352,32 @@ public class JournalWriter implements Runnable {
         }
     }
 
+    private void startWriteThreads(ExecutorService executor, Journal[] journals) {
+        for (int i = 0; i < flags.numTestThreads; i++) {
+            final int idx = i;
+            final long numRecordsForThisThread = flags.numEntries / flags.numTestThreads;
+            final long numBytesForThisThread = flags.numBytes / flags.numTestThreads;
+            final double writeRateForThisThread = flags.writeRate / (double) flags.numTestThreads;
+            final long maxOutstandingBytesForThisThread =
+                flags.maxOutstandingMB * 1024 * 1024 / flags.numTestThreads;
+            final int numLedgersForThisThread = flags.numLedgers / flags.numTestThreads;
+            executor.submit(() -> {
+                try {
+                    write(
+                        idx,
+                        journals,
+                        numLedgersForThisThread,
+                        writeRateForThisThread,
+                        (int) maxOutstandingBytesForThisThread,
+                        numRecordsForThisThread,
+                        numBytesForThisThread);
+                } catch (Throwable t) {
+                    log.error("Encountered error at writing records", t);
+                }
+            });
+        }
+    }
+
     void write(int threadIdx,
                Journal[] journals,
                int numLedgersForThisThread,
@@ -356,7 +419,7 @@ public class JournalWriter implements Runnable {
         ByteBuf payloadBuf = Unpooled.wrappedBuffer(payload);
         long[] entryIds = new long[numLedgersForThisThread];
         Arrays.fill(entryIds, 0L);
-        while (true) {
+        while (!isDone.get()) {
             for (int i = 0; i < numJournals; i++) {
                 int ledgerIdx = ThreadLocalRandom.current().nextInt(numLedgersForThisThread);
                 long lid = threadIdx * numLedgersForThisThread + ledgerIdx;
@@ -474,6 +537,7 @@ public class JournalWriter implements Runnable {
         conf.setNumJournalCallbackThreads(flags.numJournalCallbackThreads);
         conf.setJournalQueueSize(flags.journalQueueSize);
         conf.setJournalSyncData(flags.journalSyncEnabled);
+        conf.setJournalWritePipelineDepth(flags.writePipelineDepth);
         conf.setLedgerDirNames(flags.journalDirs.toArray(new String[0]));
         conf.setStatsProviderClass(PrometheusMetricsProvider.class);
         File[] currentDirs = BookieImpl.getCurrentDirectories(conf.getLedgerDirs());
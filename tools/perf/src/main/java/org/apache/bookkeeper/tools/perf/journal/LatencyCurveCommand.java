@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.tools.perf.journal;
+
+import com.beust.jcommander.Parameter;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.apache.bookkeeper.common.net.ServiceURI;
+import org.apache.bookkeeper.tools.common.BKCommand;
+import org.apache.bookkeeper.tools.common.BKFlags;
+import org.apache.bookkeeper.tools.framework.CliSpec;
+import org.apache.bookkeeper.tools.perf.journal.LatencyCurveCommand.Flags;
+import org.apache.bookkeeper.tools.perf.utils.PaddingDecimalFormat;
+import org.apache.commons.configuration.CompositeConfiguration;
+
+/**
+ * Command to compare the throughput/latency curve of the journal with different write pipeline depths.
+ *
+ * <p>For each pipeline depth, entries are appended at each of the given write rates for a fixed
+ * duration, and the achieved throughput and latency percentiles are reported.
+ */
+@Slf4j
+public class LatencyCurveCommand extends BKCommand<Flags> {
+
+    private static final String NAME = "latency-curve";
+    private static final String DESC = "Measure journal latency over a range of write rates and pipeline depths";
+
+    private static final DecimalFormat dec = new PaddingDecimalFormat("0.000", 7);
+    private static final DecimalFormat throughputFormat = new PaddingDecimalFormat("0.0", 8);
+
+    /**
+     * Flags for the latency curve command.
+     */
+    public static class Flags extends JournalWriter.Flags {
+
+        @Parameter(
+            names = {
+                "-rs", "--rates"
+            },
+            description = "Comma separated list of write rates bytes/s across journals, 0 for unthrottled")
+        public List<Long> rates = Arrays.asList(0L);
+
+        @Parameter(
+            names = {
+                "-pds", "--write-pipeline-depths"
+            },
+            description = "Comma separated list of journal write pipeline depths to compare, 0 for no pipelining")
+        public List<Integer> writePipelineDepths = Arrays.asList(0, 4);
+
+        @Parameter(
+            names = {
+                "-d", "--duration-secs"
+            },
+            description = "Duration of the run at each write rate, in seconds")
+        public long durationSecs = 30;
+
+    }
+
+    public LatencyCurveCommand() {
+        super(CliSpec.<Flags>newBuilder()
+            .withName(NAME)
+            .withDescription(DESC)
+            .withFlags(new Flags())
+            .build());
+    }
+
+    @Override
+    protected boolean apply(ServiceURI serviceURI,
+                            CompositeConfiguration conf,
+                            BKFlags globalFlags, Flags cmdFlags) {
+        try {
+            for (int depth : cmdFlags.writePipelineDepths) {
+                for (long rate : cmdFlags.rates) {
+                    cmdFlags.writePipelineDepth = depth;
+                    cmdFlags.writeRate = rate;
+                    // numEntries/numBytes limits would terminate the process
+                    cmdFlags.numEntries = 0;
+                    cmdFlags.numBytes = 0;
+
+                    JournalWriter writer = new JournalWriter(conf, cmdFlags);
+                    JournalWriter.Measurement m = writer.measure(cmdFlags.durationSecs);
+                    Histogram latency = m.latency;
+                    log.info("Pipeline depth: {} - Target rate: {} MB/s --- Throughput: {} records/s --- {} MB/s"
+                            + " --- Latency: mean: {} ms - med: {} - 99pct: {} - 99.9pct: {} - Max: {}",
+                        depth,
+                        throughputFormat.format(rate / 1024.0 / 1024.0),
+                        throughputFormat.format(m.recordsRate),
+                        throughputFormat.format(m.bytesRate / 1024 / 1024),
+                        dec.format(latency.getMean() / 1000.0),
+                        dec.format(latency.getValueAtPercentile(50) / 1000.0),
+                        dec.format(latency.getValueAtPercentile(99) / 1000.0),
+                        dec.format(latency.getValueAtPercentile(99.9) / 1000.0),
+                        dec.format(latency.getMaxValue() / 1000.0));
+                }
+            }
+        } catch (Exception e) {
+            log.error("Encountered exception at measuring journal latency curve", e);
+            return false;
+        }
+        return true;
+    }
+
+}